@@ -0,0 +1,224 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.snmp;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Walks a table with several requests to the agent outstanding at once.
+ *
+ * <p>A walk of a single table column can't be split up, since the next
+ * request depends on the last OID that was returned, so the columns of the
+ * table are split into up to <code>maxRequestsInFlight</code> streams that
+ * are each walked by an {@link SnmpWalker} of the configured strategy. This
+ * class only coordinates those walkers; it sends no requests itself. Every
+ * stream adapts its max-repetitions to the agent on its own, and the rows
+ * are reassembled by the {@link TableTracker} and handed to its
+ * {@link RowCallback} as usual.</p>
+ */
+public class PipelinedTableWalker implements Closeable {
+
+    private static final transient Logger LOG = LoggerFactory.getLogger(PipelinedTableWalker.class);
+
+    private final SnmpStrategy m_strategy;
+    private final SnmpAgentConfig m_agentConfig;
+    private final String m_name;
+    private final TableTracker m_tracker;
+    private final int m_maxRequestsInFlight;
+
+    private final CountDownLatch m_signal = new CountDownLatch(1);
+    private final List<SnmpWalker> m_walkers = new ArrayList<SnmpWalker>();
+    private int m_running = 0;
+    private boolean m_done = false;
+    private boolean m_finished = false;
+
+    private volatile boolean m_error = false;
+    private volatile String m_errorMessage = "";
+    private volatile Throwable m_errorThrowable = null;
+
+    public PipelinedTableWalker(SnmpStrategy strategy, SnmpAgentConfig agentConfig, String name, TableTracker tracker, int maxRequestsInFlight) {
+        m_strategy = strategy;
+        m_agentConfig = agentConfig;
+        m_name = name;
+        m_tracker = tracker;
+        m_maxRequestsInFlight = Math.max(1, maxRequestsInFlight);
+    }
+
+    public final String getName() {
+        return m_name;
+    }
+
+    public final int getMaxRequestsInFlight() {
+        return m_maxRequestsInFlight;
+    }
+
+    /**
+     * Starts a walker for each column stream of the table.
+     */
+    public void start() {
+        if (m_tracker.isFinished()) {
+            finish(false, null, null);
+            return;
+        }
+
+        final List<SnmpWalker> walkers;
+        try {
+            synchronized (m_walkers) {
+                for (CollectionTracker stream : m_tracker.createColumnStreams(m_maxRequestsInFlight)) {
+                    final SnmpWalker walker = m_strategy.createWalker(m_agentConfig, m_name, stream);
+                    walker.setFinishedCallback(new Runnable() {
+                        @Override
+                        public void run() {
+                            walkerFinished(walker);
+                        }
+                    });
+                    m_walkers.add(walker);
+                }
+                m_running = m_walkers.size();
+                walkers = new ArrayList<SnmpWalker>(m_walkers);
+            }
+        } catch (Throwable e) {
+            m_tracker.setFailed(true);
+            finish(true, "Unexpected error occurred processing " + m_name + " for " + m_agentConfig.getAddress() + ": " + e, e);
+            return;
+        }
+
+        LOG.debug("Walking {} for {} with {} concurrent requests", m_name, m_agentConfig.getAddress(), walkers.size());
+        for (SnmpWalker walker : walkers) {
+            walker.start();
+        }
+    }
+
+    private void walkerFinished(SnmpWalker walker) {
+        synchronized (m_walkers) {
+            if (m_done) {
+                return;
+            }
+            if (!walker.failed() && --m_running > 0) {
+                return;
+            }
+        }
+
+        if (walker.failed()) {
+            m_tracker.setTimedOut(walker.timedOut());
+            finish(true, walker.getErrorMessage(), walker.getErrorThrowable());
+        } else if (m_tracker.isFinished()) {
+            finish(false, null, null);
+        } else {
+            m_tracker.setTimedOut(false);
+            finish(true, "Error retrieving " + m_name + " for " + m_agentConfig.getAddress() + ": All column streams finished before the table did", null);
+        }
+    }
+
+    /**
+     * Records the outcome of the walk, closes the walkers of the other
+     * streams and signals the threads waiting for the walk. Only the first
+     * outcome counts.
+     */
+    private void finish(boolean error, String errorMessage, Throwable errorThrowable) {
+        synchronized (m_walkers) {
+            if (m_finished) {
+                return;
+            }
+            m_finished = true;
+            m_done = true;
+            if (error) {
+                m_error = true;
+                m_errorMessage = errorMessage;
+                m_errorThrowable = errorThrowable;
+            }
+        }
+        try {
+            close();
+        } catch (IOException e) {
+            LOG.error("{}: Unexpected Error occured closing SNMP session for: {}", m_name, m_agentConfig.getAddress(), e);
+        }
+        m_signal.countDown();
+    }
+
+    public boolean failed() {
+        return m_error;
+    }
+
+    public boolean timedOut() {
+        return m_tracker.timedOut();
+    }
+
+    public final String getErrorMessage() {
+        return m_errorMessage;
+    }
+
+    public final Throwable getErrorThrowable() {
+        return m_errorThrowable;
+    }
+
+    public void waitFor() throws InterruptedException {
+        m_signal.await();
+    }
+
+    public void waitFor(long timeout) throws InterruptedException {
+        if (!m_signal.await(timeout, TimeUnit.MILLISECONDS)) {
+            m_tracker.setTimedOut(true);
+            finish(true, "Timeout retrieving " + m_name + " for " + m_agentConfig.getAddress() + ": Timeout of " + timeout + " expired while waiting for " + getClass().getSimpleName() + " to finish", null);
+        }
+    }
+
+    /**
+     * Closes the walkers of all column streams.
+     */
+    @Override
+    public void close() throws IOException {
+        final List<SnmpWalker> walkers;
+        synchronized (m_walkers) {
+            m_done = true;
+            walkers = new ArrayList<SnmpWalker>(m_walkers);
+        }
+
+        IOException exception = null;
+        for (SnmpWalker walker : walkers) {
+            try {
+                walker.close();
+            } catch (IOException e) {
+                exception = e;
+            }
+        }
+        if (exception != null) {
+            throw exception;
+        }
+    }
+}
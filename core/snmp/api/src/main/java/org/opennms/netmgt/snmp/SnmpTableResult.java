@@ -44,6 +44,7 @@ public class SnmpTableResult implements RowResultFactory {
     private final RowResultFactory m_rowResultFactory;
 
     private final List<SnmpObjId> m_finishedColumns;
+    private SnmpObjId[] m_finishedColumnArray = new SnmpObjId[0];
     private final Map<SnmpInstId,SnmpRowResult> m_pendingData;
     private volatile boolean m_finished = false;
     
@@ -64,7 +65,8 @@ public class SnmpTableResult implements RowResultFactory {
         return m_columns.length;
     }
 
-    void storeResult(SnmpResult result) {
+    // the columns may be walked concurrently by a PipelinedTableWalker
+    synchronized void storeResult(SnmpResult result) {
         SnmpInstId instId = result.getInstance();
         if ( !m_pendingData.containsKey( instId ) ) {
             m_pendingData.put( instId, m_rowResultFactory.createRowResult( getColumnCount(), instId ) );
@@ -72,7 +74,13 @@ public class SnmpTableResult implements RowResultFactory {
         SnmpRowResult row = m_pendingData.get( instId );
         row.addResult( result.getBase(), result );
 
-        handleCompleteRows();
+        if (isFinished()) {
+            handleCompleteRows();
+        } else if (row.isComplete(m_finishedColumnArray)) {
+            // complete rows never stay pending, so this row is the only one
+            // that can have been completed by this result
+            completeRowsThrough(instId);
+        }
     }
 
     public void setFinished(boolean finished) {
@@ -87,31 +95,40 @@ public class SnmpTableResult implements RowResultFactory {
         SnmpInstId lastInstance = null;
 
         for (SnmpRowResult row : m_pendingData.values()) {
-            if (row.isComplete(m_finishedColumns.toArray(new SnmpObjId[m_finishedColumns.size()]))) {
+            if (row.isComplete(m_finishedColumnArray)) {
                 lastInstance = row.getInstance();
             }
         }
         
         if (lastInstance != null || isFinished()) {
-            Iterator<SnmpInstId> i = m_pendingData.keySet().iterator();
-            while (i.hasNext()) {
-                SnmpInstId key = i.next();
-                m_callback.rowCompleted(m_pendingData.get(key));
-                i.remove();
-                if (key.equals(lastInstance)) {
-                    break;
-                }
+            completeRowsThrough(lastInstance);
+        }
+    }
+
+    /**
+     * Hands off the pending rows up to and including the row of the given
+     * instance, or all of them if the instance is null.
+     */
+    private void completeRowsThrough(SnmpInstId lastInstance) {
+        Iterator<SnmpInstId> i = m_pendingData.keySet().iterator();
+        while (i.hasNext()) {
+            SnmpInstId key = i.next();
+            m_callback.rowCompleted(m_pendingData.get(key));
+            i.remove();
+            if (key.equals(lastInstance)) {
+                break;
             }
         }
     }
 
-    void tableFinished() {
+    synchronized void tableFinished() {
         setFinished(true);
         handleCompleteRows();
     }
 
-    public void columnFinished(SnmpObjId columnId) {
+    public synchronized void columnFinished(SnmpObjId columnId) {
         m_finishedColumns.add(columnId);
+        m_finishedColumnArray = m_finishedColumns.toArray(new SnmpObjId[m_finishedColumns.size()]);
         handleCompleteRows();
     }
 
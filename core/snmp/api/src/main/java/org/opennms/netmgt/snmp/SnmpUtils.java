@@ -73,6 +73,28 @@ public abstract class SnmpUtils {
         return getStrategy().createWalker(agentConfig, name, createTooBigTracker(agentConfig, tracker));
     }
 
+    /**
+     * Creates a walker for a table that splits its columns across up to
+     * <code>maxRequestsInFlight</code> concurrent requests to the agent.
+     */
+    public static PipelinedTableWalker createTableWalker(SnmpAgentConfig agentConfig, String name, TableTracker tracker, int maxRequestsInFlight) {
+        return new PipelinedTableWalker(getStrategy(), agentConfig, name, tracker, maxRequestsInFlight);
+    }
+
+    /**
+     * The number of requests that a walk of a single table may have
+     * outstanding at once.
+     */
+    public static int getMaxRequestsInFlight() {
+        final String maxRequestsInFlight = getConfig().getProperty("org.opennms.snmp.maxRequestsInFlight", "1");
+        try {
+            return Integer.parseInt(maxRequestsInFlight.trim());
+        } catch (final NumberFormatException e) {
+            LOG.warn("Invalid value for org.opennms.snmp.maxRequestsInFlight: {}", maxRequestsInFlight);
+            return 1;
+        }
+    }
+
     private static TooBigReportingAggregator createTooBigTracker(SnmpAgentConfig agentConfig, CollectionTracker tracker) {
         return createTooBigTracker(agentConfig, new CollectionTracker[] { tracker });
     }
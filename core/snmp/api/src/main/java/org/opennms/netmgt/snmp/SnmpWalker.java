@@ -61,6 +61,7 @@ public abstract class SnmpWalker implements Closeable {
     private boolean m_error = false;
     private String m_errorMessage = "";
     private Throwable m_errorThrowable = null;
+    private volatile Runnable m_finishedCallback = null;
     
     protected SnmpWalker(InetAddress address, String name, int maxVarsPerPdu, int maxRepetitions, CollectionTracker tracker) {
         m_address = address;
@@ -162,6 +163,19 @@ public abstract class SnmpWalker implements Closeable {
         } catch (IOException e) {
             LOG.error("{}: Unexpected Error occured closing SNMP session for: {}", getName(), m_address, e);
         }
+        final Runnable callback = m_finishedCallback;
+        if (callback != null) {
+            callback.run();
+        }
+    }
+
+    /**
+     * Sets a callback that is run on the thread that finishes the walk, after
+     * the walker has been signaled and closed, whether the walk succeeded or
+     * not.
+     */
+    void setFinishedCallback(Runnable callback) {
+        m_finishedCallback = callback;
     }
 
     @Override
@@ -92,7 +92,7 @@ public class TableTracker extends CollectionTracker implements RowCallback, RowR
 
         List<ResponseProcessor> processors = new ArrayList<ResponseProcessor>(pduBuilder.getMaxVarsPerPdu());
 
-        for (ColumnTracker ct : getNextColumnTrackers(pduBuilder.getMaxVarsPerPdu())) {
+        for (ColumnTracker ct : getNextColumnTrackers(m_columnTrackers, pduBuilder.getMaxVarsPerPdu())) {
             processors.add(ct.buildNextPdu(pduBuilder));
         }
 
@@ -121,9 +121,35 @@ public class TableTracker extends CollectionTracker implements RowCallback, RowR
         return m_tableResult.createRowResult(columnCount, instance);
     }
 
-    private List<ColumnTracker> getNextColumnTrackers(int maxVarsPerPdu) {
+    /**
+     * Splits the columns of the table across up to <code>maxStreams</code>
+     * trackers that can each be walked by their own walker, so that several
+     * requests for the table can be outstanding at once. The columns still
+     * store their results into this tracker, and it finishes once all of the
+     * streams have.
+     */
+    List<CollectionTracker> createColumnStreams(int maxStreams) {
+        int streamCount = Math.max(1, Math.min(maxStreams, m_columnTrackers.size()));
+        List<List<ColumnTracker>> columns = new ArrayList<List<ColumnTracker>>(streamCount);
+        for (int i = 0; i < streamCount; i++) {
+            columns.add(new ArrayList<ColumnTracker>());
+        }
+        for (int i = 0; i < m_columnTrackers.size(); i++) {
+            columns.get(i % streamCount).add(m_columnTrackers.get(i));
+        }
+
+        List<CollectionTracker> streams = new ArrayList<CollectionTracker>(streamCount);
+        for (List<ColumnTracker> streamColumns : columns) {
+            if (!streamColumns.isEmpty()) {
+                streams.add(new ColumnStreamTracker(streamColumns));
+            }
+        }
+        return streams;
+    }
+
+    private static List<ColumnTracker> getNextColumnTrackers(List<ColumnTracker> columnTrackers, int maxVarsPerPdu) {
         List<ColumnTracker> trackers = new ArrayList<ColumnTracker>(maxVarsPerPdu);
-        List<ColumnTracker> sortedTrackerList = new ArrayList<ColumnTracker>(m_columnTrackers);
+        List<ColumnTracker> sortedTrackerList = new ArrayList<ColumnTracker>(columnTrackers);
 
         Collections.sort(sortedTrackerList, new Comparator<ColumnTracker>() {
             @Override
@@ -192,7 +218,160 @@ public class TableTracker extends CollectionTracker implements RowCallback, RowR
 
     }
 
-    
-    
+    /**
+     * Walks a subset of the columns of a table with GETBULK requests whose
+     * max-repetitions adapts to the agent: it doubles while the agent answers
+     * every repetition, and drops to what the agent managed to fit when a
+     * response comes back truncated, or by half on a tooBig error.
+     */
+    private static class ColumnStreamTracker extends CollectionTracker {
+
+        /**
+         * The most repetitions to ever ask for, so that a lost response
+         * doesn't cost more than this many rows
+         */
+        private static final int MAX_REPETITIONS = 64;
+
+        private final List<ColumnTracker> m_columnTrackers;
+        private int m_maxRepetitions = 2;
+        private int m_repetitionsLimit = MAX_REPETITIONS;
+        private StreamResponseProcessor m_lastProcessor;
+
+        public ColumnStreamTracker(List<ColumnTracker> columnTrackers) {
+            m_columnTrackers = columnTrackers;
+        }
+
+        @Override
+        public void setMaxRepetitions(int maxRepetitions) {
+            m_maxRepetitions = Math.max(1, Math.min(maxRepetitions, m_repetitionsLimit));
+        }
+
+        @Override
+        public boolean isFinished() {
+            if (super.isFinished()) {
+                return true;
+            }
+            for (ColumnTracker ct : m_columnTrackers) {
+                if (!ct.isFinished()) {
+                    return false;
+                }
+            }
+            setFinished(true);
+            return true;
+        }
+
+        @Override
+        public void setFailed(boolean failed) {
+            super.setFailed(failed);
+            for (ColumnTracker ct : m_columnTrackers) {
+                ct.setFailed(failed);
+            }
+        }
+
+        @Override
+        public void setTimedOut(boolean timedOut) {
+            super.setTimedOut(timedOut);
+            for (ColumnTracker ct : m_columnTrackers) {
+                ct.setTimedOut(timedOut);
+            }
+        }
+
+        @Override
+        public ResponseProcessor buildNextPdu(PduBuilder pduBuilder) {
+            if (pduBuilder.getMaxVarsPerPdu() < 1) {
+                throw new IllegalArgumentException("maxVarsPerPdu < 1");
+            }
+
+            adjustMaxRepetitions();
+
+            List<ResponseProcessor> processors = new ArrayList<ResponseProcessor>(pduBuilder.getMaxVarsPerPdu());
+            for (ColumnTracker ct : getNextColumnTrackers(m_columnTrackers, pduBuilder.getMaxVarsPerPdu())) {
+                processors.add(ct.buildNextPdu(pduBuilder));
+            }
+            pduBuilder.setMaxRepetitions(m_maxRepetitions);
+
+            m_lastProcessor = new StreamResponseProcessor(pduBuilder, new CombinedColumnResponseProcessor(processors), processors.size(), m_maxRepetitions);
+            return m_lastProcessor;
+        }
+
+        private void adjustMaxRepetitions() {
+            StreamResponseProcessor last = m_lastProcessor;
+            if (last == null || last.isTooBig() || last.getReceived() == 0) {
+                return;
+            }
+            int requested = last.getColumns() * last.getRepetitions();
+            if (last.getReceived() < requested) {
+                // the agent fit as many varbinds as it could into the response
+                m_repetitionsLimit = Math.max(1, last.getReceived() / last.getColumns());
+                m_maxRepetitions = Math.min(m_maxRepetitions, m_repetitionsLimit);
+            } else {
+                m_maxRepetitions = Math.min(m_maxRepetitions * 2, m_repetitionsLimit);
+            }
+        }
+
+        private void tooBig(PduBuilder pduBuilder) {
+            if (m_maxRepetitions > 1) {
+                m_maxRepetitions = m_maxRepetitions / 2;
+                m_repetitionsLimit = m_maxRepetitions;
+                LOG.info("Received tooBig response. Reducing maxRepetitions for this stream to {}", m_maxRepetitions);
+            } else if (pduBuilder.getMaxVarsPerPdu() > 1) {
+                pduBuilder.setMaxVarsPerPdu(pduBuilder.getMaxVarsPerPdu() / 2);
+                LOG.info("Received tooBig response. Reducing maxVarsPerPdu for this stream to {}", pduBuilder.getMaxVarsPerPdu());
+            } else {
+                throw new IllegalArgumentException("Unable to handle tooBigError when maxVarsPerPdu = 1 and maxRepetitions = 1");
+            }
+        }
+
+        private class StreamResponseProcessor implements ResponseProcessor {
+            private final PduBuilder m_pduBuilder;
+            private final ResponseProcessor m_processor;
+            private final int m_columns;
+            private final int m_repetitions;
+            private int m_received = 0;
+            private boolean m_tooBig = false;
+
+            public StreamResponseProcessor(PduBuilder pduBuilder, ResponseProcessor processor, int columns, int repetitions) {
+                m_pduBuilder = pduBuilder;
+                m_processor = processor;
+                m_columns = columns;
+                m_repetitions = repetitions;
+            }
+
+            public int getColumns() {
+                return m_columns;
+            }
+
+            public int getRepetitions() {
+                return m_repetitions;
+            }
+
+            public int getReceived() {
+                return m_received;
+            }
+
+            public boolean isTooBig() {
+                return m_tooBig;
+            }
+
+            @Override
+            public void processResponse(SnmpObjId responseObjId, SnmpValue val) {
+                m_received++;
+                m_processor.processResponse(responseObjId, val);
+            }
+
+            @Override
+            public boolean processErrors(int errorStatus, int errorIndex) {
+                if (errorStatus == NO_ERR) {
+                    return false;
+                } else if (errorStatus == TOO_BIG_ERR) {
+                    m_tooBig = true;
+                    tooBig(m_pduBuilder);
+                    return true;
+                }
+                // blame the first column if the agent doesn't say which one failed
+                return m_processor.processErrors(errorStatus, Math.max(1, errorIndex));
+            }
+        }
+    }
 
 }
@@ -46,6 +46,8 @@ public abstract class TrapInformation implements TrapNotification {
      */
     private String m_community;
     private TrapProcessor m_trapProcessor;
+    private boolean m_headerProcessed = false;
+    private boolean m_varBindsProcessed = false;
 
     protected TrapInformation(InetAddress agent, String community, TrapProcessor trapProcessor) {
         m_agent = agent;
@@ -85,6 +87,18 @@ public abstract class TrapInformation implements TrapNotification {
         return m_trapProcessor;
     }
 
+    /**
+     * Passes everything but the varbinds to the trap processor, so that the
+     * trap can be identified (and possibly dropped) before the varbinds are
+     * decoded.  A later call to {@link #getTrapProcessor()} adds the varbinds.
+     *
+     * @return the trap processor
+     */
+    public TrapProcessor getTrapProcessorWithoutVarBinds() {
+        processTrapHeader();
+        return m_trapProcessor;
+    }
+
     protected abstract String getVersion();
 
     protected abstract int getPduLength();
@@ -94,7 +108,15 @@ public abstract class TrapInformation implements TrapNotification {
     protected abstract TrapIdentity getTrapIdentity();
 
     protected void processTrap() {
-        
+        processTrapHeader();
+        processVarBinds();
+    }
+
+    protected void processTrapHeader() {
+        if (m_headerProcessed) {
+            return;
+        }
+
         validate();
         
         m_trapProcessor.setVersion(getVersion());
@@ -108,7 +130,16 @@ public abstract class TrapInformation implements TrapNotification {
         m_trapProcessor.setTimeStamp(getTimeStamp());
     
         m_trapProcessor.setTrapIdentity(getTrapIdentity());
-        
+
+        m_headerProcessed = true;
+    }
+
+    protected void processVarBinds() {
+        if (m_varBindsProcessed) {
+            return;
+        }
+        m_varBindsProcessed = true;
+
         for (int i = 0; i < getPduLength(); i++) {
             processVarBindAt(i);
         } // end for loop
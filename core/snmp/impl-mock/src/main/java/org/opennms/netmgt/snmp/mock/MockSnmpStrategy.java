@@ -64,6 +64,7 @@ public class MockSnmpStrategy implements SnmpStrategy {
     // TOG's enterprise ID
     private static int s_enterpriseId = 5813;
     private static Map<SnmpAgentAddress,PropertyOidContainer> m_loaders = new HashMap<SnmpAgentAddress,PropertyOidContainer>();
+    private static volatile long s_responseDelay = 0;
 
     public MockSnmpStrategy() {
     }
@@ -85,7 +86,7 @@ public class MockSnmpStrategy implements SnmpStrategy {
         LOG.debug("createWalker({}/{}, {}, {})", InetAddrUtils.str(agentConfig.getAddress()), agentConfig.getPort(), name, tracker.getClass().getName());
         final SnmpAgentAddress aa = new SnmpAgentAddress(agentConfig.getAddress(), agentConfig.getPort());
         final PropertyOidContainer oidContainer = getOidContainer(aa);
-        return new MockSnmpWalker(aa, agentConfig.getVersion(), oidContainer, name, tracker, agentConfig.getMaxVarsPerPdu());
+        return new MockSnmpWalker(aa, agentConfig.getVersion(), oidContainer, name, tracker, agentConfig.getMaxVarsPerPdu(), agentConfig.getMaxRepetitions(), agentConfig.getMaxRequestSize(), s_responseDelay);
     }
 
     @Override
@@ -248,4 +249,12 @@ public class MockSnmpStrategy implements SnmpStrategy {
         m_loaders.clear();
     }
 
+    /**
+     * Sets how long the walkers wait before answering each request, to
+     * stand in for the round trip time to the agent.
+     */
+    public static void setResponseDelay(final long responseDelay) {
+        s_responseDelay = responseDelay;
+    }
+
 }
@@ -50,6 +50,8 @@ public class MockSnmpWalker extends SnmpWalker {
 
 	private static class MockPduBuilder extends WalkerPduBuilder {
         private List<SnmpObjId> m_oids = new ArrayList<SnmpObjId>();
+        private int m_nonRepeaters = 0;
+        private int m_maxRepetitions = 1;
 
         public MockPduBuilder(final int maxVarsPerPdu) {
             super(maxVarsPerPdu);
@@ -59,6 +61,8 @@ public class MockSnmpWalker extends SnmpWalker {
         @Override
         public void reset() {
             m_oids.clear();
+            m_nonRepeaters = 0;
+            m_maxRepetitions = 1;
         }
 
         public List<SnmpObjId> getOids() {
@@ -70,12 +74,22 @@ public class MockSnmpWalker extends SnmpWalker {
             m_oids.add(snmpObjId);
         }
 
+        public int getNonRepeaters() {
+            return m_nonRepeaters;
+        }
+
+        public int getMaxRepetitions() {
+            return m_maxRepetitions;
+        }
+
         @Override
         public void setNonRepeaters(final int numNonRepeaters) {
+            m_nonRepeaters = numNonRepeaters;
         }
 
         @Override
         public void setMaxRepetitions(final int maxRepetitions) {
+            m_maxRepetitions = maxRepetitions;
         }
     }
 	
@@ -99,16 +113,35 @@ public class MockSnmpWalker extends SnmpWalker {
 		
 	}
 
+	/**
+	 * Rough size of the message and PDU headers of a response
+	 */
+	private static final int RESPONSE_HEADER_SIZE = 48;
+
 	private final SnmpAgentAddress m_agentAddress;
 	private final int m_snmpVersion;
     private final PropertyOidContainer m_container;
+    private final int m_maxResponseSize;
+    private final long m_responseDelay;
     private final ExecutorService m_executor;
 
     public MockSnmpWalker(final SnmpAgentAddress agentAddress, int snmpVersion, final PropertyOidContainer container, final String name, final CollectionTracker tracker, int maxVarsPerPdu) {
-        super(agentAddress.getAddress(), name, maxVarsPerPdu, 1, tracker);
+        this(agentAddress, snmpVersion, container, name, tracker, maxVarsPerPdu, 1, SnmpAgentConfig.DEFAULT_MAX_REQUEST_SIZE, 0);
+    }
+
+    /**
+     * Responses are held back for <code>responseDelay</code> milliseconds to
+     * stand in for the round trip to the agent. GETBULK responses are
+     * truncated to fit into <code>maxResponseSize</code> bytes, and requests
+     * that don't fit at all get a tooBig error, like a real agent would.
+     */
+    public MockSnmpWalker(final SnmpAgentAddress agentAddress, int snmpVersion, final PropertyOidContainer container, final String name, final CollectionTracker tracker, int maxVarsPerPdu, int maxRepetitions, int maxResponseSize, long responseDelay) {
+        super(agentAddress.getAddress(), name, maxVarsPerPdu, maxRepetitions, tracker);
         m_agentAddress = agentAddress;
         m_snmpVersion = snmpVersion;
         m_container = container;
+        m_maxResponseSize = maxResponseSize;
+        m_responseDelay = responseDelay;
         m_executor = Executors.newSingleThreadExecutor(
             new LogPreservingThreadFactory(getClass().getSimpleName(), 1, false)
         );
@@ -125,7 +158,7 @@ public class MockSnmpWalker extends SnmpWalker {
         final List<SnmpObjId> oids = builder.getOids();
         LOG.debug("'Sending' tracker PDU of size {}", oids.size());
 
-        m_executor.submit(new ResponseHandler(oids));
+        m_executor.submit(new ResponseHandler(oids, builder.getNonRepeaters(), builder.getMaxRepetitions()));
     }
 
     @Override
@@ -177,9 +210,13 @@ public class MockSnmpWalker extends SnmpWalker {
 
     private final class ResponseHandler implements Runnable {
 		private final List<SnmpObjId> m_oids;
+		private final int m_nonRepeaters;
+		private final int m_maxRepetitions;
 
-		private ResponseHandler(final List<SnmpObjId> oids) {
+		private ResponseHandler(final List<SnmpObjId> oids, final int nonRepeaters, final int maxRepetitions) {
 			m_oids = oids;
+			m_nonRepeaters = nonRepeaters;
+			m_maxRepetitions = maxRepetitions;
 		}
 
 		@Override
@@ -197,14 +234,24 @@ public class MockSnmpWalker extends SnmpWalker {
 	            	return;
 	            }
 
-	            List<MockVarBind> responses = new ArrayList<MockVarBind>(m_oids.size());
+	            if (m_responseDelay > 0) {
+	            	Thread.sleep(m_responseDelay);
+	            }
+
+	            // SNMPv1 has no GETBULK, so every OID is answered once, like a GETNEXT
+	            final boolean bulk = m_snmpVersion != SnmpAgentConfig.VERSION1;
+	            final int nonRepeaters = bulk ? Math.max(0, Math.min(m_nonRepeaters, m_oids.size())) : m_oids.size();
+	            final int repetitions = bulk ? Math.max(1, m_maxRepetitions) : 1;
+
+	            List<MockVarBind> responses = new ArrayList<MockVarBind>(nonRepeaters + (m_oids.size() - nonRepeaters) * repetitions);
 	            		
 	            int errorStatus = 0;
 	            int errorIndex = 0;
 	            int index = 1; // snmp index start at 1
-	            for (final SnmpObjId oid : m_oids) {
-	            	SnmpObjId nextOid = m_container.findNextOidForOid(oid);
-	            	if (nextOid == null) {
+	            int responseSize = RESPONSE_HEADER_SIZE;
+	            for (final SnmpObjId oid : m_oids.subList(0, nonRepeaters)) {
+	            	final MockVarBind vb = getNext(oid);
+	            	if (vb.getValue().isEndOfMib()) {
 	            		LOG.debug("No OID following {}", oid);
 	            		if (m_snmpVersion == SnmpAgentConfig.VERSION1) {
 	            			if (errorStatus == 0) { // for V1 only record the index of the first failing varbind
@@ -212,13 +259,36 @@ public class MockSnmpWalker extends SnmpWalker {
 	            				errorIndex = index;
 	            			}
 	            		}
-            			responses.add(new MockVarBind(oid, MockSnmpValue.END_OF_MIB));
-	            	} else {
-	            		responses.add(new MockVarBind(nextOid, m_container.findValueForOid(nextOid)));
 	            	}
+	            	responses.add(vb);
+	            	responseSize += getEncodedSize(vb);
 	            	index++;
 	            }
 
+	            // the repeaters are answered row by row until the response is full
+	            final List<SnmpObjId> lastOids = new ArrayList<SnmpObjId>(m_oids.subList(nonRepeaters, m_oids.size()));
+	            boolean full = false;
+	            for (int repetition = 0; repetition < repetitions && !full; repetition++) {
+	            	for (int i = 0; i < lastOids.size(); i++) {
+	            		final MockVarBind vb = getNext(lastOids.get(i));
+	            		final int size = getEncodedSize(vb);
+	            		if (responseSize + size > m_maxResponseSize) {
+	            			full = true;
+	            			break;
+	            		}
+	            		responses.add(vb);
+	            		responseSize += size;
+	            		lastOids.set(i, vb.getOid());
+	            	}
+	            }
+
+	            if (responseSize > m_maxResponseSize || (responses.isEmpty() && !m_oids.isEmpty())) {
+	            	LOG.debug("Response of size {} does not fit into {} bytes", responseSize, m_maxResponseSize);
+	            	responses.clear();
+	            	errorStatus = CollectionTracker.TOO_BIG_ERR;
+	            	errorIndex = 0;
+	            }
+
 	            if (!processErrors(errorStatus, errorIndex)) {
 	            	LOG.debug("Responding with PDU of size {}.", responses.size());
 	            	for(MockVarBind vb : responses) {
@@ -231,5 +301,26 @@ public class MockSnmpWalker extends SnmpWalker {
 	            handleFatalError(t);
 	        }
 	    }
+
+	    private MockVarBind getNext(final SnmpObjId oid) {
+	    	final SnmpObjId nextOid = m_container.findNextOidForOid(oid);
+	    	if (nextOid == null) {
+	    		return new MockVarBind(oid, MockSnmpValue.END_OF_MIB);
+	    	} else {
+	    		return new MockVarBind(nextOid, m_container.findValueForOid(nextOid));
+	    	}
+	    }
+
+	    /**
+	     * An estimate of the BER encoded size of a varbind.
+	     */
+	    private int getEncodedSize(final MockVarBind vb) {
+	    	int size = 6;
+	    	for (final int subId : vb.getOid().getIds()) {
+	    		size += subId < 128 ? 1 : (subId < 16384 ? 2 : 5);
+	    	}
+	    	final byte[] bytes = vb.getValue().getBytes();
+	    	return size + (bytes == null ? 0 : bytes.length);
+	    }
     }
 }
@@ -86,12 +86,8 @@ public class PropertyOidContainer {
     }
 
     public SnmpObjId findNextOidForOid(final SnmpObjId oid) {
-        final NavigableMap<SnmpObjId,SnmpValue> next = m_tree.tailMap(oid, false);
-        if (next.size() == 0) {
-            return null;
-        } else {
-            return next.firstKey();
-        }
+        // size() of a tail map walks all of it, so ask for the key directly
+        return m_tree.higherKey(oid);
     }
     
     public SnmpValue findNextValueForOid(final SnmpObjId oid) {
@@ -0,0 +1,268 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.snmp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.netmgt.snmp.mock.MockSnmpStrategy;
+import org.springframework.core.io.ByteArrayResource;
+
+public class PipelinedTableWalkerTest {
+
+    private static final SnmpObjId TABLE = SnmpObjId.get(".1.3.6.1.2.1.31.1.1.1");
+
+    private final InetAddress m_agentAddress = InetAddressUtils.addr("127.0.0.1");
+    private final int m_agentPort = 1691;
+    private String m_oldProperty;
+
+    @Before
+    public void setUp() throws Exception {
+        m_oldProperty = System.getProperty("org.opennms.snmp.strategyClass");
+        System.setProperty("org.opennms.snmp.strategyClass", MockSnmpStrategy.class.getName());
+    }
+
+    @After
+    public void tearDown() {
+        MockSnmpStrategy.setResponseDelay(0);
+        MockSnmpStrategy.resetData();
+        if (m_oldProperty == null) {
+            System.getProperties().remove("org.opennms.snmp.strategyClass");
+        } else {
+            System.setProperty("org.opennms.snmp.strategyClass", m_oldProperty);
+        }
+    }
+
+    @Test
+    public void testWalkMatchesSerialWalk() throws Exception {
+        setTableData(500, 12);
+
+        final SnmpAgentConfig config = getAgentConfig();
+        final List<String> serial = walk(config, 1, 12);
+        final List<String> pipelined = walk(config, 4, 12);
+
+        assertEquals(500, serial.size());
+        assertEquals(serial, pipelined);
+    }
+
+    @Test
+    public void testMoreStreamsThanColumns() throws Exception {
+        setTableData(100, 2);
+        assertEquals(100, walk(getAgentConfig(), 8, 2).size());
+    }
+
+    @Test
+    public void testSnmpV1() throws Exception {
+        setTableData(50, 6);
+        final SnmpAgentConfig config = getAgentConfig();
+        config.setVersion(SnmpAgentConfig.VERSION1);
+        assertEquals(walk(config, 1, 6),
+                     walk(config, 3, 6));
+    }
+
+    /**
+     * An agent that can only fit a few varbinds into a response truncates
+     * its GETBULK responses.
+     */
+    @Test
+    public void testTruncatedResponses() throws Exception {
+        setTableData(300, 8);
+        final SnmpAgentConfig config = getAgentConfig();
+        config.setMaxRequestSize(400);
+        config.setMaxRepetitions(20);
+
+        final List<String> expected = walk(getAgentConfig(), 1, 8);
+        assertEquals(expected, walk(config, 4, 8));
+    }
+
+    /**
+     * An SNMPv1 agent answers with tooBig when the GETNEXT response doesn't
+     * fit, so fewer columns have to be requested at a time.
+     */
+    @Test
+    public void testTooBig() throws Exception {
+        setTableData(100, 8);
+        final SnmpAgentConfig config = getAgentConfig();
+        config.setVersion(SnmpAgentConfig.VERSION1);
+
+        final List<String> expected = walk(config, 1, 8);
+        config.setMaxRequestSize(150);
+        assertEquals(expected, walk(config, 2, 8));
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        setTableData(10, 4);
+        final SnmpAgentConfig config = getAgentConfig();
+        config.setPort(12345);
+
+        final RowCollector rows = new RowCollector();
+        final PipelinedTableWalker walker = SnmpUtils.createTableWalker(config, "test", new TableTracker(rows, getColumns(4)), 2);
+        walker.start();
+        walker.waitFor();
+        assertTrue(walker.failed());
+        assertTrue(walker.timedOut());
+        assertTrue(rows.getRows().isEmpty());
+    }
+
+    /**
+     * With a single request in flight all columns are walked by one walker,
+     * just like a regular walk of the table.
+     */
+    @Test
+    public void testSingleStream() throws Exception {
+        setTableData(200, 6);
+        final SnmpAgentConfig config = getAgentConfig();
+        assertEquals(walk(config, 1, 6), walkPipelined(config, 1, 6));
+    }
+
+    /**
+     * Walks a table from an agent with a 5ms round trip time one request at
+     * a time and with four requests in flight; keeping several requests in
+     * flight must return the same rows in less time.
+     */
+    @Test
+    public void testRequestsInFlightOverlap() throws Exception {
+        final int rowCount = 300;
+        final int columnCount = 8;
+        setTableData(rowCount, columnCount);
+        MockSnmpStrategy.setResponseDelay(5);
+
+        final SnmpAgentConfig config = getAgentConfig();
+        config.setMaxVarsPerPdu(10);
+        config.setMaxRepetitions(10);
+
+        long begin = System.nanoTime();
+        final List<String> serial = walk(config, 1, columnCount);
+        final long serialTime = System.nanoTime() - begin;
+
+        begin = System.nanoTime();
+        final List<String> pipelined = walk(config, 4, columnCount);
+        final long pipelinedTime = System.nanoTime() - begin;
+
+        assertEquals(rowCount, serial.size());
+        assertEquals(serial, pipelined);
+        assertTrue("pipelined walk took " + pipelinedTime + "ns, serial walk " + serialTime + "ns", pipelinedTime < serialTime);
+    }
+
+    /**
+     * Walks the table and returns its rows as strings, in the order in which
+     * they were completed.
+     */
+    private List<String> walk(final SnmpAgentConfig config, final int maxRequestsInFlight, final int columnCount) throws Exception {
+        if (maxRequestsInFlight > 1) {
+            return walkPipelined(config, maxRequestsInFlight, columnCount);
+        }
+        final RowCollector rows = new RowCollector();
+        final SnmpWalker walker = SnmpUtils.createWalker(config, "test", new TableTracker(rows, getColumns(columnCount)));
+        walker.start();
+        walker.waitFor();
+        assertFalse(walker.getErrorMessage(), walker.failed());
+        return rows.getRows();
+    }
+
+    private List<String> walkPipelined(final SnmpAgentConfig config, final int maxRequestsInFlight, final int columnCount) throws Exception {
+        final RowCollector rows = new RowCollector();
+        final PipelinedTableWalker walker = SnmpUtils.createTableWalker(config, "test", new TableTracker(rows, getColumns(columnCount)), maxRequestsInFlight);
+        walker.start();
+        walker.waitFor();
+        assertFalse(walker.getErrorMessage(), walker.failed());
+        return rows.getRows();
+    }
+
+    private static SnmpObjId[] getColumns(final int columnCount) {
+        final SnmpObjId[] columns = new SnmpObjId[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            columns[i] = SnmpObjId.get(TABLE, Integer.toString(i + 1));
+        }
+        return columns;
+    }
+
+    /**
+     * Loads a table with the given number of rows and columns into the mock
+     * agent, along with a few objects around it. The rows are indexed from
+     * 1001 in steps of 3, and the third column is missing from every seventh
+     * row.
+     */
+    private void setTableData(final int rowCount, final int columnCount) throws Exception {
+        final StringBuilder data = new StringBuilder();
+        data.append(".1.3.6.1.2.1.1.3.0 = Timeticks: (123456) 0:20:34.56\n");
+        for (int column = 1; column <= columnCount; column++) {
+            for (int row = 0; row < rowCount; row++) {
+                final int index = 1001 + 3 * row;
+                if (column == 3 && row % 7 == 0) {
+                    continue;
+                }
+                data.append(TABLE).append('.').append(column).append('.').append(index).append(" = ");
+                if (column == 1) {
+                    data.append("STRING: \"ge-0/0/").append(row).append("\"\n");
+                } else {
+                    data.append("Counter64: ").append((long)index * column * 7919).append("\n");
+                }
+            }
+        }
+        data.append(".1.3.6.1.2.1.31.1.5.0 = Timeticks: (654321) 1:49:03.21\n");
+        MockSnmpStrategy.setDataForAddress(new SnmpAgentAddress(m_agentAddress, m_agentPort), new ByteArrayResource(data.toString().getBytes("UTF-8")));
+    }
+
+    private static class RowCollector implements RowCallback {
+        private final List<String> m_rows = new ArrayList<String>();
+
+        @Override
+        public void rowCompleted(final SnmpRowResult row) {
+            final StringBuilder buf = new StringBuilder(row.getInstance().toString());
+            for (final SnmpResult result : row.getResults()) {
+                buf.append(' ').append(result.getBase()).append('=').append(result.getValue());
+            }
+            m_rows.add(buf.toString());
+        }
+
+        public List<String> getRows() {
+            return m_rows;
+        }
+    }
+
+    private SnmpAgentConfig getAgentConfig() {
+        final SnmpAgentConfig config = new SnmpAgentConfig();
+        config.setAddress(m_agentAddress);
+        config.setPort(m_agentPort);
+        config.setVersion(SnmpAgentConfig.VERSION2C);
+        return config;
+    }
+}
@@ -80,14 +80,28 @@ public class BasePersister extends AbstractCollectionSetVisitor implements Persi
     
     /**
      * <p>commitBuilder</p>
+     *
+     * Writes the values collected by the current builder, or hands them to
+     * the {@link PersistOperationQueue} when write-behind persistence is
+     * enabled.
      */
     public void commitBuilder() {
         if (isPersistDisabled())
             return;
         String name = m_builder.getName();
         try {
-            m_builder.commit();
+            PersistOperation operation = m_builder.createOperation();
             m_builder = null;
+            if (operation == null) {
+                return;
+            }
+            PersistOperationQueue queue = PersistOperationQueue.getInstance();
+            if (queue == null) {
+                operation.execute();
+            } else if (!queue.enqueue(operation) && queue.isShutDown()) {
+                // samples the queue dropped because it was full are counted there
+                operation.execute();
+            }
         } catch (RrdException e) {
             LOG.error("Unable to persist data for {}", name, e);
     
@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.collection.persistence.rrd;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.opennms.netmgt.rrd.RrdDataSource;
+import org.opennms.netmgt.rrd.RrdException;
+import org.opennms.netmgt.rrd.RrdUtils;
+
+/**
+ * An immutable sample for one RRD file, as built by a
+ * {@link PersistOperationBuilder}: the data sources to create the file with
+ * and the values to update it with.
+ */
+public final class PersistOperation {
+    private final String m_ownerName;
+    private final String m_directory;
+    private final String m_rrdName;
+    private final int m_step;
+    private final List<RrdDataSource> m_dataSources;
+    private final List<String> m_rraList;
+    private final Map<String, String> m_attributeMappings;
+    private final long m_timestamp;
+    private final String m_values;
+    private final Map<String, String> m_metaData;
+
+    PersistOperation(String ownerName, String directory, String rrdName, int step, List<RrdDataSource> dataSources, List<String> rraList,
+            Map<String, String> attributeMappings, long timestamp, String values, Map<String, String> metaData) {
+        m_ownerName = ownerName;
+        m_directory = directory;
+        m_rrdName = rrdName;
+        m_step = step;
+        m_dataSources = Collections.unmodifiableList(new ArrayList<RrdDataSource>(dataSources));
+        m_rraList = rraList == null ? null : Collections.unmodifiableList(new ArrayList<String>(rraList));
+        m_attributeMappings = attributeMappings == null ? null : Collections.unmodifiableMap(new LinkedHashMap<String, String>(attributeMappings));
+        m_timestamp = timestamp;
+        m_values = values;
+        m_metaData = Collections.unmodifiableMap(new LinkedHashMap<String, String>(metaData));
+    }
+
+    /**
+     * Creates the RRD file if necessary and updates it.
+     *
+     * @throws org.opennms.netmgt.rrd.RrdException if any.
+     */
+    public void execute() throws RrdException {
+        RrdUtils.createRRD(m_ownerName, m_directory, m_rrdName, m_step, m_dataSources, m_rraList, m_attributeMappings);
+        RrdUtils.updateRRD(m_ownerName, m_directory, m_rrdName, m_timestamp, m_values);
+        RrdUtils.createMetaDataFile(m_directory, m_rrdName, m_metaData);
+    }
+
+    /**
+     * @return the path of the RRD file, without extension; operations for
+     *         the same file must be executed in order
+     */
+    public String getPath() {
+        return m_directory + File.separator + m_rrdName;
+    }
+
+    /**
+     * <p>getName</p>
+     *
+     * @return the name of the RRD file
+     */
+    public String getName() {
+        return m_rrdName;
+    }
+
+    /**
+     * <p>getTimestamp</p>
+     *
+     * @return the time of the sample in milliseconds
+     */
+    public long getTimestamp() {
+        return m_timestamp;
+    }
+
+    /**
+     * <p>getValues</p>
+     *
+     * @return the update string for the RRD file
+     */
+    public String getValues() {
+        return m_values;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return "PersistOperation[" + getPath() + "@" + m_timestamp + ": " + m_values + "]";
+    }
+}
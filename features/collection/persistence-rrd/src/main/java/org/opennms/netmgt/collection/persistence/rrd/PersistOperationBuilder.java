@@ -163,9 +163,23 @@ public class PersistOperationBuilder {
      * @throws org.opennms.netmgt.rrd.RrdException if any.
      */
     public void commit() throws RrdException {
+        final PersistOperation operation = createOperation();
+        if (operation != null) {
+            operation.execute();
+        }
+    }
+
+    /**
+     * Captures the current values of this builder as an operation that can
+     * be executed later, possibly on another thread.
+     *
+     * @return the operation, or <code>null</code> if there is nothing to
+     *         persist
+     */
+    public PersistOperation createOperation() {
         if (m_declarations.size() == 0) {
             // Nothing to do.  In fact, we'll get an error if we try to create an RRD file with no data sources            
-            return;
+            return null;
         }
 
         try {
@@ -173,14 +187,13 @@ public class PersistOperationBuilder {
             final String absolutePath = getResourceDir(m_resource).getAbsolutePath();
             List<RrdDataSource> dataSources = getDataSources();
             if (dataSources != null && dataSources.size() > 0) {
-                RrdUtils.createRRD(ownerName, absolutePath, m_rrdName, getRepository().getStep(), dataSources, getRepository().getRraList(), getAttributeMappings());
-                RrdUtils.updateRRD(ownerName, absolutePath, m_rrdName, m_timeKeeper.getCurrentTime(), getValues());
-                RrdUtils.createMetaDataFile(absolutePath, m_rrdName, m_metaData);
+                return new PersistOperation(ownerName, absolutePath, m_rrdName, getRepository().getStep(), dataSources, getRepository().getRraList(),
+                                            getAttributeMappings(), m_timeKeeper.getCurrentTime(), getValues(), m_metaData);
             }
         } catch (FileNotFoundException e) {
             LoggerFactory.getLogger(getClass()).warn("Could not get resource directory: " + e.getMessage(), e);
-            return;
         }
+        return null;
     }
 
     private String getValues() {
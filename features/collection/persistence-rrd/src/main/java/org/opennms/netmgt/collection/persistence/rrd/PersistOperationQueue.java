@@ -0,0 +1,317 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.collection.persistence.rrd;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.opennms.netmgt.rrd.RrdException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes {@link PersistOperation}s on dedicated threads so that collection
+ * threads don't wait for the disk while the queues have room.
+ *
+ * <p>Every RRD file is always handled by the same writer, so updates of one
+ * file are written in the order they were queued.  Each writer has a
+ * bounded queue; when it is full, {@link #enqueue(PersistOperation)} blocks
+ * the collection thread for up to the offer timeout for every sample and
+ * then drops it, so a disk that can't keep up still slows collection down,
+ * by at most that much per sample.  Writing it on the collection
+ * thread instead could reach the file before older queued samples, which
+ * the RRD would then reject.  {@link #shutdown()} stops accepting
+ * new samples and writes everything that has been queued.</p>
+ *
+ * <p>The write-behind queue is enabled with the
+ * <code>org.opennms.netmgt.collection.persistence.rrd.async</code> system
+ * property; without it, or after {@link #shutdownInstance()},
+ * {@link #getInstance()} returns <code>null</code> and samples are written
+ * by the collection thread as before.</p>
+ */
+public class PersistOperationQueue {
+    private static final Logger LOG = LoggerFactory.getLogger(PersistOperationQueue.class);
+
+    /** Enables write-behind persistence. */
+    public static final String ASYNC_PROPERTY = "org.opennms.netmgt.collection.persistence.rrd.async";
+
+    /** Number of writer threads. */
+    public static final String THREADS_PROPERTY = "org.opennms.netmgt.collection.persistence.rrd.asyncThreads";
+
+    /** Total number of samples that may be waiting to be written. */
+    public static final String QUEUE_SIZE_PROPERTY = "org.opennms.netmgt.collection.persistence.rrd.asyncQueueSize";
+
+    /** Milliseconds a collection thread waits for room in a full queue before dropping the sample. */
+    public static final String OFFER_TIMEOUT_PROPERTY = "org.opennms.netmgt.collection.persistence.rrd.asyncOfferTimeout";
+
+    private static PersistOperationQueue s_instance;
+
+    private static boolean s_shutdownHookInstalled = false;
+
+    /**
+     * Set by {@link #shutdownInstance()} so that collections finishing after
+     * collectd stopped don't start the queue again.
+     */
+    private static boolean s_stopped = false;
+
+    private final BlockingQueue<PersistOperation>[] m_queues;
+
+    private final Thread[] m_writers;
+
+    private final long m_offerTimeout;
+
+    private volatile boolean m_stopping = false;
+
+    /**
+     * Held for reading while a sample is being queued, and for writing while
+     * shutting down, so that no sample is queued after the writers have been
+     * told to finish.
+     */
+    private final ReadWriteLock m_stopLock = new ReentrantReadWriteLock();
+
+    private final AtomicLong m_written = new AtomicLong();
+
+    private final AtomicLong m_failed = new AtomicLong();
+
+    private final AtomicLong m_dropped = new AtomicLong();
+
+    /**
+     * Returns the shared queue, creating it on first use, or
+     * <code>null</code> if write-behind persistence is not enabled or the
+     * queue has been shut down.
+     *
+     * @return the queue or <code>null</code>
+     */
+    public static synchronized PersistOperationQueue getInstance() {
+        if (s_instance == null && !s_stopped && Boolean.getBoolean(ASYNC_PROPERTY)) {
+            s_instance = new PersistOperationQueue(Integer.getInteger(THREADS_PROPERTY, 4),
+                                                   Integer.getInteger(QUEUE_SIZE_PROPERTY, 10000),
+                                                   Long.getLong(OFFER_TIMEOUT_PROPERTY, 5000L));
+            if (!s_shutdownHookInstalled) {
+                // make sure queued samples reach the disk even if nobody stops us
+                Runtime.getRuntime().addShutdownHook(new Thread("PersistOperationQueue-shutdown") {
+                    @Override
+                    public void run() {
+                        shutdownInstance();
+                    }
+                });
+                s_shutdownHookInstalled = true;
+            }
+        }
+        return s_instance;
+    }
+
+    /**
+     * Returns the shared queue if it is running, without creating it.
+     *
+     * @return the queue or <code>null</code>
+     */
+    public static synchronized PersistOperationQueue getRunningInstance() {
+        return s_instance;
+    }
+
+    /**
+     * Allows {@link #getInstance()} to create the shared queue again after
+     * {@link #shutdownInstance()}.
+     */
+    public static synchronized void startInstance() {
+        s_stopped = false;
+    }
+
+    /**
+     * Writes all queued samples and stops the shared queue, if there is one.
+     * Until {@link #startInstance()} is called, {@link #getInstance()}
+     * returns <code>null</code>.
+     */
+    public static void shutdownInstance() {
+        final PersistOperationQueue queue;
+        synchronized (PersistOperationQueue.class) {
+            queue = s_instance;
+            s_instance = null;
+            s_stopped = true;
+        }
+        if (queue != null) {
+            queue.shutdown();
+        }
+    }
+
+    /**
+     * <p>Constructor for PersistOperationQueue.</p>
+     *
+     * @param writers the number of writer threads
+     * @param queueSize the total number of samples that may be waiting
+     * @param offerTimeout how long to wait for room in a full queue, in milliseconds
+     */
+    @SuppressWarnings("unchecked")
+    public PersistOperationQueue(final int writers, final int queueSize, final long offerTimeout) {
+        final int count = Math.max(1, writers);
+        m_offerTimeout = Math.max(0, offerTimeout);
+        m_queues = new BlockingQueue[count];
+        m_writers = new Thread[count];
+        for (int i = 0; i < count; i++) {
+            final BlockingQueue<PersistOperation> queue = new ArrayBlockingQueue<PersistOperation>(Math.max(1, queueSize / count));
+            m_queues[i] = queue;
+            m_writers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    write(queue);
+                }
+            }, "PersistOperationWriter-" + i);
+            m_writers[i].setDaemon(true);
+            m_writers[i].start();
+        }
+        LOG.info("Started {} RRD writer threads with room for {} samples each", count, m_queues[0].remainingCapacity());
+    }
+
+    /**
+     * Queues a sample to be written.
+     *
+     * @param operation the sample
+     * @return <code>true</code> if the sample was queued, <code>false</code>
+     *         if it was dropped because the queue stayed full for the offer
+     *         timeout, or if the queue is shut down (see {@link #isShutDown()})
+     *         and the caller has to write it itself
+     */
+    public boolean enqueue(final PersistOperation operation) {
+        final BlockingQueue<PersistOperation> queue = m_queues[(operation.getPath().hashCode() & Integer.MAX_VALUE) % m_queues.length];
+        m_stopLock.readLock().lock();
+        try {
+            if (m_stopping) {
+                return false;
+            }
+            if (queue.offer(operation) || queue.offer(operation, m_offerTimeout, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            m_stopLock.readLock().unlock();
+        }
+        final long dropped = m_dropped.incrementAndGet();
+        LOG.warn("RRD write queue is full; dropped {} ({} samples dropped so far)", operation, dropped);
+        return false;
+    }
+
+    private void write(final BlockingQueue<PersistOperation> queue) {
+        while (true) {
+            final PersistOperation operation;
+            try {
+                operation = m_stopping ? queue.poll() : queue.poll(500, TimeUnit.MILLISECONDS);
+            } catch (final InterruptedException e) {
+                // finish the queue before exiting
+                m_stopping = true;
+                continue;
+            }
+            if (operation == null) {
+                if (m_stopping) {
+                    break;
+                }
+                continue;
+            }
+
+            try {
+                operation.execute();
+                m_written.incrementAndGet();
+            } catch (final RrdException e) {
+                m_failed.incrementAndGet();
+                LOG.error("Unable to persist data for {}", operation.getName(), e);
+            } catch (final RuntimeException e) {
+                m_failed.incrementAndGet();
+                LOG.error("Unexpected error persisting data for {}", operation.getName(), e);
+            }
+        }
+        LOG.debug("RRD writer thread exiting");
+    }
+
+    /**
+     * Stops accepting samples, writes the samples that are already queued
+     * and waits for the writer threads to exit.
+     */
+    public void shutdown() {
+        m_stopLock.writeLock().lock();
+        try {
+            m_stopping = true;
+        } finally {
+            m_stopLock.writeLock().unlock();
+        }
+        for (final Thread writer : m_writers) {
+            try {
+                writer.join();
+            } catch (final InterruptedException e) {
+                LOG.warn("Interrupted while waiting for {} to write its queue", writer.getName());
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        LOG.info("RRD write queue shut down after writing {} samples ({} failed, {} dropped)", m_written.get(), m_failed.get(), m_dropped.get());
+    }
+
+    /**
+     * @return the number of samples waiting to be written
+     */
+    public long getQueueDepth() {
+        long depth = 0;
+        for (final BlockingQueue<PersistOperation> queue : m_queues) {
+            depth += queue.size();
+        }
+        return depth;
+    }
+
+    /**
+     * @return the number of samples written
+     */
+    public long getWritten() {
+        return m_written.get();
+    }
+
+    /**
+     * @return the number of samples that could not be written
+     */
+    public long getFailed() {
+        return m_failed.get();
+    }
+
+    /**
+     * @return <code>true</code> once the queue no longer accepts samples
+     */
+    public boolean isShutDown() {
+        return m_stopping;
+    }
+
+    /**
+     * @return the number of samples dropped because the queue was full
+     */
+    public long getDropped() {
+        return m_dropped.get();
+    }
+}
@@ -0,0 +1,668 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.nrtg.nrtbroker.local.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.opennms.nrtg.api.model.DefaultMeasurement;
+import org.opennms.nrtg.api.model.DefaultMeasurementSet;
+import org.opennms.nrtg.api.model.LightweightMeasurementSet;
+import org.opennms.nrtg.api.model.Measurement;
+import org.opennms.nrtg.api.model.MeasurementSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the most recent measurement sets in a fixed amount of off-heap
+ * memory and hands them out to any number of destinations.
+ *
+ * <p>Every published measurement set is encoded once into a direct
+ * {@link ByteBuffer} together with the destinations it is addressed to.
+ * Each destination only keeps a cursor into the buffer; reading decodes the
+ * records after the cursor that are addressed to it and moves the cursor to
+ * the end.  When the buffer is full the oldest records are overwritten, so a
+ * destination that doesn't read for a while loses the oldest results instead
+ * of holding on to an ever growing list on the heap.</p>
+ *
+ * <p>A record is decoded by the first destination that reads it, and the
+ * other destinations share that result until all of them have read it.  The
+ * shared measurement sets are read-only.</p>
+ *
+ * <p>A record is laid out as <code>[int length][short destinations
+ * length][destinations][measurement set]</code>, where the destinations are
+ * the UTF-8 encoded, comma separated names; records may wrap around the end
+ * of the buffer.  Positions are counted from the creation of the ring and
+ * never wrap, so a cursor behind the oldest record can be detected.</p>
+ */
+class MeasurementRing {
+    private static final Logger LOG = LoggerFactory.getLogger(MeasurementRing.class);
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int HEADER_SIZE = 6;
+
+    private static final byte SEPARATOR = ',';
+
+    /**
+     * Marks a measurement set whose measurements share one header.
+     */
+    private static final byte LIGHTWEIGHT = 0;
+
+    /**
+     * Marks a measurement set whose measurements each have their own header.
+     */
+    private static final byte PER_MEASUREMENT = 1;
+
+    private final ByteBuffer m_buffer;
+
+    private final int m_capacity;
+
+    private final long m_idleTimeout;
+
+    /**
+     * Position of the next record to be written.
+     */
+    private long m_head = 0;
+
+    /**
+     * Position of the oldest record that is still in the buffer.
+     */
+    private long m_tail = 0;
+
+    private long m_records = 0;
+
+    private long m_published = 0;
+
+    private long m_overwritten = 0;
+
+    private long m_rejected = 0;
+
+    private long m_overruns = 0;
+
+    private long m_decoded = 0;
+
+    private final ReadWriteLock m_lock = new ReentrantReadWriteLock();
+
+    private final ConcurrentMap<String, Cursor> m_cursors = new ConcurrentHashMap<String, Cursor>();
+
+    /**
+     * The decoded records that some, but not all, of their destinations
+     * have read, by position.
+     */
+    private final ConcurrentMap<Long, Slot> m_slots = new ConcurrentHashMap<Long, Slot>();
+
+    private static class Cursor {
+        private final String m_name;
+        private final byte[] m_encodedName;
+        private long m_position;
+        private volatile long m_lastAccess = System.currentTimeMillis();
+
+        private Cursor(final String name, final long position) {
+            m_name = name;
+            m_encodedName = name.getBytes(UTF8);
+            m_position = position;
+        }
+    }
+
+    /**
+     * A record that is decoded once and shared by its destinations.
+     */
+    private static class Slot {
+        private final int m_destinations;
+        private int m_reads = 0;
+        private MeasurementSet m_measurementSet;
+
+        private Slot(final int destinations) {
+            m_destinations = destinations;
+        }
+    }
+
+    /**
+     * A read-only view of a measurement set shared by several destinations.
+     */
+    private static class SharedMeasurementSet implements MeasurementSet {
+        private static final long serialVersionUID = -3129618046733418305L;
+
+        private final MeasurementSet m_measurementSet;
+
+        private SharedMeasurementSet(final MeasurementSet measurementSet) {
+            m_measurementSet = measurementSet;
+        }
+
+        @Override
+        public String getJson() {
+            return m_measurementSet.getJson();
+        }
+
+        /**
+         * Returns copies of the measurements, so that changing them does not
+         * affect the other destinations.
+         */
+        @Override
+        public List<Measurement> getMeasurements() {
+            final List<Measurement> measurements = new ArrayList<Measurement>();
+            for (final Measurement measurement : m_measurementSet.getMeasurements()) {
+                measurements.add(copy(measurement));
+            }
+            return Collections.unmodifiableList(measurements);
+        }
+
+        @Override
+        public String toString() {
+            return m_measurementSet.toString();
+        }
+    }
+
+    /**
+     * @param capacity the size of the buffer in bytes
+     * @param idleTimeout milliseconds after which a destination that hasn't
+     *        read anything is forgotten
+     */
+    MeasurementRing(final int capacity, final long idleTimeout) {
+        if (capacity < HEADER_SIZE) {
+            throw new IllegalArgumentException("Capacity must be at least " + HEADER_SIZE + " bytes, not " + capacity);
+        }
+        m_buffer = ByteBuffer.allocateDirect(capacity);
+        m_capacity = capacity;
+        m_idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Stores a measurement set for the given destinations.  Destinations
+     * that haven't been seen before start reading at this measurement set.
+     *
+     * @param destinations the comma separated names of the destinations
+     * @param measurementSet the measurement set
+     * @return <code>false</code> if the measurement set is too large for the
+     *         buffer and has been dropped
+     */
+    boolean publish(final String destinations, final MeasurementSet measurementSet) {
+        final Set<String> names = new LinkedHashSet<String>();
+        for (final String destination : destinations.split(",")) {
+            final String name = destination.trim();
+            if (name.length() > 0) {
+                names.add(name);
+            }
+        }
+        if (names.isEmpty()) {
+            return true;
+        }
+
+        final byte[] encodedDestinations = join(names).getBytes(UTF8);
+        final byte[] payload = encode(measurementSet);
+        final long length = (long) HEADER_SIZE + encodedDestinations.length + payload.length;
+
+        m_lock.writeLock().lock();
+        try {
+            if (length > m_capacity || encodedDestinations.length > Short.MAX_VALUE) {
+                m_rejected++;
+                LOG.warn("Measurement set of {} bytes for '{}' does not fit into the NRTG buffer of {} bytes", length, destinations, m_capacity);
+                return false;
+            }
+
+            // make room by dropping the oldest records
+            while (m_head + length - m_tail > m_capacity) {
+                m_slots.remove(m_tail);
+                m_tail += getInt(m_tail);
+                m_records--;
+                m_overwritten++;
+            }
+
+            final long position = m_head;
+            putInt(position, (int) length);
+            putShort(position + 4, (short) encodedDestinations.length);
+            put(position + HEADER_SIZE, encodedDestinations);
+            put(position + HEADER_SIZE + encodedDestinations.length, payload);
+            m_head += length;
+            m_records++;
+            m_published++;
+
+            for (final String name : names) {
+                if (!m_cursors.containsKey(name)) {
+                    m_cursors.putIfAbsent(name, new Cursor(name, position));
+                }
+            }
+        } finally {
+            m_lock.writeLock().unlock();
+        }
+
+        removeIdleCursors();
+        return true;
+    }
+
+    /**
+     * Returns the measurement sets for a destination that have been
+     * published since its last call and are still in the buffer.
+     *
+     * @param destination the name of the destination
+     * @return the measurement sets, oldest first
+     */
+    List<MeasurementSet> receive(final String destination) {
+        Cursor cursor = m_cursors.get(destination);
+        if (cursor == null) {
+            m_lock.readLock().lock();
+            try {
+                m_cursors.putIfAbsent(destination, new Cursor(destination, m_head));
+            } finally {
+                m_lock.readLock().unlock();
+            }
+            cursor = m_cursors.get(destination);
+            if (cursor == null) {
+                return Collections.emptyList();
+            }
+        }
+
+        final List<MeasurementSet> measurementSets = new ArrayList<MeasurementSet>();
+        synchronized (cursor) {
+            cursor.m_lastAccess = System.currentTimeMillis();
+            m_lock.readLock().lock();
+            try {
+                long position = cursor.m_position;
+                if (position < m_tail) {
+                    synchronized (this) {
+                        m_overruns++;
+                    }
+                    LOG.warn("Destination '{}' did not read for too long; {} bytes of measurements were overwritten", destination, m_tail - position);
+                    position = m_tail;
+                }
+                while (position < m_head) {
+                    final int length = getInt(position);
+                    final int destinationsLength = getShort(position + 4);
+                    if (isAddressedTo(position + HEADER_SIZE, destinationsLength, cursor.m_encodedName)) {
+                        measurementSets.add(read(position, length, destinationsLength));
+                    }
+                    position += length;
+                }
+                cursor.m_position = position;
+            } finally {
+                m_lock.readLock().unlock();
+            }
+        }
+        return measurementSets;
+    }
+
+    /**
+     * Returns the shared measurement set of a record, decoding it if no
+     * other destination has read it yet.  The caller holds the read lock, so
+     * the record cannot be overwritten meanwhile.
+     */
+    private MeasurementSet read(final long position, final int length, final int destinationsLength) {
+        Slot slot = m_slots.get(position);
+        if (slot == null) {
+            final Slot created = new Slot(countDestinations(position + HEADER_SIZE, destinationsLength));
+            slot = m_slots.putIfAbsent(position, created);
+            if (slot == null) {
+                slot = created;
+            }
+        }
+        synchronized (slot) {
+            if (slot.m_measurementSet == null) {
+                final byte[] payload = new byte[length - HEADER_SIZE - destinationsLength];
+                get(position + HEADER_SIZE + destinationsLength, payload);
+                slot.m_measurementSet = new SharedMeasurementSet(decode(payload));
+                synchronized (this) {
+                    m_decoded++;
+                }
+            }
+            // every destination reads a record at most once
+            if (++slot.m_reads >= slot.m_destinations) {
+                m_slots.remove(position, slot);
+            }
+            return slot.m_measurementSet;
+        }
+    }
+
+    private int countDestinations(final long position, final int length) {
+        int count = 1;
+        for (int i = 0; i < length; i++) {
+            if (getByte(position + i) == SEPARATOR) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void removeIdleCursors() {
+        final long now = System.currentTimeMillis();
+        for (final Iterator<Cursor> it = m_cursors.values().iterator(); it.hasNext();) {
+            final Cursor cursor = it.next();
+            if (now - cursor.m_lastAccess > m_idleTimeout) {
+                it.remove();
+                LOG.warn("Timed out object removed '{}'", cursor.m_name);
+            }
+        }
+    }
+
+    /**
+     * Checks whether the comma separated destination names at the given
+     * position contain the name, without decoding them.
+     */
+    private boolean isAddressedTo(final long position, final int length, final byte[] name) {
+        int start = 0;
+        while (start <= length) {
+            int end = start;
+            while (end < length && getByte(position + end) != SEPARATOR) {
+                end++;
+            }
+            if (end - start == name.length) {
+                int i = 0;
+                while (i < name.length && getByte(position + start + i) == name[i]) {
+                    i++;
+                }
+                if (i == name.length) {
+                    return true;
+                }
+            }
+            start = end + 1;
+        }
+        return false;
+    }
+
+    private static String join(final Set<String> names) {
+        final StringBuilder buf = new StringBuilder();
+        for (final String name : names) {
+            if (buf.length() > 0) {
+                buf.append((char) SEPARATOR);
+            }
+            buf.append(name);
+        }
+        return buf.toString();
+    }
+
+    private int index(final long position) {
+        return (int) (position % m_capacity);
+    }
+
+    private byte getByte(final long position) {
+        return m_buffer.get(index(position));
+    }
+
+    private int getInt(final long position) {
+        return ((getByte(position) & 0xff) << 24)
+                | ((getByte(position + 1) & 0xff) << 16)
+                | ((getByte(position + 2) & 0xff) << 8)
+                | (getByte(position + 3) & 0xff);
+    }
+
+    private int getShort(final long position) {
+        return ((getByte(position) & 0xff) << 8) | (getByte(position + 1) & 0xff);
+    }
+
+    private void putInt(final long position, final int value) {
+        m_buffer.put(index(position), (byte) (value >>> 24));
+        m_buffer.put(index(position + 1), (byte) (value >>> 16));
+        m_buffer.put(index(position + 2), (byte) (value >>> 8));
+        m_buffer.put(index(position + 3), (byte) value);
+    }
+
+    private void putShort(final long position, final short value) {
+        m_buffer.put(index(position), (byte) (value >>> 8));
+        m_buffer.put(index(position + 1), (byte) value);
+    }
+
+    private void put(final long position, final byte[] src) {
+        final int start = index(position);
+        final int first = Math.min(src.length, m_capacity - start);
+        final ByteBuffer view = m_buffer.duplicate();
+        view.position(start);
+        view.put(src, 0, first);
+        if (first < src.length) {
+            view.position(0);
+            view.put(src, first, src.length - first);
+        }
+    }
+
+    private void get(final long position, final byte[] dst) {
+        final int start = index(position);
+        final int first = Math.min(dst.length, m_capacity - start);
+        final ByteBuffer view = m_buffer.duplicate();
+        view.position(start);
+        view.get(dst, 0, first);
+        if (first < dst.length) {
+            view.position(0);
+            view.get(dst, first, dst.length - first);
+        }
+    }
+
+    static byte[] encode(final MeasurementSet measurementSet) {
+        final List<Measurement> measurements = measurementSet.getMeasurements();
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + 48 * measurements.size());
+        final DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            // only a lightweight measurement set guarantees that all its
+            // measurements share the node, service, interface and timestamp
+            final boolean lightweight = measurementSet instanceof LightweightMeasurementSet;
+            if (lightweight) {
+                final LightweightMeasurementSet set = (LightweightMeasurementSet) measurementSet;
+                out.writeByte(LIGHTWEIGHT);
+                writeHeader(out, set.getNodeId(), set.getService(), set.getNetInterface(), set.getTimestamp());
+            } else {
+                out.writeByte(PER_MEASUREMENT);
+            }
+            out.writeInt(measurements.size());
+            for (final Measurement measurement : measurements) {
+                if (!lightweight) {
+                    writeHeader(out, measurement.getNodeId(), measurement.getService(), measurement.getNetInterface(), measurement.getTimestamp());
+                }
+                writeString(out, measurement.getMetricId());
+                writeString(out, measurement.getMetricType());
+                writeString(out, measurement.getValue());
+                writeString(out, measurement.getOnmsLogicMetricId());
+            }
+            out.flush();
+        } catch (final IOException e) {
+            // cannot happen when writing to a byte array
+            throw new IllegalStateException("Unable to encode measurement set", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static MeasurementSet decode(final byte[] payload) {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        try {
+            if (in.readByte() == PER_MEASUREMENT) {
+                final DefaultMeasurementSet measurementSet = new DefaultMeasurementSet();
+                final int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    final Measurement measurement = new DefaultMeasurement();
+                    measurement.setNodeId(in.readInt());
+                    measurement.setService(readString(in));
+                    measurement.setNetInterface(readString(in));
+                    measurement.setTimestamp(readDate(in));
+                    measurement.setMetricId(readString(in));
+                    measurement.setMetricType(readString(in));
+                    measurement.setValue(readString(in));
+                    measurement.setOnmsLogicMetricId(readString(in));
+                    measurementSet.addMeasurement(measurement);
+                }
+                return measurementSet;
+            }
+
+            final int nodeId = in.readInt();
+            final String service = readString(in);
+            final String netInterface = readString(in);
+            final Date timestamp = readDate(in);
+            final LightweightMeasurementSet measurementSet = new LightweightMeasurementSet(nodeId, service, netInterface, timestamp);
+            final int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                final String metricId = readString(in);
+                final String metricType = readString(in);
+                final String value = readString(in);
+                final String onmsLogicMetricId = readString(in);
+                measurementSet.addMeasurement(metricId, metricType, value, onmsLogicMetricId);
+            }
+            return measurementSet;
+        } catch (final IOException e) {
+            throw new IllegalStateException("Corrupt measurement set in NRTG buffer", e);
+        }
+    }
+
+    private static void writeHeader(final DataOutputStream out, final int nodeId, final String service, final String netInterface, final Date timestamp) throws IOException {
+        out.writeInt(nodeId);
+        writeString(out, service);
+        writeString(out, netInterface);
+        out.writeLong(timestamp == null ? Long.MIN_VALUE : timestamp.getTime());
+    }
+
+    private static void writeString(final DataOutputStream out, final String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(final DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static Date readDate(final DataInputStream in) throws IOException {
+        final long timestamp = in.readLong();
+        return timestamp == Long.MIN_VALUE ? null : new Date(timestamp);
+    }
+
+    private static Measurement copy(final Measurement measurement) {
+        final Measurement copy = new DefaultMeasurement();
+        copy.setNodeId(measurement.getNodeId());
+        copy.setService(measurement.getService());
+        copy.setNetInterface(measurement.getNetInterface());
+        copy.setTimestamp(measurement.getTimestamp() == null ? null : new Date(measurement.getTimestamp().getTime()));
+        copy.setMetricId(measurement.getMetricId());
+        copy.setMetricType(measurement.getMetricType());
+        copy.setValue(measurement.getValue());
+        copy.setOnmsLogicMetricId(measurement.getOnmsLogicMetricId());
+        return copy;
+    }
+
+    /**
+     * @return the size of the buffer in bytes
+     */
+    int getCapacity() {
+        return m_capacity;
+    }
+
+    /**
+     * @return the number of bytes currently used by measurement sets
+     */
+    long getUsed() {
+        m_lock.readLock().lock();
+        try {
+            return m_head - m_tail;
+        } finally {
+            m_lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of measurement sets currently in the buffer
+     */
+    long getRecords() {
+        m_lock.readLock().lock();
+        try {
+            return m_records;
+        } finally {
+            m_lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of measurement sets stored since startup
+     */
+    long getPublished() {
+        m_lock.readLock().lock();
+        try {
+            return m_published;
+        } finally {
+            m_lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of measurement sets overwritten to make room
+     */
+    long getOverwritten() {
+        m_lock.readLock().lock();
+        try {
+            return m_overwritten;
+        } finally {
+            m_lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of measurement sets too large for the buffer
+     */
+    long getRejected() {
+        m_lock.readLock().lock();
+        try {
+            return m_rejected;
+        } finally {
+            m_lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return how often a destination found that measurement sets it had
+     *         not read yet were overwritten
+     */
+    synchronized long getOverruns() {
+        return m_overruns;
+    }
+
+    /**
+     * @return the number of records that have been decoded, once for all
+     *         their destinations
+     */
+    synchronized long getDecoded() {
+        return m_decoded;
+    }
+
+    /**
+     * @return the number of destinations with a cursor
+     */
+    int getDestinationCount() {
+        return m_cursors.size();
+    }
+}
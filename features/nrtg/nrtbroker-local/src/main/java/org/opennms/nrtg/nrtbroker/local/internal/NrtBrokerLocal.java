@@ -28,9 +28,7 @@
 
 package org.opennms.nrtg.nrtbroker.local.internal;
 
-import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -48,61 +46,18 @@ import org.slf4j.LoggerFactory;
 
 public class NrtBrokerLocal implements NrtBroker, NrtBrokerLocalMBean {
 
-    private class TimedOutMap {
-        private Map<String, List<MeasurementSet>> m_measurementSets = new HashMap<String, List<MeasurementSet>>();
-        private Map<String, Date> m_lastAccess = new HashMap<String, Date>();
-
-        public synchronized List<MeasurementSet> getAndRemove(final String key) {
-            m_lastAccess.put(key, new Date());
-            final List<MeasurementSet> measurementSetList = m_measurementSets.get(key);
-            m_measurementSets.put(key, new ArrayList<MeasurementSet>());
-
-            return measurementSetList;
-        }
-
-        public synchronized void addMeasurementSets(final Map<String, MeasurementSet> measurementSets) {
-            for (final Map.Entry<String, MeasurementSet> entry : measurementSets.entrySet()) {
-                String[] arr = entry.getKey().split(",");
-
-                for (String destination : arr) {
-                    addMeasurementSet(destination.trim(), entry.getValue());
-                }
-            }
-
-            doHousekeeping();
-        }
-
-        public synchronized void addMeasurementSet(String key, MeasurementSet measurementSet) {
-            if (!m_measurementSets.containsKey(key)) {
-                m_measurementSets.put(key, new ArrayList<MeasurementSet>());
-            }
-
-            List<MeasurementSet> measurementSetList = m_measurementSets.get(key);
-            measurementSetList.add(measurementSet);
-        }
-
-        private synchronized void doHousekeeping() {
-            for (final String key : m_lastAccess.keySet()) {
-                final Date lastAccess = m_lastAccess.get(key);
-                final Date now = new Date();
-                if (now.getTime() - lastAccess.getTime() > 120000) {
-                    m_lastAccess.remove(key);
-                    m_measurementSets.remove(key);
-
-                    logger.warn("Timed out object removed '{}'", key);
-                }
-            }
-        }
+    private static Logger logger = LoggerFactory.getLogger("OpenNMS.WEB." + NrtBrokerLocal.class);
 
-        private synchronized Integer getAmountOfMeasurementSets() {
-            return m_measurementSets.size();
-        }
-    }
+    /**
+     * Size in bytes of the off-heap buffer that holds the measurement sets
+     * until their destinations read them.
+     */
+    public static final String BUFFER_SIZE_PROPERTY = "org.opennms.nrtg.nrtbroker.local.bufferSize";
 
-    private static Logger logger = LoggerFactory.getLogger("OpenNMS.WEB." + NrtBrokerLocal.class);
+    private static final long DESTINATION_TIMEOUT = 120000;
 
     private List<ProtocolCollector> m_protocolCollectors;
-    private TimedOutMap m_measurementSets = new TimedOutMap();
+    private final MeasurementRing m_measurementSets = new MeasurementRing(Integer.getInteger(BUFFER_SIZE_PROPERTY, 16 * 1024 * 1024), DESTINATION_TIMEOUT);
 
     @Override
     public void publishCollectionJob(CollectionJob collectionJob) {
@@ -111,7 +66,9 @@ public class NrtBrokerLocal implements NrtBroker, NrtBrokerLocalMBean {
         if (protocolCollector != null) {
             collectionJob = protocolCollector.collect(collectionJob);
             collectionJob.setFinishedTimestamp(new Date());
-            m_measurementSets.addMeasurementSets(collectionJob.getMeasurementSetsByDestination());
+            for (final Map.Entry<String, MeasurementSet> entry : collectionJob.getMeasurementSetsByDestination().entrySet()) {
+                m_measurementSets.publish(entry.getKey(), entry.getValue());
+            }
         } else {
             logger.warn("Cannot find collector for protocol {}", collectionJob.getService());
         }
@@ -119,7 +76,7 @@ public class NrtBrokerLocal implements NrtBroker, NrtBrokerLocalMBean {
 
     @Override
     public List<MeasurementSet> receiveMeasurementSets(String destination) {
-        return m_measurementSets.getAndRemove(destination);
+        return m_measurementSets.receive(destination);
     }
 
     public ProtocolCollector getProtocolCollector(String protocol) {
@@ -142,6 +99,41 @@ public class NrtBrokerLocal implements NrtBroker, NrtBrokerLocalMBean {
 
     @Override
     public Integer getMeasurementSetSize() {
-        return m_measurementSets.getAmountOfMeasurementSets();
+        return m_measurementSets.getDestinationCount();
+    }
+
+    @Override
+    public Integer getBufferCapacity() {
+        return m_measurementSets.getCapacity();
+    }
+
+    @Override
+    public Long getBufferUsed() {
+        return m_measurementSets.getUsed();
+    }
+
+    @Override
+    public Long getBufferedMeasurementSets() {
+        return m_measurementSets.getRecords();
+    }
+
+    @Override
+    public Long getPublishedMeasurementSets() {
+        return m_measurementSets.getPublished();
+    }
+
+    @Override
+    public Long getOverwrittenMeasurementSets() {
+        return m_measurementSets.getOverwritten();
+    }
+
+    @Override
+    public Long getRejectedMeasurementSets() {
+        return m_measurementSets.getRejected();
+    }
+
+    @Override
+    public Long getDestinationOverruns() {
+        return m_measurementSets.getOverruns();
     }
 }
@@ -34,4 +34,39 @@ package org.opennms.nrtg.nrtbroker.local.internal;
  */
 public interface NrtBrokerLocalMBean {
     public Integer getMeasurementSetSize();
+
+    /**
+     * @return the size of the measurement set buffer in bytes
+     */
+    public Integer getBufferCapacity();
+
+    /**
+     * @return the number of bytes of the buffer in use
+     */
+    public Long getBufferUsed();
+
+    /**
+     * @return the number of measurement sets in the buffer
+     */
+    public Long getBufferedMeasurementSets();
+
+    /**
+     * @return the number of measurement sets published since startup
+     */
+    public Long getPublishedMeasurementSets();
+
+    /**
+     * @return the number of measurement sets overwritten to make room for newer ones
+     */
+    public Long getOverwrittenMeasurementSets();
+
+    /**
+     * @return the number of measurement sets too large for the buffer
+     */
+    public Long getRejectedMeasurementSets();
+
+    /**
+     * @return how often a destination read too late and missed measurement sets
+     */
+    public Long getDestinationOverruns();
 }
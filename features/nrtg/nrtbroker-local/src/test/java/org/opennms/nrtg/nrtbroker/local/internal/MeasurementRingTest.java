@@ -0,0 +1,305 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.nrtg.nrtbroker.local.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+import org.opennms.nrtg.api.model.DefaultMeasurement;
+import org.opennms.nrtg.api.model.DefaultMeasurementSet;
+import org.opennms.nrtg.api.model.LightweightMeasurementSet;
+import org.opennms.nrtg.api.model.Measurement;
+import org.opennms.nrtg.api.model.MeasurementSet;
+
+public class MeasurementRingTest {
+
+    private static MeasurementSet createMeasurementSet(final int sequence) {
+        final LightweightMeasurementSet measurementSet = new LightweightMeasurementSet(1, "SNMP", "192.168.0.1", new Date(1000L * sequence));
+        measurementSet.addMeasurement(".1.3.6.1.2.1.2.2.1.10.1", "counter32", Integer.toString(sequence), "ifInOctets");
+        measurementSet.addMeasurement(".1.3.6.1.2.1.2.2.1.16.1", "counter32", Integer.toString(2 * sequence), "ifOutOctets");
+        return measurementSet;
+    }
+
+    private static String getValue(final MeasurementSet measurementSet, final String metricId) {
+        for (final Measurement measurement : measurementSet.getMeasurements()) {
+            if (metricId.equals(measurement.getMetricId())) {
+                return measurement.getValue();
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void testRoundTrip() {
+        final MeasurementSet original = createMeasurementSet(42);
+        final MeasurementSet decoded = MeasurementRing.decode(MeasurementRing.encode(original));
+
+        assertEquals(original.getMeasurements().size(), decoded.getMeasurements().size());
+        for (final Measurement measurement : decoded.getMeasurements()) {
+            assertEquals(1, measurement.getNodeId());
+            assertEquals("SNMP", measurement.getService());
+            assertEquals("192.168.0.1", measurement.getNetInterface());
+            assertEquals(new Date(42000L), measurement.getTimestamp());
+            assertEquals("counter32", measurement.getMetricType());
+        }
+        assertEquals("42", getValue(decoded, ".1.3.6.1.2.1.2.2.1.10.1"));
+        assertEquals("84", getValue(decoded, ".1.3.6.1.2.1.2.2.1.16.1"));
+    }
+
+    /**
+     * The measurements of a default measurement set may each belong to a
+     * different node, service, interface and time.
+     */
+    @Test
+    public void testRoundTripDefaultMeasurementSet() {
+        final DefaultMeasurementSet original = new DefaultMeasurementSet();
+        for (int i = 1; i <= 2; i++) {
+            final Measurement measurement = new DefaultMeasurement();
+            measurement.setNodeId(i);
+            measurement.setService("SNMP" + i);
+            measurement.setNetInterface("192.168.0." + i);
+            measurement.setTimestamp(new Date(1000L * i));
+            measurement.setMetricId(".1.3.6.1.2.1.2.2.1.10." + i);
+            measurement.setMetricType("counter32");
+            measurement.setValue(Integer.toString(10 * i));
+            measurement.setOnmsLogicMetricId("ifInOctets");
+            original.addMeasurement(measurement);
+        }
+
+        final List<Measurement> decoded = MeasurementRing.decode(MeasurementRing.encode(original)).getMeasurements();
+        assertEquals(2, decoded.size());
+        for (int i = 1; i <= 2; i++) {
+            final Measurement measurement = decoded.get(i - 1);
+            assertEquals(i, measurement.getNodeId());
+            assertEquals("SNMP" + i, measurement.getService());
+            assertEquals("192.168.0." + i, measurement.getNetInterface());
+            assertEquals(new Date(1000L * i), measurement.getTimestamp());
+            assertEquals(".1.3.6.1.2.1.2.2.1.10." + i, measurement.getMetricId());
+            assertEquals(Integer.toString(10 * i), measurement.getValue());
+            assertEquals("ifInOctets", measurement.getOnmsLogicMetricId());
+        }
+    }
+
+    @Test
+    public void testDestinationsReadIndependently() {
+        final MeasurementRing ring = new MeasurementRing(64 * 1024, 120000);
+
+        ring.publish("task1, task2", createMeasurementSet(1));
+        ring.publish("task2", createMeasurementSet(2));
+
+        final List<MeasurementSet> task1 = ring.receive("task1");
+        assertEquals(1, task1.size());
+        assertEquals("1", getValue(task1.get(0), ".1.3.6.1.2.1.2.2.1.10.1"));
+
+        final List<MeasurementSet> task2 = ring.receive("task2");
+        assertEquals(2, task2.size());
+        assertEquals("1", getValue(task2.get(0), ".1.3.6.1.2.1.2.2.1.10.1"));
+        assertEquals("2", getValue(task2.get(1), ".1.3.6.1.2.1.2.2.1.10.1"));
+
+        // everything has been read
+        assertTrue(ring.receive("task1").isEmpty());
+        assertTrue(ring.receive("task2").isEmpty());
+
+        // a prefix of another destination's name must not match
+        assertTrue(ring.receive("task").isEmpty());
+        ring.publish("task3", createMeasurementSet(3));
+        assertTrue(ring.receive("task").isEmpty());
+
+        assertEquals(3, ring.getPublished());
+        assertEquals(4, ring.getDestinationCount());
+    }
+
+    /**
+     * Destinations share the measurement set decoded by the first of them,
+     * but cannot change what the others see.
+     */
+    @Test
+    public void testDestinationsShareDecodedSets() {
+        final MeasurementRing ring = new MeasurementRing(64 * 1024, 120000);
+        ring.publish("task1, task2", createMeasurementSet(1));
+
+        final MeasurementSet task1 = ring.receive("task1").get(0);
+        final MeasurementSet task2 = ring.receive("task2").get(0);
+        assertSame(task1, task2);
+        assertEquals(1, ring.getDecoded());
+
+        task1.getMeasurements().get(0).setValue("changed");
+        assertEquals("1", getValue(task2, ".1.3.6.1.2.1.2.2.1.10.1"));
+        try {
+            task1.getMeasurements().clear();
+            fail("the measurements of a shared set must not be modifiable");
+        } catch (final UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testOldestAreOverwritten() {
+        final int recordSize = MeasurementRing.encode(createMeasurementSet(0)).length + 6 + "task1".length();
+        // room for ten records and a bit, so that records wrap around the end
+        final MeasurementRing ring = new MeasurementRing(10 * recordSize + recordSize / 2, 120000);
+
+        for (int i = 0; i < 25; i++) {
+            assertTrue(ring.publish("task1", createMeasurementSet(i)));
+        }
+
+        assertEquals(10, ring.getRecords());
+        assertEquals(15, ring.getOverwritten());
+        assertTrue(ring.getUsed() <= ring.getCapacity());
+
+        final List<MeasurementSet> measurementSets = ring.receive("task1");
+        assertEquals(10, measurementSets.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(Integer.toString(15 + i), getValue(measurementSets.get(i), ".1.3.6.1.2.1.2.2.1.10.1"));
+        }
+        assertEquals(1, ring.getOverruns());
+
+        for (int i = 25; i < 30; i++) {
+            ring.publish("task1", createMeasurementSet(i));
+        }
+        assertEquals(5, ring.receive("task1").size());
+        assertEquals(1, ring.getOverruns());
+    }
+
+    @Test
+    public void testTooLargeIsRejected() {
+        final MeasurementRing ring = new MeasurementRing(32, 120000);
+        assertFalse(ring.publish("task1", createMeasurementSet(1)));
+        assertEquals(1, ring.getRejected());
+        assertEquals(0, ring.getRecords());
+    }
+
+    @Test
+    public void testIdleDestinationsAreRemoved() throws Exception {
+        final MeasurementRing ring = new MeasurementRing(64 * 1024, 50);
+        ring.publish("task1", createMeasurementSet(1));
+        assertEquals(1, ring.getDestinationCount());
+        Thread.sleep(100);
+        ring.publish("task2", createMeasurementSet(2));
+        assertEquals(1, ring.getDestinationCount());
+    }
+
+    /**
+     * Every measurement set is stored once however many destinations it is
+     * addressed to, and every destination still reads all of them.
+     */
+    @Test
+    public void testFanOutStoresEachSetOnce() {
+        final int measurementSets = 2000;
+        for (final int destinations : new int[] { 1, 10, 100 }) {
+            final MeasurementRing ring = new MeasurementRing(64 * 1024 * 1024, 120000);
+            final StringBuilder names = new StringBuilder();
+            for (int d = 0; d < destinations; d++) {
+                if (d > 0) {
+                    names.append(", ");
+                }
+                names.append("NrtCollectionTaskId_").append(d);
+            }
+            final String destinationString = names.toString();
+
+            for (int i = 0; i < measurementSets; i++) {
+                ring.publish(destinationString, createMeasurementSet(i));
+            }
+            assertEquals(measurementSets, ring.getPublished());
+            assertEquals(measurementSets, ring.getRecords());
+
+            for (int d = 0; d < destinations; d++) {
+                assertEquals(measurementSets, ring.receive("NrtCollectionTaskId_" + d).size());
+            }
+            assertEquals(measurementSets, ring.getDecoded());
+        }
+    }
+
+    /**
+     * Compares sending every measurement set to 100 destinations through
+     * the shared ring with keeping a copy of it per destination, as the
+     * broker did before.  Sharing must be faster, since each set is encoded,
+     * stored and decoded once instead of 100 times.
+     */
+    @Test
+    public void testFanOutThroughput() {
+        final int measurementSets = 200;
+        final int destinations = 100;
+        final List<String> names = new ArrayList<String>();
+        for (int d = 0; d < destinations; d++) {
+            names.add("NrtCollectionTaskId_" + d);
+        }
+
+        long shared = Long.MAX_VALUE;
+        long copied = Long.MAX_VALUE;
+        // the best of a few rounds, the first of which warms up the JIT
+        for (int round = 0; round < 3; round++) {
+            shared = Math.min(shared, fanOut(names, measurementSets, true));
+            copied = Math.min(copied, fanOut(names, measurementSets, false));
+        }
+        assertTrue("sharing took " + shared / 1000000 + "ms, copying " + copied / 1000000 + "ms", shared < copied);
+    }
+
+    /**
+     * Publishes the measurement sets for the destinations, either once for
+     * all of them or once per destination, and has every destination
+     * receive them.
+     *
+     * @return the time it took in nanoseconds
+     */
+    private static long fanOut(final List<String> names, final int measurementSets, final boolean shared) {
+        final MeasurementRing ring = new MeasurementRing(64 * 1024 * 1024, 120000);
+        final StringBuilder allNames = new StringBuilder();
+        for (final String name : names) {
+            if (allNames.length() > 0) {
+                allNames.append(", ");
+            }
+            allNames.append(name);
+        }
+
+        final long start = System.nanoTime();
+        for (int i = 0; i < measurementSets; i++) {
+            final MeasurementSet measurementSet = createMeasurementSet(i);
+            if (shared) {
+                ring.publish(allNames.toString(), measurementSet);
+            } else {
+                for (final String name : names) {
+                    ring.publish(name, measurementSet);
+                }
+            }
+        }
+        for (final String name : names) {
+            assertEquals(measurementSets, ring.receive(name).size());
+        }
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.poller;
+
+import java.util.Map;
+
+/**
+ * <p>
+ * A {@link ServiceMonitor} that can poll a service without blocking the
+ * calling thread. Instead of waiting for the service to answer,
+ * {@link #pollAsync(MonitoredService, Map)} starts the poll and returns a
+ * {@link PollFuture} that is done once the status of the service is known,
+ * so that a few threads can keep a large number of polls in flight.
+ * </p>
+ *
+ * <p>
+ * The future is usually completed on the I/O thread of the monitor, so
+ * listeners added to it must not block. The synchronous
+ * {@link ServiceMonitor#poll(MonitoredService, Map)} must keep working for
+ * callers that do not know about asynchronous monitors.
+ * </p>
+ */
+public interface AsyncServiceMonitor extends ServiceMonitor {
+
+    /**
+     * Start polling the service.
+     *
+     * @param svc
+     *            the service to poll
+     * @param parameters
+     *            the parameters of the service from the package definition
+     * @return a {@link PollFuture} that is done with the same status that
+     *         {@link ServiceMonitor#poll(MonitoredService, Map)} would have
+     *         returned, or null if this monitor can't poll the service
+     *         without blocking, in which case the caller polls it with
+     *         {@link ServiceMonitor#poll(MonitoredService, Map)}
+     * @exception java.lang.RuntimeException
+     *                Thrown for any unrecoverable errors in starting the poll.
+     */
+    public PollFuture pollAsync(MonitoredService svc, Map<String, Object> parameters);
+}
@@ -0,0 +1,147 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.poller;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>DefaultPollFuture class.</p>
+ */
+public class DefaultPollFuture implements PollFuture {
+    private static final Logger LOG = LoggerFactory.getLogger(DefaultPollFuture.class);
+
+    private PollStatus m_pollStatus;
+
+    private List<PollFutureListener> m_listeners = new ArrayList<PollFutureListener>(1);
+
+    /**
+     * Create a future that is not done yet.
+     */
+    public DefaultPollFuture() {
+    }
+
+    /**
+     * Create a future that is already done.
+     *
+     * @param pollStatus a {@link org.opennms.netmgt.poller.PollStatus} object.
+     */
+    public DefaultPollFuture(final PollStatus pollStatus) {
+        m_pollStatus = pollStatus;
+        m_listeners = null;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized PollStatus getPollStatus() {
+        return m_pollStatus;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setPollStatus(final PollStatus pollStatus) {
+        final List<PollFutureListener> listeners;
+        synchronized (this) {
+            if (m_pollStatus != null) {
+                LOG.debug("setPollStatus: poll is already done with {}, ignoring {}", m_pollStatus, pollStatus);
+                return;
+            }
+            m_pollStatus = pollStatus;
+            listeners = m_listeners;
+            m_listeners = null;
+            notifyAll();
+        }
+        for (final PollFutureListener listener : listeners) {
+            notifyListener(listener);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized boolean isDone() {
+        return m_pollStatus != null;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized PollStatus awaitFor() throws InterruptedException {
+        while (m_pollStatus == null) {
+            wait();
+        }
+        return m_pollStatus;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized PollStatus awaitForUninterruptibly() {
+        boolean interrupted = false;
+        while (m_pollStatus == null) {
+            try {
+                wait();
+            } catch (final InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return m_pollStatus;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public PollFuture addListener(final PollFutureListener listener) {
+        synchronized (this) {
+            if (m_pollStatus == null) {
+                m_listeners.add(listener);
+                return this;
+            }
+        }
+        notifyListener(listener);
+        return this;
+    }
+
+    private void notifyListener(final PollFutureListener listener) {
+        try {
+            listener.operationComplete(this);
+        } catch (final Throwable e) {
+            LOG.warn("Unexpected exception in poll listener {}", listener, e);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return "PollFuture[" + getPollStatus() + "]";
+    }
+}
@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.poller;
+
+/**
+ * The result of a poll started by an {@link AsyncServiceMonitor}.
+ */
+public interface PollFuture {
+
+    /**
+     * <p>getPollStatus</p>
+     *
+     * @return the status of the service, or <code>null</code> if the poll
+     *         is not done yet
+     */
+    PollStatus getPollStatus();
+
+    /**
+     * Complete the poll. Only the first status that is set counts.
+     *
+     * @param pollStatus a {@link org.opennms.netmgt.poller.PollStatus} object.
+     */
+    void setPollStatus(PollStatus pollStatus);
+
+    /**
+     * <p>isDone</p>
+     *
+     * @return whether the status of the service is known
+     */
+    boolean isDone();
+
+    /**
+     * Wait for the poll to be done.
+     *
+     * @return the status of the service
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    PollStatus awaitFor() throws InterruptedException;
+
+    /**
+     * Wait for the poll to be done, ignoring interrupts.
+     *
+     * @return the status of the service
+     */
+    PollStatus awaitForUninterruptibly();
+
+    /**
+     * Add a listener that is called once the poll is done, right away if it
+     * already is.
+     *
+     * @param listener a {@link org.opennms.netmgt.poller.PollFutureListener} object.
+     * @return this future
+     */
+    PollFuture addListener(PollFutureListener listener);
+}
@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.poller.monitors;
+
+import java.util.Map;
+
+import org.opennms.netmgt.poller.AsyncServiceMonitor;
+import org.opennms.netmgt.poller.DefaultPollFuture;
+import org.opennms.netmgt.poller.MonitoredService;
+import org.opennms.netmgt.poller.PollFuture;
+import org.opennms.netmgt.poller.PollStatus;
+import org.opennms.netmgt.poller.ServiceMonitor;
+
+/**
+ * <p>
+ * Presents any {@link ServiceMonitor} as an {@link AsyncServiceMonitor}.
+ * Monitors that can poll asynchronously are passed through; all others, and
+ * asynchronous monitors that can't poll a particular service, are polled on
+ * the calling thread and return a future that is already done, so
+ * that callers can treat every monitor the same way.
+ * </p>
+ */
+public class AsyncServiceMonitorAdaptor implements AsyncServiceMonitor {
+
+    private final ServiceMonitor m_serviceMonitor;
+
+    /**
+     * <p>Constructor for AsyncServiceMonitorAdaptor.</p>
+     *
+     * @param monitor a {@link org.opennms.netmgt.poller.ServiceMonitor} object.
+     */
+    public AsyncServiceMonitorAdaptor(final ServiceMonitor monitor) {
+        m_serviceMonitor = monitor;
+    }
+
+    /**
+     * <p>isAsync</p>
+     *
+     * @return whether the adapted monitor polls without blocking
+     */
+    public boolean isAsync() {
+        return m_serviceMonitor instanceof AsyncServiceMonitor;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void initialize(final Map<String, Object> parameters) {
+        m_serviceMonitor.initialize(parameters);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void release() {
+        m_serviceMonitor.release();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void initialize(final MonitoredService svc) {
+        m_serviceMonitor.initialize(svc);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void release(final MonitoredService svc) {
+        m_serviceMonitor.release(svc);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public PollStatus poll(final MonitoredService svc, final Map<String, Object> parameters) {
+        return m_serviceMonitor.poll(svc, parameters);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public PollFuture pollAsync(final MonitoredService svc, final Map<String, Object> parameters) {
+        if (isAsync()) {
+            final PollFuture future = ((AsyncServiceMonitor)m_serviceMonitor).pollAsync(svc, parameters);
+            if (future != null) {
+                return future;
+            }
+        }
+        return new DefaultPollFuture(m_serviceMonitor.poll(svc, parameters));
+    }
+}
@@ -28,6 +28,8 @@
 
 package org.opennms.netmgt.alarmd;
 
+import java.util.List;
+
 import org.opennms.netmgt.model.OnmsAlarm;
 import org.opennms.netmgt.xml.event.Event;
 import org.springframework.transaction.annotation.Transactional;
@@ -49,4 +51,16 @@ public interface AlarmPersister {
     @Transactional
     public abstract OnmsAlarm persist(Event event);
 
+    /**
+     * Persists a batch of events in a single transaction.  All events of the
+     * batch that share a reduction key are reduced into their alarm with a
+     * single lookup and a single update.
+     *
+     * @param events the events to persist
+     * @return the alarm of each event, in the order of the events, or null
+     *         for events that don't create alarms
+     */
+    @Transactional
+    public abstract List<OnmsAlarm> persist(List<Event> events);
+
 }
@@ -28,6 +28,12 @@
 
 package org.opennms.netmgt.alarmd;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 import org.opennms.netmgt.dao.api.AlarmDao;
 import org.opennms.netmgt.dao.api.EventDao;
 import org.opennms.netmgt.model.OnmsAlarm;
@@ -55,15 +61,51 @@ public class AlarmPersisterImpl implements AlarmPersister {
      * @return */
     @Override
     public OnmsAlarm persist(Event event) {
-        if (!checkEventSanityAndDoWeProcess(event)) {
-            return null;
+        return persist(Collections.singletonList(event)).get(0);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public List<OnmsAlarm> persist(List<Event> events) {
+        final List<OnmsAlarm> alarms = new ArrayList<OnmsAlarm>(events.size());
+
+        // the alarms touched by this batch and the last event reduced into each of them
+        final Map<String, OnmsAlarm> batchAlarms = new LinkedHashMap<String, OnmsAlarm>();
+        final Map<String, OnmsEvent> lastEvents = new LinkedHashMap<String, OnmsEvent>();
+        final Map<String, Boolean> autoClean = new LinkedHashMap<String, Boolean>();
+
+        for (final Event event : events) {
+            if (!checkEventSanityAndDoWeProcess(event)) {
+                alarms.add(null);
+                continue;
+            }
+            LOG.debug("process: {}; nodeid: {}; ipaddr: {}; serviceid: {}", event.getUei(), event.getNodeid(), event.getInterface(), event.getService());
+
+            final OnmsAlarm alarm = addOrReduceEventAsAlarm(event, batchAlarms, lastEvents);
+            // a new alarm has no previous events to clean, only reductions do
+            if (event.getAlarmData().isAutoClean() && alarm.getCounter() > 1) {
+                autoClean.put(alarm.getReductionKey(), Boolean.TRUE);
+            }
+            alarms.add(alarm);
         }
-        LOG.debug("process: {}; nodeid: {}; ipaddr: {}; serviceid: {}", event.getUei(), event.getNodeid(), event.getInterface(), event.getService());
 
-        return addOrReduceEventAsAlarm(event);
+        // all the reductions of a key end up as one update of its alarm
+        for (final OnmsAlarm alarm : batchAlarms.values()) {
+            m_alarmDao.update(alarm);
+        }
+
+        if (!autoClean.isEmpty()) {
+            // make sure the events reduced above are written before deleting around them
+            m_eventDao.flush();
+            for (final String reductionKey : autoClean.keySet()) {
+                m_eventDao.deletePreviousEventsForAlarm(batchAlarms.get(reductionKey).getId(), lastEvents.get(reductionKey));
+            }
+        }
+
+        return alarms;
     }
 
-    private OnmsAlarm addOrReduceEventAsAlarm(Event event) {
+    private OnmsAlarm addOrReduceEventAsAlarm(Event event, Map<String, OnmsAlarm> batchAlarms, Map<String, OnmsEvent> lastEvents) {
         //TODO: Understand why we use Assert
         Assert.notNull(event, "Incoming event was null, aborting"); 
         Assert.isTrue(event.getDbid() > 0, "Incoming event has an illegal dbid (" + event.getDbid() + "), aborting");
@@ -75,7 +117,10 @@ public class AlarmPersisterImpl implements AlarmPersister {
     
         String reductionKey = event.getAlarmData().getReductionKey();
         LOG.debug("addOrReduceEventAsAlarm: looking for existing reduction key: {}", reductionKey);
-        OnmsAlarm alarm = m_alarmDao.findByReductionKey(reductionKey);
+        OnmsAlarm alarm = batchAlarms.get(reductionKey);
+        if (alarm == null) {
+            alarm = m_alarmDao.findByReductionKey(reductionKey);
+        }
     
         if (alarm == null) {
             LOG.debug("addOrReduceEventAsAlarm: reductionKey:{} not found, instantiating new alarm", reductionKey);
@@ -87,13 +132,11 @@ public class AlarmPersisterImpl implements AlarmPersister {
         } else {
             LOG.debug("addOrReduceEventAsAlarm: reductionKey:{} found, reducing event to existing alarm: {}", reductionKey, alarm.getIpAddr());
             reduceEvent(e, alarm, event);
-            m_alarmDao.update(alarm);
             m_eventDao.update(e);
-    
-            if (event.getAlarmData().isAutoClean()) {
-                m_eventDao.deletePreviousEventsForAlarm(alarm.getId(), e);
-            }
         }
+
+        batchAlarms.put(reductionKey, alarm);
+        lastEvents.put(reductionKey, e);
         
         return alarm;
     }
@@ -28,14 +28,20 @@
 
 package org.opennms.netmgt.alarmd;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import org.opennms.netmgt.alarmd.api.NorthboundAlarm;
 import org.opennms.netmgt.alarmd.api.Northbounder;
 import org.opennms.netmgt.daemon.SpringServiceDaemon;
 import org.opennms.netmgt.model.OnmsAlarm;
 import org.opennms.netmgt.model.events.EventForwarder;
+import org.opennms.netmgt.model.events.EventPartitionKeys;
+import org.opennms.netmgt.model.events.ParallelEventListener;
 import org.opennms.netmgt.model.events.annotations.EventHandler;
 import org.opennms.netmgt.model.events.annotations.EventListener;
 import org.opennms.netmgt.xml.event.Event;
@@ -56,7 +62,7 @@ import org.springframework.beans.factory.DisposableBean;
  * @version $Id: $
  */
 @EventListener(name=Alarmd.NAME, logPrefix="alarmd")
-public class Alarmd implements SpringServiceDaemon, DisposableBean {
+public class Alarmd implements SpringServiceDaemon, ParallelEventListener, DisposableBean {
     private static final Logger LOG = LoggerFactory.getLogger(Alarmd.class);
 
     /** Constant <code>NAME="Alarmd"</code> */
@@ -67,6 +73,31 @@ public class Alarmd implements SpringServiceDaemon, DisposableBean {
     private List<Northbounder> m_northboundInterfaces;
 
     private AlarmPersister m_persister;
+
+    /**
+     * How long, in milliseconds, to collect alarm events before persisting
+     * them as one batch.  Zero persists every event as it arrives.
+     */
+    private long m_reductionBatchInterval = Long.getLong("org.opennms.alarmd.reductionBatchInterval", 100L);
+
+    private int m_reductionBatchSize = Integer.getInteger("org.opennms.alarmd.reductionBatchSize", 1000);
+
+    /**
+     * How many threads Eventd hands events to Alarmd on.  Events for the
+     * same reduction key always go to the same thread.
+     */
+    private int m_threads = Integer.getInteger("org.opennms.alarmd.threads", 1);
+
+    /**
+     * Alarm events waiting to be persisted by the reducer.  When it is full,
+     * {@link #onEvent(Event)} blocks the Eventd thread until the reducer
+     * catches up, so events are delayed rather than dropped or reordered.
+     */
+    private final BlockingQueue<Event> m_pendingEvents = new LinkedBlockingQueue<Event>(Integer.getInteger("org.opennms.alarmd.reductionQueueSize", 10000));
+
+    private Thread m_reducer;
+
+    private volatile boolean m_running = false;
     
     
     
@@ -84,8 +115,21 @@ public class Alarmd implements SpringServiceDaemon, DisposableBean {
     		return;
     	}
     	
-        OnmsAlarm alarm = m_persister.persist(e);
+        if (m_running && e.getAlarmData() != null) {
+            try {
+                m_pendingEvents.put(e);
+                return;
+            } catch (final InterruptedException ie) {
+                LOG.warn("onEvent: interrupted waiting to queue alarm event {}, persisting it now", e.getUei());
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        forwardAlarm(m_persister.persist(e));
         
+    }
+
+    private void forwardAlarm(final OnmsAlarm alarm) {
         if (alarm != null) {
         	NorthboundAlarm a = new NorthboundAlarm(alarm);
 
@@ -93,7 +137,65 @@ public class Alarmd implements SpringServiceDaemon, DisposableBean {
                 nbi.onAlarm(a);
             }
         }
-        
+    }
+
+    /**
+     * Collects alarm events for up to the batch interval and persists them
+     * together, so that repeated reductions of the same alarm become a
+     * single update.
+     */
+    private void reduceBatches() {
+        final List<Event> batch = new ArrayList<Event>(m_reductionBatchSize);
+        while (m_running || !m_pendingEvents.isEmpty()) {
+            try {
+                final Event first = m_pendingEvents.poll(m_reductionBatchInterval, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                final long deadline = System.currentTimeMillis() + m_reductionBatchInterval;
+                while (batch.size() < m_reductionBatchSize) {
+                    final long remaining = deadline - System.currentTimeMillis();
+                    final Event next = remaining > 0 ? m_pendingEvents.poll(remaining, TimeUnit.MILLISECONDS) : m_pendingEvents.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                persistBatch(batch);
+            } catch (final InterruptedException ie) {
+                // keep draining until stopped
+            } catch (final Throwable t) {
+                LOG.error("reduceBatches: unexpected error persisting {} alarm events", batch.size(), t);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void persistBatch(final List<Event> batch) {
+        List<OnmsAlarm> alarms;
+        try {
+            alarms = m_persister.persist(batch);
+        } catch (final RuntimeException ex) {
+            // one bad event rolls back the whole batch, retry them one by one
+            LOG.warn("persistBatch: failed to persist a batch of {} alarm events, retrying them separately", batch.size(), ex);
+            alarms = new ArrayList<OnmsAlarm>(batch.size());
+            for (final Event event : batch) {
+                try {
+                    alarms.add(m_persister.persist(event));
+                } catch (final RuntimeException e) {
+                    LOG.error("persistBatch: failed to persist alarm event {}", event.getUei(), e);
+                    alarms.add(null);
+                }
+            }
+        }
+
+        for (final OnmsAlarm alarm : alarms) {
+            forwardAlarm(alarm);
+        }
     }
 
     @EventHandler(uei = "uei.opennms.org/internal/reloadDaemonConfig")
@@ -186,6 +288,16 @@ public class Alarmd implements SpringServiceDaemon, DisposableBean {
      */
     @Override
     public void destroy() throws Exception {
+        final Thread reducer;
+        synchronized (this) {
+            m_running = false;
+            reducer = m_reducer;
+            m_reducer = null;
+        }
+        if (reducer != null) {
+            // the reducer persists what is still pending before it exits
+            reducer.join();
+        }
     }
 
     /**
@@ -203,7 +315,18 @@ public class Alarmd implements SpringServiceDaemon, DisposableBean {
      * @throws java.lang.Exception if any.
      */
     @Override
-    public void start() throws Exception {
+    public synchronized void start() throws Exception {
+        if (m_reductionBatchInterval > 0 && m_reducer == null) {
+            LOG.info("start: persisting alarm events in batches every {}ms", m_reductionBatchInterval);
+            m_running = true;
+            m_reducer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    reduceBatches();
+                }
+            }, NAME + "-Reducer");
+            m_reducer.start();
+        }
     }
 
     public void onNorthbounderRegistered(final Northbounder northbounder, final Map<String,String> properties) {
@@ -214,6 +337,53 @@ public class Alarmd implements SpringServiceDaemon, DisposableBean {
         northbounder.stop();
     }
     
+    /**
+     * <p>setReductionBatchInterval</p>
+     *
+     * @param reductionBatchInterval milliseconds to collect alarm events for, 0 to disable batching
+     */
+    public void setReductionBatchInterval(long reductionBatchInterval) {
+        m_reductionBatchInterval = reductionBatchInterval;
+    }
+
+    public long getReductionBatchInterval() {
+        return m_reductionBatchInterval;
+    }
+
+    /**
+     * <p>setReductionBatchSize</p>
+     *
+     * @param reductionBatchSize the maximum number of alarm events persisted in one batch
+     */
+    public void setReductionBatchSize(int reductionBatchSize) {
+        m_reductionBatchSize = reductionBatchSize;
+    }
+
+    public int getReductionBatchSize() {
+        return m_reductionBatchSize;
+    }
+
+    /**
+     * <p>setNumberOfThreads</p>
+     *
+     * @param threads the number of threads Eventd dispatches alarm events on
+     */
+    public void setNumberOfThreads(int threads) {
+        m_threads = threads;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getNumberOfThreads() {
+        return m_threads;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Object getPartitionKey(final Event e) {
+        return EventPartitionKeys.byReductionKey(e);
+    }
+
     public List<Northbounder> getNorthboundInterfaces() {
         return m_northboundInterfaces;
     }
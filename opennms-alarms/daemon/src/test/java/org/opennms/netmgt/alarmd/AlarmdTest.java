@@ -300,12 +300,74 @@ public class AlarmdTest implements TemporaryDatabaseAware<MockDatabase>, Initial
 
     }
 
+    @Test
+    @JUnitTemporaryDatabase(tempDbClass=MockDatabase.class)
+    public void testReductionAfterAlarmDeleted() throws Exception {
+        final String reductionKey = "deletedBehindOurBack";
+        final MockNode node = m_mockNetwork.getNode(1);
+
+        sendNodeDownEvent(reductionKey, node);
+        sendNodeDownEvent(reductionKey, node);
+        assertEquals(2, m_jdbcTemplate.queryForObject("select counter from alarms where reductionKey = ?", new Object[] { reductionKey }, Integer.class).intValue());
+
+        // delete the alarm the way a vacuumd automation would, the next event must create a new one
+        m_jdbcTemplate.update("delete from alarms where reductionKey = ?", reductionKey);
+
+        sendNodeDownEvent(reductionKey, node);
+        assertEquals(1, m_jdbcTemplate.queryForObject("select count(*) from alarms", Integer.class).intValue());
+        assertEquals(1, m_jdbcTemplate.queryForObject("select counter from alarms where reductionKey = ?", new Object[] { reductionKey }, Integer.class).intValue());
+    }
+
+    @Test
+    @JUnitTemporaryDatabase(tempDbClass=MockDatabase.class)
+    public void testBatchedReductions() throws Exception {
+        final String reductionKey = "reduceTheseInBatches";
+        final MockNode node = m_mockNetwork.getNode(1);
+        final int numberOfAlarmsToReduce = 20;
+
+        final long reductionBatchInterval = m_alarmd.getReductionBatchInterval();
+        m_alarmd.setReductionBatchInterval(200);
+        try {
+            m_alarmd.start();
+            for (int i = 0; i < numberOfAlarmsToReduce; i++) {
+                sendNodeDownEvent(reductionKey, node);
+            }
+        } finally {
+            // persists whatever is still pending
+            m_alarmd.destroy();
+            m_alarmd.setReductionBatchInterval(reductionBatchInterval);
+        }
+
+        assertEquals(1, m_jdbcTemplate.queryForObject("select count(*) from alarms", Integer.class).intValue());
+        assertEquals(numberOfAlarmsToReduce, m_jdbcTemplate.queryForObject("select counter from alarms where reductionKey = ?", new Object[] { reductionKey }, Integer.class).intValue());
+        assertEquals(0, m_jdbcTemplate.queryForObject("select count(*) from events where alarmid is null", Integer.class).intValue());
+    }
+
+    @Test
+    @JUnitTemporaryDatabase(tempDbClass=MockDatabase.class)
+    public void testAutoCleanOnReduction() throws Exception {
+        final String reductionKey = "autoCleanTheseEvents";
+        final MockNode node = m_mockNetwork.getNode(1);
+
+        sendAutoCleanNodeDownEvent(reductionKey, node);
+        assertEquals(1, m_jdbcTemplate.queryForObject("select count(*) from events where alarmid is not null", Integer.class).intValue());
+
+        sendAutoCleanNodeDownEvent(reductionKey, node);
+        sendAutoCleanNodeDownEvent(reductionKey, node);
+
+        // only the last event reduced into the alarm is kept
+        assertEquals(3, m_jdbcTemplate.queryForObject("select counter from alarms where reductionKey = ?", new Object[] { reductionKey }, Integer.class).intValue());
+        assertEquals(1, m_jdbcTemplate.queryForObject("select count(*) from events where alarmid is not null", Integer.class).intValue());
+        assertEquals(m_jdbcTemplate.queryForObject("select lastEventId from alarms where reductionKey = ?", new Object[] { reductionKey }, Integer.class),
+                     m_jdbcTemplate.queryForObject("select eventId from events where alarmid is not null", Integer.class));
+    }
+
     @Test
     public void testNullEvent() throws Exception {
         ThrowableAnticipator ta = new ThrowableAnticipator();
         ta.anticipate(new IllegalArgumentException("event argument must not be null"));
         try {
-            m_alarmd.getPersister().persist(null);
+            m_alarmd.getPersister().persist((Event) null);
         } catch (Throwable t) {
             ta.throwableReceived(t);
         }
@@ -550,6 +612,21 @@ public class AlarmdTest implements TemporaryDatabaseAware<MockDatabase>, Initial
         m_eventdIpcMgr.sendNow(event.getEvent());
     }
 
+    private void sendAutoCleanNodeDownEvent(String reductionKey, MockNode node) {
+        EventBuilder event = MockEventUtil.createNodeDownEventBuilder("Test", node);
+
+        AlarmData data = new AlarmData();
+        data.setAlarmType(1);
+        data.setReductionKey(reductionKey);
+        data.setAutoClean(true);
+        event.setAlarmData(data);
+
+        event.setLogDest("logndisplay");
+        event.setLogMessage("testing");
+
+        m_eventdIpcMgr.sendNow(event.getEvent());
+    }
+
     private void sendNodeDownEvent(String reductionKey, MockNode node) throws SQLException {
         EventBuilder event = MockEventUtil.createNodeDownEventBuilder("Test", node);
 
@@ -86,6 +86,13 @@ public class Trigger implements Serializable {
     @XmlAttribute(name = "row-count")
     private Integer _rowCount;
 
+    /**
+     * name of a trigger result column that only ever increases, used to
+     * select only the rows that are new since the last run
+     */
+    @XmlAttribute(name = "high-water-mark")
+    private String _highWaterMark;
+
     /**
      * Just a generic string used for SQL statements
      */
@@ -150,6 +157,11 @@ public class Trigger implements Serializable {
                 return false;
         } else if (!_rowCount.equals(other._rowCount))
             return false;
+        if (_highWaterMark == null) {
+            if (other._highWaterMark != null)
+                return false;
+        } else if (!_highWaterMark.equals(other._highWaterMark))
+            return false;
         if (_statement == null) {
             if (other._statement != null)
                 return false;
@@ -196,6 +208,18 @@ public class Trigger implements Serializable {
         return _rowCount == null ? DEFAULT_ROW_COUNT : _rowCount;
     }
 
+    /**
+     * Returns the value of field 'highWaterMark'. The field 'highWaterMark'
+     * has the following description: name of a trigger result column that
+     * only ever increases, used to select only the rows that are new since
+     * the last run
+     *
+     * @return the value of field 'HighWaterMark'.
+     */
+    public String getHighWaterMark() {
+        return this._highWaterMark;
+    }
+
     /**
      * Returns the value of field 'statement'. The field 'statement' has the
      * following description: Just a generic string used for SQL statements
@@ -225,6 +249,8 @@ public class Trigger implements Serializable {
                 + ((_operator == null) ? 0 : _operator.hashCode());
         result = prime * result
                 + ((_rowCount == null) ? 0 : _rowCount.hashCode());
+        result = prime * result
+                + ((_highWaterMark == null) ? 0 : _highWaterMark.hashCode());
         result = prime * result
                 + ((_statement == null) ? 0 : _statement.hashCode());
         return result;
@@ -272,6 +298,19 @@ public class Trigger implements Serializable {
         this._rowCount = rowCount;
     }
 
+    /**
+     * Sets the value of field 'highWaterMark'. The field 'highWaterMark' has
+     * the following description: name of a trigger result column that only
+     * ever increases, used to select only the rows that are new since the
+     * last run
+     *
+     * @param highWaterMark
+     *            the value of field 'highWaterMark'.
+     */
+    public void setHighWaterMark(final String highWaterMark) {
+        this._highWaterMark = highWaterMark;
+    }
+
     /**
      * Sets the value of field 'statement'. The field 'statement' has the
      * following description: Just a generic string used for SQL statements
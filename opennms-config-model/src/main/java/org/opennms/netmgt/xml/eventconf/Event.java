@@ -200,6 +200,13 @@ public class Event implements Serializable {
     @XmlTransient
 	private EventMatcher m_matcher;
 
+    /**
+     * The matcher without the varbinds, only set if the event matches on
+     * varbinds.
+     */
+    @XmlTransient
+	private EventMatcher m_maskelementMatcher;
+
     public void addAutoaction(final Autoaction autoaction) throws IndexOutOfBoundsException {
         m_autoactions.add(autoaction);
     }
@@ -890,8 +897,26 @@ public class Event implements Serializable {
 		return m_matcher.matches(matchingEvent);
 	}
 
+	/**
+	 * Whether matching an event against this definition depends on the
+	 * event's parameters.
+	 */
+	public boolean dependsOnVarbinds() {
+		return m_mask != null && m_mask.getMaskelementCount() > 0 && m_mask.hasVarbindMatcher();
+	}
+
+	/**
+	 * Whether the event matches this definition apart from the varbinds.  For
+	 * a definition that doesn't depend on varbinds this is the same as
+	 * {@link #matches(org.opennms.netmgt.xml.event.Event)}.
+	 */
+	public boolean matchesIgnoringVarbinds(org.opennms.netmgt.xml.event.Event matchingEvent) {
+		return m_maskelementMatcher == null ? m_matcher.matches(matchingEvent) : m_maskelementMatcher.matches(matchingEvent);
+	}
+
 	public void initialize() {
 		m_matcher = constructMatcher();
+		m_maskelementMatcher = dependsOnVarbinds() ? m_mask.constructMaskelementMatcher() : null;
 	}
 	
 	public List<String> getMaskElementValues(String mename) {
@@ -0,0 +1,286 @@
+package org.opennms.netmgt.xml.eventconf;
+
+import static org.opennms.netmgt.xml.eventconf.Maskelement.TAG_SNMP_EID;
+import static org.opennms.netmgt.xml.eventconf.Maskelement.TAG_SNMP_GENERIC;
+import static org.opennms.netmgt.xml.eventconf.Maskelement.TAG_SNMP_SPECIFIC;
+import static org.opennms.netmgt.xml.eventconf.Maskelement.TAG_UEI;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * An index over an ordered list of event definitions that narrows down the
+ * definitions that can possibly match an incoming event before their
+ * {@link EventMatcher}s are evaluated.
+ * 
+ * Every definition is filed under the first of uei, id, specific or generic
+ * that it constrains to literal values or "%" prefixes (a definition without
+ * a mask is filed under its uei).  Literal values go into a hash table and
+ * prefixes into a character trie.  Definitions that can't be filed this way,
+ * for example because they only use regular expressions, are always
+ * candidates.  The candidates are evaluated in their original order so the
+ * first match is the same one a linear scan would return.
+ */
+public class EventMatcherIndex {
+	
+	private static final String[] INDEXED_FIELDS = { TAG_UEI, TAG_SNMP_EID, TAG_SNMP_SPECIFIC, TAG_SNMP_GENERIC };
+	
+	private static final int[] EMPTY = new int[0];
+	
+	private final Event[] m_events;
+	
+	private final List<IndexedField> m_fields = new ArrayList<IndexedField>();
+	
+	private final int[] m_unindexed;
+
+	private static class IndexedField {
+		private final Field m_field;
+		private final Map<String, List<Integer>> m_exactBuilder = new HashMap<String, List<Integer>>();
+		private final PrefixTrie m_prefixes = new PrefixTrie();
+		private Map<String, int[]> m_exact;
+		
+		public IndexedField(String name) {
+			m_field = EventMatchers.field(name);
+		}
+		
+		public void addExact(String value, int position) {
+			List<Integer> positions = m_exactBuilder.get(value);
+			if (positions == null) {
+				positions = new ArrayList<Integer>(1);
+				m_exactBuilder.put(value, positions);
+			}
+			positions.add(position);
+		}
+		
+		public void addPrefix(String prefix, int position) {
+			m_prefixes.add(prefix, position);
+		}
+		
+		public void compile() {
+			m_exact = new HashMap<String, int[]>(m_exactBuilder.size() * 2);
+			for(Entry<String, List<Integer>> entry : m_exactBuilder.entrySet()) {
+				m_exact.put(entry.getKey(), toArray(entry.getValue()));
+			}
+			m_exactBuilder.clear();
+			m_prefixes.compile();
+		}
+		
+		public void collectCandidates(org.opennms.netmgt.xml.event.Event matchingEvent, List<int[]> candidates) {
+			String value = m_field.get(matchingEvent);
+			if (value == null) {
+				return;
+			}
+			int[] exact = m_exact.get(value);
+			if (exact != null) {
+				candidates.add(exact);
+			}
+			m_prefixes.collect(value, candidates);
+		}
+	}
+	
+	/**
+	 * A character trie of prefixes, each node holding the positions of the
+	 * event definitions whose prefix ends at that node.
+	 */
+	private static class PrefixTrie {
+		private final Map<Character, PrefixTrie> m_children = new HashMap<Character, PrefixTrie>(2);
+		private List<Integer> m_positionsBuilder;
+		private int[] m_positions = EMPTY;
+		
+		public void add(String prefix, int position) {
+			PrefixTrie node = this;
+			for(int i = 0; i < prefix.length(); i++) {
+				Character c = prefix.charAt(i);
+				PrefixTrie child = node.m_children.get(c);
+				if (child == null) {
+					child = new PrefixTrie();
+					node.m_children.put(c, child);
+				}
+				node = child;
+			}
+			if (node.m_positionsBuilder == null) {
+				node.m_positionsBuilder = new ArrayList<Integer>(1);
+			}
+			node.m_positionsBuilder.add(position);
+		}
+		
+		public void compile() {
+			if (m_positionsBuilder != null) {
+				m_positions = toArray(m_positionsBuilder);
+				m_positionsBuilder = null;
+			}
+			for(PrefixTrie child : m_children.values()) {
+				child.compile();
+			}
+		}
+		
+		public void collect(String value, List<int[]> candidates) {
+			PrefixTrie node = this;
+			for(int i = 0; node != null; i++) {
+				if (node.m_positions.length > 0) {
+					candidates.add(node.m_positions);
+				}
+				if (i == value.length() || node.m_children.isEmpty()) {
+					break;
+				}
+				node = node.m_children.get(value.charAt(i));
+			}
+		}
+	}
+	
+	public EventMatcherIndex(List<Event> events) {
+		m_events = events.toArray(new Event[events.size()]);
+		
+		Map<String, IndexedField> fields = new HashMap<String, IndexedField>();
+		List<Integer> unindexed = new ArrayList<Integer>();
+		
+		for(int position = 0; position < m_events.length; position++) {
+			Event event = m_events[position];
+			Mask mask = event.getMask();
+			
+			if (mask == null || mask.getMaskelementCount() <= 0) {
+				// matched on uei alone, an event without one never matches
+				if (event.getUei() != null) {
+					getField(fields, TAG_UEI).addExact(event.getUei(), position);
+				}
+				continue;
+			}
+			
+			Maskelement element = findIndexableElement(mask);
+			if (element == null) {
+				unindexed.add(position);
+				continue;
+			}
+			
+			IndexedField field = getField(fields, element.getMename());
+			for(String value : element.getMevalueCollection()) {
+				if (value == null) continue;
+				if (value.endsWith("%")) {
+					field.addPrefix(value.substring(0, value.length()-1), position);
+				} else {
+					field.addExact(value, position);
+				}
+			}
+		}
+		
+		// keep the fields in a fixed order so lookups are deterministic
+		for(String name : INDEXED_FIELDS) {
+			IndexedField field = fields.get(name);
+			if (field != null) {
+				field.compile();
+				m_fields.add(field);
+			}
+		}
+		m_unindexed = toArray(unindexed);
+	}
+	
+	private static IndexedField getField(Map<String, IndexedField> fields, String name) {
+		IndexedField field = fields.get(name);
+		if (field == null) {
+			field = new IndexedField(name);
+			fields.put(name, field);
+		}
+		return field;
+	}
+	
+	private static Maskelement findIndexableElement(Mask mask) {
+		for(String name : INDEXED_FIELDS) {
+			Maskelement element = mask.getMaskElement(name);
+			if (element != null && isIndexable(element)) {
+				return element;
+			}
+		}
+		return null;
+	}
+	
+	private static boolean isIndexable(Maskelement element) {
+		boolean hasValue = false;
+		for(String value : element.getMevalueCollection()) {
+			if (value == null) continue;
+			if (value.startsWith("~")) {
+				return false;
+			}
+			hasValue = true;
+		}
+		return hasValue;
+	}
+	
+	private static int[] toArray(List<Integer> positions) {
+		int[] result = new int[positions.size()];
+		for(int i = 0; i < result.length; i++) {
+			result[i] = positions.get(i);
+		}
+		return result;
+	}
+	
+	/**
+	 * Return the first event definition, in list order, that matches the event.
+	 */
+	public Event findFirstMatch(org.opennms.netmgt.xml.event.Event matchingEvent) {
+		List<int[]> candidates = new ArrayList<int[]>(4);
+		for(IndexedField field : m_fields) {
+			field.collectCandidates(matchingEvent, candidates);
+		}
+		if (m_unindexed.length > 0) {
+			candidates.add(m_unindexed);
+		}
+		
+		if (candidates.isEmpty()) {
+			return null;
+		} else if (candidates.size() == 1) {
+			for(int position : candidates.get(0)) {
+				if (m_events[position].matches(matchingEvent)) {
+					return m_events[position];
+				}
+			}
+			return null;
+		}
+		
+		// merge the sorted candidate lists, evaluating each position once and in order
+		int[] cursors = new int[candidates.size()];
+		int last = -1;
+		while(true) {
+			int next = Integer.MAX_VALUE;
+			int nextList = -1;
+			for(int i = 0; i < cursors.length; i++) {
+				int[] positions = candidates.get(i);
+				while (cursors[i] < positions.length && positions[cursors[i]] <= last) {
+					cursors[i]++;
+				}
+				if (cursors[i] < positions.length && positions[cursors[i]] < next) {
+					next = positions[cursors[i]];
+					nextList = i;
+				}
+			}
+			if (nextList < 0) {
+				return null;
+			}
+			if (m_events[next].matches(matchingEvent)) {
+				return m_events[next];
+			}
+			last = next;
+		}
+	}
+	
+	/**
+	 * Return the first event definition that matches the event by evaluating
+	 * every definition in order.  This is what {@link #findFirstMatch} would
+	 * return and is kept for comparison and testing.
+	 */
+	public Event findFirstMatchLinear(org.opennms.netmgt.xml.event.Event matchingEvent) {
+		for(Event event : m_events) {
+			if (event.matches(matchingEvent)) {
+				return event;
+			}
+		}
+		return null;
+	}
+	
+	public int size() {
+		return m_events.length;
+	}
+
+}
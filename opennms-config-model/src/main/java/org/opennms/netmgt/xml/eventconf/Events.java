@@ -39,6 +39,8 @@ import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -107,6 +109,24 @@ public class Events implements Serializable {
 	
 	@XmlTransient
 	private List<Event> m_nullPartitionedEvents;
+
+	@XmlTransient
+	private Map<String, EventMatcherIndex> m_partitionedIndexes;
+
+	@XmlTransient
+	private EventMatcherIndex m_nullPartitionedIndex;
+
+	@XmlTransient
+	private Map<Event, Integer> m_definitionOrder;
+
+	/**
+	 * The event definitions that match on varbinds, by partition.
+	 */
+	@XmlTransient
+	private Map<String, List<Event>> m_partitionedVarbindEvents;
+
+	@XmlTransient
+	private List<Event> m_nullPartitionedVarbindEvents;
 	
     public void addEvent(final Event event) throws IndexOutOfBoundsException {
         m_events.add(event);
@@ -351,48 +371,144 @@ public class Events implements Serializable {
 
 		m_partitionedEvents = new LinkedHashMap<String, List<Event>>();
 		m_nullPartitionedEvents = new ArrayList<Event>();
+		m_partitionedVarbindEvents = new HashMap<String, List<Event>>();
+		m_nullPartitionedVarbindEvents = new ArrayList<Event>();
+		m_definitionOrder = new IdentityHashMap<Event, Integer>(m_events.size() * 2);
 		
 		for(Event event : m_events) {
+			m_definitionOrder.put(event, m_definitionOrder.size());
 			List<String> keys = partition.group(event);
 			if (keys == null) {
 				m_nullPartitionedEvents.add(event);
+				if (event.dependsOnVarbinds()) {
+					m_nullPartitionedVarbindEvents.add(event);
+				}
 			} else {
 				for(String key : keys) {
-					List<Event> events = m_partitionedEvents.get(key);
-					if (events == null) {
-						events = new ArrayList<Event>(1);
-						m_partitionedEvents.put(key, events);
+					addToPartition(m_partitionedEvents, key, event);
+					if (event.dependsOnVarbinds()) {
+						addToPartition(m_partitionedVarbindEvents, key, event);
 					}
-					events.add(event);
 				}
 			}
 		}
 		
-		
+		m_partitionedIndexes = new HashMap<String, EventMatcherIndex>(m_partitionedEvents.size() * 2);
+		for(Entry<String, List<Event>> entry : m_partitionedEvents.entrySet()) {
+			m_partitionedIndexes.put(entry.getKey(), new EventMatcherIndex(entry.getValue()));
+		}
+		m_nullPartitionedIndex = new EventMatcherIndex(m_nullPartitionedEvents);
 	}
 	
-	public Event findFirstMatchingEvent(org.opennms.netmgt.xml.event.Event matchingEvent) {
+	private static void addToPartition(Map<String, List<Event>> partitions, String key, Event event) {
+		List<Event> events = partitions.get(key);
+		if (events == null) {
+			events = new ArrayList<Event>(1);
+			partitions.put(key, events);
+		}
+		events.add(event);
+	}
+
+	/**
+	 * Tells whether an event definition that matches on varbinds could match
+	 * the event, judging only by everything but the varbinds.  If not, adding
+	 * parameters to the event cannot change the result of
+	 * {@link #findFirstMatchingEvent(org.opennms.netmgt.xml.event.Event)},
+	 * so an event can be classified before its parameters are decoded.
+	 */
+	public boolean mayMatchOnVarbinds(org.opennms.netmgt.xml.event.Event matchingEvent) {
 		String key = m_partition.group(matchingEvent);
 		if (key != null) {
-			List<Event> events = m_partitionedEvents.get(key);
+			List<Event> events = m_partitionedVarbindEvents.get(key);
 			if (events != null) {
 				for(Event event : events) {
-					if (event.matches(matchingEvent)) {
-						return event;
+					if (event.matchesIgnoringVarbinds(matchingEvent)) {
+						return true;
 					}
 				}
 			}
 		}
 		
-		for(Event event : m_nullPartitionedEvents) {
-			if (event.matches(matchingEvent)) {
+		for(Event event : m_nullPartitionedVarbindEvents) {
+			if (event.matchesIgnoringVarbinds(matchingEvent)) {
+				return true;
+			}
+		}
+		
+		for(Entry<String, Events> loadedEvents : m_loadedEventFiles.entrySet()) {
+			if (loadedEvents.getValue().mayMatchOnVarbinds(matchingEvent)) {
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	public Event findFirstMatchingEvent(org.opennms.netmgt.xml.event.Event matchingEvent) {
+		Event partitioned = null;
+		String key = m_partition.group(matchingEvent);
+		if (key != null) {
+			EventMatcherIndex index = m_partitionedIndexes.get(key);
+			if (index != null) {
+				partitioned = index.findFirstMatch(matchingEvent);
+			}
+		}
+		
+		Event event = firstDefined(partitioned, m_nullPartitionedIndex.findFirstMatch(matchingEvent));
+		if (event != null) {
+			return event;
+		}
+		
+		for(Entry<String, Events> loadedEvents : m_loadedEventFiles.entrySet()) {
+			Events subEvents = loadedEvents.getValue();
+			event = subEvents.findFirstMatchingEvent(matchingEvent);
+			if (event != null) {
 				return event;
 			}
 		}
 		
+		return null;
+	}
+
+	/**
+	 * Return whichever of two matching event definitions comes first in this
+	 * file, so that a definition in the partition of the event's key and one
+	 * that isn't partitioned (for example one with a wildcard enterprise id)
+	 * are picked in the order they are defined.
+	 */
+	private Event firstDefined(Event partitioned, Event unpartitioned) {
+		if (partitioned == null) {
+			return unpartitioned;
+		} else if (unpartitioned == null) {
+			return partitioned;
+		}
+		return m_definitionOrder.get(unpartitioned) < m_definitionOrder.get(partitioned) ? unpartitioned : partitioned;
+	}
+
+	/**
+	 * Same as {@link #findFirstMatchingEvent(org.opennms.netmgt.xml.event.Event)}
+	 * but evaluates every event definition of a partition in turn instead of
+	 * using the {@link EventMatcherIndex}.  Only useful to compare against the
+	 * indexed lookup.
+	 */
+	public Event findFirstMatchingEventLinear(org.opennms.netmgt.xml.event.Event matchingEvent) {
+		Event partitioned = null;
+		String key = m_partition.group(matchingEvent);
+		if (key != null) {
+			EventMatcherIndex index = m_partitionedIndexes.get(key);
+			if (index != null) {
+				partitioned = index.findFirstMatchLinear(matchingEvent);
+			}
+		}
+		
+		Event event = firstDefined(partitioned, m_nullPartitionedIndex.findFirstMatchLinear(matchingEvent));
+		if (event != null) {
+			return event;
+		}
+		
 		for(Entry<String, Events> loadedEvents : m_loadedEventFiles.entrySet()) {
 			Events subEvents = loadedEvents.getValue();
-			Event event = subEvents.findFirstMatchingEvent(matchingEvent);
+			event = subEvents.findFirstMatchingEventLinear(matchingEvent);
 			if (event != null) {
 				return event;
 			}
@@ -290,6 +290,31 @@ public class Mask implements Serializable {
 		
 		return EventMatchers.and(matchers);
 	}
+
+	/**
+	 * Like {@link #constructMatcher()} but leaves out the varbinds.
+	 */
+	public EventMatcher constructMaskelementMatcher() {
+		EventMatcher[] matchers = new EventMatcher[getMaskelementCount()];
+		int index = 0;
+		for(Maskelement maskElement : m_maskElements) {
+			matchers[index] = maskElement.constructMatcher();
+			index++;
+		}
+		return EventMatchers.and(matchers);
+	}
+
+	/**
+	 * Whether the matcher of this mask looks at any varbind.
+	 */
+	public boolean hasVarbindMatcher() {
+		for(Varbind varbind : m_varbinds) {
+			if (varbind.getVbnumber() != null) {
+				return true;
+			}
+		}
+		return false;
+	}
 	
 	public Maskelement getMaskElement(String mename) {
 		for(Maskelement element : m_maskElements) {
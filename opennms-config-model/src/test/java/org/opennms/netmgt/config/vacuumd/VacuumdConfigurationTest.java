@@ -41,6 +41,7 @@ public class VacuumdConfigurationTest extends
         Triggers triggers = new Triggers();
         Trigger trigger = new Trigger("testTrigger", "testDataSource", ">=",
                                       0, statement);
+        trigger.setHighWaterMark("eventid");
         triggers.addTrigger(trigger);
 
         Actions actions = new Actions();
@@ -84,7 +85,7 @@ public class VacuumdConfigurationTest extends
                                 + " auto-event-name=\"testAutoEvent\" action-event=\"testActionEvent\" active=\"false\"/>"
                                 + "</automations>"
                                 + "<triggers>"
-                                + "    <trigger name=\"testTrigger\" data-source=\"testDataSource\" operator=\"&gt;=\" row-count=\"0\">"
+                                + "    <trigger name=\"testTrigger\" data-source=\"testDataSource\" operator=\"&gt;=\" row-count=\"0\" high-water-mark=\"eventid\">"
                                 + "        <statement transactional=\"false\">INSERT 1000000 INTO bankaccount;</statement>"
                                 + "    </trigger>"
                                 + "</triggers>"
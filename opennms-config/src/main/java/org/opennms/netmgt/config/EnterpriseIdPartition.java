@@ -13,7 +13,19 @@ public class EnterpriseIdPartition implements Partition {
 
 	@Override
 	public List<String> group(Event eventConf) {
-		return eventConf.getMaskElementValues("id");
+		List<String> ids = eventConf.getMaskElementValues("id");
+		if (ids == null) {
+			return null;
+		}
+		// only literal ids can be looked up by key, events with "%" or "~"
+		// ids go with the unpartitioned events so they can still match;
+		// Events picks between the two in definition order
+		for(String id : ids) {
+			if (id == null || id.startsWith("~") || id.endsWith("%")) {
+				return null;
+			}
+		}
+		return ids;
 	}
 
 	@Override
@@ -182,6 +182,49 @@ public class EventdConfigManager {
         }
     }
 
+    /**
+     * Return the maximum number of events inserted into the database in a
+     * single transaction.
+     *
+     * @return the write batch size, 1 if batching is disabled
+     */
+    public int getWriteBatchSize() {
+        getReadLock().lock();
+        try {
+            return m_config.hasWriteBatchSize() ? m_config.getWriteBatchSize() : 1;
+        } finally {
+            getReadLock().unlock();
+        }
+    }
+
+    /**
+     * Return the maximum time a writer thread waits for a batch to fill up.
+     *
+     * @return the linger time in milliseconds
+     */
+    public long getWriteBatchMaxLinger() {
+        getReadLock().lock();
+        try {
+            return m_config.hasWriteBatchMaxLinger() ? m_config.getWriteBatchMaxLinger() : 10;
+        } finally {
+            getReadLock().unlock();
+        }
+    }
+
+    /**
+     * Return the number of threads writing batches of events to the database.
+     *
+     * @return the number of writer threads
+     */
+    public int getWriterThreads() {
+        getReadLock().lock();
+        try {
+            return m_config.hasWriterThreads() ? m_config.getWriterThreads() : 2;
+        } finally {
+            getReadLock().unlock();
+        }
+    }
+
     /**
      * Return string indicating if timeout is to be set on the socket.
      *
@@ -0,0 +1,868 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.filter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.opennms.core.utils.IPLike;
+
+/**
+ * A filter rule compiled into a predicate over the rows of the SQL
+ * statement that {@link JdbcFilterDao} would generate for it, so that it
+ * can be evaluated against a {@link FilterSnapshot} instead of the database.
+ *
+ * <p>Only the node, interface, service and category columns held by the
+ * snapshot are supported, with the operators of the filter grammar that
+ * have an unambiguous meaning in Java: comparisons, <code>LIKE</code>,
+ * <code>IN</code>, <code>IS NULL</code>, <code>IPLIKE</code> and the
+ * <code>is</code>, <code>notis</code> and <code>catinc</code> prefixes.
+ * Everything else, including anything the database would reject, makes
+ * {@link #compile(String)} return <code>null</code> so that the caller goes
+ * to the database. Comparisons follow the SQL rules for <code>NULL</code>:
+ * a rule matches a row only if it evaluates to <code>TRUE</code>.</p>
+ */
+final class CompiledFilterRule {
+
+    /**
+     * The columns a compiled rule can refer to.
+     */
+    enum Column {
+        NODE_ID("nodeID", Type.INTEGER),
+        NODE_LABEL("nodeLabel", Type.TEXT),
+        NODE_TYPE("nodeType", Type.CHAR),
+        NODE_SYS_OID("nodeSysOID", Type.TEXT),
+        NODE_SYS_NAME("nodeSysName", Type.TEXT),
+        NODE_SYS_DESCRIPTION("nodeSysDescription", Type.TEXT),
+        NODE_SYS_LOCATION("nodeSysLocation", Type.TEXT),
+        NODE_SYS_CONTACT("nodeSysContact", Type.TEXT),
+        FOREIGN_SOURCE("foreignSource", Type.TEXT),
+        FOREIGN_ID("foreignID", Type.TEXT),
+        IP_ADDR("ipAddr", Type.TEXT),
+        IP_HOSTNAME("ipHostname", Type.TEXT),
+        IS_MANAGED("isManaged", Type.CHAR),
+        IS_SNMP_PRIMARY("isSnmpPrimary", Type.CHAR),
+        SERVICE_NAME("serviceName", Type.TEXT),
+        CATEGORY_NAME("categoryName", Type.TEXT);
+
+        private final String m_name;
+        private final Type m_type;
+
+        private Column(final String name, final Type type) {
+            m_name = name;
+            m_type = type;
+        }
+
+        Type getType() {
+            return m_type;
+        }
+
+        static Column forName(final String name) {
+            for (final Column column : values()) {
+                if (column.m_name.equalsIgnoreCase(name)) {
+                    return column;
+                }
+            }
+            return null;
+        }
+    }
+
+    enum Type {
+        INTEGER, TEXT, CHAR
+    }
+
+    /**
+     * A row of the joined tables. <code>getString</code> returns
+     * <code>null</code> for SQL <code>NULL</code>; for the
+     * <code>CHAR</code> columns the value is returned without trailing
+     * blanks.
+     */
+    interface Row {
+        long getNodeId();
+
+        String getString(Column column);
+
+        /**
+         * @return whether any interface with the address of this row
+         *         supports the service
+         */
+        boolean isServiceOnAddress(String service);
+
+        boolean isNodeInCategory(String category);
+    }
+
+    /**
+     * Thrown while compiling or evaluating a rule that can't be evaluated in
+     * memory.
+     */
+    static final class UnsupportedRuleException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        UnsupportedRuleException(final String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Cached in place of rules that can't be compiled.
+     */
+    static final CompiledFilterRule UNSUPPORTED = new CompiledFilterRule(null, false, false, null, null, null);
+
+    private final Expression m_expression;
+    private final boolean m_servicesJoined;
+    private final boolean m_categoriesJoined;
+    private final Expression m_anchors;
+    private final Long m_anchorNodeId;
+    private final String m_anchorIpAddr;
+
+    private CompiledFilterRule(final Expression expression, final boolean servicesJoined, final boolean categoriesJoined, final Expression anchors, final Long anchorNodeId, final String anchorIpAddr) {
+        m_expression = expression;
+        m_servicesJoined = servicesJoined;
+        m_categoriesJoined = categoriesJoined;
+        m_anchors = anchors;
+        m_anchorNodeId = anchorNodeId;
+        m_anchorIpAddr = anchorIpAddr;
+    }
+
+    /**
+     * Compiles a filter rule.
+     *
+     * @param rule a non-empty filter rule
+     * @return the compiled rule, or <code>null</code> if the rule can't be
+     *         evaluated in memory
+     */
+    static CompiledFilterRule compile(final String rule) {
+        try {
+            final Parser parser = new Parser(rule);
+            final Expression expression = parser.parse();
+
+            // Equality conditions on the node, interface or service that the
+            // whole rule depends on, as in the rules built by notifd
+            final List<Expression> conjuncts = new ArrayList<Expression>();
+            expression.addConjuncts(conjuncts);
+            Expression anchors = null;
+            Long anchorNodeId = null;
+            String anchorIpAddr = null;
+            for (final Expression conjunct : conjuncts) {
+                if (conjunct instanceof Comparison) {
+                    final Comparison comparison = (Comparison) conjunct;
+                    if (comparison.m_operator != Operator.EQ) {
+                        continue;
+                    }
+                    if (comparison.m_column == Column.NODE_ID) {
+                        anchorNodeId = Long.valueOf(comparison.m_number);
+                    } else if (comparison.m_column == Column.IP_ADDR) {
+                        anchorIpAddr = comparison.m_string;
+                    } else if (comparison.m_column != Column.SERVICE_NAME) {
+                        continue;
+                    }
+                    anchors = anchors == null ? conjunct : new And(anchors, conjunct);
+                }
+            }
+            if (anchorNodeId == null && anchorIpAddr == null) {
+                // a service on its own isn't specific enough
+                anchors = null;
+            }
+            return new CompiledFilterRule(expression, parser.m_servicesJoined, parser.m_categoriesJoined, anchors, anchorNodeId, anchorIpAddr);
+        } catch (final UnsupportedRuleException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return whether each interface is joined with each of its services,
+     *         so that interfaces without services never match
+     */
+    boolean isServicesJoined() {
+        return m_servicesJoined;
+    }
+
+    /**
+     * @return whether each interface is left joined with each of the
+     *         categories of its node
+     */
+    boolean isCategoriesJoined() {
+        return m_categoriesJoined;
+    }
+
+    /**
+     * @return the node ID that the rule requires, or <code>null</code>
+     */
+    Long getAnchorNodeId() {
+        return m_anchorNodeId;
+    }
+
+    /**
+     * @return the IP address that the rule requires, or <code>null</code>
+     */
+    String getAnchorIpAddr() {
+        return m_anchorIpAddr;
+    }
+
+    boolean hasAnchors() {
+        return m_anchors != null;
+    }
+
+    /**
+     * @return whether the rule evaluates to <code>TRUE</code> for the row
+     */
+    boolean matches(final Row row) {
+        return m_expression.evaluate(row) == Boolean.TRUE;
+    }
+
+    /**
+     * @return whether the row has the node, interface and service that the
+     *         rule requires
+     */
+    boolean matchesAnchors(final Row row) {
+        return m_anchors == null || m_anchors.evaluate(row) == Boolean.TRUE;
+    }
+
+    private enum Operator {
+        EQ, NE, LT, LE, GT, GE
+    }
+
+    private abstract static class Expression {
+        /**
+         * @return {@link Boolean#TRUE}, {@link Boolean#FALSE} or
+         *         <code>null</code> for SQL <code>NULL</code>
+         */
+        abstract Boolean evaluate(Row row);
+
+        void addConjuncts(final List<Expression> conjuncts) {
+            conjuncts.add(this);
+        }
+    }
+
+    private static final class And extends Expression {
+        private final Expression m_left;
+        private final Expression m_right;
+
+        And(final Expression left, final Expression right) {
+            m_left = left;
+            m_right = right;
+        }
+
+        @Override
+        Boolean evaluate(final Row row) {
+            final Boolean left = m_left.evaluate(row);
+            if (left == Boolean.FALSE) {
+                return Boolean.FALSE;
+            }
+            final Boolean right = m_right.evaluate(row);
+            if (right == Boolean.FALSE) {
+                return Boolean.FALSE;
+            }
+            return left == null || right == null ? null : Boolean.TRUE;
+        }
+
+        @Override
+        void addConjuncts(final List<Expression> conjuncts) {
+            m_left.addConjuncts(conjuncts);
+            m_right.addConjuncts(conjuncts);
+        }
+    }
+
+    private static final class Or extends Expression {
+        private final Expression m_left;
+        private final Expression m_right;
+
+        Or(final Expression left, final Expression right) {
+            m_left = left;
+            m_right = right;
+        }
+
+        @Override
+        Boolean evaluate(final Row row) {
+            final Boolean left = m_left.evaluate(row);
+            if (left == Boolean.TRUE) {
+                return Boolean.TRUE;
+            }
+            final Boolean right = m_right.evaluate(row);
+            if (right == Boolean.TRUE) {
+                return Boolean.TRUE;
+            }
+            return left == null || right == null ? null : Boolean.FALSE;
+        }
+    }
+
+    private static final class Not extends Expression {
+        private final Expression m_expression;
+
+        Not(final Expression expression) {
+            m_expression = expression;
+        }
+
+        @Override
+        Boolean evaluate(final Row row) {
+            final Boolean value = m_expression.evaluate(row);
+            return value == null ? null : Boolean.valueOf(!value.booleanValue());
+        }
+    }
+
+    private static final class Comparison extends Expression {
+        private final Column m_column;
+        private final Operator m_operator;
+        private final String m_string;
+        private final long m_number;
+
+        Comparison(final Column column, final Operator operator, final String string, final long number) {
+            m_column = column;
+            m_operator = operator;
+            m_string = string;
+            m_number = number;
+        }
+
+        @Override
+        Boolean evaluate(final Row row) {
+            final int comparison;
+            if (m_column == Column.NODE_ID) {
+                final long nodeId = row.getNodeId();
+                comparison = nodeId < m_number ? -1 : (nodeId == m_number ? 0 : 1);
+            } else {
+                final String value = row.getString(m_column);
+                if (value == null) {
+                    return null;
+                }
+                // only equality is supported for strings
+                comparison = value.equals(m_string) ? 0 : 1;
+            }
+            switch (m_operator) {
+            case EQ: return Boolean.valueOf(comparison == 0);
+            case NE: return Boolean.valueOf(comparison != 0);
+            case LT: return Boolean.valueOf(comparison < 0);
+            case LE: return Boolean.valueOf(comparison <= 0);
+            case GT: return Boolean.valueOf(comparison > 0);
+            default: return Boolean.valueOf(comparison >= 0);
+            }
+        }
+    }
+
+    private static final class In extends Expression {
+        private final Column m_column;
+        private final String[] m_strings;
+        private final long[] m_numbers;
+
+        In(final Column column, final String[] strings, final long[] numbers) {
+            m_column = column;
+            m_strings = strings;
+            m_numbers = numbers;
+        }
+
+        @Override
+        Boolean evaluate(final Row row) {
+            if (m_column == Column.NODE_ID) {
+                final long nodeId = row.getNodeId();
+                for (final long number : m_numbers) {
+                    if (nodeId == number) {
+                        return Boolean.TRUE;
+                    }
+                }
+                return Boolean.FALSE;
+            }
+            final String value = row.getString(m_column);
+            if (value == null) {
+                return null;
+            }
+            for (final String string : m_strings) {
+                if (value.equals(string)) {
+                    return Boolean.TRUE;
+                }
+            }
+            return Boolean.FALSE;
+        }
+    }
+
+    private static final class Like extends Expression {
+        private final Column m_column;
+        private final Pattern m_pattern;
+
+        Like(final Column column, final Pattern pattern) {
+            m_column = column;
+            m_pattern = pattern;
+        }
+
+        @Override
+        Boolean evaluate(final Row row) {
+            final String value = row.getString(m_column);
+            return value == null ? null : Boolean.valueOf(m_pattern.matcher(value).matches());
+        }
+    }
+
+    private static final class IsNull extends Expression {
+        private final Column m_column;
+
+        IsNull(final Column column) {
+            m_column = column;
+        }
+
+        @Override
+        Boolean evaluate(final Row row) {
+            return Boolean.valueOf(m_column != Column.NODE_ID && row.getString(m_column) == null);
+        }
+    }
+
+    private static final class IpLike extends Expression {
+        private final String m_pattern;
+
+        IpLike(final String pattern) {
+            m_pattern = pattern;
+        }
+
+        @Override
+        Boolean evaluate(final Row row) {
+            try {
+                return Boolean.valueOf(IPLike.matches(row.getString(Column.IP_ADDR), m_pattern));
+            } catch (final IllegalArgumentException e) {
+                // includes NumberFormatException
+                throw new UnsupportedRuleException("IPLIKE " + m_pattern + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private static final class ServiceNotOnAddress extends Expression {
+        private final String m_service;
+
+        ServiceNotOnAddress(final String service) {
+            m_service = service;
+        }
+
+        @Override
+        Boolean evaluate(final Row row) {
+            return Boolean.valueOf(!row.isServiceOnAddress(m_service));
+        }
+    }
+
+    private static final class NodeInCategory extends Expression {
+        private final String m_category;
+
+        NodeInCategory(final String category) {
+            m_category = category;
+        }
+
+        @Override
+        Boolean evaluate(final Row row) {
+            return Boolean.valueOf(row.isNodeInCategory(m_category));
+        }
+    }
+
+    /**
+     * Recursive descent parser for the filter grammar described in
+     * {@link JdbcFilterDao}, with the precedence of SQL: comparisons, then
+     * <code>NOT</code>, then <code>AND</code>, then <code>OR</code>.
+     */
+    private static final class Parser {
+        private static final String IPLIKE_PATTERN_CHARS = "0123456789abcdefABCDEF.:*,-";
+
+        private final String m_rule;
+        private int m_position = 0;
+        private boolean m_servicesJoined = false;
+        private boolean m_categoriesJoined = false;
+
+        /** The current token: a symbol, a word, or a quoted string */
+        private String m_token;
+        private boolean m_quoted;
+
+        Parser(final String rule) {
+            m_rule = rule;
+            next();
+        }
+
+        Expression parse() {
+            final Expression expression = parseOr();
+            if (m_token != null) {
+                throw unsupported("unexpected " + m_token);
+            }
+            return expression;
+        }
+
+        private Expression parseOr() {
+            Expression expression = parseAnd();
+            while (isSymbol("|") || isKeyword("OR")) {
+                next();
+                expression = new Or(expression, parseAnd());
+            }
+            return expression;
+        }
+
+        private Expression parseAnd() {
+            Expression expression = parseNot();
+            while (isSymbol("&") || isKeyword("AND")) {
+                next();
+                expression = new And(expression, parseNot());
+            }
+            return expression;
+        }
+
+        private Expression parseNot() {
+            if (isSymbol("!") || isKeyword("NOT")) {
+                next();
+                return new Not(parseNot());
+            }
+            return parsePredicate();
+        }
+
+        private Expression parsePredicate() {
+            if (isSymbol("(")) {
+                next();
+                final Expression expression = parseOr();
+                expect(")");
+                return expression;
+            }
+            if (m_token == null || m_quoted || !isWord()) {
+                throw unsupported("expected a column");
+            }
+            if (isKeyword("IPLIKE")) {
+                // IPLIKE(column, 'pattern')
+                next();
+                expect("(");
+                final Column column = parseColumn();
+                expect(",");
+                if (!m_quoted) {
+                    throw unsupported("expected a quoted IPLIKE pattern");
+                }
+                final String pattern = m_token;
+                next();
+                expect(")");
+                return ipLike(column, pattern);
+            }
+
+            final String word = m_token;
+            // Prefixed values, in the order JdbcFilterDao.parseRule() checks them
+            if (word.startsWith("is")) {
+                next();
+                m_servicesJoined = true;
+                return new Comparison(Column.SERVICE_NAME, Operator.EQ, word.substring(2), 0);
+            } else if (word.startsWith("notis")) {
+                next();
+                return new ServiceNotOnAddress(word.substring(5));
+            } else if (word.startsWith("catinc")) {
+                next();
+                return new NodeInCategory(word.substring(6));
+            }
+
+            final Column column = parseColumn();
+            boolean negated = false;
+            if (isKeyword("NOT")) {
+                next();
+                negated = true;
+                if (!isKeyword("LIKE") && !isKeyword("IN")) {
+                    throw unsupported("expected LIKE or IN after NOT");
+                }
+            }
+
+            final Expression expression;
+            if (isKeyword("LIKE")) {
+                next();
+                expression = like(column, parseString());
+            } else if (isKeyword("IN")) {
+                next();
+                expression = parseIn(column);
+            } else if (isKeyword("IPLIKE")) {
+                // the pattern of the IPLIKE operator doesn't have to be quoted
+                final String pattern = nextIpLikePattern();
+                next();
+                expression = ipLike(column, pattern);
+            } else if (isKeyword("IS")) {
+                next();
+                boolean notNull = false;
+                if (isKeyword("NOT")) {
+                    next();
+                    notNull = true;
+                }
+                if (!isKeyword("NULL")) {
+                    throw unsupported("expected NULL");
+                }
+                next();
+                final Expression isNull = new IsNull(column);
+                return notNull ? new Not(isNull) : isNull;
+            } else {
+                expression = parseComparison(column);
+            }
+            return negated ? new Not(expression) : expression;
+        }
+
+        private Column parseColumn() {
+            if (m_token == null || m_quoted || !isWord()) {
+                throw unsupported("expected a column");
+            }
+            final Column column = Column.forName(m_token);
+            if (column == null) {
+                throw unsupported("column " + m_token + " is not in the snapshot");
+            }
+            if (column == Column.SERVICE_NAME) {
+                m_servicesJoined = true;
+            } else if (column == Column.CATEGORY_NAME) {
+                m_categoriesJoined = true;
+            }
+            next();
+            return column;
+        }
+
+        private Expression parseComparison(final Column column) {
+            final Operator operator;
+            if (isSymbol("=")) {
+                operator = Operator.EQ;
+            } else if (isSymbol("!=") || isSymbol("<>")) {
+                operator = Operator.NE;
+            } else if (isSymbol("<")) {
+                operator = Operator.LT;
+            } else if (isSymbol("<=")) {
+                operator = Operator.LE;
+            } else if (isSymbol(">")) {
+                operator = Operator.GT;
+            } else if (isSymbol(">=")) {
+                operator = Operator.GE;
+            } else {
+                throw unsupported("expected an operator");
+            }
+            next();
+
+            if (column.getType() == Type.INTEGER) {
+                return new Comparison(column, operator, null, parseNumber());
+            }
+            if (operator != Operator.EQ && operator != Operator.NE) {
+                // depends on the collation of the database
+                throw unsupported("ordering of strings");
+            }
+            return new Comparison(column, operator, value(column, parseString()), 0);
+        }
+
+        private Expression parseIn(final Column column) {
+            expect("(");
+            final List<String> values = new ArrayList<String>();
+            while (true) {
+                if (column.getType() == Type.INTEGER) {
+                    values.add(Long.toString(parseNumber()));
+                } else {
+                    values.add(value(column, parseString()));
+                }
+                if (isSymbol(")")) {
+                    next();
+                    break;
+                }
+                expect(",");
+            }
+            final String[] strings = values.toArray(new String[values.size()]);
+            final long[] numbers = new long[strings.length];
+            if (column.getType() == Type.INTEGER) {
+                for (int i = 0; i < strings.length; i++) {
+                    numbers[i] = Long.parseLong(strings[i]);
+                }
+            }
+            return new In(column, strings, numbers);
+        }
+
+        /**
+         * A number, or a quoted string the database would cast to one.
+         */
+        private long parseNumber() {
+            if (m_token == null || !(m_quoted || isWord())) {
+                throw unsupported("expected a number");
+            }
+            final long number;
+            try {
+                number = Long.parseLong(m_quoted ? m_token.trim() : m_token);
+            } catch (final NumberFormatException e) {
+                throw unsupported("expected a number: " + m_token);
+            }
+            next();
+            return number;
+        }
+
+        private String parseString() {
+            if (!m_quoted) {
+                throw unsupported("expected a quoted string");
+            }
+            final String value = m_token;
+            next();
+            return value;
+        }
+
+        private static String value(final Column column, final String value) {
+            return column.getType() == Type.CHAR ? trimTrailing(value) : value;
+        }
+
+        private static Expression like(final Column column, final String pattern) {
+            if (column.getType() == Type.INTEGER) {
+                throw unsupported("LIKE on " + column);
+            }
+            final StringBuilder regex = new StringBuilder();
+            for (int i = 0; i < pattern.length(); i++) {
+                final char c = pattern.charAt(i);
+                if (c == '\\' && i + 1 < pattern.length()) {
+                    regex.append(Pattern.quote(String.valueOf(pattern.charAt(++i))));
+                } else if (c == '%') {
+                    regex.append(".*");
+                } else if (c == '_') {
+                    regex.append('.');
+                } else {
+                    regex.append(Pattern.quote(String.valueOf(c)));
+                }
+            }
+            return new Like(column, Pattern.compile(regex.toString(), Pattern.DOTALL));
+        }
+
+        private static Expression ipLike(final Column column, final String pattern) {
+            if (column != Column.IP_ADDR) {
+                throw unsupported("IPLIKE on " + column);
+            }
+            return new IpLike(pattern);
+        }
+
+        private void expect(final String symbol) {
+            if (!isSymbol(symbol)) {
+                throw unsupported("expected " + symbol);
+            }
+            next();
+        }
+
+        private boolean isSymbol(final String symbol) {
+            return !m_quoted && symbol.equals(m_token);
+        }
+
+        private boolean isKeyword(final String keyword) {
+            return !m_quoted && keyword.equalsIgnoreCase(m_token);
+        }
+
+        private boolean isWord() {
+            return isWordChar(m_token.charAt(0));
+        }
+
+        private static boolean isWordChar(final char c) {
+            return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' || c == '-';
+        }
+
+        /**
+         * Reads the unquoted pattern of an IPLIKE operator, which may contain
+         * characters that aren't part of words. The current token is the
+         * IPLIKE keyword.
+         */
+        private String nextIpLikePattern() {
+            skipWhitespace();
+            if (m_position < m_rule.length() && (m_rule.charAt(m_position) == '\'' || m_rule.charAt(m_position) == '"')) {
+                next();
+                if (!m_quoted) {
+                    throw unsupported("expected an IPLIKE pattern");
+                }
+                return m_token;
+            }
+            final int start = m_position;
+            while (m_position < m_rule.length() && IPLIKE_PATTERN_CHARS.indexOf(m_rule.charAt(m_position)) >= 0) {
+                m_position++;
+            }
+            if (m_position == start) {
+                throw unsupported("expected an IPLIKE pattern");
+            }
+            m_token = m_rule.substring(start, m_position);
+            m_quoted = true;
+            return m_token;
+        }
+
+        private void skipWhitespace() {
+            while (m_position < m_rule.length() && Character.isWhitespace(m_rule.charAt(m_position))) {
+                m_position++;
+            }
+        }
+
+        private void next() {
+            skipWhitespace();
+            m_quoted = false;
+            if (m_position >= m_rule.length()) {
+                m_token = null;
+                return;
+            }
+
+            final char c = m_rule.charAt(m_position);
+            if (c == '\'' || c == '"') {
+                // as in SQL, a doubled quote stands for the quote character
+                final StringBuilder value = new StringBuilder();
+                int i = m_position + 1;
+                while (true) {
+                    if (i >= m_rule.length()) {
+                        throw unsupported("unmatched " + c);
+                    }
+                    final char d = m_rule.charAt(i++);
+                    if (d == c) {
+                        if (i < m_rule.length() && m_rule.charAt(i) == c) {
+                            i++;
+                        } else {
+                            break;
+                        }
+                    }
+                    value.append(d);
+                }
+                m_position = i;
+                m_token = value.toString();
+                m_quoted = true;
+            } else if (isWordChar(c)) {
+                final int start = m_position;
+                while (m_position < m_rule.length() && isWordChar(m_rule.charAt(m_position))) {
+                    m_position++;
+                }
+                m_token = m_rule.substring(start, m_position);
+            } else if (c == '&' || c == '|' || c == '=') {
+                // "&&", "||" and "==" are aliases for "&", "|" and "="
+                m_position++;
+                if (m_position < m_rule.length() && m_rule.charAt(m_position) == c) {
+                    m_position++;
+                }
+                m_token = String.valueOf(c);
+            } else if (c == '!' || c == '<' || c == '>') {
+                m_position++;
+                m_token = String.valueOf(c);
+                if (m_position < m_rule.length()) {
+                    final char d = m_rule.charAt(m_position);
+                    if (d == '=' || (c == '<' && d == '>')) {
+                        m_position++;
+                        m_token += d;
+                    }
+                }
+            } else if (c == '(' || c == ')' || c == ',') {
+                m_position++;
+                m_token = String.valueOf(c);
+            } else {
+                throw unsupported("unexpected " + c);
+            }
+        }
+    }
+
+    static String trimTrailing(final String value) {
+        int end = value.length();
+        while (end > 0 && value.charAt(end - 1) == ' ') {
+            end--;
+        }
+        return end == value.length() ? value : value.substring(0, end);
+    }
+
+    private static UnsupportedRuleException unsupported(final String message) {
+        return new UnsupportedRuleException(message);
+    }
+}
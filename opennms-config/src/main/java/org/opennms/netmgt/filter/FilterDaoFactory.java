@@ -30,6 +30,7 @@ package org.opennms.netmgt.filter;
 
 import org.opennms.core.db.DataSourceFactory;
 import org.opennms.netmgt.config.DatabaseSchemaConfigFactory;
+import org.opennms.netmgt.model.events.EventSubscriptionService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.dao.DataAccessResourceFailureException;
@@ -71,6 +72,21 @@ public class FilterDaoFactory {
         m_filterDao = filterDao;
     }
 
+    /**
+     * Subscribes the filter DAO, if there is one and it can use them, to the
+     * events that keep its in-memory snapshot up to date.  Eventd calls this
+     * once its event manager exists; it doesn't create a DAO.
+     *
+     * @param eventSubscriptionService a {@link org.opennms.netmgt.model.events.EventSubscriptionService} object.
+     */
+    public static synchronized void setEventSubscriptionService(final EventSubscriptionService eventSubscriptionService) {
+        if (m_filterDao instanceof JdbcFilterDao) {
+            ((JdbcFilterDao) m_filterDao).setEventSubscriptionService(eventSubscriptionService);
+        } else {
+            LOG.debug("setEventSubscriptionService: {} doesn't use events", m_filterDao);
+        }
+    }
+
     /**
      * <p>init</p>
      */
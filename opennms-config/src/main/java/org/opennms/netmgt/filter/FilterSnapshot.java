@@ -0,0 +1,410 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.filter;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.sql.DataSource;
+
+import org.opennms.core.utils.DBUtils;
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.netmgt.filter.CompiledFilterRule.Column;
+import org.opennms.netmgt.filter.CompiledFilterRule.UnsupportedRuleException;
+
+/**
+ * An in-memory copy of the node, interface, service and category tables that
+ * {@link CompiledFilterRule}s are evaluated against.
+ *
+ * <p>A snapshot is loaded from the database in a few queries and is not
+ * modified afterwards, except while it is being built; {@link JdbcFilterDao}
+ * replaces it after an event that changes these tables, or when it gets too
+ * old.</p>
+ */
+final class FilterSnapshot {
+
+    private static final String NODE_QUERY = "SELECT nodeID, nodeLabel, nodeType, nodeSysOID, nodeSysName, nodeSysDescription, nodeSysLocation, nodeSysContact, foreignSource, foreignID FROM node";
+    private static final String INTERFACE_QUERY = "SELECT id, nodeID, ipAddr, ipHostname, isManaged, isSnmpPrimary FROM ipInterface";
+    private static final String SERVICE_QUERY = "SELECT ifServices.ipInterfaceId, service.serviceName FROM ifServices JOIN service ON (service.serviceID = ifServices.serviceID)";
+    private static final String CATEGORY_QUERY = "SELECT category_node.nodeID, categories.categoryName FROM category_node JOIN categories ON (categories.categoryID = category_node.categoryID)";
+
+    private static final Column[] NODE_COLUMNS = {
+        Column.NODE_LABEL, Column.NODE_TYPE, Column.NODE_SYS_OID, Column.NODE_SYS_NAME, Column.NODE_SYS_DESCRIPTION,
+        Column.NODE_SYS_LOCATION, Column.NODE_SYS_CONTACT, Column.FOREIGN_SOURCE, Column.FOREIGN_ID
+    };
+
+    private static final class Node {
+        private final int m_id;
+        private final String[] m_values = new String[Column.values().length];
+        private final List<Interface> m_interfaces = new ArrayList<Interface>(2);
+        private List<String> m_categories = Collections.emptyList();
+
+        private Node(final int id) {
+            m_id = id;
+        }
+    }
+
+    private static final class Interface {
+        private final Node m_node;
+        private final String m_ipAddr;
+        private final String m_addrKey;
+        private final String m_ipHostname;
+        private final String m_isManaged;
+        private final String m_isSnmpPrimary;
+        private List<String> m_services = Collections.emptyList();
+
+        private Interface(final Node node, final String ipAddr, final String ipHostname, final String isManaged, final String isSnmpPrimary) {
+            m_node = node;
+            m_ipAddr = ipAddr;
+            m_addrKey = normalize(ipAddr);
+            m_ipHostname = ipHostname;
+            m_isManaged = isManaged;
+            m_isSnmpPrimary = isSnmpPrimary;
+        }
+    }
+
+    /**
+     * The row that rules are evaluated against, reused for all the rows of
+     * an evaluation.
+     */
+    private final class SnapshotRow implements CompiledFilterRule.Row {
+        private Interface m_interface;
+        private String m_service;
+        private String m_category;
+
+        @Override
+        public long getNodeId() {
+            return m_interface.m_node.m_id;
+        }
+
+        @Override
+        public String getString(final Column column) {
+            switch (column) {
+            case IP_ADDR: return m_interface.m_ipAddr;
+            case IP_HOSTNAME: return m_interface.m_ipHostname;
+            case IS_MANAGED: return m_interface.m_isManaged;
+            case IS_SNMP_PRIMARY: return m_interface.m_isSnmpPrimary;
+            case SERVICE_NAME: return m_service;
+            case CATEGORY_NAME: return m_category;
+            case NODE_ID: return Long.toString(getNodeId());
+            default: return m_interface.m_node.m_values[column.ordinal()];
+            }
+        }
+
+        @Override
+        public boolean isServiceOnAddress(final String service) {
+            final List<Interface> interfaces = m_interfacesByAddr.get(m_interface.m_addrKey);
+            if (interfaces != null) {
+                for (final Interface iface : interfaces) {
+                    if (iface.m_ipAddr.equals(m_interface.m_ipAddr) && iface.m_services.contains(service)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public boolean isNodeInCategory(final String category) {
+            return m_interface.m_node.m_categories.contains(category);
+        }
+    }
+
+    private final Map<Integer, Node> m_nodes = new HashMap<Integer, Node>();
+    private final Map<Integer, Interface> m_interfaces = new HashMap<Integer, Interface>();
+    private final Map<String, List<Interface>> m_interfacesByAddr = new HashMap<String, List<Interface>>();
+
+    /**
+     * Service and category names, so that each name is only held once
+     */
+    private final Map<String, String> m_names = new HashMap<String, String>();
+
+    /**
+     * Loads a snapshot from the database.
+     *
+     * @param dataSource the database
+     * @return the snapshot
+     * @throws SQLException if any of the queries fails
+     */
+    static FilterSnapshot load(final DataSource dataSource) throws SQLException {
+        final FilterSnapshot snapshot = new FilterSnapshot();
+        final DBUtils d = new DBUtils(FilterSnapshot.class);
+        try {
+            final Connection conn = dataSource.getConnection();
+            d.watch(conn);
+            final Statement stmt = conn.createStatement();
+            d.watch(stmt);
+
+            ResultSet rset = stmt.executeQuery(NODE_QUERY);
+            d.watch(rset);
+            while (rset.next()) {
+                final int nodeId = rset.getInt(1);
+                snapshot.addNode(nodeId);
+                for (int i = 0; i < NODE_COLUMNS.length; i++) {
+                    snapshot.setNodeValue(nodeId, NODE_COLUMNS[i], rset.getString(i + 2));
+                }
+            }
+
+            rset = stmt.executeQuery(INTERFACE_QUERY);
+            d.watch(rset);
+            while (rset.next()) {
+                snapshot.addInterface(rset.getInt(1), rset.getInt(2), rset.getString(3), rset.getString(4), rset.getString(5), rset.getString(6));
+            }
+
+            rset = stmt.executeQuery(SERVICE_QUERY);
+            d.watch(rset);
+            while (rset.next()) {
+                snapshot.addService(rset.getInt(1), rset.getString(2));
+            }
+
+            rset = stmt.executeQuery(CATEGORY_QUERY);
+            d.watch(rset);
+            while (rset.next()) {
+                snapshot.addCategory(rset.getInt(1), rset.getString(2));
+            }
+        } finally {
+            d.cleanUp();
+        }
+        return snapshot;
+    }
+
+    void addNode(final int nodeId) {
+        m_nodes.put(Integer.valueOf(nodeId), new Node(nodeId));
+    }
+
+    void setNodeValue(final int nodeId, final Column column, final String value) {
+        final Node node = m_nodes.get(Integer.valueOf(nodeId));
+        if (node != null) {
+            node.m_values[column.ordinal()] = column.getType() == CompiledFilterRule.Type.CHAR ? trim(value) : value;
+        }
+    }
+
+    void addInterface(final int id, final int nodeId, final String ipAddr, final String ipHostname, final String isManaged, final String isSnmpPrimary) {
+        final Node node = m_nodes.get(Integer.valueOf(nodeId));
+        if (node == null || ipAddr == null) {
+            return;
+        }
+        final Interface iface = new Interface(node, ipAddr, ipHostname, trim(isManaged), trim(isSnmpPrimary));
+        node.m_interfaces.add(iface);
+        m_interfaces.put(Integer.valueOf(id), iface);
+
+        List<Interface> interfaces = m_interfacesByAddr.get(iface.m_addrKey);
+        if (interfaces == null) {
+            interfaces = new ArrayList<Interface>(1);
+            m_interfacesByAddr.put(iface.m_addrKey, interfaces);
+        }
+        interfaces.add(iface);
+    }
+
+    void addService(final int interfaceId, final String service) {
+        final Interface iface = m_interfaces.get(Integer.valueOf(interfaceId));
+        if (iface == null || service == null) {
+            return;
+        }
+        if (iface.m_services.isEmpty()) {
+            iface.m_services = new ArrayList<String>(4);
+        }
+        iface.m_services.add(intern(service));
+    }
+
+    void addCategory(final int nodeId, final String category) {
+        final Node node = m_nodes.get(Integer.valueOf(nodeId));
+        if (node == null || category == null) {
+            return;
+        }
+        if (node.m_categories.isEmpty()) {
+            node.m_categories = new ArrayList<String>(2);
+        }
+        node.m_categories.add(intern(category));
+    }
+
+    /**
+     * @return the number of interfaces in the snapshot
+     */
+    int getInterfaceCount() {
+        return m_interfaces.size();
+    }
+
+    /**
+     * Evaluates a rule for an address, like
+     * {@link JdbcFilterDao#isValid(String, String)}: interfaces that are
+     * marked as deleted don't match.
+     *
+     * @param addr the address, as returned by
+     *        {@link InetAddressUtils#normalize(String)}
+     * @param rule the compiled rule
+     * @return whether the address matches the rule, or <code>null</code> if
+     *         the snapshot can't tell because it doesn't know the address or
+     *         the rule can't be evaluated for it
+     */
+    Boolean isValid(final String addr, final CompiledFilterRule rule) {
+        final List<Interface> interfaces = m_interfacesByAddr.get(addr);
+        if (interfaces == null) {
+            return null;
+        }
+        return evaluate(rule, interfaces, true, false);
+    }
+
+    /**
+     * Evaluates a rule, like {@link JdbcFilterDao#isRuleMatching(String)}.
+     *
+     * @param rule the compiled rule
+     * @return whether any interface matches the rule, or <code>null</code> if
+     *         the snapshot can't tell because it doesn't know the node,
+     *         interface or service that the rule requires, or the rule can't
+     *         be evaluated
+     */
+    Boolean isRuleMatching(final CompiledFilterRule rule) {
+        final Collection<Interface> interfaces;
+        if (rule.getAnchorNodeId() != null) {
+            final long nodeId = rule.getAnchorNodeId().longValue();
+            final Node node = nodeId < Integer.MIN_VALUE || nodeId > Integer.MAX_VALUE ? null : m_nodes.get(Integer.valueOf((int) nodeId));
+            if (node == null) {
+                return null;
+            }
+            interfaces = node.m_interfaces;
+        } else if (rule.getAnchorIpAddr() != null) {
+            interfaces = m_interfacesByAddr.get(normalize(rule.getAnchorIpAddr()));
+            if (interfaces == null) {
+                return null;
+            }
+        } else {
+            interfaces = m_interfaces.values();
+        }
+        return evaluate(rule, interfaces, false, true);
+    }
+
+    /**
+     * Evaluates a rule for every interface, like
+     * {@link JdbcFilterDao#getIPAddressList(String)}.
+     *
+     * @param rule the compiled rule
+     * @param activeOnly whether interfaces that are marked as deleted are
+     *        left out
+     * @return the distinct addresses of the interfaces that match the rule,
+     *         or <code>null</code> if the rule can't be evaluated
+     */
+    List<String> getIPAddressList(final CompiledFilterRule rule, final boolean activeOnly) {
+        final Set<String> addresses = new LinkedHashSet<String>();
+        for (final Interface iface : m_interfaces.values()) {
+            if (addresses.contains(iface.m_ipAddr) || (activeOnly && "D".equals(iface.m_isManaged))) {
+                continue;
+            }
+            final Boolean matches = evaluate(rule, Collections.singletonList(iface), false, false);
+            if (matches == null) {
+                return null;
+            }
+            if (matches.booleanValue()) {
+                addresses.add(iface.m_ipAddr);
+            }
+        }
+        return new ArrayList<String>(addresses);
+    }
+
+    /**
+     * Evaluates a rule for the rows of the joined tables that the given
+     * interfaces appear in.
+     *
+     * @return <code>TRUE</code> if any row matches, <code>FALSE</code> if
+     *         none does, or <code>null</code> if none does and, when
+     *         checking anchors, no row has the node, interface and service
+     *         that the rule requires
+     */
+    private Boolean evaluate(final CompiledFilterRule rule, final Collection<Interface> interfaces, final boolean activeOnly, final boolean checkAnchors) {
+        final List<String> noValue = Collections.singletonList(null);
+        final SnapshotRow row = new SnapshotRow();
+        boolean anchorsFound = false;
+        try {
+            for (final Interface iface : interfaces) {
+                if (activeOnly && "D".equals(iface.m_isManaged)) {
+                    continue;
+                }
+                row.m_interface = iface;
+                final List<String> services = rule.isServicesJoined() ? iface.m_services : noValue;
+                final List<String> categories = rule.isCategoriesJoined() && !iface.m_node.m_categories.isEmpty() ? iface.m_node.m_categories : noValue;
+                for (final String service : services) {
+                    row.m_service = service;
+                    for (final String category : categories) {
+                        row.m_category = category;
+                        if (rule.matches(row)) {
+                            return Boolean.TRUE;
+                        }
+                        if (checkAnchors && !anchorsFound && rule.matchesAnchors(row)) {
+                            anchorsFound = true;
+                        }
+                    }
+                }
+            }
+        } catch (final UnsupportedRuleException e) {
+            return null;
+        }
+        return anchorsFound || !checkAnchors || !rule.hasAnchors() ? Boolean.FALSE : null;
+    }
+
+    private String intern(final String name) {
+        final String interned = m_names.get(name);
+        if (interned != null) {
+            return interned;
+        }
+        m_names.put(name, name);
+        return name;
+    }
+
+    private static String trim(final String value) {
+        return value == null ? null : CompiledFilterRule.trimTrailing(value);
+    }
+
+    /**
+     * @return the address in the form used for lookups, or the string itself
+     *         if it isn't an address
+     */
+    static String normalize(final String addr) {
+        // don't let anything that could be a host name get to a DNS lookup
+        for (int i = 0; i < addr.length(); i++) {
+            if (Character.digit(addr.charAt(i), 16) < 0 && ".:%".indexOf(addr.charAt(i)) < 0) {
+                return addr;
+            }
+        }
+        try {
+            return InetAddressUtils.normalize(addr);
+        } catch (final IllegalArgumentException e) {
+            return addr;
+        }
+    }
+}
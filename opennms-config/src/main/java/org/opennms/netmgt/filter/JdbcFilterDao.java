@@ -37,7 +37,9 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -51,8 +53,13 @@ import javax.sql.DataSource;
 
 import org.opennms.core.utils.DBUtils;
 import org.opennms.core.utils.InetAddressComparator;
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.netmgt.EventConstants;
 import org.opennms.netmgt.config.DatabaseSchemaConfigFactory;
 import org.opennms.netmgt.config.filter.Table;
+import org.opennms.netmgt.model.events.EventListener;
+import org.opennms.netmgt.model.events.EventSubscriptionService;
+import org.opennms.netmgt.xml.event.Event;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InitializingBean;
@@ -66,7 +73,7 @@ import org.springframework.util.Assert;
  * @author <a href="mailto:dj@opennms.org">DJ Gregor</a>
  * @version $Id: $
  */
-public class JdbcFilterDao implements FilterDao, InitializingBean {
+public class JdbcFilterDao implements FilterDao, InitializingBean, EventListener {
     private static final Logger LOG = LoggerFactory.getLogger(JdbcFilterDao.class);
     private static final Pattern SQL_KEYWORD_PATTERN = Pattern.compile("\\s+(?:AND|OR|(?:NOT )?(?:LIKE|IN)|IS (?:NOT )?DISTINCT FROM)\\s+|(?:\\s+IS (?:NOT )?NULL|::(?:TIMESTAMP|INET))(?!\\w)|(?<!\\w)(?:NOT\\s+|IPLIKE(?=\\())", Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
     private static final Pattern SQL_QUOTE_PATTERN = Pattern.compile("'(?:[^']|'')*'|\"(?:[^\"]|\"\")*\"");
@@ -75,9 +82,61 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
 	private static final Pattern SQL_IPLIKE_PATTERN = Pattern.compile("(\\w+)\\s+IPLIKE\\s+([0-9a-f.:*,-]+|###@\\d+@###)", Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
 	private static final String SQL_IPLIKE6_RHS_REGEX = "^[0-9A-Fa-f:*,-]+$";
 
+    /**
+     * The minimum time between two loads of the snapshot; in between, rules
+     * are evaluated in the database when the snapshot is out of date
+     */
+    private static final long SNAPSHOT_MIN_RELOAD_INTERVAL = 5000;
+
+    /**
+     * The number of compiled rules kept; notifd generates a rule for each
+     * node, interface and service, so the least recently used ones are
+     * evicted
+     */
+    private static final int MAX_COMPILED_RULES = 1000;
+
+    /**
+     * The events that change the node, interface, service or category
+     * tables, and so mark the snapshot as out of date
+     */
+    private static final List<String> SNAPSHOT_EVENT_UEIS = Collections.unmodifiableList(Arrays.asList(
+        EventConstants.NODE_ADDED_EVENT_UEI,
+        EventConstants.NODE_UPDATED_EVENT_UEI,
+        EventConstants.NODE_DELETED_EVENT_UEI,
+        EventConstants.DUP_NODE_DELETED_EVENT_UEI,
+        EventConstants.NODE_LABEL_CHANGED_EVENT_UEI,
+        EventConstants.NODE_INFO_CHANGED_EVENT_UEI,
+        EventConstants.NODE_CATEGORY_MEMBERSHIP_CHANGED_EVENT_UEI,
+        EventConstants.NODE_GAINED_INTERFACE_EVENT_UEI,
+        EventConstants.INTERFACE_DELETED_EVENT_UEI,
+        EventConstants.INTERFACE_REPARENTED_EVENT_UEI,
+        EventConstants.PRIMARY_SNMP_INTERFACE_CHANGED_EVENT_UEI,
+        EventConstants.NODE_GAINED_SERVICE_EVENT_UEI,
+        EventConstants.SERVICE_DELETED_EVENT_UEI,
+        EventConstants.SERVICE_UNMANAGED_EVENT_UEI
+    ));
+
 	private DataSource m_dataSource;
     private DatabaseSchemaConfigFactory m_databaseSchemaConfigFactory;
 
+    private boolean m_inMemory = Boolean.parseBoolean(System.getProperty("org.opennms.netmgt.filter.inMemory", "true"));
+    private long m_snapshotMaxAge = Long.getLong("org.opennms.netmgt.filter.snapshotMaxAge", 300000L);
+
+    private final Object m_snapshotLock = new Object();
+    private volatile FilterSnapshot m_snapshot;
+    private volatile long m_snapshotLoadTime;
+    private volatile boolean m_snapshotStale = false;
+    private volatile boolean m_snapshotEventDriven = false;
+    // access ordered, so the eldest entry is the least recently used one
+    private final Map<String, CompiledFilterRule> m_compiledRules = new LinkedHashMap<String, CompiledFilterRule>(256, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, CompiledFilterRule> eldest) {
+            return size() > MAX_COMPILED_RULES;
+        }
+    };
+
     /**
      * <p>setDataSource</p>
      *
@@ -114,6 +173,83 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
         return m_databaseSchemaConfigFactory;
     }
 
+    /**
+     * Sets whether {@link #isValid(String, String)} and
+     * {@link #isRuleMatching(String)} evaluate the rules they can in memory
+     * against a snapshot of the database.  The snapshot is only used once
+     * the DAO is subscribed to events with
+     * {@link #setEventSubscriptionService(EventSubscriptionService)}, since
+     * nothing else tells it that the tables have changed.
+     *
+     * @param inMemory a boolean.
+     */
+    public void setInMemory(final boolean inMemory) {
+        m_inMemory = inMemory;
+    }
+
+    /**
+     * <p>isInMemory</p>
+     *
+     * @return a boolean.
+     */
+    public boolean isInMemory() {
+        return m_inMemory;
+    }
+
+    /**
+     * Sets the time in milliseconds after which the snapshot that rules are
+     * evaluated against in memory is reloaded.
+     *
+     * @param snapshotMaxAge a long.
+     */
+    public void setSnapshotMaxAge(final long snapshotMaxAge) {
+        m_snapshotMaxAge = snapshotMaxAge;
+    }
+
+    /**
+     * <p>getSnapshotMaxAge</p>
+     *
+     * @return a long.
+     */
+    public long getSnapshotMaxAge() {
+        return m_snapshotMaxAge;
+    }
+
+    /**
+     * Subscribes to the events that change the tables that the snapshot is
+     * loaded from, so that it is marked as out of date when one of them
+     * arrives.  Rules are only evaluated in memory after this is called.
+     *
+     * @param eventSubscriptionService a {@link org.opennms.netmgt.model.events.EventSubscriptionService} object.
+     */
+    public void setEventSubscriptionService(final EventSubscriptionService eventSubscriptionService) {
+        eventSubscriptionService.addEventListener(this, SNAPSHOT_EVENT_UEIS);
+        m_snapshotEventDriven = true;
+        m_snapshotStale = true;
+    }
+
+    /**
+     * <p>getName</p>
+     *
+     * @return a {@link java.lang.String} object.
+     */
+    @Override
+    public String getName() {
+        return "JdbcFilterDao";
+    }
+
+    /**
+     * Marks the snapshot that rules are evaluated against in memory as out
+     * of date.
+     *
+     * @param event a {@link org.opennms.netmgt.xml.event.Event} object.
+     */
+    @Override
+    public void onEvent(final Event event) {
+        LOG.debug("Filter snapshot is out of date after event {}", event.getUei());
+        m_snapshotStale = true;
+    }
+
     /**
      * <p>afterPropertiesSet</p>
      */
@@ -238,6 +374,14 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
         return ipServices;
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * The snapshot that rules are evaluated against in memory is left alone;
+     * it follows events instead.  Daemons flush the cache before building
+     * each of their package address lists, so all of them are answered from
+     * one load.
+     */
     @Override
     @CacheEvict(value="activeIpAddressList", allEntries=true)
     public void flushActiveIpAddressListCache() {}
@@ -265,6 +409,20 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
 
         LOG.debug("Filter.getIPAddressList({})", rule);
 
+        final CompiledFilterRule compiledRule = getCompiledRule(rule);
+        final FilterSnapshot snapshot = compiledRule == null ? null : getSnapshot();
+        if (snapshot != null) {
+            // deleted interfaces are only left out if the rule doesn't select them itself
+            final List<String> addresses = snapshot.getIPAddressList(compiledRule, filterDeleted && !rule.contains("isManaged"));
+            if (addresses != null) {
+                for (final String address : addresses) {
+                    resultList.add(addr(address));
+                }
+                LOG.debug("Filter.getIPAddressList({}): resultList = {} in memory", rule, resultList);
+                return resultList;
+            }
+        }
+
         // get the database connection
         Connection conn = null;
         final DBUtils d = new DBUtils(getClass());
@@ -318,6 +476,8 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
      * {@inheritDoc}
      *
      * This method verifies if an ip address adheres to a given rule.
+     * The rule is evaluated in memory if it can be, and otherwise in the
+     * database, constrained to the address.
      * @exception FilterParseException
      *                if a rule is syntactically incorrect or failed in
      *                executing the SQL statement.
@@ -326,18 +486,46 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
     public boolean isValid(final String addr, final String rule) throws FilterParseException {
         if (rule.length() == 0) {
             return true;
-        } else {
-            /*
-             * see if the ip address is contained in the list that the
-             * rule returns
-             */
-            return getActiveIPAddressList(rule).contains(addr(addr));
         }
+
+        final String address = InetAddressUtils.str(addr(addr));
+        // Leave rules that select deleted interfaces themselves to the database
+        if (!rule.contains("isManaged")) {
+            final CompiledFilterRule compiledRule = getCompiledRule(rule);
+            final FilterSnapshot snapshot = compiledRule == null ? null : getSnapshot();
+            if (snapshot != null) {
+                final Boolean valid = snapshot.isValid(address, compiledRule);
+                if (valid != null) {
+                    LOG.debug("Filter.isValid({}, {}): {} in memory", addr, rule, valid);
+                    return valid.booleanValue();
+                }
+            }
+        }
+
+        // see if the rule matches the ip address in the database
+        return isRuleMatchingInDatabase("(" + rule + ") & (ipAddr == '" + address + "')", true);
     }
 
-    /** {@inheritDoc} */
+    /**
+     * {@inheritDoc}
+     *
+     * The rule is evaluated in memory if it can be.
+     */
     @Override
     public boolean isRuleMatching(final String rule) throws FilterParseException {
+        final CompiledFilterRule compiledRule = getCompiledRule(rule);
+        final FilterSnapshot snapshot = compiledRule == null ? null : getSnapshot();
+        if (snapshot != null) {
+            final Boolean matches = snapshot.isRuleMatching(compiledRule);
+            if (matches != null) {
+                LOG.debug("isRuleMatching: rule \"{}\" {} an entry in memory", rule, matches ? "matches" : "does not match");
+                return matches.booleanValue();
+            }
+        }
+        return isRuleMatchingInDatabase(rule, false);
+    }
+
+    private boolean isRuleMatchingInDatabase(final String rule, final boolean filterDeleted) throws FilterParseException {
         boolean matches = false;
         String sqlString;
 
@@ -352,7 +540,11 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
             d.watch(conn);
 
             // parse the rule and get the sql select statement
-            sqlString = getSQLStatement(rule) + " LIMIT 1";
+            sqlString = getSQLStatement(rule);
+            if (filterDeleted && !sqlString.contains("isManaged")) {
+                sqlString += " AND (ipInterface.isManaged != 'D' or ipInterface.isManaged IS NULL)";
+            }
+            sqlString += " LIMIT 1";
             LOG.debug("Filter.isRuleMatching({}): SQL statement: {}", rule, sqlString);
 
             // execute query and return the list of ip addresses
@@ -386,7 +578,71 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
     public void validateRule(final String rule) throws FilterParseException {
         // Since parseRule does not do complete syntax checking,
         // we need to call a function that will actually execute the generated SQL
-        isRuleMatching(rule);
+        isRuleMatchingInDatabase(rule, false);
+    }
+
+    /**
+     * Returns the compiled form of a rule.
+     *
+     * @return the compiled rule, or <code>null</code> if the rule can't be
+     *         evaluated in memory
+     */
+    private CompiledFilterRule getCompiledRule(final String rule) {
+        if (!m_inMemory || !m_snapshotEventDriven || rule == null || rule.length() == 0) {
+            return null;
+        }
+        CompiledFilterRule compiledRule;
+        synchronized (m_compiledRules) {
+            compiledRule = m_compiledRules.get(rule);
+        }
+        if (compiledRule == null) {
+            compiledRule = CompiledFilterRule.compile(rule);
+            if (compiledRule == null) {
+                LOG.debug("Filter rule \"{}\" can't be evaluated in memory", rule);
+                compiledRule = CompiledFilterRule.UNSUPPORTED;
+            }
+            synchronized (m_compiledRules) {
+                m_compiledRules.put(rule, compiledRule);
+            }
+        }
+        return compiledRule == CompiledFilterRule.UNSUPPORTED ? null : compiledRule;
+    }
+
+    /**
+     * Returns the snapshot of the database that rules are evaluated against
+     * in memory, loading it if it is missing, out of date or too old.
+     *
+     * @return the snapshot, or <code>null</code> if it is out of date and was
+     *         loaded too recently to load it again, or could not be loaded
+     */
+    private FilterSnapshot getSnapshot() {
+        FilterSnapshot snapshot = m_snapshot;
+        if (snapshot != null && !m_snapshotStale && System.currentTimeMillis() - m_snapshotLoadTime < m_snapshotMaxAge) {
+            return snapshot;
+        }
+
+        synchronized (m_snapshotLock) {
+            final long now = System.currentTimeMillis();
+            snapshot = m_snapshot;
+            if (snapshot != null && !m_snapshotStale && now - m_snapshotLoadTime < m_snapshotMaxAge) {
+                return snapshot;
+            }
+            if (now - m_snapshotLoadTime < SNAPSHOT_MIN_RELOAD_INTERVAL) {
+                return null;
+            }
+
+            m_snapshotStale = false;
+            m_snapshotLoadTime = now;
+            try {
+                snapshot = FilterSnapshot.load(getDataSource());
+                LOG.debug("Loaded filter snapshot with {} interfaces in {} ms", snapshot.getInterfaceCount(), System.currentTimeMillis() - now);
+            } catch (final SQLException e) {
+                LOG.warn("Failed to load the filter snapshot, evaluating filter rules in the database.", e);
+                snapshot = null;
+            }
+            m_snapshot = snapshot;
+            return snapshot;
+        }
     }
 
     /**
@@ -311,6 +311,93 @@ public class EventconfFactoryTest {
         assertEquals("uei.opennms.org/traps/eventTrap", eventConf.getUei());
     }
 
+    /**
+     * Checks that the indexed lookup finds the same event definitions as
+     * evaluating every definition in turn.
+     */
+    @Test
+    public void testIndexedMatchingAgainstLinearMatching() throws Exception {
+        Events rootEvents = loadConfiguration("eventconf-speedtest/eventconf.xml").getRootEvents();
+
+        for (org.opennms.netmgt.xml.event.Event event : createIndexedMatchingEvents()) {
+            assertEquals("indexed and linear lookup should find the same event for " + event.getUei() + "/" + (event.getSnmp() == null ? null : event.getSnmp().getId()),
+                         rootEvents.findFirstMatchingEventLinear(event), rootEvents.findFirstMatchingEvent(event));
+        }
+    }
+
+    private List<org.opennms.netmgt.xml.event.Event> createIndexedMatchingEvents() {
+        List<org.opennms.netmgt.xml.event.Event> events = new ArrayList<org.opennms.netmgt.xml.event.Event>();
+        events.add(new EventBuilder(knownUEI1, "testIndexedMatchingAgainstLinearMatching").getEvent());
+        events.add(new EventBuilder(unknownUEI1, "testIndexedMatchingAgainstLinearMatching").getEvent());
+        for (String enterpriseId : new String[] { ".1.3.6.1.4.1.5813.1", ".1.3.6.1.4.1.9.9.41.2", ".1.3.6.1.4.1.2636.4.1", ".1.3.6.1.6.3.1.1.5" }) {
+            for (int generic = 0; generic <= 6; generic++) {
+                events.add(createTrap(enterpriseId, generic, generic == 6 ? 1 : 0));
+            }
+        }
+        return events;
+    }
+
+    /**
+     * A wildcard enterprise id only wins over an exact one when it is
+     * defined first.
+     */
+    @Test
+    public void testWildcardEnterpriseIdKeepsDefinitionOrder() throws Exception {
+        DefaultEventConfDao eventConfDao = loadConfiguration("wildcardEnterpriseId/eventconf.xml");
+
+        assertEquals("uei.opennms.org/vendor/Cisco/traps/ciscoConfigManEvent", eventConfDao.findByEvent(createTrap(".1.3.6.1.4.1.9.9.43.2", 6, 1)).getUei());
+        assertEquals("uei.opennms.org/vendor/Cisco/traps/catchAll", eventConfDao.findByEvent(createTrap(".1.3.6.1.4.1.9.9.43.2", 6, 2)).getUei());
+        assertEquals("uei.opennms.org/vendor/Cisco/traps/catchAll", eventConfDao.findByEvent(createTrap(".1.3.6.1.4.1.9.9.41.2", 6, 1)).getUei());
+        assertEquals("uei.opennms.org/vendor/HP/traps/catchAll", eventConfDao.findByEvent(createTrap(".1.3.6.1.4.1.11.2.3.7.11", 6, 1)).getUei());
+    }
+
+    /**
+     * A trap that no varbind definition could match must find the same event
+     * definition with and without its parameters, so that trapd can classify
+     * it before decoding the varbinds.
+     */
+    @Test
+    public void testMayMatchOnVarbinds() throws Exception {
+        Events rootEvents = m_eventConfDao.getRootEvents();
+
+        // IBM-AIX-MIB aixFileSystemFull has definitions with and without a varbind mask
+        org.opennms.netmgt.xml.event.Event aix = createTrap(".1.3.6.1.4.1.2.6.191.1", 6, 2);
+        assertTrue(rootEvents.mayMatchOnVarbinds(aix));
+        assertEquals("uei.opennms.org/vendor/IBM/AIX/aixFileSystemFull", rootEvents.findFirstMatchingEvent(aix).getUei());
+        addParams(aix, "/var", "90", "0");
+        assertEquals("uei.opennms.org/vendor/IBM/AIX/aixFileSystemCompletelyFull", rootEvents.findFirstMatchingEvent(aix).getUei());
+
+        for (String enterpriseId : new String[] { ".1.3.6.1.4.1.9.9.41.2", ".1.3.6.1.4.1.2636.4.1", ".1.3.6.1.6.3.1.1.5", ".1.3.6.1.4.1.5813.1" }) {
+            for (int generic = 0; generic <= 6; generic++) {
+                org.opennms.netmgt.xml.event.Event trap = createTrap(enterpriseId, generic, generic == 6 ? 1 : 0);
+                if (!rootEvents.mayMatchOnVarbinds(trap)) {
+                    Event withoutParams = rootEvents.findFirstMatchingEvent(trap);
+                    addParams(trap, "1", "2", "3", "4");
+                    assertEquals("the parameters must not change the match for " + enterpriseId + "/" + generic,
+                                 withoutParams, rootEvents.findFirstMatchingEvent(trap));
+                }
+            }
+        }
+    }
+
+    private static org.opennms.netmgt.xml.event.Event createTrap(String enterpriseId, int generic, int specific) {
+        EventBuilder bldr = new EventBuilder(null, "trapd");
+        bldr.setSnmpVersion("v2");
+        bldr.setCommunity("public");
+        bldr.setHost("127.0.0.1");
+        bldr.setGeneric(generic);
+        bldr.setSpecific(specific);
+        bldr.setEnterpriseId(enterpriseId);
+        return bldr.getEvent();
+    }
+
+    private static void addParams(org.opennms.netmgt.xml.event.Event event, String... values) {
+        EventBuilder bldr = new EventBuilder(event);
+        for (int i = 0; i < values.length; i++) {
+            bldr.addParam(".1.3.6.1.4.1.2.6.191.1.1." + (i + 1), values[i]);
+        }
+    }
+
     @Test
     public void testFindByEventUnknown() {
         EventBuilder bldr = new EventBuilder(unknownUEI1, "testFindByEventUnknown");
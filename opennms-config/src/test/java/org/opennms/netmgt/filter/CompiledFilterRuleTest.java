@@ -0,0 +1,217 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.filter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.netmgt.filter.CompiledFilterRule.Column;
+
+public class CompiledFilterRuleTest {
+
+    private FilterSnapshot m_snapshot;
+
+    /**
+     * node1 (router, in the Routers and Production categories) has
+     * 192.168.1.1 with ICMP and SNMP and 192.168.1.2 without services;
+     * node2 (server, no categories) has 192.168.2.1 with ICMP and HTTP and
+     * the deleted interface 192.168.2.2 with ICMP; node3 has no interfaces.
+     */
+    @Before
+    public void setUp() {
+        m_snapshot = new FilterSnapshot();
+        m_snapshot.addNode(1);
+        m_snapshot.setNodeValue(1, Column.NODE_LABEL, "router");
+        m_snapshot.setNodeValue(1, Column.NODE_TYPE, "A");
+        m_snapshot.setNodeValue(1, Column.FOREIGN_SOURCE, "imported");
+        m_snapshot.addNode(2);
+        m_snapshot.setNodeValue(2, Column.NODE_LABEL, "server");
+        m_snapshot.setNodeValue(2, Column.NODE_TYPE, "A");
+        m_snapshot.addNode(3);
+        m_snapshot.setNodeValue(3, Column.NODE_LABEL, "empty");
+
+        m_snapshot.addInterface(11, 1, "192.168.1.1", "router.example.com", "M", "P");
+        m_snapshot.addInterface(12, 1, "192.168.1.2", null, "M", "N");
+        m_snapshot.addInterface(21, 2, "192.168.2.1", "server.example.com", "M", "P");
+        m_snapshot.addInterface(22, 2, "192.168.2.2", null, "D", "N");
+
+        m_snapshot.addService(11, "ICMP");
+        m_snapshot.addService(11, "SNMP");
+        m_snapshot.addService(21, "ICMP");
+        m_snapshot.addService(21, "HTTP");
+        m_snapshot.addService(22, "ICMP");
+
+        m_snapshot.addCategory(1, "Routers");
+        m_snapshot.addCategory(1, "Production");
+    }
+
+    @Test
+    public void testComparisons() {
+        assertValid(true, "192.168.1.1", "IPADDR != '0.0.0.0'");
+        assertValid(true, "192.168.1.1", "ipaddr == \"192.168.1.1\"");
+        assertValid(false, "192.168.1.1", "ipAddr = '192.168.1.2'");
+        assertValid(true, "192.168.1.1", "nodeId = 1");
+        assertValid(true, "192.168.1.1", "nodeId == '1'");
+        assertValid(true, "192.168.2.1", "nodeID > 1 & nodeID <= 2");
+        assertValid(false, "192.168.2.1", "nodeID < 2");
+        assertValid(true, "192.168.1.1", "nodeLabel = 'router' AND nodeType = 'A'");
+        assertValid(true, "192.168.1.1", "nodeLabel LIKE 'rou%'");
+        assertValid(true, "192.168.1.1", "nodeLabel LIKE '_outer'");
+        assertValid(false, "192.168.1.1", "nodeLabel LIKE 'rou'");
+        assertValid(true, "192.168.2.1", "nodeLabel NOT LIKE 'rou%'");
+        assertValid(true, "192.168.2.1", "nodeLabel IN ('router', 'server')");
+        assertValid(true, "192.168.2.1", "nodeId NOT IN (1, 3)");
+        assertValid(true, "192.168.1.1", "(nodeLabel = 'server' | nodeLabel = 'router') & !(nodeId = 2)");
+        assertValid(true, "192.168.1.1", "nodeLabel = 'server' OR nodeLabel = 'router' AND nodeId = 1");
+    }
+
+    @Test
+    public void testIpLike() {
+        assertValid(true, "192.168.1.1", "IPADDR IPLIKE *.*.*.*");
+        assertValid(true, "192.168.1.1", "ipaddr iplike 192.168.1.1-10");
+        assertValid(false, "192.168.2.1", "ipaddr IPLIKE '192.168.1.*'");
+        assertValid(true, "192.168.2.1", "IPLIKE(ipAddr, '192.168.2,3.*')");
+    }
+
+    @Test
+    public void testNulls() {
+        // a comparison with NULL is neither true nor false
+        assertValid(false, "192.168.1.2", "ipHostname = 'x'");
+        assertValid(false, "192.168.1.2", "ipHostname != 'x'");
+        assertValid(false, "192.168.1.2", "!(ipHostname = 'x')");
+        assertValid(true, "192.168.1.2", "ipHostname IS NULL");
+        assertValid(true, "192.168.1.1", "ipHostname IS NOT NULL");
+        assertValid(true, "192.168.1.2", "ipHostname = 'x' | nodeId = 1");
+        assertValid(true, "192.168.2.1", "foreignSource IS NULL");
+    }
+
+    @Test
+    public void testServicesAndCategories() {
+        assertValid(true, "192.168.1.1", "isSNMP");
+        assertValid(false, "192.168.2.1", "isSNMP");
+        assertValid(true, "192.168.2.1", "isICMP & isHTTP | serviceName = 'HTTP'");
+        // an interface without services never matches a rule that uses them
+        assertValid(false, "192.168.1.2", "serviceName IS NULL");
+        assertValid(true, "192.168.1.2", "notisICMP");
+        assertValid(false, "192.168.1.1", "notisICMP");
+
+        assertValid(true, "192.168.1.2", "catincRouters");
+        assertValid(false, "192.168.2.1", "catincRouters");
+        assertValid(true, "192.168.1.1", "categoryName = 'Production'");
+        // categories are left joined
+        assertValid(true, "192.168.2.1", "categoryName IS NULL");
+        assertValid(false, "192.168.1.1", "categoryName IS NULL");
+    }
+
+    @Test
+    public void testDeletedInterfaces() {
+        assertValid(false, "192.168.2.2", "IPADDR != '0.0.0.0'");
+        assertEquals(Boolean.TRUE, m_snapshot.isRuleMatching(compile("ipAddr = '192.168.2.2'")));
+    }
+
+    @Test
+    public void testUnknownAddress() {
+        assertNull(m_snapshot.isValid("10.0.0.1", compile("IPADDR != '0.0.0.0'")));
+    }
+
+    @Test
+    public void testRuleMatching() {
+        assertEquals(Boolean.TRUE, m_snapshot.isRuleMatching(compile("isHTTP")));
+        assertEquals(Boolean.FALSE, m_snapshot.isRuleMatching(compile("isSMTP")));
+
+        // rules as built by notifd, for an event on a node, interface and service
+        final String rule = "((catincRouters) & (nodeId == 1) & (ipAddr == '192.168.1.1') & (serviceName == 'SNMP'))";
+        assertEquals(Boolean.TRUE, m_snapshot.isRuleMatching(compile(rule)));
+        assertEquals(Boolean.FALSE, m_snapshot.isRuleMatching(compile("((catincRouters) & (nodeId == 2) & (ipAddr == '192.168.2.1'))")));
+
+        // the snapshot doesn't know the node, interface or service yet
+        assertNull(m_snapshot.isRuleMatching(compile("((IPADDR != '0.0.0.0') & (nodeId == 4))")));
+        assertNull(m_snapshot.isRuleMatching(compile("((IPADDR != '0.0.0.0') & (nodeId == 1) & (ipAddr == '192.168.1.3'))")));
+        assertNull(m_snapshot.isRuleMatching(compile("((IPADDR != '0.0.0.0') & (ipAddr == '192.168.1.1') & (serviceName == 'HTTP'))")));
+        // node3 is known, but has no interfaces
+        assertNull(m_snapshot.isRuleMatching(compile("((IPADDR != '0.0.0.0') & (nodeId == 3))")));
+    }
+
+    @Test
+    public void testIPAddressList() {
+        assertAddresses(true, "IPADDR != '0.0.0.0'", "192.168.1.1", "192.168.1.2", "192.168.2.1");
+        assertAddresses(false, "IPADDR != '0.0.0.0'", "192.168.1.1", "192.168.1.2", "192.168.2.1", "192.168.2.2");
+        assertAddresses(true, "isICMP", "192.168.1.1", "192.168.2.1");
+        assertAddresses(false, "isICMP", "192.168.1.1", "192.168.2.1", "192.168.2.2");
+        assertAddresses(true, "catincRouters & notisSNMP", "192.168.1.2");
+        assertAddresses(true, "nodeLabel = 'empty'");
+
+        // an IPLIKE pattern that IPLike can't handle
+        assertNull(m_snapshot.getIPAddressList(compile("ipAddr IPLIKE '192.168.*'"), true));
+    }
+
+    @Test
+    public void testUnsupportedRules() {
+        // columns that aren't in the snapshot
+        assertNull(CompiledFilterRule.compile("snmpIfType = 6"));
+        assertNull(CompiledFilterRule.compile("(IPADDR != '0.0.0.0') & (city = 'Pittsboro')"));
+        // things the database would have to decide
+        assertNull(CompiledFilterRule.compile("nodeLabel < 'm'"));
+        assertNull(CompiledFilterRule.compile("nodeLabel = 5"));
+        assertNull(CompiledFilterRule.compile("nodeId = 'one'"));
+        assertNull(CompiledFilterRule.compile("nodeCreateTime > '2013-01-01'::TIMESTAMP"));
+        assertNull(CompiledFilterRule.compile("nodeLabel IS DISTINCT FROM 'router'"));
+        // syntax errors are reported by the database
+        assertNull(CompiledFilterRule.compile("nodeLabel = 'router"));
+        assertNull(CompiledFilterRule.compile("(nodeId = 1"));
+        assertNull(CompiledFilterRule.compile("nodeId = 1 nodeId = 2"));
+
+        // an IPLIKE pattern that IPLike can't handle
+        assertNull(m_snapshot.isValid("192.168.1.1", compile("ipAddr IPLIKE '192.168.*'")));
+    }
+
+    private void assertAddresses(final boolean activeOnly, final String rule, final String... expected) {
+        final List<String> addresses = m_snapshot.getIPAddressList(compile(rule), activeOnly);
+        assertNotNull(rule, addresses);
+        assertEquals(rule, expected.length, addresses.size());
+        assertEquals(rule, new HashSet<String>(Arrays.asList(expected)), new HashSet<String>(addresses));
+    }
+
+    private void assertValid(final boolean expected, final String addr, final String rule) {
+        assertEquals(rule, Boolean.valueOf(expected), m_snapshot.isValid(addr, compile(rule)));
+    }
+
+    private static CompiledFilterRule compile(final String rule) {
+        final CompiledFilterRule compiledRule = CompiledFilterRule.compile(rule);
+        assertNotNull("could not compile " + rule, compiledRule);
+        return compiledRule;
+    }
+}
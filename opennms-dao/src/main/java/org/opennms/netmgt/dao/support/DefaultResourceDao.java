@@ -63,9 +63,11 @@ import org.opennms.netmgt.model.OnmsNode;
 import org.opennms.netmgt.model.OnmsResource;
 import org.opennms.netmgt.model.OnmsResourceType;
 import org.opennms.netmgt.model.ResourceTypeUtils;
+import org.opennms.netmgt.rrd.RrdDirectoryCache;
 import org.opennms.netmgt.rrd.RrdFileConstants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.orm.ObjectRetrievalFailureException;
 import org.springframework.util.Assert;
@@ -77,7 +79,7 @@ import org.springframework.util.Assert;
  * @author <a href="mailto:larry@opennms.org">Lawrence Karnowski </a>
  * @author <a href="mailto:dj@opennms.org">DJ Gregor</a>
  */
-public class DefaultResourceDao implements ResourceDao, InitializingBean {
+public class DefaultResourceDao implements ResourceDao, InitializingBean, DisposableBean {
     
     private static final Logger LOG = LoggerFactory.getLogger(DefaultResourceDao.class);
 
@@ -90,6 +92,7 @@ public class DefaultResourceDao implements ResourceDao, InitializingBean {
     private CollectdConfigFactory m_collectdConfig;
     private DataCollectionConfigDao m_dataCollectionConfigDao;
     private Date m_lastUpdateDataCollectionConfig;
+    private Thread m_primeThread;
 
     private Map<String, OnmsResourceType> m_resourceTypes;
     private NodeResourceType m_nodeResourceType;
@@ -231,6 +234,57 @@ public class DefaultResourceDao implements ResourceDao, InitializingBean {
         }
 
         initResourceTypes();
+        primeDirectoryCache();
+    }
+
+    /**
+     * Stops reading the RRD directory tree into the
+     * {@link RrdDirectoryCache} if that is still going on.
+     */
+    @Override
+    public void destroy() throws Exception {
+        final Thread thread;
+        synchronized (this) {
+            thread = m_primeThread;
+            m_primeThread = null;
+        }
+        if (thread != null) {
+            thread.interrupt();
+            thread.join();
+        }
+    }
+
+    /**
+     * Reads the RRD directory tree into the {@link RrdDirectoryCache} in the
+     * background, so that the first resource requests do not have to walk
+     * the file system.  This is off unless the
+     * <code>org.opennms.rrd.directoryCache.primeThreads</code> system
+     * property sets the number of threads to use, and is stopped by
+     * {@link #destroy()}.
+     */
+    private synchronized void primeDirectoryCache() {
+        final int threads = Integer.getInteger("org.opennms.rrd.directoryCache.primeThreads", 0);
+        if (threads <= 0 || m_primeThread != null) {
+            return;
+        }
+
+        final File rrdDirectory = getRrdDirectory();
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    RrdDirectoryCache.getInstance().prime(new File(rrdDirectory, ResourceTypeUtils.SNMP_DIRECTORY), threads);
+                    if (!Thread.currentThread().isInterrupted()) {
+                        RrdDirectoryCache.getInstance().prime(new File(rrdDirectory, ResourceTypeUtils.RESPONSE_DIRECTORY), threads);
+                    }
+                } catch (final InterruptedException e) {
+                    LOG.debug("Interrupted while priming the RRD directory cache", e);
+                }
+            }
+        }, getClass().getSimpleName() + "-prime");
+        thread.setDaemon(true);
+        thread.start();
+        m_primeThread = thread;
     }
     
 
@@ -546,7 +600,7 @@ public class DefaultResourceDao implements ResourceDao, InitializingBean {
 
         // Get all of the non-numeric directory names in the RRD directory; these
         // are the names of the domains that have performance data
-        File[] domainDirs = snmp.listFiles(RrdFileConstants.DOMAIN_DIRECTORY_FILTER);
+        File[] domainDirs = RrdFileConstants.listDirectories(snmp, RrdFileConstants.DOMAIN_DIRECTORY_FILTER);
 
         if (domainDirs != null && domainDirs.length > 0) {
             for (File domainDir : domainDirs) {
@@ -631,7 +685,7 @@ public class DefaultResourceDao implements ResourceDao, InitializingBean {
         Set<Integer> nodes = new TreeSet<Integer>();
         
         File directory = new File(getRrdDirectory(), ResourceTypeUtils.SNMP_DIRECTORY);
-        File[] nodeDirs = directory.listFiles(RrdFileConstants.NODE_DIRECTORY_FILTER);
+        File[] nodeDirs = RrdFileConstants.listDirectories(directory, RrdFileConstants.NODE_DIRECTORY_FILTER);
 
         if (nodeDirs == null || nodeDirs.length == 0) {
             return nodes;
@@ -658,10 +712,13 @@ public class DefaultResourceDao implements ResourceDao, InitializingBean {
        Set<String> nodeSourceDirectories = new HashSet<String>();
        File snmpDir = new File(getRrdDirectory(), ResourceTypeUtils.SNMP_DIRECTORY);
        File forSrcDir = new File(snmpDir, ResourceTypeUtils.FOREIGN_SOURCE_DIRECTORY);
-       File[] sourceDirs = forSrcDir.listFiles(); // TODO There is no need to filter by RrdFileConstants.SOURCE_DIRECTORY_FILTER
+       File[] sourceDirs = RrdFileConstants.listDirectories(forSrcDir, null); // TODO There is no need to filter by RrdFileConstants.SOURCE_DIRECTORY_FILTER
        if (sourceDirs != null && sourceDirs.length > 0) {
            for (File sourceDir : sourceDirs) {
-               File [] ids = sourceDir.listFiles(RrdFileConstants.NODESOURCE_DIRECTORY_FILTER);
+               File [] ids = RrdFileConstants.listDirectories(sourceDir, RrdFileConstants.NODESOURCE_DIRECTORY_FILTER);
+               if (ids == null) {
+                   continue;
+               }
                for (File id : ids) {
                    nodeSourceDirectories.add(sourceDir.getName() + ":" + id.getName());
                }
@@ -675,7 +732,7 @@ public class DefaultResourceDao implements ResourceDao, InitializingBean {
     private static Set<String> findChildrenMatchingFilter(File directory, FileFilter filter) {
         Set<String> children = new HashSet<String>();
         
-        File[] nodeDirs = directory.listFiles(filter);
+        File[] nodeDirs = RrdFileConstants.listDirectories(directory, filter);
 
         if (nodeDirs == null || nodeDirs.length == 0) {
             return children;
@@ -699,13 +756,13 @@ public class DefaultResourceDao implements ResourceDao, InitializingBean {
     private static Set<String> findChildrenChildrenMatchingFilter(File directory, FileFilter filter) {
         Set<String> children = new HashSet<String>();
         
-        File[] locationMonitorDirs = directory.listFiles();
+        File[] locationMonitorDirs = RrdFileConstants.listDirectories(directory, null);
         if (locationMonitorDirs == null) {
             return children;
         }
         
         for (File locationMonitorDir : locationMonitorDirs) {
-            File[] intfDirs = locationMonitorDir.listFiles(filter);
+            File[] intfDirs = RrdFileConstants.listDirectories(locationMonitorDir, filter);
 
             if (intfDirs == null || intfDirs.length == 0) {
                 continue;
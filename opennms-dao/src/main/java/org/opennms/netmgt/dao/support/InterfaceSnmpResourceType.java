@@ -112,7 +112,7 @@ public class InterfaceSnmpResourceType implements OnmsResourceType {
             return false;
         }
         
-        return parent.listFiles(RrdFileConstants.INTERFACE_DIRECTORY_FILTER).length > 0; 
+        return RrdFileConstants.listDirectories(parent, RrdFileConstants.INTERFACE_DIRECTORY_FILTER).length > 0; 
     }
     
     private File getParentResourceDirectory(String parentResource, boolean verify) {
@@ -143,7 +143,7 @@ public class InterfaceSnmpResourceType implements OnmsResourceType {
             
         ArrayList<OnmsResource> resources = new ArrayList<OnmsResource>();
 
-        File[] intfDirs = parent.listFiles(RrdFileConstants.INTERFACE_DIRECTORY_FILTER);
+        File[] intfDirs = RrdFileConstants.listDirectories(parent, RrdFileConstants.INTERFACE_DIRECTORY_FILTER);
 
         Set<OnmsSnmpInterface> snmpInterfaces = node.getSnmpInterfaces();
         Map<String, OnmsSnmpInterface> intfMap = new HashMap<String, OnmsSnmpInterface>();
@@ -367,7 +367,7 @@ public class InterfaceSnmpResourceType implements OnmsResourceType {
             throw new IllegalArgumentException("No such directory: " + domainDir);
         }
 
-        File[] intfDirs = domainDir.listFiles(RrdFileConstants.DOMAIN_INTERFACE_DIRECTORY_FILTER);
+        File[] intfDirs = RrdFileConstants.listDirectories(domainDir, RrdFileConstants.DOMAIN_INTERFACE_DIRECTORY_FILTER);
 
         if (intfDirs != null && intfDirs.length > 0) {
             intfs.ensureCapacity(intfDirs.length);
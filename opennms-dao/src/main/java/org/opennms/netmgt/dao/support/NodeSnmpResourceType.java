@@ -146,7 +146,7 @@ public class NodeSnmpResourceType implements OnmsResourceType {
         if (!nodeSnmpDir.isDirectory()) { // A node without performance metrics should not have a directory 
             return false;
         }
-        return nodeSnmpDir.listFiles(RrdFileConstants.RRD_FILENAME_FILTER).length > 0; 
+        return RrdFileConstants.listRrdFiles(nodeSnmpDir).length > 0; 
     }
     
     /** {@inheritDoc} */
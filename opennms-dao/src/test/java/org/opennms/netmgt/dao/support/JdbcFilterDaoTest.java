@@ -316,6 +316,32 @@ public class JdbcFilterDaoTest implements InitializingBean {
         assertEquals("node list size", 1, nodes.size());
     }
 
+    /**
+     * A DAO that isn't subscribed to events, as in the web UI, evaluates
+     * rules in the database and so sees changes right away.
+     */
+    @Test
+    @JUnitTemporaryDatabase // This test manages its own transactions so use a fresh database
+    public void testUnsubscribedDaoUsesDatabase() throws Exception {
+        final String rule = "nodeLabel == 'renamed'";
+        assertFalse(m_dao.isRuleMatching(rule));
+        assertTrue(m_dao.getActiveIPAddressList(rule).isEmpty());
+
+        m_transTemplate.execute(new TransactionCallbackWithoutResult() {
+            @Override
+            public void doInTransactionWithoutResult(TransactionStatus status) {
+                final OnmsNode node = m_populator.getNode1();
+                node.setLabel("renamed");
+                m_nodeDao.update(node);
+                m_nodeDao.flush();
+            }
+        });
+
+        assertTrue(m_dao.isRuleMatching(rule));
+        assertFalse(m_dao.getActiveIPAddressList(rule).isEmpty());
+        assertTrue(m_dao.isValid("192.168.1.1", rule));
+    }
+
     @Test
     @Transactional
     public void testVariousWaysToMatchServiceNames() {
@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.icmp;
+
+import java.net.InetAddress;
+
+/**
+ * Receives the results of a batch of pings, one per address, in the order
+ * in which they arrive. Each address of the batch gets exactly one of
+ * {@link #handleResponse}, {@link #handleTimeout} or {@link #handleError},
+ * followed by {@link #batchComplete()} after the last one.
+ *
+ * <p>The methods are called on the threads of the ping engine, one at a
+ * time but not holding its lock, so they may start other pings on the same
+ * engine. A slow callback delays the results of other batches, but not the
+ * pings themselves.</p>
+ */
+public interface BatchPingResponseCallback {
+
+    /**
+     * <p>handleResponse</p>
+     *
+     * @param index the index of the address in the batch
+     * @param address a {@link java.net.InetAddress} object.
+     * @param rttNanos the round trip time of the echo request that was answered
+     */
+    public void handleResponse(int index, InetAddress address, long rttNanos);
+
+    /**
+     * <p>handleTimeout</p>
+     *
+     * @param index the index of the address in the batch
+     * @param address a {@link java.net.InetAddress} object.
+     */
+    public void handleTimeout(int index, InetAddress address);
+
+    /**
+     * <p>handleError</p>
+     *
+     * @param index the index of the address in the batch
+     * @param address a {@link java.net.InetAddress} object.
+     * @param t a {@link java.lang.Throwable} object.
+     */
+    public void handleError(int index, InetAddress address, Throwable t);
+
+    /**
+     * Called once all addresses of the batch have a result.
+     */
+    public void batchComplete();
+
+}
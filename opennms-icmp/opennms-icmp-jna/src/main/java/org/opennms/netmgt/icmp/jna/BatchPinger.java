@@ -0,0 +1,612 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.icmp.jna;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.concurrent.TimeUnit;
+
+import org.opennms.core.logging.Logging;
+import org.opennms.jicmp.jna.NativeDatagramSocket;
+import org.opennms.netmgt.icmp.BatchPingResponseCallback;
+import org.opennms.netmgt.icmp.PingConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pings large batches of addresses over a single {@link EchoSocket} at a
+ * limited rate of packets per second.
+ *
+ * <p>Unlike {@link JnaPinger}, which creates a request, a reply and a
+ * callback wrapper per ping and tracks each one in a delay queue, this keeps
+ * the state of outstanding requests in primitive arrays indexed by slot. A
+ * {@link RequestTable} maps the identifier and sequence number of each
+ * request to its slot, and a {@link TimeoutWheel} threaded through the slots
+ * expires the requests that weren't answered in time. Once the arrays have
+ * grown to the number of requests in flight, pinging allocates nothing. The identifier is incremented every 65536
+ * requests so that more requests than sequence numbers can be outstanding.
+ * Every request carries the random id of the engine in its payload, so that
+ * replies to other pingers on the same host are ignored.</p>
+ *
+ * <p>A sender thread sends the requests and processes the timeouts, and a
+ * receiver thread reads the replies. Results are queued while the lock of
+ * the pinger is held and reported to the {@link BatchPingResponseCallback}
+ * of the batch after it is released, by whichever thread queued them, so a
+ * slow callback never holds up the sending, receiving and expiry of other
+ * requests, and a callback may call back into the pinger. Only one thread
+ * reports results at a time, which keeps the results of a batch in order and
+ * its {@link BatchPingResponseCallback#batchComplete()} last.</p>
+ */
+public class BatchPinger {
+    private static final Logger LOG = LoggerFactory.getLogger(BatchPinger.class);
+
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private static final int WHEEL_SIZE = 1024;
+
+    /**
+     * The maximum number of requests sent per acquisition of the lock
+     */
+    private static final int SEND_CHUNK = 64;
+
+    /**
+     * How far the sender may fall behind its rate before it stops catching up
+     */
+    private static final long MAX_BURST_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private static final class Batch {
+        private final InetAddress[] m_addresses;
+        private final long m_timeoutNanos;
+        private final int m_retries;
+        private final BatchPingResponseCallback m_callback;
+        private int m_next = 0;
+        private int m_remaining;
+
+        private Batch(final InetAddress[] addresses, final long timeoutNanos, final int retries, final BatchPingResponseCallback callback) {
+            m_addresses = addresses;
+            m_timeoutNanos = timeoutNanos;
+            m_retries = retries;
+            m_callback = callback;
+            m_remaining = addresses.length;
+        }
+    }
+
+    private final EchoSocket m_socket;
+    private final long m_engineId = new SecureRandom().nextLong();
+    private final int m_identifier = new SecureRandom().nextInt(0x10000);
+    private final long m_nanosPerPacket;
+
+    private final RequestTable m_outstanding = new RequestTable(1024);
+    private final TimeoutWheel m_timeouts = new TimeoutWheel(TICK_NANOS, WHEEL_SIZE, System.nanoTime(), 1024);
+    private final TimeoutWheel.Expiry m_expiry = new TimeoutWheel.Expiry() {
+        @Override
+        public void expired(final int slot) {
+            requestExpired(slot);
+        }
+    };
+
+    /**
+     * Batches with addresses that haven't been sent yet
+     */
+    private final LinkedList<Batch> m_batches = new LinkedList<Batch>();
+
+    // the state of each request, indexed by slot
+    private Batch[] m_slotBatch = new Batch[1024];
+    private int[] m_slotIndex = new int[1024];
+    private int[] m_slotRetries = new int[1024];
+    private int[] m_slotKey = new int[1024];
+    private long[] m_slotSentNanos = new long[1024];
+    private int[] m_freeSlots = new int[1024];
+    private int m_freeCount = 0;
+    private int m_slotCount = 0;
+
+    /**
+     * Slots whose request timed out and has to be sent again, as a ring
+     */
+    private int[] m_retries = new int[1024];
+    private int m_retryHead = 0;
+    private int m_retryCount = 0;
+
+    /**
+     * Results waiting to be reported, as a ring. An index of -1 marks the end
+     * of a batch.
+     */
+    private Batch[] m_resultBatch = new Batch[1024];
+    private int[] m_resultIndex = new int[1024];
+    private Throwable[] m_resultError = new Throwable[1024];
+    private long[] m_resultRtt = new long[1024];
+    private int m_resultHead = 0;
+    private int m_resultCount = 0;
+    private boolean m_delivering = false;
+
+    // the results taken for reporting, reported outside the lock
+    private final Batch[] m_deliverBatch = new Batch[SEND_CHUNK];
+    private final int[] m_deliverIndex = new int[SEND_CHUNK];
+    private final Throwable[] m_deliverError = new Throwable[SEND_CHUNK];
+    private final long[] m_deliverRtt = new long[SEND_CHUNK];
+
+    // the requests picked for sending, sent outside the lock
+    private final int[] m_sendSlots = new int[SEND_CHUNK];
+    private final int[] m_sendKeys = new int[SEND_CHUNK];
+    private final InetAddress[] m_sendAddresses = new InetAddress[SEND_CHUNK];
+
+    private int m_nextRequest = 0;
+    private long m_nextSendNanos = System.nanoTime();
+    private long m_sentCount = 0;
+    private long m_receivedCount = 0;
+
+    private volatile boolean m_running = false;
+    private Thread m_sender;
+    private Thread m_receiver;
+
+    /**
+     * @param socket the socket to send the requests over
+     * @param packetsPerSecond the maximum rate of echo requests, or 0 for
+     *        no limit
+     */
+    public BatchPinger(final EchoSocket socket, final int packetsPerSecond) {
+        m_socket = socket;
+        m_nanosPerPacket = packetsPerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / packetsPerSecond : 0;
+    }
+
+    /**
+     * Create a pinger for IPv4 or IPv6 addresses over a native ICMP socket.
+     *
+     * @param v6 whether to ping IPv6 addresses rather than IPv4 ones
+     * @param packetsPerSecond the maximum rate of echo requests, or 0 for
+     *        no limit
+     */
+    public static BatchPinger create(final boolean v6, final int packetsPerSecond) throws Exception {
+        return new BatchPinger(new NativeEchoSocket(v6 ? NativeDatagramSocket.PF_INET6 : NativeDatagramSocket.PF_INET, PingConstants.DEFAULT_PACKET_SIZE), packetsPerSecond);
+    }
+
+    public synchronized void start() {
+        if (m_running) {
+            return;
+        }
+        m_running = true;
+        m_sender = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Logging.putPrefix("icmp");
+                sendRequests();
+            }
+        }, "BatchPinger-" + m_identifier + "-Sender");
+        m_sender.setDaemon(true);
+        m_receiver = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Logging.putPrefix("icmp");
+                receiveReplies();
+            }
+        }, "BatchPinger-" + m_identifier + "-Receiver");
+        m_receiver.setDaemon(true);
+        m_sender.start();
+        m_receiver.start();
+    }
+
+    /**
+     * Stop the pinger and close its socket. Addresses that haven't got a
+     * result yet are reported as errors.
+     */
+    public void stop() throws InterruptedException {
+        final Thread sender;
+        synchronized (this) {
+            if (!m_running) {
+                return;
+            }
+            m_running = false;
+            sender = m_sender;
+            notifyAll();
+        }
+        m_socket.close();
+        m_receiver.interrupt();
+        sender.join();
+    }
+
+    /**
+     * Ping each of the addresses once, retrying the ones that don't answer
+     * within the timeout.
+     *
+     * @param addresses the addresses to ping, which may repeat
+     * @param timeout how long to wait for each reply, in milliseconds
+     * @param retries how many times to send another request after a timeout
+     * @param callback receives the result for each address
+     */
+    public void ping(final InetAddress[] addresses, final long timeout, final int retries, final BatchPingResponseCallback callback) {
+        final Batch batch = new Batch(addresses.clone(), TimeUnit.MILLISECONDS.toNanos(timeout), retries, callback);
+        synchronized (this) {
+            if (addresses.length == 0) {
+                batchComplete(batch);
+                return;
+            }
+            m_batches.add(batch);
+            if (m_sender != null && !m_running) {
+                // stopped already
+                abandonRequests();
+            }
+            notifyAll();
+        }
+        deliverResults();
+    }
+
+    /**
+     * @return the number of echo requests sent so far
+     */
+    public synchronized long getSentCount() {
+        return m_sentCount;
+    }
+
+    /**
+     * @return the number of echo replies matched to a request so far
+     */
+    public synchronized long getReceivedCount() {
+        return m_receivedCount;
+    }
+
+    /**
+     * @return the number of requests waiting for a reply
+     */
+    public synchronized int getOutstandingCount() {
+        return m_outstanding.size();
+    }
+
+    private void sendRequests() {
+        try {
+            while (true) {
+                deliverResults();
+                final int count;
+                synchronized (this) {
+                    if (!m_running) {
+                        break;
+                    }
+                    final long now = System.nanoTime();
+                    m_timeouts.expire(now, m_expiry);
+                    count = pickRequests(now);
+                    if (count == 0) {
+                        if (m_resultCount == 0 || m_delivering) {
+                            waitForWork(now);
+                        }
+                        continue;
+                    }
+                }
+
+                for (int i = 0; i < count; i++) {
+                    try {
+                        m_socket.send(m_sendAddresses[i], m_sendKeys[i] >>> 16, m_sendKeys[i] & 0xffff, m_engineId);
+                    } catch (final Throwable t) {
+                        sendFailed(m_sendSlots[i], m_sendKeys[i], t);
+                    }
+                    m_sendAddresses[i] = null;
+                }
+            }
+        } catch (final InterruptedException e) {
+            LOG.debug("Interrupted while waiting for requests to send", e);
+        } finally {
+            synchronized (this) {
+                m_running = false;
+                abandonRequests();
+            }
+            deliverResults();
+        }
+    }
+
+    /**
+     * Pick up to {@link #SEND_CHUNK} requests that may be sent now, retries
+     * first, and register them as outstanding.
+     */
+    private int pickRequests(final long now) {
+        int count = 0;
+        while (count < SEND_CHUNK && (m_retryCount > 0 || !m_batches.isEmpty())) {
+            if (m_nanosPerPacket > 0) {
+                if (now < m_nextSendNanos) {
+                    break;
+                }
+                m_nextSendNanos = Math.max(m_nextSendNanos, now - MAX_BURST_NANOS) + m_nanosPerPacket;
+            }
+
+            final int slot;
+            if (m_retryCount > 0) {
+                slot = m_retries[m_retryHead];
+                m_retryHead = (m_retryHead + 1) % m_retries.length;
+                m_retryCount--;
+            } else {
+                final Batch batch = m_batches.getFirst();
+                slot = allocateSlot(batch, batch.m_next++, batch.m_retries);
+                if (batch.m_next == batch.m_addresses.length) {
+                    m_batches.removeFirst();
+                }
+            }
+
+            final int request = m_nextRequest++;
+            final int key = RequestTable.key(m_identifier + (request >>> 16), request);
+            m_outstanding.put(key, slot);
+            m_slotKey[slot] = key;
+            m_slotSentNanos[slot] = now;
+            m_timeouts.schedule(slot, now + m_slotBatch[slot].m_timeoutNanos);
+            m_sentCount++;
+
+            m_sendSlots[count] = slot;
+            m_sendKeys[count] = key;
+            m_sendAddresses[count] = m_slotBatch[slot].m_addresses[m_slotIndex[slot]];
+            count++;
+        }
+        return count;
+    }
+
+    private void waitForWork(final long now) throws InterruptedException {
+        long waitNanos = Long.MAX_VALUE;
+        if (m_retryCount > 0 || !m_batches.isEmpty()) {
+            waitNanos = m_nextSendNanos - now;
+        }
+        if (m_timeouts.size() > 0) {
+            waitNanos = Math.min(waitNanos, m_timeouts.getNextTickNanos() - now);
+        }
+        if (waitNanos == Long.MAX_VALUE) {
+            wait();
+        } else if (waitNanos > 0) {
+            wait(waitNanos / 1000000, (int)(waitNanos % 1000000));
+        }
+    }
+
+    private synchronized void sendFailed(final int slot, final int key, final Throwable t) {
+        if (m_outstanding.remove(key) == slot) {
+            LOG.debug("Failed to send an echo request to {}", m_slotBatch[slot].m_addresses[m_slotIndex[slot]], t);
+            complete(slot, t, 0);
+        }
+    }
+
+    private void requestExpired(final int slot) {
+        m_outstanding.remove(m_slotKey[slot]);
+        if (m_slotRetries[slot] > 0) {
+            m_slotRetries[slot]--;
+            enqueueRetry(slot);
+        } else {
+            complete(slot, null, -1);
+        }
+    }
+
+    private void receiveReplies() {
+        final EchoSocket.Reply reply = new EchoSocket.Reply();
+        while (m_running) {
+            try {
+                if (!m_socket.receive(reply) || reply.getTag() != m_engineId) {
+                    continue;
+                }
+            } catch (final IOException e) {
+                if (m_running) {
+                    LOG.warn("Failed to receive an echo reply", e);
+                }
+                continue;
+            } catch (final Throwable t) {
+                LOG.warn("Unexpected error while receiving an echo reply", t);
+                continue;
+            }
+
+            synchronized (this) {
+                final int slot = m_outstanding.remove(RequestTable.key(reply.getIdentifier(), reply.getSequenceNumber()));
+                if (slot >= 0) {
+                    m_receivedCount++;
+                    complete(slot, null, Math.max(0, reply.getReceivedTimeNanos() - m_slotSentNanos[slot]));
+                }
+            }
+            deliverResults();
+        }
+    }
+
+    /**
+     * Queue the result for a slot and free it.
+     *
+     * @param error the error, if sending the request failed
+     * @param rttNanos the round trip time, or -1 if the request timed out
+     */
+    private void complete(final int slot, final Throwable error, final long rttNanos) {
+        final Batch batch = m_slotBatch[slot];
+        enqueueResult(batch, m_slotIndex[slot], error, rttNanos);
+        freeSlot(slot);
+        if (--batch.m_remaining == 0) {
+            batchComplete(batch);
+        }
+    }
+
+    private void batchComplete(final Batch batch) {
+        enqueueResult(batch, -1, null, 0);
+    }
+
+    private void enqueueResult(final Batch batch, final int index, final Throwable error, final long rttNanos) {
+        if (m_resultCount == m_resultBatch.length) {
+            final int capacity = m_resultBatch.length * 2;
+            final Batch[] batches = new Batch[capacity];
+            final int[] indexes = new int[capacity];
+            final Throwable[] errors = new Throwable[capacity];
+            final long[] rtts = new long[capacity];
+            for (int i = 0; i < m_resultCount; i++) {
+                final int j = (m_resultHead + i) % m_resultBatch.length;
+                batches[i] = m_resultBatch[j];
+                indexes[i] = m_resultIndex[j];
+                errors[i] = m_resultError[j];
+                rtts[i] = m_resultRtt[j];
+            }
+            m_resultBatch = batches;
+            m_resultIndex = indexes;
+            m_resultError = errors;
+            m_resultRtt = rtts;
+            m_resultHead = 0;
+        }
+        final int i = (m_resultHead + m_resultCount) % m_resultBatch.length;
+        m_resultBatch[i] = batch;
+        m_resultIndex[i] = index;
+        m_resultError[i] = error;
+        m_resultRtt[i] = rttNanos;
+        m_resultCount++;
+    }
+
+    /**
+     * Report the queued results to their callbacks. Must be called without
+     * holding the lock. Returns right away if another thread is reporting
+     * results already, since that thread reports the new ones as well.
+     */
+    private void deliverResults() {
+        synchronized (this) {
+            if (m_delivering || m_resultCount == 0) {
+                return;
+            }
+            m_delivering = true;
+        }
+        boolean done = false;
+        try {
+            while (true) {
+                int count = 0;
+                synchronized (this) {
+                    while (count < SEND_CHUNK && m_resultCount > 0) {
+                        m_deliverBatch[count] = m_resultBatch[m_resultHead];
+                        m_deliverIndex[count] = m_resultIndex[m_resultHead];
+                        m_deliverError[count] = m_resultError[m_resultHead];
+                        m_deliverRtt[count] = m_resultRtt[m_resultHead];
+                        m_resultBatch[m_resultHead] = null;
+                        m_resultError[m_resultHead] = null;
+                        m_resultHead = (m_resultHead + 1) % m_resultBatch.length;
+                        m_resultCount--;
+                        count++;
+                    }
+                    if (count == 0) {
+                        m_delivering = false;
+                        done = true;
+                        return;
+                    }
+                }
+                for (int i = 0; i < count; i++) {
+                    deliver(m_deliverBatch[i], m_deliverIndex[i], m_deliverError[i], m_deliverRtt[i]);
+                    m_deliverBatch[i] = null;
+                    m_deliverError[i] = null;
+                }
+            }
+        } finally {
+            if (!done) {
+                synchronized (this) {
+                    m_delivering = false;
+                }
+            }
+        }
+    }
+
+    private static void deliver(final Batch batch, final int index, final Throwable error, final long rttNanos) {
+        if (index < 0) {
+            try {
+                batch.m_callback.batchComplete();
+            } catch (final Throwable t) {
+                LOG.warn("Callback failed at the end of a batch", t);
+            }
+            return;
+        }
+        final InetAddress address = batch.m_addresses[index];
+        try {
+            if (error != null) {
+                batch.m_callback.handleError(index, address, error);
+            } else if (rttNanos < 0) {
+                batch.m_callback.handleTimeout(index, address);
+            } else {
+                batch.m_callback.handleResponse(index, address, rttNanos);
+            }
+        } catch (final Throwable t) {
+            LOG.warn("Callback failed for {}", address, t);
+        }
+    }
+
+    /**
+     * Report every address that hasn't got a result as an error.
+     */
+    private void abandonRequests() {
+        final IOException stopped = new IOException("The pinger was stopped");
+        for (int slot = 0; slot < m_slotCount; slot++) {
+            if (m_slotBatch[slot] != null) {
+                complete(slot, stopped, 0);
+            }
+        }
+        while (!m_batches.isEmpty()) {
+            final Batch batch = m_batches.getFirst();
+            complete(allocateSlot(batch, batch.m_next++, 0), stopped, 0);
+            if (batch.m_next == batch.m_addresses.length) {
+                m_batches.removeFirst();
+            }
+        }
+        m_retryCount = 0;
+    }
+
+    private int allocateSlot(final Batch batch, final int index, final int retries) {
+        final int slot;
+        if (m_freeCount > 0) {
+            slot = m_freeSlots[--m_freeCount];
+        } else {
+            if (m_slotCount == m_slotBatch.length) {
+                growSlots();
+            }
+            slot = m_slotCount++;
+        }
+        m_slotBatch[slot] = batch;
+        m_slotIndex[slot] = index;
+        m_slotRetries[slot] = retries;
+        return slot;
+    }
+
+    private void freeSlot(final int slot) {
+        m_timeouts.cancel(slot);
+        m_slotBatch[slot] = null;
+        m_freeSlots[m_freeCount++] = slot;
+    }
+
+    private void growSlots() {
+        final int capacity = m_slotBatch.length * 2;
+        m_slotBatch = Arrays.copyOf(m_slotBatch, capacity);
+        m_slotIndex = Arrays.copyOf(m_slotIndex, capacity);
+        m_slotRetries = Arrays.copyOf(m_slotRetries, capacity);
+        m_slotKey = Arrays.copyOf(m_slotKey, capacity);
+        m_slotSentNanos = Arrays.copyOf(m_slotSentNanos, capacity);
+        m_freeSlots = Arrays.copyOf(m_freeSlots, capacity);
+        m_timeouts.ensureCapacity(capacity);
+    }
+
+    private void enqueueRetry(final int slot) {
+        if (m_retryCount == m_retries.length) {
+            final int[] retries = new int[m_retries.length * 2];
+            for (int i = 0; i < m_retryCount; i++) {
+                retries[i] = m_retries[(m_retryHead + i) % m_retries.length];
+            }
+            m_retries = retries;
+            m_retryHead = 0;
+        }
+        m_retries[(m_retryHead + m_retryCount) % m_retries.length] = slot;
+        m_retryCount++;
+    }
+
+}
@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.icmp.jna;
+
+import java.io.IOException;
+import java.net.InetAddress;
+
+/**
+ * The socket that a {@link BatchPinger} sends its echo requests over and
+ * receives the echo replies from. Implementations should not allocate per
+ * packet beyond what the underlying socket requires.
+ */
+public interface EchoSocket {
+
+    /**
+     * The echo reply that {@link EchoSocket#receive(Reply)} fills in; one
+     * instance is reused for all replies.
+     */
+    public static final class Reply {
+        private InetAddress m_address;
+        private int m_identifier;
+        private int m_sequenceNumber;
+        private long m_tag;
+        private long m_receivedTimeNanos;
+
+        public void set(final InetAddress address, final int identifier, final int sequenceNumber, final long tag, final long receivedTimeNanos) {
+            m_address = address;
+            m_identifier = identifier;
+            m_sequenceNumber = sequenceNumber;
+            m_tag = tag;
+            m_receivedTimeNanos = receivedTimeNanos;
+        }
+
+        public InetAddress getAddress() {
+            return m_address;
+        }
+
+        public int getIdentifier() {
+            return m_identifier;
+        }
+
+        public int getSequenceNumber() {
+            return m_sequenceNumber;
+        }
+
+        /**
+         * @return the tag that was sent in the payload of the request
+         */
+        public long getTag() {
+            return m_tag;
+        }
+
+        public long getReceivedTimeNanos() {
+            return m_receivedTimeNanos;
+        }
+    }
+
+    /**
+     * Send an echo request.
+     *
+     * @param tag a value to carry in the payload and return in the reply
+     */
+    public void send(InetAddress address, int identifier, int sequenceNumber, long tag) throws IOException;
+
+    /**
+     * Wait for the next packet and fill in 'reply' if it is an echo reply to
+     * one of our requests.
+     *
+     * @return false if the packet wasn't one of our echo replies
+     * @throws IOException if the socket failed or has been closed
+     */
+    public boolean receive(Reply reply) throws IOException;
+
+    /**
+     * Close the socket, which makes a pending {@link #receive(Reply)} fail.
+     */
+    public void close();
+
+}
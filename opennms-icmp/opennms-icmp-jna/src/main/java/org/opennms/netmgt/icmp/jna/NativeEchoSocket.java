@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.icmp.jna;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+
+import org.opennms.jicmp.ip.ICMPPacket;
+import org.opennms.jicmp.ipv6.ICMPv6Packet;
+import org.opennms.jicmp.jna.NativeDatagramPacket;
+import org.opennms.jicmp.jna.NativeDatagramSocket;
+
+import com.sun.jna.Platform;
+
+/**
+ * An {@link EchoSocket} over a native ICMP or ICMPv6 socket. One request
+ * packet and one receive buffer are reused for all packets, and replies are
+ * parsed in place rather than wrapped in packet objects.
+ */
+public class NativeEchoSocket implements EchoSocket {
+
+    private final NativeDatagramSocket m_socket;
+    private final boolean m_v6;
+    private final V4PingRequest m_v4Request;
+    private final V6PingRequest m_v6Request;
+    private final NativeDatagramPacket m_datagram = new NativeDatagramPacket(65535);
+    private volatile boolean m_closed = false;
+
+    /**
+     * @param family {@link NativeDatagramSocket#PF_INET} or {@link NativeDatagramSocket#PF_INET6}
+     * @param packetSize the size of the echo requests
+     */
+    public NativeEchoSocket(final int family, final int packetSize) throws Exception {
+        m_v6 = family == NativeDatagramSocket.PF_INET6;
+        final int type = Platform.isMac() ? NativeDatagramSocket.SOCK_DGRAM : NativeDatagramSocket.SOCK_RAW;
+        m_socket = NativeDatagramSocket.create(family, type, m_v6 ? NativeDatagramSocket.IPPROTO_ICMPV6 : NativeDatagramSocket.IPPROTO_ICMP);
+        m_v4Request = m_v6 ? null : new V4PingRequest(0, 0, 0, packetSize);
+        m_v6Request = m_v6 ? new V6PingRequest(0, 0, 0, packetSize) : null;
+    }
+
+    @Override
+    public void send(final InetAddress address, final int identifier, final int sequenceNumber, final long tag) throws IOException {
+        final int sent;
+        if (m_v6) {
+            m_v6Request.setIdentifier(identifier);
+            m_v6Request.setSequenceNumber(sequenceNumber);
+            m_v6Request.setThreadId(tag);
+            sent = m_socket.send(m_v6Request.toDatagramPacket(address));
+        } else {
+            m_v4Request.setIdentifier(identifier);
+            m_v4Request.setSequenceNumber(sequenceNumber);
+            m_v4Request.setThreadId(tag);
+            sent = m_socket.send(m_v4Request.toDatagramPacket(address));
+        }
+        if (sent < 0) {
+            throw new IOException("Failed to send an echo request to " + address);
+        }
+    }
+
+    @Override
+    public boolean receive(final Reply reply) throws IOException {
+        if (m_closed) {
+            throw new IOException("The socket is closed");
+        }
+        m_datagram.setLength(65535);
+        final int length = m_socket.receive(m_datagram);
+        final long received = System.nanoTime();
+        if (m_closed) {
+            throw new IOException("The socket is closed");
+        }
+        if (length < 0) {
+            return false;
+        }
+
+        final ByteBuffer packet = m_datagram.getContent();
+        // IPv4 raw sockets deliver the IP header as well
+        final int offset = m_v6 ? 0 : (packet.get(0) & 0xf) << 2;
+        if (packet.limit() < offset + 8 + V4PingRequest.DATA_LENGTH) {
+            return false;
+        }
+        final int type = packet.get(offset) & 0xff;
+        if (type != (m_v6 ? ICMPv6Packet.Type.EchoReply.getCode() : ICMPPacket.Type.EchoReply.getCode())) {
+            return false;
+        }
+        final int content = offset + 8;
+        if (packet.getLong(content + V4PingRequest.OFFSET_COOKIE) != V4PingRequest.COOKIE) {
+            return false;
+        }
+        reply.set(m_datagram.getAddress(),
+                  packet.getShort(offset + 4) & 0xffff,
+                  packet.getShort(offset + 6) & 0xffff,
+                  packet.getLong(content + V4PingRequest.OFFSET_THREAD_ID),
+                  received);
+        return true;
+    }
+
+    @Override
+    public void close() {
+        m_closed = true;
+        m_socket.close();
+    }
+}
@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.icmp.jna;
+
+import java.util.Arrays;
+
+/**
+ * Map from the (identifier, sequence number) key of an outstanding echo
+ * request to the slot that holds its state, kept in two primitive arrays
+ * with open addressing and linear probing so that tracking a request
+ * doesn't allocate anything. Removal shifts the following entries of the
+ * probe sequence back, so there are no tombstones to clean up.
+ */
+final class RequestTable {
+
+    private static final int EMPTY = -1;
+
+    private int[] m_keys;
+    private int[] m_values;
+    private int m_mask;
+    private int m_size = 0;
+
+    RequestTable(final int expectedSize) {
+        int capacity = 16;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    static int key(final int identifier, final int sequenceNumber) {
+        return (identifier & 0xffff) << 16 | (sequenceNumber & 0xffff);
+    }
+
+    int size() {
+        return m_size;
+    }
+
+    /**
+     * @param value the slot of the request, which must not be negative
+     */
+    void put(final int key, final int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("value must not be negative: " + value);
+        }
+        if (2 * (m_size + 1) > m_keys.length) {
+            resize(m_keys.length << 1);
+        }
+        int i = index(key);
+        while (m_values[i] != EMPTY) {
+            if (m_keys[i] == key) {
+                m_values[i] = value;
+                return;
+            }
+            i = (i + 1) & m_mask;
+        }
+        m_keys[i] = key;
+        m_values[i] = value;
+        m_size++;
+    }
+
+    /**
+     * @return the slot of the request, or -1 if there is none for the key
+     */
+    int get(final int key) {
+        int i = index(key);
+        while (m_values[i] != EMPTY) {
+            if (m_keys[i] == key) {
+                return m_values[i];
+            }
+            i = (i + 1) & m_mask;
+        }
+        return EMPTY;
+    }
+
+    /**
+     * @return the slot the request had, or -1 if there was none for the key
+     */
+    int remove(final int key) {
+        int i = index(key);
+        while (m_values[i] != EMPTY) {
+            if (m_keys[i] == key) {
+                final int value = m_values[i];
+                shiftBack(i);
+                m_size--;
+                return value;
+            }
+            i = (i + 1) & m_mask;
+        }
+        return EMPTY;
+    }
+
+    /**
+     * Fill the hole at 'hole' with a later entry of the same probe sequence
+     * until the sequence ends.
+     */
+    private void shiftBack(int hole) {
+        int i = hole;
+        while (true) {
+            i = (i + 1) & m_mask;
+            if (m_values[i] == EMPTY) {
+                break;
+            }
+            final int home = index(m_keys[i]);
+            // move the entry if its home isn't cyclically in (hole, i]
+            if (((i - home) & m_mask) >= ((i - hole) & m_mask)) {
+                m_keys[hole] = m_keys[i];
+                m_values[hole] = m_values[i];
+                hole = i;
+            }
+        }
+        m_values[hole] = EMPTY;
+    }
+
+    private int index(final int key) {
+        // the finalization step of MurmurHash3, sequence numbers are consecutive
+        int h = key;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h & m_mask;
+    }
+
+    private void allocate(final int capacity) {
+        m_keys = new int[capacity];
+        m_values = new int[capacity];
+        Arrays.fill(m_values, EMPTY);
+        m_mask = capacity - 1;
+    }
+
+    private void resize(final int capacity) {
+        final int[] keys = m_keys;
+        final int[] values = m_values;
+        allocate(capacity);
+        m_size = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (values[i] != EMPTY) {
+                put(keys[i], values[i]);
+            }
+        }
+    }
+}
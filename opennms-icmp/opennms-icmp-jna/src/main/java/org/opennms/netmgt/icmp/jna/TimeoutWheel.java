@@ -0,0 +1,189 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.icmp.jna;
+
+import java.util.Arrays;
+
+/**
+ * A hashed timing wheel of request slots. Each bucket is a doubly linked
+ * list threaded through arrays indexed by slot, so scheduling and
+ * cancelling a timeout are constant time and allocate nothing, and each
+ * tick only walks the bucket it is due for. Deadlines further away than
+ * one turn of the wheel stay in their bucket until their turn comes.
+ */
+final class TimeoutWheel {
+
+    interface Expiry {
+        void expired(int slot);
+    }
+
+    private static final int NONE = -1;
+
+    private final long m_tickNanos;
+    private final long m_startNanos;
+    private final int m_mask;
+    private final int[] m_heads;
+
+    // per slot
+    private int[] m_next;
+    private int[] m_prev;
+    private long[] m_ticks;
+
+    /**
+     * The next tick to process
+     */
+    private long m_currentTick = 0;
+
+    private int m_size = 0;
+
+    /**
+     * @param tickNanos the resolution of the timeouts
+     * @param wheelSize the number of buckets, rounded up to a power of two
+     * @param startNanos the value of {@link System#nanoTime()} at tick 0
+     * @param capacity the initial number of slots
+     */
+    TimeoutWheel(final long tickNanos, final int wheelSize, final long startNanos, final int capacity) {
+        int size = 1;
+        while (size < wheelSize) {
+            size <<= 1;
+        }
+        m_tickNanos = tickNanos;
+        m_startNanos = startNanos;
+        m_mask = size - 1;
+        m_heads = new int[size];
+        Arrays.fill(m_heads, NONE);
+        m_next = new int[0];
+        m_prev = new int[0];
+        m_ticks = new long[0];
+        ensureCapacity(capacity);
+    }
+
+    void ensureCapacity(final int capacity) {
+        final int oldCapacity = m_ticks.length;
+        if (capacity <= oldCapacity) {
+            return;
+        }
+        m_next = Arrays.copyOf(m_next, capacity);
+        m_prev = Arrays.copyOf(m_prev, capacity);
+        m_ticks = Arrays.copyOf(m_ticks, capacity);
+        Arrays.fill(m_ticks, oldCapacity, capacity, NONE);
+    }
+
+    int size() {
+        return m_size;
+    }
+
+    /**
+     * @return the time at which the next tick is due, in the time base of
+     *         {@link System#nanoTime()}
+     */
+    long getNextTickNanos() {
+        return m_startNanos + m_currentTick * m_tickNanos;
+    }
+
+    /**
+     * Schedule the timeout of a slot, replacing the one it had.
+     */
+    void schedule(final int slot, final long deadlineNanos) {
+        cancel(slot);
+        // round up, so that a slot never expires before its deadline
+        final long tick = Math.max(m_currentTick, (deadlineNanos - m_startNanos + m_tickNanos - 1) / m_tickNanos);
+        final int bucket = (int)(tick & m_mask);
+        final int head = m_heads[bucket];
+        m_next[slot] = head;
+        m_prev[slot] = NONE;
+        if (head != NONE) {
+            m_prev[head] = slot;
+        }
+        m_heads[bucket] = slot;
+        m_ticks[slot] = tick;
+        m_size++;
+    }
+
+    /**
+     * Cancel the timeout of a slot, if it has one.
+     */
+    void cancel(final int slot) {
+        final long tick = m_ticks[slot];
+        if (tick == NONE) {
+            return;
+        }
+        final int next = m_next[slot];
+        final int prev = m_prev[slot];
+        if (prev == NONE) {
+            m_heads[(int)(tick & m_mask)] = next;
+        } else {
+            m_next[prev] = next;
+        }
+        if (next != NONE) {
+            m_prev[next] = prev;
+        }
+        m_ticks[slot] = NONE;
+        m_size--;
+    }
+
+    /**
+     * Process the ticks up to 'nowNanos' and pass the slots whose deadline
+     * has passed to 'expiry'.
+     */
+    void expire(final long nowNanos, final Expiry expiry) {
+        final long nowTick = (nowNanos - m_startNanos) / m_tickNanos;
+        if (m_size == 0) {
+            m_currentTick = Math.max(m_currentTick, nowTick + 1);
+            return;
+        }
+        if (nowTick - m_currentTick > m_mask) {
+            // more than a turn has passed, so every bucket is due
+            m_currentTick = nowTick + 1;
+            for (int bucket = 0; bucket <= m_mask; bucket++) {
+                expireBucket(bucket, nowTick, expiry);
+            }
+            return;
+        }
+        while (m_currentTick <= nowTick) {
+            final long tick = m_currentTick++;
+            expireBucket((int)(tick & m_mask), tick, expiry);
+        }
+    }
+
+    private void expireBucket(final int bucket, final long tick, final Expiry expiry) {
+        int slot = m_heads[bucket];
+        while (slot != NONE) {
+            // 'expiry' may schedule the slot again, which puts it at the head
+            // of a bucket, so take the next one first
+            final int next = m_next[slot];
+            if (m_ticks[slot] <= tick) {
+                cancel(slot);
+                expiry.expired(slot);
+            }
+            slot = next;
+        }
+    }
+}
@@ -0,0 +1,328 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.icmp.jna;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+import org.opennms.netmgt.icmp.BatchPingResponseCallback;
+
+public class BatchPingerTest {
+
+    /**
+     * Answers every echo request in process, except those to addresses
+     * whose last byte is in the set of silent bytes.
+     */
+    private static class FakeEchoSocket implements EchoSocket {
+        private final boolean[] m_silent = new boolean[256];
+        private final InetAddress[] m_addresses = new InetAddress[1 << 18];
+        private final int[] m_keys = new int[1 << 18];
+        private final long[] m_tags = new long[1 << 18];
+        private int m_head = 0;
+        private int m_count = 0;
+        private boolean m_closed = false;
+        private final AtomicInteger m_sent = new AtomicInteger();
+
+        public void setSilent(final int lastByte) {
+            m_silent[lastByte] = true;
+        }
+
+        public int getSentCount() {
+            return m_sent.get();
+        }
+
+        @Override
+        public synchronized void send(final InetAddress address, final int identifier, final int sequenceNumber, final long tag) throws IOException {
+            m_sent.incrementAndGet();
+            // the hash code of an IPv4 address is the address
+            if (m_silent[address.hashCode() & 0xff] || m_count == m_keys.length) {
+                return;
+            }
+            final int i = (m_head + m_count++) & (m_keys.length - 1);
+            m_addresses[i] = address;
+            m_keys[i] = RequestTable.key(identifier, sequenceNumber);
+            m_tags[i] = tag;
+            notifyAll();
+        }
+
+        @Override
+        public synchronized boolean receive(final Reply reply) throws IOException {
+            while (m_count == 0) {
+                if (m_closed) {
+                    throw new IOException("closed");
+                }
+                try {
+                    wait();
+                } catch (final InterruptedException e) {
+                    throw new IOException("interrupted");
+                }
+            }
+            final int i = m_head;
+            m_head = (m_head + 1) & (m_keys.length - 1);
+            m_count--;
+            reply.set(m_addresses[i], m_keys[i] >>> 16, m_keys[i] & 0xffff, m_tags[i], System.nanoTime());
+            m_addresses[i] = null;
+            return true;
+        }
+
+        @Override
+        public synchronized void close() {
+            m_closed = true;
+            notifyAll();
+        }
+    }
+
+    private static class Results implements BatchPingResponseCallback {
+        private final int[] m_results;
+        private final CountDownLatch m_complete = new CountDownLatch(1);
+        private int m_responses = 0;
+        private int m_timeouts = 0;
+        private int m_errors = 0;
+
+        public Results(final int count) {
+            m_results = new int[count];
+        }
+
+        @Override
+        public synchronized void handleResponse(final int index, final InetAddress address, final long rttNanos) {
+            m_results[index]++;
+            m_responses++;
+        }
+
+        @Override
+        public synchronized void handleTimeout(final int index, final InetAddress address) {
+            m_results[index]++;
+            m_timeouts++;
+        }
+
+        @Override
+        public synchronized void handleError(final int index, final InetAddress address, final Throwable t) {
+            m_results[index]++;
+            m_errors++;
+        }
+
+        @Override
+        public void batchComplete() {
+            m_complete.countDown();
+        }
+
+        public void await() throws InterruptedException {
+            assertTrue("the batch should complete", m_complete.await(30, TimeUnit.SECONDS));
+            synchronized (this) {
+                for (int i = 0; i < m_results.length; i++) {
+                    assertEquals("results for address " + i, 1, m_results[i]);
+                }
+            }
+        }
+    }
+
+    private final FakeEchoSocket m_socket = new FakeEchoSocket();
+    private BatchPinger m_pinger;
+
+    private BatchPinger start(final int packetsPerSecond) {
+        m_pinger = new BatchPinger(m_socket, packetsPerSecond);
+        m_pinger.start();
+        return m_pinger;
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (m_pinger != null) {
+            m_pinger.stop();
+        }
+    }
+
+    private static InetAddress[] addresses(final int count) throws Exception {
+        final InetAddress[] addresses = new InetAddress[count];
+        for (int i = 0; i < count; i++) {
+            addresses[i] = InetAddress.getByAddress(new byte[] { 10, (byte)(i >> 16), (byte)(i >> 8), (byte)i });
+        }
+        return addresses;
+    }
+
+    @Test
+    public void testResponsesAndTimeouts() throws Exception {
+        m_socket.setSilent(7);
+        start(0);
+
+        final InetAddress[] addresses = addresses(1000);
+        final Results results = new Results(addresses.length);
+        m_pinger.ping(addresses, 50, 2, results);
+        results.await();
+
+        // 1000 addresses, 4 of which end in 7 and are tried three times
+        assertEquals(996, results.m_responses);
+        assertEquals(4, results.m_timeouts);
+        assertEquals(0, results.m_errors);
+        assertEquals(1008, m_socket.getSentCount());
+        assertEquals(0, m_pinger.getOutstandingCount());
+    }
+
+    @Test
+    public void testEmptyBatch() throws Exception {
+        start(0);
+        final Results results = new Results(0);
+        m_pinger.ping(new InetAddress[0], 50, 0, results);
+        results.await();
+    }
+
+    @Test
+    public void testRate() throws Exception {
+        start(2000);
+        final InetAddress[] addresses = addresses(400);
+        final Results results = new Results(addresses.length);
+        final long begin = System.nanoTime();
+        m_pinger.ping(addresses, 1000, 0, results);
+        results.await();
+        final long elapsed = System.nanoTime() - begin;
+        assertEquals(400, results.m_responses);
+        // 400 packets at 2000 per second take at least 200ms, less the burst
+        assertTrue("sending took " + elapsed + "ns", elapsed >= TimeUnit.MILLISECONDS.toNanos(180));
+    }
+
+    @Test
+    public void testStop() throws Exception {
+        m_socket.setSilent(1);
+        start(0);
+        final InetAddress[] addresses = addresses(256);
+        final Results results = new Results(addresses.length);
+        m_pinger.ping(addresses, 60000, 0, results);
+        while (m_pinger.getReceivedCount() < 255) {
+            Thread.sleep(10);
+        }
+        m_pinger.stop();
+        results.await();
+        assertEquals(255, results.m_responses);
+        assertEquals(1, results.m_errors);
+
+        // pings after stopping fail right away
+        final Results late = new Results(2);
+        m_pinger.ping(addresses(2), 50, 0, late);
+        late.await();
+        assertEquals(2, late.m_errors);
+    }
+
+    /**
+     * A callback that waits for another thread using the pinger, and starts
+     * another batch itself, must not block the pinger.
+     */
+    @Test
+    public void testCallbacksOutsideLock() throws Exception {
+        start(0);
+        final Results second = new Results(10);
+        final AtomicInteger blocked = new AtomicInteger();
+        final Results first = new Results(10) {
+            @Override
+            public synchronized void handleResponse(final int index, final InetAddress address, final long rttNanos) {
+                super.handleResponse(index, address, rttNanos);
+                if (index != 0) {
+                    return;
+                }
+                final Thread other = new Thread() {
+                    @Override
+                    public void run() {
+                        m_pinger.getOutstandingCount();
+                    }
+                };
+                other.start();
+                try {
+                    other.join(TimeUnit.SECONDS.toMillis(10));
+                    m_pinger.ping(addresses(10), 1000, 0, second);
+                } catch (final Exception e) {
+                    throw new IllegalStateException(e);
+                }
+                if (other.isAlive()) {
+                    blocked.incrementAndGet();
+                }
+            }
+        };
+        m_pinger.ping(addresses(10), 1000, 0, first);
+        first.await();
+        second.await();
+        assertFalse("another thread was blocked by the callback", blocked.get() > 0);
+        assertEquals(10, second.m_responses);
+    }
+
+    @Test
+    public void testRequestTable() {
+        final Random random = new Random(42);
+        final RequestTable table = new RequestTable(16);
+        final Map<Integer,Integer> expected = new HashMap<Integer,Integer>();
+        for (int i = 0; i < 200000; i++) {
+            final int key = random.nextInt(5000) * 65521;
+            if (random.nextBoolean()) {
+                table.put(key, i);
+                expected.put(key, i);
+            } else {
+                final Integer value = expected.remove(key);
+                assertEquals(value == null ? -1 : value.intValue(), table.remove(key));
+            }
+            assertEquals(expected.size(), table.size());
+        }
+        for (final Map.Entry<Integer,Integer> entry : expected.entrySet()) {
+            assertEquals(entry.getValue().intValue(), table.get(entry.getKey()));
+        }
+    }
+
+    /**
+     * Pings more addresses at once than there are sequence numbers, so that
+     * the request table holds many thousands of outstanding requests and
+     * their keys wrap; every address must get exactly one answer.
+     */
+    @Test
+    public void testLargeBatch() throws Exception {
+        start(0);
+        final InetAddress[] addresses = addresses(100000);
+
+        for (int batch = 0; batch < 2; batch++) {
+            final int sentBefore = m_socket.getSentCount();
+            final Results results = new Results(addresses.length);
+            m_pinger.ping(addresses, 5000, 0, results);
+            results.await();
+
+            assertEquals(addresses.length, results.m_responses);
+            assertEquals(0, results.m_timeouts);
+            assertEquals(addresses.length, m_socket.getSentCount() - sentBefore);
+            assertEquals(0, m_pinger.getOutstandingCount());
+        }
+    }
+}
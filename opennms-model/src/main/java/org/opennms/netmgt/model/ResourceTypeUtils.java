@@ -129,7 +129,7 @@ public abstract class ResourceTypeUtils {
     private static void loadRrdAttributes(File rrdDirectory, String relativePath, Set<OnmsAttribute> attributes) {
         int suffixLength = RrdFileConstants.getRrdSuffix().length();
         File resourceDir = new File(rrdDirectory, relativePath);
-        File[] files = resourceDir.listFiles(RrdFileConstants.RRD_FILENAME_FILTER);
+        File[] files = RrdFileConstants.listRrdFiles(resourceDir);
         
         if (files == null) {
             return;
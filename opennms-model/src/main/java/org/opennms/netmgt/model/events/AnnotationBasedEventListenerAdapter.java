@@ -58,10 +58,14 @@ import org.springframework.util.ClassUtils;
 /**
  * AnnotationBasedEventListenerAdapter
  *
+ * If the annotated listener is itself a {@link ParallelEventListener}, its
+ * thread count and partition key are passed through so Eventd can dispatch
+ * to it on several threads.
+ *
  * @author brozow
  * @version $Id: $
  */
-public class AnnotationBasedEventListenerAdapter implements StoppableEventListener, InitializingBean, DisposableBean {
+public class AnnotationBasedEventListenerAdapter implements StoppableEventListener, ParallelEventListener, InitializingBean, DisposableBean {
     
 	
 	private static final Logger LOG = LoggerFactory.getLogger(AnnotationBasedEventListenerAdapter.class);
@@ -147,6 +151,20 @@ public class AnnotationBasedEventListenerAdapter implements StoppableEventListen
         m_logPrefix = logPrefix;
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public int getNumberOfThreads() {
+        final Object listener = m_annotatedListener;
+        return listener instanceof ParallelEventListener ? ((ParallelEventListener)listener).getNumberOfThreads() : 1;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Object getPartitionKey(final Event e) {
+        final Object listener = m_annotatedListener;
+        return listener instanceof ParallelEventListener ? ((ParallelEventListener)listener).getPartitionKey(e) : null;
+    }
+
     /* (non-Javadoc)
      * @see org.opennms.netmgt.eventd.EventListener#onEvent(org.opennms.netmgt.xml.event.Event)
      */
@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.model.events;
+
+import org.opennms.netmgt.xml.event.Event;
+
+/**
+ * Commonly used partition keys for {@link ParallelEventListener}s.
+ */
+public abstract class EventPartitionKeys {
+
+    /**
+     * Partition by node ID, so all events for one node are handled in order.
+     *
+     * @param e a {@link org.opennms.netmgt.xml.event.Event} object.
+     * @return the node ID, or <code>null</code> if the event has none
+     */
+    public static Object byNodeId(final Event e) {
+        return e.hasNodeid() ? e.getNodeid() : null;
+    }
+
+    /**
+     * Partition by alarm reduction key, so all events that reduce into the
+     * same alarm are handled in order.
+     *
+     * @param e a {@link org.opennms.netmgt.xml.event.Event} object.
+     * @return the reduction key, or <code>null</code> if the event has no alarm data
+     */
+    public static Object byReductionKey(final Event e) {
+        return e.getAlarmData() == null ? null : e.getAlarmData().getReductionKey();
+    }
+
+    /**
+     * Partition by UEI.
+     *
+     * @param e a {@link org.opennms.netmgt.xml.event.Event} object.
+     * @return the UEI, may be <code>null</code>
+     */
+    public static Object byUei(final Event e) {
+        return e.getUei();
+    }
+}
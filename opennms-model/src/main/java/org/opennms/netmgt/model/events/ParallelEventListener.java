@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.model.events;
+
+import org.opennms.netmgt.xml.event.Event;
+
+/**
+ * An {@link EventListener} that is able to handle several events at the same
+ * time.  Instead of a single dispatch thread, Eventd gives such a listener
+ * {@link #getNumberOfThreads()} threads and sends every event with the same
+ * partition key to the same thread, so events that share a key are still
+ * handled in the order they were broadcast.
+ *
+ * @see EventPartitionKeys
+ */
+public interface ParallelEventListener extends EventListener {
+    /**
+     * Return the number of threads events are dispatched on.
+     *
+     * @return a positive int
+     */
+    public int getNumberOfThreads();
+
+    /**
+     * Return the key that decides which thread an event is handled on, for
+     * example the node ID or the alarm reduction key.  Events whose key is
+     * <code>null</code> are partitioned by UEI.
+     *
+     * @param e the event about to be dispatched
+     * @return the partition key, may be <code>null</code>
+     */
+    public Object getPartitionKey(Event e);
+}
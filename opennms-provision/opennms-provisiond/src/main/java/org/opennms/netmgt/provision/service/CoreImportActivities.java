@@ -109,7 +109,7 @@ public class CoreImportActivities {
     }
     
     @Activity( lifecycle = "import", phase = "scan", schedulingHint="import" )
-    public void scanNodes(final Phase currentPhase, final ImportOperationsManager opsMgr, final RequisitionImport ri) {
+    public void scanNodes(final Phase currentPhase, final ImportOperationsManager opsMgr, final RequisitionImport ri, final Boolean rescanExisting) {
         if (ri.isAborted()) {
             info("The import has been aborted, skipping scan phase import.");
             return;
@@ -118,6 +118,11 @@ public class CoreImportActivities {
         info("Scheduling nodes for phase %s", currentPhase);
         
         final Collection<ImportOperation> operations = opsMgr.getOperations();
+
+        if (isImportPipelineEnabled()) {
+            new ImportPipeline(m_provisionService, currentPhase, ri, rescanExisting == null || rescanExisting, getImportBatchSize(), operations).start();
+            return;
+        }
         
         for(final ImportOperation op : operations) {
             final LifeCycleInstance nodeScan = currentPhase.createNestedLifeCycle("nodeImport");
@@ -133,6 +138,18 @@ public class CoreImportActivities {
     }
     
     
+    /**
+     * Pipelined imports scan and persist the nodes in separate stages, and
+     * persist them in batches (see {@link ImportPipeline}).
+     */
+    private static boolean isImportPipelineEnabled() {
+        return Boolean.getBoolean("org.opennms.provisiond.importPipeline");
+    }
+
+    private static int getImportBatchSize() {
+        return Integer.getInteger("org.opennms.provisiond.importBatchSize", 100);
+    }
+
     @Activity( lifecycle = "nodeImport", phase = "scan", schedulingHint="import" )
     public void scanNode(final ImportOperation operation, final RequisitionImport ri, final Boolean rescanExisting) {
         if (ri.isAborted()) {
@@ -89,6 +89,7 @@ import org.opennms.netmgt.provision.persist.requisition.Requisition;
 import org.opennms.netmgt.provision.persist.requisition.RequisitionInterface;
 import org.opennms.netmgt.provision.persist.requisition.RequisitionInterfaceCollection;
 import org.opennms.netmgt.provision.persist.requisition.RequisitionNode;
+import org.opennms.netmgt.provision.service.operations.ImportOperation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InitializingBean;
@@ -169,6 +170,12 @@ public class DefaultProvisionService implements ProvisionService, InitializingBe
     
     private final ThreadLocal<HashMap<String, OnmsServiceType>> m_typeCache = new ThreadLocal<HashMap<String, OnmsServiceType>>();
     private final ThreadLocal<HashMap<String, OnmsCategory>> m_categoryCache = new ThreadLocal<HashMap<String, OnmsCategory>>();
+
+    /**
+     * Set while {@link #persistImportOperations(List)} runs, so that the
+     * nodes of a batch are flushed together instead of one at a time.
+     */
+    private final ThreadLocal<Boolean> m_inBatch = new ThreadLocal<Boolean>();
     
     @Override
     public void afterPropertiesSet() throws Exception {
@@ -198,7 +205,11 @@ public class DefaultProvisionService implements ProvisionService, InitializingBe
         
         node.setDistPoller(createDistPollerIfNecessary("localhost", "127.0.0.1"));
         m_nodeDao.save(node);
-        m_nodeDao.flush();
+        // the identifiers come from sequences and are assigned on save, so
+        // the inserts of a batch can wait for the end of the batch
+        if (!Boolean.TRUE.equals(m_inBatch.get())) {
+            m_nodeDao.flush();
+        }
 
         final EntityVisitor eventAccumlator = new AddEventVisitor(m_eventForwarder);
 
@@ -244,6 +255,27 @@ public class DefaultProvisionService implements ProvisionService, InitializingBe
         }
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * The events of the operations go through the transaction aware event
+     * forwarder, so they are sent once the whole batch has been committed,
+     * and not at all if it is rolled back.
+     */
+    @Transactional
+    @Override
+    public void persistImportOperations(final List<? extends ImportOperation> operations) {
+        m_inBatch.set(Boolean.TRUE);
+        try {
+            for (final ImportOperation operation : operations) {
+                operation.persistInBatch();
+            }
+        } finally {
+            m_inBatch.remove();
+        }
+        m_nodeDao.flush();
+    }
+
     /** {@inheritDoc} */
     @Transactional
     @Override
@@ -593,6 +625,13 @@ public class DefaultProvisionService implements ProvisionService, InitializingBe
         m_nodeDao.clear();
         m_nodeDao.flush();
     }
+
+    /** {@inheritDoc} */
+    @Override
+    public void clearServiceTypeAndCategoryCache() {
+        m_typeCache.remove();
+        m_categoryCache.remove();
+    }
     
     /** {@inheritDoc} */
     @Override
@@ -0,0 +1,216 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.provision.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.opennms.core.tasks.BatchTask;
+import org.opennms.netmgt.provision.service.operations.ImportOperation;
+import org.opennms.netmgt.provision.service.operations.RequisitionImport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the scan and persist steps of the import operations of a requisition
+ * as two pipelined stages, instead of one nested lifecycle per node.
+ *
+ * <p>The SNMP scans run on the <code>scan</code> executor of the task
+ * coordinator.  As they complete, the operations are gathered into batches
+ * that are persisted on the <code>write</code> executor, one transaction per
+ * batch, so each stage is bounded by its own thread pool.  If a batch fails,
+ * its operations are persisted again one at a time so that a single bad node
+ * does not lose the rest of the batch.</p>
+ */
+public class ImportPipeline {
+    private static final Logger LOG = LoggerFactory.getLogger(ImportPipeline.class);
+
+    private final ProvisionService m_provisionService;
+    private final BatchTask m_phase;
+    private final RequisitionImport m_requisitionImport;
+    private final boolean m_rescanExisting;
+    private final int m_batchSize;
+    private final Collection<ImportOperation> m_operations;
+    private final int m_total;
+
+    private final Stage m_scanStage = new Stage("scan");
+    private final Stage m_persistStage = new Stage("persist");
+
+    // operations that have been scanned but not yet handed to a batch
+    private final List<ImportOperation> m_pending = new ArrayList<ImportOperation>();
+    private int m_scanned = 0;
+
+    /**
+     * Throughput statistics of one stage of the pipeline.
+     */
+    static class Stage {
+        private final String m_name;
+        private int m_count = 0;
+        private long m_busyNanos = 0;
+        private long m_firstStart = 0;
+        private long m_lastEnd = 0;
+
+        Stage(final String name) {
+            m_name = name;
+        }
+
+        synchronized int completed(final int count, final long start, final long end) {
+            if (m_count == 0 || start < m_firstStart) {
+                m_firstStart = start;
+            }
+            if (end > m_lastEnd) {
+                m_lastEnd = end;
+            }
+            m_busyNanos += end - start;
+            m_count += count;
+            return m_count;
+        }
+
+        @Override
+        public synchronized String toString() {
+            final double elapsed = (m_lastEnd - m_firstStart) / 1000000000.0;
+            return String.format("%s: %d nodes, %.1f thread-seconds, %.1f nodes/s", m_name, m_count, m_busyNanos / 1000000000.0, elapsed > 0 ? m_count / elapsed : 0.0);
+        }
+    }
+
+    public ImportPipeline(final ProvisionService provisionService, final BatchTask phase, final RequisitionImport ri, final boolean rescanExisting, final int batchSize, final Collection<ImportOperation> operations) {
+        m_provisionService = provisionService;
+        m_phase = phase;
+        m_requisitionImport = ri;
+        m_rescanExisting = rescanExisting;
+        m_batchSize = Math.max(1, batchSize);
+        m_operations = operations;
+        m_total = operations.size();
+    }
+
+    /**
+     * Adds the scan tasks of all operations to the phase.  The persist tasks
+     * are added as the scans complete, so the phase finishes only once every
+     * operation has been persisted.
+     */
+    public void start() {
+        LOG.info("Starting pipelined import of {} nodes in batches of {}", m_total, m_batchSize);
+        for (final ImportOperation operation : m_operations) {
+            m_phase.add(scanner(operation), "scan");
+        }
+    }
+
+    private Runnable scanner(final ImportOperation operation) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                if (m_rescanExisting && !m_requisitionImport.isAborted()) {
+                    final long start = System.nanoTime();
+                    try {
+                        operation.scan();
+                    } catch (final Throwable t) {
+                        LOG.warn("Failed to scan {}", operation, t);
+                    }
+                    m_scanStage.completed(1, start, System.nanoTime());
+                }
+                offer(operation);
+            }
+
+            @Override
+            public String toString() {
+                return "scan " + operation;
+            }
+        };
+    }
+
+    private void offer(final ImportOperation operation) {
+        List<ImportOperation> batch = null;
+        synchronized (m_pending) {
+            m_pending.add(operation);
+            m_scanned++;
+            if (m_pending.size() >= m_batchSize || m_scanned == m_total) {
+                batch = new ArrayList<ImportOperation>(m_pending);
+                m_pending.clear();
+            }
+        }
+
+        if (batch != null) {
+            m_phase.add(persister(batch), "write");
+        }
+    }
+
+    private Runnable persister(final List<ImportOperation> batch) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                if (m_requisitionImport.isAborted()) {
+                    LOG.info("The import has been aborted, skipping persist of {} nodes.", batch.size());
+                    return;
+                }
+
+                final long start = System.nanoTime();
+                try {
+                    m_provisionService.persistImportOperations(batch);
+                    m_provisionService.clearCache();
+                } catch (final Throwable t) {
+                    LOG.warn("Failed to persist a batch of {} nodes, persisting them one at a time", batch.size(), t);
+                    // the rolled back batch may have created service types
+                    // or categories that this thread still has cached
+                    m_provisionService.clearCache();
+                    m_provisionService.clearServiceTypeAndCategoryCache();
+                    for (final ImportOperation operation : batch) {
+                        operation.rolledBack();
+                        try {
+                            operation.persist();
+                        } catch (final Throwable e) {
+                            LOG.error("Failed to persist {}", operation, e);
+                        }
+                    }
+                }
+
+                final int persisted = m_persistStage.completed(batch.size(), start, System.nanoTime());
+                LOG.info("Persisted {} of {} nodes ({})", persisted, m_total, m_persistStage);
+                if (persisted == m_total) {
+                    LOG.info("Finished pipelined import of {} nodes: {}", m_total, getStats());
+                }
+            }
+
+            @Override
+            public String toString() {
+                return "persist " + batch.size() + " nodes";
+            }
+        };
+    }
+
+    /**
+     * <p>getStats</p>
+     *
+     * @return the throughput of the scan and persist stages
+     */
+    public String getStats() {
+        return m_scanStage + "; " + m_persistStage;
+    }
+}
@@ -61,6 +61,7 @@ import org.opennms.netmgt.model.events.EventForwarder;
 import org.opennms.netmgt.provision.IpInterfacePolicy;
 import org.opennms.netmgt.provision.NodePolicy;
 import org.opennms.netmgt.provision.SnmpInterfacePolicy;
+import org.opennms.netmgt.snmp.PipelinedTableWalker;
 import org.opennms.netmgt.snmp.SnmpAgentConfig;
 import org.opennms.netmgt.snmp.SnmpUtils;
 import org.opennms.netmgt.snmp.SnmpWalker;
@@ -610,17 +611,32 @@ public class NodeScan implements RunInBatch {
                 }
             };
             
-            final SnmpWalker walker = SnmpUtils.createWalker(agentConfig, "ifTable/ifXTable", physIfTracker);
-            walker.start();
-            
+            final boolean timedOut;
+            final boolean failed;
+            final String errorMessage;
             try {
-                walker.waitFor();
+                final int maxRequestsInFlight = SnmpUtils.getMaxRequestsInFlight();
+                if (maxRequestsInFlight > 1) {
+                    final PipelinedTableWalker walker = SnmpUtils.createTableWalker(agentConfig, "ifTable/ifXTable", physIfTracker, maxRequestsInFlight);
+                    walker.start();
+                    walker.waitFor();
+                    timedOut = walker.timedOut();
+                    failed = walker.failed();
+                    errorMessage = walker.getErrorMessage();
+                } else {
+                    final SnmpWalker walker = SnmpUtils.createWalker(agentConfig, "ifTable/ifXTable", physIfTracker);
+                    walker.start();
+                    walker.waitFor();
+                    timedOut = walker.timedOut();
+                    failed = walker.failed();
+                    errorMessage = walker.getErrorMessage();
+                }
         
-                if (walker.timedOut()) {
+                if (timedOut) {
                     abort("Aborting node scan : Agent timed out while scanning the interfaces table");
                 }
-                else if (walker.failed()) {
-                    abort("Aborting node scan : Agent failed while scanning the interfaces table: " + walker.getErrorMessage());
+                else if (failed) {
+                    abort("Aborting node scan : Agent failed while scanning the interfaces table: " + errorMessage);
                 }
                 else {
                     LOG.debug("Finished phase {}", currentPhase);
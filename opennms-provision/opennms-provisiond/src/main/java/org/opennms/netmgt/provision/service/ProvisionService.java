@@ -46,6 +46,7 @@ import org.opennms.netmgt.provision.ServiceDetector;
 import org.opennms.netmgt.provision.SnmpInterfacePolicy;
 import org.opennms.netmgt.provision.persist.ForeignSourceRepository;
 import org.opennms.netmgt.provision.persist.requisition.Requisition;
+import org.opennms.netmgt.provision.service.operations.ImportOperation;
 import org.springframework.core.io.Resource;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -79,6 +80,13 @@ public interface ProvisionService {
      */
     void clearCache();
 
+    /**
+     * Forget the service types and categories that the calling thread has
+     * looked up or created. This is needed after a rolled back transaction,
+     * which may have created some of them.
+     */
+    void clearServiceTypeAndCategoryCache();
+
     /**
      * Lookup a distPoller in the database, creating it if necessary. This
      * method looks up the OnmsDistPoller object with the name 'dpName' in the
@@ -109,6 +117,19 @@ public interface ProvisionService {
      */
     @Transactional
     void updateNode(OnmsNode node);
+
+    /**
+     * Persists the changes of several import operations in a single
+     * transaction.  The events for the changes are only sent once the
+     * transaction has been committed.  The caller is expected to clear the
+     * cache afterwards.
+     *
+     * @param operations
+     *            The operations whose scanned nodes should be written to
+     *            the database
+     */
+    @Transactional
+    void persistImportOperations(List<? extends ImportOperation> operations);
     
     /**
      * <p>updateNodeAttributes</p>
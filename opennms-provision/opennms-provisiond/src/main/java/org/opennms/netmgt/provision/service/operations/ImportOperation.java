@@ -85,5 +85,22 @@ public abstract class ImportOperation {
     	getProvisionService().clearCache();
     }
 
+    /**
+     * Persists the operation as part of a batch of operations.  The caller
+     * provides the surrounding transaction and clears the cache once the
+     * batch is done.
+     */
+    public void persistInBatch() {
+        LOG.info("Persist in batch: {}", this);
+        doPersist();
+    }
+
+    /**
+     * Called when the batch transaction that persisted this operation has
+     * been rolled back, before the operation is persisted again on its own.
+     */
+    public void rolledBack() {
+    }
+
 
 }
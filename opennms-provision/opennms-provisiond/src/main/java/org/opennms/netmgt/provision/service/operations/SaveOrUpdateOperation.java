@@ -31,11 +31,14 @@ package org.opennms.netmgt.provision.service.operations;
 import java.net.InetAddress;
 
 import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.netmgt.model.AbstractEntityVisitor;
 import org.opennms.netmgt.model.OnmsCategory;
+import org.opennms.netmgt.model.OnmsEntity;
 import org.opennms.netmgt.model.OnmsIpInterface;
 import org.opennms.netmgt.model.OnmsMonitoredService;
 import org.opennms.netmgt.model.OnmsNode;
 import org.opennms.netmgt.model.OnmsServiceType;
+import org.opennms.netmgt.model.OnmsSnmpInterface;
 import org.opennms.netmgt.model.PrimaryType;
 import org.opennms.netmgt.model.OnmsNode.NodeLabelSource;
 import org.opennms.netmgt.model.OnmsNode.NodeType;
@@ -49,6 +52,7 @@ import org.springframework.beans.PropertyAccessorFactory;
 public abstract class SaveOrUpdateOperation extends ImportOperation {
     private static final Logger LOG = LoggerFactory.getLogger(SaveOrUpdateOperation.class);
 
+    private final Integer m_nodeId;
     private final OnmsNode m_node;
     private OnmsIpInterface m_currentInterface;
     
@@ -82,6 +86,7 @@ public abstract class SaveOrUpdateOperation extends ImportOperation {
 	public SaveOrUpdateOperation(Integer nodeId, String foreignSource, String foreignId, String nodeLabel, String building, String city, ProvisionService provisionService) {
 	    super(provisionService);
 	    
+	    m_nodeId = nodeId;
         m_node = new OnmsNode();
         m_node.setId(nodeId);
 		m_node.setLabel(nodeLabel);
@@ -144,6 +149,36 @@ public abstract class SaveOrUpdateOperation extends ImportOperation {
     	updateSnmpData();
 	}
 	
+    /**
+     * Forgets the identifiers Hibernate assigned to the new entities in the
+     * rolled back transaction, so that they are inserted again.
+     */
+    @Override
+    public void rolledBack() {
+        m_node.getAssetRecord().setId(null);
+        m_node.visit(new AbstractEntityVisitor() {
+            @Override
+            public void visitNode(final OnmsNode node) {
+                node.setId(m_nodeId);
+            }
+
+            @Override
+            public void visitIpInterface(final OnmsIpInterface iface) {
+                iface.setId(null);
+            }
+
+            @Override
+            public void visitMonitoredService(final OnmsMonitoredService monSvc) {
+                monSvc.setId(null);
+            }
+
+            @Override
+            public void visitSnmpInterface(final OnmsEntity snmpIface) {
+                ((OnmsSnmpInterface) snmpIface).setId(null);
+            }
+        });
+    }
+
     /**
      * <p>updateSnmpData</p>
      */
@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.netmgt.provision.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opennms.core.tasks.BatchTask;
+import org.opennms.core.tasks.DefaultTaskCoordinator;
+import org.opennms.core.test.MockLogAppender;
+import org.opennms.core.test.OpenNMSJUnit4ClassRunner;
+import org.opennms.core.test.db.annotations.JUnitTemporaryDatabase;
+import org.opennms.netmgt.model.OnmsNode;
+import org.opennms.netmgt.provision.service.operations.ImportOperation;
+import org.opennms.netmgt.provision.service.operations.RequisitionImport;
+import org.opennms.test.JUnitConfigurationEnvironment;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+
+/**
+ * Runs the {@link ImportPipeline} against the database, so that a batch that
+ * fails is really rolled back before its nodes are persisted again.
+ */
+@RunWith(OpenNMSJUnit4ClassRunner.class)
+@ContextConfiguration(locations={
+        "classpath:/META-INF/opennms/applicationContext-soa.xml",
+        "classpath:/META-INF/opennms/applicationContext-dao.xml",
+        "classpath:/META-INF/opennms/applicationContext-daemon.xml",
+        "classpath:/META-INF/opennms/applicationContext-proxy-snmp.xml",
+        "classpath:/META-INF/opennms/mockEventIpcManager.xml",
+        "classpath:/META-INF/opennms/applicationContext-provisiond.xml",
+        "classpath*:/META-INF/opennms/provisiond-extensions.xml",
+        "classpath*:/META-INF/opennms/detectors.xml",
+        "classpath*:/META-INF/opennms/component-dao.xml",
+        "classpath*:/META-INF/opennms/applicationContext-minimal-conf.xml"
+})
+@JUnitConfigurationEnvironment
+@JUnitTemporaryDatabase
+public class ImportPipelineDatabaseTest {
+    private static final String CATEGORY = "PipelineTestCategory";
+
+    /**
+     * Inserts a node in a category that does not exist yet.  A bad node
+     * fails whenever it is persisted in a batch.
+     */
+    private static class CategorizedInsert extends ImportOperation {
+        private final String m_foreignId;
+        private final boolean m_bad;
+        private boolean m_inBatch = false;
+
+        public CategorizedInsert(final ProvisionService provisionService, final String foreignId, final boolean bad) {
+            super(provisionService);
+            m_foreignId = foreignId;
+            m_bad = bad;
+        }
+
+        @Override
+        public void scan() {
+        }
+
+        @Override
+        public void persistInBatch() {
+            m_inBatch = true;
+            super.persistInBatch();
+        }
+
+        @Override
+        protected void doPersist() {
+            final OnmsNode node = new OnmsNode();
+            node.setLabel(m_foreignId);
+            node.setForeignSource("pipeline");
+            node.setForeignId(m_foreignId);
+            node.addCategory(getProvisionService().createCategoryIfNecessary(CATEGORY));
+            getProvisionService().insertNode(node);
+            if (m_bad && m_inBatch) {
+                throw new IllegalStateException("rolled back");
+            }
+        }
+
+        @Override
+        public void rolledBack() {
+            m_inBatch = false;
+        }
+
+        @Override
+        public String toString() {
+            return "node " + m_foreignId;
+        }
+    }
+
+    @Autowired
+    private ProvisionService m_provisionService;
+
+    @Autowired
+    private JdbcTemplate m_jdbcTemplate;
+
+    private ExecutorService m_executor;
+    private ExecutorService m_writeExecutor;
+    private DefaultTaskCoordinator m_coordinator;
+
+    @Before
+    public void setUp() {
+        MockLogAppender.setupLogging();
+        m_executor = Executors.newFixedThreadPool(2);
+        m_coordinator = new DefaultTaskCoordinator("ImportPipelineDatabaseTest", m_executor);
+        m_coordinator.addExecutor("scan", m_executor);
+        m_writeExecutor = Executors.newSingleThreadExecutor();
+        m_coordinator.addExecutor("write", m_writeExecutor);
+    }
+
+    @After
+    public void tearDown() {
+        m_executor.shutdownNow();
+        m_writeExecutor.shutdownNow();
+    }
+
+    /**
+     * The failed batch creates the category and then rolls it back.  The
+     * nodes persisted again on their own must not reuse the category cached
+     * by the batch, which no longer exists.
+     */
+    @Test
+    public void testRetryAfterRolledBackCategory() throws Exception {
+        final List<ImportOperation> operations = new ArrayList<ImportOperation>();
+        operations.add(new CategorizedInsert(m_provisionService, "good", false));
+        operations.add(new CategorizedInsert(m_provisionService, "bad", true));
+
+        final BatchTask phase = m_coordinator.createBatch().get();
+        final ImportPipeline pipeline = new ImportPipeline(m_provisionService, phase, new RequisitionImport(), true, 2, operations);
+        pipeline.start();
+        phase.schedule();
+        phase.waitFor(30, TimeUnit.SECONDS);
+        assertTrue("the import should finish", phase.isFinished());
+
+        assertEquals(1, m_jdbcTemplate.queryForInt("SELECT COUNT(*) FROM categories WHERE categoryName = ?", CATEGORY));
+        assertEquals(2, m_jdbcTemplate.queryForInt("SELECT COUNT(*) FROM node WHERE foreignSource = 'pipeline'"));
+        assertEquals(2, m_jdbcTemplate.queryForInt("SELECT COUNT(*) FROM category_node cn JOIN categories c ON cn.categoryId = c.categoryId JOIN node n ON cn.nodeId = n.nodeId WHERE c.categoryName = ? AND n.foreignSource = 'pipeline'", CATEGORY));
+    }
+}
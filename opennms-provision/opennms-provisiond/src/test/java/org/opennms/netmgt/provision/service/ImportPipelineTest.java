@@ -0,0 +1,211 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.provision.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.tasks.BatchTask;
+import org.opennms.core.tasks.DefaultTaskCoordinator;
+import org.opennms.netmgt.provision.service.operations.ImportOperation;
+import org.opennms.netmgt.provision.service.operations.RequisitionImport;
+
+public class ImportPipelineTest {
+
+    /**
+     * Counts what happens to one node.  A node is committed either with the
+     * batch it was persisted in, or when it is persisted on its own.
+     */
+    private static class TestOperation extends ImportOperation {
+        private final int m_id;
+        private final boolean m_bad;
+        private final AtomicInteger m_scans = new AtomicInteger();
+        private final AtomicInteger m_rollbacks = new AtomicInteger();
+        private final AtomicInteger m_commits = new AtomicInteger();
+        private volatile boolean m_inBatch = false;
+
+        public TestOperation(final ProvisionService provisionService, final int id, final boolean bad) {
+            super(provisionService);
+            m_id = id;
+            m_bad = bad;
+        }
+
+        @Override
+        public void scan() {
+            m_scans.incrementAndGet();
+        }
+
+        @Override
+        public void persistInBatch() {
+            m_inBatch = true;
+            super.persistInBatch();
+        }
+
+        @Override
+        protected void doPersist() {
+            if (!m_inBatch) {
+                // persisted in a transaction of its own
+                m_commits.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void rolledBack() {
+            m_inBatch = false;
+            m_rollbacks.incrementAndGet();
+        }
+
+        @Override
+        public String toString() {
+            return "node " + m_id;
+        }
+    }
+
+    /**
+     * Stands in for the transactions of persistImportOperations: a batch
+     * with a bad node fails as a whole, the others commit all their nodes.
+     */
+    private class BatchRecorder implements InvocationHandler {
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+            if ("persistImportOperations".equals(method.getName())) {
+                @SuppressWarnings("unchecked")
+                final List<TestOperation> batch = (List<TestOperation>)args[0];
+                m_batchSizes.add(batch.size());
+                boolean bad = false;
+                for (final TestOperation operation : batch) {
+                    operation.persistInBatch();
+                    bad |= operation.m_bad;
+                }
+                if (bad) {
+                    throw new IllegalStateException("rolled back");
+                }
+                for (final TestOperation operation : batch) {
+                    operation.m_inBatch = false;
+                    operation.m_commits.incrementAndGet();
+                }
+            }
+            return null;
+        }
+    }
+
+    private final List<Integer> m_batchSizes = Collections.synchronizedList(new ArrayList<Integer>());
+    private final ProvisionService m_provisionService = (ProvisionService)Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { ProvisionService.class }, new BatchRecorder());
+    private ExecutorService m_executor;
+    private ExecutorService m_writeExecutor;
+    private DefaultTaskCoordinator m_coordinator;
+
+    @Before
+    public void setUp() {
+        m_executor = Executors.newFixedThreadPool(4);
+        m_coordinator = new DefaultTaskCoordinator("ImportPipelineTest", m_executor);
+        m_coordinator.addExecutor("scan", m_executor);
+        m_writeExecutor = Executors.newSingleThreadExecutor();
+        m_coordinator.addExecutor("write", m_writeExecutor);
+    }
+
+    @After
+    public void tearDown() {
+        m_executor.shutdownNow();
+        m_writeExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testBatches() throws Exception {
+        final List<TestOperation> operations = createOperations(10, -1);
+        final ImportPipeline pipeline = runPipeline(operations, 4);
+
+        int total = 0;
+        for (final int size : m_batchSizes) {
+            assertTrue("batch of " + size, size <= 4);
+            total += size;
+        }
+        assertEquals(10, total);
+        assertEquals(3, m_batchSizes.size());
+        for (final TestOperation operation : operations) {
+            assertEquals(operation + " scans", 1, operation.m_scans.get());
+            assertEquals(operation + " commits", 1, operation.m_commits.get());
+            assertEquals(operation + " rollbacks", 0, operation.m_rollbacks.get());
+        }
+        assertTrue(pipeline.getStats(), pipeline.getStats().contains("persist: 10 nodes"));
+    }
+
+    /**
+     * When a batch is rolled back, its nodes are persisted again one at a
+     * time, so each node is committed exactly once and the nodes of the
+     * other batches are not touched.
+     */
+    @Test
+    public void testRollbackAndRetry() throws Exception {
+        final List<TestOperation> operations = createOperations(9, 4);
+        runPipeline(operations, 3);
+
+        assertEquals(3, m_batchSizes.size());
+        int rolledBack = 0;
+        for (final TestOperation operation : operations) {
+            assertEquals(operation + " commits", 1, operation.m_commits.get());
+            rolledBack += operation.m_rollbacks.get();
+        }
+        // only the batch of the bad node was retried
+        assertEquals(3, rolledBack);
+    }
+
+    private List<TestOperation> createOperations(final int count, final int bad) {
+        final List<TestOperation> operations = new ArrayList<TestOperation>();
+        for (int i = 0; i < count; i++) {
+            operations.add(new TestOperation(m_provisionService, i, i == bad));
+        }
+        return operations;
+    }
+
+    private ImportPipeline runPipeline(final List<TestOperation> operations, final int batchSize) throws Exception {
+        final BatchTask phase = m_coordinator.createBatch().get();
+        final ImportPipeline pipeline = new ImportPipeline(m_provisionService, phase, new RequisitionImport(), true, batchSize, new ArrayList<ImportOperation>(operations));
+        pipeline.start();
+        phase.schedule();
+        phase.waitFor(30, TimeUnit.SECONDS);
+        assertTrue("the import should finish", phase.isFinished());
+        return pipeline;
+    }
+}
@@ -31,16 +31,18 @@ package org.opennms.netmgt.rrd;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
-import java.util.Set;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -69,6 +71,13 @@ import org.slf4j.LoggerFactory;
  * collected but will not be output to the rrd files until the next time the
  * file is processed by the write threads.
  *
+ * To keep the write threads from contending with each other and with the
+ * collection threads, files are hashed to a number of independent shards.
+ * Each shard has its own lock-free work queues and its own write threads, and
+ * only the pending operations of a single file are ever locked. Consecutive
+ * updates for a file are merged into a single operation that is written as
+ * one multi-point update of the file.
+ *
  * As another performance improving strategy. The queue distinguishes between
  * files with significant vs insignificant updates. Files with only insignificant
  * updates are put at the lowest priority and are only written when the highest
@@ -82,6 +91,11 @@ import org.slf4j.LoggerFactory;
  * org.opennms.rrd.queuing.writethreads: (default 2) The number of rrd write
  * threads that process the queue
  *
+ * org.opennms.rrd.queuing.shards: (default 0) The number of shards files are
+ * hashed to. Zero means one shard per write thread, and there are never more
+ * shards than write threads. The write threads are divided evenly across the
+ * shards, and the high water marks are divided across the shards as well.
+ *
  * org.opennms.rrd.queuing.queueCreates: (default false) indicates whether rrd
  * file creates should be queued or processed synchronously
  *
@@ -109,7 +123,7 @@ import org.slf4j.LoggerFactory;
  * @author ranger
  * @version $Id: $
  */
-public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.CreateOperation,String>, Runnable {
+public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.CreateOperation,String> {
 
     private Logger m_log = LoggerFactory.getLogger(QueuingRrdStrategy.class);
 
@@ -138,6 +152,8 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 
     private int m_writeThreads;
 
+    private int m_shards;
+
     private boolean m_queueCreates;
     
     private boolean m_prioritizeSignificantUpdates;
@@ -176,6 +192,24 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
         m_writeThreads = writeThreads;
     }
 
+    /**
+     * <p>getShards</p>
+     *
+     * @return a int.
+     */
+    public int getShards() {
+        return m_shards;
+    }
+
+    /**
+     * <p>setShards</p>
+     *
+     * @param shards a int.
+     */
+    public void setShards(int shards) {
+        m_shards = shards;
+    }
+
     /**
      * <p>queueCreates</p>
      *
@@ -359,41 +393,35 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
         m_writeThreadExitDelay = writeThreadExitDelay;
     }
 
-    LinkedList<String> filesWithSignificantWork = new LinkedList<String>();
-
-    LinkedList<String> filesWithInsignificantWork = new LinkedList<String>();
-
-    Map<String, LinkedList<Operation>> pendingFileOperations = new HashMap<String, LinkedList<Operation>>();
-
-    Map<Thread, String> fileAssignments = new HashMap<Thread, String>();
-
-    Set<String> reservedFiles = new HashSet<String>();
-
-    private long m_totalOperationsPending = 0;
+    /**
+     * The shards files are hashed to, created when the first operation is
+     * enqueued so that the configured properties are in place.
+     */
+    private volatile Shard[] m_shardArray;
 
-    private long m_enqueuedOperations = 0;
+    private final AtomicLong m_totalOperationsPending = new AtomicLong();
 
-    private long m_dequeuedOperations = 0;
+    private final AtomicLong m_enqueuedOperations = new AtomicLong();
 
-    private long m_significantOpsEnqueued = 0;
+    private final AtomicLong m_dequeuedOperations = new AtomicLong();
 
-    private long m_significantOpsDequeued = 0;
+    private final AtomicLong m_significantOpsEnqueued = new AtomicLong();
 
-    private long m_significantOpsCompleted = 0;
+    private final AtomicLong m_significantOpsDequeued = new AtomicLong();
 
-    private long m_dequeuedItems = 0;
+    private final AtomicLong m_significantOpsCompleted = new AtomicLong();
 
-    private long m_createsCompleted = 0;
+    private final AtomicLong m_dequeuedItems = new AtomicLong();
 
-    private long m_updatesCompleted = 0;
+    private final AtomicLong m_createsCompleted = new AtomicLong();
 
-    private long m_errors = 0;
+    private final AtomicLong m_updatesCompleted = new AtomicLong();
 
-    int threadsRunning = 0;
+    private final AtomicLong m_errors = new AtomicLong();
 
-    private long m_startTime = 0;
+    private volatile long m_startTime = 0;
 
-    private long m_promotionCount = 0;
+    private final AtomicLong m_promotionCount = new AtomicLong();
 
     long lastLap = System.currentTimeMillis();
 
@@ -488,7 +516,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
             m_delegate.createFile(getData(), attributeMappings);
 
             // keep stats
-            setCreatesCompleted(getCreatesCompleted() + 1);
+            m_createsCompleted.incrementAndGet();
 
             // return the file
             return rrd;
@@ -502,6 +530,11 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      */
     public class UpdateOperation extends Operation {
 
+        /**
+         * Updates for later timestamps that were merged into this one.
+         */
+        private List<String> m_mergedUpdates;
+
         UpdateOperation(String fileName, String data) {
             super(fileName, UPDATE, data, true);
         }
@@ -515,7 +548,15 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
             // open the file if we need to
             if (rrd == null) rrd = m_delegate.openFile(getFileName());
 
-            final String update = (String) getData();
+            String update = (String) getData();
+            if (m_mergedUpdates != null) {
+                // write all of the points with a single update
+                final StringBuilder points = new StringBuilder(update);
+                for (final String merged : m_mergedUpdates) {
+                    points.append(' ').append(merged);
+                }
+                update = points.toString();
+            }
 
             try {
                 // process the update
@@ -527,15 +568,38 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
             }
 
             // keep stats
-            setUpdatesCompleted(getUpdatesCompleted() + 1);
-            if (getUpdatesCompleted() % m_modulus == 0) {
-                logStats();
-            }
+            updatesCompleted(getCount());
+
             // return the open rrd for further processing
             return rrd;
 
         }
 
+        @Override
+        int getCount() {
+            return m_mergedUpdates == null ? 1 : 1 + m_mergedUpdates.size();
+        }
+
+        /**
+         * Merges consecutive plain updates for the file into a single
+         * operation carrying all of their timestamps.  Zero updates have
+         * their own, more compact, merging.
+         */
+        @Override
+        void addToPendingList(LinkedList<Operation> pendingOperations) {
+            if (getClass() == UpdateOperation.class && pendingOperations.size() > 0
+                    && pendingOperations.getLast().getClass() == UpdateOperation.class
+                    && pendingOperations.getLast().isSignificant() == isSignificant()) {
+                final UpdateOperation last = (UpdateOperation) pendingOperations.getLast();
+                if (last.m_mergedUpdates == null) {
+                    last.m_mergedUpdates = new ArrayList<String>(2);
+                }
+                last.m_mergedUpdates.add((String) getData());
+            } else {
+                super.addToPendingList(pendingOperations);
+            }
+        }
+
     }
 
     /**
@@ -558,27 +622,30 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 
         @Override
         Object process(Object rrd) throws Exception {
+            // open the file if we need to
+            if (rrd == null)
+                rrd = m_delegate.openFile(getFileName());
+
+            // write all of the points with a single update
+            final StringBuilder update = new StringBuilder();
             long ts = getFirstTimeStamp();
             for (int i = 0; i < count; i++) {
-                // open the file if we need to
-                if (rrd == null)
-                    rrd = m_delegate.openFile(getFileName());
-
-                String update = ts + ":0";
-                try {
-                    // process the update
-                    m_delegate.updateFile(rrd, "", update);
-                } catch (Throwable e) {
-                    throw new Exception("Error processing update " + i + " for file " + getFileName() + ": " + update, e);
+                if (i > 0) {
+                    update.append(' ');
                 }
+                update.append(ts).append(":0");
                 ts += getInterval();
+            }
 
-                // keep stats
-                setUpdatesCompleted(getUpdatesCompleted() + 1);
-                if (getUpdatesCompleted() % m_modulus == 0) {
-                    logStats();
-                }
+            try {
+                // process the update
+                m_delegate.updateFile(rrd, "", update.toString());
+            } catch (Throwable e) {
+                throw new Exception("Error processing " + count + " updates for file " + getFileName() + ": " + update, e);
             }
+
+            // keep stats
+            updatesCompleted(count);
             return rrd;
         }
 
@@ -684,257 +751,411 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
     // 
     // Queue management functions.
     //
-    // TODO: Put this all in a class of its own. This is really ugly.
-    //
 
     /**
-     * Add an operation to the queue.
-     *
-     * @param op a {@link org.opennms.netmgt.rrd.QueuingRrdStrategy.Operation} object.
+     * The operations waiting for a single file.  A file is either waiting in
+     * one of its shard's work queues, being written by exactly one write
+     * thread, or both when new operations arrive while it is being written.
      */
-    public void addOperation(Operation op) {
-        synchronized (this) {
-            if (queueIsFull()) {
+    private static final class PendingFile {
+        private final String m_fileName;
+
+        private LinkedList<Operation> m_operations = new LinkedList<Operation>();
+
+        /** waiting in one of the shard's work queues */
+        private boolean m_queued;
+
+        /** being written by a write thread */
+        private boolean m_busy;
+
+        /** has significant operations pending */
+        private boolean m_significant;
+
+        /** dropped from the shard, enqueuers must start over */
+        private boolean m_removed;
+
+        private PendingFile(final String fileName) {
+            m_fileName = fileName;
+        }
+    }
+
+    /**
+     * An independent part of the queue.  Each shard owns the files that hash
+     * to it, their work queues and the write threads processing them.
+     */
+    private class Shard implements Runnable {
+
+        private final int m_index;
+
+        private final int m_writers;
+
+        private final int m_shardCount;
+
+        private final ConcurrentHashMap<String, PendingFile> m_pendingFiles = new ConcurrentHashMap<String, PendingFile>();
+
+        /** files promoted by age or by promoteEnqueuedFiles, processed first */
+        private final Queue<String> m_urgentFiles = new ConcurrentLinkedQueue<String>();
+
+        private final Queue<String> m_significantFiles = new ConcurrentLinkedQueue<String>();
+
+        private final Queue<String> m_insignificantFiles = new ConcurrentLinkedQueue<String>();
+
+        // ConcurrentLinkedQueue.size() walks the queue so keep our own counts
+        private final AtomicInteger m_significantFileCount = new AtomicInteger();
+
+        private final AtomicInteger m_insignificantFileCount = new AtomicInteger();
+
+        private final AtomicLong m_operationsPending = new AtomicLong();
+
+        private final AtomicLong m_promotions = new AtomicLong();
+
+        private final AtomicInteger m_threadsRunning = new AtomicInteger();
+
+        private Shard(final int index, final int writers, final int shardCount) {
+            m_index = index;
+            m_writers = writers;
+            m_shardCount = shardCount;
+        }
+
+        private boolean isFull(final long highWaterMark) {
+            if (highWaterMark <= 0)
+                return false;
+            else
+                return m_operationsPending.get() >= (highWaterMark + m_shardCount - 1) / m_shardCount;
+        }
+
+        private boolean add(final Operation op) {
+            if (isFull(m_queueHighWaterMark)) {
                 m_log.error("RRD Data Queue is Full!! Discarding operation for file {}", op.getFileName());
-                return;
+                return false;
             }
-            
-            if (op.isSignificant() && sigQueueIsFull()) {
+
+            if (op.isSignificant() && isFull(m_sigHighWaterMark)) {
                 m_log.error("RRD Data Significant Queue is Full!! Discarding operation for file {}", op.getFileName());
-                return;
+                return false;
             }
-            
-            if (!op.isSignificant() && inSigQueueIsFull()) {
+
+            if (!op.isSignificant() && isFull(m_inSigHighWaterMark)) {
                 m_log.error("RRD Insignificant Data Queue is Full!! Discarding operation for file {}", op.getFileName());
-                return;
+                return false;
             }
-            
-            storeAssignment(op);
-
-            setTotalOperationsPending(getTotalOperationsPending() + 1);
-            setEnqueuedOperations(getEnqueuedOperations() + 1);
-            if (op.isSignificant())
-                setSignificantOpsEnqueued(getSignificantOpsEnqueued() + 1);
-            notifyAll();
+
+            m_operationsPending.incrementAndGet();
+
+            // if we aren't prioritizing then every file is counted as significant
+            final boolean significant = !m_prioritizeSignificantUpdates || op.isSignificant();
+
+            for (;;) {
+                PendingFile pending = m_pendingFiles.get(op.getFileName());
+                if (pending == null) {
+                    final PendingFile created = new PendingFile(op.getFileName());
+                    pending = m_pendingFiles.putIfAbsent(op.getFileName(), created);
+                    if (pending == null) {
+                        pending = created;
+                    }
+                }
+
+                synchronized (pending) {
+                    if (pending.m_removed) {
+                        continue;
+                    }
+
+                    op.addToPendingList(pending.m_operations);
+
+                    if (pending.m_busy) {
+                        // the write thread requeues the file when it is done with it
+                        pending.m_significant |= significant;
+                    } else if (!pending.m_queued) {
+                        pending.m_queued = true;
+                        pending.m_significant = significant;
+                        offer(pending.m_fileName, significant);
+                    } else if (significant && !pending.m_significant) {
+                        // promote the file to the significant queue if this
+                        // is its first significant operation, the stale
+                        // entry in the insignificant queue is skipped later
+                        pending.m_significant = true;
+                        offer(pending.m_fileName, true);
+                    }
+                    break;
+                }
+            }
+
+            promoteAgedFiles();
             ensureThreadsStarted();
+            return true;
         }
-    }
 
-    
-    private boolean queueIsFull() {
-        if (m_queueHighWaterMark <= 0)
-            return false;
-        else
-            return getTotalOperationsPending() >= m_queueHighWaterMark;
-    }
+        private void offer(final String fileName, final boolean significant) {
+            if (significant) {
+                m_significantFileCount.incrementAndGet();
+                m_significantFiles.offer(fileName);
+            } else {
+                m_insignificantFileCount.incrementAndGet();
+                m_insignificantFiles.offer(fileName);
+            }
+        }
 
-    private boolean sigQueueIsFull() {
-        if (m_sigHighWaterMark <= 0)
-            return false;
-        else
-            return getTotalOperationsPending() >= m_sigHighWaterMark;
-    }
+        /**
+         * Ensure that files with insignificant changes are getting promoted
+         * if necessary
+         */
+        private void promoteAgedFiles() {
 
-    private boolean inSigQueueIsFull() {
-        if (m_inSigHighWaterMark <= 0)
-            return false;
-        else
-            return getTotalOperationsPending() >= m_inSigHighWaterMark;
-    }
+            // no need to do this is we aren't prioritizing
+            if (!m_prioritizeSignificantUpdates) return;
 
-    /**
-     * Ensure that we have threads started to process the queue.
-     */
-    public synchronized void ensureThreadsStarted() {
-        if (threadsRunning < m_writeThreads) {
-            threadsRunning++;
-            new Thread(this, this.getClass().getSimpleName() + "-" + threadsRunning).start();
+            // the num seconds to update files is 0 then use unfair prioritization
+            final int insignificantFiles = m_insignificantFileCount.get();
+            if (m_maxInsigUpdateSeconds == 0 || insignificantFiles <= 0)
+                return;
+
+            // calculate the elapsed time we first queued updates
+            final long elapsedMillis = Math.max(System.currentTimeMillis() - getStartTime(), 1);
+
+            // calculate the milliseconds between promotions necessary to age
+            // insignificant files into the significant queue
+            final double millisPerPromotion = ((m_maxInsigUpdateSeconds * 1000.0) / insignificantFiles);
+
+            // calculate the number of millis since start until the next file
+            // needs to be promoted
+            final long promotions = m_promotions.get();
+            final long nextPromotionMillis = (long) (millisPerPromotion * promotions);
+
+            // if more time has elapsed than the next promotion time then
+            // promote a file, only one of the racing threads gets to do it
+            if (elapsedMillis > nextPromotionMillis && m_promotions.compareAndSet(promotions, promotions + 1)) {
+                final String file = m_insignificantFiles.poll();
+                if (file != null) {
+                    m_insignificantFileCount.decrementAndGet();
+                    m_urgentFiles.offer(file);
+                    m_promotionCount.incrementAndGet();
+                }
+            }
         }
-    }
 
-    /**
-     * Get the operations for the next file that should be worked on.
-     *
-     * @return a linkedList of operations to be processed all for the same file.
-     */
-    public LinkedList<Operation> getNext() {
-        LinkedList<Operation> ops = null;
-        synchronized (this) {
+        /**
+         * Ensure that we have threads started to process the queue.
+         */
+        private void ensureThreadsStarted() {
+            for (;;) {
+                final int running = m_threadsRunning.get();
+                if (running >= m_writers) {
+                    return;
+                }
+                if (m_threadsRunning.compareAndSet(running, running + 1)) {
+                    new Thread(this, QueuingRrdStrategy.this.getClass().getSimpleName() + "-" + m_index + "-" + (running + 1)).start();
+                    return;
+                }
+            }
+        }
 
-            // turn in our previous assignment
-            completeAssignment();
+        private String pollFileName() {
+            String fileName = m_urgentFiles.poll();
+            if (fileName != null) {
+                return fileName;
+            }
+            fileName = m_significantFiles.poll();
+            if (fileName != null) {
+                m_significantFileCount.decrementAndGet();
+                return fileName;
+            }
+            fileName = m_insignificantFiles.poll();
+            if (fileName != null) {
+                m_insignificantFileCount.decrementAndGet();
+            }
+            return fileName;
+        }
 
-            String newAssignment;
-            // wait until there is work to do
-            while ((newAssignment = selectNewAssignment()) == null) {
-                try {
-                    wait();
-                } catch (InterruptedException e) {
+        /**
+         * Reserve the next file with work for the current thread and take
+         * its operations.
+         *
+         * @return the reserved file or null if there is no work to do
+         */
+        private PendingFile takeAssignment(final List<Operation> ops) {
+            String fileName;
+            while ((fileName = pollFileName()) != null) {
+                final PendingFile pending = m_pendingFiles.get(fileName);
+                if (pending == null) {
+                    continue;
+                }
+                synchronized (pending) {
+                    // a stale entry left by a promotion, the file was already taken
+                    if (!pending.m_queued) {
+                        continue;
+                    }
+                    pending.m_queued = false;
+                    pending.m_busy = true;
+                    pending.m_significant = false;
+                    ops.addAll(pending.m_operations);
+                    pending.m_operations = new LinkedList<Operation>();
+                    return pending;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Record the fact that the current thread has finished processing
+         * operations for the file, requeueing it if more work arrived in the
+         * meantime.
+         */
+        private void completeAssignment(final PendingFile pending) {
+            synchronized (pending) {
+                pending.m_busy = false;
+                if (pending.m_operations.isEmpty()) {
+                    pending.m_removed = true;
+                    m_pendingFiles.remove(pending.m_fileName, pending);
+                } else {
+                    pending.m_queued = true;
+                    offer(pending.m_fileName, pending.m_significant);
                 }
             }
+        }
 
-            // initialize start time for stats
-            if (getStartTime() == 0)
-                setStartTime(System.currentTimeMillis());
+        /**
+         * Process the operations of the next file with work.
+         *
+         * @return false if there was no work to do
+         */
+        private boolean processNext() {
+            final List<Operation> ops = new ArrayList<Operation>();
+            final PendingFile pending = takeAssignment(ops);
+            if (pending == null) {
+                return false;
+            }
 
-            // reserve the assignment and take work items
-            ops = takeAssignment(newAssignment);
+            try {
+                // initialize start time for stats
+                if (getStartTime() == 0)
+                    setStartTime(System.currentTimeMillis());
 
-            // keep stats
-            if (ops != null) {
-                for(Operation op : ops) {
-                    setTotalOperationsPending(getTotalOperationsPending()-op.getCount());
-                    setDequeuedOperations(getDequeuedOperations() + op.getCount());
+                // keep stats
+                for (Operation op : ops) {
+                    m_operationsPending.addAndGet(-op.getCount());
+                    m_totalOperationsPending.addAndGet(-op.getCount());
+                    m_dequeuedOperations.addAndGet(op.getCount());
                     if (op.isSignificant()) {
-                    	setSignificantOpsDequeued(getSignificantOpsDequeued() + op.getCount());
+                        m_significantOpsDequeued.addAndGet(op.getCount());
                     }
                 }
-                setDequeuedItems(getDequeuedItems() + 1);
+                m_dequeuedItems.incrementAndGet();
+
+                processPendingOperations(ops);
+            } finally {
+                completeAssignment(pending);
             }
+            return true;
         }
 
-        return ops;
+        /**
+         * <p>run</p>
+         */
+        @Override
+        public void run() {
+            try {
 
-    }
+                long waitStart = -1L;
+                long delayed = 0;
+                while (delayed < m_writeThreadExitDelay) {
+                    if (processNext()) {
+                        delayed = 0;
+                        waitStart = -1L;
+                    } else {
+                        if (waitStart < 0) {
+                            waitStart = System.currentTimeMillis();
+                        }
+                        try {
+                            Thread.sleep(m_writeThreadSleepTime);
+                        } catch (InterruptedException e) {
+                        }
+                        long now = System.currentTimeMillis();
+                        delayed = now - waitStart;
+                    }
 
-    /**
-     * We need to track which files are being processed by which threads so that
-     * we don't try to process updates for the same file on more than one
-     * thread.
-     */
-    private synchronized void storeAssignment(Operation op) {
-        // look and see if there a pending ops list for this file
-        LinkedList<Operation> pendingOperations = pendingFileOperations.get(op.getFileName());
-
-        // if not then we create an ops list for the file and add the file to
-        // the work items list
-        if (pendingOperations == null) {
-            pendingOperations = new LinkedList<Operation>();
-            pendingFileOperations.put(op.getFileName(), pendingOperations);
-
-            // add the file to the correct list based on what type of work we
-            // are adding.  (if we aren't prioritizing then every file is counted as
-            // signficant
-            if (!m_prioritizeSignificantUpdates || op.isSignificant())
-                filesWithSignificantWork.addLast(op.getFileName());
-            else
-                filesWithInsignificantWork.addLast(op.getFileName());
-        } else if (m_prioritizeSignificantUpdates && op.isSignificant() && hasOnlyInsignificant(pendingOperations)) {
-            // only do this when we are prioritizing as this bumps files from inSig
-            // up to insig
-            // promote the file to the significant list if this is the first
-            // significant
-            filesWithSignificantWork.addLast(op.getFileName());
+                }
+            } finally {
+                m_threadsRunning.decrementAndGet();
+                // work may have been added after we decided to exit
+                if (m_operationsPending.get() > 0) {
+                    ensureThreadsStarted();
+                }
+            }
         }
+    }
 
-        promoteAgedFiles();
+    private Shard[] getShardArray() {
+        Shard[] shards = m_shardArray;
+        if (shards == null) {
+            synchronized (this) {
+                shards = m_shardArray;
+                if (shards == null) {
+                    // every shard needs a writer, so there are never more
+                    // shards than write threads
+                    final int writeThreads = Math.max(1, m_writeThreads);
+                    final int count = m_shards > 0 ? Math.min(m_shards, writeThreads) : writeThreads;
+                    shards = new Shard[count];
+                    for (int i = 0; i < count; i++) {
+                        // split the write threads so they add up to the configured total
+                        final int writers = writeThreads / count + (i < writeThreads % count ? 1 : 0);
+                        shards[i] = new Shard(i, writers, count);
+                    }
+                    m_shardArray = shards;
+                }
+            }
+        }
+        return shards;
+    }
 
-        op.addToPendingList(pendingOperations);
+    private Shard getShard(final String fileName) {
+        final Shard[] shards = getShardArray();
+        // spread the hash, files in the same directory share long prefixes
+        int hash = fileName.hashCode();
+        hash ^= (hash >>> 16);
+        return shards[(hash & 0x7fffffff) % shards.length];
     }
 
     /**
-     * Ensure that files with insignificant changes are getting promoted if
-     * necessary
-     * 
+     * Add an operation to the queue.
+     *
+     * @param op a {@link org.opennms.netmgt.rrd.QueuingRrdStrategy.Operation} object.
      */
-    private synchronized void promoteAgedFiles() {
-        
-        // no need to do this is we aren't prioritizing
-        if (!m_prioritizeSignificantUpdates) return;
-
-        // the num seconds to update files is 0 then use unfair prioritization
-        if (m_maxInsigUpdateSeconds == 0 || filesWithInsignificantWork.isEmpty())
+    public void addOperation(Operation op) {
+        // count the operation before a write thread can see and dequeue it
+        m_totalOperationsPending.incrementAndGet();
+        if (!getShard(op.getFileName()).add(op)) {
+            m_totalOperationsPending.decrementAndGet();
             return;
-
-        // calculate the elapsed time we first queued updates
-        long now = System.currentTimeMillis();
-        long elapsedMillis = Math.max(now - getStartTime(), 1);
-
-        // calculate the milliseconds between promotions necessary to age
-        // insignificant files into
-        // the significant queue
-        double millisPerPromotion = ((m_maxInsigUpdateSeconds * 1000.0) / filesWithInsignificantWork.size());
-
-        // calculate the number of millis since start until the next file needs
-        // to be promotoed
-        long nextPromotionMillis = (long) (millisPerPromotion * getPromotionCount());
-
-        // if more time has elapsed than the next promotion time then promote a
-        // file
-        if (elapsedMillis > nextPromotionMillis) {
-            String file = filesWithInsignificantWork.removeFirst();
-            filesWithSignificantWork.addFirst(file);
-            setPromotionCount(getPromotionCount() + 1);
         }
 
+        m_enqueuedOperations.incrementAndGet();
+        if (op.isSignificant())
+            m_significantOpsEnqueued.incrementAndGet();
     }
-    
+
     /** {@inheritDoc} */
     @Override
-    public synchronized void promoteEnqueuedFiles(Collection<String> rrdFiles) {
-        filesWithSignificantWork.addAll(0, rrdFiles);
+    public void promoteEnqueuedFiles(Collection<String> rrdFiles) {
+        for (final String rrdFile : rrdFiles) {
+            getShard(rrdFile).m_urgentFiles.offer(rrdFile);
+        }
         m_delegate.promoteEnqueuedFiles(rrdFiles);
     }
 
-    /**
-     * Return true if and only if all the operations in the list are
-     * insignificant
-     */
-    private boolean hasOnlyInsignificant(LinkedList<Operation> pendingOps) {
-        for(Operation op : pendingOps) {
-            if (op.isSignificant()) {
-                return false;
-            }
+    private long getFilesWithSignificantWork() {
+        long files = 0;
+        for (final Shard shard : getShardArray()) {
+            files += shard.m_significantFileCount.get();
         }
-        return true;
+        return files;
     }
 
-    /**
-     * register the file that the currentThread is be working on. This enables
-     * us to ensure that another thread doesn't try to work on operations for
-     * that file.  Note: this is not synchronized as it is called from getNext which
-     * is thread safe
-     */
-    private LinkedList<Operation> takeAssignment(String newAssignment) {
-
-        // make the file as reserved by the current thread
-        fileAssignments.put(Thread.currentThread(), newAssignment);
-        reservedFiles.add(newAssignment);
-
-        // get the assignments work list and return it
-        return pendingFileOperations.remove(newAssignment);
-    }
-
-    /**
-     * Return the name of the next file with available work
-     */
-    private String selectNewAssignment() {
-        for (Iterator<String> it = filesWithSignificantWork.iterator(); it.hasNext();) {
-            String fn = it.next();
-            if (!reservedFiles.contains(fn)) {
-                it.remove();
-                return fn;
-            }
-        }
-        for (Iterator<String> it = filesWithInsignificantWork.iterator(); it.hasNext();) {
-            String fn = it.next();
-            if (!reservedFiles.contains(fn)) {
-                it.remove();
-                return fn;
-            }
+    private long getFilesWithInsignificantWork() {
+        long files = 0;
+        for (final Shard shard : getShardArray()) {
+            files += shard.m_insignificantFileCount.get();
         }
-        return null;
-    }
-
-    /**
-     * Record that fact that the current thread has finished process operations
-     * for its current assignment
-     */
-    private synchronized void completeAssignment() {
-        // remove any existing reservation of the current thread
-        String previousAssignment = fileAssignments.remove(Thread.currentThread());
-        if (previousAssignment != null)
-            reservedFiles.remove(previousAssignment);
+        return files;
     }
 
     /**
@@ -1089,58 +1310,20 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
     // These methods are run by the write threads the process the queues.
     //
 
-    /**
-     * <p>run</p>
-     */
-    @Override
-    public void run() {
-        try {
-
-            long waitStart = -1L;
-            long delayed = 0;
-            while (delayed < m_writeThreadExitDelay) {
-                if (getTotalOperationsPending() > 0) {
-                    delayed = 0;
-                    waitStart = -1L;
-                    processPendingOperations();
-                } else {
-                    if (waitStart < 0) {
-                        waitStart = System.currentTimeMillis();
-                    }
-                    try {
-                        Thread.sleep(m_writeThreadSleepTime);
-                    } catch (InterruptedException e) {
-                    }
-                    long now = System.currentTimeMillis();
-                    delayed = now - waitStart;
-                }
-
-            }
-        } finally {
-            synchronized (this) {
-                threadsRunning--;
-                completeAssignment();
-            }
-        }
-    }
-
     /**
      * Actually process the operations be calling the underlying delegate
      * strategy
      */
-    private void processPendingOperations() {
+    private void processPendingOperations(final List<Operation> ops) {
         Object rrd = null;
         String fileName = null;
 
         try {
-            LinkedList<Operation> ops = getNext();
-            if (ops == null)
-                return;
             // update stats correctly we update them even if an exception occurs
             // while we are processing
             for(Operation op : ops) {
                 if (op.isSignificant()) {
-                	setSignificantOpsCompleted(getSignificantOpsCompleted() + 1);
+                    m_significantOpsCompleted.addAndGet(op.getCount());
                 }
 
             }
@@ -1150,7 +1333,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
                 rrd = op.process(rrd);
             }
         } catch (Throwable e) {
-            setErrors(getErrors() + 1);
+            m_errors.incrementAndGet();
             logLapTime("Error updating file " + fileName + ": " + e.getMessage());
             m_log.debug("Error updating file {}: {}", fileName, e.getMessage(), e);
         } finally {
@@ -1210,8 +1393,9 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 
         String stats = "\nQS:\t" + "totalOperationsPending=" + getTotalOperationsPending() + 
         ", significantOpsPending=" + (getSignificantOpsEnqueued() - getSignificantOpsCompleted()) + 
-        ", filesWithSignificantWork=" + filesWithSignificantWork.size() + 
-        ", filesWithInsignificantWork=" + filesWithInsignificantWork.size()
+        ", filesWithSignificantWork=" + getFilesWithSignificantWork() + 
+        ", filesWithInsignificantWork=" + getFilesWithInsignificantWork() + 
+        ", shards=" + getShardArray().length
 
         + "\nQS:\t" + ", createsCompleted=" + getCreatesCompleted() + 
         ", updatesCompleted=" + getUpdatesCompleted() + 
@@ -1244,6 +1428,17 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
         return stats;
     }
 
+    /**
+     * Counts updates that have been written, logging the statistics whenever
+     * the count passes a multiple of the modulus.
+     */
+    private void updatesCompleted(final int count) {
+        final long completed = m_updatesCompleted.addAndGet(count);
+        if (completed / m_modulus != (completed - count) / m_modulus) {
+            logStats();
+        }
+    }
+
     /**
      * <p>logStats</p>
      */
@@ -1325,7 +1520,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @return a long.
 	 */
 	public long getTotalOperationsPending() {
-		return m_totalOperationsPending;
+		return m_totalOperationsPending.get();
 	}
 
 	/**
@@ -1334,7 +1529,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @param totalOperationsPending a long.
 	 */
 	public void setTotalOperationsPending(long totalOperationsPending) {
-		m_totalOperationsPending = totalOperationsPending;
+		m_totalOperationsPending.set(totalOperationsPending);
 	}
 
 	/**
@@ -1343,7 +1538,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @return a long.
 	 */
 	public long getCreatesCompleted() {
-		return m_createsCompleted;
+		return m_createsCompleted.get();
 	}
 
 	/**
@@ -1352,7 +1547,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @param createsCompleted a long.
 	 */
 	public void setCreatesCompleted(long createsCompleted) {
-		m_createsCompleted = createsCompleted;
+		m_createsCompleted.set(createsCompleted);
 	}
 
 	/**
@@ -1361,7 +1556,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @return a long.
 	 */
 	public long getUpdatesCompleted() {
-		return m_updatesCompleted;
+		return m_updatesCompleted.get();
 	}
 
 	/**
@@ -1370,7 +1565,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @param updatesCompleted a long.
 	 */
 	public void setUpdatesCompleted(long updatesCompleted) {
-		m_updatesCompleted = updatesCompleted;
+		m_updatesCompleted.set(updatesCompleted);
 	}
 
 	/**
@@ -1379,7 +1574,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @return a long.
 	 */
 	public long getErrors() {
-		return m_errors;
+		return m_errors.get();
 	}
 
 	/**
@@ -1388,7 +1583,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @param errors a long.
 	 */
 	public void setErrors(long errors) {
-		m_errors = errors;
+		m_errors.set(errors);
 	}
 
 	/**
@@ -1397,7 +1592,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @return a long.
 	 */
 	public long getPromotionCount() {
-		return m_promotionCount;
+		return m_promotionCount.get();
 	}
 
 	/**
@@ -1406,7 +1601,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @param promotionCount a long.
 	 */
 	public void setPromotionCount(long promotionCount) {
-		m_promotionCount = promotionCount;
+		m_promotionCount.set(promotionCount);
 	}
 
 	/**
@@ -1415,7 +1610,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @return a long.
 	 */
 	public long getSignificantOpsEnqueued() {
-		return m_significantOpsEnqueued;
+		return m_significantOpsEnqueued.get();
 	}
 
 	/**
@@ -1424,7 +1619,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @param significantOpsEnqueued a long.
 	 */
 	public void setSignificantOpsEnqueued(long significantOpsEnqueued) {
-		m_significantOpsEnqueued = significantOpsEnqueued;
+		m_significantOpsEnqueued.set(significantOpsEnqueued);
 	}
 
 	/**
@@ -1433,7 +1628,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @return a long.
 	 */
 	public long getSignificantOpsDequeued() {
-		return m_significantOpsDequeued;
+		return m_significantOpsDequeued.get();
 	}
 
 	/**
@@ -1442,7 +1637,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @param significantOpsDequeued a long.
 	 */
 	public void setSignificantOpsDequeued(long significantOpsDequeued) {
-		m_significantOpsDequeued = significantOpsDequeued;
+		m_significantOpsDequeued.set(significantOpsDequeued);
 	}
 
 	/**
@@ -1451,7 +1646,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @return a long.
 	 */
 	public long getEnqueuedOperations() {
-		return m_enqueuedOperations;
+		return m_enqueuedOperations.get();
 	}
 
 	/**
@@ -1460,7 +1655,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @param enqueuedOperations a long.
 	 */
 	public void setEnqueuedOperations(long enqueuedOperations) {
-		m_enqueuedOperations = enqueuedOperations;
+		m_enqueuedOperations.set(enqueuedOperations);
 	}
 
 	/**
@@ -1469,7 +1664,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @return a long.
 	 */
 	public long getDequeuedOperations() {
-		return m_dequeuedOperations;
+		return m_dequeuedOperations.get();
 	}
 
 	/**
@@ -1478,7 +1673,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @param dequeuedOperations a long.
 	 */
 	public void setDequeuedOperations(long dequeuedOperations) {
-		m_dequeuedOperations = dequeuedOperations;
+		m_dequeuedOperations.set(dequeuedOperations);
 	}
 
 	/**
@@ -1487,7 +1682,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @return a long.
 	 */
 	public long getDequeuedItems() {
-		return m_dequeuedItems;
+		return m_dequeuedItems.get();
 	}
 
 	/**
@@ -1496,7 +1691,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @param dequeuedItems a long.
 	 */
 	public void setDequeuedItems(long dequeuedItems) {
-		m_dequeuedItems = dequeuedItems;
+		m_dequeuedItems.set(dequeuedItems);
 	}
 
 	/**
@@ -1505,7 +1700,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @return a long.
 	 */
 	public long getSignificantOpsCompleted() {
-		return m_significantOpsCompleted;
+		return m_significantOpsCompleted.get();
 	}
 
 	/**
@@ -1514,7 +1709,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @param significantOpsCompleted a long.
 	 */
 	public void setSignificantOpsCompleted(long significantOpsCompleted) {
-		m_significantOpsCompleted = significantOpsCompleted;
+		m_significantOpsCompleted.set(significantOpsCompleted);
 	}
 
 	/**
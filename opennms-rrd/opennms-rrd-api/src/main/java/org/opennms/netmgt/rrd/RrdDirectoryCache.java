@@ -0,0 +1,521 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.rrd;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.opennms.core.concurrent.LogPreservingThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>In-memory index of the RRD directory tree.</p>
+ *
+ * <p>For every directory that has been looked at, the names of the RRD files
+ * and of the subdirectories it contains are kept in memory, so that the
+ * resource filters in {@link RrdFileConstants} do not have to list the
+ * directories again on every request.  A cached listing is revalidated
+ * against the modification time of its directory, which changes whenever
+ * an entry is created, removed or renamed in it (but not when an existing
+ * RRD file is updated), so the index follows the changes written by the
+ * collectors one directory at a time.  Listings taken within
+ * {@link #MODIFICATION_TIME_RESOLUTION} of the directory modification are
+ * not trusted, since file systems with coarse timestamps could hide a
+ * change made in the same tick.</p>
+ *
+ * <p>The estimated memory used by the index is capped by the
+ * <code>org.opennms.rrd.directoryCache.maxMemory</code> system property (in
+ * bytes); the least recently used directories are dropped first.  The
+ * index can be disabled by setting
+ * <code>org.opennms.rrd.directoryCache.enabled</code> to <code>false</code>.
+ * The statistics of the shared instance are registered in the platform MBean
+ * server as <code>OpenNMS:Name=RrdDirectoryCache</code>.</p>
+ */
+public class RrdDirectoryCache implements RrdDirectoryCacheMBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RrdDirectoryCache.class);
+
+    /** Listings taken closer than this (in milliseconds) to the last modification of their directory are rescanned. */
+    public static final long MODIFICATION_TIME_RESOLUTION = 2000;
+
+    private static final long DEFAULT_MAX_MEMORY = 32 * 1024 * 1024;
+
+    // the resource tree is at most rrd/snmp/fs/<source>/<id>/<index> deep
+    private static final int MAX_PRIME_DEPTH = 6;
+
+    // rough sizes of the objects kept per directory and per name
+    private static final int ENTRY_OVERHEAD = 128;
+    private static final int NAME_OVERHEAD = 48;
+
+    private static final RrdDirectoryCache s_instance = new RrdDirectoryCache(
+            Boolean.valueOf(System.getProperty("org.opennms.rrd.directoryCache.enabled", "true")),
+            Long.getLong("org.opennms.rrd.directoryCache.maxMemory", DEFAULT_MAX_MEMORY));
+
+    static {
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = new ObjectName("OpenNMS:Name=RrdDirectoryCache");
+            if (!server.isRegistered(name)) {
+                server.registerMBean(new StandardMBean(s_instance, RrdDirectoryCacheMBean.class), name);
+            }
+        } catch (final Exception e) {
+            LOG.warn("Unable to register JMX statistics for the RRD directory cache", e);
+        }
+    }
+
+    private final boolean m_enabled;
+    private final long m_maxMemory;
+
+    // access ordered, so the eldest entry is the least recently used one
+    private final LinkedHashMap<String, Entry> m_entries = new LinkedHashMap<String, Entry>(1024, 0.75f, true);
+    private long m_memoryUsage = 0;
+
+    private final AtomicLong m_hits = new AtomicLong();
+    private final AtomicLong m_misses = new AtomicLong();
+    private final AtomicLong m_evictions = new AtomicLong();
+
+    /**
+     * The listing of a single directory.
+     */
+    private static final class Entry {
+        private final long m_lastModified;
+        private final boolean m_trusted;
+        private final String m_rrdSuffix;
+        private final String[] m_rrdFiles;
+        private final String[] m_directories;
+        private final long m_size;
+
+        private Entry(final String path, final long lastModified, final boolean trusted, final String rrdSuffix, final String[] rrdFiles, final String[] directories) {
+            m_lastModified = lastModified;
+            m_trusted = trusted;
+            m_rrdSuffix = rrdSuffix;
+            m_rrdFiles = rrdFiles;
+            m_directories = directories;
+
+            long size = ENTRY_OVERHEAD + NAME_OVERHEAD + 2L * path.length();
+            for (final String name : rrdFiles) {
+                size += NAME_OVERHEAD + 2L * name.length();
+            }
+            for (final String name : directories) {
+                size += NAME_OVERHEAD + 2L * name.length();
+            }
+            m_size = size;
+        }
+
+        private boolean isCurrent(final long lastModified, final String rrdSuffix) {
+            return m_trusted && m_lastModified == lastModified && m_rrdSuffix.equals(rrdSuffix);
+        }
+    }
+
+    /**
+     * <p>getInstance</p>
+     *
+     * @return the index shared by the resource filters
+     */
+    public static RrdDirectoryCache getInstance() {
+        return s_instance;
+    }
+
+    /**
+     * <p>Constructor for RrdDirectoryCache.</p>
+     *
+     * @param enabled whether listings are kept between calls
+     * @param maxMemory the estimated number of bytes the listings may use
+     */
+    public RrdDirectoryCache(final boolean enabled, final long maxMemory) {
+        m_enabled = enabled;
+        m_maxMemory = maxMemory;
+    }
+
+    /**
+     * Returns the RRD files in a directory.
+     *
+     * @param directory the directory to list
+     * @return the RRD files, or null if the directory does not exist
+     */
+    public File[] listRrdFiles(final File directory) {
+        final Entry entry = getEntry(directory);
+        if (entry == null) {
+            return null;
+        }
+        return toFiles(directory, entry.m_rrdFiles);
+    }
+
+    /**
+     * Returns whether a directory contains RRD files.
+     *
+     * @param directory the directory to check
+     * @return false if the directory does not exist or has no RRD files
+     */
+    public boolean hasRrdFiles(final File directory) {
+        final Entry entry = getEntry(directory);
+        return entry != null && entry.m_rrdFiles.length > 0;
+    }
+
+    /**
+     * Returns whether a file is a directory, using the index when possible.
+     *
+     * @param directory the file to check
+     * @return a boolean.
+     */
+    public boolean isDirectory(final File directory) {
+        return getEntry(directory) != null;
+    }
+
+    /**
+     * Returns the subdirectories of a directory that are accepted by a filter.
+     *
+     * @param directory the directory to list
+     * @param filter the filter the subdirectories must pass, or null for all of them
+     * @return the matching subdirectories, or null if the directory does not exist
+     */
+    public File[] listDirectories(final File directory, final FileFilter filter) {
+        final Entry entry = getEntry(directory);
+        if (entry == null) {
+            return null;
+        }
+        final List<File> directories = new ArrayList<File>(entry.m_directories.length);
+        for (final String name : entry.m_directories) {
+            final File child = new File(directory, name);
+            if (filter == null || filter.accept(child)) {
+                directories.add(child);
+            }
+        }
+        return directories.toArray(new File[directories.size()]);
+    }
+
+    /**
+     * Returns whether any subdirectory of a directory is accepted by a filter.
+     *
+     * @param directory the directory to check
+     * @param filter the filter a subdirectory must pass
+     * @return false if the directory does not exist or no subdirectory matches
+     */
+    public boolean containsDirectory(final File directory, final FileFilter filter) {
+        final Entry entry = getEntry(directory);
+        if (entry == null) {
+            return false;
+        }
+        for (final String name : entry.m_directories) {
+            if (filter.accept(new File(directory, name))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Drops the listing of a directory so that it is read again on the next
+     * lookup.  Writers call this after creating a file in the directory.
+     *
+     * @param directory the directory that has changed
+     */
+    public void invalidate(final File directory) {
+        if (!m_enabled) {
+            return;
+        }
+        synchronized (m_entries) {
+            final Entry entry = m_entries.remove(directory.getPath());
+            if (entry != null) {
+                m_memoryUsage -= entry.m_size;
+            }
+        }
+    }
+
+    /**
+     * Drops all listings.
+     */
+    @Override
+    public void clear() {
+        synchronized (m_entries) {
+            m_entries.clear();
+            m_memoryUsage = 0;
+        }
+    }
+
+    /**
+     * Reads the directory tree below a root directory into the index, using
+     * the given number of threads.  Blocks until the whole tree has been
+     * read, or until the index has reached its memory limit, since reading
+     * further would only evict the directories that were just read.
+     * Interrupting the calling thread stops the walk.
+     *
+     * @param root the directory to start from
+     * @param threads the number of directories to read concurrently
+     * @return the number of directories that were read
+     * @throws InterruptedException if interrupted while waiting for the threads
+     */
+    public int prime(final File root, final int threads) throws InterruptedException {
+        if (!m_enabled || !root.isDirectory()) {
+            return 0;
+        }
+
+        final long start = System.currentTimeMillis();
+        final ExecutorService executor = Executors.newFixedThreadPool(threads, new LogPreservingThreadFactory(getClass().getSimpleName(), threads, false));
+        final AtomicInteger pending = new AtomicInteger();
+        final AtomicInteger count = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(1);
+
+        try {
+            submitPrime(executor, root, 0, pending, count, done);
+            if (pending.get() > 0) {
+                done.await();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        if (isFull()) {
+            LOG.info("Indexed {} RRD directories below {} in {} ms; stopped at the limit of {} bytes", count.get(), root, System.currentTimeMillis() - start, m_maxMemory);
+        } else {
+            LOG.info("Indexed {} RRD directories below {} in {} ms ({} bytes)", count.get(), root, System.currentTimeMillis() - start, getMemoryUsage());
+        }
+        return count.get();
+    }
+
+    private void submitPrime(final ExecutorService executor, final File directory, final int depth, final AtomicInteger pending, final AtomicInteger count, final CountDownLatch done) {
+        if (executor.isShutdown() || isFull()) {
+            return;
+        }
+        pending.incrementAndGet();
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    primeDirectory(executor, directory, depth, pending, count, done);
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            // the walk was stopped
+            if (pending.decrementAndGet() == 0) {
+                done.countDown();
+            }
+        }
+    }
+
+    private void primeDirectory(final ExecutorService executor, final File directory, final int depth, final AtomicInteger pending, final AtomicInteger count, final CountDownLatch done) {
+        try {
+            final Entry entry = getEntry(directory);
+            if (entry != null) {
+                count.incrementAndGet();
+                if (depth < MAX_PRIME_DEPTH) {
+                    for (final String name : entry.m_directories) {
+                        submitPrime(executor, new File(directory, name), depth + 1, pending, count, done);
+                    }
+                }
+            }
+        } catch (final Throwable e) {
+            LOG.warn("Failed to index RRD directory {}", directory, e);
+        } finally {
+            if (pending.decrementAndGet() == 0) {
+                done.countDown();
+            }
+        }
+    }
+
+    private boolean isFull() {
+        return getMemoryUsage() >= m_maxMemory;
+    }
+
+    /**
+     * <p>getHitCount</p>
+     *
+     * @return the number of lookups answered from the index
+     */
+    @Override
+    public long getHitCount() {
+        return m_hits.get();
+    }
+
+    /**
+     * <p>getMissCount</p>
+     *
+     * @return the number of lookups that had to read the directory
+     */
+    @Override
+    public long getMissCount() {
+        return m_misses.get();
+    }
+
+    /**
+     * <p>getEvictionCount</p>
+     *
+     * @return the number of listings dropped to stay within the memory limit
+     */
+    @Override
+    public long getEvictionCount() {
+        return m_evictions.get();
+    }
+
+    /**
+     * <p>getSize</p>
+     *
+     * @return the number of directories in the index
+     */
+    @Override
+    public int getSize() {
+        synchronized (m_entries) {
+            return m_entries.size();
+        }
+    }
+
+    /**
+     * <p>getMemoryUsage</p>
+     *
+     * @return the estimated number of bytes used by the index
+     */
+    @Override
+    public long getMemoryUsage() {
+        synchronized (m_entries) {
+            return m_memoryUsage;
+        }
+    }
+
+    /**
+     * <p>getMaxMemory</p>
+     *
+     * @return the estimated number of bytes the index may use
+     */
+    @Override
+    public long getMaxMemory() {
+        return m_maxMemory;
+    }
+
+    /**
+     * <p>getRrdSuffix</p>
+     *
+     * @return the extension of the RRD files to index
+     */
+    protected String getRrdSuffix() {
+        return RrdFileConstants.getRrdSuffix();
+    }
+
+    private Entry getEntry(final File directory) {
+        final String path = directory.getPath();
+        final String rrdSuffix = getRrdSuffix();
+        // lastModified() is 0 when the directory does not exist
+        final long lastModified = directory.lastModified();
+
+        if (m_enabled && lastModified != 0) {
+            final Entry entry;
+            synchronized (m_entries) {
+                entry = m_entries.get(path);
+            }
+            if (entry != null && entry.isCurrent(lastModified, rrdSuffix)) {
+                m_hits.incrementAndGet();
+                return entry;
+            }
+        }
+
+        m_misses.incrementAndGet();
+        final long now = System.currentTimeMillis();
+        final Entry entry = scan(directory, path, lastModified, now, rrdSuffix);
+        if (m_enabled) {
+            store(path, entry);
+        }
+        return entry;
+    }
+
+    private static Entry scan(final File directory, final String path, final long lastModified, final long now, final String rrdSuffix) {
+        final File[] files = directory.listFiles();
+        if (files == null) {
+            return null;
+        }
+
+        final List<String> rrdFiles = new ArrayList<String>();
+        final List<String> directories = new ArrayList<String>();
+        for (final File file : files) {
+            final String name = file.getName();
+            if (name.endsWith(rrdSuffix)) {
+                rrdFiles.add(name);
+            }
+            if (file.isDirectory()) {
+                directories.add(name);
+            }
+        }
+
+        final boolean trusted = lastModified != 0 && now - lastModified >= MODIFICATION_TIME_RESOLUTION;
+        return new Entry(path, lastModified, trusted, rrdSuffix, rrdFiles.toArray(new String[rrdFiles.size()]), directories.toArray(new String[directories.size()]));
+    }
+
+    private void store(final String path, final Entry entry) {
+        synchronized (m_entries) {
+            final Entry previous = entry == null ? m_entries.remove(path) : m_entries.put(path, entry);
+            if (previous != null) {
+                m_memoryUsage -= previous.m_size;
+            }
+            if (entry == null) {
+                return;
+            }
+            m_memoryUsage += entry.m_size;
+
+            final Iterator<Entry> i = m_entries.values().iterator();
+            while (m_memoryUsage > m_maxMemory && i.hasNext()) {
+                final Entry eldest = i.next();
+                if (eldest == entry) {
+                    continue;
+                }
+                i.remove();
+                m_memoryUsage -= eldest.m_size;
+                m_evictions.incrementAndGet();
+            }
+        }
+    }
+
+    private static File[] toFiles(final File directory, final String[] names) {
+        final File[] files = new File[names.length];
+        for (int i = 0; i < names.length; i++) {
+            files[i] = new File(directory, names[i]);
+        }
+        return files;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[size=" + getSize() + ", memory=" + getMemoryUsage() + "/" + m_maxMemory + ", hits=" + getHitCount() + ", misses=" + getMissCount() + ", evictions=" + getEvictionCount() + "]";
+    }
+}
@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.rrd;
+
+/**
+ * Statistics of the {@link RrdDirectoryCache} shared by the resource
+ * filters, registered in the platform MBean server as
+ * <code>OpenNMS:Name=RrdDirectoryCache</code>.
+ */
+public interface RrdDirectoryCacheMBean {
+    /**
+     * @return the number of lookups answered from the index
+     */
+    public long getHitCount();
+
+    /**
+     * @return the number of lookups that had to read the directory
+     */
+    public long getMissCount();
+
+    /**
+     * @return the number of listings dropped to stay within the memory limit
+     */
+    public long getEvictionCount();
+
+    /**
+     * @return the number of directories in the index
+     */
+    public int getSize();
+
+    /**
+     * @return the estimated number of bytes used by the index
+     */
+    public long getMemoryUsage();
+
+    /**
+     * @return the estimated number of bytes the index may use
+     */
+    public long getMaxMemory();
+
+    /**
+     * Drops all listings.
+     */
+    public void clear();
+}
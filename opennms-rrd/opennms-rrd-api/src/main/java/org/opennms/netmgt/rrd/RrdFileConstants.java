@@ -53,6 +53,8 @@ public class RrdFileConstants extends Object {
         }
     }
 
+    private static final RrdDirectoryCache s_directoryCache = RrdDirectoryCache.getInstance();
+
 	/** The longest an RRD filename can be, currently 1024 characters. */
     public static final int MAX_RRD_FILENAME_LENGTH = 1024;
 
@@ -98,10 +100,6 @@ public class RrdFileConstants extends Object {
      * @return a boolean.
      */
     public static final boolean isValidRRDNodeDir(final File file) {
-        if (!file.isDirectory()) {
-            return false;
-        }
-
         try {
             // if the directory name is an integer
             Long.valueOf(file.getName());
@@ -110,19 +108,13 @@ public class RrdFileConstants extends Object {
         }
 
         // if the node dir contains RRDs, then it is queryable
-        final File[] nodeRRDs = file.listFiles(RRD_FILENAME_FILTER);
-        if (nodeRRDs != null && nodeRRDs.length > 0) {
+        if (s_directoryCache.hasRrdFiles(file)) {
             return true;
         }
 
         // if the node dir contains queryable interface directories, then
         // it is queryable
-        final File[] intfDirs = file.listFiles(INTERFACE_DIRECTORY_FILTER);
-        if (intfDirs != null && intfDirs.length > 0) {
-            return true;
-        }
-
-        return false;
+        return s_directoryCache.containsDirectory(file, INTERFACE_DIRECTORY_FILTER);
     }
 
     /**
@@ -143,25 +135,14 @@ public class RrdFileConstants extends Object {
      * @return a boolean.
      */
      public static final boolean isValidRRDNodeSourceDir(final File file) {
-        if (!file.isDirectory()) {
-            return false;
-        }
-    
         // if the nodeSource dir contains RRDs, then it is queryable
-        final File[] nodeRRDs = file.listFiles(RRD_FILENAME_FILTER);
-        if (nodeRRDs != null && nodeRRDs.length > 0) {
+        if (s_directoryCache.hasRrdFiles(file)) {
             return true;
         }
 
         // if the nodeSource dir contains queryable interface directories, then
         // it is queryable
-        final File[] intfDirs = file.listFiles(INTERFACE_DIRECTORY_FILTER);
-        if (intfDirs != null && intfDirs.length > 0) {
-
-            return true;
-        }
-
-        return false;
+        return s_directoryCache.containsDirectory(file, INTERFACE_DIRECTORY_FILTER);
     }
      
     /**
@@ -211,10 +192,6 @@ public class RrdFileConstants extends Object {
      * @return a boolean.
      */
     public static final boolean isValidRRDDomainDir(final File file) {
-        if (!file.isDirectory()) {
-            return false;
-        }
-
         try {
             // if the directory name is an integer
             Integer.parseInt(file.getName());
@@ -222,7 +199,7 @@ public class RrdFileConstants extends Object {
         
             // if the domain dir contains queryable interface directories, then
             // it is queryable
-            final File[] intfDirs = file.listFiles(INTERFACE_DIRECTORY_FILTER);
+            final File[] intfDirs = s_directoryCache.listDirectories(file, INTERFACE_DIRECTORY_FILTER);
             if (intfDirs != null && intfDirs.length > 0) {
                 for (File intfDir : intfDirs) {
                     try {
@@ -246,33 +223,15 @@ public class RrdFileConstants extends Object {
      * @return a boolean.
      */
     public static final boolean isValidRRDInterfaceDir(final File file) {
-        if (!file.isDirectory()) {
-            return false;
-        }
-
-        final File[] intfRRDs = file.listFiles(RRD_FILENAME_FILTER);
-
-        if (intfRRDs != null && intfRRDs.length > 0) {
-            return true;
-        }
-
-        return false;
+        return s_directoryCache.hasRrdFiles(file);
     }
 
     public static final boolean isValidRRDDomainInterfaceDir(final File file) {
-        if (!file.isDirectory()) {
-            return false;
-        }
-
         try {
             // if the interface directory name is an integer (Long) its not part of a domain
             Long.valueOf(file.getName());
         } catch (final Throwable ee) {
-            final File[] intfRRDs = file.listFiles(RRD_FILENAME_FILTER);
-
-            if (intfRRDs != null && intfRRDs.length > 0) {
-                return true;
-            }
+            return s_directoryCache.hasRrdFiles(file);
         }
 
         return false;
@@ -286,17 +245,32 @@ public class RrdFileConstants extends Object {
      * @return a boolean.
      */
     public static final boolean isValidRRDLatencyDir(final File file) {
-        if (!file.isDirectory()) {
-            return false;
-        }
-
         // if the directory contains RRDs, then it is queryable
-        final File[] nodeRRDs = file.listFiles(RRD_FILENAME_FILTER);
-        if (nodeRRDs != null && nodeRRDs.length > 0) {
-            return true;
-        }
+        return s_directoryCache.hasRrdFiles(file);
+    }
 
-        return false;
+    /**
+     * Lists the RRD files in a directory, using the cached listing of the
+     * directory when it has not changed.
+     *
+     * @param directory a {@link java.io.File} object.
+     * @return the RRD files, or null if the directory does not exist
+     */
+    public static File[] listRrdFiles(final File directory) {
+        return s_directoryCache.listRrdFiles(directory);
+    }
+
+    /**
+     * Lists the subdirectories of a directory that match one of the
+     * directory filters, using the cached listings of the directories when
+     * they have not changed.
+     *
+     * @param directory a {@link java.io.File} object.
+     * @param filter a {@link java.io.FileFilter} object.
+     * @return the matching subdirectories, or null if the directory does not exist
+     */
+    public static File[] listDirectories(final File directory, final FileFilter filter) {
+        return s_directoryCache.listDirectories(directory, filter);
     }
 
     /**
@@ -117,14 +117,16 @@ public interface RrdStrategy<D extends Object,F extends Object> {
 
     /**
      * Updates the supplied round robin database with the given timestamp:value
-     * point
+     * point, or with several points separated by spaces as rrdtool update
+     * takes them
      *
      * @param rrd
      *            an rrd object created using openFile
      * @param owner
      *            the owner of the rrd
      * @param data
-     *            a string of the form <timestamp>: <datavalue>
+     *            a string of the form <timestamp>: <datavalue>, or several of
+     *            them separated by spaces in increasing timestamp order
      * @throws java.lang.Exception
      *             if an error occurs updating the file
      */
@@ -287,6 +287,7 @@ public abstract class RrdUtils {
             def = getStrategy().createDefinition(creator, directory, rrdName, step, dataSources, rraList);
             // def can be null if the rrd-db exists already, but doesn't have to be (see MultiOutput/QueuingRrdStrategy
             getStrategy().createFile(def, attributeMappings);
+            RrdDirectoryCache.getInstance().invalidate(new File(directory));
 
             return true;
         } catch (Throwable e) {
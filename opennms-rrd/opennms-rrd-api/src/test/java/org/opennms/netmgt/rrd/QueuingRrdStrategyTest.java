@@ -0,0 +1,285 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.rrd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class QueuingRrdStrategyTest {
+
+    private static final String THREAD_PREFIX = QueuingRrdStrategy.class.getSimpleName() + "-";
+
+    private final CountDownLatch m_gate = new CountDownLatch(1);
+
+    private final RecordingRrdStrategy m_delegate = new RecordingRrdStrategy(m_gate);
+
+    @After
+    public void tearDown() throws InterruptedException {
+        m_gate.countDown();
+        waitForWriteThreadsToExit();
+    }
+
+    @Test
+    public void testWriteThreadsAddUpToConfiguredTotal() throws Exception {
+        final QueuingRrdStrategy strategy = createStrategy(5, 3);
+
+        for (int i = 0; i < 100; i++) {
+            strategy.updateFile("file" + i, "test", "1000:1");
+        }
+
+        // every write thread blocks on its first file
+        assertTrue("write threads didn't start", m_delegate.m_updating.tryAcquire(5, 10, TimeUnit.SECONDS));
+        assertEquals(5, countWriteThreads());
+
+        m_gate.countDown();
+        waitForUpdates(100);
+    }
+
+    @Test
+    public void testUpdatesAreCoalescedInOrder() throws Exception {
+        final QueuingRrdStrategy strategy = createStrategy(2, 2);
+
+        for (int i = 1; i <= 200; i++) {
+            for (int file = 0; file < 4; file++) {
+                strategy.updateFile("file" + file, "test", i + ":" + i);
+            }
+        }
+
+        m_gate.countDown();
+        waitForUpdates(800);
+
+        for (int file = 0; file < 4; file++) {
+            final List<String> updates = m_delegate.getUpdates("file" + file);
+            assertEquals(200, updates.size());
+            for (int i = 1; i <= 200; i++) {
+                assertEquals(i + ":" + i, updates.get(i - 1));
+            }
+        }
+
+        // the updates that arrived while the first ones were being written
+        // were handed to the write threads together, and written to each
+        // file with a single update
+        assertTrue("updates should have been coalesced: " + strategy.getDequeuedItems(), strategy.getDequeuedItems() < 800);
+        assertTrue("updates should have been written together: " + m_delegate.getUpdateFileCalls(), m_delegate.getUpdateFileCalls() < 800);
+        assertEquals(800, strategy.getDequeuedOperations());
+        assertEquals(0, strategy.getTotalOperationsPending());
+    }
+
+    @Test
+    public void testWriteThreadsDrainQueueBeforeExiting() throws Exception {
+        final QueuingRrdStrategy strategy = createStrategy(4, 0);
+        m_gate.countDown();
+
+        for (int i = 1; i <= 50; i++) {
+            for (int file = 0; file < 20; file++) {
+                strategy.updateFile("file" + file, "test", i + ":" + i);
+            }
+        }
+
+        waitForWriteThreadsToExit();
+
+        assertEquals(1000, m_delegate.getUpdateCount());
+        assertEquals(1000, strategy.getUpdatesCompleted());
+        assertEquals(0, strategy.getTotalOperationsPending());
+    }
+
+    private QueuingRrdStrategy createStrategy(final int writeThreads, final int shards) {
+        final QueuingRrdStrategy strategy = new QueuingRrdStrategy(m_delegate);
+        strategy.setWriteThreads(writeThreads);
+        strategy.setShards(shards);
+        strategy.setModulus(10000);
+        strategy.setWriteThreadSleepTime(10);
+        strategy.setWriteThreadExitDelay(100);
+        return strategy;
+    }
+
+    private void waitForUpdates(final int count) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 10000;
+        while (m_delegate.getUpdateCount() < count) {
+            assertTrue("timed out waiting for " + count + " updates", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private static void waitForWriteThreadsToExit() throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 10000;
+        while (countWriteThreads() > 0) {
+            assertTrue("timed out waiting for the write threads to exit", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private static int countWriteThreads() {
+        int count = 0;
+        for (final Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.isAlive() && thread.getName().startsWith(THREAD_PREFIX)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Records the updated points for each file.  Every update waits for the
+     * gate to open, so operations queue up behind the ones being written.
+     */
+    private static class RecordingRrdStrategy implements RrdStrategy<Object, Object> {
+        private final CountDownLatch m_gate;
+        private final Semaphore m_updating = new Semaphore(0);
+        private final Map<String, List<String>> m_updates = new HashMap<String, List<String>>();
+        private int m_updateCount = 0;
+        private int m_updateFileCalls = 0;
+
+        public RecordingRrdStrategy(final CountDownLatch gate) {
+            m_gate = gate;
+        }
+
+        public synchronized List<String> getUpdates(final String fileName) {
+            return new ArrayList<String>(m_updates.get(fileName));
+        }
+
+        public synchronized int getUpdateCount() {
+            return m_updateCount;
+        }
+
+        public synchronized int getUpdateFileCalls() {
+            return m_updateFileCalls;
+        }
+
+        @Override
+        public void updateFile(final Object rrd, final String owner, final String data) throws Exception {
+            m_updating.release();
+            m_gate.await();
+            synchronized (this) {
+                List<String> updates = m_updates.get(rrd);
+                if (updates == null) {
+                    updates = new ArrayList<String>();
+                    m_updates.put((String) rrd, updates);
+                }
+                for (final String point : data.split(" ")) {
+                    updates.add(point);
+                    m_updateCount++;
+                }
+                m_updateFileCalls++;
+            }
+        }
+
+        @Override
+        public Object openFile(final String fileName) {
+            return fileName;
+        }
+
+        @Override
+        public void closeFile(final Object rrd) {
+        }
+
+        @Override
+        public void setConfigurationProperties(final Properties props) {
+        }
+
+        @Override
+        public String getDefaultFileExtension() {
+            return ".jrb";
+        }
+
+        @Override
+        public Object createDefinition(final String creator, final String directory, final String rrdName, final int step, final List<RrdDataSource> dataSources, final List<String> rraList) {
+            return null;
+        }
+
+        @Override
+        public void createFile(final Object rrdDef, final Map<String, String> attributeMappings) {
+        }
+
+        @Override
+        public Double fetchLastValue(final String rrdFile, final String ds, final int interval) {
+            return null;
+        }
+
+        @Override
+        public Double fetchLastValue(final String rrdFile, final String ds, final String consolidationFunction, final int interval) {
+            return null;
+        }
+
+        @Override
+        public Double fetchLastValueInRange(final String rrdFile, final String ds, final int interval, final int range) {
+            return null;
+        }
+
+        @Override
+        public InputStream createGraph(final String command, final File workDir) {
+            return null;
+        }
+
+        @Override
+        public RrdGraphDetails createGraphReturnDetails(final String command, final File workDir) {
+            return null;
+        }
+
+        @Override
+        public int getGraphLeftOffset() {
+            return 0;
+        }
+
+        @Override
+        public int getGraphRightOffset() {
+            return 0;
+        }
+
+        @Override
+        public int getGraphTopOffsetWithText() {
+            return 0;
+        }
+
+        @Override
+        public String getStats() {
+            return "";
+        }
+
+        @Override
+        public void promoteEnqueuedFiles(final Collection<String> rrdFiles) {
+        }
+    }
+}
@@ -0,0 +1,217 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.rrd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RrdDirectoryCacheTest {
+
+    private File m_root;
+
+    private static class TestCache extends RrdDirectoryCache {
+        public TestCache(final long maxMemory) {
+            super(true, maxMemory);
+        }
+
+        @Override
+        protected String getRrdSuffix() {
+            return ".jrb";
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        m_root = File.createTempFile("RrdDirectoryCacheTest", "");
+        assertTrue(m_root.delete());
+        assertTrue(m_root.mkdir());
+    }
+
+    @After
+    public void tearDown() {
+        delete(m_root);
+    }
+
+    @Test
+    public void testListingIsCachedUntilDirectoryChanges() throws IOException {
+        final File dir = createDirectory(m_root, "1");
+        createFile(dir, "a.jrb");
+        createFile(dir, "b.txt");
+        createDirectory(dir, "eth0");
+        makeOld(dir, 10000);
+
+        final RrdDirectoryCache cache = new TestCache(Long.MAX_VALUE);
+        assertEquals(1, cache.listRrdFiles(dir).length);
+        assertEquals("a.jrb", cache.listRrdFiles(dir)[0].getName());
+        assertEquals(1, cache.listDirectories(dir, null).length);
+        assertEquals("eth0", cache.listDirectories(dir, null)[0].getName());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(3, cache.getHitCount());
+        assertEquals(1, cache.getSize());
+        assertTrue(cache.getMemoryUsage() > 0);
+
+        createFile(dir, "c.jrb");
+        makeOld(dir, 5000);
+        assertEquals(2, cache.listRrdFiles(dir).length);
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void testRecentlyModifiedDirectoryIsRescanned() throws IOException {
+        final File dir = createDirectory(m_root, "1");
+        createFile(dir, "a.jrb");
+
+        final RrdDirectoryCache cache = new TestCache(Long.MAX_VALUE);
+        assertTrue(cache.hasRrdFiles(dir));
+        assertTrue(cache.hasRrdFiles(dir));
+        assertEquals(0, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void testInvalidate() throws IOException {
+        final File dir = createDirectory(m_root, "1");
+        makeOld(dir, 10000);
+
+        final RrdDirectoryCache cache = new TestCache(Long.MAX_VALUE);
+        assertFalse(cache.hasRrdFiles(dir));
+
+        // the modification time is restored, as a coarse file system clock would
+        final long lastModified = dir.lastModified();
+        createFile(dir, "a.jrb");
+        assertTrue(dir.setLastModified(lastModified));
+        assertFalse(cache.hasRrdFiles(dir));
+
+        cache.invalidate(dir);
+        assertTrue(cache.hasRrdFiles(dir));
+    }
+
+    @Test
+    public void testMissingDirectory() {
+        final RrdDirectoryCache cache = new TestCache(Long.MAX_VALUE);
+        final File dir = new File(m_root, "missing");
+        assertNull(cache.listRrdFiles(dir));
+        assertNull(cache.listDirectories(dir, null));
+        assertFalse(cache.isDirectory(dir));
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedDirectoryIsEvicted() throws IOException {
+        final File one = createDirectory(m_root, "1");
+        final File two = createDirectory(m_root, "2");
+        makeOld(one, 10000);
+        makeOld(two, 10000);
+
+        final RrdDirectoryCache cache = new TestCache(1);
+        assertTrue(cache.isDirectory(one));
+        assertTrue(cache.isDirectory(two));
+        assertEquals(1, cache.getSize());
+        assertEquals(1, cache.getEvictionCount());
+
+        assertTrue(cache.isDirectory(two));
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void testPrime() throws Exception {
+        final File snmp = createDirectory(m_root, "snmp");
+        for (int node = 1; node <= 5; node++) {
+            final File nodeDir = createDirectory(snmp, Integer.toString(node));
+            createFile(nodeDir, "a.jrb");
+            for (int intf = 0; intf < 3; intf++) {
+                createFile(createDirectory(nodeDir, "eth" + intf), "ifInOctets.jrb");
+            }
+        }
+
+        final RrdDirectoryCache cache = new TestCache(Long.MAX_VALUE);
+        assertEquals(1 + 5 + 15, cache.prime(snmp, 3));
+        assertEquals(21, cache.getSize());
+    }
+
+    /**
+     * Priming stops once the index is full instead of evicting what it has
+     * just read.
+     */
+    @Test
+    public void testPrimeStopsAtMemoryLimit() throws Exception {
+        final File snmp = createDirectory(m_root, "snmp");
+        for (int node = 1; node <= 5; node++) {
+            createFile(createDirectory(snmp, Integer.toString(node)), "a.jrb");
+        }
+
+        final RrdDirectoryCache cache = new TestCache(1);
+        assertEquals(1, cache.prime(snmp, 3));
+        assertEquals(1, cache.getSize());
+        assertEquals(0, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testMBeanRegistered() throws Exception {
+        RrdDirectoryCache.getInstance();
+        assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(new ObjectName("OpenNMS:Name=RrdDirectoryCache")));
+    }
+
+    private static File createDirectory(final File parent, final String name) {
+        final File dir = new File(parent, name);
+        assertTrue(dir.mkdir());
+        return dir;
+    }
+
+    private static void createFile(final File parent, final String name) throws IOException {
+        assertTrue(new File(parent, name).createNewFile());
+    }
+
+    private static void makeOld(final File dir, final long age) {
+        assertTrue(dir.setLastModified(System.currentTimeMillis() / 1000 * 1000 - age));
+    }
+
+    private static void delete(final File file) {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (final File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -229,12 +229,15 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
     /**
      * {@inheritDoc}
      *
-     * Creates a sample from the JRobin RrdDb and passes in the data provided.
+     * Creates a sample from the JRobin RrdDb and passes in the data provided,
+     * one update for each point.
      */
     @Override
     public void updateFile(final RrdDb rrdFile, final String owner, final String data) throws Exception {
         Sample sample = rrdFile.createSample();
-        sample.setAndUpdate(data);
+        for (final String point : data.split(" ")) {
+            sample.setAndUpdate(point);
+        }
     }
 
     /**
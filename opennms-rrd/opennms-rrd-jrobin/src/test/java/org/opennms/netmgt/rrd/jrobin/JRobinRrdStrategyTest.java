@@ -173,6 +173,16 @@ public class JRobinRrdStrategyTest {
         m_strategy.closeFile(openedFile);
     }
 
+    @Test
+    public void testUpdateMultiplePoints() throws Exception {
+        File rrdFile = createRrdFile();
+
+        RrdDb openedFile = m_strategy.openFile(rrdFile.getAbsolutePath());
+        m_strategy.updateFile(openedFile, "huh?", "1300:1.0 1600:2.0 1900:3.0");
+        assertEquals("last update time", 1900, openedFile.getLastUpdateTime());
+        m_strategy.closeFile(openedFile);
+    }
+
     @Test
     public void testSampleSetFloatingPointValueGood() throws Exception {
         File rrdFile = createRrdFile();
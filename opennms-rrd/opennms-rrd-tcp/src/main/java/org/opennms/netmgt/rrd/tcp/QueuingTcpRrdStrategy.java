@@ -102,7 +102,9 @@ public class QueuingTcpRrdStrategy implements RrdStrategy<TcpRrdStrategy.RrdDefi
                     if (m_myQueue.drainTo(sendMe) > 0) {
                         RrdOutputSocket socket = new RrdOutputSocket(m_strategy.getHost(), m_strategy.getPort());
                         for (PerformanceDataReading reading : sendMe) {
-                            socket.addData(reading.getFilename(), reading.getOwner(), reading.getData());
+                            for (String point : reading.getData().split(" ")) {
+                                socket.addData(reading.getFilename(), reading.getOwner(), point);
+                            }
                         }
                         socket.writeData();
                     } else {
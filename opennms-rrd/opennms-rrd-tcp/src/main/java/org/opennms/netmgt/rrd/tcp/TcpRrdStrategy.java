@@ -169,7 +169,9 @@ public class TcpRrdStrategy implements RrdStrategy<TcpRrdStrategy.RrdDefinition,
     /** {@inheritDoc} */
     @Override
     public void updateFile(RrdOutputSocketWithFilename rrd, String owner, String data) throws Exception {
-        rrd.getSocket().addData(rrd.getFilename(), owner, data);
+        for (String point : data.split(" ")) {
+            rrd.getSocket().addData(rrd.getFilename(), owner, point);
+        }
     }
 
     /**
@@ -51,6 +51,7 @@ import org.opennms.netmgt.capsd.EventUtils;
 import org.opennms.netmgt.capsd.InsufficientInformationException;
 import org.opennms.netmgt.collection.api.CollectionInitializationException;
 import org.opennms.netmgt.collection.api.ServiceCollector;
+import org.opennms.netmgt.collection.persistence.rrd.PersistOperationQueue;
 import org.opennms.netmgt.config.CollectdConfigFactory;
 import org.opennms.netmgt.config.DataCollectionConfigFactory;
 import org.opennms.netmgt.config.SnmpEventInfo;
@@ -74,6 +75,7 @@ import org.opennms.netmgt.model.events.EventListener;
 import org.opennms.netmgt.scheduler.LegacyScheduler;
 import org.opennms.netmgt.scheduler.ReadyRunnable;
 import org.opennms.netmgt.scheduler.Scheduler;
+import org.opennms.netmgt.scheduler.TimingWheelScheduler;
 import org.opennms.netmgt.xml.event.Event;
 import org.opennms.netmgt.xml.event.Parm;
 import org.opennms.netmgt.xml.event.Value;
@@ -96,6 +98,12 @@ public class Collectd extends AbstractServiceDaemon implements
         EventListener {
     
     private static final Logger LOG = LoggerFactory.getLogger(Collectd.class);
+
+    /**
+     * System property selecting the scheduler implementation, either
+     * <code>legacy</code> (the default) or <code>timingwheel</code>.
+     */
+    public static final String SCHEDULER_PROPERTY = "org.opennms.netmgt.collectd.scheduler";
     
     private static CollectdInstrumentation s_instrumentation = null;
     
@@ -309,7 +317,13 @@ public class Collectd extends AbstractServiceDaemon implements
                 // Create a scheduler
                 try {
                     LOG.debug("init: Creating collectd scheduler");
-                    setScheduler(new LegacyScheduler("Collectd", m_collectdConfigFactory.getCollectdConfig().getThreads()));
+                    final int threads = m_collectdConfigFactory.getCollectdConfig().getThreads();
+                    if ("timingwheel".equalsIgnoreCase(System.getProperty(SCHEDULER_PROPERTY, "legacy"))) {
+                        LOG.info("init: Using the timing wheel scheduler");
+                        setScheduler(new TimingWheelScheduler("Collectd", threads));
+                    } else {
+                        setScheduler(new LegacyScheduler("Collectd", threads));
+                    }
                 } catch (final RuntimeException e) {
                     LOG.error("init: Failed to create collectd scheduler", e);
                     throw e;
@@ -321,6 +335,9 @@ public class Collectd extends AbstractServiceDaemon implements
     /** {@inheritDoc} */
     @Override
     protected void onStart() {
+        // let the collections queue their samples again after a restart
+        PersistOperationQueue.startInstance();
+
         // start the scheduler
         try {
             LOG.debug("start: Starting collectd scheduler");
@@ -338,6 +355,9 @@ public class Collectd extends AbstractServiceDaemon implements
         getScheduler().stop();
         deinstallMessageSelectors();
 
+        // write out whatever the collections have queued
+        PersistOperationQueue.shutdownInstance();
+
         setScheduler(null);
     }
 
@@ -29,7 +29,10 @@
 package org.opennms.netmgt.collectd.jmx;
 
 import java.util.concurrent.ThreadPoolExecutor;
+
+import org.opennms.netmgt.collection.persistence.rrd.PersistOperationQueue;
 import org.opennms.netmgt.scheduler.LegacyScheduler;
+import org.opennms.netmgt.scheduler.TimingWheelScheduler;
 
 import org.opennms.netmgt.daemon.AbstractSpringContextJmxServiceDaemon;
 
@@ -120,11 +123,60 @@ public class Collectd extends AbstractSpringContextJmxServiceDaemon<org.opennms.
             return 0L;
         }
     }
+    /** {@inheritDoc} */
+    @Override
+    public long getSchedulerQueueDepth() {
+        if (getDaemon().getScheduler() instanceof TimingWheelScheduler) {
+            return ((TimingWheelScheduler) getDaemon().getScheduler()).getScheduled();
+        } else if (getDaemon().getScheduler() instanceof LegacyScheduler) {
+            return ((LegacyScheduler) getDaemon().getScheduler()).getScheduled();
+        } else {
+            return 0L;
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double getSchedulerAverageLateness() {
+        if (getDaemon().getScheduler() instanceof TimingWheelScheduler) {
+            return ((TimingWheelScheduler) getDaemon().getScheduler()).getAverageLateness();
+        } else {
+            return 0.0;
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getSchedulerMaxLateness() {
+        if (getDaemon().getScheduler() instanceof TimingWheelScheduler) {
+            return ((TimingWheelScheduler) getDaemon().getScheduler()).getMaxLateness();
+        } else {
+            return 0L;
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getPersistQueueDepth() {
+        final PersistOperationQueue queue = PersistOperationQueue.getRunningInstance();
+        return queue == null ? 0L : queue.getQueueDepth();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getPersistDropped() {
+        final PersistOperationQueue queue = PersistOperationQueue.getRunningInstance();
+        return queue == null ? 0L : queue.getDropped();
+    }
+
     private ThreadPoolExecutor getExecutor() {
+        if (getDaemon().getScheduler() instanceof TimingWheelScheduler) {
+            return (ThreadPoolExecutor) ((TimingWheelScheduler) getDaemon().getScheduler()).getRunner();
+        }
         return (ThreadPoolExecutor) ((LegacyScheduler) getDaemon().getScheduler()).getRunner();
     }
 
     private boolean getThreadPoolStatsStatus() {
-        return (getDaemon().getScheduler() instanceof LegacyScheduler);
+        return (getDaemon().getScheduler() instanceof LegacyScheduler || getDaemon().getScheduler() instanceof TimingWheelScheduler);
     }
 }
@@ -71,4 +71,29 @@ public interface CollectdMBean extends BaseOnmsMBean {
      * @return The ratio of completed to scheduled collection tasks since collector startup
      */
     public double getTaskCompletionRatio();
+
+    /**
+     * @return The number of collection tasks currently waiting in the scheduler
+     */
+    public long getSchedulerQueueDepth();
+
+    /**
+     * @return The average delay in milliseconds between the time a collection task was due and the time it was started (timing wheel scheduler only)
+     */
+    public double getSchedulerAverageLateness();
+
+    /**
+     * @return The largest delay in milliseconds between the time a collection task was due and the time it was started (timing wheel scheduler only)
+     */
+    public long getSchedulerMaxLateness();
+
+    /**
+     * @return The number of collected samples waiting to be written to disk (write-behind persistence only)
+     */
+    public long getPersistQueueDepth();
+
+    /**
+     * @return The number of collected samples dropped because the write-behind queue was full
+     */
+    public long getPersistDropped();
 }
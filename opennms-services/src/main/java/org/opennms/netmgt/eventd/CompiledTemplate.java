@@ -0,0 +1,414 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.eventd;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.opennms.netmgt.EventConstants;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.Parm;
+import org.opennms.netmgt.xml.event.Value;
+
+/**
+ * A logmsg, descr, operinstruct or notification text that has been parsed
+ * into literal text and <code>%token%</code> segments, so that expanding it
+ * for an event does not have to scan the text again.  The tokens that map
+ * directly onto an event field or parameter are resolved to an accessor
+ * when the template is compiled; all others are looked up through
+ * {@link EventUtil#getValueOfParm(String, Event)}, as before.
+ *
+ * <p>Templates are cached by their text, which covers the definitions in
+ * eventconf and the notifications since they are expanded over and over.
+ * The cache is bounded, since callers also expand one-off strings; the
+ * least recently used templates are dropped first.</p>
+ */
+final class CompiledTemplate {
+
+    static final int MAX_CACHED_TEMPLATES = 20000;
+
+    // keep the buffers of huge expansions from staying around
+    private static final int MAX_RETAINED_BUFFER = 16384;
+
+    // same check as the interpreted expansion used, including its handling of line terminators
+    private static final Pattern WHITESPACE = Pattern.compile(".*\\s.*");
+
+    private static final Pattern NUMBERED_PARM = Pattern.compile("parm\\[#(\\d{1,9})\\]");
+
+    private static final Pattern NAMED_PARM = Pattern.compile("parm\\[([^\\]]*)\\]");
+
+    // access ordered, so the eldest entry is the least recently used one
+    private static final Map<String, CompiledTemplate> s_templates = new LinkedHashMap<String, CompiledTemplate>(1024, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, CompiledTemplate> eldest) {
+            return size() > MAX_CACHED_TEMPLATES;
+        }
+    };
+
+    private static final ThreadLocal<StringBuilder> s_buffer = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(256);
+        }
+    };
+
+    /**
+     * Resolves the raw value of a token for an event.
+     */
+    private interface Accessor {
+        String getValue(Event event);
+    }
+
+    private static final Map<String, Accessor> s_accessors = new HashMap<String, Accessor>();
+
+    static {
+        s_accessors.put(EventUtil.TAG_UEI, new Accessor() {
+            @Override
+            public String getValue(final Event event) {
+                return event.getUei();
+            }
+        });
+        s_accessors.put(EventUtil.TAG_EVENT_DB_ID, new Accessor() {
+            @Override
+            public String getValue(final Event event) {
+                return event.hasDbid() ? Integer.toString(event.getDbid()) : "eventid-unknown";
+            }
+        });
+        s_accessors.put(EventUtil.TAG_SOURCE, new Accessor() {
+            @Override
+            public String getValue(final Event event) {
+                return event.getSource();
+            }
+        });
+        s_accessors.put(EventUtil.TAG_DPNAME, new Accessor() {
+            @Override
+            public String getValue(final Event event) {
+                return event.getDistPoller();
+            }
+        });
+        s_accessors.put(EventUtil.TAG_DESCR, new Accessor() {
+            @Override
+            public String getValue(final Event event) {
+                return event.getDescr();
+            }
+        });
+        s_accessors.put(EventUtil.TAG_NODEID, new Accessor() {
+            @Override
+            public String getValue(final Event event) {
+                return Long.toString(event.getNodeid());
+            }
+        });
+        s_accessors.put(EventUtil.TAG_HOST, new Accessor() {
+            @Override
+            public String getValue(final Event event) {
+                return event.getHost();
+            }
+        });
+        s_accessors.put(EventUtil.TAG_INTERFACE, new Accessor() {
+            @Override
+            public String getValue(final Event event) {
+                return event.getInterface();
+            }
+        });
+        s_accessors.put(EventUtil.TAG_IFINDEX, new Accessor() {
+            @Override
+            public String getValue(final Event event) {
+                return event.hasIfIndex() ? Integer.toString(event.getIfIndex()) : "N/A";
+            }
+        });
+        s_accessors.put(EventUtil.TAG_PERCENT_SIGN, new Accessor() {
+            @Override
+            public String getValue(final Event event) {
+                return "%";
+            }
+        });
+        s_accessors.put(EventUtil.TAG_SNMPHOST, new Accessor() {
+            @Override
+            public String getValue(final Event event) {
+                return event.getSnmphost();
+            }
+        });
+        s_accessors.put(EventUtil.TAG_SERVICE, new Accessor() {
+            @Override
+            public String getValue(final Event event) {
+                return event.getService();
+            }
+        });
+        s_accessors.put(EventUtil.TAG_SEVERITY, new Accessor() {
+            @Override
+            public String getValue(final Event event) {
+                return event.getSeverity();
+            }
+        });
+        s_accessors.put(EventUtil.TAG_OPERINSTR, new Accessor() {
+            @Override
+            public String getValue(final Event event) {
+                return event.getOperinstruct();
+            }
+        });
+        s_accessors.put(EventUtil.TAG_MOUSEOVERTEXT, new Accessor() {
+            @Override
+            public String getValue(final Event event) {
+                return event.getMouseovertext();
+            }
+        });
+        s_accessors.put(EventUtil.NUM_PARMS_STR, new Accessor() {
+            @Override
+            public String getValue(final Event event) {
+                return String.valueOf(event.getParmCollection().size());
+            }
+        });
+    }
+
+    private final String m_template;
+    private final Segment[] m_segments;
+    private final boolean m_hasTokens;
+
+    /**
+     * A piece of a template.
+     */
+    private abstract static class Segment {
+        abstract void append(StringBuilder buf, Event event, Map<String, Map<String, String>> decode);
+    }
+
+    private static final class Literal extends Segment {
+        private final String m_text;
+
+        private Literal(final String text) {
+            m_text = text;
+        }
+
+        @Override
+        void append(final StringBuilder buf, final Event event, final Map<String, Map<String, String>> decode) {
+            buf.append(m_text);
+        }
+    }
+
+    private static final class Token extends Segment {
+        private final String m_parm;
+        private final Accessor m_accessor;
+
+        private Token(final String parm, final Accessor accessor) {
+            m_parm = parm;
+            m_accessor = accessor;
+        }
+
+        @Override
+        void append(final StringBuilder buf, final Event event, final Map<String, Map<String, String>> decode) {
+            final String parmVal;
+            if (m_accessor == null) {
+                parmVal = EventUtil.getValueOfParm(m_parm, event);
+            } else {
+                final String value = m_accessor.getValue(event);
+                parmVal = value == null ? null : value.trim();
+            }
+            if (parmVal == null) {
+                return;
+            }
+
+            final Map<String, String> values = decode == null ? null : decode.get(m_parm);
+            if (values != null && values.containsKey(parmVal)) {
+                buf.append(values.get(parmVal)).append('(').append(parmVal).append(')');
+            } else {
+                buf.append(parmVal);
+            }
+        }
+    }
+
+    private CompiledTemplate(final String template, final List<Segment> segments, final boolean hasTokens) {
+        m_template = template;
+        m_segments = segments.toArray(new Segment[segments.size()]);
+        m_hasTokens = hasTokens;
+    }
+
+    /**
+     * Returns the compiled form of a template, from the cache if it has been
+     * compiled before.
+     *
+     * @param template the text to expand
+     * @return the compiled template
+     */
+    static CompiledTemplate getTemplate(final String template) {
+        synchronized (s_templates) {
+            final CompiledTemplate compiled = s_templates.get(template);
+            if (compiled != null) {
+                return compiled;
+            }
+        }
+        // compile outside the lock; a template compiled twice at once is harmless
+        final CompiledTemplate compiled = compile(template);
+        synchronized (s_templates) {
+            s_templates.put(template, compiled);
+        }
+        return compiled;
+    }
+
+    /**
+     * Parses a template into its segments.  The text is split on the
+     * <code>%</code> signs exactly as the interpreted expansion did: a pair
+     * of signs with whitespace in between is kept as literal text, and an
+     * unpaired sign and whatever follows it is literal text too.
+     *
+     * @param template the text to expand
+     * @return the compiled template
+     */
+    static CompiledTemplate compile(final String template) {
+        final List<Segment> segments = new ArrayList<Segment>();
+        final StringBuilder literal = new StringBuilder();
+        boolean hasTokens = false;
+
+        int pos = 0;
+        int start;
+        while ((start = template.indexOf(EventUtil.PERCENT, pos)) != -1) {
+            literal.append(template, pos, start);
+
+            final int end = template.indexOf(EventUtil.PERCENT, start + 1);
+            if (end == -1) {
+                pos = start;
+                break;
+            }
+
+            final String parm = template.substring(start + 1, end);
+            if (WHITESPACE.matcher(parm).matches()) {
+                literal.append(EventUtil.PERCENT);
+                pos = start + 1;
+                continue;
+            }
+
+            if (literal.length() > 0) {
+                segments.add(new Literal(literal.toString()));
+                literal.setLength(0);
+            }
+            segments.add(new Token(parm, getAccessor(parm)));
+            hasTokens = true;
+            pos = end + 1;
+        }
+
+        literal.append(template, pos, template.length());
+        if (literal.length() > 0) {
+            segments.add(new Literal(literal.toString()));
+        }
+
+        return new CompiledTemplate(template, segments, hasTokens);
+    }
+
+    private static Accessor getAccessor(final String parm) {
+        final Accessor accessor = s_accessors.get(parm);
+        if (accessor != null) {
+            return accessor;
+        }
+
+        // the parm[...] forms are checked in the same order as getValueOfParm
+        if (parm.equals(EventUtil.PARMS_VALUES) || parm.equals(EventUtil.PARMS_NAMES) || parm.equals(EventUtil.PARMS_ALL)) {
+            return null;
+        }
+
+        Matcher m = NUMBERED_PARM.matcher(parm);
+        if (m.matches()) {
+            return numberedParm(Integer.parseInt(m.group(1)));
+        }
+        if (parm.startsWith(EventUtil.PARM_NUM_PREFIX) || parm.startsWith(EventUtil.PARM_NAME_NUMBERED_PREFIX)) {
+            return null;
+        }
+
+        m = NAMED_PARM.matcher(parm);
+        if (m.matches()) {
+            return namedParm(m.group(1));
+        }
+
+        return null;
+    }
+
+    private static Accessor numberedParm(final int parmNum) {
+        return new Accessor() {
+            @Override
+            public String getValue(final Event event) {
+                final List<Parm> parms = event.getParmCollection();
+                if (parms == null || parmNum < 1 || parmNum > parms.size()) {
+                    return null;
+                }
+                final Value value = parms.get(parmNum - 1).getValue();
+                return value == null ? null : EventConstants.getValueAsString(value);
+            }
+        };
+    }
+
+    private static Accessor namedParm(final String name) {
+        return new Accessor() {
+            @Override
+            public String getValue(final Event event) {
+                for (final Parm parm : event.getParmCollection()) {
+                    final String parmName = parm.getParmName();
+                    if (parmName != null && parmName.trim().equals(name)) {
+                        final Value value = parm.getValue();
+                        if (value != null) {
+                            return EventConstants.getValueAsString(value);
+                        }
+                    }
+                }
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Expands the template for an event.
+     *
+     * @param event the event to take the values from
+     * @param decode the varbind decodes, or null
+     * @return the expanded text, or null if it is the same as the template
+     */
+    String expand(final Event event, final Map<String, Map<String, String>> decode) {
+        if (!m_hasTokens) {
+            return null;
+        }
+
+        StringBuilder buf = s_buffer.get();
+        if (buf.capacity() > MAX_RETAINED_BUFFER) {
+            buf = new StringBuilder(256);
+            s_buffer.set(buf);
+        }
+        buf.setLength(0);
+
+        for (final Segment segment : m_segments) {
+            segment.append(buf, event, decode);
+        }
+
+        final String expanded = buf.toString();
+        return expanded.equals(m_template) ? null : expanded;
+    }
+}
@@ -28,6 +28,7 @@
 
 package org.opennms.netmgt.eventd;
 
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -36,12 +37,20 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
 
 import org.opennms.core.logging.Logging;
 import org.opennms.core.concurrent.LogPreservingThreadFactory;
@@ -50,6 +59,7 @@ import org.opennms.netmgt.model.events.EventIpcManager;
 import org.opennms.netmgt.model.events.EventIpcManagerProxy;
 import org.opennms.netmgt.model.events.EventListener;
 import org.opennms.netmgt.model.events.EventProxyException;
+import org.opennms.netmgt.model.events.ParallelEventListener;
 import org.opennms.netmgt.xml.event.Event;
 import org.opennms.netmgt.xml.event.Events;
 import org.opennms.netmgt.xml.event.Log;
@@ -95,19 +105,23 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
     }
 
     /**
-     * Hash table of list of event listeners keyed by event UEI
+     * Hash table of list of event listeners keyed by event UEI.  This is an
+     * immutable snapshot that is replaced (while holding the lock on this
+     * object) whenever listeners are added or removed, so that
+     * {@link #broadcastNow(Event)} can read it without locking.
      */
-    private Map<String, List<EventListener>> m_ueiListeners = new HashMap<String, List<EventListener>>();
+    private volatile Map<String, List<EventListener>> m_ueiListeners = Collections.emptyMap();
 
     /**
-     * The list of event listeners interested in all events
+     * The list of event listeners interested in all events.  Replaced
+     * copy-on-write like {@link #m_ueiListeners}.
      */
-    private List<EventListener> m_listeners = new ArrayList<EventListener>();
+    private volatile List<EventListener> m_listeners = Collections.emptyList();
 
     /**
      * Hash table of event listener threads keyed by the listener's id
      */
-    private Map<String, EventListenerExecutor> m_listenerThreads = new HashMap<String, EventListenerExecutor>();
+    private final Map<String, EventListenerExecutor> m_listenerThreads = new ConcurrentHashMap<String, EventListenerExecutor>();
 
     /**
      * The thread pool handling the events
@@ -123,52 +137,95 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
     private EventIpcManagerProxy m_eventIpcManagerProxy;
 
     /**
-     * A thread dedicated to each listener. The events meant for each listener
-     * is added to an execution queue when the 'sendNow()' is called. The
-     * ListenerThread reads events off of this queue and sends them to the
-     * appropriate listener.
+     * The threads dedicated to each listener. The events meant for each
+     * listener are added to an execution queue when the 'sendNow()' is
+     * called. The listener threads read events off of this queue and send
+     * them to the appropriate listener.
+     *
+     * A plain {@link EventListener} gets a single thread.  A
+     * {@link ParallelEventListener} gets one single-threaded executor per
+     * requested thread and each event goes to the executor picked by its
+     * partition key, which keeps the ordering of events that share a key.
+     * The handler queue length bounds the events queued for the listener as
+     * a whole, not for each of its threads.
      */
-    private static class EventListenerExecutor {
+    private static class EventListenerExecutor implements EventListenerStatsMBean {
         /**
          * Listener to which this thread is dedicated
          */
         private final EventListener m_listener;
 
         /**
-         * The thread that is running this runnable.
+         * The threads that are running this runnable, one per partition.
          */
-        private final ExecutorService m_delegateThread;
+        private final ThreadPoolExecutor[] m_delegateThreads;
+
+        /**
+         * The most events queued over all threads, 0 for no limit.
+         */
+        private final int m_queueLimit;
+
+        private final AtomicInteger m_queued = new AtomicInteger();
+
+        private final AtomicLong m_eventsDelivered = new AtomicLong();
+        private final AtomicLong m_eventsDiscarded = new AtomicLong();
+        private final AtomicLong m_totalLatency = new AtomicLong();
+        private volatile long m_lastLatency = 0;
+        private volatile long m_maxLatency = 0;
 
         /**
          * Constructor
          */
         EventListenerExecutor(EventListener listener, Integer handlerQueueLength) {
             m_listener = listener;
-            // You could also do Executors.newSingleThreadExecutor() here
-            m_delegateThread = new ThreadPoolExecutor(
-                    1,
-                    1,
-                    0L,
-                    TimeUnit.MILLISECONDS,
-                    handlerQueueLength == null ? new LinkedBlockingQueue<Runnable>() : new LinkedBlockingQueue<Runnable>(handlerQueueLength),
-                    // This ThreadFactory will ensure that the log prefix of the calling thread
-                    // is used for all events that this listener handles. Therefore, if Notifd
-                    // registers for an event then all logs for handling that event will end up
-                    // inside notifd.log.
-                    new LogPreservingThreadFactory(m_listener.getName(), 1, true),
-                    new RejectedExecutionHandler() {
-                        @Override
-                        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
-                            LOG.warn("Listener {}'s event queue is full, discarding event", m_listener.getName());
-                        }
-                    }
-            );
+
+            final int threads = listener instanceof ParallelEventListener ? Math.max(1, ((ParallelEventListener)listener).getNumberOfThreads()) : 1;
+
+            // This ThreadFactory will ensure that the log prefix of the calling thread
+            // is used for all events that this listener handles. Therefore, if Notifd
+            // registers for an event then all logs for handling that event will end up
+            // inside notifd.log.
+            final LogPreservingThreadFactory threadFactory = new LogPreservingThreadFactory(m_listener.getName(), threads, true);
+
+            final RejectedExecutionHandler rejectedHandler = new RejectedExecutionHandler() {
+                @Override
+                public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                    m_queued.decrementAndGet();
+                    m_eventsDiscarded.incrementAndGet();
+                    LOG.warn("Listener {} is stopped, discarding event", m_listener.getName());
+                }
+            };
+
+            m_queueLimit = handlerQueueLength == null ? 0 : Math.max(1, handlerQueueLength.intValue());
+
+            m_delegateThreads = new ThreadPoolExecutor[threads];
+            for (int i = 0; i < threads; i++) {
+                // You could also do Executors.newSingleThreadExecutor() here
+                m_delegateThreads[i] = new ThreadPoolExecutor(
+                        1,
+                        1,
+                        0L,
+                        TimeUnit.MILLISECONDS,
+                        new LinkedBlockingQueue<Runnable>(),
+                        threadFactory,
+                        rejectedHandler
+                );
+            }
         }
 
         public void addEvent(final Event event) {
-            m_delegateThread.execute(new Runnable() {
+            if (m_queued.incrementAndGet() > m_queueLimit && m_queueLimit > 0) {
+                m_queued.decrementAndGet();
+                m_eventsDiscarded.incrementAndGet();
+                LOG.warn("Listener {}'s event queue is full, discarding event", m_listener.getName());
+                return;
+            }
+
+            final long queued = System.currentTimeMillis();
+            getExecutor(event).execute(new Runnable() {
                 @Override
                 public void run() {
+                    m_queued.decrementAndGet();
                     try {
                         LOG.info("run: calling onEvent on {} for event {} dbid {} with time {}", m_listener.getName(), event.getUei(), event.getDbid(), event.getTime());
 
@@ -181,16 +238,89 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
                         }
                     } catch (Throwable t) {
                         LOG.warn("run: an unexpected error occured during ListenerThread {}", m_listener.getName(), t);
+                    } finally {
+                        eventHandled(System.currentTimeMillis() - queued);
                     }
                 }
             });
         }
 
+        private ThreadPoolExecutor getExecutor(final Event event) {
+            if (m_delegateThreads.length == 1) {
+                return m_delegateThreads[0];
+            }
+
+            Object key = ((ParallelEventListener)m_listener).getPartitionKey(event);
+            if (key == null) {
+                key = event.getUei();
+            }
+            if (key == null) {
+                return m_delegateThreads[0];
+            }
+
+            // spread the hash bits before picking a partition, Integer and Long keys hash to themselves
+            int hash = key.hashCode();
+            hash ^= (hash >>> 16);
+            return m_delegateThreads[(hash & Integer.MAX_VALUE) % m_delegateThreads.length];
+        }
+
+        private void eventHandled(final long latency) {
+            m_eventsDelivered.incrementAndGet();
+            m_totalLatency.addAndGet(latency);
+            m_lastLatency = latency;
+            if (latency > m_maxLatency) {
+                m_maxLatency = latency;
+            }
+        }
+
         /**
          * Stops the execution of this listener.
          */
         public void stop() {
-            m_delegateThread.shutdown();
+            for (final ThreadPoolExecutor delegateThread : m_delegateThreads) {
+                delegateThread.shutdown();
+            }
+        }
+
+        @Override
+        public String getListenerName() {
+            return m_listener.getName();
+        }
+
+        @Override
+        public int getThreads() {
+            return m_delegateThreads.length;
+        }
+
+        @Override
+        public int getQueueDepth() {
+            return m_queued.get();
+        }
+
+        @Override
+        public long getEventsDelivered() {
+            return m_eventsDelivered.get();
+        }
+
+        @Override
+        public long getEventsDiscarded() {
+            return m_eventsDiscarded.get();
+        }
+
+        @Override
+        public long getLastLatency() {
+            return m_lastLatency;
+        }
+
+        @Override
+        public double getAverageLatency() {
+            final long delivered = m_eventsDelivered.get();
+            return delivered == 0 ? 0.0 : (double) m_totalLatency.get() / delivered;
+        }
+
+        @Override
+        public long getMaxLatency() {
+            return m_maxLatency;
         }
     }
 
@@ -264,12 +394,17 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
     public void broadcastNow(Event event) {
         LOG.debug("Event ID {} to be broadcasted: {}", event.getDbid(), event.getUei());
 
-        if (m_listeners.isEmpty()) {
+        // Take one snapshot of each routing table so that the event sees a
+        // consistent view while listeners are (un)registered concurrently
+        final List<EventListener> listeners = m_listeners;
+        final Map<String, List<EventListener>> ueiListeners = m_ueiListeners;
+
+        if (listeners.isEmpty()) {
             LOG.debug("No listeners interested in all events");
         }
 
         // Send to listeners interested in receiving all events
-        for (EventListener listener : m_listeners) {
+        for (EventListener listener : listeners) {
             queueEventToListener(event, listener);
         }
 
@@ -284,8 +419,9 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
          */
         Set<EventListener> sentToListeners = new HashSet<EventListener>();
         for (String uei = event.getUei(); uei.length() > 0; ) {
-            if (m_ueiListeners.containsKey(uei)) {
-                for (EventListener listener : m_ueiListeners.get(uei)) {
+            final List<EventListener> listenersForUei = ueiListeners.get(uei);
+            if (listenersForUei != null) {
+                for (EventListener listener : listenersForUei) {
                     if (!sentToListeners.contains(listener)) {
                         queueEventToListener(event, listener);
                         sentToListeners.add(listener);
@@ -310,7 +446,13 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
     }
 
     private void queueEventToListener(Event event, EventListener listener) {
-        m_listenerThreads.get(listener.getName()).addEvent(event);
+        final EventListenerExecutor listenerThread = m_listenerThreads.get(listener.getName());
+        if (listenerThread == null) {
+            // the listener was removed after we took our snapshot of the routing tables
+            LOG.debug("Listener {} was removed, not queueing event ID {}", listener.getName(), event.getDbid());
+            return;
+        }
+        listenerThread.addEvent(event);
     }
 
     /**
@@ -432,10 +574,10 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
         }
 
         // stop and remove the listener thread for this listener
-        if (m_listenerThreads.containsKey(listener.getName())) {
-            m_listenerThreads.get(listener.getName()).stop();
-
-            m_listenerThreads.remove(listener.getName());
+        final EventListenerExecutor listenerThread = m_listenerThreads.remove(listener.getName());
+        if (listenerThread != null) {
+            listenerThread.stop();
+            unregisterListenerMBean(listener);
         }
     }
 
@@ -450,44 +592,101 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
         
         EventListenerExecutor listenerThread = new EventListenerExecutor(listener, m_handlerQueueLength);
         m_listenerThreads.put(listener.getName(), listenerThread);
+        registerListenerMBean(listener, listenerThread);
+    }
+
+    private static ObjectName getListenerObjectName(final EventListener listener) throws MalformedObjectNameException {
+        return new ObjectName("OpenNMS:Name=Eventd,Listener=" + ObjectName.quote(listener.getName()));
+    }
+
+    /**
+     * Expose the dispatch statistics of this listener through JMX.  A stale
+     * registration for a listener of the same name is replaced.
+     */
+    private static void registerListenerMBean(final EventListener listener, final EventListenerExecutor listenerThread) {
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = getListenerObjectName(listener);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(new StandardMBean(listenerThread, EventListenerStatsMBean.class), name);
+        } catch (final Exception e) {
+            LOG.warn("Unable to register JMX statistics for listener {}", listener.getName(), e);
+        }
+    }
+
+    private static void unregisterListenerMBean(final EventListener listener) {
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = getListenerObjectName(listener);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (final Exception e) {
+            LOG.warn("Unable to unregister JMX statistics for listener {}", listener.getName(), e);
+        }
     }
 
     /**
      * Add to uei listeners.
      */
     private void addUeiForListener(String uei, EventListener listener) {
-        // Ensure there is a list for this UEI
-        if (!m_ueiListeners.containsKey(uei)) {
-            m_ueiListeners.put(uei, new ArrayList<EventListener>());
-        }
-        
-        List<EventListener> listenersList = m_ueiListeners.get(uei);
-        if (!listenersList.contains(listener)) {
-            listenersList.add(listener);
+        final List<EventListener> current = m_ueiListeners.get(uei);
+        if (current != null && current.contains(listener)) {
+            return;
         }
+
+        final List<EventListener> listenersList = current == null ? new ArrayList<EventListener>(1) : new ArrayList<EventListener>(current);
+        listenersList.add(listener);
+
+        final Map<String, List<EventListener>> ueiListeners = new HashMap<String, List<EventListener>>(m_ueiListeners);
+        ueiListeners.put(uei, Collections.unmodifiableList(listenersList));
+        m_ueiListeners = Collections.unmodifiableMap(ueiListeners);
     }
 
     /**
      * Remove UEI for this listener.
      */
     private void removeUeiForListener(String uei, EventListener listener) {
-        if (m_ueiListeners.containsKey(uei)) {
-            m_ueiListeners.get(uei).remove(listener);
+        final List<EventListener> current = m_ueiListeners.get(uei);
+        if (current == null || !current.contains(listener)) {
+            return;
         }
+
+        final List<EventListener> listenersList = new ArrayList<EventListener>(current);
+        listenersList.remove(listener);
+
+        final Map<String, List<EventListener>> ueiListeners = new HashMap<String, List<EventListener>>(m_ueiListeners);
+        if (listenersList.isEmpty()) {
+            ueiListeners.remove(uei);
+        } else {
+            ueiListeners.put(uei, Collections.unmodifiableList(listenersList));
+        }
+        m_ueiListeners = Collections.unmodifiableMap(ueiListeners);
     }
 
     /**
      * Add listener to list of listeners listening for all events.
      */
     private boolean addMatchAllForListener(EventListener listener) {
-        return m_listeners.add(listener);
+        final List<EventListener> listeners = new ArrayList<EventListener>(m_listeners);
+        final boolean added = listeners.add(listener);
+        m_listeners = Collections.unmodifiableList(listeners);
+        return added;
     }
 
     /**
      * Remove from list of listeners listening for all events.
      */
     private boolean removeMatchAllForListener(EventListener listener) {
-        return m_listeners.remove(listener);
+        if (!m_listeners.contains(listener)) {
+            return false;
+        }
+        final List<EventListener> listeners = new ArrayList<EventListener>(m_listeners);
+        final boolean removed = listeners.remove(listener);
+        m_listeners = Collections.unmodifiableList(listeners);
+        return removed;
     }
 
     /**
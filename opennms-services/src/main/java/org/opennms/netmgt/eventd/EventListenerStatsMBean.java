@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.eventd;
+
+/**
+ * Dispatch statistics for a single event listener registered with
+ * {@link EventIpcManagerDefaultImpl}.  One of these is registered in the
+ * platform MBean server per listener as
+ * <code>OpenNMS:Name=Eventd,Listener=&lt;listener name&gt;</code>.
+ */
+public interface EventListenerStatsMBean {
+    /**
+     * @return the name of the listener
+     */
+    public String getListenerName();
+
+    /**
+     * @return the number of threads events are dispatched on
+     */
+    public int getThreads();
+
+    /**
+     * @return the number of events waiting to be handed to the listener
+     */
+    public int getQueueDepth();
+
+    /**
+     * @return the number of events handed to the listener
+     */
+    public long getEventsDelivered();
+
+    /**
+     * @return the number of events discarded because the queue was full
+     */
+    public long getEventsDiscarded();
+
+    /**
+     * @return the time in milliseconds between broadcast and the end of
+     * onEvent() for the most recently handled event
+     */
+    public long getLastLatency();
+
+    /**
+     * @return the average time in milliseconds between broadcast and the
+     * end of onEvent()
+     */
+    public double getAverageLatency();
+
+    /**
+     * @return the longest time in milliseconds between broadcast and the
+     * end of onEvent()
+     */
+    public long getMaxLatency();
+}
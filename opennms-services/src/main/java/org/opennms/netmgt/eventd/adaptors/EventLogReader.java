@@ -0,0 +1,253 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.eventd.adaptors;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.util.StreamReaderDelegate;
+
+import org.opennms.core.xml.JaxbUtils;
+import org.opennms.netmgt.xml.event.Event;
+
+/**
+ * Reads the events of an event log XML document one at a time, unmarshalling
+ * each <code>&lt;event&gt;</code> element as it is reached instead of
+ * building the whole <code>&lt;log&gt;</code> tree first. The events are
+ * read into the default event namespace whether or not the document declares
+ * it, as {@link JaxbUtils} does for whole documents.
+ *
+ * <p>Instances are not thread safe. The unmarshallers are pooled and shared
+ * by all readers, so a reader must be closed when it is no longer used.</p>
+ */
+public final class EventLogReader {
+
+    private static final String EVENT_NAMESPACE = "http://xmlns.opennms.org/xsd/event";
+
+    private static final int UNMARSHALLER_POOL_SIZE = 16;
+
+    private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+
+    private static final BlockingQueue<Unmarshaller> UNMARSHALLERS = new ArrayBlockingQueue<Unmarshaller>(UNMARSHALLER_POOL_SIZE);
+
+    private final XMLStreamReader m_reader;
+
+    private Unmarshaller m_unmarshaller;
+
+    /**
+     * The depth of the current element, the log element being at depth 1.
+     */
+    private int m_depth = 0;
+
+    /**
+     * Set while the reader is inside the events element of the log.
+     */
+    private boolean m_inEvents = false;
+
+    /**
+     * Creates a reader for the event log on the stream.
+     *
+     * @param in the event log XML document
+     * @throws javax.xml.stream.XMLStreamException if the document cannot be read
+     */
+    public EventLogReader(final InputStream in) throws XMLStreamException {
+        this(in, 0);
+    }
+
+    /**
+     * Creates a reader for the event log on the stream that fails once more
+     * than <code>maxSize</code> bytes are read.
+     *
+     * @param in the event log XML document
+     * @param maxSize the largest document read in bytes, or 0 for no limit
+     * @throws javax.xml.stream.XMLStreamException if the document cannot be read
+     */
+    public EventLogReader(final InputStream in, final long maxSize) throws XMLStreamException {
+        final InputStream stream = maxSize > 0 ? new LimitedInputStream(in, maxSize) : in;
+        m_reader = new EventNamespaceReader(INPUT_FACTORY.createXMLStreamReader(stream));
+    }
+
+    /**
+     * Returns the next event of the log, or null when all of them were read.
+     *
+     * @return the next {@link org.opennms.netmgt.xml.event.Event} or null
+     * @throws javax.xml.stream.XMLStreamException if the document is
+     *             malformed, too large, or an event cannot be unmarshalled.
+     *             The events returned before remain valid.
+     */
+    public Event next() throws XMLStreamException {
+        int type = m_reader.getEventType();
+        while (type != XMLStreamConstants.END_DOCUMENT) {
+            if (type == XMLStreamConstants.START_ELEMENT) {
+                m_depth++;
+                if (m_depth == 2) {
+                    m_inEvents = "events".equals(m_reader.getLocalName());
+                } else if (m_depth == 3 && m_inEvents && "event".equals(m_reader.getLocalName())) {
+                    // the unmarshaller consumes the element through its end tag
+                    m_depth--;
+                    return unmarshalEvent();
+                }
+            } else if (type == XMLStreamConstants.END_ELEMENT) {
+                m_depth--;
+                if (m_depth == 1) {
+                    m_inEvents = false;
+                }
+            }
+            type = m_reader.next();
+        }
+        return null;
+    }
+
+    /**
+     * Releases the unmarshaller and the XML stream. The underlying input
+     * stream is left open.
+     */
+    public void close() {
+        if (m_unmarshaller != null) {
+            UNMARSHALLERS.offer(m_unmarshaller);
+            m_unmarshaller = null;
+        }
+        try {
+            m_reader.close();
+        } catch (final XMLStreamException e) {
+            // nothing left to release
+        }
+    }
+
+    private Event unmarshalEvent() throws XMLStreamException {
+        if (m_unmarshaller == null) {
+            m_unmarshaller = UNMARSHALLERS.poll();
+        }
+        try {
+            if (m_unmarshaller == null) {
+                m_unmarshaller = JaxbUtils.getContextFor(Event.class).createUnmarshaller();
+            }
+            return m_unmarshaller.unmarshal(m_reader, Event.class).getValue();
+        } catch (final JAXBException e) {
+            final Throwable cause = e.getLinkedException() == null ? e : e.getLinkedException();
+            if (cause instanceof XMLStreamException) {
+                throw (XMLStreamException)cause;
+            }
+            throw new XMLStreamException("Unable to unmarshal event: " + e.getMessage(), m_reader.getLocation(), cause);
+        }
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        final XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        return factory;
+    }
+
+    /**
+     * Puts every element of the document into the event namespace, like the
+     * {@link org.opennms.core.xml.SimpleNamespaceFilter} used when a whole
+     * log is unmarshalled.
+     */
+    private static final class EventNamespaceReader extends StreamReaderDelegate {
+        EventNamespaceReader(final XMLStreamReader reader) {
+            super(reader);
+        }
+
+        @Override
+        public String getNamespaceURI() {
+            if (isStartElement() || isEndElement()) {
+                return EVENT_NAMESPACE;
+            }
+            return super.getNamespaceURI();
+        }
+
+        @Override
+        public QName getName() {
+            return new QName(EVENT_NAMESPACE, getLocalName());
+        }
+    }
+
+    /**
+     * Fails the read once more than the allowed number of bytes were read.
+     */
+    private static final class LimitedInputStream extends FilterInputStream {
+        private final long m_maxSize;
+        private long m_remaining;
+
+        LimitedInputStream(final InputStream in, final long maxSize) {
+            super(in);
+            m_maxSize = maxSize;
+            m_remaining = maxSize;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int ch = super.read();
+            if (ch != -1) {
+                consumed(1);
+            }
+            return ch;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            final int count = super.read(b, off, len);
+            if (count > 0) {
+                consumed(count);
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            final long count = super.skip(n);
+            consumed(count);
+            return count;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private void consumed(final long count) throws IOException {
+            m_remaining -= count;
+            if (m_remaining < 0) {
+                throw new IOException("The event log is larger than " + m_maxSize + " bytes");
+            }
+        }
+    }
+}
@@ -39,33 +39,30 @@ import java.io.StringWriter;
 import java.io.Writer;
 import java.net.InetAddress;
 import java.net.Socket;
-import java.text.DateFormat;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Comparator;
-import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.apache.commons.io.IOUtils;
 import org.opennms.core.fiber.Fiber;
 import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.core.xml.JaxbUtils;
+import org.opennms.netmgt.eventd.UndeclaredEventException;
 import org.opennms.netmgt.eventd.adaptors.EventHandler;
+import org.opennms.netmgt.eventd.adaptors.EventLogReader;
 import org.opennms.netmgt.xml.event.Event;
 import org.opennms.netmgt.xml.event.EventReceipt;
-import org.opennms.netmgt.xml.event.Log;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.xml.sax.InputSource;
 
 /**
  * Provides the logic and context of execution necessary to actually process a
  * client's event XML document. When a new stream handler is created and
- * assigned to an execution context it will unmarshal the remote document. The
- * events from the remote document are then passed to the registered event
- * handlers. All successfully processed events are acknowledged to the client by
- * the generation of an XML event receipt.
+ * assigned to an execution context it will read the remote document. The
+ * events from the remote document are passed to the registered event handlers
+ * one at a time as they are read. All successfully processed events are
+ * acknowledged to the client by the generation of an XML event receipt.
  * 
  * @author <a href="mailto:weave@oculan.com">Brian Weaver </a>
  * @author <a href="http;//www.opennms.org">OpenNMS </a>
@@ -74,7 +71,16 @@ import org.xml.sax.InputSource;
 final class TcpStreamHandler implements Runnable {
     
     private static final Logger LOG = LoggerFactory.getLogger(TcpStreamHandler.class);
-    
+
+    /**
+     * The largest event log document accepted in bytes, 0 for no limit.
+     */
+    private static final long MAX_LOG_SIZE = Long.getLong("org.opennms.eventd.tcp.maxLogSize", 16L * 1024 * 1024);
+
+    private static final long MIN_QUEUE_FULL_DELAY = 10;
+
+    private static final long MAX_QUEUE_FULL_DELAY = 1000;
+
     /**
      * The registered list of event handlers. Each incoming event will be
      * passed to all event handlers. The event handlers <em>MUST NOT</em>
@@ -156,6 +162,71 @@ final class TcpStreamHandler implements Runnable {
         }
     }
 
+    /**
+     * Passes the event to every registered handler.  The handlers are copied
+     * first, so that waiting for a full queue does not keep handlers from
+     * being added or removed.
+     *
+     * @return true if at least one handler accepted the event
+     */
+    private boolean processEvent(final Event event) throws InterruptedException {
+        final List<EventHandler> handlers;
+        synchronized (m_handlers) {
+            handlers = new ArrayList<EventHandler>(m_handlers);
+        }
+
+        boolean accepted = false;
+        for (final EventHandler hdl : handlers) {
+            /*
+             * Process the event and log any errors,
+             *  but don't die on these errors
+             */
+            try {
+                LOG.debug("handling event: {}", event);
+
+                if (processEvent(hdl, event)) {
+                    accepted = true;
+                }
+            } catch (final InterruptedException e) {
+                throw e;
+            } catch (final Throwable t) {
+                LOG.warn("An exception occured while processing an event.", t);
+            }
+        }
+        return accepted;
+    }
+
+    /**
+     * Passes the event to the handler, waiting for as long as the eventd
+     * queue is full. The agent is held back by TCP flow control meanwhile
+     * instead of having its events dropped.
+     */
+    private boolean processEvent(final EventHandler hdl, final Event event) throws InterruptedException {
+        long delay = MIN_QUEUE_FULL_DELAY;
+        long waitingSince = 0;
+        int attempts = 0;
+        while (true) {
+            try {
+                final boolean accepted = hdl.processEvent(event);
+                if (attempts > 0) {
+                    LOG.info("Handed over an event from {} after {} attempts and {}ms waiting for room in the event queue", m_connection.getInetAddress(), attempts + 1, System.currentTimeMillis() - waitingSince);
+                }
+                return accepted;
+            } catch (final UndeclaredEventException e) {
+                if (m_stop || !(e.getCause() instanceof RejectedExecutionException)) {
+                    throw e;
+                }
+                if (attempts++ == 0) {
+                    waitingSince = System.currentTimeMillis();
+                }
+                // every rejected attempt is logged by the event manager, so
+                // back off quickly to at most one attempt per second
+                Thread.sleep(delay);
+                delay = Math.min(delay * 2, MAX_QUEUE_FULL_DELAY);
+            }
+        }
+    }
+
     /**
      * The main execution context for processing a remote XML document. Once the
      * document is processed and an event receipt is returned to the client the
@@ -251,179 +322,97 @@ final class TcpStreamHandler implements Runnable {
             // convert the pipe input stream into a buffered input stream
             final InputStream stream = new BufferedInputStream(pipeIn);
 
-            // Unmarshal the XML document
-            Log eLog = null;
+            /*
+             * Hand the events to the handlers one at a time as they are
+             * read. Nothing more is read from the pipe, and so from the
+             * socket, while an event is being handed over.
+             */
+            final EventReceipt receipt = new EventReceipt();
+            int eventCount = 0;
             boolean doCleanup = false;
+            EventLogReader reader = null;
             try {
-            	eLog = JaxbUtils.unmarshal(Log.class, new InputSource(stream));
-                LOG.debug("Event record converted");
+                reader = new EventLogReader(stream, MAX_LOG_SIZE);
+                Event event;
+                while ((event = reader.next()) != null) {
+                    eventCount++;
+                    if (processEvent(event) && event.getUuid() != null) {
+                        receipt.addUuid(event.getUuid());
+                    }
+                }
+                LOG.debug("Event record converted, {} events", eventCount);
+            } catch (final InterruptedException e) {
+                LOG.debug("The thread was interrupted while handing over an event.");
+                break MAINLOOP;
             } catch (final Exception e) {
-                LOG.error("Could not unmarshall the XML record.", e);
+                LOG.error("Could not unmarshall the XML record after {} events.", eventCount, e);
                 doCleanup = true;
             } finally {
-                if (stream != null) {
-                    IOUtils.closeQuietly(stream);
+                if (reader != null) {
+                    reader.close();
                 }
-            }
-
-            // clean up the data on the current pipe if necessary
-            if (doCleanup) {
-                /*
-                 * Cleanup a failed record. Need to read
-                 * the remaining bytes from the other thread
-                 * to synchronize up. The other thread might
-                 * be blocked writing.
-                 */
-                try {
-                    while (stream.read() != -1) {
-                        /* do nothing */;
+                if (doCleanup) {
+                    /*
+                     * Cleanup a failed record. Need to read
+                     * the remaining bytes from the other thread
+                     * to synchronize up. The other thread might
+                     * be blocked writing.
+                     */
+                    try {
+                        while (stream.read() != -1) {
+                            /* do nothing */;
+                        }
+                    } catch (final IOException e) {
+                        // do nothing
                     }
-                } catch (final IOException e) {
-                    // do nothing
                 }
+                IOUtils.closeQuietly(stream);
+            }
 
-                // start from the top!
+            if (eventCount == 0) {
+                LOG.debug("The agent sent an empty event stream");
                 continue MAINLOOP;
             }
 
-            // Now that we have a list of events, process them
-            final Event[] events = eLog.getEvents().getEvent();
-
-            // sort the events by time
-            Arrays.sort(events, new Comparator<Event>() {
-                @Override
-                public int compare(final Event e1, final Event e2) {
-                    final boolean e1t = (e1.getTime() != null);
-                    final boolean e2t = (e2.getTime() != null);
-                    if (e1t && !e2t) {
-                        return 1;
-                    } else if (!e1t && e2t) {
-                        return -1;
-                    } else if (!e1t && !e2t) {
-                        return 0;
-                    }
-
-                    final DateFormat fmt = DateFormat.getDateTimeInstance(DateFormat.FULL, DateFormat.FULL);
-
-                    Date de1 = null;
-                    try {
-                        de1 = fmt.parse(e1.getTime());
-                    } catch (final Throwable t) {
-                    }
-
-                    Date de2 = null;
-                    try {
-                        de2 = fmt.parse(e2.getTime());
-                    } catch (final Throwable t) {
-                    }
+            // acknowledge the events that were processed, even if the rest of the record failed
+            if (receipt.getUuidCount() > 0) {
+                // Transform it to XML and send it to the socket in one call
+                try {
+                    final Writer writer = new BufferedWriter(new OutputStreamWriter(m_connection.getOutputStream(), "UTF-8"));
+                    JaxbUtils.marshal(receipt, writer);
+                    writer.flush();
 
-                    if (de1 != null && de2 != null) {
-                        return (int) (de1.getTime() - de2.getTime());
-                    } else if (de1 == null && de2 != null) {
-                        return -1;
-                    } else if (de1 != null && de2 == null) {
-                        return 1;
-                    } else {
-                        return 0;
-                    }
-                }
-            });
-
-            // process the events
-            if (events != null && events.length != 0) {
-                final List<Event> okEvents = new ArrayList<Event>(events.length);
-
-                /*
-                 * This synchronization loop will hold onto the lock
-                 * for a while. If the handlers are going to change
-                 * often, which is shouldn't then might want to consider
-                 * duplicating the handlers into an array before processing
-                 * the events.
-                 *
-                 * Doing the synchronization in the outer loop prevents spending
-                 * lots of cycles doing synchronization when it should not
-                 * normally be necesary.
-                 */
-                synchronized (m_handlers) {
-                    for (final EventHandler hdl : m_handlers) {
-                        /*
-                         * get the handler and then have it process all
-                         * the events in the document before moving to the
-                         * next event handler.
-                         */
-                        for (final Event event : events) {
+                    synchronized (m_handlers) {
+                        for (final EventHandler hdl : m_handlers) {
                             /*
-                             * Process the event and log any errors,
-                             *  but don't die on these errors
+                             * Get the handler and then have it process all
+                             * the events in the document before moving to
+                             * the next event hander.
                              */
                             try {
-                            	LOG.debug("handling event: {}", event);
-
-                                // shortcut and BOTH parts MUST execute!
-                                if (hdl.processEvent(event)) {
-                                    if (!okEvents.contains(event)) {
-                                        okEvents.add(event);
-                                    }
-                                }
+                                hdl.receiptSent(receipt);
                             } catch (final Throwable t) {
-                                LOG.warn("An exception occured while processing an event.", t);
+                                LOG.warn("An exception occured while processing an event receipt.", t);
                             }
                         }
                     }
-                }
-
-                // Now process the good events and send a receipt message
-                boolean hasReceipt = false;
-                final EventReceipt receipt = new EventReceipt();
-                
-                for (final Event event : okEvents) {
-                    if (event.getUuid() != null) {
-                        receipt.addUuid(event.getUuid());
-                        hasReceipt = true;
-                    }
-                }
-
-                if (hasReceipt) {
-                    // Transform it to XML and send it to the socket in one call
-                    try {
-                    	final Writer writer = new BufferedWriter(new OutputStreamWriter(m_connection.getOutputStream(), "UTF-8"));
-                    	JaxbUtils.marshal(receipt, writer);
-                        writer.flush();
-
-                        synchronized (m_handlers) {
-                            for (final EventHandler hdl : m_handlers) {
-                                /*
-                                 * Get the handler and then have it process all
-                                 * the events in the document before moving to
-                                 * the next event hander.
-                                 */
-                                try {
-                                    hdl.receiptSent(receipt);
-                                } catch (final Throwable t) {
-                                    LOG.warn("An exception occured while processing an event receipt.", t);
-                                }
-                            }
-                        }
 
-                        if (LOG.isDebugEnabled()) {
-                            try {
-                            	final StringWriter swriter = new StringWriter();
-                            	JaxbUtils.marshal(receipt, swriter);
-
-                                LOG.debug("Sent Event Receipt {");
-                                LOG.debug(swriter.getBuffer().toString());
-                                LOG.debug("}");
-                            } catch (final Throwable e) {
-                                LOG.error("An error occured during marshalling of event receipt for the log.", e);
-                            }
+                    if (LOG.isDebugEnabled()) {
+                        try {
+                            final StringWriter swriter = new StringWriter();
+                            JaxbUtils.marshal(receipt, swriter);
+
+                            LOG.debug("Sent Event Receipt {");
+                            LOG.debug(swriter.getBuffer().toString());
+                            LOG.debug("}");
+                        } catch (final Throwable e) {
+                            LOG.error("An error occured during marshalling of event receipt for the log.", e);
                         }
-                    } catch (final IOException e) {
-                        LOG.warn("Failed to send event-receipt XML document.", e);
-                        break MAINLOOP;
                     }
+                } catch (final IOException e) {
+                    LOG.warn("Failed to send event-receipt XML document.", e);
+                    break MAINLOOP;
                 }
-            } else {
-                LOG.debug("The agent sent an empty event stream");
             }
         }
 
@@ -30,11 +30,10 @@ package org.opennms.netmgt.eventd.adaptors.udp;
 
 import java.util.List;
 
-import org.exolab.castor.xml.MarshalException;
-import org.exolab.castor.xml.ValidationException;
 import org.opennms.core.logging.Logging;
 import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.netmgt.eventd.adaptors.EventHandler;
+import org.opennms.netmgt.eventd.adaptors.EventLogReader;
 import org.opennms.netmgt.xml.event.Event;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -113,6 +112,24 @@ final class UdpProcessor implements Runnable {
         }
     }
 
+    /**
+     * Passes the event to every registered handler and acknowledges it if
+     * at least one of them processed it.
+     */
+    private void processEvent(UdpReceivedEvent re, Event event) {
+        synchronized (m_handlers) {
+            for (EventHandler handler : m_handlers) {
+                try {
+                    if (handler.processEvent(event)) {
+                        re.ackEvent(event);
+                    }
+                } catch (Throwable t) {
+                    LOG.warn("Failed to process received UDP event, exception follows", t);
+                }
+            }
+        }
+    }
+
     /**
      * The event processing execution context.
      */
@@ -158,50 +175,34 @@ final class UdpProcessor implements Runnable {
 
             LOG.debug("A new request has arrived");
 
-            // Convert the Event
-            Event[] events = null;
+            // Convert the events and process them as they are read
+            int eventCount = 0;
+            EventLogReader reader = null;
             try {
                 LOG.debug("Event from {}:{}", InetAddressUtils.str(re.getSender()), re.getPort());
                 LOG.debug("Unmarshalling Event text \\{{}{}{}}", System.getProperty("line.separator"), re.getXmlData(), System.getProperty("line.separator"));
-                events = re.unmarshal().getEvents().getEvent();
-            } catch (MarshalException e) {
+                reader = re.unmarshal();
+                Event event;
+                while ((event = reader.next()) != null) {
+                    eventCount++;
+                    processEvent(re, event);
+                }
+            } catch (Exception e) {
                 LOG.warn("Failed to unmarshal the event from {}:{}", InetAddressUtils.str(re.getSender()), re.getPort(), e);
-                continue;
-            } catch (ValidationException e) {
-                LOG.warn("Failed to validate the event from {}:{}", InetAddressUtils.str(re.getSender()), re.getPort(), e);
-                continue;
+                if (eventCount == 0) {
+                    continue;
+                }
+            } finally {
+                if (reader != null) {
+                    reader.close();
+                }
             }
 
-            if (events == null || events.length == 0) {
+            if (eventCount == 0) {
                 LOG.debug("The event log record contained no events");
                 continue;
             } else {
-                LOG.debug("Processing {} events", events.length);
-            }
-
-            // process the event
-            synchronized (m_handlers) {
-                /*
-                 * Get the list of events from the event log.
-                 * Also, get an iterator to walk over the set
-                 * of event handlers.
-                 */
-                for (EventHandler handler : m_handlers) {
-                    // iterate over the list of the events for the received events
-                    for (int ndx = 0; ndx < events.length; ndx++) {
-                        try {
-                            /*
-                             * shortcut and, both sides of the and statment WILL
-                             * execute regardless of the other side's value
-                             */
-                            if (handler.processEvent(events[ndx])) {
-                                re.ackEvent(events[ndx]);
-                            }
-                        } catch (Throwable t) {
-                            LOG.warn("Failed to process received UDP event, exception follows", t);
-                        }
-                    }
-                }
+                LOG.debug("Processed {} events", eventCount);
             }
 
             LOG.debug("event processing complete, forwarding to receipt generator");
@@ -29,7 +29,6 @@
 package org.opennms.netmgt.eventd.adaptors.udp;
 
 import java.io.ByteArrayInputStream;
-import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.DatagramPacket;
 import java.net.InetAddress;
@@ -37,12 +36,10 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
-import org.exolab.castor.xml.MarshalException;
-import org.exolab.castor.xml.ValidationException;
-import org.opennms.core.xml.JaxbUtils;
+import javax.xml.stream.XMLStreamException;
+
+import org.opennms.netmgt.eventd.adaptors.EventLogReader;
 import org.opennms.netmgt.xml.event.Event;
-import org.opennms.netmgt.xml.event.Log;
-import org.xml.sax.InputSource;
 
 /**
  * 
@@ -56,12 +53,6 @@ final class UdpReceivedEvent {
      */
     private String m_eventXML;
 
-    /**
-     * The decoded event document. The classes are defined in an XSD and
-     * generated by castor.
-     */
-    private Log m_log;
-
     /**
      * The internet addrress of the sending agent.
      */
@@ -125,28 +116,22 @@ final class UdpReceivedEvent {
         e.m_port = port;
         e.m_eventXML = new String(Arrays.copyOf(data, data.length), 0, len, "US-ASCII");
         e.m_ackEvents = new ArrayList<Event>(16);
-        e.m_log = null;
         return e;
     }
 
     /**
-     * Decodes the XML package from the remote agent. If an error occurs or the
-     * datagram had malformed XML then an exception is generated.
+     * Opens a reader on the XML package from the remote agent. The events
+     * are decoded as they are read from it, an exception is generated when
+     * the datagram has malformed XML.
      * 
-     * @return The toplevel <code>Log</code> element of the XML document.
+     * @return The reader of the events in the XML document. It must be
+     *         closed when done.
      * 
-     * @throws org.exolab.castor.xml.ValidationException
-     *             Throws if the documents data does not match the defined XML
-     *             Schema Definition.
-     * @throws org.exolab.castor.xml.MarshalException
-     *             Thrown if the XML is malformed and cannot be converted.
+     * @throws javax.xml.stream.XMLStreamException
+     *             Thrown if the document cannot be read.
      */
-    Log unmarshal() throws ValidationException, MarshalException {
-        if (m_log == null) {
-        	final InputStream is = new ByteArrayInputStream(m_eventXML.getBytes());
-            m_log = JaxbUtils.unmarshal(Log.class, new InputSource(is));
-        }
-        return m_log;
+    EventLogReader unmarshal() throws XMLStreamException {
+        return new EventLogReader(new ByteArrayInputStream(m_eventXML.getBytes()));
     }
 
     /**
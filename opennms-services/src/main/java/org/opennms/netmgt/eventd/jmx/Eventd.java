@@ -29,6 +29,7 @@
 package org.opennms.netmgt.eventd.jmx;
 
 import org.opennms.netmgt.daemon.AbstractSpringContextJmxServiceDaemon;
+import org.opennms.netmgt.eventd.processor.JdbcEventWriter;
 
 /**
  * <p>Eventd class.</p>
@@ -48,4 +49,62 @@ public class Eventd extends AbstractSpringContextJmxServiceDaemon<org.opennms.ne
     protected String getSpringContext() {
         return "eventDaemonContext";       
     }
+
+    private JdbcEventWriter getEventWriter() {
+        return getContext().getBean("eventWriter", JdbcEventWriter.class);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getEventWriterPendingEvents() {
+        return getEventWriter().getPendingEvents();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getEventWriterBatchesWritten() {
+        return getEventWriter().getBatchesWritten();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getEventWriterBatchedEventsWritten() {
+        return getEventWriter().getBatchedEventsWritten();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getEventWriterBatchFailures() {
+        return getEventWriter().getBatchFailures();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getEventWriterLastBatchSize() {
+        return getEventWriter().getLastBatchSize();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double getEventWriterAverageBatchSize() {
+        return getEventWriter().getAverageBatchSize();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getEventWriterLastFlushTime() {
+        return getEventWriter().getLastFlushTime();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getEventWriterMaxFlushTime() {
+        return getEventWriter().getMaxFlushTime();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double getEventWriterAverageFlushTime() {
+        return getEventWriter().getAverageFlushTime();
+    }
 }
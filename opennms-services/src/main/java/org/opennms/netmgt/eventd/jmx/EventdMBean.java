@@ -37,4 +37,48 @@ import org.opennms.netmgt.daemon.BaseOnmsMBean;
  * @version $Id: $
  */
 public interface EventdMBean extends BaseOnmsMBean {
+    /**
+     * @return the number of events waiting for an event writer thread
+     */
+    public int getEventWriterPendingEvents();
+
+    /**
+     * @return the number of batches written by the event writer threads
+     */
+    public long getEventWriterBatchesWritten();
+
+    /**
+     * @return the number of events written by the event writer threads
+     */
+    public long getEventWriterBatchedEventsWritten();
+
+    /**
+     * @return the number of batches that had to be retried one event at a time
+     */
+    public long getEventWriterBatchFailures();
+
+    /**
+     * @return the number of events in the most recently written batch
+     */
+    public int getEventWriterLastBatchSize();
+
+    /**
+     * @return the average number of events per batch
+     */
+    public double getEventWriterAverageBatchSize();
+
+    /**
+     * @return the time in milliseconds it took to write the most recent batch
+     */
+    public long getEventWriterLastFlushTime();
+
+    /**
+     * @return the longest time in milliseconds it took to write a batch
+     */
+    public long getEventWriterMaxFlushTime();
+
+    /**
+     * @return the average time in milliseconds it takes to write a batch
+     */
+    public double getEventWriterAverageFlushTime();
 }
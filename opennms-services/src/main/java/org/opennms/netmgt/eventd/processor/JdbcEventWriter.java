@@ -34,7 +34,12 @@ import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.opennms.core.utils.DBUtils;
 import org.opennms.netmgt.dao.util.AutoAction;
@@ -51,10 +56,12 @@ import org.opennms.netmgt.xml.event.Header;
 import org.opennms.netmgt.xml.event.Operaction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.dao.DataAccessException;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.Assert;
 
 /**
  * EventWriter loads the information in each 'Event' into the database.
@@ -70,6 +77,22 @@ import org.springframework.jdbc.core.JdbcTemplate;
  *
  * Values for the ' <parms>' block are loaded with each parm name and parm value
  * delimited with the NAME_VAL_DELIM.
+ *
+ * By default every event is inserted and committed in its own transaction.
+ * If <code>batchSize</code> is set to a value greater than one, events are
+ * instead handed to a bounded queue that is drained by <code>writerThreads</code>
+ * writer threads.  Each writer groups up to <code>batchSize</code> events (waiting
+ * at most <code>batchMaxLinger</code> milliseconds for the batch to fill) into a
+ * single JDBC batch insert and commits once per batch.  The event ID is still
+ * assigned in the calling thread, but {@link #process(Header, Event)} returns
+ * as soon as the event is queued and only blocks while the queue is full, so
+ * batches are not limited by the number of calling threads.
+ *
+ * The <code>afterWriteProcessors</code>, e.g. the broadcast to the event
+ * listeners, are run with every event once it has been committed: by the
+ * calling thread when not batching, and by the writer thread after the batch
+ * otherwise.  They see exactly the same event as before, including the
+ * database row that alarms and outages refer to.
  * 
  * @deprecated Replace with a Hibernate implementation. See bug NMS-3033. Actually
  * it doesn't have any details. :P
@@ -87,8 +110,116 @@ import org.springframework.jdbc.core.JdbcTemplate;
  * @author <A HREF="mailto:sowmya@opennms.org">Sowmya Nataraj </A>
  * @author <A HREF="http://www.opennms.org">OpenNMS.org </A>
  */
-public final class JdbcEventWriter extends AbstractJdbcPersister implements EventProcessor, InitializingBean {
+public final class JdbcEventWriter extends AbstractJdbcPersister implements EventProcessor, InitializingBean, DisposableBean {
     private static final Logger LOG = LoggerFactory.getLogger(JdbcEventWriter.class);
+
+    private int m_batchSize = 1;
+    private long m_batchMaxLinger = 10;
+    private int m_writerThreads = 2;
+    private int m_queueLength = 10000;
+
+    private List<EventProcessor> m_afterWriteProcessors = Collections.emptyList();
+
+    private BlockingQueue<PendingEvent> m_pendingEvents;
+    private final List<Thread> m_writers = new ArrayList<Thread>();
+    private volatile boolean m_running = false;
+
+    private final AtomicLong m_batchesWritten = new AtomicLong();
+    private final AtomicLong m_batchedEventsWritten = new AtomicLong();
+    private final AtomicLong m_batchFailures = new AtomicLong();
+    private final AtomicLong m_totalFlushTime = new AtomicLong();
+    private volatile int m_lastBatchSize = 0;
+    private volatile long m_lastFlushTime = 0;
+    private volatile long m_maxFlushTime = 0;
+
+    /**
+     * An event that has been assigned an ID and is waiting for a writer
+     * thread to persist it.
+     */
+    private static final class PendingEvent {
+        private final Header m_header;
+        private final Event m_event;
+        private final int m_eventId;
+
+        public PendingEvent(final Header header, final Event event, final int eventId) {
+            m_header = header;
+            m_event = event;
+            m_eventId = eventId;
+        }
+    }
+
+    /**
+     * <p>afterPropertiesSet</p>
+     *
+     * @throws java.sql.SQLException if any.
+     */
+    @Override
+    public void afterPropertiesSet() throws SQLException {
+        super.afterPropertiesSet();
+        Assert.state(m_batchSize > 0, "property batchSize must be greater than zero");
+        Assert.state(m_writerThreads > 0, "property writerThreads must be greater than zero");
+        Assert.state(m_queueLength > 0, "property queueLength must be greater than zero");
+        Assert.state(m_afterWriteProcessors != null, "property afterWriteProcessors must not be null");
+
+        if (isBatching()) {
+            start();
+        }
+    }
+
+    /**
+     * Stops the batch writer threads after all queued events have been
+     * written.
+     *
+     * @throws java.lang.Exception if any.
+     */
+    @Override
+    public void destroy() throws Exception {
+        stop();
+    }
+
+    private synchronized void start() {
+        if (m_running) {
+            return;
+        }
+
+        LOG.info("Starting {} event writer threads (batch size: {}, max linger: {}ms, queue length: {})", m_writerThreads, m_batchSize, m_batchMaxLinger, m_queueLength);
+        m_pendingEvents = new LinkedBlockingQueue<PendingEvent>(m_queueLength);
+        m_running = true;
+        for (int i = 0; i < m_writerThreads; i++) {
+            final Thread writer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    writeBatches();
+                }
+            }, "JdbcEventWriter-" + i);
+            writer.setDaemon(true);
+            writer.start();
+            m_writers.add(writer);
+        }
+    }
+
+    private synchronized void stop() throws InterruptedException {
+        if (!m_running) {
+            return;
+        }
+
+        m_running = false;
+        for (final Thread writer : m_writers) {
+            writer.join();
+        }
+        m_writers.clear();
+
+        // anything that slipped in after the writers finished draining the queue
+        final List<PendingEvent> leftovers = new ArrayList<PendingEvent>();
+        m_pendingEvents.drainTo(leftovers);
+        if (!leftovers.isEmpty()) {
+            writeBatch(leftovers);
+        }
+    }
+
+    private boolean isBatching() {
+        return m_batchSize > 1;
+    }
     /**
      * {@inheritDoc}
      *
@@ -97,11 +228,19 @@ public final class JdbcEventWriter extends AbstractJdbcPersister implements Even
     @Override
     public void process(final Header eventHeader, final Event event) throws EventProcessorException {
         if (!checkEventSanityAndDoWeProcess(event, "JdbcEventWriter")) {
+            // not persisted, so there is nothing to wait for
+            processAfterWrite(eventHeader, event);
             return;
         }
 
         LOG.debug("JdbcEventWriter: processing {} nodeid: {} ipaddr: {} serviceid: {} time: {}", event.getUei(), event.getNodeid(), event.getInterface(), event.getService(), event.getTime());
 
+        if (m_running) {
+            queueEvent(eventHeader, event);
+            LOG.debug("EventWriter queued : {}", event.getUei());
+            return;
+        }
+
         Connection connection;
         try {
             connection = getDataSource().getConnection();
@@ -148,6 +287,185 @@ public final class JdbcEventWriter extends AbstractJdbcPersister implements Even
         }
 
         LOG.debug("EventWriter finished for : {}", event.getUei());
+
+        processAfterWrite(eventHeader, event);
+    }
+
+    private void processAfterWrite(final Header eventHeader, final Event event) throws EventProcessorException {
+        for (final EventProcessor eventProcessor : m_afterWriteProcessors) {
+            eventProcessor.process(eventHeader, event);
+        }
+    }
+
+    /**
+     * Assigns the event its ID and queues it for the writer threads, waiting
+     * only while the queue is full.
+     */
+    private void queueEvent(final Header eventHeader, final Event event) throws EventProcessorException {
+        final int eventID;
+        try {
+            eventID = assignEventId(event);
+        } catch (final SQLException e) {
+            throw new EventProcessorException(e);
+        } catch (final DataAccessException e) {
+            throw new EventProcessorException(e);
+        }
+
+        try {
+            m_pendingEvents.put(new PendingEvent(eventHeader, event, eventID));
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EventProcessorException("Interrupted while waiting to queue event " + eventID, e);
+        }
+    }
+
+    /**
+     * Main loop of a writer thread.  Takes the first available event, then
+     * keeps collecting events until the batch is full or the linger time has
+     * expired, and writes them all in one transaction.
+     */
+    private void writeBatches() {
+        final List<PendingEvent> batch = new ArrayList<PendingEvent>(m_batchSize);
+        boolean interrupted = false;
+
+        while ((m_running || !m_pendingEvents.isEmpty()) && !interrupted) {
+            try {
+                final PendingEvent first = m_pendingEvents.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                final long deadline = System.currentTimeMillis() + m_batchMaxLinger;
+                while (batch.size() < m_batchSize) {
+                    if (m_pendingEvents.drainTo(batch, m_batchSize - batch.size()) > 0) {
+                        continue;
+                    }
+                    final long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    final PendingEvent next = m_pendingEvents.poll(remaining, TimeUnit.MILLISECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (final InterruptedException e) {
+                LOG.warn("Event writer thread interrupted, writing {} pending events and exiting.", batch.size());
+                interrupted = true;
+            }
+
+            if (!batch.isEmpty()) {
+                writeBatch(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void writeBatch(final List<PendingEvent> batch) {
+        final long start = System.currentTimeMillis();
+
+        final List<PendingEvent> written = new ArrayList<PendingEvent>(batch.size());
+        try {
+            insertBatch(batch);
+            written.addAll(batch);
+        } catch (final Throwable t) {
+            m_batchFailures.incrementAndGet();
+            LOG.warn("Error inserting batch of {} events into the datastore, retrying them one at a time.", batch.size(), t);
+
+            // don't let a single bad event take the rest of the batch down with it
+            for (final PendingEvent pending : batch) {
+                try {
+                    insertBatch(Collections.singletonList(pending));
+                    written.add(pending);
+                } catch (final Throwable t2) {
+                    LOG.warn("Error inserting event {} into the datastore; not processing it with any later processors.", pending.m_eventId, t2);
+                }
+            }
+        }
+
+        final long elapsed = System.currentTimeMillis() - start;
+        m_batchesWritten.incrementAndGet();
+        m_batchedEventsWritten.addAndGet(batch.size());
+        m_totalFlushTime.addAndGet(elapsed);
+        m_lastBatchSize = batch.size();
+        m_lastFlushTime = elapsed;
+        if (elapsed > m_maxFlushTime) {
+            m_maxFlushTime = elapsed;
+        }
+
+        LOG.debug("Wrote batch of {} events in {}ms", batch.size(), elapsed);
+
+        for (final PendingEvent pending : written) {
+            processWritten(pending);
+        }
+    }
+
+    /**
+     * Runs the after-write processors with an event the way the event
+     * handler runs its processors: an exception stops the processing of
+     * that event.
+     */
+    private void processWritten(final PendingEvent pending) {
+        for (final EventProcessor eventProcessor : m_afterWriteProcessors) {
+            try {
+                eventProcessor.process(pending.m_header, pending.m_event);
+            } catch (final Throwable t) {
+                LOG.warn("Unable to process event {} using processor {}; not processing with any later processors.", pending.m_eventId, eventProcessor, t);
+                break;
+            }
+        }
+    }
+
+    private void insertBatch(final List<PendingEvent> batch) throws SQLException {
+        final DBUtils d = new DBUtils(getClass());
+        try {
+            final Connection connection = getDataSource().getConnection();
+            d.watch(connection);
+            connection.setAutoCommit(false);
+
+            try {
+                final PreparedStatement insStmt = connection.prepareStatement(EventdConstants.SQL_DB_INS_EVENT);
+                d.watch(insStmt);
+
+                for (final PendingEvent pending : batch) {
+                    bindEvent(insStmt, pending.m_header, pending.m_event, pending.m_eventId);
+                    insStmt.addBatch();
+                }
+                insStmt.executeBatch();
+
+                connection.commit();
+            } catch (final SQLException e) {
+                rollback(connection);
+                throw e;
+            } catch (final RuntimeException e) {
+                rollback(connection);
+                throw e;
+            }
+        } finally {
+            d.cleanUp();
+        }
+    }
+
+    private static void rollback(final Connection connection) {
+        try {
+            connection.rollback();
+        } catch (final Throwable e) {
+            LOG.warn("Rollback of transaction failed.", e);
+        }
+    }
+
+    private int assignEventId(final Event event) throws SQLException {
+        // Execute the statement to get the next event id
+        final int eventID = getNextId();
+
+        LOG.debug("DBID: {}", eventID);
+
+        synchronized (event) {
+            event.setDbid(eventID);
+        }
+        return eventID;
     }
 
     /**
@@ -161,198 +479,200 @@ public final class JdbcEventWriter extends AbstractJdbcPersister implements Even
      *                properties file.
      */
     private void insertEvent(final Header eventHeader, final Event event, final Connection connection) throws SQLException {
-        // Execute the statement to get the next event id
-        final int eventID = getNextId();
-
-        LOG.debug("DBID: {}", eventID);
+        final int eventID = assignEventId(event);
 
-        synchronized (event) {
-            event.setDbid(eventID);
-        }
         final DBUtils d = new DBUtils(getClass());
 
         try {
             final PreparedStatement insStmt = connection.prepareStatement(EventdConstants.SQL_DB_INS_EVENT);
             d.watch(insStmt);
 
-            // eventID
-            insStmt.setInt(1, eventID);
+            bindEvent(insStmt, eventHeader, event, eventID);
 
-            // eventUEI
-            insStmt.setString(2, Constants.format(event.getUei(), EVENT_UEI_FIELD_SIZE));
-
-            // nodeID
-            final Long nodeid = event.getNodeid();
-            set(insStmt, 3, event.hasNodeid() ? nodeid.intValue() : -1);
+            // execute
+            insStmt.executeUpdate();
+        } finally {
+            d.cleanUp();
+        }
 
-            // eventTime
-            insStmt.setTimestamp(4, getEventTime(event));
+        LOG.debug("SUCCESSFULLY added {} related  data into the EVENTS table.", event.getUei());
+    }
 
-            // Resolve the event host to a hostname using the ipInterface table
-            String hostname = getEventHost(event);
+    /**
+     * Sets all of the parameters of the events insert statement from the
+     * given event.
+     */
+    private void bindEvent(final PreparedStatement insStmt, final Header eventHeader, final Event event, final int eventID) throws SQLException {
+        // eventID
+        insStmt.setInt(1, eventID);
 
-            // eventHost
-            set(insStmt, 5, Constants.format(hostname, EVENT_HOST_FIELD_SIZE));
+        // eventUEI
+        insStmt.setString(2, Constants.format(event.getUei(), EVENT_UEI_FIELD_SIZE));
 
-            // ipAddr
-            set(insStmt, 6, Constants.format(event.getInterface(), EVENT_INTERFACE_FIELD_SIZE));
+        // nodeID
+        final Long nodeid = event.getNodeid();
+        set(insStmt, 3, event.hasNodeid() ? nodeid.intValue() : -1);
 
-            // eventDpName
-            String dpName = "localhost";
-            if (eventHeader != null && eventHeader.getDpName() != null) {
-                dpName = Constants.format(eventHeader.getDpName(), EVENT_DPNAME_FIELD_SIZE);
-            } else if (event.getDistPoller() != null) {
-                dpName = Constants.format(event.getDistPoller(), EVENT_DPNAME_FIELD_SIZE);
-            }
-            insStmt.setString(7, dpName);
+        // eventTime
+        insStmt.setTimestamp(4, getEventTime(event));
 
-            // eventSnmpHost
-            set(insStmt, 8, Constants.format(event.getSnmphost(), EVENT_SNMPHOST_FIELD_SIZE));
+        // Resolve the event host to a hostname using the ipInterface table
+        String hostname = getEventHost(event);
 
-            // service identifier - convert the service name to a service id
-            set(insStmt, 9, getEventServiceId(event));
+        // eventHost
+        set(insStmt, 5, Constants.format(hostname, EVENT_HOST_FIELD_SIZE));
 
-            // eventSnmp
-            if (event.getSnmp() != null) {
-                insStmt.setString(10, SnmpInfo.format(event.getSnmp(), EVENT_SNMP_FIELD_SIZE));
-            } else {
-                insStmt.setNull(10, Types.VARCHAR);
-            }
+        // ipAddr
+        set(insStmt, 6, Constants.format(event.getInterface(), EVENT_INTERFACE_FIELD_SIZE));
 
-            // eventParms
-
-            // Replace any null bytes with a space, otherwise postgres will complain about encoding in UNICODE 
-            final String parametersString=Parameter.format(event);
-            set(insStmt, 11, Constants.format(parametersString, 0));
-
-            // eventCreateTime
-            final Timestamp eventCreateTime = new Timestamp(System.currentTimeMillis());
-            insStmt.setTimestamp(12, eventCreateTime);
-
-            // eventDescr
-            set(insStmt, 13, Constants.format(event.getDescr(), 0));
-
-            // eventLoggroup
-            set(insStmt, 14, (event.getLoggroupCount() > 0) ? Constants.format(event.getLoggroup(), EVENT_LOGGRP_FIELD_SIZE) : null);
-
-            // eventLogMsg
-            // eventLog
-            // eventDisplay
-            if (event.getLogmsg() != null) {
-                // set log message
-                set(insStmt, 15, Constants.format(event.getLogmsg().getContent(), 0));
-                String logdest = event.getLogmsg().getDest();
-                if (logdest.equals("logndisplay")) {
-                    // if 'logndisplay' set both log and display column to yes
-                    set(insStmt, 16, MSG_YES);
-                    set(insStmt, 17, MSG_YES);
-                } else if (logdest.equals("logonly")) {
-                    // if 'logonly' set log column to true
-                    set(insStmt, 16, MSG_YES);
-                    set(insStmt, 17, MSG_NO);
-                } else if (logdest.equals("displayonly")) {
-                    // if 'displayonly' set display column to true
-                    set(insStmt, 16, MSG_NO);
-                    set(insStmt, 17, MSG_YES);
-                } else if (logdest.equals("suppress")) {
-                    // if 'suppress' set both log and display to false
-                    set(insStmt, 16, MSG_NO);
-                    set(insStmt, 17, MSG_NO);
-                }
-            } else {
-                insStmt.setNull(15, Types.VARCHAR);
-
-                /*
-                 * If this is an event that had no match in the event conf
-                 * mark it as to be logged and displayed so that there
-                 * are no events that slip through the system
-                 * without the user knowing about them
-                 */
-                set(insStmt, 17, MSG_YES);
-            }
+        // eventDpName
+        String dpName = "localhost";
+        if (eventHeader != null && eventHeader.getDpName() != null) {
+            dpName = Constants.format(eventHeader.getDpName(), EVENT_DPNAME_FIELD_SIZE);
+        } else if (event.getDistPoller() != null) {
+            dpName = Constants.format(event.getDistPoller(), EVENT_DPNAME_FIELD_SIZE);
+        }
+        insStmt.setString(7, dpName);
 
-            // eventSeverity
-            set(insStmt, 18, OnmsSeverity.get(event.getSeverity()).getId());
+        // eventSnmpHost
+        set(insStmt, 8, Constants.format(event.getSnmphost(), EVENT_SNMPHOST_FIELD_SIZE));
 
-            // eventPathOutage
-            set(insStmt, 19, (event.getPathoutage() != null) ? Constants.format(event.getPathoutage(), EVENT_PATHOUTAGE_FIELD_SIZE) : null);
+        // service identifier - convert the service name to a service id
+        set(insStmt, 9, getEventServiceId(event));
 
-            // eventCorrelation
-            set(insStmt, 20, (event.getCorrelation() != null) ? org.opennms.netmgt.dao.util.Correlation.format(event.getCorrelation(), EVENT_CORRELATION_FIELD_SIZE) : null);
+        // eventSnmp
+        if (event.getSnmp() != null) {
+            insStmt.setString(10, SnmpInfo.format(event.getSnmp(), EVENT_SNMP_FIELD_SIZE));
+        } else {
+            insStmt.setNull(10, Types.VARCHAR);
+        }
 
-            // eventSuppressedCount
-            insStmt.setNull(21, Types.INTEGER);
+        // eventParms
 
-            // eventOperInstruct
-            set(insStmt, 22, Constants.format(event.getOperinstruct(), EVENT_OPERINSTRUCT_FIELD_SIZE));
+        // Replace any null bytes with a space, otherwise postgres will complain about encoding in UNICODE 
+        final String parametersString=Parameter.format(event);
+        set(insStmt, 11, Constants.format(parametersString, 0));
 
-            // eventAutoAction
-            set(insStmt, 23, (event.getAutoactionCount() > 0) ? AutoAction.format(event.getAutoaction(), EVENT_AUTOACTION_FIELD_SIZE) : null);
+        // eventCreateTime
+        final Timestamp eventCreateTime = new Timestamp(System.currentTimeMillis());
+        insStmt.setTimestamp(12, eventCreateTime);
 
-            // eventOperAction / eventOperActionMenuText
-            if (event.getOperactionCount() > 0) {
-                final List<Operaction> a = new ArrayList<Operaction>();
-                final List<String> b = new ArrayList<String>();
+        // eventDescr
+        set(insStmt, 13, Constants.format(event.getDescr(), 0));
 
-                for (final Operaction eoa : event.getOperactionCollection()) {
-                    a.add(eoa);
-                    b.add(eoa.getMenutext());
-                }
+        // eventLoggroup
+        set(insStmt, 14, (event.getLoggroupCount() > 0) ? Constants.format(event.getLoggroup(), EVENT_LOGGRP_FIELD_SIZE) : null);
 
-                set(insStmt, 24, OperatorAction.format(a, EVENT_OPERACTION_FIELD_SIZE));
-                set(insStmt, 25, Constants.format(b, EVENT_OPERACTION_MENU_FIELD_SIZE));
-            } else {
-                insStmt.setNull(24, Types.VARCHAR);
-                insStmt.setNull(25, Types.VARCHAR);
+        // eventLogMsg
+        // eventLog
+        // eventDisplay
+        if (event.getLogmsg() != null) {
+            // set log message
+            set(insStmt, 15, Constants.format(event.getLogmsg().getContent(), 0));
+            String logdest = event.getLogmsg().getDest();
+            if (logdest.equals("logndisplay")) {
+                // if 'logndisplay' set both log and display column to yes
+                set(insStmt, 16, MSG_YES);
+                set(insStmt, 17, MSG_YES);
+            } else if (logdest.equals("logonly")) {
+                // if 'logonly' set log column to true
+                set(insStmt, 16, MSG_YES);
+                set(insStmt, 17, MSG_NO);
+            } else if (logdest.equals("displayonly")) {
+                // if 'displayonly' set display column to true
+                set(insStmt, 16, MSG_NO);
+                set(insStmt, 17, MSG_YES);
+            } else if (logdest.equals("suppress")) {
+                // if 'suppress' set both log and display to false
+                set(insStmt, 16, MSG_NO);
+                set(insStmt, 17, MSG_NO);
             }
+        } else {
+            insStmt.setNull(15, Types.VARCHAR);
+
+            /*
+             * If this is an event that had no match in the event conf
+             * mark it as to be logged and displayed so that there
+             * are no events that slip through the system
+             * without the user knowing about them
+             */
+            set(insStmt, 17, MSG_YES);
+        }
 
-            // eventNotification, this column no longer needed
-            insStmt.setNull(26, Types.VARCHAR);
+        // eventSeverity
+        set(insStmt, 18, OnmsSeverity.get(event.getSeverity()).getId());
 
-            // eventTroubleTicket / eventTroubleTicket state
-            if (event.getTticket() != null) {
-                set(insStmt, 27, Constants.format(event.getTticket().getContent(), EVENT_TTICKET_FIELD_SIZE));
-                set(insStmt, 28, event.getTticket().getState().equals("on") ? 1 : 0);
-            } else {
-                insStmt.setNull(27, Types.VARCHAR);
-                insStmt.setNull(28, Types.INTEGER);
-            }
+        // eventPathOutage
+        set(insStmt, 19, (event.getPathoutage() != null) ? Constants.format(event.getPathoutage(), EVENT_PATHOUTAGE_FIELD_SIZE) : null);
 
-            // eventForward
-            set(insStmt, 29, (event.getForwardCount() > 0) ? org.opennms.netmgt.dao.util.Forward.format(event.getForward(), EVENT_FORWARD_FIELD_SIZE) : null);
+        // eventCorrelation
+        set(insStmt, 20, (event.getCorrelation() != null) ? org.opennms.netmgt.dao.util.Correlation.format(event.getCorrelation(), EVENT_CORRELATION_FIELD_SIZE) : null);
 
-            // event mouseOverText
-            set(insStmt, 30, Constants.format(event.getMouseovertext(), EVENT_MOUSEOVERTEXT_FIELD_SIZE));
+        // eventSuppressedCount
+        insStmt.setNull(21, Types.INTEGER);
 
-            // eventAckUser
-            if (event.getAutoacknowledge() != null && event.getAutoacknowledge().getState().equals("on")) {
-                set(insStmt, 31, Constants.format(event.getAutoacknowledge().getContent(), EVENT_ACKUSER_FIELD_SIZE));
+        // eventOperInstruct
+        set(insStmt, 22, Constants.format(event.getOperinstruct(), EVENT_OPERINSTRUCT_FIELD_SIZE));
 
-                // eventAckTime - if autoacknowledge is present,
-                // set time to event create time
-                set(insStmt, 32, eventCreateTime);
-            } else {
-                insStmt.setNull(31, Types.INTEGER);
-                insStmt.setNull(32, Types.TIMESTAMP);
-            }
+        // eventAutoAction
+        set(insStmt, 23, (event.getAutoactionCount() > 0) ? AutoAction.format(event.getAutoaction(), EVENT_AUTOACTION_FIELD_SIZE) : null);
 
-            // eventSource
-            set(insStmt, 33, Constants.format(event.getSource(), EVENT_SOURCE_FIELD_SIZE));
+        // eventOperAction / eventOperActionMenuText
+        if (event.getOperactionCount() > 0) {
+            final List<Operaction> a = new ArrayList<Operaction>();
+            final List<String> b = new ArrayList<String>();
 
-            // ifindex
-            if (event.hasIfIndex()) {
-                set(insStmt, 34, event.getIfIndex());
-            } else {
-                insStmt.setNull(34, Types.INTEGER);
+            for (final Operaction eoa : event.getOperactionCollection()) {
+                a.add(eoa);
+                b.add(eoa.getMenutext());
             }
-            
-            // execute
-            insStmt.executeUpdate();
-        } finally {
-            d.cleanUp();
+
+            set(insStmt, 24, OperatorAction.format(a, EVENT_OPERACTION_FIELD_SIZE));
+            set(insStmt, 25, Constants.format(b, EVENT_OPERACTION_MENU_FIELD_SIZE));
+        } else {
+            insStmt.setNull(24, Types.VARCHAR);
+            insStmt.setNull(25, Types.VARCHAR);
         }
 
-        LOG.debug("SUCCESSFULLY added {} related  data into the EVENTS table.", event.getUei());
+        // eventNotification, this column no longer needed
+        insStmt.setNull(26, Types.VARCHAR);
+
+        // eventTroubleTicket / eventTroubleTicket state
+        if (event.getTticket() != null) {
+            set(insStmt, 27, Constants.format(event.getTticket().getContent(), EVENT_TTICKET_FIELD_SIZE));
+            set(insStmt, 28, event.getTticket().getState().equals("on") ? 1 : 0);
+        } else {
+            insStmt.setNull(27, Types.VARCHAR);
+            insStmt.setNull(28, Types.INTEGER);
+        }
+
+        // eventForward
+        set(insStmt, 29, (event.getForwardCount() > 0) ? org.opennms.netmgt.dao.util.Forward.format(event.getForward(), EVENT_FORWARD_FIELD_SIZE) : null);
+
+        // event mouseOverText
+        set(insStmt, 30, Constants.format(event.getMouseovertext(), EVENT_MOUSEOVERTEXT_FIELD_SIZE));
+
+        // eventAckUser
+        if (event.getAutoacknowledge() != null && event.getAutoacknowledge().getState().equals("on")) {
+            set(insStmt, 31, Constants.format(event.getAutoacknowledge().getContent(), EVENT_ACKUSER_FIELD_SIZE));
+
+            // eventAckTime - if autoacknowledge is present,
+            // set time to event create time
+            set(insStmt, 32, eventCreateTime);
+        } else {
+            insStmt.setNull(31, Types.INTEGER);
+            insStmt.setNull(32, Types.TIMESTAMP);
+        }
+
+        // eventSource
+        set(insStmt, 33, Constants.format(event.getSource(), EVENT_SOURCE_FIELD_SIZE));
+
+        // ifindex
+        if (event.hasIfIndex()) {
+            set(insStmt, 34, event.getIfIndex());
+        } else {
+            insStmt.setNull(34, Types.INTEGER);
+        }
     }
 
 
@@ -425,4 +745,185 @@ public final class JdbcEventWriter extends AbstractJdbcPersister implements Even
             return event.getHost();
         }
     }
+
+    /**
+     * <p>getAfterWriteProcessors</p>
+     *
+     * @return the processors that are run with every event once it has been
+     *         written
+     */
+    public List<EventProcessor> getAfterWriteProcessors() {
+        return m_afterWriteProcessors;
+    }
+
+    /**
+     * Sets the processors that are run with every event once it has been
+     * written, in the order in which they are given in the list.  When
+     * batching, they are run by the writer threads.
+     *
+     * @param afterWriteProcessors a {@link java.util.List} object.
+     */
+    public void setAfterWriteProcessors(final List<EventProcessor> afterWriteProcessors) {
+        m_afterWriteProcessors = afterWriteProcessors;
+    }
+
+    /**
+     * <p>getBatchSize</p>
+     *
+     * @return the maximum number of events written in one transaction
+     */
+    public int getBatchSize() {
+        return m_batchSize;
+    }
+
+    /**
+     * Sets the maximum number of events written in one transaction.  A value
+     * of 1 (the default) disables batching and writes every event in the
+     * calling thread.
+     *
+     * @param batchSize a int.
+     */
+    public void setBatchSize(final int batchSize) {
+        m_batchSize = batchSize;
+    }
+
+    /**
+     * <p>getBatchMaxLinger</p>
+     *
+     * @return a long.
+     */
+    public long getBatchMaxLinger() {
+        return m_batchMaxLinger;
+    }
+
+    /**
+     * Sets the maximum time, in milliseconds, a writer thread waits for a
+     * batch to fill up before writing it.
+     *
+     * @param batchMaxLinger a long.
+     */
+    public void setBatchMaxLinger(final long batchMaxLinger) {
+        m_batchMaxLinger = batchMaxLinger;
+    }
+
+    /**
+     * <p>getWriterThreads</p>
+     *
+     * @return a int.
+     */
+    public int getWriterThreads() {
+        return m_writerThreads;
+    }
+
+    /**
+     * <p>setWriterThreads</p>
+     *
+     * @param writerThreads a int.
+     */
+    public void setWriterThreads(final int writerThreads) {
+        m_writerThreads = writerThreads;
+    }
+
+    /**
+     * <p>getQueueLength</p>
+     *
+     * @return a int.
+     */
+    public int getQueueLength() {
+        return m_queueLength;
+    }
+
+    /**
+     * Sets the maximum number of events that may be waiting for a writer
+     * thread.  Callers only block once the queue is full.
+     *
+     * @param queueLength a int.
+     */
+    public void setQueueLength(final int queueLength) {
+        m_queueLength = queueLength;
+    }
+
+    /**
+     * <p>getPendingEvents</p>
+     *
+     * @return the number of events currently waiting for a writer thread
+     */
+    public int getPendingEvents() {
+        final BlockingQueue<PendingEvent> pendingEvents = m_pendingEvents;
+        return pendingEvents == null ? 0 : pendingEvents.size();
+    }
+
+    /**
+     * <p>getBatchesWritten</p>
+     *
+     * @return a long.
+     */
+    public long getBatchesWritten() {
+        return m_batchesWritten.get();
+    }
+
+    /**
+     * <p>getBatchedEventsWritten</p>
+     *
+     * @return a long.
+     */
+    public long getBatchedEventsWritten() {
+        return m_batchedEventsWritten.get();
+    }
+
+    /**
+     * <p>getBatchFailures</p>
+     *
+     * @return the number of batches that had to be retried one event at a time
+     */
+    public long getBatchFailures() {
+        return m_batchFailures.get();
+    }
+
+    /**
+     * <p>getLastBatchSize</p>
+     *
+     * @return a int.
+     */
+    public int getLastBatchSize() {
+        return m_lastBatchSize;
+    }
+
+    /**
+     * <p>getAverageBatchSize</p>
+     *
+     * @return a double.
+     */
+    public double getAverageBatchSize() {
+        final long batches = m_batchesWritten.get();
+        return batches == 0 ? 0.0 : (double) m_batchedEventsWritten.get() / batches;
+    }
+
+    /**
+     * <p>getLastFlushTime</p>
+     *
+     * @return the time in milliseconds it took to write the last batch
+     */
+    public long getLastFlushTime() {
+        return m_lastFlushTime;
+    }
+
+    /**
+     * <p>getMaxFlushTime</p>
+     *
+     * @return a long.
+     */
+    public long getMaxFlushTime() {
+        return m_maxFlushTime;
+    }
+
+    /**
+     * <p>getAverageFlushTime</p>
+     *
+     * @return a double.
+     */
+    public double getAverageFlushTime() {
+        final long batches = m_batchesWritten.get();
+        return batches == 0 ? 0.0 : (double) m_totalFlushTime.get() / batches;
+    }
 }
@@ -30,16 +30,22 @@ package org.opennms.netmgt.linkd;
 
 import static org.opennms.core.utils.InetAddressUtils.str;
 
+import java.lang.reflect.UndeclaredThrowableException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import org.opennms.netmgt.linkd.scheduler.ReadyRunnable;
 import org.opennms.netmgt.linkd.scheduler.Scheduler;
@@ -62,7 +68,7 @@ public final class DiscoveryLink implements ReadyRunnable {
 
     private String packageName;
     
-    private List<NodeToNodeLink> m_links = new ArrayList<NodeToNodeLink>();
+    private Set<NodeToNodeLink> m_links = new LinkedHashSet<NodeToNodeLink>();
 
     private Map<Integer, LinkableNode> m_bridgeNodes = new HashMap<Integer, LinkableNode>();
 
@@ -79,10 +85,13 @@ public final class DiscoveryLink implements ReadyRunnable {
     private List<LinkableNode> m_wifiNodes = new ArrayList<LinkableNode>();
 
     // this is the list of MAC address just parsed by discovery process
-    private List<String> m_macsParsed = new ArrayList<String>();
+    private Set<String> m_macsParsed = new HashSet<String>();
 
     // this is the list of MAC address excluded by discovery process
-    private List<String> macsExcluded = new ArrayList<String>();
+    private Set<String> macsExcluded = new HashSet<String>();
+
+    // the bridge and MAC address indexes of the current discovery pass
+    private TopologyIndex m_index;
 
     private boolean discoveryUsingRoutes = true;
 
@@ -102,6 +111,8 @@ public final class DiscoveryLink implements ReadyRunnable {
 
     private boolean runned = false;
 
+    private volatile long m_lastRunTime = 0;
+
     /**
      * The scheduler object
      */
@@ -234,43 +245,114 @@ public final class DiscoveryLink implements ReadyRunnable {
             }
         }
 
-        // This will found all mac address on
-        // current package and their association
-        // with ip addresses.
-        if (discoveryUsingBridge || discoveryUsingWifi)
-            populateMacToAtInterface();
+        final long startTime = System.currentTimeMillis();
+
+        // The indexes are built once per pass. Each protocol then finds its
+        // links on a thread of its own, only reading the indexes and the
+        // nodes, while the SNMP collections replace the nodes of the next
+        // pass.
+        m_index = new TopologyIndex(m_bridgeNodes.values(), getLinkd().getAtInterfacesOnPackage(getPackageName()));
+
+        final Set<NodeToNodeLink> routeLinks = new LinkedHashSet<NodeToNodeLink>();
+        final Set<NodeToNodeLink> ospfLinks = new LinkedHashSet<NodeToNodeLink>();
+        final Set<NodeToNodeLink> isisLinks = new LinkedHashSet<NodeToNodeLink>();
+        final Set<NodeToNodeLink> wifiLinks = new LinkedHashSet<NodeToNodeLink>();
+        final Set<NodeToNodeLink> lldpLinks = new LinkedHashSet<NodeToNodeLink>();
+        final Set<NodeToNodeLink> bridgeLinks = new LinkedHashSet<NodeToNodeLink>();
+        final Set<NodeToNodeLink> cdpLinks = new LinkedHashSet<NodeToNodeLink>();
 
+        final List<Callable<Void>> protocols = new ArrayList<Callable<Void>>();
         // this part could have several special function to get inter-router
         // links, but at the moment we worked much on switches.
         // In future we can try to extend this part.
-        getLinksFromRouteTable();
-
-        getLinksFromOspf();
-        getLinksFromIsis();
-
-        getLinksFromWifi();
+        protocols.add(new Callable<Void>() {
+            @Override
+            public Void call() {
+                getLinksFromRouteTable(routeLinks);
+                return null;
+            }
+        });
+        protocols.add(new Callable<Void>() {
+            @Override
+            public Void call() {
+                getLinksFromOspf(ospfLinks);
+                return null;
+            }
+        });
+        protocols.add(new Callable<Void>() {
+            @Override
+            public Void call() {
+                getLinksFromIsis(isisLinks);
+                return null;
+            }
+        });
         // Try Link Layer Discovery Protocol to found link among all nodes
-        getLinksFromLldp();
-        // try get backbone links between switches using STP info
-        // and store information in Bridge class
-        // finding links using MAC address on ports
-        getBackBoneLinksFromBridges();
+        protocols.add(new Callable<Void>() {
+            @Override
+            public Void call() {
+                getLinksFromLldp(lldpLinks);
+                return null;
+            }
+        });
+        // Try Cisco Discovery Protocol to found link among all nodes
+        protocols.add(new Callable<Void>() {
+            @Override
+            public Void call() {
+                getLinksFromCdp(cdpLinks);
+                return null;
+            }
+        });
+        // A MAC address is only linked to the first port it is found on, so
+        // the wifi and bridge links are found one after the other.
+        protocols.add(new Callable<Void>() {
+            @Override
+            public Void call() {
+                // This will found all mac address on
+                // current package and their association
+                // with ip addresses.
+                if (discoveryUsingBridge || discoveryUsingWifi)
+                    populateMacToAtInterface();
+
+                getLinksFromWifi(wifiLinks);
+                // try get backbone links between switches using STP info
+                // and store information in Bridge class
+                // finding links using MAC address on ports
+                getBackBoneLinksFromBridges(bridgeLinks);
+
+                // getting links on remaining bridge ports
+                getLinksFromBridges(bridgeLinks);
+                return null;
+            }
+        });
 
-        // getting links on remaining bridge ports
-        getLinksFromBridges();
+        try {
+            if (!runProtocols(protocols)) {
+                return;
+            }
 
-        // Try Cisco Discovery Protocol to found link among all nodes
-        getLinksFromCdp();
-
-        m_bridgeNodes.clear();
-        m_routerNodes.clear();
-        m_cdpNodes.clear();
-        m_macsParsed.clear();
-        macsExcluded.clear();
-        m_lldpNodes.clear();
-        m_ospfNodes.clear();
-        m_isisNodes.clear();
-        m_wifiNodes.clear();
+            // the links are saved in the order the protocols used to be run in
+            m_links.addAll(routeLinks);
+            m_links.addAll(ospfLinks);
+            m_links.addAll(isisLinks);
+            m_links.addAll(wifiLinks);
+            m_links.addAll(lldpLinks);
+            m_links.addAll(bridgeLinks);
+            m_links.addAll(cdpLinks);
+        } finally {
+            m_index = null;
+            m_bridgeNodes.clear();
+            m_routerNodes.clear();
+            m_cdpNodes.clear();
+            m_macsParsed.clear();
+            macsExcluded.clear();
+            m_lldpNodes.clear();
+            m_ospfNodes.clear();
+            m_isisNodes.clear();
+            m_wifiNodes.clear();
+        }
+
+        m_lastRunTime = System.currentTimeMillis() - startTime;
+        LOG.info("run: Found {} links on package \"{}\" in {}ms", m_links.size(), getPackageName(), m_lastRunTime);
 
         getLinkd().clearPackageSavedData(getPackageName());
 
@@ -280,12 +362,49 @@ public final class DiscoveryLink implements ReadyRunnable {
         runned = true;
     }
 
+    /**
+     * Runs the protocols on the link discovery threads of linkd and waits
+     * for all of them to finish.
+     *
+     * @return false if the pass was interrupted
+     */
+    private boolean runProtocols(final List<Callable<Void>> protocols) {
+        final List<Future<Void>> results;
+        try {
+            results = getLinkd().getDiscoveryExecutor().invokeAll(protocols);
+        } catch (final InterruptedException e) {
+            LOG.warn("run: interrupted while finding links on package \"{}\"", getPackageName());
+            Thread.currentThread().interrupt();
+            return false;
+        }
+
+        for (final Future<Void> result : results) {
+            try {
+                result.get();
+            } catch (final InterruptedException e) {
+                LOG.warn("run: interrupted while finding links on package \"{}\"", getPackageName());
+                Thread.currentThread().interrupt();
+                return false;
+            } catch (final ExecutionException e) {
+                // a pass with the links of a protocol missing must not be saved
+                final Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new UndeclaredThrowableException(cause);
+            }
+        }
+        return true;
+    }
+
     protected void populateMacToAtInterface() {
         LOG.debug("populateMacToAtInterface: using atNodes to populate macToAtinterface");
-        final Set<String> macAddresses = getLinkd().getMacAddressesOnPackage(getPackageName());
+        final Set<String> macAddresses = m_index.getMacAddresses();
         if (macAddresses == null || macAddresses.isEmpty()) return;
         for (final String macAddress : macAddresses) {
-            final List<AtInterface> atInterfaces = getLinkd().getAtInterfaces(getPackageName(), macAddress);
+            final List<AtInterface> atInterfaces = m_index.getAtInterfaces(macAddress);
             LOG.debug("populateMacToAtInterface: MAC {} now has atinterface reference: {}", macAddress, atInterfaces.size());
             for (final AtInterface at : atInterfaces) {
                 final int nodeid = at.getNodeid();
@@ -299,19 +418,19 @@ public final class DiscoveryLink implements ReadyRunnable {
         }
         LOG.debug("populateMacToAtInterface: end populateMacToAtinterface");
     }
-    private void getLinksFromWifi() {
+    private void getLinksFromWifi(final Set<NodeToNodeLink> links) {
         for (final LinkableNode curNode: m_wifiNodes) {
             final int curNodeId = curNode.getNodeId();
             LOG.info("getLinksFromWifi: parsing wifi node with ID {} and {} wifi interfaces ", curNodeId, curNode.getWifiMacIfIndexMap().size());
             for (Entry<Integer, Set<String>> wifi: curNode.getWifiMacIfIndexMap().entrySet()) {
                 LOG.debug("getLinksFromWifi: parsing wifi node with ID {} wifi interface {} macs {} ", curNodeId, wifi.getKey(), wifi.getValue());
-                addLinks(wifi.getValue(), curNodeId, wifi.getKey().intValue(),DiscoveryProtocol.wifi);
+                addLinks(links, wifi.getValue(), curNodeId, wifi.getKey().intValue(),DiscoveryProtocol.wifi);
             }
             
         }
     }
     
-    private void getLinksFromBridges() {
+    private void getLinksFromBridges(final Set<NodeToNodeLink> links) {
         if (m_bridgeNodes.size() > 0) {
             LOG.info("getLinksFromBridges: trying to find links using MAC Address Forwarding Table");
         }
@@ -321,7 +440,7 @@ public final class DiscoveryLink implements ReadyRunnable {
             LOG.info("getLinksFromBridges: parsing bridge node with ID {}", curNodeId);
 
             for (final Integer curBridgePort : curNode.getPortMacs().keySet()) {
-                LOG.debug("getLinksFromBridges: parsing bridge port {} with MAC address {}", curBridgePort, curNode.getMacAddressesOnBridgePort(curBridgePort).toString());
+                LOG.debug("getLinksFromBridges: parsing bridge port {} with MAC address {}", curBridgePort, curNode.getMacAddressesOnBridgePort(curBridgePort));
 
                 if (curNode.isBackBoneBridgePort(curBridgePort)) {
                     LOG.debug("getLinksFromBridges: Port {} is a backbone bridge port. Skipping.", curBridgePort);
@@ -341,11 +460,11 @@ public final class DiscoveryLink implements ReadyRunnable {
 
                 // Then find the bridges whose MAC addresses are learned on
                 // bridge port
-                final List<LinkableNode> bridgesOnPort = getBridgesFromMacs(macs);
+                final List<LinkableNode> bridgesOnPort = m_index.getBridgesFromMacs(macs);
 
                 if (bridgesOnPort.isEmpty()) {
                     LOG.debug("getLinksFromBridges: no bridges macs found on port {}. Saving MACs.", curBridgePort);
-                    addLinks(macs, curNodeId, curIfIndex,DiscoveryProtocol.bridge);
+                    addLinks(links, macs, curNodeId, curIfIndex,DiscoveryProtocol.bridge);
                 } else {
                     // a bridge MAC address was found on port so you should
                     // analyze what happens
@@ -394,7 +513,7 @@ public final class DiscoveryLink implements ReadyRunnable {
 
                         // finding links between two backbone ports
                         // FIXME no criteria....check the rules
-                        addLinks(getMacsOnBridgeLink(curNode, curBridgePort,
+                        addLinks(links, getMacsOnBridgeLink(curNode, curBridgePort,
                                                      endNode, endBridgePort),
                                                      curNodeId, curIfIndex,DiscoveryProtocol.bridge);
 
@@ -404,7 +523,7 @@ public final class DiscoveryLink implements ReadyRunnable {
                         lk.setNodeparentid(endNodeid);
                         lk.setParentifindex(endIfindex);
                         LOG.info("getLinksFromBridges: saving bridge link: {}", lk.toString());
-                        addNodetoNodeLink(lk);
+                        addNodetoNodeLink(links, lk);
                     }
                 }
             }
@@ -417,7 +536,7 @@ public final class DiscoveryLink implements ReadyRunnable {
 
     }
 
-    private void getBackBoneLinksFromBridges() {
+    private void getBackBoneLinksFromBridges(final Set<NodeToNodeLink> links) {
         if (m_bridgeNodes != null && m_bridgeNodes.size() > 0) {
             LOG.info("getBackBoneLinksFromBridges: trying to find backbone ethernet links among bridge nodes using Spanning Tree Protocol");
         }
@@ -523,7 +642,7 @@ public final class DiscoveryLink implements ReadyRunnable {
 
                     // try to see if designated bridge is linkable SNMP node
 
-                    final LinkableNode designatedNode = getNodeFromMacIdentifierOfBridgeNode(stpPortDesignatedBridge.substring(4));
+                    final LinkableNode designatedNode = m_index.getBridgeFromIdentifier(stpPortDesignatedBridge.substring(4));
 
                     if (designatedNode == null) {
                         LOG.debug("getBackBoneLinksFromBridges: no nodeid found for stp bridge address {}. Nothing to save.", stpPortDesignatedBridge);
@@ -570,7 +689,7 @@ public final class DiscoveryLink implements ReadyRunnable {
 
                     LOG.debug("getBackBoneLinksFromBridges: adding links on backbone found link");
 
-                    addLinks(getMacsOnBridgeLink(curNode, stpbridgeport,
+                    addLinks(links, getMacsOnBridgeLink(curNode, stpbridgeport,
                                                  designatedNode,
                                                  designatedbridgeport),
                                                  curNodeId, curIfIndex,DiscoveryProtocol.bridge);
@@ -580,7 +699,7 @@ public final class DiscoveryLink implements ReadyRunnable {
                     lk.setNodeparentid(designatednodeid);
                     lk.setParentifindex(designatedifindex);
                     LOG.info("getBackBoneLinksFromBridges: saving stp bridge link: {}", lk.toString());
-                    addNodetoNodeLink(lk);
+                    addNodetoNodeLink(links, lk);
 
                 }
             }
@@ -593,7 +712,7 @@ public final class DiscoveryLink implements ReadyRunnable {
 
     }
 
-    private void getLinksFromRouteTable() {
+    private void getLinksFromRouteTable(final Set<NodeToNodeLink> links) {
         if (m_routerNodes.size() > 0) {
             LOG.info("getLinksFromRouteTable: finding non-ethernet links on Router nodes");
         }
@@ -610,7 +729,7 @@ public final class DiscoveryLink implements ReadyRunnable {
                 lk.setNodeparentid(routeIface.getNextHopNodeid());
                 lk.setParentifindex(routeIface.getNextHopIfindex());
                 LOG.info("getLinksFromRouteTable: saving route link: {}", lk.toString());
-                addNodetoNodeLink(lk);
+                addNodetoNodeLink(links, lk);
             }
             LOG.info("getLinksFromRouteTable: done parsing router node with ID {} IP address {} and {} router interfaces", curNodeId, str(curIpAddr), curNode.getRouteInterfaces().size());
         }
@@ -621,7 +740,7 @@ public final class DiscoveryLink implements ReadyRunnable {
 
     }
     
-    private void getLinksFromCdp() {
+    private void getLinksFromCdp(final Set<NodeToNodeLink> links) {
         LOG.info("getLinksFromCdp: adding links using Cisco Discovery Protocol");
 
         LOG.info("getLinksFromCdp: found # {} nodes using Cisco Discovery Protocol", m_cdpNodes.size());
@@ -660,7 +779,7 @@ public final class DiscoveryLink implements ReadyRunnable {
                                     NodeToNodeLink cdpLink = new NodeToNodeLink(linknode2.getNodeId(), cdpiface2.getCdpIfIndex(),DiscoveryProtocol.cdp);
                                     cdpLink.setNodeparentid(linknode1.getNodeId());
                                     cdpLink.setParentifindex(cdpiface1.getCdpIfIndex());
-                                    addNodetoNodeLink(cdpLink);
+                                    addNodetoNodeLink(links, cdpLink);
                                 }
                         }
                     }
@@ -669,7 +788,7 @@ public final class DiscoveryLink implements ReadyRunnable {
                     NodeToNodeLink link = new NodeToNodeLink(cdpiface1.getCdpTargetNodeId(), -1,DiscoveryProtocol.cdp);
                     link.setNodeparentid(linknode1.getNodeId());
                     link.setParentifindex(cdpiface1.getCdpIfIndex());
-                    addNodetoNodeLink(link);
+                    addNodetoNodeLink(links, link);
                 }
             }
         }
@@ -681,16 +800,28 @@ public final class DiscoveryLink implements ReadyRunnable {
     // If node1 has a isis IS adj entry for node2
     // then node2 mast have an ospf nbr entry for node1
     // the parent node is that with nodeid1 < nodeid2
-    private void getLinksFromIsis() {
+    private void getLinksFromIsis(final Set<NodeToNodeLink> links) {
         LOG.info("getLinksFromIsis: adding links using ISO IS-IS Routing Protocol");
+        // only the nodes a node has an adjacency to can be linked to it
+        final Map<String, List<Integer>> isisNodePositions = new HashMap<String, List<Integer>>();
+        for (int position = 0; position < m_isisNodes.size(); position++) {
+            addPosition(isisNodePositions, m_isisNodes.get(position).getIsisSysId(), position);
+        }
         int i = 0;
         for (LinkableNode linknode1 : m_isisNodes) {
-            for (LinkableNode linknode2 : m_isisNodes) {
+            final Set<Integer> neighbors = new TreeSet<Integer>();
+            for (IsisISAdjInterface isis : linknode1.getIsisInterfaces()) {
+                final List<Integer> positions = isisNodePositions.get(isis.getIsisISAdjNeighSysId());
+                if (positions != null)
+                    neighbors.addAll(positions);
+            }
+            for (Integer position : neighbors) {
+                LinkableNode linknode2 = m_isisNodes.get(position);
                 if (linknode1.getNodeId() >= linknode2.getNodeId())
                     continue;
                 for (NodeToNodeLink isisLink : getIsisLink(linknode1,
                                                            linknode2)) {
-                    addNodetoNodeLink(isisLink);
+                    addNodetoNodeLink(links, isisLink);
                     i++;
                 }
             }
@@ -724,16 +855,28 @@ public final class DiscoveryLink implements ReadyRunnable {
     // If node1 has a ospf nbr entry for node2
     // then node2 mast have an ospf nbr entry for node1
     // the parent node is that with nodeid1 < nodeid2
-    private void getLinksFromOspf() {
+    private void getLinksFromOspf(final Set<NodeToNodeLink> links) {
         LOG.info("getLinksFromOspf: adding links using Open Short Path First Protocol");
+        // only the neighbors of a node can be linked to it
+        final Map<Integer, List<Integer>> ospfNodePositions = new HashMap<Integer, List<Integer>>();
+        for (int position = 0; position < m_ospfNodes.size(); position++) {
+            addPosition(ospfNodePositions, m_ospfNodes.get(position).getNodeId(), position);
+        }
         int i = 0;
         for (LinkableNode linknode1 : m_ospfNodes) {
-            for (LinkableNode linknode2 : m_ospfNodes) {
+            final Set<Integer> neighbors = new TreeSet<Integer>();
+            for (OspfNbrInterface ospf : linknode1.getOspfinterfaces()) {
+                final List<Integer> positions = ospfNodePositions.get(ospf.getOspfNbrNodeId());
+                if (positions != null)
+                    neighbors.addAll(positions);
+            }
+            for (Integer position : neighbors) {
+                LinkableNode linknode2 = m_ospfNodes.get(position);
                 if (linknode1.getNodeId() >= linknode2.getNodeId())
                     continue;
                 for (NodeToNodeLink ospfLink : getOspfLink(linknode1,
                                                            linknode2)) {
-                    addNodetoNodeLink(ospfLink);
+                    addNodetoNodeLink(links, ospfLink);
                     i++;
                 }
             }
@@ -741,6 +884,15 @@ public final class DiscoveryLink implements ReadyRunnable {
         LOG.info("getLinksFromOspf: done OSPF. Found links # {}.", i);
     }
 
+    private static <K> void addPosition(final Map<K, List<Integer>> positions, final K key, final int position) {
+        List<Integer> keyPositions = positions.get(key);
+        if (keyPositions == null) {
+            keyPositions = new ArrayList<Integer>(1);
+            positions.put(key, keyPositions);
+        }
+        keyPositions.add(position);
+    }
+
     private List<NodeToNodeLink> getOspfLink(LinkableNode linknode1,
                                              LinkableNode linknode2) {
         LOG.info("getLinksFromOspf: finding OSPF links between node with id {} and node with id {}.", linknode1.getNodeId(), linknode2.getNodeId());
@@ -780,7 +932,7 @@ public final class DiscoveryLink implements ReadyRunnable {
     // If node1 has a lldp rem entry for node2
     // then node2 mast have an lldp rem entry for node1
     // the parent node is that with nodeid1 < nodeid2
-    private void getLinksFromLldp() {
+    private void getLinksFromLldp(final Set<NodeToNodeLink> links) {
         LOG.info("getLinkdFromLldp: adding links using Layer Link Discovery Protocol");
         int i = 0;
         for (LinkableNode linknode1 : m_lldpNodes) {
@@ -791,7 +943,7 @@ public final class DiscoveryLink implements ReadyRunnable {
                                                          lldpremiface.getLldpRemIfIndex(),DiscoveryProtocol.lldp);
                 link.setNodeparentid(linknode1.getNodeId());
                 link.setParentifindex(lldpremiface.getLldpLocIfIndex());
-                addNodetoNodeLink(link);
+                addNodetoNodeLink(links, link);
                 i++;
             }
         }
@@ -839,7 +991,8 @@ public final class DiscoveryLink implements ReadyRunnable {
             return true;
         }
 
-        for (final String curMacOnBridge1 : macsOnBridge1) {
+        // only a bridge found on both ports can be between the two bridges
+        for (final String curMacOnBridge1 : m_index.getBridgeIdentifiersOnPort(bridge1, bp1)) {
             LOG.debug("isNearestBridgeLink: parsing mac address {} on bridge1", curMacOnBridge1);
 
             // if MAC address is bridge identifier of bridge 2 continue
@@ -854,8 +1007,7 @@ public final class DiscoveryLink implements ReadyRunnable {
             }
             // then no identifier of bridge one no identifier of bridge 2
             // bridge 2 contains
-            if (macsOnBridge2.contains(curMacOnBridge1)
-                    && isMacIdentifierOfBridgeNode(curMacOnBridge1)) {
+            if (macsOnBridge2.contains(curMacOnBridge1)) {
                 LOG.debug("isNearestBridgeLink: mac address {} is bridge identifier. Other bridge found. Return false", curMacOnBridge1);
                 return false;
             }
@@ -888,34 +1040,6 @@ public final class DiscoveryLink implements ReadyRunnable {
         return macsOnLink;
     }
 
-    private boolean isMacIdentifierOfBridgeNode(String macAddress) {
-        for (final LinkableNode curNode : m_bridgeNodes.values()) {
-            if (curNode.isBridgeIdentifier(macAddress))
-                return true;
-        }
-        return false;
-    }
-
-    private LinkableNode getNodeFromMacIdentifierOfBridgeNode(
-            final String macAddress) {
-        for (final LinkableNode curNode : m_bridgeNodes.values()) {
-            if (curNode.isBridgeIdentifier(macAddress))
-                return curNode;
-        }
-        return null;
-    }
-
-    private List<LinkableNode> getBridgesFromMacs(final Set<String> macs) {
-        List<LinkableNode> bridges = new ArrayList<LinkableNode>();
-        for (final LinkableNode curNode : m_bridgeNodes.values()) {
-            for (final String curBridgeIdentifier : curNode.getBridgeIdentifiers()) {
-                if (macs.contains((curBridgeIdentifier)))
-                    bridges.add(curNode);
-            }
-        }
-        return bridges;
-    }
-
     private int getBridgePortOnEndBridge(final LinkableNode startBridge,
             final LinkableNode endBridge) {
 
@@ -923,8 +1047,8 @@ public final class DiscoveryLink implements ReadyRunnable {
         for (final String curBridgeIdentifier : startBridge.getBridgeIdentifiers()) {
             LOG.debug("getBridgePortOnEndBridge: parsing bridge identifier {}", curBridgeIdentifier);
 
-            if (endBridge.hasMacAddress(curBridgeIdentifier)) {
-                for (final Integer p : endBridge.getBridgePortsFromMac(curBridgeIdentifier)) {
+            if (m_index.hasMacAddress(endBridge, curBridgeIdentifier)) {
+                for (final Integer p : m_index.getBridgePortsFromMac(endBridge, curBridgeIdentifier)) {
                     port = p;
                     if (endBridge.isBackBoneBridgePort(port)) {
                         LOG.debug("getBridgePortOnEndBridge: found backbone bridge port {} .... Skipping.", port);
@@ -1073,6 +1197,16 @@ public final class DiscoveryLink implements ReadyRunnable {
         return m_links.toArray(new NodeToNodeLink[0]);
     }
 
+    /**
+     * Returns how long, in milliseconds, the last pass took to find the
+     * links.
+     *
+     * @return a long.
+     */
+    public long getLastRunTime() {
+        return m_lastRunTime;
+    }
+
     /**
      * <p>
      * isSuspended
@@ -1122,26 +1256,24 @@ public final class DiscoveryLink implements ReadyRunnable {
         }
     }
 
-    private void addNodetoNodeLink(NodeToNodeLink nnlink) {
+    private void addNodetoNodeLink(Set<NodeToNodeLink> links, NodeToNodeLink nnlink) {
         if (nnlink == null) {
             LOG.warn("addNodetoNodeLink: node link is null.");
             return;
         }
-        for (NodeToNodeLink curNnLink : m_links) {
-            if (curNnLink.equals(nnlink)) {
-                LOG.info("addNodetoNodeLink: link {} exists, not adding", nnlink.toString());
-                return;
-            }
+        if (links.contains(nnlink)) {
+            LOG.info("addNodetoNodeLink: link {} exists, not adding", nnlink.toString());
+            return;
         }
         if (nnlink.getNodeId() == nnlink.getNodeparentid()) {
             LOG.info("addNodetoNodeLink: link {} is on the same node, not adding", nnlink.toString());
             return;
         }
         LOG.debug("addNodetoNodeLink: adding link {}", nnlink.toString());
-        m_links.add(nnlink);
+        links.add(nnlink);
     }
 
-    private void addLinks(Set<String> macs, int nodeid, int ifindex, DiscoveryProtocol proto) {
+    private void addLinks(Set<NodeToNodeLink> links, Set<String> macs, int nodeid, int ifindex, DiscoveryProtocol proto) {
         if (macs == null || macs.isEmpty()) {
             LOG.debug("addLinks: MAC address list on link is empty.");
         } else {
@@ -1155,13 +1287,13 @@ public final class DiscoveryLink implements ReadyRunnable {
                     LOG.warn("addLinks: MAC address {} is excluded from discovery package! Skipping...", curMacAddress);
                     continue;
                 }
-                final List<AtInterface> ats = m_linkd.getAtInterfaces(getPackageName(), curMacAddress);
+                final List<AtInterface> ats = m_index.getAtInterfaces(curMacAddress);
                 if (!ats.isEmpty()) {
                     for (final AtInterface at : ats) {
                         final NodeToNodeLink lNode = new NodeToNodeLink(at.getNodeid(), at.getIfIndex(),proto);
                         lNode.setNodeparentid(nodeid);
                         lNode.setParentifindex(ifindex);
-                        addNodetoNodeLink(lNode);
+                        addNodetoNodeLink(links, lNode);
                     }
                 }
                 m_macsParsed.add(curMacAddress);
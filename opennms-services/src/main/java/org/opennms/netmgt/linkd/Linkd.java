@@ -40,8 +40,12 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+import org.opennms.core.concurrent.LogPreservingThreadFactory;
 import org.opennms.core.spring.BeanUtils;
 import org.opennms.core.utils.InetAddressComparator;
 import org.opennms.core.utils.InetAddressUtils;
@@ -52,6 +56,7 @@ import org.opennms.netmgt.config.linkd.Package;
 import org.opennms.netmgt.daemon.AbstractServiceDaemon;
 import org.opennms.netmgt.linkd.scheduler.ReadyRunnable;
 import org.opennms.netmgt.linkd.scheduler.Scheduler;
+import org.opennms.netmgt.model.DataLinkInterface.DiscoveryProtocol;
 import org.opennms.netmgt.model.OnmsArpInterface.StatusType;
 import org.opennms.netmgt.model.events.EventBuilder;
 import org.opennms.netmgt.model.events.EventForwarder;
@@ -111,6 +116,19 @@ public class Linkd extends AbstractServiceDaemon {
      */
     private volatile EventForwarder m_eventForwarder;
 
+    /**
+     * Runs the protocols of the link discovery passes
+     */
+    private ExecutorService m_discoveryExecutor;
+
+    private final Object m_discoveryExecutorLock = new Object();
+
+    /**
+     * The duration and link counts of the last link discovery pass of each
+     * package
+     */
+    private final Map<String, String> m_discoveryStatistics = new TreeMap<String, String>();
+
     /**
      * <p>getNextHopNet</p>
      *
@@ -413,6 +431,13 @@ public class Linkd extends AbstractServiceDaemon {
 
         m_scheduler = null;
 
+        synchronized (m_discoveryExecutorLock) {
+            if (m_discoveryExecutor != null) {
+                m_discoveryExecutor.shutdown();
+                m_discoveryExecutor = null;
+            }
+        }
+
     }
 
     /**
@@ -670,10 +695,56 @@ public class Linkd extends AbstractServiceDaemon {
      */
     void updateDiscoveryLinkCollection(final DiscoveryLink discover) {
 
+        final long startTime = System.currentTimeMillis();
         m_queryMgr.storeDiscoveryLink(discover);
+        final long storeTime = System.currentTimeMillis() - startTime;
+
+        final Map<DiscoveryProtocol, Integer> linkCounts = new TreeMap<DiscoveryProtocol, Integer>();
+        final NodeToNodeLink[] links = discover.getLinks();
+        for (final NodeToNodeLink link : links) {
+            final Integer count = linkCounts.get(link.getProtocol());
+            linkCounts.put(link.getProtocol(), count == null ? 1 : count + 1);
+        }
+        final String statistics = String.format("%s: links=%d %s discoveryTime=%dms storeTime=%dms",
+                                                discover.getPackageName(), links.length, linkCounts,
+                                                discover.getLastRunTime(), storeTime);
+        LOG.info("updateDiscoveryLinkCollection: {}", statistics);
+        synchronized (m_discoveryStatistics) {
+            m_discoveryStatistics.put(discover.getPackageName(), statistics);
+        }
+
         discover.schedule();
     }
 
+    /**
+     * Returns the number of links found by protocol and how long the last
+     * link discovery pass of each package took, one line per package.
+     *
+     * @return the statistics of the last link discovery passes
+     */
+    public String[] getDiscoveryStatistics() {
+        synchronized (m_discoveryStatistics) {
+            return m_discoveryStatistics.values().toArray(new String[m_discoveryStatistics.size()]);
+        }
+    }
+
+    /**
+     * Returns the executor the link discovery passes run their protocols
+     * on.  It runs org.opennms.linkd.discoveryThreads threads, one per
+     * processor by default, shared by all packages.
+     *
+     * @return a {@link java.util.concurrent.ExecutorService} object.
+     */
+    ExecutorService getDiscoveryExecutor() {
+        synchronized (m_discoveryExecutorLock) {
+            if (m_discoveryExecutor == null) {
+                final int threads = Math.max(1, Integer.getInteger("org.opennms.linkd.discoveryThreads", Runtime.getRuntime().availableProcessors()));
+                m_discoveryExecutor = Executors.newFixedThreadPool(threads, new LogPreservingThreadFactory("Linkd-Discovery", threads, true));
+            }
+            return m_discoveryExecutor;
+        }
+    }
+
     /**
      * Send a newSuspect event for the interface construct event with 'linkd'
      * as source
@@ -896,6 +967,28 @@ public class Linkd extends AbstractServiceDaemon {
         return Collections.emptyList();
     }
 
+    /**
+     * Returns a copy of the AtInterfaces of the package by MAC address, which
+     * the SNMP collections can go on adding to while a link discovery pass
+     * reads it.
+     *
+     * @param packageName
+     *            the package
+     * @return the AtInterfaces of the package by MAC address
+     */
+    public Map<String, List<AtInterface>> getAtInterfacesOnPackage(final String packageName) {
+        final Map<String, List<AtInterface>> atInterfaces = new HashMap<String, List<AtInterface>>();
+        synchronized (m_macToAtinterface) {
+            final Map<String, List<AtInterface>> interfaceMaps = m_macToAtinterface.get(packageName);
+            if (interfaceMaps != null) {
+                for (final Map.Entry<String, List<AtInterface>> entry : interfaceMaps.entrySet()) {
+                    atInterfaces.put(entry.getKey(), new ArrayList<AtInterface>(entry.getValue()));
+                }
+            }
+        }
+        return atInterfaces;
+    }
+
     public void clearPackageSavedData(final String packageName) {
         synchronized (m_macToAtinterface) {
             final Map<String, List<AtInterface>> interfaces = m_macToAtinterface.get(packageName);
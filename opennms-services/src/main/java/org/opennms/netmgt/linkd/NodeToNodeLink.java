@@ -122,14 +122,19 @@ public class NodeToNodeLink {
 		return m_nodeId;
 	}
 
-	/** {@inheritDoc} */
+	/**
+	 * {@inheritDoc}
+	 *
+	 * A link is equal to the link with its ends swapped, so both ends are
+	 * hashed in the same order whichever of them is the parent.
+	 */
 	@Override
 	public int hashCode() {
+	    final long end = ((long)m_nodeId << 32) | (m_ifIndex & 0xffffffffL);
+	    final long parentEnd = ((long)m_nodeParentId << 32) | (m_parentIfIndex & 0xffffffffL);
 	    return new HashCodeBuilder(17, 57)
-	        .append(m_nodeId)
-	        .append(m_ifIndex)
-	        .append(m_nodeParentId)
-	        .append(m_parentIfIndex)
+	        .append(Math.min(end, parentEnd))
+	        .append(Math.max(end, parentEnd))
                 .append(m_protocol)
 	        .toHashCode();
 	}
@@ -0,0 +1,422 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.linkd;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Indexes the bridge identifiers, the bridge forwarding tables and the
+ * AtInterfaces of a package once per link discovery pass, so that
+ * {@link DiscoveryLink} can look up which bridges and ports a MAC address
+ * is found on instead of scanning every bridge for every port.
+ *
+ * MAC addresses are keyed by the long value of their 12 hex digits.  Any
+ * other string gets a key of its own above the 48 bit MAC address range, so
+ * lookups match exactly what a comparison of the strings would.
+ *
+ * The index is not modified once it is built and can be read by several
+ * threads at once.
+ */
+final class TopologyIndex {
+
+    private static final long MAC_ADDRESS_LIMIT = 1L << 48;
+
+    private final Map<String, Long> m_otherKeys = new HashMap<String, Long>();
+
+    private final List<LinkableNode> m_bridges;
+
+    private final Map<LinkableNode, Integer> m_bridgeOrdinals = new IdentityHashMap<LinkableNode, Integer>();
+
+    /** bridge identifier to the ordinals of the bridges it identifies */
+    private final LongIntMultimap m_bridgeIdentifiers;
+
+    /** MAC address to bridge port, for each bridge by ordinal */
+    private final LongIntMultimap[] m_forwardingTables;
+
+    /** bridge port to the bridge identifiers learned on it, for each bridge by ordinal */
+    private final List<Map<Integer, List<String>>> m_bridgeIdentifiersOnPorts;
+
+    /** MAC address to the AtInterfaces of m_atInterfaces */
+    private final LongIntMultimap m_atInterfaceIndex;
+
+    private final List<AtInterface> m_atInterfaces = new ArrayList<AtInterface>();
+
+    private final Set<String> m_macAddresses;
+
+    /**
+     * @param bridges the bridge nodes, in the order in which
+     *            {@link #getBridgesFromMacs(Set)} returns them
+     * @param atInterfaces the AtInterfaces of the package by MAC address
+     */
+    TopologyIndex(final Collection<LinkableNode> bridges, final Map<String, List<AtInterface>> atInterfaces) {
+        m_bridges = new ArrayList<LinkableNode>(bridges);
+        m_bridgeIdentifiers = new LongIntMultimap(m_bridges.size());
+        m_forwardingTables = new LongIntMultimap[m_bridges.size()];
+        m_bridgeIdentifiersOnPorts = new ArrayList<Map<Integer, List<String>>>(m_bridges.size());
+
+        for (int ordinal = 0; ordinal < m_bridges.size(); ordinal++) {
+            final LinkableNode bridge = m_bridges.get(ordinal);
+            m_bridgeOrdinals.put(bridge, ordinal);
+            for (final String identifier : bridge.getBridgeIdentifiers()) {
+                m_bridgeIdentifiers.put(intern(identifier), ordinal);
+            }
+        }
+
+        for (int ordinal = 0; ordinal < m_bridges.size(); ordinal++) {
+            final LinkableNode bridge = m_bridges.get(ordinal);
+            final Map<Integer, List<String>> bridgeIdentifiersOnPorts = new HashMap<Integer, List<String>>();
+            int macs = 0;
+            for (final Set<String> portMacs : bridge.getPortMacs().values()) {
+                macs += portMacs.size();
+            }
+            final LongIntMultimap forwardingTable = new LongIntMultimap(macs);
+            for (final Map.Entry<Integer, Set<String>> entry : bridge.getPortMacs().entrySet()) {
+                for (final String mac : entry.getValue()) {
+                    final long key = intern(mac);
+                    forwardingTable.put(key, entry.getKey().intValue());
+                    if (m_bridgeIdentifiers.containsKey(key)) {
+                        List<String> identifiers = bridgeIdentifiersOnPorts.get(entry.getKey());
+                        if (identifiers == null) {
+                            identifiers = new ArrayList<String>();
+                            bridgeIdentifiersOnPorts.put(entry.getKey(), identifiers);
+                        }
+                        identifiers.add(mac);
+                    }
+                }
+            }
+            m_forwardingTables[ordinal] = forwardingTable;
+            m_bridgeIdentifiersOnPorts.add(bridgeIdentifiersOnPorts);
+        }
+
+        m_atInterfaceIndex = new LongIntMultimap(atInterfaces.size());
+        for (final Map.Entry<String, List<AtInterface>> entry : atInterfaces.entrySet()) {
+            final long key = intern(entry.getKey());
+            for (final AtInterface at : entry.getValue()) {
+                m_atInterfaceIndex.put(key, m_atInterfaces.size());
+                m_atInterfaces.add(at);
+            }
+        }
+        m_macAddresses = Collections.unmodifiableSet(atInterfaces.keySet());
+    }
+
+    /**
+     * Returns the key of a MAC address, or -1 if the string is neither a MAC
+     * address nor known to the index.
+     */
+    private long getKey(final String mac) {
+        final long key = toMacAddress(mac);
+        if (key != -1) {
+            return key;
+        }
+        final Long other = m_otherKeys.get(mac);
+        return other == null ? -1 : other.longValue();
+    }
+
+    private long intern(final String mac) {
+        final long key = toMacAddress(mac);
+        if (key != -1) {
+            return key;
+        }
+        Long other = m_otherKeys.get(mac);
+        if (other == null) {
+            other = Long.valueOf(MAC_ADDRESS_LIMIT + m_otherKeys.size());
+            m_otherKeys.put(mac, other);
+        }
+        return other.longValue();
+    }
+
+    /**
+     * Returns the value of a MAC address of 12 lower case hex digits, or -1
+     * for any other string.
+     */
+    static long toMacAddress(final String mac) {
+        if (mac == null || mac.length() != 12) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = 0; i < 12; i++) {
+            final char c = mac.charAt(i);
+            final int digit;
+            if (c >= '0' && c <= '9') {
+                digit = c - '0';
+            } else if (c >= 'a' && c <= 'f') {
+                digit = c - 'a' + 10;
+            } else {
+                return -1;
+            }
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+
+    /**
+     * Returns true if the MAC address identifies one of the bridges.
+     */
+    boolean isBridgeIdentifier(final String mac) {
+        final long key = getKey(mac);
+        return key != -1 && m_bridgeIdentifiers.containsKey(key);
+    }
+
+    /**
+     * Returns the first bridge identified by the MAC address, or null.
+     */
+    LinkableNode getBridgeFromIdentifier(final String mac) {
+        final long key = getKey(mac);
+        if (key == -1) {
+            return null;
+        }
+        final int[] ordinals = m_bridgeIdentifiers.get(key);
+        return ordinals.length == 0 ? null : m_bridges.get(ordinals[0]);
+    }
+
+    /**
+     * Returns the bridges identified by the MAC addresses, in bridge order.
+     * A bridge is returned once for each of its identifiers in the set.
+     */
+    List<LinkableNode> getBridgesFromMacs(final Set<String> macs) {
+        int[] found = new int[8];
+        int count = 0;
+        for (final String mac : macs) {
+            final long key = getKey(mac);
+            if (key == -1) {
+                continue;
+            }
+            for (final int ordinal : m_bridgeIdentifiers.get(key)) {
+                if (count == found.length) {
+                    found = Arrays.copyOf(found, count * 2);
+                }
+                found[count++] = ordinal;
+            }
+        }
+        Arrays.sort(found, 0, count);
+
+        final List<LinkableNode> bridges = new ArrayList<LinkableNode>(count);
+        for (int i = 0; i < count; i++) {
+            bridges.add(m_bridges.get(found[i]));
+        }
+        return bridges;
+    }
+
+    /**
+     * Returns true if the MAC address is in the forwarding table of the
+     * bridge.
+     */
+    boolean hasMacAddress(final LinkableNode bridge, final String mac) {
+        final Integer ordinal = m_bridgeOrdinals.get(bridge);
+        if (ordinal == null) {
+            return bridge.hasMacAddress(mac);
+        }
+        final long key = getKey(mac);
+        return key != -1 && m_forwardingTables[ordinal.intValue()].containsKey(key);
+    }
+
+    /**
+     * Returns the ports of the bridge the MAC address is learned on.
+     */
+    List<Integer> getBridgePortsFromMac(final LinkableNode bridge, final String mac) {
+        final Integer ordinal = m_bridgeOrdinals.get(bridge);
+        if (ordinal == null) {
+            return bridge.getBridgePortsFromMac(mac);
+        }
+        final List<Integer> ports = new ArrayList<Integer>();
+        final long key = getKey(mac);
+        if (key != -1) {
+            for (final int port : m_forwardingTables[ordinal.intValue()].get(key)) {
+                ports.add(port);
+            }
+        }
+        return ports;
+    }
+
+    /**
+     * Returns the MAC addresses learned on the port of the bridge that
+     * identify one of the bridges.
+     */
+    List<String> getBridgeIdentifiersOnPort(final LinkableNode bridge, final int bridgePort) {
+        final Integer ordinal = m_bridgeOrdinals.get(bridge);
+        if (ordinal == null) {
+            final List<String> identifiers = new ArrayList<String>();
+            final Set<String> macs = bridge.getMacAddressesOnBridgePort(bridgePort);
+            if (macs != null) {
+                for (final String mac : macs) {
+                    if (isBridgeIdentifier(mac)) {
+                        identifiers.add(mac);
+                    }
+                }
+            }
+            return identifiers;
+        }
+        final List<String> identifiers = m_bridgeIdentifiersOnPorts.get(ordinal.intValue()).get(bridgePort);
+        if (identifiers == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(identifiers);
+    }
+
+    /**
+     * Returns the AtInterfaces of the MAC address.
+     */
+    List<AtInterface> getAtInterfaces(final String mac) {
+        final long key = getKey(mac);
+        if (key == -1) {
+            return Collections.emptyList();
+        }
+        final int[] entries = m_atInterfaceIndex.get(key);
+        if (entries.length == 0) {
+            return Collections.emptyList();
+        }
+        final List<AtInterface> ats = new ArrayList<AtInterface>(entries.length);
+        for (final int entry : entries) {
+            ats.add(m_atInterfaces.get(entry));
+        }
+        return ats;
+    }
+
+    /**
+     * Returns the MAC addresses that have AtInterfaces.
+     */
+    Set<String> getMacAddresses() {
+        return m_macAddresses;
+    }
+
+    /**
+     * An open addressing multimap of long keys to int values that keeps the
+     * values of each key in the order in which they were put.
+     */
+    static final class LongIntMultimap {
+        private static final int[] NO_VALUES = new int[0];
+
+        private long[] m_keys;
+        // first and last entry of each slot, plus one; 0 marks a free slot
+        private int[] m_heads;
+        private int[] m_tails;
+        private int m_size = 0;
+
+        private int[] m_values;
+        // next entry of the same key, plus one; 0 marks the last entry
+        private int[] m_next;
+        private int m_entries = 0;
+
+        LongIntMultimap(final int expectedSize) {
+            int capacity = 16;
+            while (capacity < expectedSize * 2) {
+                capacity <<= 1;
+            }
+            m_keys = new long[capacity];
+            m_heads = new int[capacity];
+            m_tails = new int[capacity];
+            m_values = new int[Math.max(16, expectedSize)];
+            m_next = new int[m_values.length];
+        }
+
+        private static int slot(final long key, final long[] keys, final int[] heads) {
+            final int mask = keys.length - 1;
+            final int hash = (int)(key ^ (key >>> 32)) * 0x9E3779B9;
+            int i = (hash ^ (hash >>> 16)) & mask;
+            while (heads[i] != 0 && keys[i] != key) {
+                i = (i + 1) & mask;
+            }
+            return i;
+        }
+
+        void put(final long key, final int value) {
+            if (m_entries == m_values.length) {
+                m_values = Arrays.copyOf(m_values, m_entries * 2);
+                m_next = Arrays.copyOf(m_next, m_entries * 2);
+            }
+            m_values[m_entries] = value;
+            m_next[m_entries] = 0;
+            final int entry = ++m_entries;
+
+            final int i = slot(key, m_keys, m_heads);
+            if (m_heads[i] == 0) {
+                m_keys[i] = key;
+                m_heads[i] = entry;
+                m_tails[i] = entry;
+                if (++m_size * 2 > m_keys.length) {
+                    rehash();
+                }
+            } else {
+                m_next[m_tails[i] - 1] = entry;
+                m_tails[i] = entry;
+            }
+        }
+
+        private void rehash() {
+            final long[] keys = new long[m_keys.length * 2];
+            final int[] heads = new int[keys.length];
+            final int[] tails = new int[keys.length];
+            for (int i = 0; i < m_keys.length; i++) {
+                if (m_heads[i] != 0) {
+                    final int j = slot(m_keys[i], keys, heads);
+                    keys[j] = m_keys[i];
+                    heads[j] = m_heads[i];
+                    tails[j] = m_tails[i];
+                }
+            }
+            m_keys = keys;
+            m_heads = heads;
+            m_tails = tails;
+        }
+
+        boolean containsKey(final long key) {
+            return m_heads[slot(key, m_keys, m_heads)] != 0;
+        }
+
+        int[] get(final long key) {
+            final int head = m_heads[slot(key, m_keys, m_heads)];
+            if (head == 0) {
+                return NO_VALUES;
+            }
+            int count = 0;
+            for (int entry = head; entry != 0; entry = m_next[entry - 1]) {
+                count++;
+            }
+            final int[] values = new int[count];
+            count = 0;
+            for (int entry = head; entry != 0; entry = m_next[entry - 1]) {
+                values[count++] = m_values[entry - 1];
+            }
+            return values;
+        }
+
+        int size() {
+            return m_size;
+        }
+    }
+}
@@ -52,4 +52,10 @@ public class Linkd extends AbstractSpringContextJmxServiceDaemon<org.opennms.net
         return "linkdContext";
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public String[] getDiscoveryStatistics() {
+        return getDaemon().getDiscoveryStatistics();
+    }
+
 }
@@ -37,4 +37,12 @@ import org.opennms.netmgt.daemon.BaseOnmsMBean;
  * @version $Id: $
  */
 public interface LinkdMBean extends BaseOnmsMBean {
+
+    /**
+     * Returns the number of links found by protocol and how long the last
+     * link discovery pass of each package took.
+     *
+     * @return one line of statistics per package
+     */
+    public String[] getDiscoveryStatistics();
 }
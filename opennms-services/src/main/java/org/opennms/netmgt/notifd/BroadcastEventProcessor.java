@@ -288,6 +288,7 @@ public final class BroadcastEventProcessor implements EventListener {
                         
                         Collection<Integer> notifIDs = getNotificationManager().acknowledgeNotice(event, curAck.getAcknowledge(), curAck.getMatch());
                         processed = true;
+                        cancelQueuedNotices(notifIDs);
                         try {
                             // only send resolution notifications if notifications are globally turned on
                             if (curAck.getNotify() && notifsOn) {
@@ -314,6 +315,7 @@ public final class BroadcastEventProcessor implements EventListener {
                 return;
             }
             Collection<Integer> notifIDs = getNotificationManager().acknowledgeNoticeBasedOnAlarms(event);
+            cancelQueuedNotices(notifIDs);
             try {
                 // only send resolution notifications if notifications are globally turned on
                 if (autoAck.getNotify() && !notifIDs.isEmpty() && notifsOn) {
@@ -327,6 +329,25 @@ public final class BroadcastEventProcessor implements EventListener {
         }
     }
 
+    /**
+     * Drops the tasks of acknowledged notices that are still waiting in the
+     * notice queues.  The tasks would find the notice acknowledged and not
+     * send anything anyway, this only saves them the trip to the database.
+     */
+    private void cancelQueuedNotices(Collection<Integer> notifIDs) {
+        if (m_noticeQueues == null || notifIDs == null || notifIDs.isEmpty()) {
+            return;
+        }
+        synchronized (m_noticeQueues) {
+            for (NoticeQueue noticeQueue : m_noticeQueues.values()) {
+                for (int notifId : notifIDs) {
+                    // a negative id marks a notice that was acknowledged by the user already
+                    noticeQueue.cancel(Math.abs(notifId));
+                }
+            }
+        }
+    }
+
     private void sendResolvedNotifications(Collection<Integer> notifIDs, Event event, 
             String resolutionPrefix, boolean skipNumericPrefix) throws Exception {
         for (int notifId : notifIDs) {
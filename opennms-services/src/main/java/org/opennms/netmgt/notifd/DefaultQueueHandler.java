@@ -29,7 +29,6 @@
 package org.opennms.netmgt.notifd;
 
 import java.util.List;
-import java.util.SortedMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,11 +36,9 @@ import org.opennms.core.utils.TimeConverter;
 
 /**
  * This class is used as a thread for executing notices for events that are
- * discovered by the notice daemon. The notices are read from an scheduler queue
- * and the processes are created by the fiber. Each created process is added to
- * garbage collection list that is periodically polled and culled based upon the
- * status of the process or how long the process is run. If the process has run
- * long than allocated it is terminated during collection.
+ * discovered by the notice daemon. The notices that have come due are taken
+ * from the notice queue by the fiber and handed to a {@link NoticeDispatcher},
+ * which runs them on its thread pools.
  *
  * @author <a href="mailto:jason@opennms.org">Jason Johns</a>
  * @author <a href="http://www.opennms.org/>OpenNMS</a>
@@ -68,6 +65,17 @@ public class DefaultQueueHandler implements NotifdQueueHandler {
      */
     private int m_status;
 
+    /**
+     * Runs the notices that have come due.
+     */
+    private NoticeDispatcher m_noticeDispatcher;
+
+    /**
+     * Whether the dispatcher has been created by this fiber, and has to be
+     * stopped with it.
+     */
+    private boolean m_ownsDispatcher = false;
+
     /**
      * <p>Constructor for DefaultQueueHandler.</p>
      */
@@ -93,6 +101,24 @@ public class DefaultQueueHandler implements NotifdQueueHandler {
         m_interval = TimeConverter.convertToMillis(interval);
     }
 
+    /**
+     * Sets the dispatcher that runs the notices of this queue.  If none is
+     * set, the fiber creates one of its own when the first notice comes due.
+     *
+     * @param noticeDispatcher a {@link org.opennms.netmgt.notifd.NoticeDispatcher} object.
+     */
+    public synchronized void setNoticeDispatcher(final NoticeDispatcher noticeDispatcher) {
+        m_noticeDispatcher = noticeDispatcher;
+    }
+
+    private synchronized NoticeDispatcher getNoticeDispatcher() {
+        if (m_noticeDispatcher == null) {
+            m_noticeDispatcher = new NoticeDispatcher();
+            m_ownsDispatcher = true;
+        }
+        return m_noticeDispatcher;
+    }
+
     /**
      * The main worker of the fiber. This method is executed by the encapsulated
      * thread to read commands from the execution queue and to execute those
@@ -156,34 +182,24 @@ public class DefaultQueueHandler implements NotifdQueueHandler {
     @Override
     public void processQueue() {
         if (m_noticeQueue != null) {
-            synchronized(m_noticeQueue) {
-                try {
-                	final Long now = System.currentTimeMillis();
-                	final SortedMap<Long, List<NotificationTask>> readyNotices = m_noticeQueue.headMap(now);
-        
-                    for (final List<NotificationTask> list : readyNotices.values()) {
-                        for (final NotificationTask task : list) {
-                            startTask(task);
-                        }
-                    }
-                    readyNotices.clear();
-        
-                    if (m_noticeQueue != null && m_noticeQueue.size() > 0) {
-			LOG.debug("current state of tree: {}", m_noticeQueue);
-                    }
-                } catch (final Throwable e) {
-                    LOG.error("failed to start notification task", e);
-                    
+            try {
+                final List<NotificationTask> readyNotices = m_noticeQueue.expire(System.currentTimeMillis());
+                if (readyNotices.isEmpty()) {
+                    return;
                 }
+
+                final NoticeDispatcher dispatcher = getNoticeDispatcher();
+                for (final NotificationTask task : readyNotices) {
+                    dispatcher.dispatch(task);
+                }
+
+                LOG.debug("started {} notices, {} notices still queued", readyNotices.size(), m_noticeQueue.size());
+            } catch (final Throwable e) {
+                LOG.error("failed to start notification task", e);
             }
         }
     }
 
-	private void startTask(final NotificationTask task) {
-		if (!task.isStarted())
-			task.start();
-	}
-
     /**
      * Starts the fiber. If the fiber has already been run or is currently
      * running then an exception is generated. The status of the fiber is
@@ -216,6 +232,10 @@ public class DefaultQueueHandler implements NotifdQueueHandler {
         if (m_status != STOPPED)
             m_status = STOP_PENDING;
 
+        if (m_ownsDispatcher) {
+            m_noticeDispatcher.stop();
+        }
+
         notifyAll();
     }
 
@@ -0,0 +1,328 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.notifd;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opennms.core.concurrent.LogPreservingThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the notification tasks that come due in the notice queues.
+ *
+ * The tasks themselves, which check whether their notice is still
+ * outstanding and whether the user is on duty, run on a bounded pool of
+ * threads.  The commands they send are handed to a separate pool per
+ * notification command (javaEmail, xmppMessage, http, ...), each with its
+ * own number of threads and an optional limit on the number of sends per
+ * second, so that a slow mail server does not hold up pages that go out
+ * another way.  All the pools have bounded queues; once a queue is full, the
+ * thread that hands work to it runs the work itself, which slows down the
+ * notice queue handlers instead of piling up tasks in memory.  Work handed
+ * to the pools after {@link #stop()} is dropped, logged and counted.
+ *
+ * The settings are read from system properties:
+ * <ul>
+ * <li><code>org.opennms.notifd.taskThreads</code> (default 10)</li>
+ * <li><code>org.opennms.notifd.senderThreads[.&lt;command&gt;]</code> (default 5)</li>
+ * <li><code>org.opennms.notifd.sendRate[.&lt;command&gt;]</code>, in sends per second (default 0, unlimited)</li>
+ * <li><code>org.opennms.notifd.queueSize</code> (default 1000)</li>
+ * </ul>
+ */
+public class NoticeDispatcher {
+    private static final Logger LOG = LoggerFactory.getLogger(NoticeDispatcher.class);
+
+    private static final String PROPERTY_PREFIX = "org.opennms.notifd.";
+
+    /**
+     * Spaces the sends of a command at least a fixed interval apart.
+     */
+    private static final class RateLimiter {
+        private final long m_intervalNanos;
+        private long m_nextSend = System.nanoTime();
+
+        RateLimiter(final double sendsPerSecond) {
+            m_intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / sendsPerSecond);
+        }
+
+        void acquire() throws InterruptedException {
+            final long wait;
+            synchronized (this) {
+                final long now = System.nanoTime();
+                wait = m_nextSend - now;
+                m_nextSend = Math.max(now, m_nextSend) + m_intervalNanos;
+            }
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+        }
+    }
+
+    /**
+     * The pool and rate limit of one notification command.
+     */
+    private final class Sender {
+        private final String m_command;
+        private final ThreadPoolExecutor m_executor;
+        private final RateLimiter m_rateLimiter;
+
+        Sender(final String command) {
+            m_command = command;
+            final int threads = Math.max(1, Integer.getInteger(PROPERTY_PREFIX + "senderThreads." + command, Integer.getInteger(PROPERTY_PREFIX + "senderThreads", 5)));
+            m_executor = createExecutor("NotifdSender-" + command, threads);
+            final double rate = getDouble(PROPERTY_PREFIX + "sendRate." + command, getDouble(PROPERTY_PREFIX + "sendRate", 0.0));
+            m_rateLimiter = rate > 0.0 ? new RateLimiter(rate) : null;
+            LOG.info("Sending {} notifications with {} threads{}", command, threads, (rate > 0.0 ? ", at most " + rate + " per second" : ""));
+        }
+
+        void send(final Runnable send) {
+            m_executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (m_rateLimiter != null) {
+                            m_rateLimiter.acquire();
+                        }
+                    } catch (final InterruptedException e) {
+                        LOG.warn("Interrupted while waiting to send a {} notification", m_command);
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    send.run();
+                    m_sent.incrementAndGet();
+                }
+
+                @Override
+                public String toString() {
+                    return m_command + " notification";
+                }
+            });
+        }
+    }
+
+    private final int m_queueSize;
+    private final ThreadPoolExecutor m_taskExecutor;
+    private final Map<String, Sender> m_senders = new HashMap<String, Sender>();
+
+    private final AtomicLong m_dispatched = new AtomicLong();
+    private final AtomicLong m_sent = new AtomicLong();
+    private final AtomicLong m_dropped = new AtomicLong();
+    private final AtomicLong m_totalLatency = new AtomicLong();
+    private volatile long m_maxLatency = 0;
+    private volatile long m_lastLatency = 0;
+
+    /**
+     * Runs the work on the calling thread when the queue of a pool is full,
+     * and drops it once the pool has been shut down.
+     */
+    private final RejectedExecutionHandler m_rejectedExecutionHandler = new RejectedExecutionHandler() {
+        @Override
+        public void rejectedExecution(final Runnable r, final ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                m_dropped.incrementAndGet();
+                LOG.warn("Dropping {} because notifd has been stopped", r);
+            } else {
+                r.run();
+            }
+        }
+    };
+
+    /**
+     * <p>Constructor for NoticeDispatcher.</p>
+     */
+    public NoticeDispatcher() {
+        m_queueSize = Math.max(1, Integer.getInteger(PROPERTY_PREFIX + "queueSize", 1000));
+        m_taskExecutor = createExecutor("NotifdTask", Math.max(1, Integer.getInteger(PROPERTY_PREFIX + "taskThreads", 10)));
+    }
+
+    private ThreadPoolExecutor createExecutor(final String name, final int threads) {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(m_queueSize), new LogPreservingThreadFactory(name, threads, true), m_rejectedExecutionHandler);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static double getDouble(final String property, final double defaultValue) {
+        final String value = System.getProperty(property);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (final NumberFormatException e) {
+            LOG.warn("Invalid value '{}' for {}, using {}", value, property, defaultValue);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Runs a task that has come due, unless it has already been started.
+     *
+     * @param task the task to run
+     */
+    public void dispatch(final NotificationTask task) {
+        if (!task.markStarted()) {
+            return;
+        }
+        task.setNoticeDispatcher(this);
+        m_taskExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                recordLatency(System.currentTimeMillis() - task.getSendTime());
+                task.run();
+            }
+
+            @Override
+            public String toString() {
+                return task.toString();
+            }
+        });
+    }
+
+    /**
+     * Sends a command of a notification task on the pool of that command.
+     *
+     * @param command the name of the notification command
+     * @param send the work of sending it
+     */
+    public void send(final String command, final Runnable send) {
+        getSender(command).send(send);
+    }
+
+    private synchronized Sender getSender(final String command) {
+        Sender sender = m_senders.get(command);
+        if (sender == null) {
+            sender = new Sender(command);
+            m_senders.put(command, sender);
+            if (m_taskExecutor.isShutdown()) {
+                // a command first seen after stop() is dropped like the others
+                sender.m_executor.shutdown();
+            }
+        }
+        return sender;
+    }
+
+    private void recordLatency(final long latency) {
+        final long lateness = Math.max(0, latency);
+        m_dispatched.incrementAndGet();
+        m_totalLatency.addAndGet(lateness);
+        m_lastLatency = lateness;
+        if (lateness > m_maxLatency) {
+            m_maxLatency = lateness;
+        }
+    }
+
+    /**
+     * Stops the pools.  Tasks that are already queued are still run; tasks
+     * and commands handed over afterwards are dropped.
+     */
+    public synchronized void stop() {
+        m_taskExecutor.shutdown();
+        for (final Sender sender : m_senders.values()) {
+            sender.m_executor.shutdown();
+        }
+    }
+
+    /**
+     * Returns the number of tasks that have been started.
+     *
+     * @return a long.
+     */
+    public long getDispatched() {
+        return m_dispatched.get();
+    }
+
+    /**
+     * Returns the number of commands that have been sent.
+     *
+     * @return a long.
+     */
+    public long getSent() {
+        return m_sent.get();
+    }
+
+    /**
+     * Returns the number of tasks and commands dropped because they were
+     * handed over after the dispatcher had been stopped.
+     *
+     * @return a long.
+     */
+    public long getDropped() {
+        return m_dropped.get();
+    }
+
+    /**
+     * Returns the number of tasks and commands waiting for a thread.
+     *
+     * @return a long.
+     */
+    public synchronized long getPending() {
+        long pending = m_taskExecutor.getQueue().size();
+        for (final Sender sender : m_senders.values()) {
+            pending += sender.m_executor.getQueue().size();
+        }
+        return pending;
+    }
+
+    /**
+     * Returns how late, in milliseconds, the most recently started task
+     * was started after its send time.
+     *
+     * @return a long.
+     */
+    public long getLastLatency() {
+        return m_lastLatency;
+    }
+
+    /**
+     * Returns the largest latency, in milliseconds, seen so far.
+     *
+     * @return a long.
+     */
+    public long getMaxLatency() {
+        return m_maxLatency;
+    }
+
+    /**
+     * Returns the average latency, in milliseconds, of all started tasks.
+     *
+     * @return a double.
+     */
+    public double getAverageLatency() {
+        final long dispatched = m_dispatched.get();
+        return dispatched == 0 ? 0.0 : (double) m_totalLatency.get() / dispatched;
+    }
+}
@@ -28,41 +28,282 @@
 
 package org.opennms.netmgt.notifd;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
 
 /**
- * This is a data class designed to hold NotificationTasks in an ordered map
- * that can handle collisions.
+ * This is a data class designed to hold NotificationTasks until they are due
+ * to be sent.
+ *
+ * The tasks are kept in a hashed timing wheel: each bucket holds the tasks
+ * whose send time falls into one tick, modulo the size of the wheel, so
+ * queuing a task and expiring the tasks of a tick take constant time no
+ * matter how many notices are waiting.  Tasks are also indexed by notice id
+ * so that the pending tasks of an acknowledged notice can be cancelled
+ * without waiting for them to come due.
  *
- * @author <A HREF="mailto:jason@opennms.org">Jason Johns </A>
- * @author <A HREF="http://www.opennms.org/">OpenNMS </A>
  * @author <A HREF="mailto:jason@opennms.org">Jason Johns </A>
  * @author <A HREF="http://www.opennms.org/">OpenNMS </A>
  * @version 1.1.1.1
  */
-public class NoticeQueue extends DuplicateTreeMap<Long, NotificationTask> {
+public class NoticeQueue {
     private static final Logger LOG = LoggerFactory.getLogger(NoticeQueue.class);
+
+    /** Default length of a tick in milliseconds. */
+    public static final long DEFAULT_TICK_LENGTH = 1000;
+
+    /** Default number of buckets in the wheel. */
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+
+    private static final Comparator<NotificationTask> SEND_TIME_ORDER = new Comparator<NotificationTask>() {
+        @Override
+        public int compare(final NotificationTask a, final NotificationTask b) {
+            return a.getSendTime() < b.getSendTime() ? -1 : (a.getSendTime() == b.getSendTime() ? 0 : 1);
+        }
+    };
+
     /**
-     * 
+     * A queued task, linked into the bucket it is waiting in.
      */
-    private static final long serialVersionUID = 7463770974135218140L;
+    private static final class NoticeEntry {
+        private final NotificationTask m_task;
+        private final long m_sendTime;
+        private boolean m_cancelled = false;
+        private NoticeEntry m_next;
 
-    /** {@inheritDoc} */
-    @Override
-    public NotificationTask putItem(Long key, NotificationTask value) {
-        NotificationTask ret = super.putItem(key, value);
+        NoticeEntry(final NotificationTask task, final long sendTime) {
+            m_task = task;
+            m_sendTime = sendTime;
+        }
+    }
+
+    private final long m_tickLength;
+    private final NoticeEntry[] m_heads;
+    private final NoticeEntry[] m_tails;
+    private final Map<Integer, List<NoticeEntry>> m_entriesByNotifyId = new HashMap<Integer, List<NoticeEntry>>();
+
+    /**
+     * The first tick that has not been completely expired yet.
+     */
+    private long m_nextTick;
+
+    private int m_size = 0;
+    private long m_cancelled = 0;
+
+    /**
+     * <p>Constructor for NoticeQueue.</p>
+     */
+    public NoticeQueue() {
+        this(DEFAULT_TICK_LENGTH, DEFAULT_WHEEL_SIZE);
+    }
+
+    /**
+     * <p>Constructor for NoticeQueue.</p>
+     *
+     * @param tickLength the length of a tick in milliseconds
+     * @param wheelSize the number of buckets in the wheel
+     */
+    public NoticeQueue(final long tickLength, final int wheelSize) {
+        Assert.isTrue(tickLength > 0, "tickLength must be greater than zero");
+        Assert.isTrue(wheelSize > 0, "wheelSize must be greater than zero");
+
+        m_tickLength = tickLength;
+        m_heads = new NoticeEntry[wheelSize];
+        m_tails = new NoticeEntry[wheelSize];
+        m_nextTick = System.currentTimeMillis() / tickLength;
+    }
+
+    /**
+     * Queues a task to be sent at the given time.
+     *
+     * @param sendTime the time to send the task at
+     * @param task the task to queue
+     * @return the task if it was already queued, or null
+     */
+    public synchronized NotificationTask putItem(final Long sendTime, final NotificationTask task) {
+        final NoticeEntry entry = new NoticeEntry(task, sendTime);
+
+        // resolution notices have no id of their own and are never cancelled
+        if (task.getNotifyId() != -1) {
+            List<NoticeEntry> entries = m_entriesByNotifyId.get(task.getNotifyId());
+            if (entries == null) {
+                entries = new ArrayList<NoticeEntry>(1);
+                m_entriesByNotifyId.put(task.getNotifyId(), entries);
+            } else {
+                for (final NoticeEntry queued : entries) {
+                    if (queued.m_task == task && queued.m_sendTime == entry.m_sendTime) {
+                        return task;
+                    }
+                }
+            }
+            entries.add(entry);
+        }
+
+        // a task that is already due goes into the bucket that is expired next
+        final int bucket = bucketOf(Math.max(sendTime / m_tickLength, m_nextTick));
+        if (m_tails[bucket] == null) {
+            m_heads[bucket] = entry;
+        } else {
+            m_tails[bucket].m_next = entry;
+        }
+        m_tails[bucket] = entry;
+        m_size++;
 
-        
         if (LOG.isDebugEnabled()) {
-            if (value.getNotifyId() == -1) {
+            if (task.getNotifyId() == -1) {
                 LOG.debug("autoNotify task queued");
             } else {
-                LOG.debug("task queued for notifyID {}", value.getNotifyId());
+                LOG.debug("task queued for notifyID {}", task.getNotifyId());
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Removes the tasks whose send time is before the given time from the
+     * queue and returns them, ordered by send time.
+     *
+     * @param now the current time
+     * @return the tasks that are due
+     */
+    public synchronized List<NotificationTask> expire(final long now) {
+        final List<NotificationTask> expired = new ArrayList<NotificationTask>();
+        if (m_size == 0) {
+            m_nextTick = Math.max(m_nextTick, now / m_tickLength);
+            return expired;
+        }
+
+        final long nowTick = now / m_tickLength;
+        // after a full turn of the wheel every bucket has been looked at
+        final long lastTick = Math.min(nowTick, m_nextTick + m_heads.length - 1);
+        for (long tick = m_nextTick; tick <= lastTick; tick++) {
+            expireBucket(bucketOf(tick), now, expired);
+        }
+        // the current tick is not over yet, so look at its bucket again next time
+        m_nextTick = Math.max(m_nextTick, nowTick);
+
+        if (expired.size() > 1) {
+            Collections.sort(expired, SEND_TIME_ORDER);
+        }
+        return expired;
+    }
+
+    private void expireBucket(final int bucket, final long now, final List<NotificationTask> expired) {
+        NoticeEntry prev = null;
+        NoticeEntry entry = m_heads[bucket];
+        while (entry != null) {
+            final NoticeEntry next = entry.m_next;
+            if (entry.m_cancelled || entry.m_sendTime < now) {
+                if (prev == null) {
+                    m_heads[bucket] = next;
+                } else {
+                    prev.m_next = next;
+                }
+                if (next == null) {
+                    m_tails[bucket] = prev;
+                }
+                entry.m_next = null;
+
+                if (!entry.m_cancelled) {
+                    unindex(entry);
+                    m_size--;
+                    expired.add(entry.m_task);
+                }
+            } else {
+                prev = entry;
+            }
+            entry = next;
+        }
+    }
+
+    private void unindex(final NoticeEntry entry) {
+        final Integer notifyId = entry.m_task.getNotifyId();
+        final List<NoticeEntry> entries = m_entriesByNotifyId.get(notifyId);
+        if (entries != null) {
+            entries.remove(entry);
+            if (entries.isEmpty()) {
+                m_entriesByNotifyId.remove(notifyId);
+            }
+        }
+    }
+
+    /**
+     * Cancels all the queued tasks of a notice, e.g. because the notice has
+     * been acknowledged.  The cancelled entries are dropped from their
+     * buckets the next time the wheel passes them.
+     *
+     * @param notifyId the id of the notice
+     * @return the number of tasks that have been cancelled
+     */
+    public synchronized int cancel(final int notifyId) {
+        final List<NoticeEntry> entries = m_entriesByNotifyId.remove(notifyId);
+        if (entries == null) {
+            return 0;
+        }
+        for (final NoticeEntry entry : entries) {
+            entry.m_cancelled = true;
+        }
+        m_size -= entries.size();
+        m_cancelled += entries.size();
+
+        LOG.debug("cancelled {} queued tasks for notifyID {}", entries.size(), notifyId);
+        return entries.size();
+    }
+
+    /**
+     * Returns the number of tasks waiting in the queue.
+     *
+     * @return a int.
+     */
+    public synchronized int size() {
+        return m_size;
+    }
+
+    /**
+     * <p>isEmpty</p>
+     *
+     * @return a boolean.
+     */
+    public synchronized boolean isEmpty() {
+        return m_size == 0;
+    }
+
+    /**
+     * Returns the number of tasks that have been cancelled before they were
+     * due.
+     *
+     * @return a long.
+     */
+    public synchronized long getCancelled() {
+        return m_cancelled;
+    }
+
+    private int bucketOf(final long tick) {
+        return (int) (tick % m_heads.length);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized String toString() {
+        final StringBuffer buffer = new StringBuffer();
+
+        for (final NoticeEntry head : m_heads) {
+            for (NoticeEntry entry = head; entry != null; entry = entry.m_next) {
+                if (!entry.m_cancelled) {
+                    buffer.append(entry.m_task.toString() + System.getProperty("line.separator"));
+                }
             }
         }
-        
-        return ret;
+
+        return buffer.toString();
     }
 }
@@ -82,6 +82,11 @@ public final class Notifd extends AbstractServiceDaemon {
      */
     private final Map<String, NotifdQueueHandler> m_queueHandlers = new HashMap<String, NotifdQueueHandler>();
 
+    /**
+     * Runs the notices of all the queues.
+     */
+    private volatile NoticeDispatcher m_noticeDispatcher;
+
     /**
      * The broadcast event receiver.
      */
@@ -120,6 +125,7 @@ public final class Notifd extends AbstractServiceDaemon {
     protected void onInit() {
         
         m_eventReader = new BroadcastEventProcessor();
+        m_noticeDispatcher = new NoticeDispatcher();
 
         try {
             LOG.info("Notification status = {}", getConfigManager().getNotificationStatus());
@@ -134,6 +140,9 @@ public final class Notifd extends AbstractServiceDaemon {
                 handlerQueue.setQueueID(queue.getQueueId());
                 handlerQueue.setNoticeQueue(curQueue);
                 handlerQueue.setInterval(queue.getInterval());
+                if (handlerQueue instanceof DefaultQueueHandler) {
+                    ((DefaultQueueHandler) handlerQueue).setNoticeDispatcher(m_noticeDispatcher);
+                }
 
                 m_noticeQueues.put(queue.getQueueId(), curQueue);
                 m_queueHandlers.put(queue.getQueueId(), handlerQueue);
@@ -279,6 +288,46 @@ public final class Notifd extends AbstractServiceDaemon {
         return m_eventReader;
     }
 
+    /**
+     * Returns the dispatcher that runs the notices of the queues.
+     *
+     * @return a {@link org.opennms.netmgt.notifd.NoticeDispatcher} object.
+     */
+    public NoticeDispatcher getNoticeDispatcher() {
+        return m_noticeDispatcher;
+    }
+
+    /**
+     * Returns the number of notices waiting in all the notice queues.
+     *
+     * @return a long.
+     */
+    public long getNoticesQueued() {
+        long queued = 0;
+        synchronized (m_noticeQueues) {
+            for (NoticeQueue queue : m_noticeQueues.values()) {
+                queued += queue.size();
+            }
+        }
+        return queued;
+    }
+
+    /**
+     * Returns the number of queued notices that have been cancelled because
+     * they were acknowledged before they were sent.
+     *
+     * @return a long.
+     */
+    public long getNoticesCancelled() {
+        long cancelled = 0;
+        synchronized (m_noticeQueues) {
+            for (NoticeQueue queue : m_noticeQueues.values()) {
+                cancelled += queue.getCancelled();
+            }
+        }
+        return cancelled;
+    }
+
     /**
      * <p>onStart</p>
      */
@@ -301,6 +350,10 @@ public final class Notifd extends AbstractServiceDaemon {
         } catch (Throwable e) {
         }
 
+        if (m_noticeDispatcher != null) {
+            m_noticeDispatcher.stop();
+        }
+
         if (m_eventReader != null) {
             m_eventReader.close();
         }
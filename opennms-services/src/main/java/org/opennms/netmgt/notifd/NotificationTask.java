@@ -61,7 +61,7 @@ import org.slf4j.LoggerFactory;
  * notificationCommands.xml by:
  * @author <A HREF="mailto:david@opennms.org">David Hustace </A>
  */
-public class NotificationTask extends Thread {
+public class NotificationTask implements Runnable {
     
     private static final Logger LOG = LoggerFactory.getLogger(NotificationTask.class);
     
@@ -93,7 +93,9 @@ public class NotificationTask extends Thread {
      */
     private final long m_sendTime;
 
-    private volatile boolean m_started = false;
+    private boolean m_started = false;
+
+    private volatile NoticeDispatcher m_noticeDispatcher;
 
     private final NotificationManager m_notificationManager;
 
@@ -239,34 +241,17 @@ public class NotificationTask extends Thread {
                 if (getUserManager().isUserOnDuty(m_user.getUserId(), Calendar.getInstance())) {
 
                     // send the notice
-                    ExecutorStrategy strategy = null;
-                    String cntct = "";
-
-                    for (Command command : m_commands) {
-                        try {
-                            cntct = getContactInfo(command.getName());
-                            try {
-                                getNotificationManager().updateNoticeWithUserInfo(m_user.getUserId(), m_notifyId, command.getName(), cntct, m_autoNotify);
-                            } catch (Throwable e) {
-                                LOG.error("Could not insert notice info into database, aborting send notice", e);
-                                continue;
-                            }
-                            String binaryCommand = command.getBinary();
-                            if (binaryCommand == null) {
-                                LOG.error("binary flag not set for command: {}.  Guessing false.", command.getExecute());
-                                binaryCommand = "false";
-                            }
-                            if (binaryCommand.equals("true")) {
-                                strategy = new CommandExecutor();
-                            } else {
-                                strategy = new ClassExecutor();
-                            }
-                            LOG.debug("Class created is: {}", command.getClass());
-
-                            int returnCode = strategy.execute(command.getExecute(), getArgumentList(command));
-                            LOG.debug("command {} return code = {}", command.getName(), returnCode);
-                        } catch (Throwable e) {
-                            LOG.warn("Notification command failed: {}", command.getName(), e);
+                    for (final Command command : m_commands) {
+                        final NoticeDispatcher dispatcher = m_noticeDispatcher;
+                        if (dispatcher == null) {
+                            sendCommand(command);
+                        } else {
+                            dispatcher.send(command.getName(), new Runnable() {
+                                @Override
+                                public void run() {
+                                    sendCommand(command);
+                                }
+                            });
                         }
                     }
                 } else {
@@ -291,6 +276,35 @@ public class NotificationTask extends Thread {
         }
     }
 
+    private void sendCommand(final Command command) {
+        try {
+            final String cntct = getContactInfo(command.getName());
+            try {
+                getNotificationManager().updateNoticeWithUserInfo(m_user.getUserId(), m_notifyId, command.getName(), cntct, m_autoNotify);
+            } catch (Throwable e) {
+                LOG.error("Could not insert notice info into database, aborting send notice", e);
+                return;
+            }
+            String binaryCommand = command.getBinary();
+            if (binaryCommand == null) {
+                LOG.error("binary flag not set for command: {}.  Guessing false.", command.getExecute());
+                binaryCommand = "false";
+            }
+            final ExecutorStrategy strategy;
+            if (binaryCommand.equals("true")) {
+                strategy = new CommandExecutor();
+            } else {
+                strategy = new ClassExecutor();
+            }
+            LOG.debug("Class created is: {}", command.getClass());
+
+            int returnCode = strategy.execute(command.getExecute(), getArgumentList(command));
+            LOG.debug("command {} return code = {}", command.getName(), returnCode);
+        } catch (Throwable e) {
+            LOG.warn("Notification command failed: {}", command.getName(), e);
+        }
+    }
+
     private NotificationManager getNotificationManager() {
         return m_notificationManager;
     }
@@ -386,12 +400,16 @@ public class NotificationTask extends Thread {
     }
 
     /**
-     * <p>start</p>
+     * Marks the task as started.
+     *
+     * @return false if the task had already been started
      */
-    @Override
-    public synchronized void start() {
+    synchronized boolean markStarted() {
+        if (m_started) {
+            return false;
+        }
         m_started = true;
-        super.start();
+        return true;
     }
 
     /**
@@ -399,8 +417,18 @@ public class NotificationTask extends Thread {
      *
      * @return a boolean.
      */
-    public boolean isStarted() {
+    public synchronized boolean isStarted() {
         return m_started;
     }
 
+    /**
+     * Sets the dispatcher the commands of this task are sent through.  If
+     * none is set they are sent by the thread running the task.
+     *
+     * @param noticeDispatcher a {@link org.opennms.netmgt.notifd.NoticeDispatcher} object.
+     */
+    void setNoticeDispatcher(NoticeDispatcher noticeDispatcher) {
+        m_noticeDispatcher = noticeDispatcher;
+    }
+
 }
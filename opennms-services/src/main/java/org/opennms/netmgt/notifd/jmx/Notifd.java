@@ -40,6 +40,7 @@ import org.opennms.netmgt.config.UserFactory;
 import org.opennms.netmgt.daemon.AbstractServiceDaemon;
 import org.opennms.netmgt.dao.hibernate.NodeDaoHibernate;
 import org.opennms.netmgt.eventd.EventIpcManagerFactory;
+import org.opennms.netmgt.notifd.NoticeDispatcher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -156,6 +157,67 @@ public class Notifd extends AbstractServiceDaemon implements NotifdMBean {
         getNotifd().stop();
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public long getNoticesQueued() {
+        return getNotifd().getNoticesQueued();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getNoticesCancelled() {
+        return getNotifd().getNoticesCancelled();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getNoticesDispatched() {
+        final NoticeDispatcher dispatcher = getNotifd().getNoticeDispatcher();
+        return dispatcher == null ? 0L : dispatcher.getDispatched();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getNotificationsSent() {
+        final NoticeDispatcher dispatcher = getNotifd().getNoticeDispatcher();
+        return dispatcher == null ? 0L : dispatcher.getSent();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getNoticesDropped() {
+        final NoticeDispatcher dispatcher = getNotifd().getNoticeDispatcher();
+        return dispatcher == null ? 0L : dispatcher.getDropped();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getDispatcherQueueDepth() {
+        final NoticeDispatcher dispatcher = getNotifd().getNoticeDispatcher();
+        return dispatcher == null ? 0L : dispatcher.getPending();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double getAverageNoticeLatency() {
+        final NoticeDispatcher dispatcher = getNotifd().getNoticeDispatcher();
+        return dispatcher == null ? 0.0 : dispatcher.getAverageLatency();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getMaxNoticeLatency() {
+        final NoticeDispatcher dispatcher = getNotifd().getNoticeDispatcher();
+        return dispatcher == null ? 0L : dispatcher.getMaxLatency();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getLastNoticeLatency() {
+        final NoticeDispatcher dispatcher = getNotifd().getNoticeDispatcher();
+        return dispatcher == null ? 0L : dispatcher.getLastLatency();
+    }
+
     /**
      * Override {@link AbstractServiceDaemon#getStatus()} to use the status of
      * the {@link org.opennms.netmgt.notifd.Notifd} instance.
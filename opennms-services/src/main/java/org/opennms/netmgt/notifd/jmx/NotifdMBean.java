@@ -37,4 +37,48 @@ import org.opennms.netmgt.daemon.BaseOnmsMBean;
  * @version $Id: $
  */
 public interface NotifdMBean extends BaseOnmsMBean {
+    /**
+     * @return The number of notices waiting in the notice queues
+     */
+    public long getNoticesQueued();
+
+    /**
+     * @return The cumulative number of queued notices that were cancelled because they were acknowledged before they were due
+     */
+    public long getNoticesCancelled();
+
+    /**
+     * @return The cumulative number of notices that have been started since notifd startup
+     */
+    public long getNoticesDispatched();
+
+    /**
+     * @return The cumulative number of notification commands that have been sent since notifd startup
+     */
+    public long getNotificationsSent();
+
+    /**
+     * @return The cumulative number of notices and notification commands dropped because notifd had been stopped
+     */
+    public long getNoticesDropped();
+
+    /**
+     * @return The number of notices and notification commands waiting for a thread
+     */
+    public long getDispatcherQueueDepth();
+
+    /**
+     * @return The average delay in milliseconds between the time a notice was due and the time it was started
+     */
+    public double getAverageNoticeLatency();
+
+    /**
+     * @return The largest delay in milliseconds between the time a notice was due and the time it was started
+     */
+    public long getMaxNoticeLatency();
+
+    /**
+     * @return The delay in milliseconds between the time the most recent notice was due and the time it was started
+     */
+    public long getLastNoticeLatency();
 }
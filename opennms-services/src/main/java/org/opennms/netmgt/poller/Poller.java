@@ -46,6 +46,7 @@ import org.opennms.netmgt.config.PollerConfig;
 import org.opennms.netmgt.config.poller.Package;
 import org.opennms.netmgt.daemon.AbstractServiceDaemon;
 import org.opennms.netmgt.model.events.EventIpcManager;
+import org.opennms.netmgt.poller.monitors.support.AsyncPollEngine;
 import org.opennms.netmgt.poller.pollables.DbPollEvent;
 import org.opennms.netmgt.poller.pollables.PollEvent;
 import org.opennms.netmgt.poller.pollables.PollableNetwork;
@@ -57,6 +58,7 @@ import org.opennms.netmgt.poller.pollables.PollableVisitorAdaptor;
 import org.opennms.netmgt.scheduler.LegacyScheduler;
 import org.opennms.netmgt.scheduler.Schedule;
 import org.opennms.netmgt.scheduler.Scheduler;
+import org.opennms.netmgt.scheduler.TimingWheelScheduler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -73,9 +75,15 @@ public class Poller extends AbstractServiceDaemon {
 
     private final static String LOG4J_CATEGORY = "poller";
 
+    /**
+     * System property selecting the scheduler implementation, either
+     * <code>legacy</code> (the default) or <code>timingwheel</code>.
+     */
+    public final static String SCHEDULER_PROPERTY = "org.opennms.netmgt.poller.scheduler";
+
     private boolean m_initialized = false;
 
-    private LegacyScheduler m_scheduler = null;
+    private Scheduler m_scheduler = null;
 
     private PollerEventProcessor m_eventProcessor;
 
@@ -231,9 +239,9 @@ public class Poller extends AbstractServiceDaemon {
     /**
      * <p>setScheduler</p>
      *
-     * @param scheduler a {@link org.opennms.netmgt.scheduler.LegacyScheduler} object.
+     * @param scheduler a {@link org.opennms.netmgt.scheduler.Scheduler} object.
      */
-    public void setScheduler(LegacyScheduler scheduler) {
+    public void setScheduler(Scheduler scheduler) {
         m_scheduler = scheduler;
     }
 
@@ -292,7 +300,12 @@ public class Poller extends AbstractServiceDaemon {
         try {
             LOG.debug("init: Creating poller scheduler");
 
-            setScheduler(new LegacyScheduler("Poller", getPollerConfig().getThreads()));
+            if ("timingwheel".equalsIgnoreCase(System.getProperty(SCHEDULER_PROPERTY, "legacy"))) {
+                LOG.info("init: Using the timing wheel scheduler");
+                setScheduler(new TimingWheelScheduler("Poller", getPollerConfig().getThreads()));
+            } else {
+                setScheduler(new LegacyScheduler("Poller", getPollerConfig().getThreads()));
+            }
         } catch (RuntimeException e) {
             LOG.error("init: Failed to create poller scheduler", e);
             throw e;
@@ -332,6 +345,13 @@ public class Poller extends AbstractServiceDaemon {
 
         releaseServiceMonitors();
         setScheduler(null);
+
+        try {
+            AsyncPollEngine.shutdownInstance();
+        } catch (InterruptedException e) {
+            LOG.warn("stop: Interrupted while stopping the asynchronous poll engine", e);
+            Thread.currentThread().interrupt();
+        }
 	}
 
 	private void releaseServiceMonitors() {
@@ -74,4 +74,19 @@ public interface PollerdMBean extends BaseOnmsMBean {
      * @return The maximum number of threads allowed in the poller's thread pool
      */
     public long getMaxPoolThreads();
+
+    /**
+     * @return The number of poll tasks currently waiting in the scheduler
+     */
+    public long getSchedulerQueueDepth();
+
+    /**
+     * @return The average delay in milliseconds between the time a poll task was due and the time it was started (timing wheel scheduler only)
+     */
+    public double getSchedulerAverageLateness();
+
+    /**
+     * @return The largest delay in milliseconds between the time a poll task was due and the time it was started (timing wheel scheduler only)
+     */
+    public long getSchedulerMaxLateness();
 }
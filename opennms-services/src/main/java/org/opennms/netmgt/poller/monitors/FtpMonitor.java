@@ -43,11 +43,15 @@ import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.core.utils.ParameterMap;
 import org.opennms.core.utils.TimeoutTracker;
 import org.opennms.netmgt.capsd.plugins.FtpResponse;
+import org.opennms.netmgt.poller.AsyncServiceMonitor;
 import org.opennms.netmgt.poller.Distributable;
 import org.opennms.netmgt.poller.MonitoredService;
 import org.opennms.netmgt.poller.NetworkInterface;
 import org.opennms.netmgt.poller.NetworkInterfaceNotSupportedException;
+import org.opennms.netmgt.poller.PollFuture;
 import org.opennms.netmgt.poller.PollStatus;
+import org.opennms.netmgt.poller.monitors.support.AsyncPollEngine;
+import org.opennms.netmgt.poller.monitors.support.LineConversation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -61,7 +65,7 @@ import org.slf4j.LoggerFactory;
  * @author <A HREF="http://www.opennms.org/">OpenNMS </A>
  */
 @Distributable
-final public class FtpMonitor extends AbstractServiceMonitor {
+final public class FtpMonitor extends AbstractServiceMonitor implements AsyncServiceMonitor {
     
     
     public static final Logger LOG = LoggerFactory.getLogger(FtpMonitor.class);
@@ -235,4 +239,155 @@ final public class FtpMonitor extends AbstractServiceMonitor {
 
         return serviceStatus;
     }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Poll the specified address for FTP service availability like
+     * {@link #poll(MonitoredService, Map)} does, without blocking.
+     */
+    @Override
+    public PollFuture pollAsync(MonitoredService svc, Map<String, Object> parameters) {
+        NetworkInterface<InetAddress> iface = svc.getNetInterface();
+
+        // Check the interface type
+        if (iface.getType() != NetworkInterface.TYPE_INET) {
+            throw new NetworkInterfaceNotSupportedException("Unsupported interface type, only TYPE_INET currently supported");
+        }
+
+        int port = ParameterMap.getKeyedInteger(parameters, "port", DEFAULT_PORT);
+        String userid = ParameterMap.getKeyedString(parameters, "userid", null);
+        String password = ParameterMap.getKeyedString(parameters, "password", null);
+
+        return AsyncPollEngine.getInstance().poll(iface.getAddress(), new int[] { port }, parameters, DEFAULT_RETRY, DEFAULT_TIMEOUT, new FtpConversation(userid, password));
+    }
+
+    private static final class FtpConversation extends LineConversation {
+        private static final int BANNER = 0;
+        private static final int USER = 1;
+        private static final int PASS = 2;
+        private static final int QUIT = 3;
+
+        private final String m_userid;
+        private final String m_password;
+
+        private int m_state;
+        private String m_endMultiLine;
+        private double m_responseTime;
+
+        private FtpConversation(String userid, String password) {
+            m_userid = userid;
+            m_password = password;
+        }
+
+        @Override
+        protected void attemptStarted() {
+            m_state = BANNER;
+            m_endMultiLine = null;
+        }
+
+        @Override
+        protected void lineReceived(String line) {
+            int code;
+            if (m_endMultiLine != null) {
+                // The multi-line response ends with a line that begins with the code and a space
+                if (!line.startsWith(m_endMultiLine)) {
+                    return;
+                }
+                code = Integer.parseInt(m_endMultiLine.trim());
+                m_endMultiLine = null;
+            } else {
+                try {
+                    if (line.length() < 3) {
+                        throw new NumberFormatException("Response line is too short for a result code: " + line);
+                    }
+                    code = Integer.parseInt(line.substring(0, 3));
+                } catch (NumberFormatException e) {
+                    String reason = "NumberFormatException while polling address: " + getAddress();
+                    LOG.debug(reason, e);
+                    finish(PollStatus.unavailable(reason));
+                    return;
+                }
+                // Is the fourth character a hyphen (if so, it's a continuation)?
+                if (line.length() > 3 && line.charAt(3) == '-') {
+                    m_endMultiLine = code + " ";
+                    return;
+                }
+            }
+            responseReceived(code);
+        }
+
+        private void responseReceived(int code) {
+            boolean success = code >= 200 && code < 300;
+            switch (m_state) {
+            case BANNER:
+                if (!success) {
+                    finish(PollStatus.unavailable());
+                } else if (m_userid == null || m_userid.length() == 0 || m_password == null || m_password.length() == 0) {
+                    LOG.debug("FtpMonitor: Banner response successful.");
+                    quit();
+                } else {
+                    LOG.debug("FtpMonitor: Banner response successful.");
+                    send("USER " + m_userid + "\r\n");
+                    m_state = USER;
+                }
+                break;
+            case USER:
+                if (success || (code >= 300 && code < 400)) {
+                    LOG.debug("FtpMonitor: User response successful.");
+                    send("PASS " + m_password + "\r\n");
+                    m_state = PASS;
+                } else {
+                    finish(PollStatus.unavailable());
+                }
+                break;
+            case PASS:
+                if (success) {
+                    LOG.debug("FtpMonitor.poll: Login successful, parsed return code: {}", code);
+                    quit();
+                } else {
+                    LOG.debug("FtpMonitor.poll: Login failed, parsed return code: {}", code);
+                    finish(PollStatus.unavailable());
+                }
+                break;
+            default:
+                // Also accept "530 QUIT : User not logged in." and "425 Session is disconnected."
+                if (success || code == 530 || code == 425) {
+                    finish(PollStatus.available(m_responseTime));
+                } else {
+                    finish(PollStatus.unavailable());
+                }
+                break;
+            }
+        }
+
+        private void quit() {
+            // Store the response time before we try to quit
+            m_responseTime = getTracker().elapsedTimeInMillis();
+            send("QUIT\r\n");
+            m_state = QUIT;
+        }
+
+        @Override
+        protected void endOfStream() {
+            finish(failed(new IOException("End of stream was reached before a response could be read")));
+        }
+
+        @Override
+        protected PollStatus failed(Exception e) {
+            InetAddress ipv4Addr = getAddress();
+            String reason;
+            if (e instanceof NoRouteToHostException) {
+                reason = "No route to host exception for address: " + ipv4Addr;
+            } else if (e instanceof InterruptedIOException) {
+                reason = "did not connect to host with " + getTracker();
+            } else if (e instanceof ConnectException) {
+                reason = "Connection exception for address: " + ipv4Addr;
+            } else {
+                reason = "IOException while polling address: " + ipv4Addr;
+            }
+            LOG.debug(reason, e);
+            return PollStatus.unavailable(reason);
+        }
+    }
 }
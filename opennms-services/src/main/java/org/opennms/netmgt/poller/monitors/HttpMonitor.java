@@ -53,11 +53,15 @@ import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.core.utils.ParameterMap;
 import org.opennms.core.utils.SocketWrapper;
 import org.opennms.core.utils.TimeoutTracker;
+import org.opennms.netmgt.poller.AsyncServiceMonitor;
 import org.opennms.netmgt.poller.Distributable;
 import org.opennms.netmgt.poller.MonitoredService;
 import org.opennms.netmgt.poller.NetworkInterface;
 import org.opennms.netmgt.poller.NetworkInterfaceNotSupportedException;
+import org.opennms.netmgt.poller.PollFuture;
 import org.opennms.netmgt.poller.PollStatus;
+import org.opennms.netmgt.poller.monitors.support.AsyncPollEngine;
+import org.opennms.netmgt.poller.monitors.support.LineConversation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -72,7 +76,7 @@ import org.slf4j.LoggerFactory;
  * @author <a href="mailto:david@opennms.org">David Hustace</a>
  */
 @Distributable
-public class HttpMonitor extends AbstractServiceMonitor {
+public class HttpMonitor extends AbstractServiceMonitor implements AsyncServiceMonitor {
     
     public static final Logger LOG = LoggerFactory.getLogger(HttpMonitor.class);
     
@@ -209,6 +213,29 @@ public class HttpMonitor extends AbstractServiceMonitor {
 
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * Poll the specified address for HTTP service availability like
+     * {@link #poll(MonitoredService, Map)} does, without blocking. Monitors
+     * that wrap the socket, like the {@link HttpsMonitor}, return null so
+     * that they are polled with {@link #poll(MonitoredService, Map)}.
+     */
+    @Override
+    public PollFuture pollAsync(final MonitoredService svc, final Map<String, Object> parameters) {
+        if (!(getSocketWrapper() instanceof DefaultSocketWrapper)) {
+            return null;
+        }
+
+        final NetworkInterface<InetAddress> iface = svc.getNetInterface();
+        if (iface.getType() != NetworkInterface.TYPE_INET) {
+            throw new NetworkInterfaceNotSupportedException("Unsupported interface type, only TYPE_INET currently supported");
+        }
+
+        final HttpMonitorClient httpClient = new HttpMonitorClient(svc.getNodeLabel(), iface, new TreeMap<String, Object>(parameters));
+        return AsyncPollEngine.getInstance().poll(iface.getAddress(), determinePorts(httpClient.getParameters()), parameters, DEFAULT_RETRY, DEFAULT_TIMEOUT, new HttpConversation(httpClient));
+    }
+
     private void logResponseTimes(Double responseTime, String line) {
         LOG.debug("poll: response= {}", line);
         LOG.debug("poll: responseTime= {}ms", responseTime);
@@ -511,7 +538,11 @@ public class HttpMonitor extends AbstractServiceMonitor {
         }
 
         public String readLine() throws IOException {
-            m_currentLine = m_lineRdr.readLine();
+            return lineRead(m_lineRdr.readLine());
+        }
+
+        String lineRead(final String line) {
+            m_currentLine = line;
             
             if (determineVerbosity(m_parameters) && HttpMonitor.LOG.isDebugEnabled()) {
                 HttpMonitor.LOG.debug("\t<<: {}", m_currentLine);
@@ -523,7 +554,10 @@ public class HttpMonitor extends AbstractServiceMonitor {
 
         public String readLinedMatching() throws IOException {
             readLine();
-            
+            return matchCurrentLine();
+        }
+
+        String matchCurrentLine() {
             if (m_responseText != null && m_currentLine != null && !m_responseTextFound) {
                 if (checkCurrentLineMatchesResponseText()) {
                     if (HttpMonitor.LOG.isDebugEnabled()) {
@@ -542,6 +576,10 @@ public class HttpMonitor extends AbstractServiceMonitor {
             m_httpSocket.getOutputStream().write(m_httpCmd.getBytes());
             m_lineRdr = new BufferedReader(new InputStreamReader(m_httpSocket.getInputStream()));
             readLine();
+            serverResponseRead();
+        }
+
+        void serverResponseRead() {
             if (determineVerbosity(m_parameters)) {
                 HttpMonitor.LOG.debug("Server response: {}", m_currentLine);
             }
@@ -634,4 +672,106 @@ public class HttpMonitor extends AbstractServiceMonitor {
         
     }
 
+    /**
+     * Holds the conversation of {@link #poll(MonitoredService, Map)} with the
+     * service, keeping the state in the {@link HttpMonitorClient}.
+     */
+    private static final class HttpConversation extends LineConversation {
+        private final HttpMonitorClient m_httpClient;
+        private boolean m_serverResponseRead;
+        private boolean m_bodyRead;
+
+        private HttpConversation(final HttpMonitorClient httpClient) {
+            m_httpClient = httpClient;
+        }
+
+        @Override
+        protected void attemptStarted() {
+            m_httpClient.setTimeoutTracker(getTracker());
+            m_httpClient.setCurrentPort(getPort());
+            m_serverResponseRead = false;
+            m_bodyRead = false;
+            LOG.debug("Port = {}, Address = {}, {}", getPort(), getAddress(), getTracker());
+        }
+
+        @Override
+        protected void connected() {
+            LOG.debug("HttpMonitor: connected to host: {} on port: {}", getAddress(), getPort());
+            m_httpClient.setPollStatus(PollStatus.SERVICE_UNRESPONSIVE);
+            if (determineVerbosity(m_httpClient.getParameters()) && LOG.isDebugEnabled()) {
+                LOG.debug("Sending HTTP command: {}", m_httpClient.m_httpCmd);
+            }
+            send(m_httpClient.m_httpCmd);
+        }
+
+        @Override
+        protected void lineReceived(final String line) {
+            m_httpClient.lineRead(line);
+            if (m_serverResponseRead) {
+                m_bodyRead = true;
+                m_httpClient.matchCurrentLine();
+                if (m_httpClient.isResponseTextFound()) {
+                    finishWithClientStatus();
+                }
+                return;
+            }
+
+            m_serverResponseRead = true;
+            m_httpClient.serverResponseRead();
+            m_httpClient.setResponseTime(getTracker().elapsedTimeInMillis());
+            LOG.debug("poll: response= {}", line);
+            LOG.debug("poll: responseTime= {}ms", m_httpClient.getResponseTime());
+
+            if (m_httpClient.getPollStatus() == PollStatus.SERVICE_AVAILABLE && StringUtils.isNotBlank(m_httpClient.getResponseText())) {
+                // the response text decides
+                m_httpClient.setPollStatus(PollStatus.SERVICE_UNAVAILABLE);
+            } else {
+                finishWithClientStatus();
+            }
+        }
+
+        @Override
+        protected void endOfStream() {
+            if (m_bodyRead && !m_httpClient.isResponseTextFound()) {
+                String message = "Matching text: ["+m_httpClient.getResponseText()+"] not found in body of HTTP response";
+                LOG.debug(message);
+                m_httpClient.setReason(message);
+            }
+            finishWithClientStatus();
+        }
+
+        @Override
+        protected PollStatus failed(final Exception e) {
+            if (e instanceof NoRouteToHostException) {
+                LOG.warn("checkStatus: No route to host exception for address {}", getAddress(), e);
+                m_httpClient.setReason("No route to host exception");
+            } else if (e instanceof SocketTimeoutException) {
+                LOG.info("checkStatus: HTTP socket connection timed out with {}", getTracker().toString());
+                m_httpClient.setReason("HTTP connection timeout");
+            } else if (e instanceof ConnectException) {
+                LOG.warn("Connection exception for {}:{}", getAddress(), getPort(), e);
+                m_httpClient.setReason("HTTP connection exception on port: "+getPort()+": "+e.getMessage());
+            } else if (e instanceof IOException) {
+                LOG.warn("IOException while polling address {}", getAddress(), e);
+                m_httpClient.setReason("IOException while polling address: "+getAddress()+": "+e.getMessage());
+            } else {
+                LOG.warn("Unexpected exception while polling address {}", getAddress(), e);
+                m_httpClient.setReason("Unexpected exception while polling address: "+getAddress()+": "+e.getMessage());
+            }
+            return getClientStatus();
+        }
+
+        @Override
+        protected PollStatus getResult(final PollStatus status) {
+            return m_httpClient.determinePollStatusResponse();
+        }
+
+        private void finishWithClientStatus() {
+            finish(getClientStatus());
+        }
+
+        private PollStatus getClientStatus() {
+            return PollStatus.get(m_httpClient.getPollStatus(), m_httpClient.getReason());
+        }
+    }
 }
@@ -43,11 +43,15 @@ import org.opennms.core.utils.ParameterMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.opennms.core.utils.TimeoutTracker;
+import org.opennms.netmgt.poller.AsyncServiceMonitor;
 import org.opennms.netmgt.poller.Distributable;
 import org.opennms.netmgt.poller.MonitoredService;
 import org.opennms.netmgt.poller.NetworkInterface;
 import org.opennms.netmgt.poller.NetworkInterfaceNotSupportedException;
+import org.opennms.netmgt.poller.PollFuture;
 import org.opennms.netmgt.poller.PollStatus;
+import org.opennms.netmgt.poller.monitors.support.AsyncPollEngine;
+import org.opennms.netmgt.poller.monitors.support.LineConversation;
 
 /**
  * <P>
@@ -76,7 +80,7 @@ import org.opennms.netmgt.poller.PollStatus;
  * @version CVS 1.1.1.1
  */
 @Distributable
-final public class ImapMonitor extends AbstractServiceMonitor {
+final public class ImapMonitor extends AbstractServiceMonitor implements AsyncServiceMonitor {
     private static final Logger LOG = LoggerFactory.getLogger(ImapMonitor.class);
 
     /**
@@ -251,4 +255,64 @@ final public class ImapMonitor extends AbstractServiceMonitor {
         return serviceStatus;
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * Poll the specified address for IMAP service availability like
+     * {@link #poll(MonitoredService, Map)} does, without blocking.
+     */
+    @Override
+    public PollFuture pollAsync(MonitoredService svc, Map<String, Object> parameters) {
+        NetworkInterface<InetAddress> iface = svc.getNetInterface();
+
+        if (iface.getType() != NetworkInterface.TYPE_INET)
+            throw new NetworkInterfaceNotSupportedException("Unsupported interface type, only TYPE_INET currently supported");
+
+        int port = ParameterMap.getKeyedInteger(parameters, "port", DEFAULT_PORT);
+
+        return AsyncPollEngine.getInstance().poll(iface.getAddress(), new int[] { port }, parameters, DEFAULT_RETRY, DEFAULT_TIMEOUT, new ImapConversation());
+    }
+
+    private static final class ImapConversation extends LineConversation {
+        /**
+         * The number of lines received so far: the banner, the BYE and the
+         * response to the LOGOUT.
+         */
+        private int m_lines;
+        private double m_responseTime;
+
+        @Override
+        protected void attemptStarted() {
+            m_lines = 0;
+        }
+
+        @Override
+        protected void lineReceived(String line) {
+            switch (m_lines++) {
+            case 0:
+                m_responseTime = getTracker().elapsedTimeInMillis();
+                LOG.debug("ImapMonitor.Poll(): banner: {}", line);
+                if (line.startsWith(IMAP_START_RESPONSE_PREFIX)) {
+                    // Send the LOGOUT
+                    send(IMAP_LOGOUT_REQUEST);
+                } else {
+                    finish(PollStatus.unavailable());
+                }
+                break;
+            case 1:
+                if (!line.startsWith(IMAP_BYE_RESPONSE_PREFIX)) {
+                    finish(PollStatus.unavailable());
+                }
+                break;
+            default:
+                finish(line.startsWith(IMAP_LOGOUT_RESPONSE_PREFIX) ? PollStatus.available(m_responseTime) : PollStatus.unavailable());
+                break;
+            }
+        }
+
+        @Override
+        protected void endOfStream() {
+            finish(PollStatus.unavailable());
+        }
+    }
 }
@@ -43,11 +43,15 @@ import java.util.StringTokenizer;
 import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.core.utils.ParameterMap;
 import org.opennms.core.utils.TimeoutTracker;
+import org.opennms.netmgt.poller.AsyncServiceMonitor;
 import org.opennms.netmgt.poller.Distributable;
 import org.opennms.netmgt.poller.MonitoredService;
 import org.opennms.netmgt.poller.NetworkInterface;
 import org.opennms.netmgt.poller.NetworkInterfaceNotSupportedException;
+import org.opennms.netmgt.poller.PollFuture;
 import org.opennms.netmgt.poller.PollStatus;
+import org.opennms.netmgt.poller.monitors.support.AsyncPollEngine;
+import org.opennms.netmgt.poller.monitors.support.LineConversation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -64,7 +68,7 @@ import org.slf4j.LoggerFactory;
  */
 
 @Distributable
-final public class Pop3Monitor extends AbstractServiceMonitor {
+final public class Pop3Monitor extends AbstractServiceMonitor implements AsyncServiceMonitor {
     
     public static final Logger LOG = LoggerFactory.getLogger(Pop3Monitor.class);
 
@@ -217,4 +221,57 @@ final public class Pop3Monitor extends AbstractServiceMonitor {
         return serviceStatus;
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * Poll the specified address for POP3 service availability like
+     * {@link #poll(MonitoredService, Map)} does, without blocking.
+     */
+    @Override
+    public PollFuture pollAsync(MonitoredService svc, Map<String, Object> parameters) {
+        NetworkInterface<InetAddress> iface = svc.getNetInterface();
+
+        if (iface.getType() != NetworkInterface.TYPE_INET)
+            throw new NetworkInterfaceNotSupportedException("Unsupported interface type, only TYPE_INET currently supported");
+
+        int port = ParameterMap.getKeyedInteger(parameters, "port", DEFAULT_PORT);
+
+        return AsyncPollEngine.getInstance().poll(iface.getAddress(), new int[] { port }, parameters, DEFAULT_RETRY, DEFAULT_TIMEOUT, new Pop3Conversation());
+    }
+
+    private static final class Pop3Conversation extends LineConversation {
+        private boolean m_quitSent;
+        private double m_responseTime;
+
+        @Override
+        protected void attemptStarted() {
+            m_quitSent = false;
+        }
+
+        @Override
+        protected void lineReceived(String line) {
+            // Server responses should start with: "+OK"
+            StringTokenizer t = new StringTokenizer(line);
+            boolean ok = t.hasMoreTokens() && t.nextToken().equals("+OK");
+
+            if (!m_quitSent) {
+                m_responseTime = getTracker().elapsedTimeInMillis();
+                if (ok) {
+                    // POP3 server should recoginize the QUIT command
+                    send("QUIT\r\n");
+                    m_quitSent = true;
+                } else {
+                    finish(PollStatus.unavailable());
+                }
+            } else {
+                finish(ok ? PollStatus.available(m_responseTime) : PollStatus.unavailable());
+            }
+        }
+
+        @Override
+        protected void endOfStream() {
+            // without a banner the service stays unresponsive
+            finish(m_quitSent ? PollStatus.unavailable() : getStatus());
+        }
+    }
 }
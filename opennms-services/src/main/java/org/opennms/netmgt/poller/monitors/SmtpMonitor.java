@@ -45,11 +45,15 @@ import java.util.regex.PatternSyntaxException;
 import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.core.utils.ParameterMap;
 import org.opennms.core.utils.TimeoutTracker;
+import org.opennms.netmgt.poller.AsyncServiceMonitor;
 import org.opennms.netmgt.poller.Distributable;
 import org.opennms.netmgt.poller.MonitoredService;
 import org.opennms.netmgt.poller.NetworkInterface;
 import org.opennms.netmgt.poller.NetworkInterfaceNotSupportedException;
+import org.opennms.netmgt.poller.PollFuture;
 import org.opennms.netmgt.poller.PollStatus;
+import org.opennms.netmgt.poller.monitors.support.AsyncPollEngine;
+import org.opennms.netmgt.poller.monitors.support.LineConversation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -66,7 +70,7 @@ import org.slf4j.LoggerFactory;
  */
 
 @Distributable
-public final class SmtpMonitor extends AbstractServiceMonitor {
+public final class SmtpMonitor extends AbstractServiceMonitor implements AsyncServiceMonitor {
 
     public static final Logger LOG = LoggerFactory.getLogger(SmtpMonitor.class);
 
@@ -348,4 +352,103 @@ public final class SmtpMonitor extends AbstractServiceMonitor {
         return serviceStatus;
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * Poll the specified address for SMTP service availability like
+     * {@link #poll(MonitoredService, Map)} does, without blocking.
+     */
+    @Override
+    public PollFuture pollAsync(MonitoredService svc, Map<String, Object> parameters) {
+        NetworkInterface<InetAddress> iface = svc.getNetInterface();
+
+        if (iface.getType() != NetworkInterface.TYPE_INET) {
+            throw new NetworkInterfaceNotSupportedException("Unsupported interface type, only TYPE_INET currently supported");
+        }
+
+        int port = ParameterMap.getKeyedInteger(parameters, "port", DEFAULT_PORT);
+
+        return AsyncPollEngine.getInstance().poll(iface.getAddress(), new int[] { port }, parameters, DEFAULT_RETRY, DEFAULT_TIMEOUT, new SmtpConversation());
+    }
+
+    private static final class SmtpConversation extends LineConversation {
+        /**
+         * The replies expected in turn: to the connection, the HELO and the
+         * QUIT command.
+         */
+        private static final int[] EXPECTED_REPLIES = { 220, 250, 221 };
+
+        private int m_reply;
+        private String m_endMultiline;
+        private double m_responseTime;
+
+        @Override
+        protected void attemptStarted() {
+            m_reply = 0;
+            m_endMultiline = null;
+        }
+
+        @Override
+        protected void lineReceived(String line) {
+            if (m_endMultiline == null) {
+                if (m_reply == 1) {
+                    m_responseTime = getTracker().elapsedTimeInMillis();
+                }
+                if (MULTILINE.matcher(line).lookingAt()) {
+                    // Ok we have a multi-line response...the last line of the
+                    // response will start with the return code followed by a
+                    // space.
+                    m_endMultiline = line.substring(0, 3);
+                    return;
+                }
+            } else if (line.equals(m_endMultiline) || line.startsWith(m_endMultiline + " ")) {
+                m_endMultiline = null;
+            } else {
+                return;
+            }
+
+            if (m_reply == 0) {
+                LOG.debug("poll: banner = {}", line);
+            }
+
+            int rc;
+            try {
+                StringTokenizer t = new StringTokenizer(line);
+                rc = Integer.parseInt(t.hasMoreTokens() ? t.nextToken() : line);
+            } catch (NumberFormatException e) {
+                String reason = "NumberFormatException while polling address " + InetAddressUtils.str(getAddress());
+                LOG.debug(reason, e);
+                finish(PollStatus.unavailable(reason));
+                return;
+            }
+
+            if (rc != EXPECTED_REPLIES[m_reply]) {
+                // something didn't verify during the banner checking or
+                // HELO/QUIT comand process.
+                finish(PollStatus.unavailable());
+            } else if (m_reply == 0) {
+                send("HELO " + LOCALHOST_NAME + "\r\n");
+                m_reply++;
+            } else if (m_reply == 1) {
+                send("QUIT\r\n");
+                m_reply++;
+            } else {
+                finish(PollStatus.available(m_responseTime));
+            }
+        }
+
+        @Override
+        protected PollStatus failed(Exception e) {
+            if (e instanceof InterruptedIOException) {
+                String reason = "Did not receive expected response within timeout " + getTracker();
+                LOG.debug(reason);
+                return PollStatus.unavailable(reason);
+            } else if (e instanceof ConnectException) {
+                String reason = "Unable to connect to address " + InetAddressUtils.str(getAddress());
+                LOG.debug(reason, e);
+                return PollStatus.unavailable(reason);
+            }
+            return super.failed(e);
+        }
+    }
 }
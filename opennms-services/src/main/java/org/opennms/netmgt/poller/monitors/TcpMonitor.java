@@ -42,11 +42,15 @@ import java.util.Map;
 import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.core.utils.ParameterMap;
 import org.opennms.core.utils.TimeoutTracker;
+import org.opennms.netmgt.poller.AsyncServiceMonitor;
 import org.opennms.netmgt.poller.Distributable;
 import org.opennms.netmgt.poller.MonitoredService;
 import org.opennms.netmgt.poller.NetworkInterface;
 import org.opennms.netmgt.poller.NetworkInterfaceNotSupportedException;
+import org.opennms.netmgt.poller.PollFuture;
 import org.opennms.netmgt.poller.PollStatus;
+import org.opennms.netmgt.poller.monitors.support.AsyncPollEngine;
+import org.opennms.netmgt.poller.monitors.support.LineConversation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -63,7 +67,7 @@ import org.slf4j.LoggerFactory;
  */
 
 @Distributable
-final public class TcpMonitor extends AbstractServiceMonitor {
+final public class TcpMonitor extends AbstractServiceMonitor implements AsyncServiceMonitor {
     
     
     public static final Logger LOG = LoggerFactory.getLogger(TcpMonitor.class);
@@ -221,4 +225,65 @@ final public class TcpMonitor extends AbstractServiceMonitor {
         return serviceStatus;
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * Poll the specified address for service availability like
+     * {@link #poll(MonitoredService, Map)} does, without blocking.
+     */
+    @Override
+    public PollFuture pollAsync(MonitoredService svc, Map<String, Object> parameters) {
+        NetworkInterface<InetAddress> iface = svc.getNetInterface();
+
+        if (iface.getType() != NetworkInterface.TYPE_INET)
+            throw new NetworkInterfaceNotSupportedException("Unsupported interface type, only TYPE_INET currently supported");
+
+        int port = ParameterMap.getKeyedInteger(parameters, PARAMETER_PORT, DEFAULT_PORT);
+        if (port == DEFAULT_PORT) {
+            throw new RuntimeException("TcpMonitor: required parameter 'port' is not present in supplied properties.");
+        }
+
+        String strBannerMatch = ParameterMap.getKeyedString(parameters, PARAMETER_BANNER, null);
+
+        return AsyncPollEngine.getInstance().poll(iface.getAddress(), new int[] { port }, parameters, DEFAULT_RETRY, DEFAULT_TIMEOUT, new TcpConversation(strBannerMatch));
+    }
+
+    private static final class TcpConversation extends LineConversation {
+        private final String m_bannerMatch;
+
+        private TcpConversation(String bannerMatch) {
+            m_bannerMatch = bannerMatch;
+        }
+
+        @Override
+        protected void connected() {
+            if (m_bannerMatch == null || m_bannerMatch.length() == 0 || m_bannerMatch.equals("*")) {
+                finish(PollStatus.available(getTracker().elapsedTimeInMillis()));
+            }
+        }
+
+        @Override
+        protected void lineReceived(String response) {
+            double responseTime = getTracker().elapsedTimeInMillis();
+
+            LOG.debug("poll: banner = {}", response);
+            LOG.debug("poll: responseTime= {}ms", responseTime);
+
+            //Could it be a regex?
+            if (m_bannerMatch.charAt(0)=='~'){
+                if (!response.matches(m_bannerMatch.substring(1)))
+                    finish(PollStatus.unavailable("Banner does not match Regex '"+m_bannerMatch+"'"));
+                else
+                    finish(PollStatus.available(responseTime));
+            }
+            else {
+                if (response.indexOf(m_bannerMatch) > -1) {
+                    finish(PollStatus.available(responseTime));
+                }
+                else {
+                    finish(PollStatus.unavailable("Banner: '"+response+"' does not contain match string '"+m_bannerMatch+"'"));
+                }
+            }
+        }
+    }
 }
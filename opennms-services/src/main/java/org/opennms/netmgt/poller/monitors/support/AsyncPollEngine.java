@@ -0,0 +1,603 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.poller.monitors.support;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.core.utils.ParameterMap;
+import org.opennms.core.utils.TimeoutTracker;
+import org.opennms.netmgt.poller.DefaultPollFuture;
+import org.opennms.netmgt.poller.PollFuture;
+import org.opennms.netmgt.poller.PollStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * Holds the {@link LineConversation}s of asynchronous service monitors with
+ * their services on a single thread, using non-blocking sockets and a
+ * {@link Selector}. A poll only takes a socket and a little memory while it
+ * waits for the service, so one engine can keep many thousands of polls in
+ * flight.
+ * </p>
+ *
+ * <p>
+ * Retries and timeouts follow the blocking monitors: every port is tried
+ * with a {@link TimeoutTracker} of its own until the service is available
+ * or the retries run out, and the timeout applies to connecting and to
+ * each read. A poll ends early if there is no route to the host. The
+ * number of open connections is limited; polls beyond the limit wait for a
+ * connection to close.
+ * </p>
+ */
+public class AsyncPollEngine implements Runnable {
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncPollEngine.class);
+
+    /**
+     * The maximum number of connections of the shared engine.
+     */
+    public static final String MAX_CONNECTIONS_PROPERTY = "org.opennms.netmgt.poller.asyncPolling.maxConnections";
+
+    private static final int DEFAULT_MAX_CONNECTIONS = 10000;
+
+    /**
+     * The longest line passed to a conversation; the rest of a longer line
+     * is dropped so that a server that never ends its line can't make a poll
+     * buffer an unbounded amount of data.
+     */
+    static final int MAX_LINE_LENGTH = 8192;
+
+    private static AsyncPollEngine s_instance;
+
+    private final Selector m_selector;
+    private final int m_maxConnections;
+
+    private final Queue<Poll> m_newPolls = new ConcurrentLinkedQueue<Poll>();
+    private final Queue<Poll> m_waitingPolls = new LinkedList<Poll>();
+    private final Set<Poll> m_polls = new HashSet<Poll>();
+    private final PriorityQueue<Timeout> m_timeouts = new PriorityQueue<Timeout>(64, new Comparator<Timeout>() {
+        @Override
+        public int compare(final Timeout t1, final Timeout t2) {
+            return Long.signum(t1.m_time - t2.m_time);
+        }
+    });
+    private final ByteBuffer m_readBuffer = ByteBuffer.allocateDirect(8192);
+
+    private volatile int m_connections = 0;
+    private volatile boolean m_running = false;
+    private Thread m_thread;
+
+    /**
+     * Return the engine shared by the asynchronous monitors, starting it if
+     * necessary.
+     *
+     * @return a {@link org.opennms.netmgt.poller.monitors.support.AsyncPollEngine} object.
+     */
+    public static synchronized AsyncPollEngine getInstance() {
+        if (s_instance == null) {
+            s_instance = new AsyncPollEngine(Integer.getInteger(MAX_CONNECTIONS_PROPERTY, DEFAULT_MAX_CONNECTIONS));
+            s_instance.start();
+        }
+        return s_instance;
+    }
+
+    /**
+     * Stop the shared engine, if it was started. Polls that are still in
+     * flight end with an unknown status; the next call to
+     * {@link #getInstance()} starts a new engine.
+     *
+     * @throws InterruptedException if interrupted while waiting for the I/O thread
+     */
+    public static void shutdownInstance() throws InterruptedException {
+        final AsyncPollEngine instance;
+        synchronized (AsyncPollEngine.class) {
+            instance = s_instance;
+            s_instance = null;
+        }
+        if (instance != null) {
+            instance.stop();
+        }
+    }
+
+    /**
+     * <p>Constructor for AsyncPollEngine.</p>
+     *
+     * @param maxConnections the maximum number of open connections
+     */
+    public AsyncPollEngine(final int maxConnections) {
+        m_maxConnections = Math.max(1, maxConnections);
+        try {
+            m_selector = Selector.open();
+        } catch (final IOException e) {
+            throw new IllegalStateException("Unable to open a selector for asynchronous polling", e);
+        }
+    }
+
+    /**
+     * Start the I/O thread.
+     */
+    public synchronized void start() {
+        if (m_thread != null) {
+            return;
+        }
+        m_running = true;
+        m_thread = new Thread(this, "AsyncPollEngine");
+        m_thread.setDaemon(true);
+        m_thread.start();
+    }
+
+    /**
+     * Stop the I/O thread. Polls that are still in flight end with an unknown
+     * status.
+     *
+     * @throws InterruptedException if interrupted while waiting for the thread
+     */
+    public void stop() throws InterruptedException {
+        final Thread thread;
+        synchronized (this) {
+            thread = m_thread;
+            m_thread = null;
+        }
+        if (thread == null) {
+            return;
+        }
+        m_running = false;
+        m_selector.wakeup();
+        thread.join();
+    }
+
+    /**
+     * Start a poll.
+     *
+     * @param address the address of the service
+     * @param ports the ports to try, in order
+     * @param parameters the parameters of the service, for the retries and timeouts
+     * @param defaultRetry the number of retries if the parameters don't say
+     * @param defaultTimeout the timeout in milliseconds if the parameters don't say
+     * @param conversation the conversation to hold with the service
+     * @return a {@link org.opennms.netmgt.poller.PollFuture} that is done on the I/O thread
+     */
+    public PollFuture poll(final InetAddress address, final int[] ports, final Map<String, Object> parameters, final int defaultRetry, final int defaultTimeout, final LineConversation conversation) {
+        final Poll poll = new Poll(address, ports, parameters, defaultRetry, defaultTimeout, conversation);
+        if (!m_running) {
+            poll.m_future.setPollStatus(PollStatus.unknown("The poll engine is not running"));
+            return poll.m_future;
+        }
+        if (ports.length == 0) {
+            poll.m_future.setPollStatus(conversation.getResult(conversation.getStatus()));
+            return poll.m_future;
+        }
+        m_newPolls.add(poll);
+        m_selector.wakeup();
+        return poll.m_future;
+    }
+
+    /**
+     * <p>getConnectionCount</p>
+     *
+     * @return the number of open connections
+     */
+    public int getConnectionCount() {
+        return m_connections;
+    }
+
+    /**
+     * The I/O loop.
+     */
+    @Override
+    public void run() {
+        while (m_running) {
+            try {
+                startNewPolls();
+                final long timeout = processTimeouts(System.nanoTime());
+                if (!m_newPolls.isEmpty()) {
+                    m_selector.selectNow();
+                } else {
+                    m_selector.select(timeout);
+                }
+                processSelectedKeys();
+            } catch (final Throwable e) {
+                LOG.error("Unexpected exception in the asynchronous poll engine", e);
+            }
+        }
+
+        for (final Poll poll : new ArrayList<Poll>(m_polls)) {
+            closeChannel(poll);
+            complete(poll, PollStatus.unknown("The poll engine was stopped"));
+        }
+        Poll poll;
+        while ((poll = m_newPolls.poll()) != null) {
+            poll.m_future.setPollStatus(PollStatus.unknown("The poll engine was stopped"));
+        }
+        m_waitingPolls.clear();
+        try {
+            m_selector.close();
+        } catch (final IOException e) {
+            LOG.debug("Error closing the selector", e);
+        }
+    }
+
+    private void startNewPolls() {
+        Poll poll;
+        while ((poll = m_newPolls.poll()) != null) {
+            m_waitingPolls.add(poll);
+        }
+        while (!m_waitingPolls.isEmpty() && m_connections < m_maxConnections) {
+            poll = m_waitingPolls.remove();
+            m_polls.add(poll);
+            startAttempt(poll);
+        }
+    }
+
+    /**
+     * Handle the polls whose deadline has passed.
+     *
+     * @return the time in milliseconds until the next deadline, or 0 if there
+     *         is none
+     */
+    private long processTimeouts(final long now) {
+        while (!m_timeouts.isEmpty()) {
+            final Timeout timeout = m_timeouts.peek();
+            if (timeout.m_time - now > 0) {
+                return Math.max(1L, TimeUnit.NANOSECONDS.toMillis(timeout.m_time - now));
+            }
+            m_timeouts.remove();
+
+            final Poll poll = timeout.m_poll;
+            if (poll.m_timeout != timeout) {
+                continue;
+            }
+            poll.m_timeout = null;
+            if (poll.m_done) {
+                continue;
+            }
+            if (poll.m_deadline - now > 0) {
+                setDeadline(poll, poll.m_deadline);
+            } else if (poll.m_delayed) {
+                poll.m_delayed = false;
+                startAttempt(poll);
+            } else {
+                attemptFailed(poll, new SocketTimeoutException(poll.m_connected ? "Read timed out" : "connect timed out"));
+            }
+        }
+        return 0L;
+    }
+
+    private void processSelectedKeys() {
+        final Iterator<SelectionKey> it = m_selector.selectedKeys().iterator();
+        while (it.hasNext()) {
+            final SelectionKey key = it.next();
+            it.remove();
+
+            final Poll poll = (Poll)key.attachment();
+            if (!key.isValid() || key != poll.m_key) {
+                continue;
+            }
+            try {
+                if (key.isConnectable()) {
+                    poll.m_channel.finishConnect();
+                    connected(poll);
+                } else {
+                    if (key.isWritable()) {
+                        write(poll);
+                    }
+                    if (key.isValid() && key.isReadable()) {
+                        read(poll);
+                    }
+                }
+            } catch (final Exception e) {
+                attemptFailed(poll, e);
+            }
+        }
+    }
+
+    private void startAttempt(final Poll poll) {
+        final long now = System.nanoTime();
+        if (poll.m_tracker == null) {
+            poll.m_tracker = new TimeoutTracker(poll.m_parameters, poll.m_defaultRetry, poll.m_defaultTimeout);
+            poll.m_tracker.reset();
+            poll.m_nextAttemptTime = now;
+        } else if (poll.m_strictTimeouts && poll.m_nextAttemptTime - now > 0) {
+            // wait for the timeout of the previous attempt here, rather than in the tracker
+            poll.m_delayed = true;
+            setDeadline(poll, poll.m_nextAttemptTime);
+            return;
+        }
+
+        final int port = poll.m_ports[poll.m_portIndex];
+        final TimeoutTracker tracker = poll.m_tracker;
+        tracker.startAttempt();
+        poll.m_nextAttemptTime = System.nanoTime() + poll.timeoutInNanos();
+        LOG.debug("startAttempt: address = {}, port = {}, {}", InetAddressUtils.str(poll.m_address), port, tracker);
+
+        try {
+            poll.m_conversation.startAttempt(poll.m_address, port, tracker);
+            poll.m_channel = SocketChannel.open();
+            m_connections++;
+            poll.m_channel.configureBlocking(false);
+            poll.m_key = poll.m_channel.register(m_selector, 0, poll);
+            setDeadline(poll, System.nanoTime() + poll.timeoutInNanos());
+            if (poll.m_channel.connect(new InetSocketAddress(poll.m_address, port))) {
+                connected(poll);
+            } else {
+                poll.m_key.interestOps(SelectionKey.OP_CONNECT);
+            }
+        } catch (final Exception e) {
+            attemptFailed(poll, e);
+        }
+    }
+
+    private void connected(final Poll poll) throws IOException {
+        LOG.debug("connected to host: {} on port: {}", InetAddressUtils.str(poll.m_address), poll.m_conversation.getPort());
+        poll.m_connected = true;
+        poll.m_conversation.setStatus(PollStatus.unresponsive());
+        poll.m_conversation.connected();
+        if (!conversed(poll)) {
+            setDeadline(poll, System.nanoTime() + poll.timeoutInNanos());
+        }
+    }
+
+    private void write(final Poll poll) throws IOException {
+        poll.m_channel.write(poll.m_output);
+        if (!poll.m_output.hasRemaining()) {
+            poll.m_output = null;
+            poll.m_key.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    private void read(final Poll poll) throws IOException {
+        m_readBuffer.clear();
+        final int count = poll.m_channel.read(m_readBuffer);
+        if (count < 0) {
+            endOfStream(poll);
+            return;
+        }
+        setDeadline(poll, System.nanoTime() + poll.timeoutInNanos());
+
+        m_readBuffer.flip();
+        while (m_readBuffer.hasRemaining()) {
+            final char c = (char)(m_readBuffer.get() & 0xff);
+            if (poll.m_skipLF) {
+                poll.m_skipLF = false;
+                if (c == '\n') {
+                    continue;
+                }
+            }
+            if (c == '\r' || c == '\n') {
+                poll.m_skipLF = (c == '\r');
+                final String line = poll.m_line.toString();
+                poll.m_line.setLength(0);
+                poll.m_conversation.lineReceived(line);
+                if (conversed(poll)) {
+                    return;
+                }
+            } else if (poll.m_line.length() < MAX_LINE_LENGTH) {
+                poll.m_line.append(c);
+            }
+        }
+    }
+
+    private void endOfStream(final Poll poll) throws IOException {
+        if (poll.m_line.length() > 0) {
+            // a last line without terminator, as BufferedReader.readLine() would return it
+            final String line = poll.m_line.toString();
+            poll.m_line.setLength(0);
+            poll.m_conversation.lineReceived(line);
+            if (conversed(poll)) {
+                return;
+            }
+        }
+        poll.m_conversation.endOfStream();
+        if (!poll.m_conversation.isFinished()) {
+            poll.m_conversation.finish(poll.m_conversation.getStatus());
+        }
+        conversed(poll);
+    }
+
+    /**
+     * Act on what the conversation did in a callback: end the attempt if it
+     * is finished, otherwise queue its request.
+     *
+     * @return whether the attempt ended
+     */
+    private boolean conversed(final Poll poll) throws IOException {
+        if (poll.m_conversation.isFinished()) {
+            closeChannel(poll);
+            nextAttempt(poll);
+            return true;
+        }
+
+        final String request = poll.m_conversation.takeRequest();
+        if (request != null) {
+            final ByteBuffer bytes = ByteBuffer.wrap(request.getBytes("ISO-8859-1"));
+            if (poll.m_output == null) {
+                poll.m_output = bytes;
+            } else {
+                final ByteBuffer output = ByteBuffer.allocate(poll.m_output.remaining() + bytes.remaining());
+                output.put(poll.m_output).put(bytes).flip();
+                poll.m_output = output;
+            }
+        }
+        poll.m_key.interestOps(poll.m_output == null ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        return false;
+    }
+
+    private void attemptFailed(final Poll poll, final Exception e) {
+        closeChannel(poll);
+        PollStatus status;
+        try {
+            status = poll.m_conversation.failed(e);
+        } catch (final Throwable t) {
+            LOG.warn("Unexpected exception while handling a failed poll of {}", InetAddressUtils.str(poll.m_address), t);
+            status = PollStatus.unavailable("Unexpected exception while polling address: " + InetAddressUtils.str(poll.m_address) + ": " + e.getMessage());
+        }
+        poll.m_conversation.setStatus(status);
+        if (e instanceof NoRouteToHostException) {
+            complete(poll, status);
+        } else {
+            nextAttempt(poll);
+        }
+    }
+
+    private void nextAttempt(final Poll poll) {
+        final PollStatus status = poll.m_conversation.getStatus();
+        if (status.isAvailable()) {
+            complete(poll, status);
+            return;
+        }
+
+        poll.m_tracker.nextAttempt();
+        if (!poll.m_tracker.shouldRetry()) {
+            poll.m_portIndex++;
+            poll.m_tracker = null;
+            if (poll.m_portIndex >= poll.m_ports.length) {
+                complete(poll, status);
+                return;
+            }
+        }
+        startAttempt(poll);
+    }
+
+    private void complete(final Poll poll, final PollStatus status) {
+        poll.m_done = true;
+        m_polls.remove(poll);
+        PollStatus result;
+        try {
+            result = poll.m_conversation.getResult(status);
+        } catch (final Throwable e) {
+            LOG.warn("Unexpected exception while completing the poll of {}", InetAddressUtils.str(poll.m_address), e);
+            result = status;
+        }
+        poll.m_future.setPollStatus(result);
+    }
+
+    private void closeChannel(final Poll poll) {
+        if (poll.m_channel == null) {
+            return;
+        }
+        if (poll.m_key != null) {
+            poll.m_key.cancel();
+        }
+        try {
+            poll.m_channel.close();
+        } catch (final IOException e) {
+            LOG.debug("closeChannel: Error closing socket.", e);
+        }
+        m_connections--;
+        poll.m_channel = null;
+        poll.m_key = null;
+        poll.m_connected = false;
+        poll.m_output = null;
+        poll.m_line.setLength(0);
+        poll.m_skipLF = false;
+    }
+
+    private void setDeadline(final Poll poll, final long deadline) {
+        poll.m_deadline = deadline;
+        if (poll.m_timeout == null || poll.m_timeout.m_time - deadline > 0) {
+            poll.m_timeout = new Timeout(deadline, poll);
+            m_timeouts.add(poll.m_timeout);
+        }
+    }
+
+    /**
+     * A point in time at which to check the deadline of a poll. Deadlines
+     * only move back as data arrives, so there is at most one queued timeout
+     * per poll that is checked and queued again if the deadline has moved.
+     */
+    private static final class Timeout {
+        private final long m_time;
+        private final Poll m_poll;
+
+        private Timeout(final long time, final Poll poll) {
+            m_time = time;
+            m_poll = poll;
+        }
+    }
+
+    private static final class Poll {
+        private final InetAddress m_address;
+        private final int[] m_ports;
+        private final Map<String, Object> m_parameters;
+        private final int m_defaultRetry;
+        private final int m_defaultTimeout;
+        private final boolean m_strictTimeouts;
+        private final LineConversation m_conversation;
+        private final DefaultPollFuture m_future = new DefaultPollFuture();
+
+        private int m_portIndex = 0;
+        private TimeoutTracker m_tracker;
+        private long m_nextAttemptTime;
+        private SocketChannel m_channel;
+        private SelectionKey m_key;
+        private boolean m_connected;
+        private ByteBuffer m_output;
+        private final StringBuilder m_line = new StringBuilder(128);
+        private boolean m_skipLF;
+        private long m_deadline;
+        private Timeout m_timeout;
+        private boolean m_delayed;
+        private boolean m_done;
+
+        private Poll(final InetAddress address, final int[] ports, final Map<String, Object> parameters, final int defaultRetry, final int defaultTimeout, final LineConversation conversation) {
+            m_address = address;
+            m_ports = ports;
+            m_parameters = parameters;
+            m_defaultRetry = defaultRetry;
+            m_defaultTimeout = defaultTimeout;
+            m_strictTimeouts = ParameterMap.getKeyedBoolean(parameters, "strict-timeout", false);
+            m_conversation = conversation;
+        }
+
+        private long timeoutInNanos() {
+            return TimeUnit.MILLISECONDS.toNanos(m_tracker.getTimeoutInMillis());
+        }
+    }
+}
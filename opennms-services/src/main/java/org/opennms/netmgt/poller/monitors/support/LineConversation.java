@@ -0,0 +1,225 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.poller.monitors.support;
+
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.NoRouteToHostException;
+
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.core.utils.TimeoutTracker;
+import org.opennms.netmgt.poller.PollStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * The client side of a line based protocol that an {@link AsyncPollEngine}
+ * holds with a service. The engine calls {@link #connected()} once a
+ * connection is established and {@link #lineReceived(String)} for every line
+ * the service sends; the conversation answers with {@link #send(String)} and
+ * ends the attempt with {@link #finish(PollStatus)}.
+ * </p>
+ *
+ * <p>
+ * As with the blocking monitors, the status is unavailable until the service
+ * accepts a connection and unresponsive from then on, until the conversation
+ * decides otherwise. The status carries over from one attempt to the next, and
+ * an attempt that leaves the service anything but available is retried.
+ * </p>
+ *
+ * <p>
+ * All methods are called on the I/O thread of the engine and must not block.
+ * </p>
+ */
+public abstract class LineConversation {
+    private static final Logger LOG = LoggerFactory.getLogger(LineConversation.class);
+
+    private InetAddress m_address;
+    private int m_port;
+    private TimeoutTracker m_tracker;
+    private PollStatus m_status = PollStatus.unavailable();
+    private StringBuilder m_request;
+    private boolean m_finished;
+
+    /**
+     * Called before each attempt to connect to the service.
+     */
+    protected void attemptStarted() {
+    }
+
+    /**
+     * Called once the service has accepted the connection.
+     */
+    protected void connected() {
+    }
+
+    /**
+     * Called for each line that the service sends, without the line
+     * terminator.
+     *
+     * @param line a {@link java.lang.String} object.
+     */
+    protected abstract void lineReceived(String line);
+
+    /**
+     * Called when the service closes the connection before the attempt is
+     * finished. By default the attempt ends with the current status.
+     */
+    protected void endOfStream() {
+        finish(getStatus());
+    }
+
+    /**
+     * Return the status of the service when the attempt failed with an
+     * exception, a {@link java.net.SocketTimeoutException} if the service
+     * did not connect or answer in time.
+     *
+     * @param e the failure
+     * @return the status of the service
+     */
+    protected PollStatus failed(final Exception e) {
+        final String hostAddress = InetAddressUtils.str(getAddress());
+        final String reason;
+        if (e instanceof NoRouteToHostException) {
+            reason = "No route to host exception for address " + hostAddress;
+        } else if (e instanceof InterruptedIOException) {
+            reason = "did not connect to host with " + getTracker();
+        } else if (e instanceof ConnectException) {
+            reason = "Connection exception for address: " + hostAddress;
+        } else {
+            reason = "IOException while polling address: " + hostAddress;
+        }
+        LOG.debug(reason, e);
+        return PollStatus.unavailable(reason);
+    }
+
+    /**
+     * Return the result of the poll once all attempts are done. By default
+     * this is the status of the service after the last attempt.
+     *
+     * @param status the status of the service after the last attempt
+     * @return the result of the poll
+     */
+    protected PollStatus getResult(final PollStatus status) {
+        return status;
+    }
+
+    /**
+     * Send a request to the service.
+     *
+     * @param request a {@link java.lang.String} object.
+     */
+    protected final void send(final String request) {
+        if (m_request == null) {
+            m_request = new StringBuilder(request);
+        } else {
+            m_request.append(request);
+        }
+    }
+
+    /**
+     * End the attempt.
+     *
+     * @param status the status of the service
+     */
+    protected final void finish(final PollStatus status) {
+        m_status = status;
+        m_finished = true;
+    }
+
+    /**
+     * <p>getStatus</p>
+     *
+     * @return the current status of the service
+     */
+    protected final PollStatus getStatus() {
+        return m_status;
+    }
+
+    /**
+     * <p>setStatus</p>
+     *
+     * @param status the current status of the service
+     */
+    protected final void setStatus(final PollStatus status) {
+        m_status = status;
+    }
+
+    /**
+     * <p>getAddress</p>
+     *
+     * @return the address of the service
+     */
+    protected final InetAddress getAddress() {
+        return m_address;
+    }
+
+    /**
+     * <p>getPort</p>
+     *
+     * @return the port of the current attempt
+     */
+    protected final int getPort() {
+        return m_port;
+    }
+
+    /**
+     * <p>getTracker</p>
+     *
+     * @return the tracker of the retries and timeouts on the current port
+     */
+    protected final TimeoutTracker getTracker() {
+        return m_tracker;
+    }
+
+    final void startAttempt(final InetAddress address, final int port, final TimeoutTracker tracker) {
+        m_address = address;
+        m_port = port;
+        m_tracker = tracker;
+        m_request = null;
+        m_finished = false;
+        attemptStarted();
+    }
+
+    final boolean isFinished() {
+        return m_finished;
+    }
+
+    final String takeRequest() {
+        if (m_request == null) {
+            return null;
+        }
+        final String request = m_request.toString();
+        m_request = null;
+        return request;
+    }
+}
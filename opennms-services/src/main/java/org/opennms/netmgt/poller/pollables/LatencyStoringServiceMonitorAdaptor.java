@@ -43,9 +43,12 @@ import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.core.utils.ParameterMap;
 import org.opennms.netmgt.config.PollerConfig;
 import org.opennms.netmgt.config.poller.Package;
+import org.opennms.netmgt.poller.AsyncServiceMonitor;
 import org.opennms.netmgt.poller.MonitoredService;
+import org.opennms.netmgt.poller.PollFuture;
 import org.opennms.netmgt.poller.PollStatus;
 import org.opennms.netmgt.poller.ServiceMonitor;
+import org.opennms.netmgt.poller.monitors.AsyncServiceMonitorAdaptor;
 import org.opennms.netmgt.rrd.RrdDataSource;
 import org.opennms.netmgt.rrd.RrdException;
 import org.opennms.netmgt.rrd.RrdRepository;
@@ -71,6 +74,7 @@ public class LatencyStoringServiceMonitorAdaptor implements ServiceMonitor {
     public static final String DEFAULT_BASENAME = "response-time";
 
     private ServiceMonitor m_serviceMonitor;
+    private AsyncServiceMonitorAdaptor m_asyncMonitor;
     private PollerConfig m_pollerConfig;
     private Package m_pkg;
     
@@ -85,6 +89,7 @@ public class LatencyStoringServiceMonitorAdaptor implements ServiceMonitor {
      */
     public LatencyStoringServiceMonitorAdaptor(ServiceMonitor monitor, PollerConfig config, Package pkg) {
         m_serviceMonitor = monitor;
+        m_asyncMonitor = new AsyncServiceMonitorAdaptor(monitor);
         m_pollerConfig = config;
         m_pkg = pkg;
     }
@@ -108,8 +113,50 @@ public class LatencyStoringServiceMonitorAdaptor implements ServiceMonitor {
     /** {@inheritDoc} */
     @Override
     public PollStatus poll(MonitoredService svc, Map<String, Object> parameters) {
-        PollStatus status = m_serviceMonitor.poll(svc, parameters);
+        return processPollStatus(svc, parameters, m_serviceMonitor.poll(svc, parameters));
+    }
 
+    /**
+     * Whether the underlying monitor can poll without blocking the calling
+     * thread.
+     *
+     * @return true if {@link #pollAsync(MonitoredService, Map)} doesn't block
+     */
+    public boolean isAsync() {
+        return m_asyncMonitor.isAsync();
+    }
+
+    /**
+     * Start a poll of the underlying monitor. The status of the future is
+     * the raw status of the monitor; it must be passed to
+     * {@link #processPollStatus(MonitoredService, Map, PollStatus)}, which
+     * stores the response time and may block, on a thread other than the
+     * one that completes the future.
+     *
+     * @param svc a {@link org.opennms.netmgt.poller.MonitoredService} object.
+     * @param parameters the parameters of the service
+     * @return a {@link org.opennms.netmgt.poller.PollFuture} object, or null
+     *         if the underlying monitor can't poll the service without
+     *         blocking and it has to be polled with
+     *         {@link #poll(MonitoredService, Map)}
+     */
+    public PollFuture pollAsync(MonitoredService svc, Map<String, Object> parameters) {
+        if (!isAsync()) {
+            return null;
+        }
+        return ((AsyncServiceMonitor)m_serviceMonitor).pollAsync(svc, parameters);
+    }
+
+    /**
+     * Store the response time of a status returned by the underlying monitor
+     * and apply the invert-status parameter to it.
+     *
+     * @param svc a {@link org.opennms.netmgt.poller.MonitoredService} object.
+     * @param parameters the parameters of the service
+     * @param status the status returned by the underlying monitor
+     * @return the status of the service
+     */
+    public PollStatus processPollStatus(MonitoredService svc, Map<String, Object> parameters, PollStatus status) {
         if (!status.getProperties().isEmpty()) {
             storeResponseTime(svc, new LinkedHashMap<String, Number>(status.getProperties()), parameters);
         }
@@ -28,6 +28,7 @@
 
 package org.opennms.netmgt.poller.pollables;
 
+import org.opennms.netmgt.poller.PollFuture;
 import org.opennms.netmgt.poller.PollStatus;
 import org.opennms.netmgt.scheduler.Timer;
 
@@ -47,6 +48,16 @@ public interface PollConfig extends Timer {
      */
     public PollStatus poll();
 
+    /**
+     * Start polling the service without blocking the calling thread. The
+     * future is completed, on a thread that may block, with the status that
+     * {@link #poll()} would have returned.
+     *
+     * @return a {@link org.opennms.netmgt.poller.PollFuture} object, or null
+     *         if the service can only be polled with {@link #poll()}
+     */
+    public PollFuture pollAsync();
+
     /**
      * <p>getCurrentTime</p>
      *
@@ -188,7 +188,7 @@ public class PollableInterface extends PollableContainer {
     /**
      * @return
      */
-    private PollableService getCriticalService() {
+    PollableService getCriticalService() {
         return getService(getContext().getCriticalServiceName());
     }
 
@@ -30,14 +30,18 @@ package org.opennms.netmgt.poller.pollables;
 
 import java.net.InetAddress;
 import java.util.Date;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.opennms.netmgt.EventConstants;
 import org.opennms.netmgt.poller.InetNetworkInterface;
 import org.opennms.netmgt.poller.MonitoredService;
 import org.opennms.netmgt.poller.NetworkInterface;
+import org.opennms.netmgt.poller.PollFuture;
+import org.opennms.netmgt.poller.PollFutureListener;
 import org.opennms.netmgt.poller.PollStatus;
+import org.opennms.netmgt.scheduler.AsyncReadyRunnable;
 import org.opennms.netmgt.scheduler.PostponeNecessary;
-import org.opennms.netmgt.scheduler.ReadyRunnable;
 import org.opennms.netmgt.scheduler.Schedule;
 import org.opennms.netmgt.xml.event.Event;
 import org.slf4j.Logger;
@@ -49,7 +53,7 @@ import org.slf4j.LoggerFactory;
  * @author <a href="mailto:brozow@opennms.org">Mathew Brozowski</a>
  * @version $Id: $
  */
-public class PollableService extends PollableElement implements ReadyRunnable, MonitoredService {
+public class PollableService extends PollableElement implements AsyncReadyRunnable, MonitoredService {
     
     private static final Logger LOG = LoggerFactory.getLogger(PollableService.class);
 
@@ -74,6 +78,19 @@ public class PollableService extends PollableElement implements ReadyRunnable, M
     private volatile PollStatus m_oldStatus;
     private volatile Schedule m_schedule;
     private volatile long m_statusChangeTime = 0L;
+
+    /**
+     * Whether an asynchronous poll of the service has been started and its
+     * result hasn't been processed yet
+     */
+    private final AtomicBoolean m_asyncPollRunning = new AtomicBoolean(false);
+
+    /**
+     * The result of the asynchronous poll being processed, returned by the
+     * next call to {@link #poll()} instead of polling the service again;
+     * taken with getAndSet so that only one caller can use it
+     */
+    private final AtomicReference<PollStatus> m_asyncPollStatus = new AtomicReference<PollStatus>();
     /**
      * <p>Constructor for PollableService.</p>
      *
@@ -186,7 +203,10 @@ public class PollableService extends PollableElement implements ReadyRunnable, M
      */
     @Override
     public PollStatus poll() {
-        PollStatus newStatus = m_pollConfig.poll();
+        PollStatus newStatus = m_asyncPollStatus.getAndSet(null);
+        if (newStatus == null) {
+            newStatus = m_pollConfig.poll();
+        }
         if (!newStatus.isUnknown()) { 
             updateStatus(newStatus);
         }
@@ -383,7 +403,78 @@ public class PollableService extends PollableElement implements ReadyRunnable, M
      */
     @Override
     public void run() {
-        doRun(500);
+        runAsync(null);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Starts an asynchronous poll if the monitor of the service supports it,
+     * and otherwise polls the service before returning.  The completion runs
+     * after the result of the poll has been processed, so the schedule of the
+     * service follows its new status.
+     */
+    @Override
+    public boolean runAsync(final Runnable completion) {
+        if (!m_asyncPollRunning.compareAndSet(false, true)) {
+            LOG.info("Skipping scheduled poll of service {}, the previous poll has not completed yet", this);
+            return false;
+        }
+
+        PollFuture future = null;
+        try {
+            future = isPollSkipped() ? null : m_pollConfig.pollAsync();
+        } finally {
+            if (future == null) {
+                m_asyncPollRunning.set(false);
+            }
+        }
+
+        if (future == null) {
+            doRun(500);
+            return false;
+        }
+
+        future.addListener(new PollFutureListener() {
+            @Override
+            public void operationComplete(PollFuture pollFuture) {
+                processAsyncPoll(pollFuture.getPollStatus(), completion);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Process the result of an asynchronous poll like that of a scheduled
+     * poll. The service has already been polled, so rather than postponing
+     * the poll when the tree lock is busy this waits for it.
+     */
+    private void processAsyncPoll(PollStatus pollStatus, Runnable completion) {
+        try {
+            m_asyncPollStatus.set(pollStatus);
+            doRun(0);
+        } catch (Throwable e) {
+            LOG.error("Unexpected exception while processing the poll of {}", this, e);
+        } finally {
+            m_asyncPollStatus.set(null);
+            m_asyncPollRunning.set(false);
+            if (completion != null) {
+                completion.run();
+            }
+        }
+    }
+
+    /**
+     * A service on an interface that is down is only polled if it is the
+     * critical service of the interface, so there is no point in polling it
+     * ahead of time.
+     */
+    private boolean isPollSkipped() {
+        if (!getContext().isNodeProcessingEnabled()) {
+            return false;
+        }
+        PollableService critSvc = getInterface().getCriticalService();
+        return !getInterface().getStatus().isUp() && critSvc != null && critSvc != this;
     }
     
     /**
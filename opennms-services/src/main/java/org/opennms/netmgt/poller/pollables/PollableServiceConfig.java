@@ -37,9 +37,14 @@ import org.opennms.netmgt.config.poller.Downtime;
 import org.opennms.netmgt.config.poller.Package;
 import org.opennms.netmgt.config.poller.Parameter;
 import org.opennms.netmgt.config.poller.Service;
+import org.opennms.netmgt.poller.DefaultPollFuture;
+import org.opennms.netmgt.poller.PollFuture;
+import org.opennms.netmgt.poller.PollFutureListener;
 import org.opennms.netmgt.poller.PollStatus;
 import org.opennms.netmgt.poller.ServiceMonitor;
+import org.opennms.netmgt.scheduler.ReadyRunnable;
 import org.opennms.netmgt.scheduler.ScheduleInterval;
+import org.opennms.netmgt.scheduler.ScheduleTimer;
 import org.opennms.netmgt.scheduler.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -53,6 +58,12 @@ import org.slf4j.LoggerFactory;
 public class PollableServiceConfig implements PollConfig, ScheduleInterval {
     private static final Logger LOG = LoggerFactory.getLogger(PollableServiceConfig.class);
 
+    /**
+     * Whether services whose monitors support it are polled asynchronously,
+     * see {@link #pollAsync()}; off unless enabled
+     */
+    static final boolean ASYNC_POLLING = Boolean.getBoolean("org.opennms.netmgt.poller.asyncPolling");
+
     private PollerConfig m_pollerConfig;
     private PollOutagesConfig m_pollOutagesConfig;
     private PollableService m_service;
@@ -60,7 +71,7 @@ public class PollableServiceConfig implements PollConfig, ScheduleInterval {
     private Package m_pkg;
     private Timer m_timer;
     private Service m_configService;
-	private ServiceMonitor m_serviceMonitor;
+	private LatencyStoringServiceMonitorAdaptor m_serviceMonitor;
 
     /**
      * <p>Constructor for PollableServiceConfig.</p>
@@ -79,7 +90,7 @@ public class PollableServiceConfig implements PollConfig, ScheduleInterval {
         m_timer = timer;
         m_configService = findService(pkg);
         
-        ServiceMonitor monitor = getServiceMonitor();
+        LatencyStoringServiceMonitorAdaptor monitor = getServiceMonitor();
         monitor.initialize(m_service);
     }
 
@@ -110,7 +121,7 @@ public class PollableServiceConfig implements PollConfig, ScheduleInterval {
             packageName = m_pkg.getName();
         }
         try {
-            ServiceMonitor monitor = getServiceMonitor();
+            LatencyStoringServiceMonitorAdaptor monitor = getServiceMonitor();
             LOG.debug("Polling {} using pkg {}", packageName, m_service);
             PollStatus result = monitor.poll(m_service, getParameters());
             LOG.debug("Finish polling {} using pkg {} result = {}", result, m_service, packageName);
@@ -121,7 +132,83 @@ public class PollableServiceConfig implements PollConfig, ScheduleInterval {
         }
     }
 
-	private synchronized ServiceMonitor getServiceMonitor() {
+    /**
+     * <p>pollAsync</p>
+     *
+     * The monitor completes its future on its own I/O thread, so the response
+     * time is stored and the future returned here is completed on one of the
+     * threads of the scheduler.
+     *
+     * @return a {@link org.opennms.netmgt.poller.PollFuture} object, or null
+     *         if asynchronous polling is disabled or the monitor of the
+     *         service can't poll it without blocking
+     */
+    @Override
+    public PollFuture pollAsync() {
+        final LatencyStoringServiceMonitorAdaptor monitor = getServiceMonitor();
+        if (!ASYNC_POLLING || !monitor.isAsync()) {
+            return null;
+        }
+        String packageName = null;
+        synchronized(this) {
+            packageName = m_pkg.getName();
+        }
+        final Map<String,Object> parameters = getParameters();
+        final DefaultPollFuture result = new DefaultPollFuture();
+        try {
+            final PollFuture monitorFuture = monitor.pollAsync(m_service, parameters);
+            if (monitorFuture == null) {
+                return null;
+            }
+            LOG.debug("Polling {} asynchronously using pkg {}", m_service, packageName);
+            monitorFuture.addListener(new PollFutureListener() {
+                @Override
+                public void operationComplete(final PollFuture future) {
+                    runOnScheduler(new Runnable() {
+                        @Override
+                        public void run() {
+                            result.setPollStatus(processPollStatus(monitor, parameters, future.getPollStatus()));
+                        }
+                    });
+                }
+            });
+        } catch (Throwable e) {
+            LOG.error("Unexpected exception while polling {}. Marking service as DOWN", m_service, e);
+            result.setPollStatus(PollStatus.down("Unexpected exception while polling "+m_service+". "+e));
+        }
+        return result;
+    }
+
+    private PollStatus processPollStatus(LatencyStoringServiceMonitorAdaptor monitor, Map<String,Object> parameters, PollStatus status) {
+        try {
+            PollStatus result = monitor.processPollStatus(m_service, parameters, status);
+            LOG.debug("Finish polling {} asynchronously result = {}", m_service, result);
+            return result;
+        } catch (Throwable e) {
+            LOG.error("Unexpected exception while polling {}. Marking service as DOWN", m_service, e);
+            return PollStatus.down("Unexpected exception while polling "+m_service+". "+e);
+        }
+    }
+
+    private void runOnScheduler(final Runnable runnable) {
+        if (m_timer instanceof ScheduleTimer) {
+            ((ScheduleTimer)m_timer).schedule(0, new ReadyRunnable() {
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void run() {
+                    runnable.run();
+                }
+            });
+        } else {
+            runnable.run();
+        }
+    }
+
+	private synchronized LatencyStoringServiceMonitorAdaptor getServiceMonitor() {
 		if (m_serviceMonitor == null) {
 			ServiceMonitor monitor = m_pollerConfig.getServiceMonitor(m_service.getSvcName());
 			m_serviceMonitor = new LatencyStoringServiceMonitorAdaptor(monitor, m_pollerConfig, m_pkg);
@@ -151,7 +238,7 @@ public class PollableServiceConfig implements PollConfig, ScheduleInterval {
      */
     @Override
     public synchronized void refreshThresholds() {
-        ((LatencyStoringServiceMonitorAdaptor)getServiceMonitor()).refreshThresholds();
+        getServiceMonitor().refreshThresholds();
     }
 
 
@@ -34,6 +34,7 @@ import java.net.InetAddress;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
@@ -44,6 +45,8 @@ import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.sql.DataSource;
 
@@ -53,11 +56,13 @@ import org.opennms.core.db.DataSourceFactory;
 import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.netmgt.EventConstants;
 import org.opennms.netmgt.config.CategoryFactory;
+import org.opennms.netmgt.config.RTCConfigFactory;
 import org.opennms.netmgt.config.categories.CatFactory;
 import org.opennms.netmgt.config.categories.Categorygroup;
 import org.opennms.netmgt.filter.FilterDaoFactory;
 import org.opennms.netmgt.filter.FilterParseException;
 import org.opennms.netmgt.rtc.datablock.RTCCategory;
+import org.opennms.netmgt.rtc.datablock.RTCCategoryDownTime;
 import org.opennms.netmgt.rtc.datablock.RTCHashMap;
 import org.opennms.netmgt.rtc.datablock.RTCNode;
 import org.opennms.netmgt.rtc.datablock.RTCNodeKey;
@@ -82,6 +87,12 @@ import org.xml.sax.SAXException;
  * 'nodeGainedService' event would result in the 'nodeGainedService()' method
  * being called by the DataUpdater(s).
  *
+ * Each category also has a 'RTCCategoryDownTime' that is updated as services
+ * are lost and regained, so the value of a category doesn't need a pass over
+ * all of its services. Lost and regained service events only lock the
+ * 'RTCNode's and 'RTCCategoryDownTime's they change, so DataUpdaters don't
+ * wait for each other or for the values being computed.
+ *
  * @author <A HREF="mailto:sowmya@opennms.org">Sowmya Nataraj </A>
  * @author <A HREF="http://www.opennms.org">OpenNMS.org </A>
  */
@@ -89,8 +100,30 @@ public class DataManager {
     
     private static final Logger LOG = LoggerFactory.getLogger(DataManager.class);
     
+    /**
+     * A service read from the database with the categories it belongs to and
+     * its outages in the rolling window
+     */
+    private static class RTCNodeRow {
+        final RTCNodeKey m_key;
+        final List<RTCCategory> m_categories;
+        final List<Timestamp[]> m_outages = new ArrayList<Timestamp[]>();
+
+        RTCNodeRow(RTCNodeKey key, List<RTCCategory> categories) {
+            m_key = key;
+            m_categories = categories;
+        }
+    }
+
+    /**
+     * Reads services and outages and matches the services against the
+     * category rules. Nothing is changed until {@link #apply()} is called, so
+     * that the database work can be done without holding the lock.
+     */
     private class RTCNodeProcessor implements RowCallbackHandler {
-		RTCNodeKey m_currentKey = null;
+		RTCNodeRow m_current = null;
+
+		List<RTCNodeRow> m_rows = new ArrayList<RTCNodeRow>();
 
 		Map<String,Set<Integer>> m_categoryNodeIdLists = new HashMap<String,Set<Integer>>();
 
@@ -98,29 +131,34 @@ public class DataManager {
 		public void processRow(ResultSet rs) throws SQLException {
 			RTCNodeKey key = new RTCNodeKey(rs.getLong("nodeid"), InetAddressUtils.addr(rs.getString("ipaddr")), rs.getString("servicename"));
 			processKey(key);
-			processOutage(key, rs.getTimestamp("ifLostService"), rs.getTimestamp("ifRegainedService"));
+			processOutage(rs.getTimestamp("ifLostService"), rs.getTimestamp("ifRegainedService"));
 		}
 
 		private void processKey(RTCNodeKey key) {
 			if (!matchesCurrent(key)) {
-				m_currentKey = key;
-				processIfService(key);
+				m_current = processIfService(key);
 			}
 		}
 
 		private boolean matchesCurrent(RTCNodeKey key) {
-			return (m_currentKey != null && m_currentKey.equals(key));
+			return (m_current != null && m_current.m_key.equals(key));
 		}
 
 		// This is called exactly once for each unique (node ID, IP address, service name) tuple
-		public synchronized void processIfService(RTCNodeKey key) {
+		private RTCNodeRow processIfService(RTCNodeKey key) {
+		    List<RTCCategory> categories = new ArrayList<RTCCategory>();
 		    for (RTCCategory cat : m_categories.values()) {
 				if (catContainsIfService(cat, key)) {
-					RTCNode rtcN = getRTCNode(key);
-					addNodeToCategory(cat, rtcN);
+					categories.add(cat);
 				}
 			}
-		
+
+		    RTCNodeRow row = new RTCNodeRow(key, categories);
+		    // if it doesn't belong to any category, neither do its outages
+		    if (!categories.isEmpty()) {
+		        m_rows.add(row);
+		    }
+		    return row;
 		}
 
 		private RTCNode getRTCNode(RTCNodeKey key) {
@@ -168,13 +206,25 @@ public class DataManager {
 		}
 		
 		// This is processed for each outage, passing two null means there is not outage
-		public void processOutage(RTCNodeKey key, Timestamp ifLostService, Timestamp ifRegainedService) {
-			RTCNode rtcN = m_map.getRTCNode(key);
-			// if we can't find the node it doesn't belong to any category
-			if (rtcN == null) return;
-			
-			addOutageToRTCNode(rtcN, ifLostService, ifRegainedService);
-			
+		private void processOutage(Timestamp ifLostService, Timestamp ifRegainedService) {
+			if (ifLostService == null || m_current.m_categories.isEmpty()) return;
+			m_current.m_outages.add(new Timestamp[] { ifLostService, ifRegainedService });
+		}
+
+		/**
+		 * Adds the services that were read to the map and their categories.
+		 * Must be called while holding the write lock.
+		 */
+		public void apply() {
+			for (RTCNodeRow row : m_rows) {
+				RTCNode rtcN = getRTCNode(row.m_key);
+				for (RTCCategory cat : row.m_categories) {
+					addNodeToCategory(cat, rtcN);
+				}
+				for (Timestamp[] outage : row.m_outages) {
+					addOutageToRTCNode(rtcN, outage[0], outage[1]);
+				}
+			}
 		}
 	}
 
@@ -183,11 +233,23 @@ public class DataManager {
      */
     private Map<String, RTCCategory> m_categories;
 
+    /**
+     * The down time of each category in the rolling window, keyed by label
+     */
+    private Map<String, RTCCategoryDownTime> m_downTimes;
+
     /**
      * map keyed using the RTCNodeKey or node ID or node ID/IP address
      */
     private RTCHashMap m_map;
 
+    /**
+     * Outage events and queries share the read lock and rely on the locks of
+     * the individual 'RTCNode's and 'RTCCategoryDownTime's; changes to which
+     * services exist and which categories they belong to take the write lock.
+     */
+    private final ReadWriteLock m_lock = new ReentrantReadWriteLock();
+
     /**
      * Get the 'ismanaged' status for the node ID, IP address combination
      * 
@@ -221,7 +283,14 @@ public class DataManager {
 
 		LOG.debug("regained time for nodeid/ip/svc: {}/{}/{}: {}/{}", rtcN.getNodeID(), rtcN.getIP(), rtcN.getSvcName(), regainedTimeTS, regainedTime);
 
-		rtcN.addSvcTime(lostTime, regainedTime);
+		if (rtcN.addSvcTime(lostTime, regainedTime)) {
+			for (String catLabel : rtcN.getCategories()) {
+				RTCCategoryDownTime downTime = m_downTimes.get(catLabel);
+				if (downTime != null) {
+					downTime.addOutage(lostTime, regainedTime);
+				}
+			}
+		}
 	}
 
 	private void addRTCNode(RTCNode rtcN) {
@@ -230,8 +299,16 @@ public class DataManager {
 
 	private void addNodeToCategory(RTCCategory cat, RTCNode rtcN) {
 
-		// add the category info to the node
-        rtcN.addCategory(cat.getLabel());
+		// add the category info to the node, and its outages to the
+		// category's down time
+		if (!rtcN.belongsTo(cat.getLabel())) {
+			rtcN.addCategory(cat.getLabel());
+
+			RTCCategoryDownTime downTime = m_downTimes.get(cat.getLabel());
+			synchronized (rtcN) {
+				downTime.addService(rtcN.getSvcTimesList());
+			}
+		}
 
 		// Add node to category
 		cat.addNode(rtcN);
@@ -239,6 +316,22 @@ public class DataManager {
 		LOG.debug("rtcN : {}/{}/{} added to cat: {}", rtcN.getNodeID(), rtcN.getIP(), rtcN.getSvcName(), cat.getLabel());
 	}
 
+	/**
+	 * Removes the outages of a service from the down time of the categories
+	 * it belongs to.
+	 */
+	private void removeNodeFromDownTimes(RTCNode rtcN) {
+		long now = System.currentTimeMillis();
+		for (String catLabel : rtcN.getCategories()) {
+			RTCCategoryDownTime downTime = m_downTimes.get(catLabel);
+			if (downTime != null) {
+				synchronized (rtcN) {
+					downTime.removeService(rtcN.getSvcTimesList(), now);
+				}
+			}
+		}
+	}
+
     /**
      * Creates the categories map. Reads the categories from the categories.xml
      * and creates the 'RTCCategory's map
@@ -261,6 +354,8 @@ public class DataManager {
         }
 
         m_categories = new HashMap<String, RTCCategory>();
+        m_downTimes = new HashMap<String, RTCCategoryDownTime>();
+        long rollingWindow = RTCConfigFactory.getInstance().getRollingWindow();
 
         cFactory.getReadLock().lock();
         try {
@@ -268,7 +363,9 @@ public class DataManager {
                 final String commonRule = cg.getCommon().getRule();
     
                 for (final org.opennms.netmgt.config.categories.Category cat : cg.getCategories().getCategoryCollection()) {
-                    m_categories.put(new RTCCategory(cat, commonRule).getLabel(), new RTCCategory(cat, commonRule));
+                    final RTCCategory rtcCat = new RTCCategory(cat, commonRule);
+                    m_categories.put(rtcCat.getLabel(), rtcCat);
+                    m_downTimes.put(rtcCat.getLabel(), new RTCCategoryDownTime(rollingWindow));
                 }
             }
         } finally {
@@ -281,8 +378,6 @@ public class DataManager {
      * list, this reads the services and outage tables to get the initial data,
      * creates 'RTCNode' objects that are added to the map and and to the
      * appropriate category.
-     * @param dbConn
-     *            the database connection.
      * 
      * @throws SQLException
      *             if the database read fails due to an SQL error
@@ -294,6 +389,30 @@ public class DataManager {
      *             category rule fails for some reason
      */
     private void populateNodesFromDB(String query, Object[] args) throws SQLException, FilterParseException, RTCException {
+        RTCNodeProcessor processor = readNodesFromDB(query, args);
+
+        m_lock.writeLock().lock();
+        try {
+            processor.apply();
+        } finally {
+            m_lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Reads the services and outages from the database and matches the
+     * services against the category rules, without changing anything yet.
+     * 
+     * @throws SQLException
+     *             if the database read fails due to an SQL error
+     * @throws FilterParseException
+     *             if filtering the data against the category rule fails due to
+     *             the rule being incorrect
+     * @throws RTCException
+     *             if the database read or filtering the data against the
+     *             category rule fails for some reason
+     */
+    private RTCNodeProcessor readNodesFromDB(String query, Object[] args) throws SQLException, FilterParseException, RTCException {
 
     	final String getOutagesInWindow = 
     			"select " + 
@@ -327,13 +446,14 @@ public class DataManager {
 		long window = (new Date()).getTime() - RTCManager.getRollingWindow();
 		Timestamp windowTS = new Timestamp(window);
 
-    	RowCallbackHandler rowHandler = new RTCNodeProcessor();
+    	RTCNodeProcessor rowHandler = new RTCNodeProcessor();
 
     	Object[] sqlArgs = createArgs(windowTS, windowTS, args);
     	
     	JdbcTemplate template = new JdbcTemplate(getConnectionFactory());
     	template.query(getOutagesInWindow, sqlArgs, rowHandler);
     	
+    	return rowHandler;
     }
 
 	private Object[] createArgs(Object arg1, Object arg2, Object[] remaining) {
@@ -397,7 +517,7 @@ public class DataManager {
      * @param svcName
      *            the service name
      */
-    public synchronized void nodeGainedService(long nodeid, InetAddress ip, String svcName) {
+    public void nodeGainedService(long nodeid, InetAddress ip, String svcName) {
         //
         // check the 'status' flag for the service
         //
@@ -458,18 +578,55 @@ public class DataManager {
      * @param t
      *            the time at which service was lost
      */
-    public synchronized void nodeLostService(long nodeid, InetAddress ip, String svcName, long t) {
-        RTCNodeKey key = new RTCNodeKey(nodeid, ip, svcName);
-        RTCNode rtcN = m_map.getRTCNode(key);
-        if (rtcN == null) {
-            // oops! got a lost/regained service for a node that is not known?
-            LOG.info("Received a nodeLostService event for an unknown/irrelevant node: {}", key.toString());
-            return;
+    public void nodeLostService(long nodeid, InetAddress ip, String svcName, long t) {
+        m_lock.readLock().lock();
+        try {
+            RTCNodeKey key = new RTCNodeKey(nodeid, ip, svcName);
+            RTCNode rtcN = m_map.getRTCNode(key);
+            if (rtcN == null) {
+                // oops! got a lost/regained service for a node that is not known?
+                LOG.info("Received a nodeLostService event for an unknown/irrelevant node: {}", key.toString());
+                return;
+            }
+
+            // inform node
+            nodeLostService(rtcN, t);
+        } finally {
+            m_lock.readLock().unlock();
         }
+    }
 
-        // inform node
-        rtcN.nodeLostService(t);
+    /**
+     * Inform a node that it lost service, and if that opened an outage,
+     * the down time of its categories. Must be called while holding the read
+     * lock.
+     */
+    private void nodeLostService(RTCNode rtcN, long t) {
+        if (rtcN.nodeLostService(t)) {
+            for (String catLabel : rtcN.getCategories()) {
+                RTCCategoryDownTime downTime = m_downTimes.get(catLabel);
+                if (downTime != null) {
+                    downTime.serviceLost(t);
+                }
+            }
+        }
+    }
 
+    /**
+     * Inform a node that it regained service, and if that closed an outage,
+     * the down time of its categories. Must be called while holding the read
+     * lock.
+     */
+    private void nodeRegainedService(RTCNode rtcN, long t) {
+        long regainedTime = rtcN.nodeRegainedService(t);
+        if (regainedTime != -1) {
+            for (String catLabel : rtcN.getCategories()) {
+                RTCCategoryDownTime downTime = m_downTimes.get(catLabel);
+                if (downTime != null) {
+                    downTime.serviceRegained(regainedTime);
+                }
+            }
+        }
     }
 
     /**
@@ -482,9 +639,14 @@ public class DataManager {
      * @param t
      *            the time at which service was lost
      */
-    public synchronized void interfaceDown(long nodeid, InetAddress ip, long t) {
-        for (RTCNode rtcN : (List<RTCNode>) m_map.getRTCNodes(nodeid, ip)) {
-            rtcN.nodeLostService(t);
+    public void interfaceDown(long nodeid, InetAddress ip, long t) {
+        m_lock.readLock().lock();
+        try {
+            for (RTCNode rtcN : m_map.getRTCNodes(nodeid, ip)) {
+                nodeLostService(rtcN, t);
+            }
+        } finally {
+            m_lock.readLock().unlock();
         }
     }
 
@@ -496,9 +658,14 @@ public class DataManager {
      * @param t
      *            the time at which service was lost
      */
-    public synchronized void nodeDown(long nodeid, long t) {
-    	for (RTCNode rtcN : (List<RTCNode>) m_map.getRTCNodes(nodeid)) {
-            rtcN.nodeLostService(t);
+    public void nodeDown(long nodeid, long t) {
+        m_lock.readLock().lock();
+        try {
+            for (RTCNode rtcN : m_map.getRTCNodes(nodeid)) {
+                nodeLostService(rtcN, t);
+            }
+        } finally {
+            m_lock.readLock().unlock();
         }
     }
 
@@ -510,9 +677,14 @@ public class DataManager {
      * @param t
      *            the time at which service was regained
      */
-    public synchronized void nodeUp(long nodeid, long t) {
-    	for (RTCNode rtcN : (List<RTCNode>) m_map.getRTCNodes(nodeid)) {
-            rtcN.nodeRegainedService(t);
+    public void nodeUp(long nodeid, long t) {
+        m_lock.readLock().lock();
+        try {
+            for (RTCNode rtcN : m_map.getRTCNodes(nodeid)) {
+                nodeRegainedService(rtcN, t);
+            }
+        } finally {
+            m_lock.readLock().unlock();
         }
     }
 
@@ -526,9 +698,14 @@ public class DataManager {
      * @param t
      *            the time at which service was regained
      */
-    public synchronized void interfaceUp(long nodeid, InetAddress ip, long t) {
-        for (RTCNode rtcN : (List<RTCNode>) m_map.getRTCNodes(nodeid, ip)) {
-            rtcN.nodeRegainedService(t);
+    public void interfaceUp(long nodeid, InetAddress ip, long t) {
+        m_lock.readLock().lock();
+        try {
+            for (RTCNode rtcN : m_map.getRTCNodes(nodeid, ip)) {
+                nodeRegainedService(rtcN, t);
+            }
+        } finally {
+            m_lock.readLock().unlock();
         }
     }
 
@@ -544,17 +721,22 @@ public class DataManager {
      * @param t
      *            the time at which service was regained
      */
-    public synchronized void nodeRegainedService(long nodeid, InetAddress ip, String svcName, long t) {
-        RTCNodeKey key = new RTCNodeKey(nodeid, ip, svcName);
-        RTCNode rtcN = m_map.getRTCNode(key);
-        if (rtcN == null) {
-            // oops! got a lost/regained service for a node that is not known?
-            LOG.info("Received a nodeRegainedService event for an unknown/irrelevant node: {}", key.toString());
-            return;
-        }
+    public void nodeRegainedService(long nodeid, InetAddress ip, String svcName, long t) {
+        m_lock.readLock().lock();
+        try {
+            RTCNodeKey key = new RTCNodeKey(nodeid, ip, svcName);
+            RTCNode rtcN = m_map.getRTCNode(key);
+            if (rtcN == null) {
+                // oops! got a lost/regained service for a node that is not known?
+                LOG.info("Received a nodeRegainedService event for an unknown/irrelevant node: {}", key.toString());
+                return;
+            }
 
-        // inform node
-        rtcN.nodeRegainedService(t);
+            // inform node
+            nodeRegainedService(rtcN, t);
+        } finally {
+            m_lock.readLock().unlock();
+        }
     }
 
     /**
@@ -567,7 +749,16 @@ public class DataManager {
      * @param svcName
      *            the service that was deleted
      */
-    public synchronized void serviceDeleted(long nodeid, InetAddress ip, String svcName) {
+    public void serviceDeleted(long nodeid, InetAddress ip, String svcName) {
+        m_lock.writeLock().lock();
+        try {
+            serviceDeletedLocked(nodeid, ip, svcName);
+        } finally {
+            m_lock.writeLock().unlock();
+        }
+    }
+
+    private void serviceDeletedLocked(long nodeid, InetAddress ip, String svcName) {
         // create lookup key
         RTCNodeKey key = new RTCNodeKey(nodeid, ip, svcName);
 
@@ -579,6 +770,9 @@ public class DataManager {
             return;
         }
 
+        // its outages no longer count towards its categories
+        removeNodeFromDownTimes(rtcN);
+
         //
         // Go through from all the categories this node belongs to
         // and delete the service
@@ -619,7 +813,7 @@ public class DataManager {
      *
      * @param nodeid a long.
      */
-    public synchronized void assetInfoChanged(long nodeid) {
+    public void assetInfoChanged(long nodeid) {
         try {
         	rtcNodeRescan(nodeid);
         } catch (FilterParseException ex) {
@@ -641,7 +835,7 @@ public class DataManager {
      *
      * @param nodeid a long.
      */
-    public synchronized void nodeCategoryMembershipChanged(long nodeid) {
+    public void nodeCategoryMembershipChanged(long nodeid) {
         try {
         	rtcNodeRescan(nodeid);
         } catch (FilterParseException ex) {
@@ -671,16 +865,28 @@ public class DataManager {
      *             if the database read or filtering the data against the
      *             category rule fails for some reason
      */
-    public synchronized void rtcNodeRescan(long nodeid) throws SQLException, FilterParseException, RTCException {
+    public void rtcNodeRescan(long nodeid) throws SQLException, FilterParseException, RTCException {
     	
-    	for (Iterator<RTCCategory> it = m_categories.values().iterator(); it.hasNext();) {
-			RTCCategory cat = it.next();
-			cat.deleteNode(nodeid);
-		}
-    	
-    	m_map.deleteNode(nodeid);
-    	
-    	populateNodesFromDB("ifsvc.nodeid = ?", new Object[] { Long.valueOf(nodeid) });
+    	// matching the services against the category rules takes a query per
+    	// category, so do it before taking the lock
+    	RTCNodeProcessor processor = readNodesFromDB("ifsvc.nodeid = ?", new Object[] { Long.valueOf(nodeid) });
+
+    	m_lock.writeLock().lock();
+    	try {
+    		for (Iterator<RTCCategory> it = m_categories.values().iterator(); it.hasNext();) {
+    			RTCCategory cat = it.next();
+    			cat.deleteNode(nodeid);
+    		}
+
+    		for (RTCNode rtcN : m_map.getRTCNodes(nodeid)) {
+    			removeNodeFromDownTimes(rtcN);
+    		}
+    		m_map.deleteNode(nodeid);
+
+    		processor.apply();
+    	} finally {
+    		m_lock.writeLock().unlock();
+    	}
     	
     }
 
@@ -704,7 +910,16 @@ public class DataManager {
      * @param newNodeId
      *            the node that the IP now belongs to
      */
-    public synchronized void interfaceReparented(InetAddress ip, long oldNodeId, long newNodeId) {
+    public void interfaceReparented(InetAddress ip, long oldNodeId, long newNodeId) {
+        m_lock.writeLock().lock();
+        try {
+            interfaceReparentedLocked(ip, oldNodeId, newNodeId);
+        } finally {
+            m_lock.writeLock().unlock();
+        }
+    }
+
+    private void interfaceReparentedLocked(InetAddress ip, long oldNodeId, long newNodeId) {
         // get all RTCNodes with the IP/old node ID
     	List<RTCNode> nodesList = m_map.getRTCNodes(oldNodeId, ip);
         ListIterator<RTCNode> listIter = new LinkedList<RTCNode>(nodesList).listIterator();
@@ -747,8 +962,23 @@ public class DataManager {
      * @return the value(uptime) for the category in the last 'rollingWindow'
      *         starting at current time
      */
-    public synchronized double getValue(String catLabel, long curTime, long rollingWindow) {
-        return m_map.getValue(catLabel, curTime, rollingWindow);
+    public double getValue(String catLabel, long curTime, long rollingWindow) {
+        m_lock.readLock().lock();
+        try {
+            // the down time of the category is kept up to date as outages
+            // come and go; only go through all of its services if it can't
+            // answer for this window
+            RTCCategoryDownTime downTime = m_downTimes.get(catLabel);
+            if (downTime != null && downTime.getRollingWindow() == rollingWindow) {
+                double value = downTime.getValue(curTime);
+                if (!Double.isNaN(value)) {
+                    return value;
+                }
+            }
+            return m_map.getValue(catLabel, curTime, rollingWindow);
+        } finally {
+            m_lock.readLock().unlock();
+        }
     }
 
     /**
@@ -766,8 +996,13 @@ public class DataManager {
      * @return the value(uptime) for the node in the last 'rollingWindow'
      *         starting at current time in the context of the passed category
      */
-    public synchronized double getValue(long nodeid, String catLabel, long curTime, long rollingWindow) {
-        return m_map.getValue(nodeid, catLabel, curTime, rollingWindow);
+    public double getValue(long nodeid, String catLabel, long curTime, long rollingWindow) {
+        m_lock.readLock().lock();
+        try {
+            return m_map.getValue(nodeid, catLabel, curTime, rollingWindow);
+        } finally {
+            m_lock.readLock().unlock();
+        }
     }
 
     /**
@@ -781,8 +1016,13 @@ public class DataManager {
      * @return the service count for the nodeid in the context of the passed
      *         category
      */
-    public synchronized int getServiceCount(long nodeid, String catLabel) {
-        return m_map.getServiceCount(nodeid, catLabel);
+    public int getServiceCount(long nodeid, String catLabel) {
+        m_lock.readLock().lock();
+        try {
+            return m_map.getServiceCount(nodeid, catLabel);
+        } finally {
+            m_lock.readLock().unlock();
+        }
     }
 
     /**
@@ -796,8 +1036,13 @@ public class DataManager {
      * @return the service down count for the nodeid in the context of the
      *         passed category
      */
-    public synchronized int getServiceDownCount(long nodeid, String catLabel) {
-        return m_map.getServiceDownCount(nodeid, catLabel);
+    public int getServiceDownCount(long nodeid, String catLabel) {
+        m_lock.readLock().lock();
+        try {
+            return m_map.getServiceDownCount(nodeid, catLabel);
+        } finally {
+            m_lock.readLock().unlock();
+        }
     }
 
     /**
@@ -805,7 +1050,7 @@ public class DataManager {
      *
      * @return the categories
      */
-    public synchronized Map<String, RTCCategory> getCategories() {
+    public Map<String, RTCCategory> getCategories() {
         return m_categories;
     }
 
@@ -0,0 +1,320 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.rtc.datablock;
+
+/**
+ * The total down time of the services in a category over the rolling window,
+ * kept up to date as outages are opened and closed so that the value of the
+ * category can be read without going through all of its services.
+ *
+ * <p>The down time of an outage from <code>lost</code> to
+ * <code>regained</code> within the window ending at <code>t</code> grows by
+ * one millisecond per millisecond while the outage is open at <code>t</code>,
+ * and shrinks by one millisecond per millisecond while it is open at
+ * <code>t - rollingWindow</code>. So the total down time changes linearly
+ * with time, and its slope only changes at <code>lost</code>,
+ * <code>regained</code>, <code>lost + rollingWindow</code> and
+ * <code>regained + rollingWindow</code>. The total and its slope are kept
+ * for the last time the window was moved to, along with a heap of the
+ * upcoming slope changes; moving the window forward only processes the
+ * changes that it passes.</p>
+ *
+ * <p>Closing an outage at <code>regained</code> is the same as subtracting
+ * an open outage lost at <code>regained</code>, which is how regained
+ * services are recorded.</p>
+ */
+public class RTCCategoryDownTime {
+
+    private static final long OPEN = RTCNodeSvcTimesList.OPEN;
+
+    /**
+     * The rolling window the down time is maintained for
+     */
+    private final long m_rollingWindow;
+
+    /**
+     * The end of the window that the down time is maintained for
+     */
+    private long m_time = 0;
+
+    /**
+     * The total down time of all services in the window ending at 'm_time'
+     */
+    private long m_downTime = 0;
+
+    /**
+     * The rate of change of 'm_downTime' at 'm_time'
+     */
+    private long m_slope = 0;
+
+    /**
+     * The number of services in the category
+     */
+    private int m_serviceCount = 0;
+
+    /**
+     * Binary min-heap of the times after 'm_time' at which the slope changes,
+     * with the change at each time in 'm_slopeChanges'
+     */
+    private long[] m_changeTimes = new long[16];
+
+    private int[] m_slopeChanges = new int[16];
+
+    private int m_changeCount = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param rollingWindow
+     *            the rolling window to maintain the down time for
+     */
+    public RTCCategoryDownTime(long rollingWindow) {
+        m_rollingWindow = rollingWindow;
+    }
+
+    /**
+     * Return the rolling window the down time is maintained for.
+     *
+     * @return the rolling window
+     */
+    public long getRollingWindow() {
+        return m_rollingWindow;
+    }
+
+    /**
+     * Add a service and its outages to the category.
+     *
+     * @param svcTimes
+     *            the outages of the service
+     */
+    public synchronized void addService(RTCNodeSvcTimesList svcTimes) {
+        m_serviceCount++;
+        for (int i = 0; i < svcTimes.size(); i++) {
+            add(svcTimes.getLostTime(i), svcTimes.getRegainedTime(i), 1);
+        }
+    }
+
+    /**
+     * Remove a service and its outages from the category.
+     *
+     * Outages that have already been removed from the service times list
+     * because they expired must no longer affect the down time, so the window
+     * is first moved to 'now' if it is behind.
+     *
+     * @param svcTimes
+     *            the outages of the service
+     * @param now
+     *            the current time
+     */
+    public synchronized void removeService(RTCNodeSvcTimesList svcTimes, long now) {
+        if (now > m_time) {
+            advance(now);
+        }
+        m_serviceCount--;
+        for (int i = 0; i < svcTimes.size(); i++) {
+            add(svcTimes.getLostTime(i), svcTimes.getRegainedTime(i), -1);
+        }
+    }
+
+    /**
+     * Add an outage of a service in the category.
+     *
+     * @param losttime
+     *            time at which service was lost
+     * @param regainedtime
+     *            time at which service was regained, or -1 if it is still
+     *            down
+     */
+    public synchronized void addOutage(long losttime, long regainedtime) {
+        add(losttime, regainedtime > 0 ? regainedtime : OPEN, 1);
+    }
+
+    /**
+     * Record that a service in the category was lost.
+     *
+     * @param losttime
+     *            time at which service was lost
+     */
+    public synchronized void serviceLost(long losttime) {
+        add(losttime, OPEN, 1);
+    }
+
+    /**
+     * Record that a service in the category was regained.
+     *
+     * @param regainedtime
+     *            time at which service was regained
+     */
+    public synchronized void serviceRegained(long regainedtime) {
+        add(regainedtime, OPEN, -1);
+    }
+
+    /**
+     * Return the number of services in the category.
+     *
+     * @return the number of services
+     */
+    public synchronized int getServiceCount() {
+        return m_serviceCount;
+    }
+
+    /**
+     * Get the total down time of the services in the category in the last
+     * 'rollingWindow' starting at 'curTime'.
+     *
+     * @param curTime
+     *            the current time
+     * @return the down time, or -1 if the window has already been moved
+     *         past 'curTime'
+     */
+    public synchronized long getDownTime(long curTime) {
+        if (curTime < m_time) {
+            return -1;
+        }
+        advance(curTime);
+        return m_downTime;
+    }
+
+    /**
+     * Get the value(uptime) of the category in the last 'rollingWindow'
+     * starting at 'curTime'.
+     *
+     * @param curTime
+     *            the current time
+     * @return the value, or {@link Double#NaN} if the window has already
+     *         been moved past 'curTime'
+     */
+    public synchronized double getValue(long curTime) {
+        long downTime = getDownTime(curTime);
+        if (downTime < 0) {
+            return Double.NaN;
+        }
+        if (m_serviceCount <= 0) {
+            return 100.0;
+        }
+        return 100 * (1 - (downTime * 1.0 / (m_rollingWindow * 1.0 * m_serviceCount)));
+    }
+
+    /**
+     * Add (sign 1) or subtract (sign -1) an outage: its down time in the
+     * current window, its contribution to the current slope, and the slope
+     * changes it causes later on.
+     */
+    private void add(long losttime, long regainedtime, int sign) {
+        final long startTime = m_time - m_rollingWindow;
+
+        m_downTime += sign * RTCNodeSvcTimesList.getDownTime(losttime, regainedtime, startTime, m_time);
+        m_slope += sign * (isDown(losttime, regainedtime, m_time) - isDown(losttime, regainedtime, startTime));
+
+        schedule(losttime, sign);
+        schedule(losttime + m_rollingWindow, -sign);
+        if (regainedtime != OPEN) {
+            schedule(regainedtime, -sign);
+            schedule(regainedtime + m_rollingWindow, sign);
+        }
+    }
+
+    private static int isDown(long losttime, long regainedtime, long t) {
+        return losttime <= t && (regainedtime == OPEN || t < regainedtime) ? 1 : 0;
+    }
+
+    /**
+     * Move the end of the window forward to 'curTime'.
+     */
+    private void advance(long curTime) {
+        while (m_changeCount > 0 && m_changeTimes[0] <= curTime) {
+            long changeTime = m_changeTimes[0];
+            int slopeChange = m_slopeChanges[0];
+            removeFirst();
+
+            m_downTime += m_slope * (changeTime - m_time);
+            m_time = changeTime;
+            m_slope += slopeChange;
+        }
+        m_downTime += m_slope * (curTime - m_time);
+        m_time = curTime;
+    }
+
+    private void schedule(long changeTime, int slopeChange) {
+        // changes up to now are already part of the slope
+        if (changeTime <= m_time) {
+            return;
+        }
+
+        if (m_changeCount == m_changeTimes.length) {
+            long[] changeTimes = new long[m_changeCount * 2];
+            int[] slopeChanges = new int[m_changeCount * 2];
+            System.arraycopy(m_changeTimes, 0, changeTimes, 0, m_changeCount);
+            System.arraycopy(m_slopeChanges, 0, slopeChanges, 0, m_changeCount);
+            m_changeTimes = changeTimes;
+            m_slopeChanges = slopeChanges;
+        }
+
+        int i = m_changeCount++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (m_changeTimes[parent] <= changeTime) {
+                break;
+            }
+            m_changeTimes[i] = m_changeTimes[parent];
+            m_slopeChanges[i] = m_slopeChanges[parent];
+            i = parent;
+        }
+        m_changeTimes[i] = changeTime;
+        m_slopeChanges[i] = slopeChange;
+    }
+
+    private void removeFirst() {
+        m_changeCount--;
+        if (m_changeCount == 0) {
+            return;
+        }
+
+        long changeTime = m_changeTimes[m_changeCount];
+        int slopeChange = m_slopeChanges[m_changeCount];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= m_changeCount) {
+                break;
+            }
+            if (child + 1 < m_changeCount && m_changeTimes[child + 1] < m_changeTimes[child]) {
+                child++;
+            }
+            if (changeTime <= m_changeTimes[child]) {
+                break;
+            }
+            m_changeTimes[i] = m_changeTimes[child];
+            m_slopeChanges[i] = m_slopeChanges[child];
+            i = child;
+        }
+        m_changeTimes[i] = changeTime;
+        m_slopeChanges[i] = slopeChange;
+    }
+}
@@ -33,9 +33,10 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * The RTCHashMap has either a nodeid or a nodeid/ip as key and provides
@@ -60,8 +61,10 @@ public class RTCHashMap {
         m_map = new HashMap<RTCNodeKey,List<RTCNode>>(initialCapacity);
     }
 
-    private List<Long> getNodeIDs() {
-    	List<Long> nodes = new LinkedList<Long>();
+    private Set<Long> getNodeIDs() {
+    	// every node has a key without IP address and service name, along
+    	// with its interface and service keys; only count it once
+    	Set<Long> nodes = new LinkedHashSet<Long>();
     	for (Iterator<RTCNodeKey> it = m_map.keySet().iterator(); it.hasNext();) {
 			RTCNodeKey key = it.next();
 			nodes.add(key.getNodeID());
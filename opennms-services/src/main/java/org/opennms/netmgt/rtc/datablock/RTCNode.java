@@ -147,9 +147,10 @@ public class RTCNode {
      *            time at which service was lost
      * @param regainedtime
      *            time at which service was regained
+     * @return false if the entry was rejected
      */
-    public void addSvcTime(long losttime, long regainedtime) {
-        m_svcTimesList.addSvcTime(losttime, regainedtime);
+    public synchronized boolean addSvcTime(long losttime, long regainedtime) {
+        return m_svcTimesList.addSvcTime(losttime, regainedtime);
     }
 
     /**
@@ -185,26 +186,13 @@ public class RTCNode {
      *
      * @param t
      *            the time at which service was lost
+     * @return false if the event was ignored because the last entry is
+     *         still waiting for a regained service
      */
-    public synchronized void nodeLostService(long t) {
-        // check if the last element in the times list is 'open'
-        // i.e. is waiting for a regained service - if yes,
-        // don't add anything
-
-        int listsize = m_svcTimesList.size();
-        if (listsize > 0) {
-            RTCNodeSvcTime stime = (RTCNodeSvcTime) m_svcTimesList.get(listsize - 1);
-
-            if (stime.getRegainedTime() == -1) {
-                // last event was a 'lostService'
-                // ignore this event
-                return;
-            }
-        }
-
-        // create a new entry
-        RTCNodeSvcTime newStime = new RTCNodeSvcTime(t);
-        m_svcTimesList.add(newStime);
+    public synchronized boolean nodeLostService(long t) {
+        // if the last element in the times list is 'open' i.e. is
+        // waiting for a regained service, this adds nothing
+        return m_svcTimesList.lostService(t);
     }
 
     /**
@@ -214,20 +202,12 @@ public class RTCNode {
      *
      * @param t
      *            the time at which node regained service
+     * @return the regained time that was set, or -1 if the event was
+     *         ignored because the last entry was not waiting for a regained
+     *         service
      */
-    public synchronized void nodeRegainedService(long t) {
-        int listsize = m_svcTimesList.size();
-        if (listsize > 0) {
-            RTCNodeSvcTime stime = (RTCNodeSvcTime) m_svcTimesList.get(listsize - 1);
-
-            if (stime.getRegainedTime() != -1) {
-                // last event was a 'regainedService'
-                // ignore this event
-                return;
-            }
-
-            stime.setRegainedTime(t);
-        }
+    public synchronized long nodeRegainedService(long t) {
+        return m_svcTimesList.regainedService(t);
     }
 
     /**
@@ -262,7 +242,17 @@ public class RTCNode {
      *
      * @return the list of service times for this node
      */
-    public List<RTCNodeSvcTime> getServiceTimes() {
+    public synchronized List<RTCNodeSvcTime> getServiceTimes() {
+        return m_svcTimesList.getServiceTimes();
+    }
+
+    /**
+     * Return the lost/regained service times for this node. Callers must
+     * synchronize on the node while using it.
+     *
+     * @return the service times list for this node
+     */
+    public RTCNodeSvcTimesList getSvcTimesList() {
         return m_svcTimesList;
     }
 
@@ -303,7 +293,7 @@ public class RTCNode {
      *            the window for which downtime is required
      * @return the total outage time for this node
      */
-    public long getDownTime(String cat, long curTime, long rollingWindow) {
+    public synchronized long getDownTime(String cat, long curTime, long rollingWindow) {
         // get the down time for this node in the context of the
         // category
         // if the service is not in 'context', return a negative value
@@ -349,27 +339,8 @@ public class RTCNode {
      *
      * @return if the service is currently up/down
      */
-    public boolean isServiceCurrentlyDown() {
-        int size = m_svcTimesList.size();
-        if (size == 0) {
-            return false;
-        }
-
-        // else get last entry
-        RTCNodeSvcTime svctime = (RTCNodeSvcTime) m_svcTimesList.get(size - 1);
-        if (svctime.getRegainedTime() != -1) {
-            // node has regained service - so service not currently down
-            return false;
-        }
-
-        // getting here means the service losttime is the one to be returned
-        long svclosttime = svctime.getLostTime();
-        if (svclosttime == -1) {
-            // huh? how is it possible?
-            return false;
-        }
-
-        return true;
+    public synchronized boolean isServiceCurrentlyDown() {
+        return m_svcTimesList.isServiceDown();
     }
 
     /** {@inheritDoc} */
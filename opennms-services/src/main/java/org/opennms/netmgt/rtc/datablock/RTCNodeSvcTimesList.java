@@ -28,9 +28,8 @@
 
 package org.opennms.netmgt.rtc.datablock;
 
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.ListIterator;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -40,6 +39,9 @@ import org.opennms.netmgt.config.RTCConfigFactory;
  * List of service times. This contains a list of service lost/regained set/pair
  * for the RTCNode.
  *
+ * The lost and regained times are kept in two arrays of primitives, oldest
+ * outage first, rather than as one object per outage.
+ *
  * Also maintains the outage/down time each time it is calculated and the time
  * from which this was calculated - this is done so when the outage time for a
  * window is calculated, the same calculations are not done on the node multiple
@@ -53,9 +55,31 @@ import org.opennms.netmgt.config.RTCConfigFactory;
  * @author <A HREF="http://www.opennms.org">OpenNMS.org </A>
  * @version $Id: $
  */
-public class RTCNodeSvcTimesList extends LinkedList<RTCNodeSvcTime> {
+public class RTCNodeSvcTimesList {
     private static final Logger LOG = LoggerFactory.getLogger(RTCNodeSvcTimesList.class);
-    private static final long serialVersionUID = 2606739258065019820L;
+
+    /**
+     * The regained time of an outage that is still open
+     */
+    public static final long OPEN = -1;
+
+    private static final int INITIAL_CAPACITY = 2;
+
+    /**
+     * The times at which service was lost, oldest first
+     */
+    private long[] m_lostTimes;
+
+    /**
+     * The times at which service was regained, {@link #OPEN} for an outage
+     * that is still open
+     */
+    private long[] m_regainedTimes;
+
+    /**
+     * The number of outages in the list
+     */
+    private int m_size;
 
     /**
      * The time from which the current outtime 'm_outTime' is calculated
@@ -91,28 +115,47 @@ public class RTCNodeSvcTimesList extends LinkedList<RTCNodeSvcTime> {
         // the start of the rolling window
         long startTime = curTime - rollingWindow;
 
-        ListIterator<RTCNodeSvcTime> iter = listIterator();
-        while (iter.hasNext()) {
-            RTCNodeSvcTime svcTime = (RTCNodeSvcTime) iter.next();
-
-            // since new outages are added at the end, if this outage
-            // has not expired we can safely break from the loop
-            if (svcTime.getLostTime() >= startTime) {
-                break;
+        // since new outages are added at the end, we can stop at the
+        // first outage that has not expired because it was lost in the window
+        int kept = 0;
+        int i = 0;
+        for (; i < m_size && m_lostTimes[i] < startTime; i++) {
+            if (m_regainedTimes[i] == OPEN || m_regainedTimes[i] >= startTime) {
+                m_lostTimes[kept] = m_lostTimes[i];
+                m_regainedTimes[kept] = m_regainedTimes[i];
+                kept++;
             }
+        }
 
-            if (svcTime.hasExpired(startTime)) {
-                iter.remove();
-            }
+        if (kept < i) {
+            System.arraycopy(m_lostTimes, i, m_lostTimes, kept, m_size - i);
+            System.arraycopy(m_regainedTimes, i, m_regainedTimes, kept, m_size - i);
+            m_size -= i - kept;
+            m_outTimeSince = -1;
+        }
+    }
 
+    private void add(long losttime, long regainedtime) {
+        if (m_size == m_lostTimes.length) {
+            long[] lostTimes = new long[m_size * 2];
+            long[] regainedTimes = new long[m_size * 2];
+            System.arraycopy(m_lostTimes, 0, lostTimes, 0, m_size);
+            System.arraycopy(m_regainedTimes, 0, regainedTimes, 0, m_size);
+            m_lostTimes = lostTimes;
+            m_regainedTimes = regainedTimes;
         }
+        m_lostTimes[m_size] = losttime;
+        m_regainedTimes[m_size] = regainedtime;
+        m_size++;
+        m_outTimeSince = -1;
     }
 
     /**
      * Default constructor.
      */
     public RTCNodeSvcTimesList() {
-        super();
+        m_lostTimes = new long[INITIAL_CAPACITY];
+        m_regainedTimes = new long[INITIAL_CAPACITY];
 
         m_outTimeSince = -1;
 
@@ -126,18 +169,21 @@ public class RTCNodeSvcTimesList extends LinkedList<RTCNodeSvcTime> {
      *            time at which service was lost
      * @param regainedtime
      *            time at which service was regained
+     * @return false if the entry was rejected because service was regained
+     *         before it was lost
      */
-    public void addSvcTime(long losttime, long regainedtime) {
+    public boolean addSvcTime(long losttime, long regainedtime) {
         // remove expired outages
         removeExpiredOutages();
 
         if (regainedtime > 0 && regainedtime < losttime) {
-            LOG.warn("RTCNodeSvcTimesList: Rejecting service time pair since regained time {}\tregainedtime in milliseconds: {}", regainedtime, "less than lost time -> losttime in milliseconds: {}", losttime);
+            LOG.warn("RTCNodeSvcTimesList: Rejecting service time pair since regained time {} is less than lost time {}", regainedtime, losttime);
 
-            return;
+            return false;
         }
 
-        addLast(new RTCNodeSvcTime(losttime, regainedtime));
+        add(losttime, regainedtime > 0 ? regainedtime : OPEN);
+        return true;
     }
 
     /**
@@ -150,7 +196,104 @@ public class RTCNodeSvcTimesList extends LinkedList<RTCNodeSvcTime> {
         // remove expired outages
         removeExpiredOutages();
 
-        addLast(new RTCNodeSvcTime(losttime));
+        add(losttime, OPEN);
+    }
+
+    /**
+     * Open a new outage, unless the last outage is still open.
+     *
+     * @param losttime
+     *            time at which service was lost
+     * @return true if a new outage was opened
+     */
+    public boolean lostService(long losttime) {
+        if (isServiceDown()) {
+            return false;
+        }
+
+        add(losttime, OPEN);
+        return true;
+    }
+
+    /**
+     * Close the last outage if it is still open. An outage that would be
+     * regained before it was lost is closed at the time it was lost.
+     *
+     * @param regainedtime
+     *            time at which service was regained
+     * @return the time the outage was closed at, or -1 if there was no open
+     *         outage
+     */
+    public long regainedService(long regainedtime) {
+        if (regainedtime <= 0 || !isServiceDown()) {
+            return -1;
+        }
+
+        final int last = m_size - 1;
+        m_regainedTimes[last] = Math.max(regainedtime, m_lostTimes[last]);
+        m_outTimeSince = -1;
+        return m_regainedTimes[last];
+    }
+
+    /**
+     * Return whether the last outage is still open.
+     *
+     * @return true if service has been lost and not regained
+     */
+    public boolean isServiceDown() {
+        return m_size > 0 && m_regainedTimes[m_size - 1] == OPEN;
+    }
+
+    /**
+     * Return the number of outages in the list.
+     *
+     * @return the number of outages
+     */
+    public int size() {
+        return m_size;
+    }
+
+    /**
+     * Return the time at which service was lost for an outage.
+     *
+     * @param index
+     *            the index of the outage, 0 being the oldest
+     * @return the time at which service was lost
+     */
+    public long getLostTime(int index) {
+        checkIndex(index);
+        return m_lostTimes[index];
+    }
+
+    /**
+     * Return the time at which service was regained for an outage.
+     *
+     * @param index
+     *            the index of the outage, 0 being the oldest
+     * @return the time at which service was regained, or {@link #OPEN}
+     */
+    public long getRegainedTime(int index) {
+        checkIndex(index);
+        return m_regainedTimes[index];
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= m_size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + m_size);
+        }
+    }
+
+    /**
+     * Return a copy of the outages in the list.
+     *
+     * @return the outages, oldest first
+     */
+    public List<RTCNodeSvcTime> getServiceTimes() {
+        List<RTCNodeSvcTime> svcTimes = new ArrayList<RTCNodeSvcTime>(m_size);
+        for (int i = 0; i < m_size; i++) {
+            svcTimes.add(new RTCNodeSvcTime(m_lostTimes[i], m_regainedTimes[i]));
+        }
+        return svcTimes;
     }
 
     /**
@@ -170,20 +313,36 @@ public class RTCNodeSvcTimesList extends LinkedList<RTCNodeSvcTime> {
             return m_outTime;
         }
 
-        m_outTimeSince = startTime;
-
-        m_outTime = 0;
-
         // remove expired outages
         removeExpiredOutages(curTime, rollingWindow);
 
-        Iterator<RTCNodeSvcTime> iter = iterator();
-        while (iter.hasNext()) {
-            RTCNodeSvcTime svcTime = (RTCNodeSvcTime) iter.next();
+        m_outTimeSince = startTime;
+
+        m_outTime = 0;
 
-            m_outTime += svcTime.getDownTime(curTime, rollingWindow);
+        for (int i = 0; i < m_size; i++) {
+            m_outTime += getDownTime(m_lostTimes[i], m_regainedTimes[i], startTime, curTime);
         }
 
         return m_outTime;
     }
+
+    /**
+     * Calculate how much of an outage lies between two times.
+     *
+     * @param losttime
+     *            time at which service was lost
+     * @param regainedtime
+     *            time at which service was regained, or {@link #OPEN}
+     * @param startTime
+     *            the start of the window
+     * @param endTime
+     *            the end of the window
+     * @return the down time within the window
+     */
+    static long getDownTime(long losttime, long regainedtime, long startTime, long endTime) {
+        long from = Math.max(losttime, startTime);
+        long to = regainedtime == OPEN ? endTime : Math.min(regainedtime, endTime);
+        return to > from ? to - from : 0;
+    }
 }
@@ -28,6 +28,7 @@
 
 package org.opennms.netmgt.rtc.utils;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
 
@@ -99,34 +100,33 @@ public class EuiLevelMapper extends Object {
 
         // get a handle to data
         DataManager rtcDataMgr = RTCManager.getDataManager();
-        synchronized (rtcDataMgr) {
-            // category label
-            levelCat.setCatlabel(rtcCat.getLabel());
 
-            // value for this category
-            levelCat.setCatvalue(rtcDataMgr.getValue(rtcCat.getLabel(), curTime, rWindow));
+        // category label
+        levelCat.setCatlabel(rtcCat.getLabel());
 
-            // nodes in this category
-            Iterator<Long> nodeIter = rtcCat.getNodes().iterator();
-            while (nodeIter.hasNext()) {
-                Long rtcNodeid = nodeIter.next();
-                long nodeID = rtcNodeid.longValue();
+        // value for this category
+        levelCat.setCatvalue(rtcDataMgr.getValue(rtcCat.getLabel(), curTime, rWindow));
 
-                Node levelNode = new Node();
-                levelNode.setNodeid(nodeID);
+        // nodes in this category; the data manager doesn't lock out updates
+        // while the level is built, so go through a copy
+        Iterator<Long> nodeIter = new ArrayList<Long>(rtcCat.getNodes()).iterator();
+        while (nodeIter.hasNext()) {
+            Long rtcNodeid = nodeIter.next();
+            long nodeID = rtcNodeid.longValue();
 
-                // value for this node for this category
-                levelNode.setNodevalue(rtcDataMgr.getValue(nodeID, rtcCat.getLabel(), curTime, rWindow));
+            Node levelNode = new Node();
+            levelNode.setNodeid(nodeID);
 
-                // node service count
-                levelNode.setNodesvccount(rtcDataMgr.getServiceCount(nodeID, rtcCat.getLabel()));
+            // value for this node for this category
+            levelNode.setNodevalue(rtcDataMgr.getValue(nodeID, rtcCat.getLabel(), curTime, rWindow));
 
-                // node service down count
-                levelNode.setNodesvcdowncount(rtcDataMgr.getServiceDownCount(nodeID, rtcCat.getLabel()));
-                // add the node
-                levelCat.addNode(levelNode);
-            }
+            // node service count
+            levelNode.setNodesvccount(rtcDataMgr.getServiceCount(nodeID, rtcCat.getLabel()));
 
+            // node service down count
+            levelNode.setNodesvcdowncount(rtcDataMgr.getServiceDownCount(nodeID, rtcCat.getLabel()));
+            // add the node
+            levelCat.addNode(levelNode);
         }
 
         // add category
@@ -0,0 +1,49 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.scheduler;
+
+/**
+ * A {@link ReadyRunnable} whose work can complete after it returns from
+ * being run.  A {@link Schedule} reschedules it once the work is done rather
+ * than as soon as it returns, so that the next interval is computed from the
+ * outcome of the work.
+ */
+public interface AsyncReadyRunnable extends ReadyRunnable {
+    /**
+     * Starts the work that {@link #run()} does.
+     *
+     * @param completion run once the work has completed, on any thread,
+     *        possibly before this method returns; only run if this method
+     *        returns true
+     * @return true if the work was started and will complete later, or
+     *         false if it was done before returning
+     */
+    public boolean runAsync(Runnable completion);
+}
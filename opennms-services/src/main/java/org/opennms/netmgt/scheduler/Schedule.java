@@ -83,15 +83,31 @@ public class Schedule {
             
             if (!m_interval.scheduledSuspension()) {
                 try {
-                    Schedule.this.run();
+                    if (m_schedulable instanceof AsyncReadyRunnable) {
+                        // reschedule once the work is done, from its outcome
+                        final boolean started = ((AsyncReadyRunnable)m_schedulable).runAsync(new Runnable() {
+                            @Override
+                            public void run() {
+                                reschedule();
+                            }
+                        });
+                        if (started) {
+                            return;
+                        }
+                    } else {
+                        Schedule.this.run();
+                    }
                 } catch (PostponeNecessary e) {
 				   // Chose a random number of seconds between 5 and 14 to wait before trying again
                     m_timer.schedule(random.nextInt(10)*1000+5000, this);
                     return;
                 }
             }
-                
 
+            reschedule();
+        }
+
+        private void reschedule() {
             // if it is expired by the current run then don't reschedule
             if (isExpired()) {
                 LOG.debug("Schedule {} expired.  No need to reschedule.", this);
@@ -101,7 +117,6 @@ public class Schedule {
             long interval = m_interval.getInterval();
             if (interval >= 0 && m_scheduled)
                 m_timer.schedule(interval, this);
-
         }
         
         @Override
@@ -0,0 +1,486 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.scheduler;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opennms.core.concurrent.LogPreservingThreadFactory;
+import org.opennms.core.fiber.PausableFiber;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+/**
+ * A {@link Scheduler} based on a hierarchical timing wheel.
+ *
+ * Scheduling a runnable only appends it to a lock-free inbox.  A single
+ * timer thread moves entries from the inbox into the wheel and advances the
+ * wheel one tick at a time, so both scheduling and expiring an entry are
+ * constant time operations no matter how many entries are scheduled.  Each
+ * level of the wheel has <code>2^wheelBits</code> buckets; an entry that is
+ * too far in the future for the lowest level is put into a higher level and
+ * cascaded down as its time approaches.
+ *
+ * When an entry expires its {@link ReadyRunnable#isReady()} method is
+ * checked, just like in {@link LegacyScheduler}.  Entries that are not ready
+ * yet are checked again after <code>notReadyDelay</code> milliseconds.
+ * Runnables that throw {@link PostponeNecessary} are rescheduled by
+ * {@link Schedule} through the normal {@link #schedule(long, ReadyRunnable)}
+ * call, which is safe to make from the runner threads.
+ *
+ * @see LegacyScheduler
+ */
+public class TimingWheelScheduler implements Runnable, PausableFiber, Scheduler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TimingWheelScheduler.class);
+
+    /** Default length of a tick in milliseconds. */
+    public static final long DEFAULT_TICK_LENGTH = 100;
+
+    /** Default number of buckets per wheel level, as a power of two (512). */
+    public static final int DEFAULT_WHEEL_BITS = 9;
+
+    private static final int LEVELS = 4;
+
+    /**
+     * A scheduled runnable, linked into the bucket it is waiting in.
+     */
+    private static final class TimerEntry {
+        private final ReadyRunnable m_runnable;
+        private long m_deadline;
+        private TimerEntry m_next;
+
+        TimerEntry(final ReadyRunnable runnable, final long deadline) {
+            m_runnable = runnable;
+            m_deadline = deadline;
+        }
+    }
+
+    private final long m_tickLength;
+    private final int m_wheelBits;
+    private final int m_wheelMask;
+    private final long m_notReadyDelay;
+
+    /**
+     * The buckets of each level, only touched by the timer thread.
+     */
+    private final TimerEntry[][] m_wheels;
+
+    /**
+     * Entries scheduled since the last tick, not yet in the wheel.
+     */
+    private final Queue<TimerEntry> m_inbox = new ConcurrentLinkedQueue<TimerEntry>();
+
+    /**
+     * The last tick the wheel has been advanced to.
+     */
+    private long m_currentTick;
+
+    private final ExecutorService m_runner;
+
+    private int m_status;
+
+    private Thread m_worker;
+
+    private final AtomicInteger m_scheduled = new AtomicInteger();
+    private final AtomicLong m_numTasksExecuted = new AtomicLong();
+    private final AtomicLong m_totalLateness = new AtomicLong();
+    private volatile long m_maxLateness = 0;
+    private volatile long m_lastLateness = 0;
+
+    /**
+     * Constructs a new scheduler with the default tick length and wheel size.
+     *
+     * @param parent
+     *            String prepended to "Scheduler" to create fiber name
+     * @param maxSize
+     *            The maximum size of the thread pool.
+     */
+    public TimingWheelScheduler(final String parent, final int maxSize) {
+        this(parent, maxSize, DEFAULT_TICK_LENGTH, DEFAULT_WHEEL_BITS, 1000);
+    }
+
+    /**
+     * Constructs a new scheduler.
+     *
+     * @param parent
+     *            String prepended to "Scheduler" to create fiber name
+     * @param maxSize
+     *            The maximum size of the thread pool.
+     * @param tickLength
+     *            The resolution of the scheduler in milliseconds.
+     * @param wheelBits
+     *            The number of buckets per wheel level as a power of two.
+     * @param notReadyDelay
+     *            How long to wait, in milliseconds, before checking an
+     *            expired entry that was not ready again.
+     */
+    public TimingWheelScheduler(final String parent, final int maxSize, final long tickLength, final int wheelBits, final long notReadyDelay) {
+        Assert.isTrue(tickLength > 0, "tickLength must be greater than zero");
+        Assert.isTrue(wheelBits > 0 && wheelBits * LEVELS < 62, "wheelBits must be between 1 and 15");
+
+        m_status = START_PENDING;
+        m_runner = Executors.newFixedThreadPool(maxSize, new LogPreservingThreadFactory(parent, maxSize, false));
+        m_tickLength = tickLength;
+        m_wheelBits = wheelBits;
+        m_wheelMask = (1 << wheelBits) - 1;
+        // never check again within the same tick, that would spin on the entry
+        m_notReadyDelay = Math.max(notReadyDelay, tickLength);
+        m_wheels = new TimerEntry[LEVELS][1 << wheelBits];
+        m_currentTick = getCurrentTime() / m_tickLength;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void schedule(final long interval, final ReadyRunnable runnable) {
+        LOG.debug("schedule: Adding ready runnable {} at interval {}", runnable, interval);
+
+        m_scheduled.incrementAndGet();
+        m_inbox.add(new TimerEntry(runnable, getCurrentTime() + Math.max(0, interval)));
+    }
+
+    /**
+     * <p>getCurrentTime</p>
+     *
+     * @return a long.
+     */
+    @Override
+    public long getCurrentTime() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * <p>start</p>
+     */
+    @Override
+    public synchronized void start() {
+        Assert.state(m_worker == null, "The fiber has already run or is running");
+
+        m_worker = new Thread(this, getName());
+        m_worker.start();
+        m_status = STARTING;
+
+        LOG.info("start: scheduler started");
+    }
+
+    /**
+     * <p>stop</p>
+     */
+    @Override
+    public synchronized void stop() {
+        Assert.state(m_worker != null, "The fiber has never been started");
+
+        m_status = STOP_PENDING;
+        m_worker.interrupt();
+        m_runner.shutdown();
+
+        LOG.info("stop: scheduler stopped");
+    }
+
+    /**
+     * <p>pause</p>
+     */
+    @Override
+    public synchronized void pause() {
+        Assert.state(m_worker != null, "The fiber has never been started");
+        Assert.state(m_status != STOPPED && m_status != STOP_PENDING, "The fiber is not running or a stop is pending");
+
+        if (m_status == PAUSED) {
+            return;
+        }
+
+        m_status = PAUSE_PENDING;
+        notifyAll();
+    }
+
+    /**
+     * <p>resume</p>
+     */
+    @Override
+    public synchronized void resume() {
+        Assert.state(m_worker != null, "The fiber has never been started");
+        Assert.state(m_status != STOPPED && m_status != STOP_PENDING, "The fiber is not running or a stop is pending");
+
+        if (m_status == RUNNING) {
+            return;
+        }
+
+        m_status = RESUME_PENDING;
+        notifyAll();
+    }
+
+    /**
+     * <p>getStatus</p>
+     *
+     * @return a int.
+     */
+    @Override
+    public synchronized int getStatus() {
+        if (m_worker != null && m_worker.isAlive() == false) {
+            m_status = STOPPED;
+        }
+        return m_status;
+    }
+
+    /**
+     * Returns the name of this fiber.
+     *
+     * @return a {@link java.lang.String} object.
+     */
+    @Override
+    public String getName() {
+        return m_runner.toString();
+    }
+
+    /**
+     * Returns total number of elements currently scheduled, including the
+     * ones waiting to be moved into the wheel.
+     *
+     * @return the number of scheduled elements
+     */
+    public int getScheduled() {
+        return m_scheduled.get();
+    }
+
+    /**
+     * Returns the pool of threads that are used to executed the runnable
+     * instances scheduled by the class' instance.
+     *
+     * @return thread pool
+     */
+    public ExecutorService getRunner() {
+        return m_runner;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getNumTasksExecuted() {
+        return m_numTasksExecuted.get();
+    }
+
+    /**
+     * Returns how late, in milliseconds, the most recently executed task
+     * was handed to the thread pool.
+     *
+     * @return a long.
+     */
+    public long getLastLateness() {
+        return m_lastLateness;
+    }
+
+    /**
+     * Returns the largest lateness, in milliseconds, seen so far.
+     *
+     * @return a long.
+     */
+    public long getMaxLateness() {
+        return m_maxLateness;
+    }
+
+    /**
+     * Returns the average lateness, in milliseconds, of all executed tasks.
+     *
+     * @return a double.
+     */
+    public double getAverageLateness() {
+        final long executed = m_numTasksExecuted.get();
+        return executed == 0 ? 0.0 : (double) m_totalLateness.get() / executed;
+    }
+
+    /**
+     * The main method of the scheduler.  Advances the wheel once per tick,
+     * handing expired entries to the thread pool.
+     */
+    @Override
+    public void run() {
+        synchronized (this) {
+            m_status = RUNNING;
+        }
+
+        LOG.debug("run: scheduler running");
+
+        for (;;) {
+            synchronized (this) {
+                if (m_status != RUNNING && m_status != PAUSED && m_status != PAUSE_PENDING && m_status != RESUME_PENDING) {
+                    LOG.debug("run: status = {}, time to exit", m_status);
+                    break;
+                }
+
+                // if paused or pause pending then block
+                while (m_status == PAUSE_PENDING || m_status == PAUSED) {
+                    if (m_status == PAUSE_PENDING) {
+                        LOG.debug("run: pausing.");
+                    }
+                    m_status = PAUSED;
+                    try {
+                        wait();
+                    } catch (InterruptedException ex) {
+                        // exit
+                        break;
+                    }
+                }
+
+                if (m_status == RESUME_PENDING) {
+                    LOG.debug("run: resuming.");
+                    m_status = RUNNING;
+                }
+            }
+
+            try {
+                final long now = getCurrentTime();
+                final long nowTick = now / m_tickLength;
+
+                drainInbox(now);
+                while (m_currentTick < nowTick) {
+                    advance(now);
+                }
+
+                final long sleep = (nowTick + 1) * m_tickLength - getCurrentTime();
+                if (sleep > 0) {
+                    synchronized (this) {
+                        wait(sleep);
+                    }
+                }
+            } catch (final InterruptedException e) {
+                break;
+            } catch (final RejectedExecutionException e) {
+                if (m_runner.isShutdown()) {
+                    break;
+                }
+                LOG.error("run: unable to hand an expired task to the thread pool", e);
+            }
+        }
+
+        LOG.debug("run: scheduler exiting, state = STOPPED");
+        synchronized (this) {
+            m_status = STOPPED;
+        }
+    }
+
+    private void drainInbox(final long now) {
+        TimerEntry entry;
+        while ((entry = m_inbox.poll()) != null) {
+            insert(entry, now);
+        }
+    }
+
+    /**
+     * Puts an entry into the bucket of the lowest level that can hold its
+     * deadline, or runs it right away if it is already due.
+     */
+    private void insert(final TimerEntry entry, final long now) {
+        final long expires = entry.m_deadline / m_tickLength;
+        final long delta = expires - m_currentTick;
+
+        if (delta <= 0) {
+            expire(entry, now);
+            return;
+        }
+
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= (1L << (m_wheelBits * (level + 1)))) {
+            level++;
+        }
+
+        // entries too far out for the top level wait in its furthest bucket and are cascaded again later
+        final long maxTicks = 1L << (m_wheelBits * LEVELS);
+        final long slotTick = delta >= maxTicks ? m_currentTick + maxTicks - 1 : expires;
+
+        final int bucket = (int) ((slotTick >>> (m_wheelBits * level)) & m_wheelMask);
+        entry.m_next = m_wheels[level][bucket];
+        m_wheels[level][bucket] = entry;
+    }
+
+    /**
+     * Advances the wheel by one tick, cascading entries from the higher
+     * levels when the lower level wraps around, and expires the entries of
+     * the new current bucket.
+     */
+    private void advance(final long now) {
+        m_currentTick++;
+
+        for (int level = 1; level < LEVELS; level++) {
+            // a level only cascades when all of the levels below it wrapped around
+            if ((m_currentTick & ((1L << (m_wheelBits * level)) - 1)) != 0) {
+                break;
+            }
+            final int bucket = (int) ((m_currentTick >>> (m_wheelBits * level)) & m_wheelMask);
+            TimerEntry entry = m_wheels[level][bucket];
+            m_wheels[level][bucket] = null;
+            while (entry != null) {
+                final TimerEntry next = entry.m_next;
+                entry.m_next = null;
+                insert(entry, now);
+                entry = next;
+            }
+        }
+
+        final int bucket = (int) (m_currentTick & m_wheelMask);
+        TimerEntry entry = m_wheels[0][bucket];
+        m_wheels[0][bucket] = null;
+        while (entry != null) {
+            final TimerEntry next = entry.m_next;
+            entry.m_next = null;
+            if (entry.m_deadline / m_tickLength > m_currentTick) {
+                insert(entry, now);
+            } else {
+                expire(entry, now);
+            }
+            entry = next;
+        }
+    }
+
+    private void expire(final TimerEntry entry, final long now) {
+        if (!entry.m_runnable.isReady()) {
+            LOG.debug("run: runnable {} is due but not ready, checking again in {}ms", entry.m_runnable, m_notReadyDelay);
+            entry.m_deadline = now + m_notReadyDelay;
+            m_inbox.add(entry);
+            return;
+        }
+
+        LOG.debug("run: found ready runnable {}", entry.m_runnable);
+
+        final long lateness = Math.max(0, now - entry.m_deadline);
+        m_scheduled.decrementAndGet();
+        m_numTasksExecuted.incrementAndGet();
+        m_totalLateness.addAndGet(lateness);
+        m_lastLateness = lateness;
+        if (lateness > m_maxLateness) {
+            m_maxLateness = lateness;
+        }
+
+        m_runner.execute(entry.m_runnable);
+    }
+}
@@ -0,0 +1,194 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.syslogd;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Finds which of a fixed set of literal strings occur in a text, in a single
+ * pass over the text regardless of how many literals there are.
+ *
+ * <p>Instances are immutable once constructed and may be shared between
+ * threads.</p>
+ */
+final class AhoCorasickMatcher {
+    private static final int[] NONE = new int[0];
+
+    private final int m_literalCount;
+
+    /**
+     * Sorted transition characters of each state.
+     */
+    private final char[][] m_chars;
+
+    /**
+     * Target state of each transition, parallel to {@link #m_chars}.
+     */
+    private final int[][] m_targets;
+
+    private final int[] m_failure;
+
+    /**
+     * The literals that end at each state, including those reached through
+     * its failure links.
+     */
+    private final int[][] m_outputs;
+
+    /**
+     * @param literals the literals to look for; the index of each literal is
+     *        its id in the result of {@link #match(String)}
+     */
+    AhoCorasickMatcher(final List<String> literals) {
+        m_literalCount = literals.size();
+
+        // build the trie
+        final List<TreeMap<Character,Integer>> gotos = new ArrayList<TreeMap<Character,Integer>>();
+        final List<List<Integer>> outputs = new ArrayList<List<Integer>>();
+        gotos.add(new TreeMap<Character,Integer>());
+        outputs.add(new ArrayList<Integer>());
+
+        for (int id = 0; id < literals.size(); id++) {
+            final String literal = literals.get(id);
+            int state = 0;
+            for (int i = 0; i < literal.length(); i++) {
+                final Character c = literal.charAt(i);
+                Integer next = gotos.get(state).get(c);
+                if (next == null) {
+                    next = gotos.size();
+                    gotos.add(new TreeMap<Character,Integer>());
+                    outputs.add(new ArrayList<Integer>());
+                    gotos.get(state).put(c, next);
+                }
+                state = next;
+            }
+            outputs.get(state).add(id);
+        }
+
+        final int states = gotos.size();
+        m_chars = new char[states][];
+        m_targets = new int[states][];
+        m_failure = new int[states];
+        m_outputs = new int[states][];
+
+        for (int state = 0; state < states; state++) {
+            final TreeMap<Character,Integer> transitions = gotos.get(state);
+            m_chars[state] = new char[transitions.size()];
+            m_targets[state] = new int[transitions.size()];
+            int i = 0;
+            for (final Map.Entry<Character,Integer> transition : transitions.entrySet()) {
+                m_chars[state][i] = transition.getKey();
+                m_targets[state][i] = transition.getValue();
+                i++;
+            }
+        }
+
+        // compute the failure links breadth first so that a state's failure
+        // target is always complete before the state itself
+        final LinkedList<Integer> queue = new LinkedList<Integer>();
+        for (final int child : m_targets[0]) {
+            m_failure[child] = 0;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            final int state = queue.removeFirst();
+            for (int i = 0; i < m_chars[state].length; i++) {
+                final char c = m_chars[state][i];
+                final int child = m_targets[state][i];
+
+                int fallback = m_failure[state];
+                int target = transition(fallback, c);
+                while (target < 0 && fallback != 0) {
+                    fallback = m_failure[fallback];
+                    target = transition(fallback, c);
+                }
+                m_failure[child] = target < 0 ? 0 : target;
+                outputs.get(child).addAll(outputs.get(m_failure[child]));
+                queue.add(child);
+            }
+        }
+
+        for (int state = 0; state < states; state++) {
+            final List<Integer> out = outputs.get(state);
+            if (out.isEmpty()) {
+                m_outputs[state] = NONE;
+            } else {
+                m_outputs[state] = new int[out.size()];
+                for (int i = 0; i < out.size(); i++) {
+                    m_outputs[state][i] = out.get(i);
+                }
+            }
+        }
+    }
+
+    private int transition(final int state, final char c) {
+        final int i = Arrays.binarySearch(m_chars[state], c);
+        return i < 0 ? -1 : m_targets[state][i];
+    }
+
+    /**
+     * @return the number of literals this matcher looks for
+     */
+    int getLiteralCount() {
+        return m_literalCount;
+    }
+
+    /**
+     * Returns the ids of all literals that occur in the text.
+     *
+     * @param text the text to search
+     * @return a set with the id of every literal found
+     */
+    BitSet match(final String text) {
+        final BitSet found = new BitSet(m_literalCount);
+        if (m_literalCount == 0 || text == null) {
+            return found;
+        }
+
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            int next = transition(state, c);
+            while (next < 0 && state != 0) {
+                state = m_failure[state];
+                next = transition(state, c);
+            }
+            state = next < 0 ? 0 : next;
+            for (final int id : m_outputs[state]) {
+                found.set(id);
+            }
+        }
+        return found;
+    }
+}
@@ -29,7 +29,8 @@
 package org.opennms.netmgt.syslogd;
 
 import java.io.IOException;
-import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.nio.channels.DatagramChannel;
 
 import org.opennms.core.fiber.Fiber;
 import org.opennms.core.utils.InetAddressUtils;
@@ -53,10 +54,32 @@ import org.opennms.netmgt.xml.event.EventReceipt;
  */
 public final class SyslogHandler implements Fiber {
     private static final Logger LOG = LoggerFactory.getLogger(SyslogHandler.class);
+
+    /**
+     * Number of threads reading datagrams from the syslog socket.
+     */
+    public static final String RECEIVE_THREADS_PROPERTY = "org.opennms.netmgt.syslogd.receiveThreads";
+
     /**
-     * The UDP receiver thread.
+     * Number of threads converting received messages into events.
      */
-    private SyslogReceiver m_receiver;
+    public static final String PARSE_THREADS_PROPERTY = "org.opennms.netmgt.syslogd.parseThreads";
+
+    /**
+     * Number of received messages that may wait for a parsing thread before
+     * new messages are dropped.
+     */
+    public static final String QUEUE_SIZE_PROPERTY = "org.opennms.netmgt.syslogd.queueSize";
+
+    /**
+     * Requested size of the socket receive buffer, in bytes.
+     */
+    public static final String RECEIVE_BUFFER_SIZE_PROPERTY = "org.opennms.netmgt.syslogd.receiveBufferSize";
+
+    /**
+     * The UDP receiver.
+     */
+    private SyslogNioReceiver m_receiver;
 
     /**
      * The Fiber's status.
@@ -64,9 +87,9 @@ public final class SyslogHandler implements Fiber {
     private volatile int m_status;
 
     /**
-     * The UDP socket for receipt and transmission of packets from agents.
+     * The UDP channel for receipt of packets from agents.
      */
-    private DatagramSocket m_dgSock;
+    private DatagramChannel m_channel;
 
     private final String m_ForwardingRegexp;
 
@@ -110,7 +133,7 @@ public final class SyslogHandler implements Fiber {
      * <p>Constructor for SyslogHandler.</p>
      */
     public SyslogHandler() {
-        m_dgSock = null;
+        m_channel = null;
         m_dgPort = m_syslogdConfig.getSyslogPort();
         m_dgIp = m_syslogdConfig.getListenAddress();
 
@@ -128,9 +151,11 @@ public final class SyslogHandler implements Fiber {
 
         m_HideMessages = m_syslogdConfig.getHideMessages();
 
+        // compile the matching rules now rather than on the first message
+        ConvertToEvent.getRuleProgram(m_UeiList, m_HideMessages);
+
         m_status = START_PENDING;
 
-        m_dgSock = null;
         m_receiver = null;
         m_logPrefix = null;
     }
@@ -154,36 +179,50 @@ public final class SyslogHandler implements Fiber {
 
         m_status = STARTING;
 
+        final int receiveBufferSize = Integer.getInteger(RECEIVE_BUFFER_SIZE_PROPERTY, 4 * 1024 * 1024);
+
         try {
-            if (m_dgIp != null && m_dgIp.length() != 0) {
-                m_dgSock = new DatagramSocket(m_dgPort, InetAddressUtils.addr(m_dgIp));
-            } else {
-                m_dgSock = new DatagramSocket(m_dgPort);
+            m_channel = DatagramChannel.open();
+            m_channel.configureBlocking(true);
+
+            // A large socket buffer absorbs bursts while the receive threads catch up
+            try {
+                LOG.debug("Setting receive buffer size to {}", receiveBufferSize);
+                m_channel.socket().setReceiveBufferSize(receiveBufferSize);
+            } catch (IOException e) {
+                LOG.info("Failed to set the receive buffer to {}", receiveBufferSize, e);
             }
 
-            m_receiver = new SyslogReceiver(m_dgSock, m_ForwardingRegexp,
-                    m_MatchingGroupHost,
-                    m_MatchingGroupMessage,
-                    m_UeiList,
-                    m_HideMessages,
-                    m_DiscardUei);
-
-            if (m_logPrefix != null) {
-                m_receiver.setLogPrefix(m_logPrefix);
+            if (m_dgIp != null && m_dgIp.length() != 0) {
+                m_channel.socket().bind(new InetSocketAddress(InetAddressUtils.addr(m_dgIp), m_dgPort));
+            } else {
+                m_channel.socket().bind(new InetSocketAddress(m_dgPort));
             }
         } catch (IOException e) {
+            closeChannel();
+            m_status = STOPPED;
             throw new java.lang.reflect.UndeclaredThrowableException(e);
         }
 
-        Thread rThread = new Thread(m_receiver, "Syslog Event Receiver["
-                + getIpAddress() + ":" + m_dgPort + "]");
+        m_receiver = new SyslogNioReceiver(m_channel,
+                Integer.getInteger(RECEIVE_THREADS_PROPERTY, 2),
+                Integer.getInteger(PARSE_THREADS_PROPERTY, Runtime.getRuntime().availableProcessors()),
+                Integer.getInteger(QUEUE_SIZE_PROPERTY, 16384),
+                m_ForwardingRegexp,
+                m_MatchingGroupHost,
+                m_MatchingGroupMessage,
+                m_UeiList,
+                m_HideMessages,
+                m_DiscardUei);
 
         try {
-            rThread.start();
-
+            m_receiver.start(getIpAddress() + ":" + m_dgPort);
         } catch (RuntimeException e) {
-            rThread.interrupt();
-
+            try {
+                m_receiver.stop();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
             m_status = STOPPED;
             throw e;
         }
@@ -211,11 +250,21 @@ public final class SyslogHandler implements Fiber {
             LOG.warn("The thread was interrupted while attempting to join sub-threads", e);
         }
 
-        m_dgSock.close();
+        closeChannel();
 
         m_status = STOPPED;
     }
 
+    private void closeChannel() {
+        if (m_channel != null) {
+            try {
+                m_channel.close();
+            } catch (IOException e) {
+                LOG.warn("An I/O error occurred while closing the syslog channel", e);
+            }
+        }
+    }
+
     /**
      * <p>getName</p>
      *
@@ -297,6 +346,62 @@ public final class SyslogHandler implements Fiber {
         m_logPrefix = prefix;
     }
 
+    /**
+     * <p>getMessagesReceived</p>
+     *
+     * @return the number of syslog datagrams received
+     */
+    public long getMessagesReceived() {
+        return m_receiver == null ? 0 : m_receiver.getMessagesReceived();
+    }
+
+    /**
+     * <p>getMessagesDropped</p>
+     *
+     * @return the number of syslog datagrams dropped because the parsing
+     *         threads could not keep up
+     */
+    public long getMessagesDropped() {
+        return m_receiver == null ? 0 : m_receiver.getMessagesDropped();
+    }
+
+    /**
+     * <p>getMessagesParseFailed</p>
+     *
+     * @return the number of syslog messages that could not be converted to
+     *         events
+     */
+    public long getMessagesParseFailed() {
+        return m_receiver == null ? 0 : m_receiver.getMessagesParseFailed();
+    }
+
+    /**
+     * <p>getMessagesDiscarded</p>
+     *
+     * @return the number of syslog messages matching the discard UEI
+     */
+    public long getMessagesDiscarded() {
+        return m_receiver == null ? 0 : m_receiver.getMessagesDiscarded();
+    }
+
+    /**
+     * <p>getMessagesProcessed</p>
+     *
+     * @return the number of syslog messages sent as events
+     */
+    public long getMessagesProcessed() {
+        return m_receiver == null ? 0 : m_receiver.getMessagesProcessed();
+    }
+
+    /**
+     * <p>getQueueDepth</p>
+     *
+     * @return the number of syslog messages waiting to be parsed
+     */
+    public int getQueueDepth() {
+        return m_receiver == null ? 0 : m_receiver.getQueueDepth();
+    }
+
     public interface EventHandler {
         public boolean processEvent(Event event);
 
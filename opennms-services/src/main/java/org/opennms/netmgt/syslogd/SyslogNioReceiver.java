@@ -0,0 +1,330 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.syslogd;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opennms.core.logging.Logging;
+import org.opennms.netmgt.config.syslogd.HideMessage;
+import org.opennms.netmgt.config.syslogd.UeiList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Receives syslog datagrams from a {@link DatagramChannel} and hands them to
+ * a pool of parsing workers.
+ *
+ * <p>The receive threads do nothing but read a datagram into their own
+ * (reused) direct buffer, copy the payload out and offer it to a bounded
+ * queue, so that the socket is drained as quickly as possible.  When the
+ * queue is full the message is counted as dropped rather than blocking the
+ * receive threads, which would only move the loss into the kernel where it
+ * can't be seen.  The parsing workers convert each message with
+ * {@link ConvertToEvent} and send it with a {@link SyslogProcessor}.</p>
+ */
+class SyslogNioReceiver {
+    private static final Logger LOG = LoggerFactory.getLogger(SyslogNioReceiver.class);
+
+    /**
+     * Largest possible UDP payload.
+     */
+    static final int MAX_PACKET_SIZE = 0xffff;
+
+    /**
+     * How long the workers wait on an empty queue before checking whether
+     * they have been stopped.
+     */
+    private static final long POLL_INTERVAL = 500;
+
+    private final DatagramChannel m_channel;
+
+    private final int m_receiveThreads;
+
+    private final int m_parseThreads;
+
+    private final BlockingQueue<SyslogMessage> m_queue;
+
+    private final String m_matchPattern;
+
+    private final int m_hostGroup;
+
+    private final int m_messageGroup;
+
+    private final UeiList m_UeiList;
+
+    private final HideMessage m_HideMessages;
+
+    private final String m_discardUei;
+
+    private final List<Thread> m_threads = new ArrayList<Thread>();
+
+    private volatile boolean m_stop = false;
+
+    private final AtomicLong m_received = new AtomicLong();
+
+    private final AtomicLong m_dropped = new AtomicLong();
+
+    private final AtomicLong m_parseFailed = new AtomicLong();
+
+    private final AtomicLong m_discarded = new AtomicLong();
+
+    private final AtomicLong m_processed = new AtomicLong();
+
+    /**
+     * A received datagram, copied out of the receive buffer.
+     */
+    static final class SyslogMessage {
+        private final InetSocketAddress m_source;
+        private final byte[] m_data;
+
+        SyslogMessage(final InetSocketAddress source, final byte[] data) {
+            m_source = source;
+            m_data = data;
+        }
+
+        InetSocketAddress getSource() {
+            return m_source;
+        }
+
+        byte[] getData() {
+            return m_data;
+        }
+    }
+
+    SyslogNioReceiver(final DatagramChannel channel, final int receiveThreads, final int parseThreads, final int queueSize,
+            final String matchPattern, final int hostGroup, final int messageGroup,
+            final UeiList ueiList, final HideMessage hideMessages, final String discardUei) {
+        m_channel = channel;
+        m_receiveThreads = Math.max(1, receiveThreads);
+        m_parseThreads = Math.max(1, parseThreads);
+        m_queue = new ArrayBlockingQueue<SyslogMessage>(Math.max(1, queueSize));
+        m_matchPattern = matchPattern;
+        m_hostGroup = hostGroup;
+        m_messageGroup = messageGroup;
+        m_UeiList = ueiList;
+        m_HideMessages = hideMessages;
+        m_discardUei = discardUei;
+    }
+
+    /**
+     * Starts the receive and parsing threads.  The channel must already be
+     * bound and in blocking mode.
+     *
+     * @param name a name used for the threads
+     */
+    synchronized void start(final String name) {
+        for (int i = 0; i < m_parseThreads; i++) {
+            startThread(new Runnable() {
+                @Override
+                public void run() {
+                    parse();
+                }
+            }, "Syslog Event Parser-" + i + "[" + name + "]");
+        }
+        for (int i = 0; i < m_receiveThreads; i++) {
+            startThread(new Runnable() {
+                @Override
+                public void run() {
+                    receive();
+                }
+            }, "Syslog Event Receiver-" + i + "[" + name + "]");
+        }
+    }
+
+    private void startThread(final Runnable runnable, final String name) {
+        final Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        m_threads.add(thread);
+        thread.start();
+    }
+
+    /**
+     * Stops the receiver, closing the channel so that the receive threads
+     * wake up, and waits for all of its threads to exit.
+     *
+     * @throws InterruptedException
+     */
+    synchronized void stop() throws InterruptedException {
+        m_stop = true;
+
+        try {
+            m_channel.close();
+        } catch (final IOException e) {
+            LOG.warn("An I/O error occurred while closing the syslog channel", e);
+        }
+
+        for (final Thread thread : m_threads) {
+            LOG.debug("Stopping and joining thread context {}", thread.getName());
+            thread.interrupt();
+            thread.join();
+        }
+        m_threads.clear();
+        LOG.debug("Thread contexts stopped and joined");
+    }
+
+    private void receive() {
+        Logging.putPrefix(Syslogd.LOG4J_CATEGORY);
+        LOG.debug("Thread context started");
+
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(MAX_PACKET_SIZE);
+
+        while (!m_stop) {
+            try {
+                buffer.clear();
+                final SocketAddress source = m_channel.receive(buffer);
+                if (source == null) {
+                    continue;
+                }
+                buffer.flip();
+                final byte[] data = new byte[buffer.remaining()];
+                buffer.get(data);
+
+                m_received.incrementAndGet();
+                if (!m_queue.offer(new SyslogMessage((InetSocketAddress)source, data))) {
+                    final long dropped = m_dropped.incrementAndGet();
+                    if (dropped == 1 || dropped % 10000 == 0) {
+                        LOG.warn("Syslog message queue is full; {} messages have been dropped", dropped);
+                    }
+                }
+            } catch (final ClosedChannelException e) {
+                // also covers AsynchronousCloseException and ClosedByInterruptException
+                if (!m_stop) {
+                    LOG.error("The syslog channel was closed unexpectedly, exiting", e);
+                }
+                break;
+            } catch (final IOException e) {
+                if (m_stop) {
+                    break;
+                }
+                LOG.warn("An I/O exception occurred while receiving a syslog message", e);
+            }
+        }
+
+        LOG.debug("Thread context exiting");
+    }
+
+    private void parse() {
+        Logging.putPrefix(Syslogd.LOG4J_CATEGORY);
+        LOG.debug("Thread context started");
+
+        while (!m_stop) {
+            final SyslogMessage message;
+            try {
+                message = m_queue.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+            } catch (final InterruptedException e) {
+                break;
+            }
+            if (message == null) {
+                continue;
+            }
+            process(message);
+        }
+
+        LOG.debug("Thread context exiting");
+    }
+
+    private void process(final SyslogMessage message) {
+        final ConvertToEvent re;
+        try {
+            final byte[] data = message.getData();
+            re = ConvertToEvent.make(message.getSource().getAddress(), message.getSource().getPort(), data, data.length,
+                                     m_matchPattern, m_hostGroup, m_messageGroup, m_UeiList, m_HideMessages, m_discardUei);
+        } catch (final MessageDiscardedException e) {
+            LOG.debug("Message discarded, returning without enqueueing event.", e);
+            m_discarded.incrementAndGet();
+            return;
+        } catch (final UnsupportedEncodingException e) {
+            LOG.debug("Failure to convert package", e);
+            m_parseFailed.incrementAndGet();
+            return;
+        } catch (final Throwable t) {
+            LOG.warn("Unexpected error converting a syslog message from {}", message.getSource(), t);
+            m_parseFailed.incrementAndGet();
+            return;
+        }
+
+        LOG.debug("Sending received packet to processor");
+        new SyslogProcessor(re).call();
+        m_processed.incrementAndGet();
+    }
+
+    /**
+     * @return the number of datagrams read from the channel
+     */
+    long getMessagesReceived() {
+        return m_received.get();
+    }
+
+    /**
+     * @return the number of datagrams dropped because the queue was full
+     */
+    long getMessagesDropped() {
+        return m_dropped.get();
+    }
+
+    /**
+     * @return the number of messages that could not be converted to events
+     */
+    long getMessagesParseFailed() {
+        return m_parseFailed.get();
+    }
+
+    /**
+     * @return the number of messages discarded by the discard UEI
+     */
+    long getMessagesDiscarded() {
+        return m_discarded.get();
+    }
+
+    /**
+     * @return the number of messages sent on as events
+     */
+    long getMessagesProcessed() {
+        return m_processed.get();
+    }
+
+    /**
+     * @return the number of messages waiting for a parsing worker
+     */
+    int getQueueDepth() {
+        return m_queue.size();
+    }
+}
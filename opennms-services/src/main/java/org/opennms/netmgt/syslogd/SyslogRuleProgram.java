@@ -0,0 +1,538 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.syslogd;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.opennms.netmgt.config.syslogd.HideMatch;
+import org.opennms.netmgt.config.syslogd.HideMessage;
+import org.opennms.netmgt.config.syslogd.ParameterAssignment;
+import org.opennms.netmgt.config.syslogd.UeiList;
+import org.opennms.netmgt.config.syslogd.UeiMatch;
+import org.opennms.netmgt.model.events.EventBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The syslogd <code>ueiList</code> and <code>hideMessage</code> rules,
+ * compiled once so that converting a message doesn't have to walk and
+ * compile the configuration again.
+ *
+ * <p>All regular expressions are compiled up front.  The literals of
+ * <code>substr</code> rules, together with the literals that a
+ * <code>regex</code> rule's expression cannot match without, are put into an
+ * {@link AhoCorasickMatcher} so that one pass over the message tells which
+ * substring rules match and which regular expressions are worth running at
+ * all.  Rules are still evaluated in configuration order and the first
+ * matching <code>ueiMatch</code> wins, exactly as before.</p>
+ *
+ * <p>Instances are immutable and may be shared between threads.</p>
+ */
+final class SyslogRuleProgram {
+    private static final Logger LOG = LoggerFactory.getLogger(SyslogRuleProgram.class);
+
+    /**
+     * Literals shorter than this are too common to be worth checking before
+     * running a regular expression.
+     */
+    private static final int MIN_LITERAL_LENGTH = 2;
+
+    private static final int[] NO_LITERALS = new int[0];
+
+    private final UeiList m_ueiList;
+
+    private final HideMessage m_hideMessage;
+
+    private final List<UeiRule> m_ueiRules;
+
+    private final AhoCorasickMatcher m_ueiLiterals;
+
+    private final List<HideRule> m_hideRules;
+
+    private final AhoCorasickMatcher m_hideLiterals;
+
+    /**
+     * A compiled <code>match</code> element: either a substring, or a
+     * regular expression with the literals it requires.
+     */
+    private static final class CompiledMatch {
+        private final boolean m_substring;
+        private final String m_expression;
+        private final Pattern m_pattern;
+        private final int[] m_literals;
+
+        private CompiledMatch(final boolean substring, final String expression, final Pattern pattern, final int[] literals) {
+            m_substring = substring;
+            m_expression = expression;
+            m_pattern = pattern;
+            m_literals = literals;
+        }
+
+        /**
+         * @return whether every literal this match requires was found
+         */
+        private boolean literalsFound(final BitSet found) {
+            for (final int literal : m_literals) {
+                if (!found.get(literal)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class UeiRule {
+        private final UeiMatch m_ueiMatch;
+        private final CompiledMatch m_match;
+        private final Pattern m_process;
+        private final Pattern m_hostname;
+        private final Pattern m_hostaddr;
+
+        private UeiRule(final UeiMatch ueiMatch, final CompiledMatch match, final Pattern process, final Pattern hostname, final Pattern hostaddr) {
+            m_ueiMatch = ueiMatch;
+            m_match = match;
+            m_process = process;
+            m_hostname = hostname;
+            m_hostaddr = hostaddr;
+        }
+    }
+
+    private static final class HideRule {
+        private final CompiledMatch m_match;
+
+        private HideRule(final CompiledMatch match) {
+            m_match = match;
+        }
+    }
+
+    /**
+     * Collects the literals of all rules of one kind and hands out their ids.
+     */
+    private static final class LiteralTable {
+        private final List<String> m_literals = new ArrayList<String>();
+        private final Map<String,Integer> m_ids = new HashMap<String,Integer>();
+
+        private int id(final String literal) {
+            Integer id = m_ids.get(literal);
+            if (id == null) {
+                id = m_literals.size();
+                m_literals.add(literal);
+                m_ids.put(literal, id);
+            }
+            return id;
+        }
+
+        private int[] ids(final List<String> literals) {
+            if (literals.isEmpty()) {
+                return NO_LITERALS;
+            }
+            final int[] ids = new int[literals.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = id(literals.get(i));
+            }
+            return ids;
+        }
+
+        private AhoCorasickMatcher matcher() {
+            return new AhoCorasickMatcher(m_literals);
+        }
+    }
+
+    private SyslogRuleProgram(final UeiList ueiList, final HideMessage hideMessage) {
+        m_ueiList = ueiList;
+        m_hideMessage = hideMessage;
+
+        final LiteralTable ueiLiterals = new LiteralTable();
+        final List<UeiRule> ueiRules = new ArrayList<UeiRule>();
+        final List<UeiMatch> ueiMatches = ueiList == null ? null : ueiList.getUeiMatchCollection();
+        if (ueiMatches != null) {
+            for (final UeiMatch uei : ueiMatches) {
+                final CompiledMatch match = compileMatch(uei.getMatch().getType(), uei.getMatch().getExpression(), true, ueiLiterals);
+                if (match == null) {
+                    continue;
+                }
+                ueiRules.add(new UeiRule(uei,
+                                         match,
+                                         uei.getProcessMatch() == null ? null : compile(uei.getProcessMatch().getExpression()),
+                                         uei.getHostnameMatch() == null ? null : compile(uei.getHostnameMatch().getExpression()),
+                                         uei.getHostaddrMatch() == null ? null : compile(uei.getHostaddrMatch().getExpression())));
+            }
+        }
+        m_ueiRules = Collections.unmodifiableList(ueiRules);
+        m_ueiLiterals = ueiLiterals.matcher();
+
+        final LiteralTable hideLiterals = new LiteralTable();
+        final List<HideRule> hideRules = new ArrayList<HideRule>();
+        final List<HideMatch> hideMatches = hideMessage == null ? null : hideMessage.getHideMatchCollection();
+        if (hideMatches != null) {
+            for (final HideMatch hide : hideMatches) {
+                // hide matches only accept an exact "regex" type
+                final CompiledMatch match = compileMatch(hide.getMatch().getType(), hide.getMatch().getExpression(), false, hideLiterals);
+                if (match != null) {
+                    hideRules.add(new HideRule(match));
+                }
+            }
+        }
+        m_hideRules = Collections.unmodifiableList(hideRules);
+        m_hideLiterals = hideLiterals.matcher();
+
+        LOG.debug("Compiled {} UEI rules with {} literals and {} hide rules with {} literals",
+                  m_ueiRules.size(), m_ueiLiterals.getLiteralCount(), m_hideRules.size(), m_hideLiterals.getLiteralCount());
+    }
+
+    /**
+     * Compiles the given rules.
+     *
+     * @param ueiList the UEI rules, may be null
+     * @param hideMessage the hide rules, may be null
+     * @return the compiled program
+     */
+    static SyslogRuleProgram compile(final UeiList ueiList, final HideMessage hideMessage) {
+        return new SyslogRuleProgram(ueiList, hideMessage);
+    }
+
+    /**
+     * @return whether this program was compiled from exactly these
+     *         configuration objects
+     */
+    boolean isCompiledFrom(final UeiList ueiList, final HideMessage hideMessage) {
+        return m_ueiList == ueiList && m_hideMessage == hideMessage;
+    }
+
+    boolean hasUeiList() {
+        return m_ueiList != null && m_ueiList.getUeiMatchCollection() != null;
+    }
+
+    boolean hasHideMessage() {
+        return m_hideMessage != null && m_hideMessage.getHideMatchCollection() != null;
+    }
+
+    private static CompiledMatch compileMatch(final String type, final String expression, final boolean regexPrefix, final LiteralTable literals) {
+        if ("substr".equals(type)) {
+            final List<String> required = new ArrayList<String>(1);
+            if (expression.length() > 0) {
+                required.add(expression);
+            }
+            return new CompiledMatch(true, expression, null, literals.ids(required));
+        } else if (regexPrefix ? type.startsWith("regex") : "regex".equals(type)) {
+            final Pattern pattern = compile(expression);
+            if (pattern == null) {
+                return null;
+            }
+            return new CompiledMatch(false, expression, pattern, literals.ids(requiredLiterals(expression)));
+        }
+        return null;
+    }
+
+    private static Pattern compile(final String expression) {
+        try {
+            return Pattern.compile(expression, Pattern.MULTILINE);
+        } catch (final PatternSyntaxException pse) {
+            LOG.warn("Failed to compile regex pattern '{}'", expression, pse);
+            return null;
+        }
+    }
+
+    /**
+     * Returns literal strings that any text matched by the expression must
+     * contain.  Only literals outside of groups and character classes are
+     * considered, and any construct that isn't understood results in no
+     * literals at all, so the result is always safe to use as a prefilter.
+     *
+     * @param expression a regular expression
+     * @return the required literals, possibly empty
+     */
+    static List<String> requiredLiterals(final String expression) {
+        final List<String> literals = new ArrayList<String>();
+        final StringBuilder run = new StringBuilder();
+        int depth = 0;
+        int i = 0;
+        final int length = expression.length();
+
+        while (i < length) {
+            final char c = expression.charAt(i);
+
+            if (depth > 0) {
+                // inside a group we only track nesting
+                switch (c) {
+                case '\\':
+                    i += 2;
+                    continue;
+                case '[':
+                    i = skipClass(expression, i);
+                    if (i < 0) return Collections.emptyList();
+                    continue;
+                case '(':
+                    depth++;
+                    break;
+                case ')':
+                    depth--;
+                    break;
+                default:
+                    break;
+                }
+                i++;
+                continue;
+            }
+
+            switch (c) {
+            case '\\': {
+                if (i + 1 >= length) return Collections.emptyList();
+                final char escaped = expression.charAt(i + 1);
+                if (Character.isLetterOrDigit(escaped)) {
+                    if ("dDsSwWbBAGZzhHvV".indexOf(escaped) < 0) {
+                        // \Q, back references, \x41, \p{..} and friends
+                        return Collections.emptyList();
+                    }
+                    endRun(run, literals);
+                } else {
+                    run.append(escaped);
+                }
+                i += 2;
+                break;
+            }
+            case '?':
+            case '*':
+            case '{':
+                // the previous atom is optional (or may be repeated zero times)
+                if (run.length() > 0) {
+                    run.setLength(run.length() - 1);
+                }
+                endRun(run, literals);
+                if (c == '{') {
+                    final int close = expression.indexOf('}', i);
+                    if (close < 0) return Collections.emptyList();
+                    i = close + 1;
+                } else {
+                    i++;
+                }
+                break;
+            case '+':
+                endRun(run, literals);
+                i++;
+                break;
+            case '|':
+                // alternation at the top level means nothing is required
+                return Collections.emptyList();
+            case '(':
+                if (i + 2 < length && expression.charAt(i + 1) == '?' && ":=!<>".indexOf(expression.charAt(i + 2)) < 0) {
+                    // inline flags such as (?i) change how literals match
+                    return Collections.emptyList();
+                }
+                endRun(run, literals);
+                depth++;
+                i++;
+                break;
+            case ')':
+                return Collections.emptyList();
+            case '[':
+                endRun(run, literals);
+                i = skipClass(expression, i);
+                if (i < 0) return Collections.emptyList();
+                break;
+            case '.':
+            case '^':
+            case '$':
+                endRun(run, literals);
+                i++;
+                break;
+            default:
+                run.append(c);
+                i++;
+                break;
+            }
+        }
+        if (depth != 0) return Collections.emptyList();
+        endRun(run, literals);
+        return literals;
+    }
+
+    /**
+     * @return the index after the character class starting at
+     *         <code>start</code>, or -1 if it can't be parsed
+     */
+    private static int skipClass(final String expression, final int start) {
+        int i = start + 1;
+        if (i < expression.length() && expression.charAt(i) == '^') i++;
+        if (i < expression.length() && expression.charAt(i) == ']') return -1;
+        int depth = 1;
+        while (i < expression.length()) {
+            final char c = expression.charAt(i);
+            if (c == '\\') {
+                i += 2;
+                continue;
+            }
+            if (c == '[') {
+                depth++;
+            } else if (c == ']') {
+                depth--;
+                if (depth == 0) return i + 1;
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    private static void endRun(final StringBuilder run, final List<String> literals) {
+        if (run.length() >= MIN_LITERAL_LENGTH) {
+            literals.add(run.toString());
+        }
+        run.setLength(0);
+    }
+
+    /**
+     * Applies the first matching UEI rule to the event being built.
+     *
+     * @return whether a rule matched
+     * @throws MessageDiscardedException if the matching rule's UEI is the
+     *         discard UEI
+     */
+    boolean matchUei(final SyslogMessage message, final String facilityTxt, final String priorityTxt, final String discardUei, final EventBuilder bldr) throws MessageDiscardedException {
+        if (m_ueiRules.isEmpty()) {
+            return false;
+        }
+
+        final boolean traceEnabled = LOG.isTraceEnabled();
+        final String matchedText = message.getMatchedMessage();
+        final String regexText = matchedText != null ? matchedText : message.getFullText();
+        final BitSet substringsFound = m_ueiLiterals.match(matchedText);
+        final BitSet regexLiteralsFound = regexText == matchedText ? substringsFound : m_ueiLiterals.match(regexText);
+
+        for (final UeiRule rule : m_ueiRules) {
+            final CompiledMatch match = rule.m_match;
+            if (match.m_substring) {
+                if (matchedText == null || !match.literalsFound(substringsFound)) {
+                    if (traceEnabled) LOG.trace("No substring match for text of a Syslogd event to : {}", match.m_expression);
+                    continue;
+                }
+            } else if (!match.literalsFound(regexLiteralsFound)) {
+                continue;
+            }
+
+            final UeiMatch uei = rule.m_ueiMatch;
+            if (!matchOther(rule, uei, facilityTxt, priorityTxt, message)) {
+                continue;
+            }
+
+            if (match.m_substring) {
+                if (discardUei.equals(uei.getUei())) {
+                    if (traceEnabled) LOG.trace("Specified UEI '{}' is same as discard-uei, discarding this message.", uei.getUei());
+                    throw new MessageDiscardedException();
+                }
+                if (traceEnabled) LOG.trace("Changed the UEI of a Syslogd event, based on substring match, to : {}", uei.getUei());
+                bldr.setUei(uei.getUei());
+                return true;
+            }
+
+            final Matcher msgMat = match.m_pattern.matcher(regexText);
+            if (!msgMat.find()) {
+                if (traceEnabled) LOG.trace("Message '{}' did not regex-match pattern '{}'", message.getMessage(), match.m_expression);
+                continue;
+            }
+            if (discardUei.equals(uei.getUei())) {
+                LOG.debug("Specified UEI '{}' is same as discard-uei, discarding this message.", uei.getUei());
+                throw new MessageDiscardedException();
+            }
+
+            // We matched a UEI
+            bldr.setUei(uei.getUei());
+            if (msgMat.groupCount() > 0 && uei.getMatch().isDefaultParameterMapping()) {
+                if (traceEnabled) LOG.trace("Doing default parameter mappings for this regex match.");
+                for (int groupNum = 1; groupNum <= msgMat.groupCount(); groupNum++) {
+                    if (traceEnabled) LOG.trace("Added parm 'group{}' with value '{}' to Syslogd event based on regex match group", groupNum, msgMat.group(groupNum));
+                    bldr.addParam("group"+groupNum, msgMat.group(groupNum));
+                }
+            }
+            if (msgMat.groupCount() > 0 && uei.getParameterAssignmentCount() > 0) {
+                if (traceEnabled) LOG.trace("Doing user-specified parameter assignments for this regex match.");
+                for (ParameterAssignment assignment : uei.getParameterAssignmentCollection()) {
+                    String parmName = assignment.getParameterName();
+                    String parmValue = msgMat.group(assignment.getMatchingGroup());
+                    parmValue = parmValue == null ? "" : parmValue;
+                    bldr.addParam(parmName, parmValue);
+                    if (traceEnabled) LOG.trace("Added parm '{}' with value '{}' to Syslogd event based on user-specified parameter assignment", parmName, parmValue);
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean matchOther(final UeiRule rule, final UeiMatch uei, final String facilityTxt, final String priorityTxt, final SyslogMessage message) {
+        return matchAny(uei.getFacilityCollection(), facilityTxt) &&
+               matchAny(uei.getSeverityCollection(), priorityTxt) &&
+               matchFind(rule.m_process, uei.getProcessMatch() != null, message.getProcessName()) &&
+               matchFind(rule.m_hostname, uei.getHostnameMatch() != null, message.getHostName()) &&
+               matchFind(rule.m_hostaddr, uei.getHostaddrMatch() != null, message.getHostAddress());
+    }
+
+    private static boolean matchAny(final List<String> values, final String value) {
+        if (values.size() == 0) return true;
+        for (final String v : values) {
+            if (v.equalsIgnoreCase(value)) return true;
+        }
+        return false;
+    }
+
+    private static boolean matchFind(final Pattern pattern, final boolean configured, final String input) {
+        if (!configured) return true;
+        if (pattern == null || input == null) return false;
+        return pattern.matcher(input).find();
+    }
+
+    /**
+     * @param fullText the full text of the message
+     * @return whether any hide rule matches the message
+     */
+    boolean matchHide(final String fullText) {
+        if (m_hideRules.isEmpty() || fullText == null) {
+            return false;
+        }
+
+        final BitSet found = m_hideLiterals.match(fullText);
+        for (final HideRule rule : m_hideRules) {
+            final CompiledMatch match = rule.m_match;
+            if (!match.literalsFound(found)) {
+                continue;
+            }
+            if (match.m_substring || match.m_pattern.matcher(fullText).find()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
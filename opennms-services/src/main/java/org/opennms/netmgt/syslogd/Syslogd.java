@@ -199,4 +199,58 @@ import org.slf4j.LoggerFactory;
     public void setEventDao(EventDao eventDao) {
         m_eventDao = eventDao;
     }
+
+    /**
+     * <p>getMessagesReceived</p>
+     *
+     * @return the number of syslog datagrams received since syslogd startup
+     */
+    public long getMessagesReceived() {
+        return m_udpEventReceiver == null ? 0 : m_udpEventReceiver.getMessagesReceived();
+    }
+
+    /**
+     * <p>getMessagesDropped</p>
+     *
+     * @return the number of syslog datagrams dropped because the parsing threads could not keep up
+     */
+    public long getMessagesDropped() {
+        return m_udpEventReceiver == null ? 0 : m_udpEventReceiver.getMessagesDropped();
+    }
+
+    /**
+     * <p>getMessagesParseFailed</p>
+     *
+     * @return the number of syslog messages that could not be converted to events
+     */
+    public long getMessagesParseFailed() {
+        return m_udpEventReceiver == null ? 0 : m_udpEventReceiver.getMessagesParseFailed();
+    }
+
+    /**
+     * <p>getMessagesDiscarded</p>
+     *
+     * @return the number of syslog messages discarded because they matched the discard UEI
+     */
+    public long getMessagesDiscarded() {
+        return m_udpEventReceiver == null ? 0 : m_udpEventReceiver.getMessagesDiscarded();
+    }
+
+    /**
+     * <p>getMessagesProcessed</p>
+     *
+     * @return the number of syslog messages sent to eventd
+     */
+    public long getMessagesProcessed() {
+        return m_udpEventReceiver == null ? 0 : m_udpEventReceiver.getMessagesProcessed();
+    }
+
+    /**
+     * <p>getQueueDepth</p>
+     *
+     * @return the number of syslog messages currently waiting to be parsed
+     */
+    public int getQueueDepth() {
+        return m_udpEventReceiver == null ? 0 : m_udpEventReceiver.getQueueDepth();
+    }
 }
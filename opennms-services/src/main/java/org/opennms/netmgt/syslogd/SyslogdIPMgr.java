@@ -28,13 +28,16 @@
 
 package org.opennms.netmgt.syslogd;
 
+import java.net.InetAddress;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 import org.opennms.core.db.DataSourceFactory;
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.netmgt.utils.AddressNodeIndex;
 
 /**
  * This class represents a singular instance that is used to map trap IP
@@ -53,9 +56,9 @@ final class SyslogdIPMgr {
     private final static String IP_LOAD_SQL = "SELECT ipAddr, nodeid FROM ipInterface";
 
     /**
-     * A Map of IP addresses and node IDs
+     * IP addresses and node IDs; looked up without locking
      */
-    private static Map<String,Long> m_knownips = new ConcurrentHashMap<String,Long>();
+    private static final AddressNodeIndex m_knownips = new AddressNodeIndex();
 
     /**
      * Clears and synchronizes the internal known IP address cache with the
@@ -82,11 +85,12 @@ final class SyslogdIPMgr {
             final ResultSet rs = s.executeQuery(IP_LOAD_SQL);
 
             if (rs != null) {
-                m_knownips.clear();
+                final Map<InetAddress,Long> knownips = new HashMap<InetAddress,Long>();
                 while (rs.next()) {
-                    m_knownips.put(rs.getString(1), rs.getLong(2));
+                    knownips.put(InetAddressUtils.addr(rs.getString(1)), rs.getLong(2));
                 }
                 rs.close();
+                m_knownips.setAll(knownips);
             }
 
         } finally {
@@ -111,11 +115,8 @@ final class SyslogdIPMgr {
      * @param addr The IP Address to query.
      * @return The node ID of the IP Address if known.
      */
-    static synchronized long getNodeId(final String addr) {
-        if (addr == null) {
-            return -1;
-        }
-        return longValue(m_knownips.get(addr));
+    static long getNodeId(final String addr) {
+        return m_knownips.getNodeId(addr);
     }
 
     /**
@@ -129,7 +130,7 @@ final class SyslogdIPMgr {
         if (addr == null || nodeid == -1)
             return -1;
 
-        return longValue(m_knownips.put(addr, nodeid));
+        return m_knownips.setNodeId(InetAddressUtils.addr(addr), nodeid);
     }
 
     /**
@@ -141,11 +142,7 @@ final class SyslogdIPMgr {
     static long removeNodeId(final String addr) {
         if (addr == null)
             return -1;
-        return longValue(m_knownips.remove(addr));
-    }
-
-    private static long longValue(final Long result) {
-        return (result == null ? -1 : result);
+        return m_knownips.removeNodeId(InetAddressUtils.addr(addr));
     }
 
 } // end SyslodIPMgr
@@ -88,4 +88,40 @@ public class Syslogd implements SyslogdMBean {
     public String getStatusText() {
         return org.opennms.core.fiber.Fiber.STATUS_NAMES[getStatus()];
     }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getMessagesReceived() {
+        return org.opennms.netmgt.syslogd.Syslogd.getInstance().getMessagesReceived();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getMessagesDropped() {
+        return org.opennms.netmgt.syslogd.Syslogd.getInstance().getMessagesDropped();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getMessagesParseFailed() {
+        return org.opennms.netmgt.syslogd.Syslogd.getInstance().getMessagesParseFailed();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getMessagesDiscarded() {
+        return org.opennms.netmgt.syslogd.Syslogd.getInstance().getMessagesDiscarded();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getMessagesProcessed() {
+        return org.opennms.netmgt.syslogd.Syslogd.getInstance().getMessagesProcessed();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getQueueDepth() {
+        return org.opennms.netmgt.syslogd.Syslogd.getInstance().getQueueDepth();
+    }
 }
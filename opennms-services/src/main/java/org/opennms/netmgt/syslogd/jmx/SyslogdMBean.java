@@ -37,4 +37,33 @@ import org.opennms.netmgt.daemon.BaseOnmsMBean;
  * @version $Id: $
  */
 public interface SyslogdMBean extends BaseOnmsMBean {
+    /**
+     * @return The number of syslog datagrams received since syslogd startup
+     */
+    public long getMessagesReceived();
+
+    /**
+     * @return The number of syslog datagrams dropped because the parsing threads could not keep up
+     */
+    public long getMessagesDropped();
+
+    /**
+     * @return The number of syslog messages that could not be converted to events
+     */
+    public long getMessagesParseFailed();
+
+    /**
+     * @return The number of syslog messages discarded because they matched the discard UEI
+     */
+    public long getMessagesDiscarded();
+
+    /**
+     * @return The number of syslog messages sent to eventd
+     */
+    public long getMessagesProcessed();
+
+    /**
+     * @return The number of syslog messages currently waiting to be parsed
+     */
+    public int getQueueDepth();
 }
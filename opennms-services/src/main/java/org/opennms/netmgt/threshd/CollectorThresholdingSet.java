@@ -105,6 +105,22 @@ public class CollectorThresholdingSet extends ThresholdingSet {
         return applyThresholds(resourceWrapper, attributesMap);
     }
 
+    /*
+     * Wraps the resource so that it can be thresholded along with the other resources of its type.
+     * Returns null if there is nothing to threshold on this resource.
+     */
+    CollectionResourceWrapper wrapResource(CollectionResource resource, Map<String, CollectionAttribute> attributesMap, Date collectionTimestamp) {
+        if (!isCollectionEnabled(resource)) {
+            LOG.debug("applyThresholds: Ignoring resource {} because data collection is disabled for this resource.", resource);
+            return null;
+        }
+        if (attributesMap == null || attributesMap.size() == 0) {
+            LOG.debug("applyThresholds: Ignoring resource {} because required attributes map is empty.", resource);
+            return null;
+        }
+        return new CollectionResourceWrapper(collectionTimestamp, m_nodeId, m_hostAddress, m_serviceName, m_repository, resource, attributesMap);
+    }
+
     /*
      * Check Valid Interface Resource based on suggestions from Bug 2711
      */
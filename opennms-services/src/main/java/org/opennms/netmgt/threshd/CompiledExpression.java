@@ -0,0 +1,791 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.threshd;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A threshold expression compiled into a tree of typed evaluators, so that it can be
+ * evaluated for every resource without going through the JEXL interpreter.
+ *
+ * <p>Only the subset of JEXL that threshold expressions use in practice is compiled:
+ * datasource names (also as <code>datasources.name</code> or <code>datasources['name']</code>),
+ * integer and decimal literals, the arithmetic, comparison and logical operators, the
+ * ternary operator and the <code>math</code> functions that take doubles. {@link #compile(String)}
+ * returns null for anything else.</p>
+ *
+ * <p>The tree follows the JEXL 2 arithmetic rules. Whenever the result would depend on a
+ * case it doesn't model (a missing datasource value, a NaN in a comparison, a division by
+ * zero), {@link #evaluate(Map)} throws {@link UndecidedException} and the caller is expected
+ * to evaluate the expression with JEXL instead.</p>
+ */
+final class CompiledExpression {
+
+    /**
+     * Thrown when the compiled expression can't tell what JEXL would return for the given values.
+     */
+    static final class UndecidedException extends Exception {
+        private static final long serialVersionUID = -2542356418203395473L;
+
+        private UndecidedException() {
+            super("The expression has to be evaluated by JEXL");
+        }
+
+        // thrown for control flow only, so there is no point in filling in the stack trace
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
+    private static final UndecidedException UNDECIDED = new UndecidedException();
+
+    private static final Set<String> RESERVED_WORDS = new HashSet<String>(Arrays.asList(
+        "null", "true", "false", "new", "empty", "size", "function", "var", "return",
+        "if", "else", "for", "foreach", "while", "in", "math", "datasources"
+    ));
+
+    private static final Map<String,String> WORD_OPERATORS = new HashMap<String,String>();
+
+    static {
+        WORD_OPERATORS.put("or", "||");
+        WORD_OPERATORS.put("and", "&&");
+        WORD_OPERATORS.put("not", "!");
+        WORD_OPERATORS.put("eq", "==");
+        WORD_OPERATORS.put("ne", "!=");
+        WORD_OPERATORS.put("lt", "<");
+        WORD_OPERATORS.put("gt", ">");
+        WORD_OPERATORS.put("le", "<=");
+        WORD_OPERATORS.put("ge", ">=");
+        WORD_OPERATORS.put("div", "/");
+        WORD_OPERATORS.put("mod", "%");
+    }
+
+    /**
+     * The static type of a node: JEXL picks the operation from the runtime classes of the
+     * operands, so the compiler only accepts operations whose outcome it can decide up front.
+     */
+    private enum Type {
+        /** An integer literal (an Integer in JEXL), always constant. */
+        INTEGER,
+        /** A decimal literal (a Float in JEXL), always constant. */
+        FLOAT,
+        /** A Double: datasource values and the result of floating point arithmetic. */
+        DOUBLE,
+        /** Either of the above, depending on the branch a ternary operator takes. */
+        NUMBER,
+        BOOLEAN
+    }
+
+    private final String m_expression;
+    private final Node m_root;
+
+    private CompiledExpression(final String expression, final Node root) {
+        m_expression = expression;
+        m_root = root;
+    }
+
+    /**
+     * Compiles the given JEXL expression.
+     *
+     * @param expression the threshold expression
+     * @return the compiled expression, or null if the expression uses anything that isn't supported
+     */
+    static CompiledExpression compile(final String expression) {
+        if (expression == null) {
+            return null;
+        }
+        final List<String> tokens = tokenize(expression);
+        if (tokens == null) {
+            return null;
+        }
+        final Node root = new Parser(tokens).parse();
+        if (root == null || root.m_type == Type.BOOLEAN) {
+            return null;
+        }
+        return new CompiledExpression(expression, root);
+    }
+
+    /**
+     * Evaluates the expression.
+     *
+     * @param values the datasource values, by name
+     * @return the value of the expression, as JEXL would compute it
+     * @throws UndecidedException if the expression has to be evaluated by JEXL for these values
+     */
+    double evaluate(final Map<String, Double> values) throws UndecidedException {
+        return m_root.value(values);
+    }
+
+    @Override
+    public String toString() {
+        return m_expression;
+    }
+
+    /*
+     * Splits the expression into tokens; returns null if it contains anything the parser won't handle.
+     */
+    private static List<String> tokenize(final String expression) {
+        final List<String> tokens = new ArrayList<String>();
+        final int length = expression.length();
+        int i = 0;
+        while (i < length) {
+            final char c = expression.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (isIdentifierStart(c)) {
+                int end = i + 1;
+                while (end < length && isIdentifierPart(expression.charAt(end))) {
+                    end++;
+                }
+                final String word = expression.substring(i, end);
+                final String operator = WORD_OPERATORS.get(word);
+                tokens.add(operator == null ? word : operator);
+                i = end;
+            } else if (Character.isDigit(c)) {
+                int end = i;
+                while (end < length && Character.isDigit(expression.charAt(end))) {
+                    end++;
+                }
+                if (end + 1 < length && expression.charAt(end) == '.' && Character.isDigit(expression.charAt(end + 1))) {
+                    end++;
+                    while (end < length && Character.isDigit(expression.charAt(end))) {
+                        end++;
+                    }
+                }
+                // no suffixes, exponents or octal literals
+                if (end < length && (isIdentifierPart(expression.charAt(end)) || expression.charAt(end) == '.')) {
+                    return null;
+                }
+                if (c == '0' && end > i + 1 && expression.charAt(i + 1) != '.') {
+                    return null;
+                }
+                tokens.add(expression.substring(i, end));
+                i = end;
+            } else if (c == '\'' || c == '"') {
+                final int end = expression.indexOf(c, i + 1);
+                if (end < 0 || expression.substring(i, end).indexOf('\\') >= 0) {
+                    return null;
+                }
+                tokens.add(expression.substring(i, end + 1));
+                i = end + 1;
+            } else {
+                final String two = i + 1 < length ? expression.substring(i, i + 2) : null;
+                if ("&&".equals(two) || "||".equals(two) || "==".equals(two) || "!=".equals(two) || "<=".equals(two) || ">=".equals(two)) {
+                    tokens.add(two);
+                    i += 2;
+                } else if ("=~".equals(two) || "!~".equals(two) || "?:".equals(two) || "//".equals(two) || "/*".equals(two)) {
+                    return null;
+                } else if ("()[].,?:+-*/%<>!".indexOf(c) >= 0) {
+                    tokens.add(String.valueOf(c));
+                    i++;
+                } else {
+                    return null;
+                }
+            }
+        }
+        return tokens;
+    }
+
+    private static boolean isIdentifierStart(final char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || c == '$';
+    }
+
+    private static boolean isIdentifierPart(final char c) {
+        return isIdentifierStart(c) || (c >= '0' && c <= '9');
+    }
+
+    /*
+     * A recursive descent parser following the precedence of the JEXL grammar. Every
+     * parse method returns null as soon as the expression can't be compiled.
+     */
+    private static final class Parser {
+        private final List<String> m_tokens;
+        private int m_position = 0;
+
+        Parser(final List<String> tokens) {
+            m_tokens = tokens;
+        }
+
+        Node parse() {
+            final Node node = parseTernary();
+            return m_position == m_tokens.size() ? node : null;
+        }
+
+        private String peek() {
+            return m_position < m_tokens.size() ? m_tokens.get(m_position) : null;
+        }
+
+        private boolean accept(final String token) {
+            if (token.equals(peek())) {
+                m_position++;
+                return true;
+            }
+            return false;
+        }
+
+        private Node parseTernary() {
+            final Node condition = parseOr();
+            if (condition == null || !accept("?")) {
+                return condition;
+            }
+            final Node whenTrue = parseTernary();
+            if (whenTrue == null || !accept(":")) {
+                return null;
+            }
+            final Node whenFalse = parseTernary();
+            if (whenFalse == null || condition.m_type != Type.BOOLEAN || whenTrue.m_type == Type.BOOLEAN || whenFalse.m_type == Type.BOOLEAN) {
+                return null;
+            }
+            return new Ternary(condition, whenTrue, whenFalse);
+        }
+
+        private Node parseOr() {
+            Node left = parseAnd();
+            while (left != null && accept("||")) {
+                final Node right = parseAnd();
+                if (right == null || left.m_type != Type.BOOLEAN || right.m_type != Type.BOOLEAN) {
+                    return null;
+                }
+                left = new Or(left, right);
+            }
+            return left;
+        }
+
+        private Node parseAnd() {
+            Node left = parseEquality();
+            while (left != null && accept("&&")) {
+                final Node right = parseEquality();
+                if (right == null || left.m_type != Type.BOOLEAN || right.m_type != Type.BOOLEAN) {
+                    return null;
+                }
+                left = new And(left, right);
+            }
+            return left;
+        }
+
+        private Node parseEquality() {
+            Node left = parseRelational();
+            while (left != null && ("==".equals(peek()) || "!=".equals(peek()))) {
+                final String operator = m_tokens.get(m_position++);
+                left = Comparison.create(operator, left, parseRelational());
+            }
+            return left;
+        }
+
+        private Node parseRelational() {
+            Node left = parseAdditive();
+            while (left != null && ("<".equals(peek()) || ">".equals(peek()) || "<=".equals(peek()) || ">=".equals(peek()))) {
+                final String operator = m_tokens.get(m_position++);
+                left = Comparison.create(operator, left, parseAdditive());
+            }
+            return left;
+        }
+
+        private Node parseAdditive() {
+            Node left = parseMultiplicative();
+            while (left != null && ("+".equals(peek()) || "-".equals(peek()))) {
+                final char operator = m_tokens.get(m_position++).charAt(0);
+                left = Arithmetic.create(operator, left, parseMultiplicative());
+            }
+            return left;
+        }
+
+        private Node parseMultiplicative() {
+            Node left = parseUnary();
+            while (left != null && ("*".equals(peek()) || "/".equals(peek()) || "%".equals(peek()))) {
+                final char operator = m_tokens.get(m_position++).charAt(0);
+                left = Arithmetic.create(operator, left, parseUnary());
+            }
+            return left;
+        }
+
+        private Node parseUnary() {
+            if (accept("-")) {
+                return Negate.create(parseUnary());
+            }
+            if (accept("!")) {
+                final Node operand = parseUnary();
+                return operand == null || operand.m_type != Type.BOOLEAN ? null : new Not(operand);
+            }
+            return parsePrimary();
+        }
+
+        private Node parsePrimary() {
+            final String token = peek();
+            if (token == null) {
+                return null;
+            }
+            m_position++;
+            final Node node;
+            if ("(".equals(token)) {
+                node = parseTernary();
+                if (!accept(")")) {
+                    return null;
+                }
+            } else if (Character.isDigit(token.charAt(0))) {
+                node = Constant.parse(token);
+            } else if ("datasources".equals(token)) {
+                node = parseDatasource();
+            } else if ("math".equals(token)) {
+                node = parseFunction();
+            } else if (isIdentifierStart(token.charAt(0)) && !RESERVED_WORDS.contains(token)) {
+                node = new Variable(token);
+            } else {
+                return null;
+            }
+            // no property access, indexing or calls on anything else
+            final String next = peek();
+            if (".".equals(next) || "[".equals(next) || "(".equals(next)) {
+                return null;
+            }
+            return node;
+        }
+
+        private Node parseDatasource() {
+            if (accept(".")) {
+                final String name = peek();
+                if (name == null || !isIdentifierStart(name.charAt(0))) {
+                    return null;
+                }
+                m_position++;
+                return new Variable(name);
+            }
+            if (accept("[")) {
+                final String name = peek();
+                if (name == null || (name.charAt(0) != '\'' && name.charAt(0) != '"')) {
+                    return null;
+                }
+                m_position++;
+                return accept("]") ? new Variable(name.substring(1, name.length() - 1)) : null;
+            }
+            return null;
+        }
+
+        private Node parseFunction() {
+            if (!accept(".")) {
+                return null;
+            }
+            final MathFunction function = MathFunction.forName(peek());
+            if (function == null) {
+                return null;
+            }
+            m_position++;
+            if (!accept("(")) {
+                return null;
+            }
+            final List<Node> arguments = new ArrayList<Node>();
+            if (!accept(")")) {
+                do {
+                    final Node argument = parseTernary();
+                    if (argument == null) {
+                        return null;
+                    }
+                    arguments.add(argument);
+                } while (accept(","));
+                if (!accept(")")) {
+                    return null;
+                }
+            }
+            return Function.create(function, arguments);
+        }
+    }
+
+    private abstract static class Node {
+        final Type m_type;
+
+        Node(final Type type) {
+            m_type = type;
+        }
+
+        boolean isConstant() {
+            return false;
+        }
+
+        /*
+         * Numeric nodes return their value as the double JEXL would convert the
+         * Integer, Float or Double to.
+         */
+        double value(final Map<String, Double> values) throws UndecidedException {
+            throw new IllegalStateException("not a numeric node");
+        }
+
+        boolean test(final Map<String, Double> values) throws UndecidedException {
+            throw new IllegalStateException("not a boolean node");
+        }
+
+        boolean isNumeric() {
+            return m_type != Type.BOOLEAN;
+        }
+    }
+
+    private static final class Constant extends Node {
+        private final double m_value;
+
+        Constant(final Type type, final double value) {
+            super(type);
+            m_value = value;
+        }
+
+        static Node parse(final String token) {
+            if (token.indexOf('.') < 0) {
+                if (token.length() > 9) {
+                    return null;
+                }
+                return new Constant(Type.INTEGER, Integer.parseInt(token));
+            }
+            // JEXL turns decimal literals into Floats, and converts them to doubles through their string form
+            return new Constant(Type.FLOAT, Double.parseDouble(Float.toString(Float.parseFloat(token))));
+        }
+
+        @Override
+        boolean isConstant() {
+            return true;
+        }
+
+        @Override
+        double value(final Map<String, Double> values) {
+            return m_value;
+        }
+    }
+
+    private static final class Variable extends Node {
+        private final String m_name;
+
+        Variable(final String name) {
+            super(Type.DOUBLE);
+            m_name = name;
+        }
+
+        @Override
+        double value(final Map<String, Double> values) throws UndecidedException {
+            final Double value = values.get(m_name);
+            if (value == null) {
+                throw UNDECIDED;
+            }
+            return value.doubleValue();
+        }
+    }
+
+    private static final class Negate extends Node {
+        private final Node m_operand;
+
+        private Negate(final Node operand) {
+            super(operand.m_type);
+            m_operand = operand;
+        }
+
+        static Node create(final Node operand) {
+            if (operand == null || !operand.isNumeric()) {
+                return null;
+            }
+            if (operand.isConstant()) {
+                return new Constant(operand.m_type, -((Constant) operand).m_value);
+            }
+            return new Negate(operand);
+        }
+
+        @Override
+        double value(final Map<String, Double> values) throws UndecidedException {
+            return -m_operand.value(values);
+        }
+    }
+
+    private static final class Arithmetic extends Node {
+        private static final double MAX_EXACT_INTEGER = 9007199254740992.0;
+
+        private final char m_operator;
+        private final Node m_left;
+        private final Node m_right;
+
+        private Arithmetic(final char operator, final Node left, final Node right) {
+            super(Type.DOUBLE);
+            m_operator = operator;
+            m_left = left;
+            m_right = right;
+        }
+
+        static Node create(final char operator, final Node left, final Node right) {
+            if (left == null || right == null || !left.isNumeric() || !right.isNumeric()) {
+                return null;
+            }
+            if (left.isConstant() && right.isConstant()) {
+                final double l = ((Constant) left).m_value;
+                final double r = ((Constant) right).m_value;
+                if (left.m_type == Type.INTEGER && right.m_type == Type.INTEGER) {
+                    // integer division truncates in JEXL; leave it alone
+                    if (operator == '/' || operator == '%') {
+                        return null;
+                    }
+                    final double result = apply(operator, l, r);
+                    return Math.abs(result) < MAX_EXACT_INTEGER ? new Constant(Type.INTEGER, result) : null;
+                }
+                if ((operator == '/' || operator == '%') && r == 0.0) {
+                    return null;
+                }
+                return new Constant(Type.DOUBLE, apply(operator, l, r));
+            }
+            // with a Double on either side JEXL always does floating point arithmetic
+            if (left.m_type != Type.DOUBLE && right.m_type != Type.DOUBLE) {
+                return null;
+            }
+            return new Arithmetic(operator, left, right);
+        }
+
+        private static double apply(final char operator, final double l, final double r) {
+            switch (operator) {
+            case '+': return l + r;
+            case '-': return l - r;
+            case '*': return l * r;
+            case '/': return l / r;
+            case '%': return l % r;
+            default: throw new IllegalArgumentException("Unknown operator " + operator);
+            }
+        }
+
+        @Override
+        double value(final Map<String, Double> values) throws UndecidedException {
+            final double l = m_left.value(values);
+            final double r = m_right.value(values);
+            if ((m_operator == '/' || m_operator == '%') && r == 0.0) {
+                // JEXL throws an ArithmeticException, let it report it
+                throw UNDECIDED;
+            }
+            return apply(m_operator, l, r);
+        }
+    }
+
+    private static final class Comparison extends Node {
+        private final String m_operator;
+        private final Node m_left;
+        private final Node m_right;
+
+        private Comparison(final String operator, final Node left, final Node right) {
+            super(Type.BOOLEAN);
+            m_operator = operator.intern();
+            m_left = left;
+            m_right = right;
+        }
+
+        static Node create(final String operator, final Node left, final Node right) {
+            if (left == null || right == null || !left.isNumeric() || !right.isNumeric()) {
+                return null;
+            }
+            if (left.m_type != Type.DOUBLE && right.m_type != Type.DOUBLE) {
+                return null;
+            }
+            return new Comparison(operator, left, right);
+        }
+
+        @Override
+        boolean test(final Map<String, Double> values) throws UndecidedException {
+            final double l = m_left.value(values);
+            final double r = m_right.value(values);
+            if (Double.isNaN(l) || Double.isNaN(r)) {
+                throw UNDECIDED;
+            }
+            if (m_operator == "==") {
+                return l == r;
+            } else if (m_operator == "!=") {
+                return l != r;
+            } else if (m_operator == "<") {
+                return l < r;
+            } else if (m_operator == ">") {
+                return l > r;
+            } else if (m_operator == "<=") {
+                return l <= r;
+            } else {
+                return l >= r;
+            }
+        }
+    }
+
+    private static final class And extends Node {
+        private final Node m_left;
+        private final Node m_right;
+
+        And(final Node left, final Node right) {
+            super(Type.BOOLEAN);
+            m_left = left;
+            m_right = right;
+        }
+
+        @Override
+        boolean test(final Map<String, Double> values) throws UndecidedException {
+            return m_left.test(values) && m_right.test(values);
+        }
+    }
+
+    private static final class Or extends Node {
+        private final Node m_left;
+        private final Node m_right;
+
+        Or(final Node left, final Node right) {
+            super(Type.BOOLEAN);
+            m_left = left;
+            m_right = right;
+        }
+
+        @Override
+        boolean test(final Map<String, Double> values) throws UndecidedException {
+            return m_left.test(values) || m_right.test(values);
+        }
+    }
+
+    private static final class Not extends Node {
+        private final Node m_operand;
+
+        Not(final Node operand) {
+            super(Type.BOOLEAN);
+            m_operand = operand;
+        }
+
+        @Override
+        boolean test(final Map<String, Double> values) throws UndecidedException {
+            return !m_operand.test(values);
+        }
+    }
+
+    private static final class Ternary extends Node {
+        private final Node m_condition;
+        private final Node m_whenTrue;
+        private final Node m_whenFalse;
+
+        Ternary(final Node condition, final Node whenTrue, final Node whenFalse) {
+            super(whenTrue.m_type == Type.DOUBLE && whenFalse.m_type == Type.DOUBLE ? Type.DOUBLE : Type.NUMBER);
+            m_condition = condition;
+            m_whenTrue = whenTrue;
+            m_whenFalse = whenFalse;
+        }
+
+        @Override
+        double value(final Map<String, Double> values) throws UndecidedException {
+            return m_condition.test(values) ? m_whenTrue.value(values) : m_whenFalse.value(values);
+        }
+    }
+
+    /*
+     * The functions of ExpressionConfigWrapper.MathBinding that JEXL resolves to their double overload
+     * when at least one argument is a Double.
+     */
+    private enum MathFunction {
+        ABS("abs", 1) { @Override double apply(double a, double b) { return Math.abs(a); } },
+        ACOS("acos", 1) { @Override double apply(double a, double b) { return Math.acos(a); } },
+        ASIN("asin", 1) { @Override double apply(double a, double b) { return Math.asin(a); } },
+        ATAN("atan", 1) { @Override double apply(double a, double b) { return Math.atan(a); } },
+        ATAN2("atan2", 2) { @Override double apply(double a, double b) { return Math.atan2(a, b); } },
+        CBRT("cbrt", 1) { @Override double apply(double a, double b) { return Math.cbrt(a); } },
+        CEIL("ceil", 1) { @Override double apply(double a, double b) { return Math.ceil(a); } },
+        COS("cos", 1) { @Override double apply(double a, double b) { return Math.cos(a); } },
+        COSH("cosh", 1) { @Override double apply(double a, double b) { return Math.cosh(a); } },
+        EXP("exp", 1) { @Override double apply(double a, double b) { return Math.exp(a); } },
+        EXPM1("expm1", 1) { @Override double apply(double a, double b) { return Math.expm1(a); } },
+        FLOOR("floor", 1) { @Override double apply(double a, double b) { return Math.floor(a); } },
+        HYPOT("hypot", 2) { @Override double apply(double a, double b) { return Math.hypot(a, b); } },
+        IEEE_REMAINDER("IEEEremainder", 2) { @Override double apply(double a, double b) { return Math.IEEEremainder(a, b); } },
+        LOG("log", 1) { @Override double apply(double a, double b) { return Math.log(a); } },
+        LOG10("log10", 1) { @Override double apply(double a, double b) { return Math.log10(a); } },
+        LOG1P("log1p", 1) { @Override double apply(double a, double b) { return Math.log1p(a); } },
+        MAX("max", 2) { @Override double apply(double a, double b) { return Math.max(a, b); } },
+        MIN("min", 2) { @Override double apply(double a, double b) { return Math.min(a, b); } },
+        POW("pow", 2) { @Override double apply(double a, double b) { return Math.pow(a, b); } },
+        RINT("rint", 1) { @Override double apply(double a, double b) { return Math.rint(a); } },
+        SIGNUM("signum", 1) { @Override double apply(double a, double b) { return Math.signum(a); } },
+        SIN("sin", 1) { @Override double apply(double a, double b) { return Math.sin(a); } },
+        SINH("sinh", 1) { @Override double apply(double a, double b) { return Math.sinh(a); } },
+        SQRT("sqrt", 1) { @Override double apply(double a, double b) { return Math.sqrt(a); } },
+        TAN("tan", 1) { @Override double apply(double a, double b) { return Math.tan(a); } },
+        TANH("tanh", 1) { @Override double apply(double a, double b) { return Math.tanh(a); } },
+        TO_DEGREES("toDegrees", 1) { @Override double apply(double a, double b) { return Math.toDegrees(a); } },
+        TO_RADIANS("toRadians", 1) { @Override double apply(double a, double b) { return Math.toRadians(a); } },
+        ULP("ulp", 1) { @Override double apply(double a, double b) { return Math.ulp(a); } };
+
+        private final String m_name;
+        private final int m_arity;
+
+        private MathFunction(final String name, final int arity) {
+            m_name = name;
+            m_arity = arity;
+        }
+
+        abstract double apply(double a, double b);
+
+        static MathFunction forName(final String name) {
+            for (final MathFunction function : values()) {
+                if (function.m_name.equals(name)) {
+                    return function;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final class Function extends Node {
+        private final MathFunction m_function;
+        private final Node m_first;
+        private final Node m_second;
+
+        private Function(final MathFunction function, final Node first, final Node second) {
+            super(Type.DOUBLE);
+            m_function = function;
+            m_first = first;
+            m_second = second;
+        }
+
+        static Node create(final MathFunction function, final List<Node> arguments) {
+            if (arguments.size() != function.m_arity) {
+                return null;
+            }
+            boolean hasDouble = false;
+            for (final Node argument : arguments) {
+                // decimal literals would be passed as floats widened to doubles, not through their string form
+                if (argument.m_type == Type.BOOLEAN || argument.m_type == Type.NUMBER || argument.m_type == Type.FLOAT) {
+                    return null;
+                }
+                hasDouble |= argument.m_type == Type.DOUBLE;
+            }
+            if (!hasDouble) {
+                return null;
+            }
+            return new Function(function, arguments.get(0), arguments.size() > 1 ? arguments.get(1) : null);
+        }
+
+        @Override
+        double value(final Map<String, Double> values) throws UndecidedException {
+            return m_function.apply(m_first.value(values), m_second == null ? 0.0 : m_second.value(values));
+        }
+    }
+}
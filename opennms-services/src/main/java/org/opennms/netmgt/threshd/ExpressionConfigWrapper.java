@@ -38,6 +38,7 @@ import org.apache.commons.jexl2.ExpressionImpl;
 import org.apache.commons.jexl2.JexlEngine;
 import org.apache.commons.jexl2.MapContext;
 import org.opennms.netmgt.config.threshd.Expression;
+import org.opennms.netmgt.threshd.CompiledExpression.UndecidedException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -50,16 +51,22 @@ import org.slf4j.LoggerFactory;
 public class ExpressionConfigWrapper extends BaseThresholdDefConfigWrapper {
     private static final Logger LOG = LoggerFactory.getLogger(ExpressionConfigWrapper.class);
 
+    // JexlEngine is thread-safe, and parsed expressions can be evaluated concurrently
+    private static final JexlEngine s_jexlEngine = new JexlEngine();
+
     private final Expression m_expression;
     private final Collection<String> m_datasources;
+    private final org.apache.commons.jexl2.Expression m_jexlExpression;
+    private final CompiledExpression m_compiledExpression;
+
     public ExpressionConfigWrapper(Expression expression) throws ThresholdExpressionException {
         super(expression);
         m_expression = expression;
 
-        JexlEngine expressionParser = new JexlEngine();
         m_datasources = new ArrayList<String>();
         try {
-            ExpressionImpl e = (ExpressionImpl) expressionParser.createExpression(m_expression.getExpression());
+            ExpressionImpl e = (ExpressionImpl) s_jexlEngine.createExpression(m_expression.getExpression());
+            m_jexlExpression = e;
             LOG.trace("List of Variables on the Expression: {}", e.getVariables());
             for (List<String> list : e.getVariables()) { // Requires JEXL 2.1.x
                 if (list.get(0).equalsIgnoreCase("math")) {
@@ -77,6 +84,10 @@ public class ExpressionConfigWrapper extends BaseThresholdDefConfigWrapper {
             throw new ThresholdExpressionException("Could not parse threshold expression:" + e.getMessage(), e);
         }
         LOG.trace("Threshold Variables: {}", m_datasources);
+        m_compiledExpression = CompiledExpression.compile(m_expression.getExpression());
+        if (m_compiledExpression == null) {
+            LOG.debug("The expression {} will be evaluated by JEXL", m_expression.getExpression());
+        }
     }
 
     @Override
@@ -142,6 +153,13 @@ public class ExpressionConfigWrapper extends BaseThresholdDefConfigWrapper {
 
     @Override
     public double evaluate(Map<String, Double> values) throws ThresholdExpressionException {
+        if (m_compiledExpression != null) {
+            try {
+                return m_compiledExpression.evaluate(values);
+            } catch (UndecidedException e) {
+                // missing values, division by zero and the like are left to JEXL
+            }
+        }
         // Add all of the variable values to the script context
         Map<String,Object> context = new HashMap<String,Object>();
         context.putAll(values);
@@ -149,8 +167,7 @@ public class ExpressionConfigWrapper extends BaseThresholdDefConfigWrapper {
         context.put("math", new MathBinding());
         double result = Double.NaN;
         try {
-            // Fetch an instance of the JEXL script engine to evaluate the script expression
-            Object resultObject = new JexlEngine().createExpression(m_expression.getExpression()).evaluate(new MapContext(context));
+            Object resultObject = m_jexlExpression.evaluate(new MapContext(context));
             result = Double.parseDouble(resultObject.toString());
         } catch (Throwable e) {
             throw new ThresholdExpressionException("Error while evaluating expression " + m_expression.getExpression() + ": " + e.getMessage(), e);
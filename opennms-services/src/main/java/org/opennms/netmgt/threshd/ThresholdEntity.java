@@ -246,6 +246,37 @@ public final class ThresholdEntity implements Cloneable {
             return events; //No events to report
         }
         
+        return createEventsForValue(resource, dsValue, date);
+    }
+
+    /**
+     * Evaluates the datasource expression of the threshold.
+     *
+     * @param values
+     *          map of values (by datasource name) to evaluate against the threshold (might be an expression)
+     * @return the value to compare against the threshold
+     * @throws ThresholdExpressionException if the expression can't be evaluated
+     */
+    double evaluateDatasource(Map<String, Double> values) throws ThresholdExpressionException {
+        if (!hasThresholds()) {
+            throw new IllegalStateException("No thresholds have been added.");
+        }
+        return getThresholdConfig().evaluate(values);
+    }
+
+    /**
+     * Evaluates the thresholds of the named instance (or the generic instance if the resource
+     * is null) against an already evaluated datasource value and creates any events for thresholds.
+     *
+     * @param resource a {@link org.opennms.netmgt.threshd.CollectionResourceWrapper} object.
+     * @param dsValue the value of the datasource expression
+     * @param date Date to use in created events
+     * @return List of events
+     */
+    List<Event> createEventsForValue(CollectionResourceWrapper resource, double dsValue, Date date) {
+        List<Event> events = new LinkedList<Event>();
+        String instance = resource != null ? resource.getInstance() : null;
+
         LOG.debug("evaluate: value= {} against threshold: {}", dsValue, this);
 
         for (ThresholdEvaluatorState item : getThresholdEvaluatorStates(instance)) {
@@ -33,12 +33,18 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
@@ -78,6 +84,20 @@ public class ThresholdingSet {
     protected final List<ThresholdGroup> m_thresholdGroups = new LinkedList<ThresholdGroup>();
     protected final List<String> m_scheduledOutages = new ArrayList<String>();
 
+    /*
+     * Guards the threshold groups and the state of their entities. Applying thresholds
+     * changes the state of the entities, so it holds the write lock like reloading the
+     * configuration does; only reading the groups, as toString() does, shares the lock.
+     */
+    private final ReadWriteLock m_thresholdGroupsLock = new ReentrantReadWriteLock();
+
+    /*
+     * The thresholds of m_thresholdGroups by resource type, rebuilt whenever the groups change.
+     */
+    private volatile ThresholdIndex m_thresholdIndex = ThresholdIndex.EMPTY;
+
+    private final ConcurrentMap<String, Pattern> m_filterPatterns = new ConcurrentHashMap<String, Pattern>();
+
     /**
      * <p>Constructor for ThresholdingSet.</p>
      *
@@ -102,7 +122,8 @@ public class ThresholdingSet {
     protected void initialize() {
         final String logHeader = "initialize(nodeId=" + m_nodeId + ",ipAddr=" + m_hostAddress + ",svc=" + m_serviceName + ")";
         List<String> groupNameList = getThresholdGroupNames(m_nodeId, m_hostAddress, m_serviceName);
-        synchronized(m_thresholdGroups) {
+        m_thresholdGroupsLock.writeLock().lock();
+        try {
             m_thresholdGroups.clear();
             for (String groupName : groupNameList) {
                 try {
@@ -118,6 +139,9 @@ public class ThresholdingSet {
                 }
             }
             m_hasThresholds = !m_thresholdGroups.isEmpty();
+            m_thresholdIndex = new ThresholdIndex(m_thresholdGroups);
+        } finally {
+            m_thresholdGroupsLock.writeLock().unlock();
         }
         updateScheduledOutages();
     }
@@ -146,7 +170,8 @@ public class ThresholdingSet {
         final String logHeader = "mergeThresholdGroups(nodeId=" + nodeId + ",ipAddr=" + hostAddress + ",svc=" + serviceName + ")";
         LOG.debug("{}: Begin merging operation", logHeader);
         List<String> groupNameList = getThresholdGroupNames(nodeId, hostAddress, serviceName);
-        synchronized(m_thresholdGroups) {
+        m_thresholdGroupsLock.writeLock().lock();
+        try {
             // If size differs its because some groups where deleted.
             if (groupNameList.size() != m_thresholdGroups.size()) {
                 // Deleting Groups
@@ -187,6 +212,9 @@ public class ThresholdingSet {
             m_thresholdGroups.clear();
             m_thresholdGroups.addAll(newThresholdGroupList);
             m_hasThresholds = !m_thresholdGroups.isEmpty();
+            m_thresholdIndex = new ThresholdIndex(m_thresholdGroups);
+        } finally {
+            m_thresholdGroupsLock.writeLock().unlock();
         }
     }
 
@@ -202,6 +230,15 @@ public class ThresholdingSet {
         return m_hasThresholds;
     }
 
+    /**
+     * Returns the current threshold groups.
+     *
+     * @return an unmodifiable {@link java.util.List} object.
+     */
+    List<ThresholdGroup> getThresholdGroups() {
+        return m_thresholdIndex.getThresholdGroups();
+    }
+
     /*
      * Returns true if the specified attribute is involved in any of defined thresholds for node/address/service
      * 
@@ -210,25 +247,11 @@ public class ThresholdingSet {
      * @return a boolean.
      */
     public boolean hasThresholds(final String resourceTypeName, final String attributeName) {
-        boolean ok = false;
-        synchronized(m_thresholdGroups) {
-            for (ThresholdGroup group : m_thresholdGroups) {
-                Map<String,Set<ThresholdEntity>> entityMap = getEntityMap(group, resourceTypeName);
-                if (entityMap != null) {
-                    for (final Entry<String, Set<ThresholdEntity>> entry : entityMap.entrySet()) {
-                        final Set<ThresholdEntity> value = entry.getValue();
-                        for (final ThresholdEntity thresholdEntity : value) {
-                            final Collection<String> requiredDatasources = thresholdEntity.getRequiredDatasources();
-                            if (requiredDatasources.contains(attributeName)) {
-                                ok = true;
-                                LOG.debug("hasThresholds: {}@{}? {}", resourceTypeName, attributeName, ok);
-                            } else {
-                                LOG.trace("hasThresholds: {}@{}? {}", resourceTypeName, attributeName, ok);
-                            }
-                        }
-                    }
-                }
-            }
+        final boolean ok = m_thresholdIndex.getResourceType(resourceTypeName).requiresDatasource(attributeName);
+        if (ok) {
+            LOG.debug("hasThresholds: {}@{}? {}", resourceTypeName, attributeName, ok);
+        } else {
+            LOG.trace("hasThresholds: {}@{}? {}", resourceTypeName, attributeName, ok);
         }
         return ok;
     }
@@ -260,52 +283,106 @@ public class ThresholdingSet {
      * @return a {@link java.util.List} object.
      */
     protected final List<Event> applyThresholds(CollectionResourceWrapper resourceWrapper, Map<String, CollectionAttribute> attributesMap) {
-        List<Event> eventsList = new LinkedList<Event>();
         if (attributesMap == null || attributesMap.size() == 0) {
             LOG.debug("applyThresholds: Ignoring resource {} because required attributes map is empty.", resourceWrapper);
-            return eventsList;
+            return new LinkedList<Event>();
         }
         LOG.debug("applyThresholds: Applying thresholds on {} using {} attributes.", resourceWrapper, attributesMap.size());
-        Date date = new Date();
-        synchronized(m_thresholdGroups) {
-            for (ThresholdGroup group : m_thresholdGroups) {
-                Map<String,Set<ThresholdEntity>> entityMap = getEntityMap(group, resourceWrapper.getResourceTypeName());
-                if (entityMap != null) {
-                    for (final Entry<String, Set<ThresholdEntity>> entry : entityMap.entrySet()) {
-                        final String key = entry.getKey();
-                        final Set<ThresholdEntity> value = entry.getValue();
-                        for (final ThresholdEntity thresholdEntity : value) {
-                            if (passedThresholdFilters(resourceWrapper, thresholdEntity)) {
-                                LOG.info("applyThresholds: Processing threshold {} : {} on resource {}", key, thresholdEntity, resourceWrapper);
-                                Collection<String> requiredDatasources = thresholdEntity.getThresholdConfig().getRequiredDatasources();
-                                final Map<String, Double> values = new HashMap<String,Double>();
-                                boolean valueMissing = false;
-                                boolean relaxed = thresholdEntity.getThresholdConfig().getBasethresholddef().isRelaxed();
-                                for(final String ds : requiredDatasources) {
-                                    final Double dsValue = resourceWrapper.getAttributeValue(ds);
-                                    if(dsValue == null) {
-                                        LOG.info("applyThresholds: Could not get data source value for '{}', {}", ds, (relaxed ? "but the expression will be evaluated (relaxed mode enabled)" : "not evaluating threshold"));
-                                        valueMissing = true;
-                                    }
-                                    values.put(ds,dsValue);
-                                }
-                                if(!valueMissing || relaxed) {
-                                    LOG.info("applyThresholds: All attributes found for {}, evaluating", resourceWrapper);
-                                    resourceWrapper.setDsLabel(thresholdEntity.getDatasourceLabel());
-                                    try {
-                                        List<Event> thresholdEvents = thresholdEntity.evaluateAndCreateEvents(resourceWrapper, values, date);
-                                        eventsList.addAll(thresholdEvents);
-                                    } catch (Exception e) {
-                                        LOG.warn("applyThresholds: Can't evaluate {} on {} because {}", key, resourceWrapper, e.getMessage());
-                                    }
-                                }
-                            } else {
-                                LOG.info("applyThresholds: Not processing threshold {} : {} because no filters matched", key, thresholdEntity);
+        return applyThresholds(Collections.singletonList(resourceWrapper));
+    }
+
+    /*
+     * Apply thresholds definitions for a batch of resources of the same resource type.
+     * 
+     * Each threshold is evaluated for the whole batch before moving on to the next one: the
+     * datasource expression is computed for every resource first, and then the values are checked
+     * against the evaluator states of each resource instance. The events are returned in the same
+     * order as if the resources had been thresholded one by one.
+     * 
+     * @param resources the resources, which must all have the same resource type
+     * @return a {@link java.util.List} object.
+     */
+    protected final List<Event> applyThresholds(final List<CollectionResourceWrapper> resources) {
+        final List<Event> eventsList = new LinkedList<Event>();
+        final int count = resources.size();
+        if (count == 0) {
+            return eventsList;
+        }
+        final Date date = new Date();
+        final double[] dsValues = new double[count];
+        final boolean[] evaluated = new boolean[count];
+        final List<List<Event>> resourceEvents = new ArrayList<List<Event>>(count);
+        for (int i = 0; i < count; i++) {
+            resourceEvents.add(null);
+        }
+
+        m_thresholdGroupsLock.writeLock().lock();
+        try {
+            final ResourceTypeThresholds thresholds = m_thresholdIndex.getResourceType(resources.get(0).getResourceTypeName());
+            for (int t = 0; t < thresholds.size(); t++) {
+                final String key = thresholds.getKey(t);
+                final ThresholdEntity thresholdEntity = thresholds.getEntity(t);
+                final Collection<String> requiredDatasources = thresholdEntity.getThresholdConfig().getRequiredDatasources();
+                final boolean relaxed = thresholdEntity.getThresholdConfig().getBasethresholddef().isRelaxed();
+
+                for (int i = 0; i < count; i++) {
+                    final CollectionResourceWrapper resourceWrapper = resources.get(i);
+                    evaluated[i] = false;
+                    if (!passedThresholdFilters(resourceWrapper, thresholdEntity)) {
+                        LOG.info("applyThresholds: Not processing threshold {} : {} because no filters matched", key, thresholdEntity);
+                        continue;
+                    }
+                    LOG.info("applyThresholds: Processing threshold {} : {} on resource {}", key, thresholdEntity, resourceWrapper);
+                    final Map<String, Double> values = new HashMap<String,Double>();
+                    boolean valueMissing = false;
+                    for(final String ds : requiredDatasources) {
+                        final Double dsValue = resourceWrapper.getAttributeValue(ds);
+                        if(dsValue == null) {
+                            LOG.info("applyThresholds: Could not get data source value for '{}', {}", ds, (relaxed ? "but the expression will be evaluated (relaxed mode enabled)" : "not evaluating threshold"));
+                            valueMissing = true;
+                        }
+                        values.put(ds,dsValue);
+                    }
+                    if(!valueMissing || relaxed) {
+                        LOG.info("applyThresholds: All attributes found for {}, evaluating", resourceWrapper);
+                        try {
+                            dsValues[i] = thresholdEntity.evaluateDatasource(values);
+                            evaluated[i] = true;
+                        } catch (ThresholdExpressionException e) {
+                            LOG.warn("Failed to evaluate: ", e);
+                        } catch (Exception e) {
+                            LOG.warn("applyThresholds: Can't evaluate {} on {} because {}", key, resourceWrapper, e.getMessage());
+                        }
+                    }
+                }
+
+                for (int i = 0; i < count; i++) {
+                    if (!evaluated[i]) {
+                        continue;
+                    }
+                    final CollectionResourceWrapper resourceWrapper = resources.get(i);
+                    resourceWrapper.setDsLabel(thresholdEntity.getDatasourceLabel());
+                    try {
+                        final List<Event> thresholdEvents = thresholdEntity.createEventsForValue(resourceWrapper, dsValues[i], date);
+                        if (!thresholdEvents.isEmpty()) {
+                            if (resourceEvents.get(i) == null) {
+                                resourceEvents.set(i, new LinkedList<Event>());
                             }
+                            resourceEvents.get(i).addAll(thresholdEvents);
                         }
+                    } catch (Exception e) {
+                        LOG.warn("applyThresholds: Can't evaluate {} on {} because {}", key, resourceWrapper, e.getMessage());
                     }
                 }
             }
+        } finally {
+            m_thresholdGroupsLock.writeLock().unlock();
+        }
+
+        for (final List<Event> events : resourceEvents) {
+            if (events != null) {
+                eventsList.addAll(events);
+            }
         }
         return eventsList;
     }
@@ -333,7 +410,7 @@ public class ThresholdingSet {
             String attr = resource.getFieldValue(f.getField());
             if (attr != null) {
                 try {
-                    final Pattern p = Pattern.compile(f.getContent());
+                    final Pattern p = getFilterPattern(f.getContent());
                     final Matcher m = p.matcher(attr);
                     boolean pass = m.matches();
                     LOG.debug("passedThresholdFilters: the value of {} is {}. Pass filter? {}", f.getField(), attr, pass);
@@ -362,6 +439,15 @@ public class ThresholdingSet {
         return false;
     }
 
+    private Pattern getFilterPattern(final String regex) throws PatternSyntaxException {
+        Pattern pattern = m_filterPatterns.get(regex);
+        if (pattern == null) {
+            pattern = Pattern.compile(regex);
+            m_filterPatterns.put(regex, pattern);
+        }
+        return pattern;
+    }
+
     /**
      * <p>initThresholdsDao</p>
      */
@@ -480,8 +566,91 @@ public class ThresholdingSet {
     /** {@inheritDoc} */
     @Override
     public String toString() {
-        synchronized (m_thresholdGroups) {
+        m_thresholdGroupsLock.readLock().lock();
+        try {
             return m_thresholdGroups.toString();
+        } finally {
+            m_thresholdGroupsLock.readLock().unlock();
+        }
+    }
+
+    /*
+     * The thresholds of a list of threshold groups, indexed by resource type. An index is
+     * never modified once built, so collectors can check which attributes they need to
+     * keep without taking any lock.
+     */
+    private static final class ThresholdIndex {
+        static final ThresholdIndex EMPTY = new ThresholdIndex(Collections.<ThresholdGroup>emptyList());
+
+        private final List<ThresholdGroup> m_groups;
+        private final Map<String, ResourceTypeThresholds> m_resourceTypes = new HashMap<String, ResourceTypeThresholds>();
+
+        ThresholdIndex(final List<ThresholdGroup> groups) {
+            m_groups = Collections.unmodifiableList(new ArrayList<ThresholdGroup>(groups));
+            final Set<String> resourceTypeNames = new LinkedHashSet<String>();
+            resourceTypeNames.add(CollectionResource.RESOURCE_TYPE_NODE);
+            resourceTypeNames.add(CollectionResource.RESOURCE_TYPE_IF);
+            for (final ThresholdGroup group : m_groups) {
+                if (group.getGenericResourceTypeMap() != null) {
+                    resourceTypeNames.addAll(group.getGenericResourceTypeMap().keySet());
+                }
+            }
+            for (final String resourceTypeName : resourceTypeNames) {
+                m_resourceTypes.put(resourceTypeName, new ResourceTypeThresholds(m_groups, resourceTypeName));
+            }
+        }
+
+        List<ThresholdGroup> getThresholdGroups() {
+            return m_groups;
+        }
+
+        ResourceTypeThresholds getResourceType(final String resourceTypeName) {
+            final ResourceTypeThresholds thresholds = m_resourceTypes.get(resourceTypeName);
+            return thresholds == null ? ResourceTypeThresholds.EMPTY : thresholds;
+        }
+    }
+
+    /*
+     * The threshold entities of all groups for one resource type, in the order they are applied,
+     * along with the names of all of the datasources they need.
+     */
+    private static final class ResourceTypeThresholds {
+        static final ResourceTypeThresholds EMPTY = new ResourceTypeThresholds(Collections.<ThresholdGroup>emptyList(), null);
+
+        private final List<String> m_keys = new ArrayList<String>();
+        private final List<ThresholdEntity> m_entities = new ArrayList<ThresholdEntity>();
+        private final Set<String> m_datasources = new HashSet<String>();
+
+        ResourceTypeThresholds(final List<ThresholdGroup> groups, final String resourceTypeName) {
+            for (final ThresholdGroup group : groups) {
+                final Map<String,Set<ThresholdEntity>> entityMap = getEntityMap(group, resourceTypeName);
+                if (entityMap == null) {
+                    continue;
+                }
+                for (final Entry<String, Set<ThresholdEntity>> entry : entityMap.entrySet()) {
+                    for (final ThresholdEntity thresholdEntity : entry.getValue()) {
+                        m_keys.add(entry.getKey());
+                        m_entities.add(thresholdEntity);
+                        m_datasources.addAll(thresholdEntity.getRequiredDatasources());
+                    }
+                }
+            }
+        }
+
+        int size() {
+            return m_entities.size();
+        }
+
+        String getKey(final int index) {
+            return m_keys.get(index);
+        }
+
+        ThresholdEntity getEntity(final int index) {
+            return m_entities.get(index);
+        }
+
+        boolean requiresDatasource(final String datasource) {
+            return m_datasources.contains(datasource);
         }
     }
 }
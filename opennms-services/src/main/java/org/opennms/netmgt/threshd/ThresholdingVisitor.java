@@ -28,6 +28,7 @@
 
 package org.opennms.netmgt.threshd;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -52,6 +53,9 @@ import org.slf4j.LoggerFactory;
  * into an internal data structure, per resource, and then on "completeResource", does
  * threshold checking against that in memory structure.
  *
+ * While visiting a whole CollectionSet, consecutive resources of the same resource type
+ * are kept until the type changes (or the set is complete) and are thresholded as a batch.
+ *
  * Suggested usage is one per CollectableService; this object holds the current state of thresholds
  * for this interface/service combination
  * (so perhaps needs a better name than ThresholdingVisitor)
@@ -81,7 +85,14 @@ public class ThresholdingVisitor extends AbstractCollectionSetVisitor {
     /**
      * Holds required attribute from CollectionResource to evaluate thresholds.
      */
-    final Map<String, CollectionAttribute> m_attributesMap = new HashMap<String, CollectionAttribute>();
+    Map<String, CollectionAttribute> m_attributesMap = new HashMap<String, CollectionAttribute>();
+
+    /**
+     * Holds the resources of the same type waiting to be thresholded together.
+     */
+    private final List<CollectionResourceWrapper> m_pendingResources = new ArrayList<CollectionResourceWrapper>();
+
+    private boolean m_visitingCollectionSet = false;
 
 	private Date m_collectionTimestamp;
     
@@ -132,7 +143,7 @@ public class ThresholdingVisitor extends AbstractCollectionSetVisitor {
      * @return a {@link java.util.List} object.
      */
     List<ThresholdGroup> getThresholdGroups() {
-        return Collections.unmodifiableList(m_thresholdingSet.m_thresholdGroups);
+        return m_thresholdingSet.getThresholdGroups();
     }
     
     /**
@@ -144,7 +155,19 @@ public class ThresholdingVisitor extends AbstractCollectionSetVisitor {
 
     @Override
     public void visitCollectionSet(CollectionSet set) {
+        // in case the visit of the previous set didn't complete
+        applyPendingThresholds();
         m_collectionTimestamp = set.getCollectionTimestamp();
+        m_visitingCollectionSet = true;
+    }
+
+    /**
+     * Apply thresholds for the resources that are still waiting for their batch to be complete.
+     */
+    @Override
+    public void completeCollectionSet(CollectionSet set) {
+        applyPendingThresholds();
+        m_visitingCollectionSet = false;
     }
     
     /**
@@ -167,7 +190,8 @@ public class ThresholdingVisitor extends AbstractCollectionSetVisitor {
      */
     @Override
     public void visitResource(CollectionResource resource) {
-        m_attributesMap.clear();
+        // the previous map may still be referenced by a pending resource
+        m_attributesMap = new HashMap<String, CollectionAttribute>();
     }
 
     /**
@@ -194,10 +218,42 @@ public class ThresholdingVisitor extends AbstractCollectionSetVisitor {
     /**
      * Apply threshold for specific resource (and required attributes).
      * Send thresholds events (if exists).
+     * 
+     * When visiting a CollectionSet, the resource is added to the current batch instead; the
+     * batch is thresholded when a resource of another type comes in.
      */
     @Override
     public void completeResource(CollectionResource resource) {
-        List<Event> eventList = m_thresholdingSet.applyThresholds(resource, m_attributesMap, m_collectionTimestamp);
+        if (!m_visitingCollectionSet) {
+            sendEvents(m_thresholdingSet.applyThresholds(resource, m_attributesMap, m_collectionTimestamp));
+            return;
+        }
+        CollectionResourceWrapper resourceWrapper = m_thresholdingSet.wrapResource(resource, m_attributesMap, m_collectionTimestamp);
+        if (resourceWrapper == null) {
+            return;
+        }
+        if (!m_pendingResources.isEmpty()) {
+            String pendingType = m_pendingResources.get(0).getResourceTypeName();
+            String resourceType = resourceWrapper.getResourceTypeName();
+            if (pendingType == null ? resourceType != null : !pendingType.equals(resourceType)) {
+                applyPendingThresholds();
+            }
+        }
+        m_pendingResources.add(resourceWrapper);
+    }
+
+    private void applyPendingThresholds() {
+        if (m_pendingResources.isEmpty()) {
+            return;
+        }
+        try {
+            sendEvents(m_thresholdingSet.applyThresholds(m_pendingResources));
+        } finally {
+            m_pendingResources.clear();
+        }
+    }
+
+    private static void sendEvents(List<Event> eventList) {
         ThresholdingEventProxy proxy = ThresholdingEventProxyFactory.getFactory().getProxy();
         proxy.add(eventList);
         proxy.sendAllEvents();
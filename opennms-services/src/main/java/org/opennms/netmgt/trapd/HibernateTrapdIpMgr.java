@@ -28,13 +28,10 @@
 
 package org.opennms.netmgt.trapd;
 
-import java.net.InetAddress;
-import java.util.HashMap;
-import java.util.Map;
-
 import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.netmgt.dao.api.IpInterfaceDao;
 import org.opennms.netmgt.model.OnmsIpInterface;
+import org.opennms.netmgt.utils.AddressNodeIndex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InitializingBean;
@@ -58,9 +55,10 @@ public class HibernateTrapdIpMgr implements TrapdIpMgr, InitializingBean {
     private IpInterfaceDao m_ipInterfaceDao;
     
     /**
-     * A Map of IP addresses and node IDs
+     * IP addresses and node IDs; looked up without locking, changes are
+     * serialized by this manager
      */
-    private Map<InetAddress, Integer> m_knownips = new HashMap<InetAddress, Integer>();
+    private final AddressNodeIndex m_knownips = new AddressNodeIndex();
 
     /**
      * Default construct for the instance.
@@ -77,7 +75,7 @@ public class HibernateTrapdIpMgr implements TrapdIpMgr, InitializingBean {
     @Transactional(readOnly = true)
     @Override
     public synchronized void dataSourceSync() {
-        m_knownips = m_ipInterfaceDao.getInterfacesForNodes();
+        m_knownips.setAll(m_ipInterfaceDao.getInterfacesForNodes());
     }
 
     /* (non-Javadoc)
@@ -85,11 +83,8 @@ public class HibernateTrapdIpMgr implements TrapdIpMgr, InitializingBean {
      */
     /** {@inheritDoc} */
     @Override
-    public synchronized long getNodeId(String addr) {
-        if (addr == null) {
-            return -1;
-        }
-        return longValue(m_knownips.get(InetAddressUtils.getInetAddress(addr)));
+    public long getNodeId(String addr) {
+        return m_knownips.getNodeId(addr);
     }
 
     /* (non-Javadoc)
@@ -103,12 +98,12 @@ public class HibernateTrapdIpMgr implements TrapdIpMgr, InitializingBean {
         }
         // Only add the address if it doesn't exist on the map. If it exists, only replace the current one if the new address is primary.
         boolean add = true;
-        if (m_knownips.containsKey(InetAddressUtils.getInetAddress(addr))) {
+        if (m_knownips.getNodeId(addr) != -1) {
             OnmsIpInterface intf = m_ipInterfaceDao.findByNodeIdAndIpAddress(Integer.valueOf((int) nodeid), addr);
             add = intf != null && intf.isPrimary();
             LOG.info("setNodeId: address found {}. Should be added? {}", intf, add);
         }
-        return add ? longValue(m_knownips.put(InetAddressUtils.getInetAddress(addr), Integer.valueOf((int) nodeid))) : -1;
+        return add ? m_knownips.setNodeId(InetAddressUtils.getInetAddress(addr), nodeid) : -1;
     }
 
     /* (non-Javadoc)
@@ -120,7 +115,7 @@ public class HibernateTrapdIpMgr implements TrapdIpMgr, InitializingBean {
         if (addr == null) {
             return -1;
         }
-        return longValue(m_knownips.remove(InetAddressUtils.getInetAddress(addr)));
+        return m_knownips.removeNodeId(InetAddressUtils.getInetAddress(addr));
     }
 
     /* (non-Javadoc)
@@ -134,10 +129,6 @@ public class HibernateTrapdIpMgr implements TrapdIpMgr, InitializingBean {
         m_knownips.clear();
     }
 
-    private static long longValue(Integer result) {
-        return (result == null ? -1 : result.longValue());
-    }
-
     /**
      * <p>afterPropertiesSet</p>
      *
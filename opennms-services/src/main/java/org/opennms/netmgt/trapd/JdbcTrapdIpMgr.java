@@ -28,6 +28,7 @@
 
 package org.opennms.netmgt.trapd;
 
+import java.net.InetAddress;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.HashMap;
@@ -35,6 +36,8 @@ import java.util.Map;
 
 import javax.sql.DataSource;
 
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.netmgt.utils.AddressNodeIndex;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowCallbackHandler;
@@ -57,9 +60,10 @@ public class JdbcTrapdIpMgr implements TrapdIpMgr, InitializingBean {
     private static final String IP_LOAD_SQL = "SELECT ipAddr, nodeid FROM ipInterface";
 
     /**
-     * A Map of IP addresses and node IDs
+     * IP addresses and node IDs; looked up without locking, changes are
+     * serialized by this manager
      */
-    private Map<String, Long> m_knownips = new HashMap<String, Long>();
+    private final AddressNodeIndex m_knownips = new AddressNodeIndex();
 
     /**
      * Default construct for the instance.
@@ -75,14 +79,16 @@ public class JdbcTrapdIpMgr implements TrapdIpMgr, InitializingBean {
      */
     @Override
     public synchronized void dataSourceSync() {
-        m_knownips.clear();
+        final Map<InetAddress, Long> knownips = new HashMap<InetAddress, Long>();
 
         new JdbcTemplate(m_dataSource).query(IP_LOAD_SQL, new RowCallbackHandler() {
             @Override
             public void processRow(ResultSet rs) throws SQLException {
-                m_knownips.put(rs.getString(1), rs.getLong(2));
+                knownips.put(InetAddressUtils.addr(rs.getString(1)), rs.getLong(2));
             }
         });
+
+        m_knownips.setAll(knownips);
     }
 
     /* (non-Javadoc)
@@ -90,11 +96,8 @@ public class JdbcTrapdIpMgr implements TrapdIpMgr, InitializingBean {
      */
     /** {@inheritDoc} */
     @Override
-    public synchronized long getNodeId(String addr) {
-        if (addr == null) {
-            return -1;
-        }
-        return longValue(m_knownips.get(addr));
+    public long getNodeId(String addr) {
+        return m_knownips.getNodeId(addr);
     }
 
     /* (non-Javadoc)
@@ -107,7 +110,7 @@ public class JdbcTrapdIpMgr implements TrapdIpMgr, InitializingBean {
             return -1;
         }
         
-        return longValue(m_knownips.put(addr, Long.valueOf(nodeid)));
+        return m_knownips.setNodeId(InetAddressUtils.addr(addr), nodeid);
     }
 
     /* (non-Javadoc)
@@ -119,7 +122,7 @@ public class JdbcTrapdIpMgr implements TrapdIpMgr, InitializingBean {
         if (addr == null) {
             return -1;
         }
-        return longValue(m_knownips.remove(addr));
+        return m_knownips.removeNodeId(InetAddressUtils.addr(addr));
     }
 
     /* (non-Javadoc)
@@ -133,10 +136,6 @@ public class JdbcTrapdIpMgr implements TrapdIpMgr, InitializingBean {
         m_knownips.clear();
     }
 
-    private static long longValue(Long result) {
-        return (result == null ? -1 : result.longValue());
-    }
-
     /**
      * <p>getDataSource</p>
      *
@@ -32,14 +32,17 @@ import static org.opennms.core.utils.InetAddressUtils.addr;
 
 import java.net.InetAddress;
 import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.opennms.core.concurrent.WaterfallCallable;
 import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.netmgt.config.api.EventConfDao;
 import org.opennms.netmgt.model.events.EventBuilder;
 import org.opennms.netmgt.model.events.EventIpcManager;
+import org.opennms.netmgt.snmp.TrapInformation;
 import org.opennms.netmgt.snmp.TrapNotification;
 import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.eventconf.Events;
 import org.opennms.netmgt.xml.eventconf.Logmsg;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -86,15 +89,25 @@ class TrapQueueProcessor implements WaterfallCallable, InitializingBean {
 
     private TrapNotification m_trapNotification;
     
-    private static long s_v1TrapsReceived = 0;
+    private static final AtomicLong s_v1TrapsReceived = new AtomicLong();
     
-    private static long s_v2cTrapsReceived = 0;
+    private static final AtomicLong s_v2cTrapsReceived = new AtomicLong();
     
-    private static long s_v3TrapsReceived = 0;
+    private static final AtomicLong s_v3TrapsReceived = new AtomicLong();
     
-    private static long s_trapsDiscarded = 0;
+    private static final AtomicLong s_trapsDiscarded = new AtomicLong();
     
-    private static long s_trapsErrored = 0;
+    private static final AtomicLong s_trapsErrored = new AtomicLong();
+
+    private static final AtomicLong s_trapsInvalid = new AtomicLong();
+
+    private static final AtomicLong s_trapsIdentified = new AtomicLong();
+
+    private static final AtomicLong s_trapsDiscardedBeforeDecoding = new AtomicLong();
+
+    private static final AtomicLong s_trapsDecoded = new AtomicLong();
+
+    private static final AtomicLong s_trapsSent = new AtomicLong();
 
     /**
      * Process a V2 trap and convert it to an event for transmission.
@@ -166,55 +179,98 @@ class TrapQueueProcessor implements WaterfallCallable, InitializingBean {
     @Override
     public Callable<Void> call() {
         try {
-            processTrapEvent(((EventCreator)m_trapNotification.getTrapProcessor()).getEvent());
+            if (m_trapNotification instanceof TrapInformation) {
+                processTrapInStages((TrapInformation) m_trapNotification);
+            } else {
+                final Event event = ((EventCreator)m_trapNotification.getTrapProcessor()).getEvent();
+                s_trapsIdentified.incrementAndGet();
+                s_trapsDecoded.incrementAndGet();
+                processTrapEvent(event, m_eventConfDao.findByEvent(event));
+            }
         } catch (IllegalArgumentException e) {
             LOG.info(e.getMessage());
+            s_trapsInvalid.incrementAndGet();
         } catch (Throwable e) {
             LOG.error("Unexpected error processing trap: {}", e, e);
-            s_trapsErrored++;
+            s_trapsErrored.incrementAndGet();
         }
         return null;
     }
 
+    /**
+     * Identifies the trap from its enterprise, generic and specific numbers
+     * and source address alone, and only decodes the varbinds if they can
+     * change which event definition matches or if the trap is not discarded.
+     */
+    private void processTrapInStages(final TrapInformation trap) {
+        final Event event = ((EventCreator) trap.getTrapProcessorWithoutVarBinds()).getEvent();
+        s_trapsIdentified.incrementAndGet();
+
+        org.opennms.netmgt.xml.eventconf.Event econf = null;
+        boolean classified = false;
+        final Events events = m_eventConfDao.getRootEvents();
+        if (events != null && !events.mayMatchOnVarbinds(event)) {
+            econf = m_eventConfDao.findByEvent(event);
+            classified = true;
+            if (isDiscarded(econf)) {
+                countVersion(econf);
+                LOG.debug("Trap discarded before decoding its varbinds due to matching event having logmsg dest == discardtraps");
+                s_trapsDiscardedBeforeDecoding.incrementAndGet();
+                s_trapsDiscarded.incrementAndGet();
+                return;
+            }
+        }
+
+        // adds the varbinds to the same event
+        trap.getTrapProcessor();
+        s_trapsDecoded.incrementAndGet();
+
+        processTrapEvent(event, classified ? econf : m_eventConfDao.findByEvent(event));
+    }
+
+    private static boolean isDiscarded(final org.opennms.netmgt.xml.eventconf.Event econf) {
+        final Logmsg logmsg = econf == null ? null : econf.getLogmsg();
+        return logmsg != null && "discardtraps".equals(logmsg.getDest());
+    }
+
+    private static void countVersion(final org.opennms.netmgt.xml.eventconf.Event econf) {
+        final Snmp snmp = econf == null ? null : econf.getSnmp();
+        if (snmp != null) {
+            if ("v1".equals(snmp.getVersion())) {
+                s_v1TrapsReceived.incrementAndGet();
+            } else if ("v2c".equals(snmp.getVersion())) {
+                s_v2cTrapsReceived.incrementAndGet();
+            } else if ("v3".equals(snmp.getVersion())) {
+                s_v3TrapsReceived.incrementAndGet();
+            }
+        }
+    }
+
     /**
      * <p>processTrapEvent</p>
      *
      * @param event a {@link org.opennms.netmgt.xml.event.Event} object.
+     * @param econf the event definition matching the event, or <code>null</code>
      */
-    private void processTrapEvent(final Event event) {
+    private void processTrapEvent(final Event event, final org.opennms.netmgt.xml.eventconf.Event econf) {
     	final InetAddress trapInterface = event.getInterfaceAddress();
 
-    	final org.opennms.netmgt.xml.eventconf.Event econf = m_eventConfDao.findByEvent(event);
         if (econf == null || econf.getUei() == null) {
             event.setUei("uei.opennms.org/default/trap");
         } else {
             event.setUei(econf.getUei());
         }
 
-        if (econf != null) {
-            final Snmp snmp = econf.getSnmp();
-            if (snmp != null) {
-                if ("v1".equals(snmp.getVersion())) {
-                    s_v1TrapsReceived++;
-                } else if ("v2c".equals(snmp.getVersion())) {
-                    s_v2cTrapsReceived++;
-                } else if ("v3".equals(snmp.getVersion())) {
-                    s_v3TrapsReceived++;
-                }
-            }
-            final Logmsg logmsg = econf.getLogmsg();
-            if (logmsg != null) {
-                final String dest = logmsg.getDest();
-                if ("discardtraps".equals(dest)) {
-                    LOG.debug("Trap discarded due to matching event having logmsg dest == discardtraps");
-                    s_trapsDiscarded++;
-                    return;
-                }
-            }
+        countVersion(econf);
+        if (isDiscarded(econf)) {
+            LOG.debug("Trap discarded due to matching event having logmsg dest == discardtraps");
+            s_trapsDiscarded.incrementAndGet();
+            return;
         }
 
         // send the event to eventd
         m_eventMgr.sendNow(event);
+        s_trapsSent.incrementAndGet();
 
         LOG.debug("Trap successfully converted and sent to eventd with UEI {}", event.getUei());
 
@@ -320,22 +376,42 @@ class TrapQueueProcessor implements WaterfallCallable, InitializingBean {
     }
     
     public static long getV1TrapsReceived() {
-        return s_v1TrapsReceived;
+        return s_v1TrapsReceived.get();
     }
     
     public static long getV2cTrapsReceived() {
-        return s_v2cTrapsReceived;
+        return s_v2cTrapsReceived.get();
     }
     
     public static long getV3TrapsReceived() {
-        return s_v3TrapsReceived;
+        return s_v3TrapsReceived.get();
     }
     
     public static long getTrapsDiscarded() {
-        return s_trapsDiscarded;
+        return s_trapsDiscarded.get();
     }
     
     public static long getTrapsErrored() {
-        return s_trapsErrored;
+        return s_trapsErrored.get();
+    }
+
+    public static long getTrapsInvalid() {
+        return s_trapsInvalid.get();
+    }
+
+    public static long getTrapsIdentified() {
+        return s_trapsIdentified.get();
+    }
+
+    public static long getTrapsDiscardedBeforeDecoding() {
+        return s_trapsDiscardedBeforeDecoding.get();
+    }
+
+    public static long getTrapsDecoded() {
+        return s_trapsDecoded.get();
+    }
+
+    public static long getTrapsSent() {
+        return s_trapsSent.get();
     }
 }
@@ -34,6 +34,7 @@ import java.net.InetAddress;
 import java.sql.SQLException;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.annotation.Resource;
 
@@ -121,6 +122,8 @@ public class Trapd extends AbstractServiceDaemon implements TrapProcessorFactory
 
     private boolean m_registeredForTraps;
 
+    private final AtomicLong m_trapsReceived = new AtomicLong();
+
     /**
      * <P>
      * Constructs a new Trapd object that receives and forwards trap messages
@@ -148,6 +151,7 @@ public class Trapd extends AbstractServiceDaemon implements TrapProcessorFactory
     /** {@inheritDoc} */
     @Override
     public void trapReceived(TrapNotification trapNotification) {
+        m_trapsReceived.incrementAndGet();
         m_backlogQ.submit(m_processorFactory.getInstance(trapNotification));
     }
 
@@ -353,6 +357,30 @@ public class Trapd extends AbstractServiceDaemon implements TrapProcessorFactory
         return LOG4J_CATEGORY;
     }
 
+    public long getTrapsReceived() {
+        return m_trapsReceived.get();
+    }
+
+    public long getTrapsInvalid() {
+        return TrapQueueProcessor.getTrapsInvalid();
+    }
+
+    public long getTrapsIdentified() {
+        return TrapQueueProcessor.getTrapsIdentified();
+    }
+
+    public long getTrapsDiscardedBeforeDecoding() {
+        return TrapQueueProcessor.getTrapsDiscardedBeforeDecoding();
+    }
+
+    public long getTrapsDecoded() {
+        return TrapQueueProcessor.getTrapsDecoded();
+    }
+
+    public long getTrapsSent() {
+        return TrapQueueProcessor.getTrapsSent();
+    }
+
     public long getV1TrapsReceived() {
         return TrapQueueProcessor.getV1TrapsReceived();
     }
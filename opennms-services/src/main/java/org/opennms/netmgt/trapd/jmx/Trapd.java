@@ -48,4 +48,70 @@ public class Trapd extends AbstractSpringContextJmxServiceDaemon<org.opennms.net
     protected String getSpringContext() {
         return "trapDaemonContext";       
     }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getTrapsReceived() {
+        return getDaemon().getTrapsReceived();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getTrapsInvalid() {
+        return getDaemon().getTrapsInvalid();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getTrapsIdentified() {
+        return getDaemon().getTrapsIdentified();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getTrapsDiscardedBeforeDecoding() {
+        return getDaemon().getTrapsDiscardedBeforeDecoding();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getTrapsDecoded() {
+        return getDaemon().getTrapsDecoded();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getTrapsDiscarded() {
+        return getDaemon().getTrapsDiscarded();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getTrapsSent() {
+        return getDaemon().getTrapsSent();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getTrapsErrored() {
+        return getDaemon().getTrapsErrored();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getV1TrapsReceived() {
+        return getDaemon().getV1TrapsReceived();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getV2cTrapsReceived() {
+        return getDaemon().getV2cTrapsReceived();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getV3TrapsReceived() {
+        return getDaemon().getV3TrapsReceived();
+    }
 }
@@ -37,4 +37,60 @@ import org.opennms.netmgt.daemon.BaseOnmsMBean;
  * @version $Id: $
  */
 public interface TrapdMBean extends BaseOnmsMBean {
+
+    /**
+     * @return the number of traps received since Trapd was started
+     */
+    long getTrapsReceived();
+
+    /**
+     * @return the number of traps rejected because they could not be identified
+     */
+    long getTrapsInvalid();
+
+    /**
+     * @return the number of traps identified by enterprise, generic, specific
+     *         and source address
+     */
+    long getTrapsIdentified();
+
+    /**
+     * @return the number of traps discarded before their varbinds were decoded
+     */
+    long getTrapsDiscardedBeforeDecoding();
+
+    /**
+     * @return the number of traps whose varbinds were decoded
+     */
+    long getTrapsDecoded();
+
+    /**
+     * @return the number of traps discarded, before or after decoding their varbinds
+     */
+    long getTrapsDiscarded();
+
+    /**
+     * @return the number of events sent to eventd for traps
+     */
+    long getTrapsSent();
+
+    /**
+     * @return the number of traps that failed with an unexpected error
+     */
+    long getTrapsErrored();
+
+    /**
+     * @return the number of traps matching an SNMPv1 event definition
+     */
+    long getV1TrapsReceived();
+
+    /**
+     * @return the number of traps matching an SNMPv2c event definition
+     */
+    long getV2cTrapsReceived();
+
+    /**
+     * @return the number of traps matching an SNMPv3 event definition
+     */
+    long getV3TrapsReceived();
 }
@@ -0,0 +1,463 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.utils;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.opennms.core.utils.InetAddressUtils;
+
+/**
+ * Maps IP addresses to the ID of the node they belong to, for daemons such
+ * as trapd and syslogd that look up the node of every message they receive.
+ *
+ * <p>Lookups don't take any lock: they read an immutable snapshot of open
+ * addressing tables keyed by the 32 or 128 bit value of the address.
+ * A change copies the tables of the current snapshot, applies itself to the
+ * copy and publishes it, so it costs one array copy rather than rebuilding
+ * the tables; changes are meant for the occasional interface event and the
+ * initial load from the database.  Dotted IPv4 addresses are looked up
+ * without creating an {@link InetAddress}.</p>
+ */
+public final class AddressNodeIndex {
+
+    private static final int EMPTY = 0;
+
+    private static final Snapshot EMPTY_SNAPSHOT = new Snapshot(0, 0);
+
+    /**
+     * Replaced, never changed, once published; only replaced while holding
+     * the lock of the index.
+     */
+    private volatile Snapshot m_snapshot = EMPTY_SNAPSHOT;
+
+    /**
+     * Open addressing tables with linear probing.  A node ID of 0 marks an
+     * empty slot, so node 0 cannot be stored (OpenNMS node IDs start at 1).
+     * The put and remove methods are only used on a copy that hasn't been
+     * published yet.
+     */
+    private static final class Snapshot {
+        private final int[] m_v4Addresses;
+        private final int[] m_v4Nodes;
+        private final long[] m_v6High;
+        private final long[] m_v6Low;
+        private final int[] m_v6Nodes;
+        private int m_v4Size;
+        private int m_v6Size;
+
+        private Snapshot(final int v4Entries, final int v6Entries) {
+            m_v4Addresses = new int[tableSize(v4Entries)];
+            m_v4Nodes = new int[m_v4Addresses.length];
+            m_v6High = new long[tableSize(v6Entries)];
+            m_v6Low = new long[m_v6High.length];
+            m_v6Nodes = new int[m_v6High.length];
+        }
+
+        private Snapshot(final Snapshot other) {
+            m_v4Addresses = other.m_v4Addresses.clone();
+            m_v4Nodes = other.m_v4Nodes.clone();
+            m_v6High = other.m_v6High.clone();
+            m_v6Low = other.m_v6Low.clone();
+            m_v6Nodes = other.m_v6Nodes.clone();
+            m_v4Size = other.m_v4Size;
+            m_v6Size = other.m_v6Size;
+        }
+
+        private static Snapshot build(final Map<InetAddress, Integer> addresses) {
+            int v4 = 0;
+            for (final InetAddress address : addresses.keySet()) {
+                if (address instanceof Inet4Address) {
+                    v4++;
+                }
+            }
+            final Snapshot snapshot = new Snapshot(v4, addresses.size() - v4);
+            for (final Map.Entry<InetAddress, Integer> entry : addresses.entrySet()) {
+                snapshot.put(entry.getKey().getAddress(), entry.getValue().intValue());
+            }
+            return snapshot;
+        }
+
+        /**
+         * Returns a copy with room for one more address of the given length,
+         * growing the table if it would be more than half full.
+         */
+        private Snapshot copyForAdd(final int addressLength) {
+            final boolean v4 = addressLength == 4;
+            final int needed = tableSize((v4 ? m_v4Size : m_v6Size) + 1);
+            if (needed <= (v4 ? m_v4Addresses.length : m_v6High.length)) {
+                return new Snapshot(this);
+            }
+            final Snapshot snapshot = new Snapshot(v4 ? m_v4Size + 1 : m_v4Size, v4 ? m_v6Size : m_v6Size + 1);
+            for (int slot = 0; slot < m_v4Nodes.length; slot++) {
+                if (m_v4Nodes[slot] != EMPTY) {
+                    snapshot.putV4(m_v4Addresses[slot], m_v4Nodes[slot]);
+                }
+            }
+            for (int slot = 0; slot < m_v6Nodes.length; slot++) {
+                if (m_v6Nodes[slot] != EMPTY) {
+                    snapshot.putV6(m_v6High[slot], m_v6Low[slot], m_v6Nodes[slot]);
+                }
+            }
+            return snapshot;
+        }
+
+        private int size() {
+            return m_v4Size + m_v6Size;
+        }
+
+        private int get(final byte[] bytes) {
+            if (bytes.length == 4) {
+                return getV4(toInt(bytes, 0));
+            } else {
+                return getV6(toLong(bytes, 0), toLong(bytes, 8));
+            }
+        }
+
+        private int put(final byte[] bytes, final int nodeId) {
+            if (bytes.length == 4) {
+                return putV4(toInt(bytes, 0), nodeId);
+            } else {
+                return putV6(toLong(bytes, 0), toLong(bytes, 8), nodeId);
+            }
+        }
+
+        private int remove(final byte[] bytes) {
+            if (bytes.length == 4) {
+                return removeV4(toInt(bytes, 0));
+            } else {
+                return removeV6(toLong(bytes, 0), toLong(bytes, 8));
+            }
+        }
+
+        private int getV4(final int address) {
+            final int slot = findV4(address);
+            return slot < 0 ? EMPTY : m_v4Nodes[slot];
+        }
+
+        private int getV6(final long high, final long low) {
+            final int slot = findV6(high, low);
+            return slot < 0 ? EMPTY : m_v6Nodes[slot];
+        }
+
+        private int findV4(final int address) {
+            final int mask = m_v4Addresses.length - 1;
+            int slot = hash(address) & mask;
+            while (m_v4Nodes[slot] != EMPTY) {
+                if (m_v4Addresses[slot] == address) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1 - slot;
+        }
+
+        private int findV6(final long high, final long low) {
+            final int mask = m_v6High.length - 1;
+            int slot = hash(high, low) & mask;
+            while (m_v6Nodes[slot] != EMPTY) {
+                if (m_v6High[slot] == high && m_v6Low[slot] == low) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1 - slot;
+        }
+
+        private int putV4(final int address, final int nodeId) {
+            int slot = findV4(address);
+            if (slot >= 0) {
+                final int previous = m_v4Nodes[slot];
+                m_v4Nodes[slot] = nodeId;
+                return previous;
+            }
+            slot = -1 - slot;
+            m_v4Addresses[slot] = address;
+            m_v4Nodes[slot] = nodeId;
+            m_v4Size++;
+            return EMPTY;
+        }
+
+        private int putV6(final long high, final long low, final int nodeId) {
+            int slot = findV6(high, low);
+            if (slot >= 0) {
+                final int previous = m_v6Nodes[slot];
+                m_v6Nodes[slot] = nodeId;
+                return previous;
+            }
+            slot = -1 - slot;
+            m_v6High[slot] = high;
+            m_v6Low[slot] = low;
+            m_v6Nodes[slot] = nodeId;
+            m_v6Size++;
+            return EMPTY;
+        }
+
+        /**
+         * Removes an address, moving later entries of its probe sequence
+         * back so that no lookup stops early at the freed slot.
+         */
+        private int removeV4(final int address) {
+            int hole = findV4(address);
+            if (hole < 0) {
+                return EMPTY;
+            }
+            final int previous = m_v4Nodes[hole];
+            final int mask = m_v4Addresses.length - 1;
+            for (int slot = (hole + 1) & mask; m_v4Nodes[slot] != EMPTY; slot = (slot + 1) & mask) {
+                if (!isBetween(hash(m_v4Addresses[slot]) & mask, hole, slot)) {
+                    m_v4Addresses[hole] = m_v4Addresses[slot];
+                    m_v4Nodes[hole] = m_v4Nodes[slot];
+                    hole = slot;
+                }
+            }
+            m_v4Addresses[hole] = 0;
+            m_v4Nodes[hole] = EMPTY;
+            m_v4Size--;
+            return previous;
+        }
+
+        private int removeV6(final long high, final long low) {
+            int hole = findV6(high, low);
+            if (hole < 0) {
+                return EMPTY;
+            }
+            final int previous = m_v6Nodes[hole];
+            final int mask = m_v6High.length - 1;
+            for (int slot = (hole + 1) & mask; m_v6Nodes[slot] != EMPTY; slot = (slot + 1) & mask) {
+                if (!isBetween(hash(m_v6High[slot], m_v6Low[slot]) & mask, hole, slot)) {
+                    m_v6High[hole] = m_v6High[slot];
+                    m_v6Low[hole] = m_v6Low[slot];
+                    m_v6Nodes[hole] = m_v6Nodes[slot];
+                    hole = slot;
+                }
+            }
+            m_v6High[hole] = 0;
+            m_v6Low[hole] = 0;
+            m_v6Nodes[hole] = EMPTY;
+            m_v6Size--;
+            return previous;
+        }
+
+        /**
+         * Whether a home slot lies cyclically after the hole and no later
+         * than the slot, in which case the entry can't move into the hole.
+         */
+        private static boolean isBetween(final int home, final int hole, final int slot) {
+            if (hole <= slot) {
+                return hole < home && home <= slot;
+            } else {
+                return hole < home || home <= slot;
+            }
+        }
+
+        /**
+         * Keeps the tables at most half full so that probe sequences stay short.
+         */
+        private static int tableSize(final int entries) {
+            int size = 2;
+            while (size < entries * 2) {
+                size <<= 1;
+            }
+            return size;
+        }
+
+        private static int hash(final int value) {
+            int h = value * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+
+        private static int hash(final long high, final long low) {
+            final long h = (high * 0x9E3779B97F4A7C15L) ^ low;
+            return hash((int) (h ^ (h >>> 32)));
+        }
+    }
+
+    /**
+     * Returns the node ID of an address.
+     *
+     * @param addr the address, in any notation understood by
+     *        {@link InetAddressUtils#addr(String)}
+     * @return the node ID, or -1 if the address is unknown or not an address
+     */
+    public long getNodeId(final String addr) {
+        if (addr == null) {
+            return -1;
+        }
+        final long v4 = parseV4(addr);
+        if (v4 >= 0) {
+            return nodeId(m_snapshot.getV4((int) v4));
+        }
+        final InetAddress address;
+        try {
+            address = InetAddressUtils.addr(addr);
+        } catch (final IllegalArgumentException e) {
+            return -1;
+        }
+        return getNodeId(address);
+    }
+
+    /**
+     * Returns the node ID of an address.
+     *
+     * @param addr the address
+     * @return the node ID, or -1 if the address is unknown
+     */
+    public long getNodeId(final InetAddress addr) {
+        if (addr == null) {
+            return -1;
+        }
+        return nodeId(m_snapshot.get(addr.getAddress()));
+    }
+
+    /**
+     * Maps an address to a node.
+     *
+     * @param addr the address
+     * @param nodeId the node ID
+     * @return the node ID the address was mapped to before, or -1
+     */
+    public synchronized long setNodeId(final InetAddress addr, final long nodeId) {
+        if (addr == null || nodeId <= 0) {
+            return -1;
+        }
+        final byte[] bytes = addr.getAddress();
+        final Snapshot snapshot = m_snapshot.copyForAdd(bytes.length);
+        final int previous = snapshot.put(bytes, (int) nodeId);
+        m_snapshot = snapshot;
+        return nodeId(previous);
+    }
+
+    /**
+     * Removes the mapping of an address.
+     *
+     * @param addr the address
+     * @return the node ID the address was mapped to, or -1
+     */
+    public synchronized long removeNodeId(final InetAddress addr) {
+        if (addr == null) {
+            return -1;
+        }
+        final byte[] bytes = addr.getAddress();
+        if (m_snapshot.get(bytes) == EMPTY) {
+            return -1;
+        }
+        final Snapshot snapshot = new Snapshot(m_snapshot);
+        final int previous = snapshot.remove(bytes);
+        m_snapshot = snapshot;
+        return nodeId(previous);
+    }
+
+    /**
+     * Replaces all mappings at once, as when loading them from the database.
+     *
+     * @param addresses the node ID of every known address
+     */
+    public synchronized void setAll(final Map<InetAddress, ? extends Number> addresses) {
+        final Map<InetAddress, Integer> valid = new HashMap<InetAddress, Integer>();
+        for (final Map.Entry<InetAddress, ? extends Number> entry : addresses.entrySet()) {
+            if (entry.getKey() != null && entry.getValue() != null && entry.getValue().intValue() > 0) {
+                valid.put(entry.getKey(), Integer.valueOf(entry.getValue().intValue()));
+            }
+        }
+        m_snapshot = Snapshot.build(valid);
+    }
+
+    /**
+     * Removes all mappings.
+     */
+    public synchronized void clear() {
+        m_snapshot = EMPTY_SNAPSHOT;
+    }
+
+    /**
+     * @return the number of addresses with a node
+     */
+    public int size() {
+        return m_snapshot.size();
+    }
+
+    private static long nodeId(final int nodeId) {
+        return nodeId == EMPTY ? -1 : nodeId;
+    }
+
+    /**
+     * Parses a dotted quad such as <code>192.168.0.1</code>.
+     *
+     * @return the address as an unsigned 32 bit value, or -1 if the string
+     *         is something else
+     */
+    static long parseV4(final String addr) {
+        final int length = addr.length();
+        long address = 0;
+        int octets = 0;
+        int i = 0;
+        while (i < length) {
+            int octet = 0;
+            int digits = 0;
+            while (i < length) {
+                final char c = addr.charAt(i);
+                if (c < '0' || c > '9') {
+                    break;
+                }
+                octet = octet * 10 + (c - '0');
+                if (++digits > 3) {
+                    return -1;
+                }
+                i++;
+            }
+            if (digits == 0 || octet > 255) {
+                return -1;
+            }
+            address = (address << 8) | octet;
+            octets++;
+            if (i == length) {
+                break;
+            }
+            if (addr.charAt(i) != '.' || octets == 4) {
+                return -1;
+            }
+            i++;
+        }
+        return octets == 4 && i == length ? address : -1;
+    }
+
+    private static int toInt(final byte[] bytes, final int offset) {
+        return ((bytes[offset] & 0xff) << 24)
+                | ((bytes[offset + 1] & 0xff) << 16)
+                | ((bytes[offset + 2] & 0xff) << 8)
+                | (bytes[offset + 3] & 0xff);
+    }
+
+    private static long toLong(final byte[] bytes, final int offset) {
+        return ((long) toInt(bytes, offset) << 32) | (toInt(bytes, offset + 4) & 0xffffffffL);
+    }
+}
@@ -32,7 +32,6 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
@@ -86,13 +85,99 @@ public class AutomationProcessor implements ReadyRunnable {
     private volatile Schedule m_schedule;
     private volatile boolean m_ready = false;
 
+    private long m_runs = 0;
+    private long m_failures = 0;
+    private long m_totalRunTime = 0;
+    private long m_lastRunTime = 0;
+    private long m_maxRunTime = 0;
+    private int m_lastRowCount = 0;
+
+    /**
+     * Matches the <code>${column}</code> tokens of trigger and action statements.
+     */
+    static final Pattern TOKEN_PATTERN = Pattern.compile("\\$\\{(\\w+)\\}");
+
+    /**
+     * Returns the names of the columns used as tokens in a statement, in
+     * the order in which they appear.
+     */
+    static List<String> getTokenizedColumns(String targetString) {
+        Matcher matcher = TOKEN_PATTERN.matcher(targetString);
+        List<String> tokens = new ArrayList<String>();
+        while (matcher.find()) {
+            tokens.add(matcher.group(1));
+        }
+        return tokens;
+    }
+
+    /**
+     * Returns the statement with its tokens replaced by JDBC parameters.
+     */
+    static String toJdbcStatement(String targetString) {
+        return TOKEN_PATTERN.matcher(targetString).replaceAll("?");
+    }
+
     static class TriggerProcessor {
     	private static final Logger LOG = LoggerFactory.getLogger(TriggerProcessor.class);
 
     	private final Trigger m_trigger;
 
+    	/**
+    	 * The column of the trigger results whose largest value is passed to
+    	 * the next run of an incremental trigger, or null.
+    	 */
+    	private final String m_highWaterMarkColumn;
+    	private final String m_triggerJDBC;
+    	private final int m_parameterCount;
+
+    	/**
+    	 * The statement of an incremental trigger with its tokens replaced by
+    	 * a NULL literal, which is run until there is a high-water mark.  An
+    	 * untyped NULL parameter would be rejected by PostgreSQL in e.g.
+    	 * <code>? IS NULL</code>, while the literal takes its type from the
+    	 * context like any other untyped constant.
+    	 */
+    	private final String m_firstRunJDBC;
+
+    	private volatile Object m_highWaterMark;
+    	private Object m_pendingHighWaterMark;
+
         public TriggerProcessor(String automationName, Trigger trigger) {
             m_trigger = trigger;
+
+            if (trigger != null && trigger.getHighWaterMark() != null && trigger.getHighWaterMark().trim().length() > 0) {
+                m_highWaterMarkColumn = trigger.getHighWaterMark().trim();
+                final String triggerSQL = trigger.getStatement().getContent();
+                for (String column : getTokenizedColumns(triggerSQL)) {
+                    if (!column.equals(m_highWaterMarkColumn)) {
+                        throw new AutomationException("Trigger "+trigger.getName()+" of automation "+automationName+" uses token ${"+column+"}, only ${"+m_highWaterMarkColumn+"} is available");
+                    }
+                }
+                m_triggerJDBC = toJdbcStatement(triggerSQL);
+                m_parameterCount = getTokenizedColumns(triggerSQL).size();
+                m_firstRunJDBC = TOKEN_PATTERN.matcher(triggerSQL).replaceAll("NULL");
+            } else {
+                m_highWaterMarkColumn = null;
+                m_triggerJDBC = trigger == null ? null : trigger.getStatement().getContent();
+                m_parameterCount = 0;
+                m_firstRunJDBC = m_triggerJDBC;
+            }
+        }
+
+        /**
+         * Returns true if the trigger only selects the rows that have changed
+         * since its last successful run.
+         */
+        public boolean isIncremental() {
+            return m_highWaterMarkColumn != null;
+        }
+
+        /**
+         * Returns the high-water mark the next run of the trigger starts from,
+         * or null if the trigger has not run successfully yet.
+         */
+        public Object getHighWaterMark() {
+            return m_highWaterMark;
         }
 
         public Trigger getTrigger() {
@@ -128,10 +213,18 @@ public class AutomationProcessor implements ReadyRunnable {
                 
                 Connection conn = Transaction.getConnection(m_trigger.getDataSource());
 
-                Statement triggerStatement = conn.createStatement(ResultSet.TYPE_SCROLL_SENSITIVE, ResultSet.CONCUR_READ_ONLY);
+                final Object highWaterMark = m_highWaterMark;
+                PreparedStatement triggerStatement = conn.prepareStatement(highWaterMark == null ? m_firstRunJDBC : m_triggerJDBC, ResultSet.TYPE_SCROLL_SENSITIVE, ResultSet.CONCUR_READ_ONLY);
                 Transaction.register(triggerStatement);
 
-                ResultSet triggerResultSet = triggerStatement.executeQuery(getTriggerSQL());
+                // every token of an incremental trigger is the high-water mark
+                if (highWaterMark != null) {
+                    for (int i = 1; i <= m_parameterCount; i++) {
+                        triggerStatement.setObject(i, highWaterMark);
+                    }
+                }
+
+                ResultSet triggerResultSet = triggerStatement.executeQuery();
                 Transaction.register(triggerResultSet);
 
                 return triggerResultSet;
@@ -141,6 +234,59 @@ public class AutomationProcessor implements ReadyRunnable {
 			}
 		}
 
+		/**
+		 * Remembers the largest value of the high-water mark column in the
+		 * results of this run.  It is used by the next run once the
+		 * automation has completed successfully.
+		 */
+		void findHighWaterMark(ResultSet rs) throws SQLException {
+		    if (!isIncremental() || rs == null) {
+		        return;
+		    }
+
+		    Object highWaterMark = m_highWaterMark;
+		    rs.beforeFirst();
+		    while (rs.next()) {
+		        final Object value = rs.getObject(m_highWaterMarkColumn);
+		        if (value != null && (highWaterMark == null || compare(value, highWaterMark) > 0)) {
+		            highWaterMark = value;
+		        }
+		    }
+		    rs.beforeFirst();
+		    m_pendingHighWaterMark = highWaterMark;
+		}
+
+		@SuppressWarnings("unchecked")
+		private static int compare(Object value, Object highWaterMark) {
+		    if (value instanceof Number && highWaterMark instanceof Number) {
+		        return Double.compare(((Number)value).doubleValue(), ((Number)highWaterMark).doubleValue());
+		    } else if (value instanceof Comparable<?>) {
+		        return ((Comparable<Object>)value).compareTo(highWaterMark);
+		    } else {
+		        throw new AutomationException("Value of high-water mark column "+value+" can not be compared");
+		    }
+		}
+
+		/**
+		 * Moves the high-water mark to the one found by the last run, after the
+		 * actions of the run have been committed.
+		 */
+		void advanceHighWaterMark() {
+		    if (m_pendingHighWaterMark != null) {
+		        LOG.debug("Trigger {} high-water mark is now {}", getName(), m_pendingHighWaterMark);
+		        m_highWaterMark = m_pendingHighWaterMark;
+		    }
+		    m_pendingHighWaterMark = null;
+		}
+
+		/**
+		 * Forgets the high-water mark found by the last run, e.g. because the
+		 * run has been rolled back.
+		 */
+		void discardHighWaterMark() {
+		    m_pendingHighWaterMark = null;
+		}
+
 		/**
 		 * This method verifies that the number of rows in the result set of the trigger
 		 * match the defined operation in the config.  For example, if the user has specified
@@ -196,11 +342,17 @@ public class AutomationProcessor implements ReadyRunnable {
     	private final TriggerProcessor m_trigger;
     	private final ResultSet m_resultSet;
     	private final boolean m_successful;
+    	private final int m_rowCount;
     	
 		public TriggerResults(TriggerProcessor trigger, ResultSet set, boolean successful) {
+			this(trigger, set, successful, 0);
+		}
+
+		public TriggerResults(TriggerProcessor trigger, ResultSet set, boolean successful, int rowCount) {
 			m_trigger = trigger;
 			m_resultSet = set;
 			m_successful = successful;
+			m_rowCount = rowCount;
 		}
 		
 		public boolean hasTrigger() {
@@ -214,6 +366,10 @@ public class AutomationProcessor implements ReadyRunnable {
         public boolean isSuccessful() {
             return m_successful;
         }
+
+        public int getRowCount() {
+            return m_rowCount;
+        }
         
     }
     
@@ -223,9 +379,26 @@ public class AutomationProcessor implements ReadyRunnable {
         private final String m_automationName;
         private final Action m_action;
 
+        /**
+         * The action statement with its tokens replaced by JDBC parameters
+         * and the columns of the tokens, parsed once per automation.
+         */
+        private final String m_actionJDBC;
+        private final List<String> m_actionColumns;
+
+        private final int m_batchSize;
+
         public ActionProcessor(String automationName, Action action) {
             m_automationName = automationName;
             m_action = action;
+            if (action != null) {
+                m_actionJDBC = toJdbcStatement(action.getStatement().getContent());
+                m_actionColumns = getTokenizedColumns(action.getStatement().getContent());
+            } else {
+                m_actionJDBC = null;
+                m_actionColumns = new ArrayList<String>(0);
+            }
+            m_batchSize = Math.max(1, Integer.getInteger("org.opennms.vacuumd.actionBatchSize", 100));
         }
         
         public boolean hasAction() {
@@ -241,12 +414,10 @@ public class AutomationProcessor implements ReadyRunnable {
         }
 
         PreparedStatement createPreparedStatement() throws SQLException {
-            String actionJDBC = getActionSQL().replaceAll("\\$\\{\\w+\\}", "?");
-            
-            LOG.debug("createPrepareStatement: This action SQL: {}\nTurned into this: {}", getActionSQL(), actionJDBC);
+            LOG.debug("createPrepareStatement: This action SQL: {}\nTurned into this: {}", getActionSQL(), m_actionJDBC);
             
             Connection conn = Transaction.getConnection(m_action.getDataSource());
-            PreparedStatement stmt = conn.prepareStatement(actionJDBC);
+            PreparedStatement stmt = conn.prepareStatement(m_actionJDBC);
             Transaction.register(stmt);
             return stmt;
         }
@@ -259,38 +430,14 @@ public class AutomationProcessor implements ReadyRunnable {
          * @return
          */
         public List<String> getActionColumns() {
-        	return getTokenizedColumns(getActionSQL());
+        	return m_actionColumns;
         }
 
-        private List<String> getTokenizedColumns(String targetString) {
-            // The \w represents a "word" charactor
-            String expression = "\\$\\{(\\w+)\\}";
-            Pattern pattern = Pattern.compile(expression);
-            Matcher matcher = pattern.matcher(targetString);
-            
-            LOG.debug("getTokenizedColumns: processing string: {}", targetString);
-            
-            List<String> tokens = new ArrayList<String>();
-            int count = 0;
-            while (matcher.find()) {
-                count++;
-                LOG.debug("getTokenizedColumns: Token {}: {}", count, matcher.group(1));
-                
-                tokens.add(matcher.group(1));
-            }
-            return tokens;        
-        }
-        
         void assignStatementParameters(PreparedStatement stmt, ResultSet rs) throws SQLException {
-            List<String> actionColumns = getTokenizedColumns(getActionSQL());        
-            Iterator<String> it = actionColumns.iterator();
-            String actionColumnName = null;
             int i=0;
-            while (it.hasNext()) {
-                actionColumnName = (String)it.next();
+            for (String actionColumnName : m_actionColumns) {
                 stmt.setObject(++i, rs.getObject(actionColumnName));
             }
-        
         }
 
         /**
@@ -316,7 +463,7 @@ public class AutomationProcessor implements ReadyRunnable {
 
         boolean execute() throws SQLException {
             //No trigger defined, just running the action.
-            if (getTokenCount(getActionSQL()) != 0) {
+            if (!m_actionColumns.isEmpty()) {
                 LOG.info("execute: not running action: {}.  Action contains tokens in an automation ({}) with no trigger.", m_action.getName(), m_automationName);
                 return false;
             } else {
@@ -334,11 +481,22 @@ public class AutomationProcessor implements ReadyRunnable {
             
             PreparedStatement actionStatement = createPreparedStatement();
         
-            //Loop through the select results
+            //Loop through the select results, sending the updates in batches
+            int batched = 0;
             while (triggerResultSet.next()) {                        
-                //Convert the sql to a PreparedStatement
                 assignStatementParameters(actionStatement, triggerResultSet);
-                actionStatement.executeUpdate();
+                if (m_batchSize == 1) {
+                    actionStatement.executeUpdate();
+                    continue;
+                }
+                actionStatement.addBatch();
+                if (++batched == m_batchSize) {
+                    actionStatement.executeBatch();
+                    batched = 0;
+                }
+            }
+            if (batched > 0) {
+                actionStatement.executeBatch();
             }
 
             return true;
@@ -692,11 +850,13 @@ public class AutomationProcessor implements ReadyRunnable {
         
         if (getAutomation() != null) {
             setReady(false);
+            boolean success = false;
             try {
-                runAutomation();
+                success = runAutomation();
             } catch (SQLException e) {
                 LOG.warn("Error running automation: {}, {}", getAutomation().getName(), e.getMessage());
             } finally {
+                recordRun(System.currentTimeMillis() - startDate.getTime(), success);
                 setReady(true);
             }
         }
@@ -727,30 +887,41 @@ public class AutomationProcessor implements ReadyRunnable {
         LOG.debug("runAutomation: Executing trigger: {}", m_automation.getTriggerName());
         
         
+        boolean success = false;
         Transaction.begin();
         try {
             LOG.debug("runAutomation: Processing automation: {}", m_automation.getName());
 
             TriggerResults results = processTrigger();
+            setLastRowCount(results.getRowCount());
             
-            boolean success = false;
             if (results.isSuccessful()) {
                 success = processAction(results);
             }
-            
-			return success;
 
         } catch (Throwable e) {
         	Transaction.rollbackOnly();
             LOG.warn("runAutomation: Could not execute automation: {}", m_automation.getName(), e);
-            return false;
+            success = false;
         } finally {
 
             LOG.debug("runAutomation: Ending processing of automation: {}", m_automation.getName());
             
-            Transaction.end();         
+            try {
+                Transaction.end();
+            } catch (SQLException e) {
+                m_trigger.discardHighWaterMark();
+                throw e;
+            }
         }
 
+        // only move past the rows of this run once its actions are committed
+        if (success) {
+            m_trigger.advanceHighWaterMark();
+        } else {
+            m_trigger.discardHighWaterMark();
+        }
+        return success;
     }
 
     private boolean processAction(TriggerResults triggerResults) throws SQLException {
@@ -774,9 +945,15 @@ public class AutomationProcessor implements ReadyRunnable {
 			//get a scrollable ResultSet so that we can count the rows and move back to the
             //beginning for processing.
 			
+            m_trigger.discardHighWaterMark();
             ResultSet triggerResultSet = m_trigger.runTriggerQuery();
 
-            TriggerResults triggerResults = new TriggerResults(m_trigger, triggerResultSet, verifyRowCount(triggerResultSet));
+            final int rowCount = countRows(triggerResultSet);
+            final boolean validRows = verifyRowCount(rowCount);
+            if (validRows) {
+                m_trigger.findHighWaterMark(triggerResultSet);
+            }
+            TriggerResults triggerResults = new TriggerResults(m_trigger, triggerResultSet, validRows, rowCount);
 
 			return triggerResults;
             
@@ -797,12 +974,13 @@ public class AutomationProcessor implements ReadyRunnable {
             return true;
         }
         
-        
-        int resultRows;
-        boolean validRows = true;
         //determine if number of rows required by the trigger row-count and operator were
         //met by the trigger query, if so we'll run the action
-        resultRows = countRows(triggerResultSet);
+        return verifyRowCount(countRows(triggerResultSet));
+    }
+
+    private boolean verifyRowCount(int resultRows) {
+        boolean validRows = true;
         
         int triggerRowCount = m_trigger.getTrigger().getRowCount();
         String triggerOperator = m_trigger.getTrigger().getOperator();
@@ -888,6 +1066,77 @@ public class AutomationProcessor implements ReadyRunnable {
         return m_trigger.hasTrigger();
     }
 
+    private synchronized void recordRun(long runTime, boolean success) {
+        m_runs++;
+        if (!success) {
+            m_failures++;
+        }
+        m_totalRunTime += runTime;
+        m_lastRunTime = runTime;
+        if (runTime > m_maxRunTime) {
+            m_maxRunTime = runTime;
+        }
+    }
+
+    private synchronized void setLastRowCount(int rowCount) {
+        m_lastRowCount = rowCount;
+    }
+
+    /**
+     * Returns the number of times this automation has run.
+     *
+     * @return a long.
+     */
+    public synchronized long getRuns() {
+        return m_runs;
+    }
+
+    /**
+     * Returns the number of runs of this automation that did not complete
+     * their action.
+     *
+     * @return a long.
+     */
+    public synchronized long getFailures() {
+        return m_failures;
+    }
+
+    /**
+     * Returns how long, in milliseconds, the last run of this automation took.
+     *
+     * @return a long.
+     */
+    public synchronized long getLastRunTime() {
+        return m_lastRunTime;
+    }
+
+    /**
+     * Returns how long, in milliseconds, the longest run of this automation took.
+     *
+     * @return a long.
+     */
+    public synchronized long getMaxRunTime() {
+        return m_maxRunTime;
+    }
+
+    /**
+     * Returns the average time, in milliseconds, a run of this automation takes.
+     *
+     * @return a double.
+     */
+    public synchronized double getAverageRunTime() {
+        return m_runs == 0 ? 0.0 : (double) m_totalRunTime / m_runs;
+    }
+
+    /**
+     * Returns the number of rows the trigger of the last run returned.
+     *
+     * @return a int.
+     */
+    public synchronized int getLastRowCount() {
+        return m_lastRowCount;
+    }
+
     /**
      * <p>setReady</p>
      *
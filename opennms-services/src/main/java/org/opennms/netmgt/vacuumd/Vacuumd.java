@@ -34,7 +34,10 @@ import java.lang.reflect.UndeclaredThrowableException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 
 import javax.sql.DataSource;
@@ -84,6 +87,8 @@ public class Vacuumd extends AbstractServiceDaemon implements Runnable, EventLis
 
     private volatile EventIpcManager m_eventMgr;
 
+    private final Map<String, AutomationProcessor> m_processors = new LinkedHashMap<String, AutomationProcessor>();
+
     /**
      * <p>getSingleton</p>
      *
@@ -304,6 +309,9 @@ public class Vacuumd extends AbstractServiceDaemon implements Runnable, EventLis
     }
 
     private void scheduleAutomations() {
+        synchronized (m_processors) {
+            m_processors.clear();
+        }
         for (Automation auto : getVacuumdConfig().getAutomations()) {
             scheduleAutomation(auto);
         }
@@ -314,6 +322,9 @@ public class Vacuumd extends AbstractServiceDaemon implements Runnable, EventLis
             AutomationProcessor ap = new AutomationProcessor(auto);
             Schedule s = new Schedule(ap, new AutomationInterval(auto.getInterval()), m_scheduler);
             ap.setSchedule(s);
+            synchronized (m_processors) {
+                m_processors.put(auto.getName(), ap);
+            }
             s.schedule();
         }
     }
@@ -426,6 +437,25 @@ public class Vacuumd extends AbstractServiceDaemon implements Runnable, EventLis
         }
     }
 
+    /**
+     * Returns the run statistics of each scheduled automation, one line per
+     * automation.
+     *
+     * @return the run statistics of the scheduled automations
+     */
+    public String[] getAutomationStatistics() {
+        List<String> stats = new ArrayList<String>();
+        synchronized (m_processors) {
+            for (Map.Entry<String, AutomationProcessor> entry : m_processors.entrySet()) {
+                AutomationProcessor ap = entry.getValue();
+                stats.add(String.format("%s: runs=%d failures=%d lastRunTime=%dms averageRunTime=%.1fms maxRunTime=%dms lastRowCount=%d",
+                                        entry.getKey(), ap.getRuns(), ap.getFailures(), ap.getLastRunTime(),
+                                        ap.getAverageRunTime(), ap.getMaxRunTime(), ap.getLastRowCount()));
+            }
+        }
+        return stats.toArray(new String[stats.size()]);
+    }
+
     private VacuumdConfigFactory getVacuumdConfig() {
         return VacuumdConfigFactory.getInstance();
     }
@@ -135,6 +135,12 @@ public class Vacuumd implements VacuumdMBean {
         return getVacuumd().getNumAutomations();
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public String[] getAutomationStatistics() {
+        return getVacuumd().getAutomationStatistics();
+    }
+
     private org.opennms.netmgt.vacuumd.Vacuumd getVacuumd() {
         return org.opennms.netmgt.vacuumd.Vacuumd.getSingleton();
     }
@@ -46,4 +46,12 @@ public interface VacuumdMBean extends BaseOnmsMBean {
      * @return the number of automations that have been executed
      */
     public long getNumAutomations();
+
+    /**
+     * Returns the run count, failure count, run times and last trigger row
+     * count of each scheduled automation.
+     *
+     * @return one line of statistics per scheduled automation
+     */
+    public String[] getAutomationStatistics();
 }
@@ -28,28 +28,42 @@
 
 package org.opennms.netmgt.collectd;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
 import java.io.File;
 import java.io.IOException;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import org.easymock.EasyMock;
+import org.easymock.IAnswer;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.opennms.core.test.Level;
 import org.opennms.core.test.MockLogAppender;
 import org.opennms.core.test.MockPlatformTransactionManager;
 import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.netmgt.collection.api.AttributeGroupType;
 import org.opennms.netmgt.collection.api.CollectionResource;
 import org.opennms.netmgt.collection.api.ServiceParameters;
+import org.opennms.netmgt.collection.persistence.rrd.PersistOperation;
 import org.opennms.netmgt.collection.persistence.rrd.PersistOperationBuilder;
+import org.opennms.netmgt.collection.persistence.rrd.PersistOperationQueue;
 import org.opennms.netmgt.config.MibObject;
 import org.opennms.netmgt.dao.api.IpInterfaceDao;
 import org.opennms.netmgt.mock.MockDataCollectionConfig;
 import org.opennms.netmgt.model.OnmsIpInterface;
 import org.opennms.netmgt.model.OnmsNode;
 import org.opennms.netmgt.rrd.RrdRepository;
+import org.opennms.netmgt.rrd.RrdStrategy;
 import org.opennms.netmgt.rrd.RrdUtils;
 import org.opennms.netmgt.snmp.SnmpInstId;
 import org.opennms.netmgt.snmp.SnmpResult;
@@ -162,6 +176,16 @@ public class PersistOperationBuilderTest {
         m_fileAnticipator.expecting(nodeDir, "rrdName" + RrdUtils.getExtension());
         m_fileAnticipator.expecting(nodeDir, "rrdName" + ".meta");
 
+        SnmpAttributeType attributeType = createCounterAttributeType();
+        PersistOperationBuilder builder = createBuilder(attributeType);
+        builder.setAttributeValue(attributeType, "6.022E23");
+        builder.commit();
+    }
+
+
+    @Test
+    public void testCommitWithDeclaredAttributeAndStringValue() throws Exception {
+
         RrdRepository repository = createRrdRepository();
 
         SnmpCollectionAgent agent = getCollectionAgent();
@@ -177,7 +201,7 @@ public class PersistOperationBuilderTest {
         MibObject mibObject = new MibObject();
         mibObject.setOid(".1.1.1.1");
         mibObject.setAlias("mibObjectAlias");
-        mibObject.setType("counter");
+        mibObject.setType("string");
         mibObject.setInstance("0");
         mibObject.setMaxval(null);
         mibObject.setMinval(null);
@@ -189,16 +213,122 @@ public class PersistOperationBuilderTest {
 
         PersistOperationBuilder builder = new PersistOperationBuilder(repository, resource, "rrdName");
         builder.declareAttribute(attributeType);
-        builder.setAttributeValue(attributeType, "6.022E23");
+        builder.setAttributeValue(attributeType, "THIS_IS_A_STRING");
         builder.commit();
     }
 
+    @Test
+    public void testQueuedCommitIsWrittenOnShutdown() throws Exception {
+        File nodeDir = m_fileAnticipator.expecting(getSnmpRrdDirectory(), m_node.getId().toString());
+        m_fileAnticipator.expecting(nodeDir, "rrdName" + RrdUtils.getExtension());
+        m_fileAnticipator.expecting(nodeDir, "rrdName" + ".meta");
+
+        SnmpAttributeType attributeType = createCounterAttributeType();
+        PersistOperationBuilder builder = createBuilder(attributeType);
+        builder.setAttributeValue(attributeType, "6.022E23");
+        PersistOperation operation = builder.createOperation();
+        assertNotNull(operation);
+
+        // the operation is a snapshot; later changes to the builder don't affect it
+        builder.setAttributeValue(attributeType, "42");
+        assertEquals("6.022E23", operation.getValues());
+
+        PersistOperationQueue queue = new PersistOperationQueue(2, 10, 100);
+        assertTrue(queue.enqueue(operation));
+        queue.shutdown();
 
+        assertEquals(1, queue.getWritten());
+        assertEquals(0, queue.getDropped());
+        assertEquals(0, queue.getQueueDepth());
+
+        // once shut down the caller has to write samples itself
+        assertFalse(queue.enqueue(operation));
+        assertTrue(queue.isShutDown());
+    }
+
+    /**
+     * While the writer is stuck on the disk and its queue is full, a
+     * collection waits for the offer timeout and then drops the sample.
+     */
     @Test
-    public void testCommitWithDeclaredAttributeAndStringValue() throws Exception {
+    public void testFullQueueWaitsForOfferTimeout() throws Exception {
+        File nodeDir = m_fileAnticipator.tempDir(getSnmpRrdDirectory(), m_node.getId().toString());
+        m_fileAnticipator.expecting(nodeDir, "rrdName" + ".meta");
 
-        RrdRepository repository = createRrdRepository();
+        SnmpAttributeType attributeType = createCounterAttributeType();
+        PersistOperationBuilder builder = createBuilder(attributeType);
+        builder.setAttributeValue(attributeType, "1");
+        PersistOperation operation = builder.createOperation();
+
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch diskReady = new CountDownLatch(1);
+        @SuppressWarnings("unchecked")
+        RrdStrategy<Object, Object> strategy = EasyMock.createNiceMock(RrdStrategy.class);
+        EasyMock.expect(strategy.openFile(EasyMock.<String>anyObject())).andAnswer(new IAnswer<Object>() {
+            @Override
+            public Object answer() throws Throwable {
+                writing.countDown();
+                diskReady.await();
+                return null;
+            }
+        }).anyTimes();
+        EasyMock.replay(strategy);
+
+        RrdStrategy<?, ?> oldStrategy = RrdUtils.getStrategy();
+        RrdUtils.setStrategy(strategy);
+        try {
+            PersistOperationQueue queue = new PersistOperationQueue(1, 1, 200);
+            assertTrue(queue.enqueue(operation));
+            assertTrue("the writer should be busy with the first sample", writing.await(10, TimeUnit.SECONDS));
+            assertTrue("there is room for one more sample", queue.enqueue(operation));
+
+            long begin = System.nanoTime();
+            assertFalse(queue.enqueue(operation));
+            long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+            assertTrue("the collection waited " + waited + "ms", waited >= 190);
+            assertEquals(1, queue.getDropped());
+            MockLogAppender.assertLogMatched(Level.WARN, "RRD write queue is full");
+
+            diskReady.countDown();
+            queue.shutdown();
+            assertEquals(2, queue.getWritten());
+            assertEquals(1, queue.getDropped());
+        } finally {
+            diskReady.countDown();
+            RrdUtils.setStrategy(oldStrategy);
+            MockLogAppender.resetEvents();
+            MockLogAppender.resetLogLevel();
+        }
+    }
 
+    @Test
+    public void testSharedQueueStaysStoppedAfterShutdown() throws Exception {
+        System.setProperty(PersistOperationQueue.ASYNC_PROPERTY, "true");
+        try {
+            PersistOperationQueue.startInstance();
+            final PersistOperationQueue queue = PersistOperationQueue.getInstance();
+            assertNotNull(queue);
+            assertSame(queue, PersistOperationQueue.getRunningInstance());
+
+            PersistOperationQueue.shutdownInstance();
+            assertNull(PersistOperationQueue.getRunningInstance());
+            // collections finishing after collectd stopped must not restart the writers
+            assertNull(PersistOperationQueue.getInstance());
+
+            PersistOperationQueue.startInstance();
+            assertNotNull(PersistOperationQueue.getInstance());
+        } finally {
+            PersistOperationQueue.shutdownInstance();
+            PersistOperationQueue.startInstance();
+            System.clearProperty(PersistOperationQueue.ASYNC_PROPERTY);
+        }
+    }
+
+    /**
+     * Creates a counter attribute of the node resource with a collected
+     * value.
+     */
+    private SnmpAttributeType createCounterAttributeType() {
         SnmpCollectionAgent agent = getCollectionAgent();
 
         MockDataCollectionConfig dataCollectionConfig = new MockDataCollectionConfig();
@@ -207,12 +337,10 @@ public class PersistOperationBuilderTest {
 
         NodeResourceType resourceType = new NodeResourceType(agent, collection);
 
-        CollectionResource resource = new NodeInfo(resourceType, agent);
-
         MibObject mibObject = new MibObject();
         mibObject.setOid(".1.1.1.1");
         mibObject.setAlias("mibObjectAlias");
-        mibObject.setType("string");
+        mibObject.setType("counter");
         mibObject.setInstance("0");
         mibObject.setMaxval(null);
         mibObject.setMinval(null);
@@ -221,11 +349,20 @@ public class PersistOperationBuilderTest {
 
         SnmpAttributeType attributeType = new StringAttributeType(resourceType, "some-collection", mibObject, new AttributeGroupType("mibGroup", AttributeGroupType.IF_TYPE_IGNORE));
         attributeType.storeResult(collectionSet, null, new SnmpResult(mibObject.getSnmpObjId(), new SnmpInstId(mibObject.getInstance()), SnmpUtils.getValueFactory().getOctetString("hello".getBytes())));
+        return attributeType;
+    }
 
-        PersistOperationBuilder builder = new PersistOperationBuilder(repository, resource, "rrdName");
+    /**
+     * Creates a builder for the node resource of the attribute, with the
+     * attribute declared.
+     */
+    private PersistOperationBuilder createBuilder(final SnmpAttributeType attributeType) throws IOException {
+        NodeResourceType resourceType = (NodeResourceType) attributeType.getResourceType();
+        CollectionResource resource = new NodeInfo(resourceType, resourceType.getAgent());
+
+        PersistOperationBuilder builder = new PersistOperationBuilder(createRrdRepository(), resource, "rrdName");
         builder.declareAttribute(attributeType);
-        builder.setAttributeValue(attributeType, "THIS_IS_A_STRING");
-        builder.commit();
+        return builder;
     }
 
     private RrdRepository createRrdRepository() throws IOException {
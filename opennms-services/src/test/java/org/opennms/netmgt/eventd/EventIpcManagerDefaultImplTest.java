@@ -31,14 +31,27 @@ package org.opennms.netmgt.eventd;
 import static org.opennms.core.utils.InetAddressUtils.addr;
 
 import java.lang.Thread.UncaughtExceptionHandler;
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 import junit.framework.TestCase;
 
 import org.opennms.netmgt.EventConstants;
 import org.opennms.netmgt.model.events.EventBuilder;
 import org.opennms.netmgt.model.events.EventListener;
+import org.opennms.netmgt.model.events.EventPartitionKeys;
+import org.opennms.netmgt.model.events.ParallelEventListener;
 import org.opennms.netmgt.xml.event.Event;
 import org.opennms.netmgt.xml.event.Log;
 import org.opennms.test.ThrowableAnticipator;
@@ -454,6 +467,148 @@ public class EventIpcManagerDefaultImplTest extends TestCase {
         m_mocks.verifyAll();
     }
     
+    public void testParallelListenerKeepsOrderingPerPartition() throws Exception {
+        final MockParallelEventListener listener = new MockParallelEventListener("excellent", 100, null);
+
+        m_mocks.replayAll();
+
+        m_manager.addEventListener(listener, "uei.opennms.org/foo");
+        for (int i = 0; i < 100; i++) {
+            EventBuilder bldr = new EventBuilder("uei.opennms.org/foo", "testParallelListenerKeepsOrderingPerPartition");
+            bldr.setNodeid(i % 7);
+            bldr.addParam("sequence", i);
+            m_manager.broadcastNow(bldr.getEvent());
+        }
+        assertTrue("timed out waiting for events", listener.await(10, TimeUnit.SECONDS));
+
+        m_mocks.verifyAll();
+
+        assertEquals(100, listener.getEventCount());
+        assertTrue("events should have been handled on more than one thread", listener.getThreadsUsed() > 1);
+        assertFalse("events for the same node were handled out of order", listener.isOutOfOrder());
+    }
+
+    public void testHandlerQueueLengthBoundsAllThreadsOfAListener() throws Exception {
+        final EventIpcManagerDefaultImpl manager = new EventIpcManagerDefaultImpl();
+        manager.setEventHandler(m_eventHandler);
+        manager.setHandlerPoolSize(5);
+        manager.setHandlerQueueLength(5);
+        manager.afterPropertiesSet();
+
+        final CountDownLatch gate = new CountDownLatch(1);
+        final MockParallelEventListener listener = new MockParallelEventListener("bounded", 0, gate);
+        final ObjectName name = new ObjectName("OpenNMS:Name=Eventd,Listener=" + ObjectName.quote(listener.getName()));
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        m_mocks.replayAll();
+
+        manager.addEventListener(listener, "uei.opennms.org/foo");
+        for (int i = 0; i < 20; i++) {
+            EventBuilder bldr = new EventBuilder("uei.opennms.org/foo", "testHandlerQueueLengthBoundsAllThreadsOfAListener");
+            bldr.setNodeid(i);
+            bldr.addParam("sequence", i);
+            manager.broadcastNow(bldr.getEvent());
+        }
+
+        // every event is either being handled, waiting in the queue or discarded
+        long discarded = 0;
+        int queued = 0;
+        final long deadline = System.currentTimeMillis() + 10000;
+        do {
+            assertTrue("timed out waiting for events to be dispatched", System.currentTimeMillis() < deadline);
+            Thread.yield();
+            discarded = (Long)server.getAttribute(name, "EventsDiscarded");
+            queued = (Integer)server.getAttribute(name, "QueueDepth");
+        } while (discarded + queued + listener.getStartedCount() < 20);
+
+        assertTrue("no more than 5 events may be queued over all threads: " + queued, queued <= 5);
+        assertTrue("at least 11 of 20 events should have been discarded: " + discarded, discarded >= 11);
+
+        gate.countDown();
+        manager.removeEventListener(listener);
+
+        m_mocks.verifyAll();
+    }
+
+    public class MockParallelEventListener implements ParallelEventListener {
+        private final String m_name;
+        private final CountDownLatch m_done;
+        private final CountDownLatch m_gate;
+        private final Map<Long, Integer> m_lastSequence = new HashMap<Long, Integer>();
+        private final Set<String> m_threads = new HashSet<String>();
+        private final AtomicInteger m_startedCount = new AtomicInteger();
+        private int m_eventCount = 0;
+        private boolean m_outOfOrder = false;
+
+        /**
+         * @param name the listener name
+         * @param expectedEvents the number of events {@link #await} waits for
+         * @param gate if not null, every event waits for this latch before it is handled
+         */
+        public MockParallelEventListener(String name, int expectedEvents, CountDownLatch gate) {
+            m_name = name;
+            m_done = new CountDownLatch(expectedEvents);
+            m_gate = gate;
+        }
+
+        @Override
+        public String getName() {
+            return m_name;
+        }
+
+        @Override
+        public int getNumberOfThreads() {
+            return 4;
+        }
+
+        @Override
+        public Object getPartitionKey(Event e) {
+            return EventPartitionKeys.byNodeId(e);
+        }
+
+        @Override
+        public void onEvent(Event e) {
+            m_startedCount.incrementAndGet();
+            if (m_gate != null) {
+                try {
+                    m_gate.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            synchronized (this) {
+                final int sequence = Integer.parseInt(e.getParmCollection().get(0).getValue().getContent());
+                final Integer last = m_lastSequence.put(e.getNodeid(), sequence);
+                if (last != null && last > sequence) {
+                    m_outOfOrder = true;
+                }
+                m_threads.add(Thread.currentThread().getName());
+                m_eventCount++;
+            }
+            m_done.countDown();
+        }
+
+        public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+            return m_done.await(timeout, unit);
+        }
+
+        public int getStartedCount() {
+            return m_startedCount.get();
+        }
+
+        public synchronized int getEventCount() {
+            return m_eventCount;
+        }
+
+        public synchronized int getThreadsUsed() {
+            return m_threads.size();
+        }
+
+        public synchronized boolean isOutOfOrder() {
+            return m_outOfOrder;
+        }
+    }
+
     public class MockEventListener implements EventListener {
         private List<Event> m_events = new ArrayList<Event>();
         
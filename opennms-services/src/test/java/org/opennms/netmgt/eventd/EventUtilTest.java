@@ -29,6 +29,12 @@
 package org.opennms.netmgt.eventd;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.HashMap;
+import java.util.Map;
 
 import org.junit.After;
 import org.junit.Before;
@@ -218,4 +224,61 @@ public class EventUtilTest {
         assertEquals("777", newString);
     }
 
+
+    /**
+     * Test that literal text and malformed tokens survive template compilation
+     */
+    @Test
+    public void testExpandParmsLiterals() {
+        assertNull(EventUtil.expandParms("no tokens here", m_svcLostEvent));
+        assertNull(EventUtil.expandParms("100% sure", m_svcLostEvent));
+        assertNull(EventUtil.expandParms("%not a token%", m_svcLostEvent));
+        assertEquals("192.168.1.1 is 100% down", EventUtil.expandParms("%interface% is 100% down", m_svcLostEvent));
+        assertEquals("SMTP%", EventUtil.expandParms("%service%%", m_svcLostEvent));
+        assertEquals("[]", EventUtil.expandParms("[%unknowntoken%]", m_svcLostEvent));
+    }
+
+    /**
+     * Test that a cached template expands against each event it is handed
+     */
+    @Test
+    public void testExpandParmsReusesTemplate() {
+        String testString = "%uei%:%nodeid%";
+        assertEquals(EventConstants.NODE_LOST_SERVICE_EVENT_UEI + ":1", EventUtil.expandParms(testString, m_svcLostEvent));
+        assertEquals("http://uei.opennms.org/standards/rfc1657/traps/bgpBackwardTransition:1", EventUtil.expandParms(testString, m_bgpBkTnEvent));
+    }
+
+    /**
+     * Test that decode maps are applied to the compiled tokens
+     */
+    @Test
+    public void testExpandParmsDecode() {
+        Map<String, Map<String, String>> decode = new HashMap<String, Map<String, String>>();
+        Map<String, String> services = new HashMap<String, String>();
+        services.put("SMTP", "mail");
+        decode.put("service", services);
+        assertEquals("mail(SMTP)", EventUtil.expandParms("%service%", m_svcLostEvent, decode));
+        assertEquals("SMTP", EventUtil.expandParms("%service%", m_svcLostEvent));
+    }
+
+    /**
+     * Test that the template cache keeps the templates in use once it is
+     * full, and drops the ones that are no longer used
+     */
+    @Test
+    public void testTemplateCacheEvictsLeastRecentlyUsed() {
+        final CompiledTemplate used = CompiledTemplate.getTemplate("used %uei%");
+        final CompiledTemplate unused = CompiledTemplate.getTemplate("unused %uei%");
+        for (int i = 0; i < CompiledTemplate.MAX_CACHED_TEMPLATES; i++) {
+            CompiledTemplate.getTemplate("one-off " + i + " %nodeid%");
+            if (i % 1000 == 0) {
+                assertSame(used, CompiledTemplate.getTemplate("used %uei%"));
+            }
+        }
+        assertSame(used, CompiledTemplate.getTemplate("used %uei%"));
+        assertNotSame(unused, CompiledTemplate.getTemplate("unused %uei%"));
+
+        final CompiledTemplate late = CompiledTemplate.getTemplate("late %uei%");
+        assertSame(late, CompiledTemplate.getTemplate("late %uei%"));
+    }
 }
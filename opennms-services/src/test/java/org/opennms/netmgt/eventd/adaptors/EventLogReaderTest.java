@@ -0,0 +1,230 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.eventd.adaptors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.Test;
+import org.opennms.core.xml.JaxbUtils;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.Log;
+
+public class EventLogReaderTest {
+
+    private static final String HEADER = "<header><ver>1.0</ver><created>Friday, 1 March 2013 12:00:00 o'clock GMT</created></header>";
+
+    private static String createEvent(final int n) {
+        return "<event uuid=\"" + n + "\">"
+            + "<uei>uei.opennms.org/test/event" + n + "</uei>"
+            + "<source>EventLogReaderTest</source>"
+            + "<host>localhost</host>"
+            + "<parms><parm><parmName>number</parmName><value type=\"int\" encoding=\"text\">" + n + "</value></parm>"
+            + "<parm><parmName>label</parmName><value type=\"string\" encoding=\"text\">event " + n + "</value></parm></parms>"
+            + "</event>";
+    }
+
+    private static String createLog(final String logElement, final int count) {
+        final StringBuilder xml = new StringBuilder(logElement).append(HEADER).append("<events>");
+        for (int n = 0; n < count; n++) {
+            xml.append(createEvent(n));
+        }
+        return xml.append("</events></log>").toString();
+    }
+
+    private static List<Event> readEvents(final String xml, final long maxSize) throws XMLStreamException {
+        final List<Event> events = new ArrayList<Event>();
+        final EventLogReader reader = new EventLogReader(new ByteArrayInputStream(xml.getBytes()), maxSize);
+        try {
+            Event event;
+            while ((event = reader.next()) != null) {
+                events.add(event);
+            }
+        } finally {
+            reader.close();
+        }
+        return events;
+    }
+
+    private static void assertSameEvents(final String xml) throws XMLStreamException {
+        final Event[] expected = JaxbUtils.unmarshal(Log.class, xml).getEvents().getEvent();
+        final List<Event> actual = readEvents(xml, 0);
+        assertEquals(expected.length, actual.size());
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(JaxbUtils.marshal(expected[i]), JaxbUtils.marshal(actual.get(i)));
+        }
+    }
+
+    @Test
+    public void testReadEvents() throws Exception {
+        final String xml = createLog("<log>", 3);
+        final List<Event> events = readEvents(xml, 0);
+
+        assertEquals(3, events.size());
+        for (int n = 0; n < 3; n++) {
+            final Event event = events.get(n);
+            assertEquals(String.valueOf(n), event.getUuid());
+            assertEquals("uei.opennms.org/test/event" + n, event.getUei());
+            assertEquals("EventLogReaderTest", event.getSource());
+            assertEquals(2, event.getParmCollection().size());
+            assertEquals("number", event.getParmCollection().get(0).getParmName());
+            assertEquals(String.valueOf(n), event.getParmCollection().get(0).getValue().getContent());
+            assertEquals("int", event.getParmCollection().get(0).getValue().getType());
+        }
+        assertSameEvents(xml);
+    }
+
+    @Test
+    public void testReadEventsInNamespace() throws Exception {
+        final String xml = createLog("<log xmlns=\"http://xmlns.opennms.org/xsd/event\">", 3);
+        assertEquals("uei.opennms.org/test/event2", readEvents(xml, 0).get(2).getUei());
+        assertSameEvents(xml);
+
+        final String prefixed = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<e:log xmlns:e=\"http://xmlns.opennms.org/xsd/event\"><e:events><e:event><e:uei>uei.opennms.org/test/prefixed</e:uei></e:event></e:events></e:log>";
+        assertEquals("uei.opennms.org/test/prefixed", readEvents(prefixed, 0).get(0).getUei());
+    }
+
+    @Test
+    public void testEmptyLog() throws Exception {
+        assertTrue(readEvents("<log/>", 0).isEmpty());
+        assertTrue(readEvents("<log>" + HEADER + "<events/></log>", 0).isEmpty());
+
+        final EventLogReader reader = new EventLogReader(new ByteArrayInputStream("<log><events></events></log>".getBytes()));
+        try {
+            assertNull(reader.next());
+            assertNull(reader.next());
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testMalformedLog() throws Exception {
+        final String xml = "<log><events>" + createEvent(0) + createEvent(1) + "<event><uei>uei.opennms.org/test/broken</event></events></log>";
+        final EventLogReader reader = new EventLogReader(new ByteArrayInputStream(xml.getBytes()));
+        try {
+            assertEquals("0", reader.next().getUuid());
+            assertEquals("1", reader.next().getUuid());
+            reader.next();
+            fail("the malformed event should not be read");
+        } catch (final XMLStreamException e) {
+            // expected
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testMaxSize() throws Exception {
+        final String xml = createLog("<log>", 1000);
+        assertEquals(1000, readEvents(xml, xml.length()).size());
+
+        final List<Event> events = new ArrayList<Event>();
+        final EventLogReader reader = new EventLogReader(new ByteArrayInputStream(xml.getBytes()), xml.length() / 2);
+        try {
+            Event event;
+            while ((event = reader.next()) != null) {
+                events.add(event);
+            }
+            fail("the event log is too large to be read");
+        } catch (final XMLStreamException e) {
+            // the events before the limit were read
+            assertTrue(events.size() > 0);
+            assertTrue(events.size() < 1000);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Each event is returned as soon as it has been received, while the
+     * rest of the log is still on its way.
+     */
+    @Test
+    public void testEventsBeforeEndOfLog() throws Exception {
+        final PipedOutputStream out = new PipedOutputStream();
+        final PipedInputStream in = new PipedInputStream(out, 65536);
+        final BlockingQueue<Object> read = new LinkedBlockingQueue<Object>();
+
+        final Thread reader = new Thread("EventLogReaderTest-reader") {
+            @Override
+            public void run() {
+                try {
+                    final EventLogReader eventReader = new EventLogReader(in);
+                    try {
+                        Event event;
+                        while ((event = eventReader.next()) != null) {
+                            read.add(event);
+                        }
+                    } finally {
+                        eventReader.close();
+                    }
+                    read.add("end");
+                } catch (final Throwable t) {
+                    read.add(t);
+                }
+            }
+        };
+        reader.start();
+
+        try {
+            out.write(("<log>" + HEADER + "<events>" + createEvent(0) + createEvent(1)).getBytes());
+            out.flush();
+
+            // the log isn't complete yet, but its first event can be read
+            final Object first = read.poll(10, TimeUnit.SECONDS);
+            assertTrue("expected the first event, got " + first, first instanceof Event);
+            assertEquals("0", ((Event) first).getUuid());
+
+            out.write((createEvent(2) + "</events></log>").getBytes());
+            out.close();
+
+            assertEquals("1", ((Event) read.poll(10, TimeUnit.SECONDS)).getUuid());
+            assertEquals("2", ((Event) read.poll(10, TimeUnit.SECONDS)).getUuid());
+            assertEquals("end", read.poll(10, TimeUnit.SECONDS));
+        } finally {
+            out.close();
+            reader.join(10000);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.eventd.adaptors.tcp;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.xml.JaxbUtils;
+import org.opennms.netmgt.eventd.UndeclaredEventException;
+import org.opennms.netmgt.eventd.adaptors.EventHandler;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.EventReceipt;
+
+public class TcpEventReceiverTest {
+
+    private TestEventHandler m_handler;
+    private TcpEventReceiver m_receiver;
+    private int m_port;
+
+    /**
+     * Records the events it is given.  It can reject some of them like a
+     * full eventd queue does, and refuse others.
+     */
+    private static class TestEventHandler implements EventHandler {
+        private final List<String> m_events = Collections.synchronizedList(new ArrayList<String>());
+        private final Set<String> m_refused = Collections.synchronizedSet(new HashSet<String>());
+        private volatile int m_rejections = 0;
+        private volatile int m_attempts = 0;
+
+        @Override
+        public boolean processEvent(final Event event) {
+            m_attempts++;
+            if (m_rejections > 0) {
+                m_rejections--;
+                throw new UndeclaredEventException(new RejectedExecutionException("the event queue is full"));
+            }
+            if (m_refused.contains(event.getUuid())) {
+                return false;
+            }
+            m_events.add(event.getUuid());
+            return true;
+        }
+
+        @Override
+        public void receiptSent(final EventReceipt receipt) {
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        final ServerSocket socket = new ServerSocket(0);
+        m_port = socket.getLocalPort();
+        socket.close();
+
+        m_handler = new TestEventHandler();
+        m_receiver = new TcpEventReceiver(m_port, "127.0.0.1");
+        m_receiver.addEventHandler(m_handler);
+        m_receiver.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        m_receiver.stop();
+    }
+
+    private static String createEvent(final int n) {
+        return "<event uuid=\"" + n + "\"><uei>uei.opennms.org/test/event" + n + "</uei><source>TcpEventReceiverTest</source></event>";
+    }
+
+    private static String createLog(final int count, final String trailer) {
+        final StringBuilder xml = new StringBuilder("<log><events>");
+        for (int n = 0; n < count; n++) {
+            xml.append(createEvent(n));
+        }
+        return xml.append(trailer).append("</events></log>").toString();
+    }
+
+    /**
+     * Sends the event log and returns the acknowledged uuids.
+     */
+    private List<String> send(final String xml) throws IOException {
+        final Socket socket = new Socket("127.0.0.1", m_port);
+        try {
+            socket.setSoTimeout(30000);
+            final OutputStream out = socket.getOutputStream();
+            out.write(xml.getBytes("UTF-8"));
+            out.flush();
+
+            final StringBuilder receipt = new StringBuilder();
+            final Reader in = new InputStreamReader(socket.getInputStream(), "UTF-8");
+            final char[] buffer = new char[1024];
+            int count;
+            while (receipt.indexOf("</event-receipt>") < 0 && (count = in.read(buffer)) != -1) {
+                receipt.append(buffer, 0, count);
+            }
+            return Arrays.asList(JaxbUtils.unmarshal(EventReceipt.class, receipt.toString()).getUuid());
+        } finally {
+            socket.close();
+        }
+    }
+
+    @Test
+    public void testReceipt() throws Exception {
+        assertEquals(Arrays.asList("0", "1", "2"), send(createLog(3, "")));
+        assertEquals(Arrays.asList("0", "1", "2"), m_handler.m_events);
+    }
+
+    @Test
+    public void testQueueFull() throws Exception {
+        // the events are handed over again until the queue takes them
+        m_handler.m_rejections = 3;
+        assertEquals(Arrays.asList("0", "1"), send(createLog(2, "")));
+        assertEquals(Arrays.asList("0", "1"), m_handler.m_events);
+        assertEquals(5, m_handler.m_attempts);
+    }
+
+    @Test
+    public void testRefusedEventNotAcknowledged() throws Exception {
+        m_handler.m_refused.add("1");
+        assertEquals(Arrays.asList("0", "2"), send(createLog(3, "")));
+    }
+
+    @Test
+    public void testPartialReceipt() throws Exception {
+        // the events read before the malformed one are still acknowledged
+        assertEquals(Arrays.asList("0", "1"), send(createLog(2, "<event uuid=\"2\"><uei>uei.opennms.org/test/broken</event>")));
+        assertEquals(Arrays.asList("0", "1"), m_handler.m_events);
+    }
+}
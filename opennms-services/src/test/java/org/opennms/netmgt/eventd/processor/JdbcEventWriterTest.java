@@ -29,14 +29,21 @@
 package org.opennms.netmgt.eventd.processor;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import org.opennms.core.test.db.PopulatedTemporaryDatabaseTestCase;
 import org.opennms.netmgt.EventConstants;
 import org.opennms.netmgt.eventd.JdbcEventdServiceManager;
 import org.opennms.netmgt.model.events.EventBuilder;
+import org.opennms.netmgt.model.events.EventProcessor;
 import org.opennms.netmgt.snmp.SnmpUtils;
 import org.opennms.netmgt.snmp.SnmpValue;
 import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.Header;
 
 /**
  * This class tests some of the quirky behaviors of presisting events.
@@ -214,4 +221,106 @@ public class JdbcEventWriterTest extends PopulatedTemporaryDatabaseTestCase {
         assertEquals("event count", 1, getJdbcTemplate().queryForInt("select count(*) from events"));
         assertEquals("event service ID", serviceId, getJdbcTemplate().queryForInt("select serviceID from events"));
     }
+
+    /**
+     * Callers don't wait for their events to be written, so two receiver
+     * threads fill batches of ten, and the after-write processors only see
+     * events whose rows have been committed.
+     */
+    public void testBatchedWrites() throws Exception {
+        final int receivers = 2;
+        final int eventsPerReceiver = 20;
+        final CountDownLatch written = new CountDownLatch(receivers * eventsPerReceiver);
+        final List<Event> committed = Collections.synchronizedList(new ArrayList<Event>());
+
+        final JdbcEventWriter batchingWriter = new JdbcEventWriter();
+        batchingWriter.setEventdServiceManager(m_jdbcEventWriter.getEventdServiceManager());
+        batchingWriter.setDataSource(getDataSource());
+        batchingWriter.setGetNextIdString("SELECT nextval('eventsNxtId')");
+        batchingWriter.setBatchSize(10);
+        batchingWriter.setBatchMaxLinger(500);
+        batchingWriter.setWriterThreads(1);
+        batchingWriter.setAfterWriteProcessors(Collections.<EventProcessor>singletonList(new EventProcessor() {
+            @Override
+            public void process(final Header eventHeader, final Event event) {
+                if (getJdbcTemplate().queryForInt("select count(*) from events where eventId = ?", event.getDbid()) == 1) {
+                    committed.add(event);
+                }
+                written.countDown();
+            }
+        }));
+        batchingWriter.afterPropertiesSet();
+
+        try {
+            final List<Event> events = Collections.synchronizedList(new ArrayList<Event>());
+            final List<Thread> senders = new ArrayList<Thread>();
+            for (int r = 0; r < receivers; r++) {
+                final int receiver = r;
+                senders.add(new Thread() {
+                    @Override
+                    public void run() {
+                        for (int i = 0; i < eventsPerReceiver; i++) {
+                            final EventBuilder builder = new EventBuilder("uei.opennms.org/batch/" + receiver + "/" + i, "someSource");
+                            builder.setLogDest("logndisplay");
+                            builder.setLogMessage("batched event " + i);
+                            final Event event = builder.getEvent();
+                            events.add(event);
+                            try {
+                                batchingWriter.process(null, event);
+                            } catch (final Exception e) {
+                                throw new RuntimeException(e);
+                            }
+                        }
+                    }
+                });
+            }
+
+            for (final Thread sender : senders) {
+                sender.start();
+            }
+            for (final Thread sender : senders) {
+                sender.join();
+            }
+
+            assertTrue("all events should be written", written.await(30, TimeUnit.SECONDS));
+            assertEquals("event count", 40, getJdbcTemplate().queryForInt("select count(*) from events"));
+            assertEquals("events committed before the after-write processors saw them", 40, committed.size());
+            for (final Event event : events) {
+                assertTrue("event should have been assigned a database ID", event.hasDbid());
+                assertEquals("row for event " + event.getDbid(), event.getUei(), getJdbcTemplate().queryForObject("select eventUei from events where eventId = ?", String.class, event.getDbid()));
+            }
+            assertEquals(40, batchingWriter.getBatchedEventsWritten());
+            assertTrue("batches of " + batchingWriter.getAverageBatchSize() + " events on average", batchingWriter.getAverageBatchSize() > receivers);
+            assertEquals(0, batchingWriter.getBatchFailures());
+        } finally {
+            batchingWriter.destroy();
+        }
+    }
+
+    /**
+     * Without batching the after-write processors run in the calling thread,
+     * also for events that are not persisted.
+     */
+    public void testAfterWriteProcessors() throws Exception {
+        final List<Event> processed = new ArrayList<Event>();
+        m_jdbcEventWriter.setAfterWriteProcessors(Collections.<EventProcessor>singletonList(new EventProcessor() {
+            @Override
+            public void process(final Header eventHeader, final Event event) {
+                processed.add(event);
+            }
+        }));
+
+        final EventBuilder builder = new EventBuilder("uei.opennms.org/foo", "someSource");
+        builder.setLogDest("logndisplay");
+        builder.setLogMessage("written");
+        m_jdbcEventWriter.process(null, builder.getEvent());
+
+        final EventBuilder notPersisted = new EventBuilder("uei.opennms.org/bar", "someSource");
+        notPersisted.setLogDest("donotpersist");
+        notPersisted.setLogMessage("not written");
+        m_jdbcEventWriter.process(null, notPersisted.getEvent());
+
+        assertEquals(2, processed.size());
+        assertEquals("event count", 1, getJdbcTemplate().queryForInt("select count(*) from events"));
+    }
 }
@@ -0,0 +1,196 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.netmgt.filter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opennms.core.spring.BeanUtils;
+import org.opennms.core.test.OpenNMSJUnit4ClassRunner;
+import org.opennms.core.test.db.annotations.JUnitTemporaryDatabase;
+import org.opennms.netmgt.EventConstants;
+import org.opennms.netmgt.config.DatabaseSchemaConfigFactory;
+import org.opennms.netmgt.dao.DatabasePopulator;
+import org.opennms.netmgt.dao.api.IpInterfaceDao;
+import org.opennms.netmgt.dao.api.NodeDao;
+import org.opennms.netmgt.dao.mock.MockEventIpcManager;
+import org.opennms.netmgt.model.OnmsIpInterface;
+import org.opennms.netmgt.model.OnmsNode;
+import org.opennms.netmgt.model.events.EventBuilder;
+import org.opennms.test.JUnitConfigurationEnvironment;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Tests evaluating filter rules in memory with a {@link JdbcFilterDao} that
+ * is subscribed to events, as it is in the daemon process.
+ */
+@RunWith(OpenNMSJUnit4ClassRunner.class)
+@ContextConfiguration(locations={
+        "classpath:/META-INF/opennms/applicationContext-soa.xml",
+        "classpath:/META-INF/opennms/applicationContext-dao.xml",
+        "classpath:/META-INF/opennms/applicationContext-databasePopulator.xml",
+        "classpath:/META-INF/opennms/applicationContext-setupIpLike-enabled.xml",
+        "classpath*:/META-INF/opennms/component-dao.xml",
+        "classpath:/META-INF/opennms/applicationContext-minimal-conf.xml"
+})
+@JUnitConfigurationEnvironment
+@JUnitTemporaryDatabase
+public class JdbcFilterDaoSnapshotTest implements InitializingBean {
+    @Autowired
+    private NodeDao m_nodeDao;
+
+    @Autowired
+    private IpInterfaceDao m_interfaceDao;
+
+    @Autowired
+    private DatabasePopulator m_populator;
+
+    @Autowired
+    private TransactionTemplate m_transTemplate;
+
+    @Autowired
+    private DataSource m_dataSource;
+
+    private MockEventIpcManager m_eventIpcManager;
+
+    private JdbcFilterDao m_dao;
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        BeanUtils.assertAutowiring(this);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        m_populator.populateDatabase();
+
+        System.setProperty("opennms.home", "src/test/resources");
+        DatabaseSchemaConfigFactory.init();
+
+        m_eventIpcManager = new MockEventIpcManager();
+
+        m_dao = createDao();
+        m_dao.setEventSubscriptionService(m_eventIpcManager);
+    }
+
+    private JdbcFilterDao createDao() {
+        final JdbcFilterDao dao = new JdbcFilterDao();
+        dao.setDataSource(m_dataSource);
+        dao.setDatabaseSchemaConfigFactory(DatabaseSchemaConfigFactory.getInstance());
+        dao.afterPropertiesSet();
+        return dao;
+    }
+
+    /**
+     * Compares evaluating rules in memory with evaluating them in the
+     * database.
+     */
+    @Test
+    public void testInMemoryEvaluation() throws Exception {
+        final JdbcFilterDao databaseDao = createDao();
+
+        final String[] rules = {
+                "IPADDR != '0.0.0.0'",
+                "ipaddr IPLIKE 192.168.*.*",
+                "isICMP",
+                "isSNMP & !isHTTP",
+                "notisICMP",
+                "catincIMP_mid | catincDEV_AC",
+                "categoryName IS NULL",
+                "nodeLabel LIKE 'node%' & nodeId > 1",
+                "ipHostname IS NOT NULL | foreignSource = 'imported:'"
+        };
+        final List<String> addresses = new ArrayList<String>();
+        for (final OnmsIpInterface iface : m_interfaceDao.findAll()) {
+            addresses.add(iface.getIpAddressAsString());
+        }
+        addresses.add("10.255.255.255");
+
+        for (final String rule : rules) {
+            assertEquals(rule, databaseDao.isRuleMatching(rule), m_dao.isRuleMatching(rule));
+            assertEquals(rule, new HashSet<InetAddress>(databaseDao.getActiveIPAddressList(rule)), new HashSet<InetAddress>(m_dao.getActiveIPAddressList(rule)));
+            assertEquals(rule, new HashSet<InetAddress>(databaseDao.getIPAddressList(rule)), new HashSet<InetAddress>(m_dao.getIPAddressList(rule)));
+            for (final String address : addresses) {
+                assertEquals(rule + " for " + address, databaseDao.isValid(address, rule), m_dao.isValid(address, rule));
+            }
+        }
+
+        for (final OnmsIpInterface iface : m_interfaceDao.findAll()) {
+            final String rule = "((IPADDR != '0.0.0.0') & (nodeId == " + iface.getNode().getId() + ") & (ipAddr == '" + iface.getIpAddressAsString() + "') & (serviceName == 'ICMP'))";
+            assertEquals(rule, databaseDao.isRuleMatching(rule), m_dao.isRuleMatching(rule));
+        }
+    }
+
+    /**
+     * Flushing the address list cache or an event the DAO isn't subscribed
+     * to leaves the snapshot alone, an event that changes a node marks it as
+     * out of date.
+     */
+    @Test
+    @JUnitTemporaryDatabase // This test manages its own transactions so use a fresh database
+    public void testSnapshotFollowsEvents() throws Exception {
+        final String rule = "nodeLabel == 'renamed'";
+        assertTrue(m_dao.getActiveIPAddressList(rule).isEmpty());
+
+        m_transTemplate.execute(new TransactionCallbackWithoutResult() {
+            @Override
+            public void doInTransactionWithoutResult(TransactionStatus status) {
+                final OnmsNode node = m_populator.getNode1();
+                node.setLabel("renamed");
+                m_nodeDao.update(node);
+                m_nodeDao.flush();
+            }
+        });
+
+        m_dao.flushActiveIpAddressListCache();
+        assertTrue("the snapshot is only marked out of date by events", m_dao.getActiveIPAddressList(rule).isEmpty());
+
+        m_eventIpcManager.broadcastNow(new EventBuilder(EventConstants.NODE_DOWN_EVENT_UEI, "test").setNodeid(m_populator.getNode1().getId()).getEvent());
+        assertTrue("the DAO isn't subscribed to node down events", m_dao.getActiveIPAddressList(rule).isEmpty());
+
+        m_eventIpcManager.broadcastNow(new EventBuilder(EventConstants.NODE_LABEL_CHANGED_EVENT_UEI, "test").setNodeid(m_populator.getNode1().getId()).getEvent());
+        assertFalse(m_dao.getActiveIPAddressList(rule).isEmpty());
+        assertTrue(m_dao.isRuleMatching(rule));
+    }
+}
@@ -0,0 +1,185 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.linkd;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+import org.opennms.core.utils.InetAddressUtils;
+
+public class TopologyIndexTest {
+
+    private static LinkableNode createBridge(final int nodeId, final String... identifiers) {
+        final LinkableNode bridge = new LinkableNode(new LinkableSnmpNode(nodeId, InetAddressUtils.addr("10.0.0." + nodeId), ".1.3.6.1.4.1.9", "bridge" + nodeId), "example1");
+        for (final String identifier : identifiers) {
+            bridge.addBridgeIdentifier(identifier);
+        }
+        return bridge;
+    }
+
+    private static Set<String> macs(final String... macs) {
+        return new HashSet<String>(Arrays.asList(macs));
+    }
+
+    @Test
+    public void testToMacAddress() {
+        assertEquals(0x0016b6e0a2c1L, TopologyIndex.toMacAddress("0016b6e0a2c1"));
+        assertEquals(0xffffffffffffL, TopologyIndex.toMacAddress("ffffffffffff"));
+        assertEquals(0L, TopologyIndex.toMacAddress("000000000000"));
+        assertEquals(-1L, TopologyIndex.toMacAddress("0016B6E0A2C1"));
+        assertEquals(-1L, TopologyIndex.toMacAddress("0016b6e0a2c"));
+        assertEquals(-1L, TopologyIndex.toMacAddress("00:16:b6:e0:a2:c1"));
+        assertEquals(-1L, TopologyIndex.toMacAddress(null));
+    }
+
+    @Test
+    public void testBridgeIdentifiers() {
+        final LinkableNode bridge1 = createBridge(1, "000000000001");
+        final LinkableNode bridge2 = createBridge(2, "000000000002", "000000000022");
+        final LinkableNode bridge3 = createBridge(3, "not-a-mac");
+        final TopologyIndex index = new TopologyIndex(Arrays.asList(bridge1, bridge2, bridge3), Collections.<String, List<AtInterface>>emptyMap());
+
+        assertTrue(index.isBridgeIdentifier("000000000022"));
+        assertTrue(index.isBridgeIdentifier("not-a-mac"));
+        assertFalse(index.isBridgeIdentifier("000000000003"));
+        assertFalse(index.isBridgeIdentifier("NOT-A-MAC"));
+
+        assertSame(bridge2, index.getBridgeFromIdentifier("000000000002"));
+        assertSame(bridge3, index.getBridgeFromIdentifier("not-a-mac"));
+        assertNull(index.getBridgeFromIdentifier("000000000003"));
+
+        // in bridge order, once for each identifier on the port
+        assertEquals(Arrays.asList(bridge1, bridge2, bridge2, bridge3), index.getBridgesFromMacs(macs("not-a-mac", "000000000022", "0000000000ff", "000000000001", "000000000002")));
+        assertEquals(Collections.emptyList(), index.getBridgesFromMacs(macs("0000000000ff", "something-else")));
+    }
+
+    @Test
+    public void testForwardingTables() {
+        final Random random = new Random(4005);
+        final List<LinkableNode> bridges = new ArrayList<LinkableNode>();
+        for (int nodeId = 1; nodeId <= 20; nodeId++) {
+            final LinkableNode bridge = createBridge(nodeId, String.format("0000000000%02x", nodeId));
+            for (int i = 0; i < 200; i++) {
+                bridge.addMacAddress(random.nextInt(24) + 1, String.format("00000000%04x", random.nextInt(300)), 1);
+            }
+            bridges.add(bridge);
+        }
+        final LinkableNode other = createBridge(100, "000000000100");
+        other.addMacAddress(1, "000000000001", 1);
+
+        final TopologyIndex index = new TopologyIndex(bridges, Collections.<String, List<AtInterface>>emptyMap());
+        for (final LinkableNode bridge : bridges) {
+            for (int i = 0; i < 320; i++) {
+                final String mac = String.format("00000000%04x", i);
+                assertEquals(bridge.hasMacAddress(mac), index.hasMacAddress(bridge, mac));
+                assertEquals(bridge.getBridgePortsFromMac(mac), index.getBridgePortsFromMac(bridge, mac));
+            }
+        }
+        for (final LinkableNode bridge : bridges) {
+            for (int port = 1; port <= 25; port++) {
+                final Set<String> identifiers = new HashSet<String>();
+                if (bridge.getMacAddressesOnBridgePort(port) != null) {
+                    for (final String mac : bridge.getMacAddressesOnBridgePort(port)) {
+                        if (index.isBridgeIdentifier(mac)) {
+                            identifiers.add(mac);
+                        }
+                    }
+                }
+                assertEquals(identifiers, new HashSet<String>(index.getBridgeIdentifiersOnPort(bridge, port)));
+            }
+        }
+
+        // nodes that are not indexed are looked up on the node
+        assertTrue(index.hasMacAddress(other, "000000000001"));
+        assertEquals(Arrays.asList(1), index.getBridgePortsFromMac(other, "000000000001"));
+        assertEquals(Arrays.asList("000000000001"), index.getBridgeIdentifiersOnPort(other, 1));
+    }
+
+    @Test
+    public void testAtInterfaces() throws Exception {
+        final AtInterface at1 = new AtInterface(1, "000000000001", InetAddress.getByName("10.1.1.1"));
+        final AtInterface at2 = new AtInterface(2, "000000000001", InetAddress.getByName("10.1.1.2"));
+        final AtInterface at3 = new AtInterface(3, "000000000003", InetAddress.getByName("10.1.1.3"));
+        final Map<String, List<AtInterface>> atInterfaces = new LinkedHashMap<String, List<AtInterface>>();
+        atInterfaces.put("000000000001", Arrays.asList(at1, at2));
+        atInterfaces.put("000000000003", Arrays.asList(at3));
+
+        final TopologyIndex index = new TopologyIndex(Collections.<LinkableNode>emptyList(), atInterfaces);
+        assertEquals(Arrays.asList(at1, at2), index.getAtInterfaces("000000000001"));
+        assertEquals(Arrays.asList(at3), index.getAtInterfaces("000000000003"));
+        assertEquals(Collections.emptyList(), index.getAtInterfaces("000000000002"));
+        assertEquals(Collections.emptyList(), index.getAtInterfaces("unknown"));
+        assertEquals(atInterfaces.keySet(), index.getMacAddresses());
+    }
+
+    @Test
+    public void testLongIntMultimap() {
+        final TopologyIndex.LongIntMultimap map = new TopologyIndex.LongIntMultimap(0);
+        final Map<Long, List<Integer>> expected = new HashMap<Long, List<Integer>>();
+        final Random random = new Random(17216);
+        for (int i = 0; i < 50000; i++) {
+            final long key = random.nextInt(10000) * 0x10000000001L;
+            map.put(key, i);
+            if (!expected.containsKey(key)) {
+                expected.put(key, new ArrayList<Integer>());
+            }
+            expected.get(key).add(i);
+        }
+
+        assertEquals(expected.size(), map.size());
+        for (final Map.Entry<Long, List<Integer>> entry : expected.entrySet()) {
+            assertTrue(map.containsKey(entry.getKey()));
+            final int[] values = new int[entry.getValue().size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = entry.getValue().get(i);
+            }
+            assertArrayEquals(values, map.get(entry.getKey()));
+        }
+        assertFalse(map.containsKey(-1L));
+        assertEquals(0, map.get(-1L).length);
+    }
+}
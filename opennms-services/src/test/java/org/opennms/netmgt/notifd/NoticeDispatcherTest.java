@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.netmgt.notifd;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.opennms.netmgt.config.users.User;
+
+public class NoticeDispatcherTest extends TestCase {
+
+    private NoticeDispatcher m_dispatcher;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        m_dispatcher = new NoticeDispatcher();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        m_dispatcher.stop();
+        super.tearDown();
+    }
+
+    private Runnable countingSend(final AtomicInteger count, final CountDownLatch latch) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                count.incrementAndGet();
+                latch.countDown();
+            }
+        };
+    }
+
+    public void testSend() throws Exception {
+        final AtomicInteger sent = new AtomicInteger();
+        final CountDownLatch latch = new CountDownLatch(2);
+        m_dispatcher.send("email", countingSend(sent, latch));
+        m_dispatcher.send("page", countingSend(sent, latch));
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertEquals(2, sent.get());
+        assertEquals(0, m_dispatcher.getDropped());
+    }
+
+    public void testDropAfterStop() throws Exception {
+        final AtomicInteger sent = new AtomicInteger();
+        final CountDownLatch latch = new CountDownLatch(1);
+        m_dispatcher.send("email", countingSend(sent, latch));
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+
+        m_dispatcher.stop();
+
+        // a known command, a command first seen after stop() and a task
+        m_dispatcher.send("email", countingSend(sent, latch));
+        m_dispatcher.send("page", countingSend(sent, latch));
+
+        final User user = new User();
+        user.setUserId("admin");
+        final NotificationTask task = new NotificationTask(null, null, System.currentTimeMillis(), Collections.<String, String>emptyMap(), null, null);
+        task.setUser(user);
+        m_dispatcher.dispatch(task);
+
+        assertEquals(1, sent.get());
+        assertEquals(3, m_dispatcher.getDropped());
+        assertEquals(0, m_dispatcher.getDispatched());
+    }
+}
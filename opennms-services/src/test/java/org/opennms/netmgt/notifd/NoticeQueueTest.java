@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.notifd;
+
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class NoticeQueueTest extends TestCase {
+
+    private NoticeQueue m_queue;
+    private long m_now;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        // a small wheel, so that the tasks below wrap around it
+        m_queue = new NoticeQueue(10, 8);
+        m_now = System.currentTimeMillis();
+    }
+
+    private NotificationTask queueTask(final int notifyId, final long sendTime) {
+        final NotificationTask task = new NotificationTask(null, null, sendTime, Collections.<String, String>emptyMap(), null, null);
+        task.setNoticeId(notifyId);
+        assertNull(m_queue.putItem(sendTime, task));
+        return task;
+    }
+
+    public void testExpireInSendTimeOrder() {
+        final NotificationTask later = queueTask(1, m_now + 25);
+        final NotificationTask first = queueTask(2, m_now + 5);
+        final NotificationTask past = queueTask(3, m_now - 1000);
+        assertEquals(3, m_queue.size());
+
+        final List<NotificationTask> expired = m_queue.expire(m_now + 30);
+        assertEquals(3, expired.size());
+        assertSame(past, expired.get(0));
+        assertSame(first, expired.get(1));
+        assertSame(later, expired.get(2));
+        assertTrue(m_queue.isEmpty());
+    }
+
+    public void testExpireOnlyDueTasks() {
+        final NotificationTask due = queueTask(1, m_now + 10);
+        // one full turn of the wheel later, in the same bucket
+        final NotificationTask next = queueTask(2, m_now + 90);
+
+        assertTrue(m_queue.expire(m_now + 10).isEmpty());
+
+        List<NotificationTask> expired = m_queue.expire(m_now + 11);
+        assertEquals(1, expired.size());
+        assertSame(due, expired.get(0));
+        assertEquals(1, m_queue.size());
+
+        // a task for the tick that is being expired is not lost
+        final NotificationTask now = queueTask(3, m_now + 11);
+        expired = m_queue.expire(m_now + 12);
+        assertEquals(1, expired.size());
+        assertSame(now, expired.get(0));
+
+        // skipping many turns of the wheel at once
+        expired = m_queue.expire(m_now + 10000);
+        assertEquals(1, expired.size());
+        assertSame(next, expired.get(0));
+        assertTrue(m_queue.isEmpty());
+    }
+
+    public void testDuplicateTask() {
+        final NotificationTask task = queueTask(1, m_now);
+        assertSame(task, m_queue.putItem(m_now, task));
+        assertEquals(1, m_queue.size());
+    }
+
+    public void testCancel() {
+        queueTask(1, m_now + 20);
+        queueTask(1, m_now + 200);
+        final NotificationTask other = queueTask(2, m_now + 20);
+        final NotificationTask resolution = queueTask(-1, m_now + 20);
+
+        assertEquals(2, m_queue.cancel(1));
+        assertEquals(0, m_queue.cancel(1));
+        assertEquals(0, m_queue.cancel(-1));
+        assertEquals(2, m_queue.size());
+        assertEquals(2, m_queue.getCancelled());
+
+        final List<NotificationTask> expired = m_queue.expire(m_now + 1000);
+        assertEquals(2, expired.size());
+        assertTrue(expired.contains(other));
+        assertTrue(expired.contains(resolution));
+        assertTrue(m_queue.isEmpty());
+    }
+}
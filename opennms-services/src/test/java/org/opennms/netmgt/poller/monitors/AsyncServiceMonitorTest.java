@@ -0,0 +1,332 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.poller.monitors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.netmgt.poller.AsyncServiceMonitor;
+import org.opennms.netmgt.poller.PollFuture;
+import org.opennms.netmgt.poller.PollStatus;
+import org.opennms.netmgt.poller.mock.MockMonitoredService;
+import org.opennms.netmgt.poller.monitors.support.AsyncPollEngine;
+
+/**
+ * Polls the asynchronous monitors against a local server that plays a
+ * script for each connection: lines starting with "> " are sent (a lone ">"
+ * sends an empty line), lines starting with "< " are read, "<<" reads up to
+ * the next empty line, "pause" waits 10ms and "sleep" keeps the connection
+ * open without answering.
+ */
+public class AsyncServiceMonitorTest {
+    private static final int TIMEOUT = 2000;
+
+    private final InetAddress m_localhost = InetAddressUtils.addr("127.0.0.1");
+    private ServerSocket m_serverSocket;
+    private ExecutorService m_executor;
+    private Thread m_serverThread;
+    private volatile String[] m_script;
+
+    @Before
+    public void setUp() throws Exception {
+        m_serverSocket = new ServerSocket(0, 1000, m_localhost);
+        m_executor = Executors.newCachedThreadPool();
+        m_serverThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        final Socket socket = m_serverSocket.accept();
+                        final String[] script = m_script;
+                        m_executor.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                play(socket, script);
+                            }
+                        });
+                    }
+                } catch (IOException e) {
+                    // closed by tearDown
+                }
+            }
+        }, "AsyncServiceMonitorTest-server");
+        m_serverThread.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        m_serverSocket.close();
+        m_serverThread.join(1500);
+        m_executor.shutdownNow();
+    }
+
+    private static void play(final Socket socket, final String[] script) {
+        try {
+            final BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "US-ASCII"));
+            final OutputStream out = socket.getOutputStream();
+            for (final String step : script) {
+                if (step.startsWith(">")) {
+                    out.write((step.substring(Math.min(2, step.length())) + "\r\n").getBytes("US-ASCII"));
+                    out.flush();
+                } else if (step.equals("<<")) {
+                    String line;
+                    do {
+                        line = reader.readLine();
+                    } while (line != null && line.length() > 0);
+                } else if (step.startsWith("< ")) {
+                    final String line = reader.readLine();
+                    if (line == null || !line.startsWith(step.substring(2))) {
+                        break;
+                    }
+                } else if (step.equals("pause")) {
+                    Thread.sleep(10);
+                } else if (step.equals("sleep")) {
+                    Thread.sleep(TIMEOUT * 2);
+                }
+            }
+        } catch (Throwable e) {
+            // the poll gave up on the connection
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    private PollStatus poll(final AsyncServiceMonitor monitor, final String svcName, final Map<String,Object> extraParameters) throws Exception {
+        final PollFuture future = monitor.pollAsync(new MockMonitoredService(1, "Node One", m_localhost, svcName), parameters(extraParameters));
+        future.awaitFor();
+        return future.getPollStatus();
+    }
+
+    private Map<String,Object> parameters(final Map<String,Object> extraParameters) {
+        final Map<String,Object> parameters = new HashMap<String,Object>();
+        parameters.put("port", m_serverSocket.getLocalPort());
+        parameters.put("retry", 0);
+        parameters.put("timeout", TIMEOUT);
+        if (extraParameters != null) {
+            parameters.putAll(extraParameters);
+        }
+        return parameters;
+    }
+
+    private static Map<String,Object> parameter(final String key, final Object value) {
+        final Map<String,Object> parameters = new HashMap<String,Object>();
+        parameters.put(key, value);
+        return parameters;
+    }
+
+    @Test
+    public void testTcp() throws Exception {
+        m_script = new String[] { "> SSH-2.0-OpenSSH_5.9" };
+        PollStatus status = poll(new TcpMonitor(), "TCP", parameter("banner", "SSH"));
+        assertTrue("status should be available (Up), but is: " + status, status.isAvailable());
+        assertTrue(status.getResponseTime() != null);
+
+        status = poll(new TcpMonitor(), "TCP", parameter("banner", "~^SSH-1\\..*"));
+        assertTrue("status should be unavailable (Down), but is: " + status, status.isUnavailable());
+
+        // without a banner, connecting is enough
+        m_script = new String[0];
+        status = poll(new TcpMonitor(), "TCP", null);
+        assertTrue("status should be available (Up), but is: " + status, status.isAvailable());
+    }
+
+    @Test
+    public void testPop3() throws Exception {
+        m_script = new String[] { "> +OK POP3 server ready", "< QUIT", "> +OK bye" };
+        PollStatus status = poll(new Pop3Monitor(), "POP3", null);
+        assertTrue("status should be available (Up), but is: " + status, status.isAvailable());
+
+        m_script = new String[] { "> -ERR go away" };
+        status = poll(new Pop3Monitor(), "POP3", null);
+        assertTrue("status should be unavailable (Down), but is: " + status, status.isUnavailable());
+    }
+
+    @Test
+    public void testImap() throws Exception {
+        m_script = new String[] { "> * OK IMAP4rev1 ready", "< ONMSPOLLER LOGOUT", "> * BYE logging out", "> ONMSPOLLER OK LOGOUT completed" };
+        PollStatus status = poll(new ImapMonitor(), "IMAP", null);
+        assertTrue("status should be available (Up), but is: " + status, status.isAvailable());
+
+        // the server hangs up instead of answering the LOGOUT
+        m_script = new String[] { "> * OK IMAP4rev1 ready", "< ONMSPOLLER LOGOUT" };
+        status = poll(new ImapMonitor(), "IMAP", null);
+        assertTrue("status should be unavailable (Down), but is: " + status, status.isUnavailable());
+    }
+
+    @Test
+    public void testSmtp() throws Exception {
+        m_script = new String[] { "> 220-mail.example.com ESMTP", "> 220 ready", "< HELO ", "> 250-mail.example.com", "> 250 PIPELINING", "< QUIT", "> 221 bye" };
+        PollStatus status = poll(new SmtpMonitor(), "SMTP", null);
+        assertTrue("status should be available (Up), but is: " + status, status.isAvailable());
+
+        m_script = new String[] { "> 554 no service" };
+        status = poll(new SmtpMonitor(), "SMTP", null);
+        assertTrue("status should be unavailable (Down), but is: " + status, status.isUnavailable());
+    }
+
+    @Test
+    public void testFtp() throws Exception {
+        m_script = new String[] { "> 220-Welcome", "> 220 Hello!!!", "< QUIT", "> 221 See ya" };
+        PollStatus status = poll(new FtpMonitor(), "FTP", null);
+        assertTrue("status should be available (Up), but is: " + status, status.isAvailable());
+
+        m_script = new String[] { "> Go away!" };
+        status = poll(new FtpMonitor(), "FTP", null);
+        assertTrue("status should be unavailable (Down), but is: " + status, status.isUnavailable());
+    }
+
+    @Test
+    public void testHttp() throws Exception {
+        m_script = new String[] { "<<", "> HTTP/1.1 200 OK", "> Content-Type: text/plain", ">", "> Hello OpenNMS" };
+        PollStatus status = poll(new HttpMonitor(), "HTTP", null);
+        assertTrue("status should be available (Up), but is: " + status, status.isAvailable());
+
+        status = poll(new HttpMonitor(), "HTTP", parameter("response-text", "~.*OpenNMS.*"));
+        assertTrue("status should be available (Up), but is: " + status, status.isAvailable());
+
+        status = poll(new HttpMonitor(), "HTTP", parameter("response-text", "Goodbye"));
+        assertTrue("status should be unavailable (Down), but is: " + status, status.isUnavailable());
+
+        m_script = new String[] { "<<", "> HTTP/1.1 500 Internal Server Error", ">" };
+        status = poll(new HttpMonitor(), "HTTP", null);
+        assertTrue("status should be unavailable (Down), but is: " + status, status.isUnavailable());
+    }
+
+    /**
+     * A line longer than the engine buffers is cut off rather than held in
+     * full; the start of it is still what the monitor sees.
+     */
+    @Test
+    public void testLongLine() throws Exception {
+        final StringBuilder banner = new StringBuilder("> SSH-2.0-");
+        for (int i = 0; i < 100000; i++) {
+            banner.append('x');
+        }
+        m_script = new String[] { banner.toString() };
+        PollStatus status = poll(new TcpMonitor(), "TCP", parameter("banner", "~^SSH-2\\.0-x*$"));
+        assertTrue("status should be available (Up), but is: " + status, status.isAvailable());
+
+        m_script = new String[] { "<<", "> HTTP/1.1 200 OK", ">", "> " + banner.substring(2) + "OpenNMS" };
+        status = poll(new HttpMonitor(), "HTTP", parameter("response-text", "~.*OpenNMS.*"));
+        assertTrue("status should be unavailable (Down), but is: " + status, status.isUnavailable());
+    }
+
+    @Test
+    public void testClosedPort() throws Exception {
+        m_script = new String[0];
+        m_serverSocket.close();
+        m_serverThread.join(1500);
+
+        PollStatus status = poll(new TcpMonitor(), "TCP", null);
+        assertTrue("status should be unavailable (Down), but is: " + status, status.isUnavailable());
+        status = poll(new HttpMonitor(), "HTTP", null);
+        assertTrue("status should be unavailable (Down), but is: " + status, status.isUnavailable());
+    }
+
+    @Test
+    public void testNoResponse() throws Exception {
+        m_script = new String[] { "sleep" };
+        final long start = System.currentTimeMillis();
+        final PollStatus status = poll(new Pop3Monitor(), "POP3", null);
+        assertTrue("status should be unavailable (Down), but is: " + status, status.isUnavailable());
+        assertTrue("the poll should time out after " + TIMEOUT + "ms", System.currentTimeMillis() - start < TIMEOUT * 2);
+    }
+
+    /**
+     * Starts many polls at once; the server pauses before each answer, as a
+     * remote server would, so they are all in flight together.
+     */
+    @Test
+    public void testManyPolls() throws Exception {
+        final int count = 200;
+        m_script = new String[] { "pause", "> +OK POP3 server ready", "< QUIT", "pause", "> +OK bye" };
+        final Pop3Monitor monitor = new Pop3Monitor();
+
+        final List<PollFuture> futures = new ArrayList<PollFuture>(count);
+        for (int i = 0; i < count; i++) {
+            futures.add(monitor.pollAsync(new MockMonitoredService(i, "Node " + i, m_localhost, "POP3"), parameters(null)));
+        }
+        int available = 0;
+        for (final PollFuture future : futures) {
+            future.awaitFor();
+            if (future.getPollStatus().isAvailable()) {
+                available++;
+            }
+        }
+        assertEquals(count, available);
+    }
+
+    /**
+     * The HTTPS monitor wraps the socket, so it leaves the poll to the
+     * synchronous path instead of blocking in pollAsync.
+     */
+    @Test
+    public void testHttpsPollsSynchronously() throws Exception {
+        m_script = new String[0];
+        assertNull(new HttpsMonitor().pollAsync(new MockMonitoredService(1, "Node One", m_localhost, "HTTPS"), parameters(null)));
+    }
+
+    @Test
+    public void testShutdownEngine() throws Exception {
+        final AsyncPollEngine engine = AsyncPollEngine.getInstance();
+        AsyncPollEngine.shutdownInstance();
+        final PollFuture future = engine.poll(m_localhost, new int[] { m_serverSocket.getLocalPort() }, parameters(null), 0, TIMEOUT, null);
+        assertTrue("a stopped engine doesn't poll, but the status is " + future.getPollStatus(), future.getPollStatus().isUnknown());
+
+        // the monitors start a new engine
+        assertNotSame(engine, AsyncPollEngine.getInstance());
+        m_script = new String[] { "> +OK POP3 server ready", "< QUIT", "> +OK bye" };
+        assertTrue(poll(new Pop3Monitor(), "POP3", null).isAvailable());
+    }
+}
@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.rtc.datablock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class RTCCategoryDownTimeTest {
+
+    private static final long WINDOW = 24L * 60 * 60 * 1000;
+
+    private static final long START = 1356998400000L;
+
+    @Test
+    public void testSingleOutage() {
+        RTCCategoryDownTime downTime = new RTCCategoryDownTime(WINDOW);
+        RTCNodeSvcTimesList svcTimes = new RTCNodeSvcTimesList();
+        downTime.addService(svcTimes);
+        downTime.addService(new RTCNodeSvcTimesList());
+
+        assertEquals(100.0, downTime.getValue(START), 0.0);
+
+        svcTimes.lostService(START + 1000);
+        downTime.serviceLost(START + 1000);
+        assertEquals(0, downTime.getDownTime(START + 1000));
+        assertEquals(4000, downTime.getDownTime(START + 5000));
+
+        long regained = svcTimes.regainedService(START + 11000);
+        downTime.serviceRegained(regained);
+        assertEquals(10000, downTime.getDownTime(START + 20000));
+
+        // the outage leaves the window one window length later
+        assertEquals(10000, downTime.getDownTime(START + 1000 + WINDOW));
+        assertEquals(5000, downTime.getDownTime(START + 6000 + WINDOW));
+        assertEquals(0, downTime.getDownTime(START + 11000 + WINDOW));
+
+        // the window doesn't move back
+        assertEquals(-1, downTime.getDownTime(START));
+        assertTrue(Double.isNaN(downTime.getValue(START)));
+        assertEquals(100.0, downTime.getValue(START + 2 * WINDOW), 0.0);
+    }
+
+    @Test
+    public void testOutageInThePast() {
+        RTCCategoryDownTime downTime = new RTCCategoryDownTime(WINDOW);
+        downTime.addService(new RTCNodeSvcTimesList());
+        assertEquals(0, downTime.getDownTime(START));
+
+        // an outage that started before the window, and one from within it
+        downTime.addOutage(START - WINDOW - 5000, START - WINDOW + 5000);
+        downTime.addOutage(START - 3000, -1);
+        assertEquals(8000, downTime.getDownTime(START));
+        assertEquals(8000, downTime.getDownTime(START + 1000));
+        assertEquals(100 * (1 - 9000.0 / WINDOW), downTime.getValue(START + 6000), 0.000001);
+    }
+
+    /**
+     * Lose and regain services at random and compare the down time with the
+     * sum of the down times of the services.
+     */
+    @Test
+    public void testAgainstServiceTimes() {
+        final Random random = new Random(42);
+        final RTCCategoryDownTime downTime = new RTCCategoryDownTime(WINDOW);
+        final List<RTCNodeSvcTimesList> services = new ArrayList<RTCNodeSvcTimesList>();
+        for (int i = 0; i < 50; i++) {
+            RTCNodeSvcTimesList svcTimes = new RTCNodeSvcTimesList();
+            services.add(svcTimes);
+            downTime.addService(svcTimes);
+        }
+
+        long time = START;
+        for (int i = 0; i < 20000; i++) {
+            time += random.nextInt(60 * 60 * 1000);
+            RTCNodeSvcTimesList svcTimes = services.get(random.nextInt(services.size()));
+            // events may be up to a minute late
+            long eventTime = time - random.nextInt(60 * 1000);
+            if (random.nextBoolean()) {
+                if (svcTimes.lostService(eventTime)) {
+                    downTime.serviceLost(eventTime);
+                }
+            } else {
+                long regained = svcTimes.regainedService(eventTime);
+                if (regained != -1) {
+                    downTime.serviceRegained(regained);
+                }
+            }
+
+            if (random.nextInt(20) == 0) {
+                // replace a service
+                int index = random.nextInt(services.size());
+                downTime.removeService(services.get(index), time);
+                RTCNodeSvcTimesList replacement = new RTCNodeSvcTimesList();
+                services.set(index, replacement);
+                downTime.addService(replacement);
+            }
+
+            if (i % 10 == 0) {
+                long expected = 0;
+                for (RTCNodeSvcTimesList service : services) {
+                    expected += service.getDownTime(time, WINDOW);
+                }
+                assertEquals("down time at step " + i, expected, downTime.getDownTime(time));
+            }
+        }
+        assertEquals(services.size(), downTime.getServiceCount());
+    }
+
+    /**
+     * Checks the maintained down time of a category with 100000 services
+     * against the sum of the down times of its services as the window moves.
+     */
+    @Test
+    public void testLargeCategory() {
+        final int serviceCount = 100000;
+        final Random random = new Random(42);
+        final RTCCategoryDownTime downTime = new RTCCategoryDownTime(WINDOW);
+        final RTCNodeSvcTimesList[] services = new RTCNodeSvcTimesList[serviceCount];
+        for (int i = 0; i < serviceCount; i++) {
+            services[i] = new RTCNodeSvcTimesList();
+            downTime.addService(services[i]);
+        }
+
+        long time = START;
+        for (int i = 0; i < serviceCount; i++) {
+            time += random.nextInt(1000);
+            RTCNodeSvcTimesList svcTimes = services[random.nextInt(serviceCount)];
+            if (svcTimes.lostService(time)) {
+                downTime.serviceLost(time);
+            } else {
+                downTime.serviceRegained(svcTimes.regainedService(time));
+            }
+        }
+
+        for (final long read : new long[] { time, time + 1000, time + WINDOW / 2, time + WINDOW }) {
+            long summed = 0;
+            for (RTCNodeSvcTimesList service : services) {
+                summed += service.getDownTime(read, WINDOW);
+            }
+            assertEquals("down time at " + read, summed, downTime.getDownTime(read));
+        }
+    }
+}
@@ -226,6 +226,40 @@ public class ScheduleTest extends TestCase {
         assertRunAndScheduled(1000, 1000, 2, 1);
     }
     
+    public void testAsyncRunReschedulesOnCompletion() {
+        final Runnable[] completion = new Runnable[1];
+        final AsyncReadyRunnable schedulable = new AsyncReadyRunnable() {
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void run() {
+                fail("the schedule should start the work with runAsync");
+            }
+
+            @Override
+            public boolean runAsync(Runnable onCompletion) {
+                completion[0] = onCompletion;
+                return true;
+            }
+        };
+        final Schedule sched = new Schedule(schedulable, m_interval, m_scheduler);
+        sched.schedule();
+        m_scheduler.next();
+
+        // not rescheduled until the work completes
+        assertNotNull(completion[0]);
+        assertEquals(0, m_scheduler.getEntryCount());
+
+        // the interval is read when the work completes
+        m_interval.setInterval(500);
+        completion[0].run();
+        assertEquals(1, m_scheduler.getEntryCount());
+        assertNotNull(m_scheduler.getEntries().get(Long.valueOf(500)));
+    }
+
     private void assertRunAndScheduled(long currentTime, long interval, int count, int entryCount) {
         assertEquals(count, m_schedulable.getRunCount());
         assertEquals(currentTime, m_scheduler.getCurrentTime());
@@ -0,0 +1,159 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.scheduler;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.opennms.core.fiber.PausableFiber;
+import org.opennms.core.test.MockLogAppender;
+
+public class TimingWheelSchedulerTest extends TestCase {
+
+    private TimingWheelScheduler m_scheduler;
+
+    private class LatchRunnable implements ReadyRunnable {
+        private final CountDownLatch m_latch;
+        private final long m_notBefore;
+        private final AtomicInteger m_early;
+
+        LatchRunnable(final CountDownLatch latch, final long notBefore, final AtomicInteger early) {
+            m_latch = latch;
+            m_notBefore = notBefore;
+            m_early = early;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void run() {
+            if (System.currentTimeMillis() < m_notBefore) {
+                m_early.incrementAndGet();
+            }
+            m_latch.countDown();
+        }
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        MockLogAppender.setupLogging();
+        // small wheels so that entries are cascaded through all of the levels
+        m_scheduler = new TimingWheelScheduler("TimingWheelSchedulerTest", 4, 10, 3, 50);
+        m_scheduler.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        m_scheduler.stop();
+        MockLogAppender.assertNoWarningsOrGreater();
+        super.tearDown();
+    }
+
+    public void testRunsEverythingOnTime() throws Exception {
+        final int count = 500;
+        final CountDownLatch latch = new CountDownLatch(count);
+        final AtomicInteger early = new AtomicInteger();
+
+        for (int i = 0; i < count; i++) {
+            final long interval = (i * 7919L) % 1500L;
+            // the deadline is taken after the runnable, so allow for one tick of rounding
+            m_scheduler.schedule(interval, new LatchRunnable(latch, System.currentTimeMillis() + interval - 10, early));
+        }
+
+        assertTrue("all tasks should have run", latch.await(10, TimeUnit.SECONDS));
+        assertEquals("no task should run before its interval", 0, early.get());
+        assertEquals(count, m_scheduler.getNumTasksExecuted());
+        assertEquals(0, m_scheduler.getScheduled());
+        assertTrue(m_scheduler.getMaxLateness() >= 0);
+    }
+
+    public void testNotReadyIsRetried() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicInteger checks = new AtomicInteger();
+
+        m_scheduler.schedule(0, new ReadyRunnable() {
+            @Override
+            public boolean isReady() {
+                return checks.incrementAndGet() > 3;
+            }
+
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        });
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(4, checks.get());
+    }
+
+    public void testRescheduleFromRunner() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(5);
+
+        m_scheduler.schedule(0, new ReadyRunnable() {
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void run() {
+                latch.countDown();
+                if (latch.getCount() > 0) {
+                    m_scheduler.schedule(20, this);
+                }
+            }
+        });
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+
+    public void testPauseAndResume() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicInteger early = new AtomicInteger();
+
+        m_scheduler.pause();
+        // let the timer thread finish the tick it may be in
+        Thread.sleep(50);
+        m_scheduler.schedule(0, new LatchRunnable(latch, 0, early));
+
+        assertFalse(latch.await(200, TimeUnit.MILLISECONDS));
+        assertEquals(PausableFiber.PAUSED, m_scheduler.getStatus());
+
+        m_scheduler.resume();
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,248 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.syslogd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.netmgt.config.SyslogdConfigFactory;
+import org.opennms.netmgt.config.syslogd.UeiMatch;
+import org.opennms.netmgt.model.events.EventBuilder;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.Parm;
+
+public class SyslogRuleProgramTest {
+    private static final String DISCARD_UEI = "DISCARD-MATCHING-MESSAGES";
+
+    private static final String[] MESSAGES = new String[] {
+        "%LINK-3-UPDOWN: Interface GigabitEthernet0/1, changed state to down",
+        "%LINEPROTO-5-UPDOWN: Line protocol on Interface GigabitEthernet0/1, changed state to up",
+        "%SYS-5-CONFIG_I: Configured from console by admin on vty0 (10.1.1.1)",
+        "%SEC-6-IPACCESSLOGP: list 101 denied tcp 10.0.0.1(1234) -> 10.0.0.2(22), 1 packet",
+        "%OSPF-5-ADJCHG: Process 1, Nbr 10.255.0.2 on Vlan10 from LOADING to FULL, Loading Done",
+        "%DUAL-5-NBRCHANGE: EIGRP-IPv4 100: Neighbor 10.1.2.3 (Vlan20) is down: holding time expired",
+        "SNMP_TRAP_LINK_DOWN: ifIndex 540, ifAdminStatus up(1), ifOperStatus down(2), ifName ge-0/0/1",
+        "UI_COMMIT: User 'admin' requested 'commit' operation (comment: none)",
+        "BGP_PREFIX_THRESH_EXCEEDED: 10.2.2.2 (External AS 65001): Configured maximum prefix-limit threshold(160) exceeded for inet-unicast nlri: 173 (instance master)",
+        "RPD_OSPF_NBRDOWN: OSPF neighbor 10.0.1.2 (realm ospf-v2 ge-0/0/2.0 area 0.0.0.0) state changed from Full to Down due to KillNbr (event reason: interface went down)",
+        "Failed password for root from 10.1.1.1 port 5555 ssh2",
+        "Accepted publickey for deploy from 10.1.1.9 port 41022 ssh2 with DoubleSecret key",
+        "this message matches nothing at all"
+    };
+
+    private SyslogdConfigFactory m_config;
+
+    @Before
+    public void setUp() throws Exception {
+        final StringBuilder xml = new StringBuilder();
+        xml.append("<syslogd-configuration>\n");
+        xml.append("<configuration syslog-port=\"10514\" new-suspect-on-message=\"false\" discard-uei=\"" + DISCARD_UEI + "\"/>\n");
+        xml.append("<ueiList>\n");
+        // a long list of rules that don't match, as in a real configuration
+        for (int i = 0; i < 300; i++) {
+            xml.append(String.format("<ueiMatch><match type=\"regex\" expression=\"%%PLATFORM%d-4-ELEMENT_WARNING: (\\S+) element (\\S+)\"/><uei>uei.example.org/syslog/platform%d</uei></ueiMatch>\n", i, i));
+            xml.append(String.format("<ueiMatch><match type=\"substr\" expression=\"CHASSISD_FILLER_%d:\"/><uei>uei.example.org/syslog/chassisd%d</uei></ueiMatch>\n", i, i));
+        }
+        xml.append("<ueiMatch><match type=\"substr\" expression=\"IPACCESSLOGP\"/><uei>" + DISCARD_UEI + "</uei></ueiMatch>\n");
+        xml.append("<ueiMatch><match type=\"regex\" expression=\"%LINK-3-UPDOWN: Interface (\\S+), changed state to (\\S+)\"/><uei>uei.example.org/syslog/cisco/linkUpDown</uei></ueiMatch>\n");
+        xml.append("<ueiMatch><match type=\"regex\" expression=\"%LINEPROTO-5-UPDOWN: .*Interface (\\S+), changed state to (\\S+)\" default-parameter-mapping=\"false\"/><uei>uei.example.org/syslog/cisco/lineProto</uei>"
+                   + "<parameter-assignment matching-group=\"1\" parameter-name=\"ifDescr\"/></ueiMatch>\n");
+        xml.append("<ueiMatch><match type=\"substr\" expression=\"%SYS-5-CONFIG_I\"/><uei>uei.example.org/syslog/cisco/configChange</uei></ueiMatch>\n");
+        xml.append("<ueiMatch><match type=\"regex\" expression=\"^%(OSPF|DUAL)-5-(ADJCHG|NBRCHANGE): \"/><uei>uei.example.org/syslog/cisco/routing</uei></ueiMatch>\n");
+        xml.append("<ueiMatch><match type=\"regex\" expression=\"SNMP_TRAP_LINK_DOWN: ifIndex (\\d+),.*ifName (\\S+)\"/><uei>uei.example.org/syslog/juniper/linkDown</uei></ueiMatch>\n");
+        xml.append("<ueiMatch><match type=\"regex\" expression=\"UI_COMMIT: User '(\\S+)'\"/><uei>uei.example.org/syslog/juniper/commit</uei></ueiMatch>\n");
+        xml.append("<ueiMatch><match type=\"regex\" expression=\"(?i)bgp_prefix_thresh_exceeded: (\\S+)\"/><uei>uei.example.org/syslog/juniper/bgpPrefix</uei></ueiMatch>\n");
+        xml.append("<ueiMatch><match type=\"regex\" expression=\"RPD_OSPF_NBRDOWN: OSPF neighbor (\\S+)\"/><uei>uei.example.org/syslog/juniper/ospfDown</uei></ueiMatch>\n");
+        xml.append("<ueiMatch><process-match expression=\"^sshd$\"/><match type=\"regex\" expression=\"Failed password for (\\S+) from (\\S+)\"/><uei>uei.example.org/syslog/sshd/failedPassword</uei></ueiMatch>\n");
+        xml.append("<ueiMatch><match type=\"substr\" expression=\"Accepted publickey\"/><uei>uei.example.org/syslog/sshd/accepted</uei></ueiMatch>\n");
+        xml.append("</ueiList>\n");
+        xml.append("<hideMessage>\n");
+        xml.append("<hideMatch><match type=\"substr\" expression=\"TESTHIDING\"/></hideMatch>\n");
+        xml.append("<hideMatch><match type=\"regex\" expression=\"[Dd]ouble[Ss]ecret\"/></hideMatch>\n");
+        xml.append("</hideMessage>\n");
+        xml.append("</syslogd-configuration>\n");
+
+        m_config = new SyslogdConfigFactory(new ByteArrayInputStream(xml.toString().getBytes("UTF-8")));
+        ConvertToEvent.invalidate();
+    }
+
+    @Test
+    public void testRequiredLiterals() {
+        assertEquals(Arrays.asList("foo0: ", "load test ", " on "), SyslogRuleProgram.requiredLiterals(".*foo0: .*load test (\\S+) on ((pts\\/\\d+)|(tty\\d+)).*"));
+        assertEquals(Arrays.asList("UI_COMMIT: User '"), SyslogRuleProgram.requiredLiterals("UI_COMMIT: User '(\\S+)'"));
+        assertEquals(Arrays.asList("a.b"), SyslogRuleProgram.requiredLiterals("a\\.b"));
+        assertEquals(Arrays.asList("colo", "ur"), SyslogRuleProgram.requiredLiterals("colou?ur"));
+        assertEquals(Arrays.asList("ab", "cd"), SyslogRuleProgram.requiredLiterals("ab+cd"));
+        assertEquals(Arrays.asList("abc"), SyslogRuleProgram.requiredLiterals("abcd{0,2}"));
+        assertEquals(Arrays.asList("abc", "de"), SyslogRuleProgram.requiredLiterals("abc[x-z]de"));
+        assertEquals(Arrays.asList("abc", "de"), SyslogRuleProgram.requiredLiterals("abc(?:x|y)de"));
+        assertEquals(Collections.emptyList(), SyslogRuleProgram.requiredLiterals("abc|def"));
+        assertEquals(Collections.emptyList(), SyslogRuleProgram.requiredLiterals("(?i)abc"));
+        assertEquals(Collections.emptyList(), SyslogRuleProgram.requiredLiterals("\\Qabc\\E"));
+        assertEquals(Collections.emptyList(), SyslogRuleProgram.requiredLiterals("\\x41bc"));
+        assertEquals(Collections.emptyList(), SyslogRuleProgram.requiredLiterals("\\d+"));
+    }
+
+    @Test
+    public void testAhoCorasickMatcher() {
+        final AhoCorasickMatcher matcher = new AhoCorasickMatcher(Arrays.asList("he", "she", "his", "hers", "xyz"));
+        final BitSet found = matcher.match("ushers");
+        assertTrue(found.get(0));
+        assertTrue(found.get(1));
+        assertFalse(found.get(2));
+        assertTrue(found.get(3));
+        assertFalse(found.get(4));
+        assertTrue(matcher.match(null).isEmpty());
+        assertTrue(new AhoCorasickMatcher(Collections.<String>emptyList()).match("anything").isEmpty());
+    }
+
+    @Test
+    public void testMatchesLikeConfiguration() throws Exception {
+        final SyslogRuleProgram program = ConvertToEvent.getRuleProgram(m_config.getUeiList(), m_config.getHideMessages());
+
+        Event event = matchUei(program, "%LINK-3-UPDOWN: Interface GigabitEthernet0/1, changed state to down", null);
+        assertEquals("uei.example.org/syslog/cisco/linkUpDown", event.getUei());
+        assertEquals("GigabitEthernet0/1", getParm(event, "group1"));
+        assertEquals("down", getParm(event, "group2"));
+
+        event = matchUei(program, "%LINEPROTO-5-UPDOWN: Line protocol on Interface GigabitEthernet0/1, changed state to up", null);
+        assertEquals("uei.example.org/syslog/cisco/lineProto", event.getUei());
+        assertEquals("GigabitEthernet0/1", getParm(event, "ifDescr"));
+        assertEquals(null, getParm(event, "group1"));
+
+        assertEquals("uei.example.org/syslog/cisco/configChange", matchUei(program, MESSAGES[2], null).getUei());
+        assertEquals("uei.example.org/syslog/juniper/bgpPrefix", matchUei(program, MESSAGES[8], null).getUei());
+
+        // the process has to match too
+        assertEquals("uei.example.org/syslog/sshd/failedPassword", matchUei(program, MESSAGES[10], "sshd").getUei());
+        assertEquals("uei.example.org/syslog/default", matchUei(program, MESSAGES[10], "login").getUei());
+
+        try {
+            matchUei(program, MESSAGES[3], null);
+            fail("message should have been discarded");
+        } catch (final MessageDiscardedException e) {
+            // expected
+        }
+
+        assertTrue(program.matchHide("<13>Aug 19 10:00:00 host TESTHIDING my password"));
+        assertTrue(program.matchHide(MESSAGES[11]));
+        assertFalse(program.matchHide(MESSAGES[0]));
+
+        // the program is reused until the configuration objects change
+        assertSame(program, ConvertToEvent.getRuleProgram(m_config.getUeiList(), m_config.getHideMessages()));
+    }
+
+    /**
+     * Checks that the compiled rules find the same UEI as evaluating every
+     * rule in turn, the way {@link ConvertToEvent} used to, on a mix of Cisco
+     * and Juniper messages.
+     */
+    @Test
+    public void testMatchesLikeSequentialRules() throws Exception {
+        final SyslogRuleProgram program = ConvertToEvent.getRuleProgram(m_config.getUeiList(), m_config.getHideMessages());
+        final List<UeiMatch> rules = m_config.getUeiList().getUeiMatchCollection();
+        final Map<String,Pattern> patterns = new HashMap<String,Pattern>();
+
+        for (final String text : MESSAGES) {
+            String expected;
+            try {
+                expected = matchSequentially(rules, patterns, text);
+            } catch (final MessageDiscardedException e) {
+                expected = DISCARD_UEI;
+            }
+            String actual;
+            try {
+                actual = matchUei(program, text, null).getUei();
+            } catch (final MessageDiscardedException e) {
+                actual = DISCARD_UEI;
+            }
+            assertEquals(text, expected, actual);
+        }
+    }
+
+    private static Event matchUei(final SyslogRuleProgram program, final String text, final String processName) throws MessageDiscardedException {
+        final SyslogMessage message = new SyslogMessage(1, 5, new Date(), "localhost", processName, null, text);
+        final EventBuilder bldr = new EventBuilder("uei.example.org/syslog/default", "SyslogRuleProgramTest");
+        program.matchUei(message, message.getFacility().toString(), message.getSeverity().toString(), DISCARD_UEI, bldr);
+        return bldr.getEvent();
+    }
+
+    private static String matchSequentially(final List<UeiMatch> rules, final Map<String,Pattern> patterns, final String text) throws MessageDiscardedException {
+        for (final UeiMatch uei : rules) {
+            if (uei.getProcessMatch() != null) {
+                continue;
+            }
+            final String expression = uei.getMatch().getExpression();
+            boolean matched;
+            if ("substr".equals(uei.getMatch().getType())) {
+                matched = text.contains(expression);
+            } else {
+                Pattern pattern = patterns.get(expression);
+                if (pattern == null) {
+                    pattern = Pattern.compile(expression, Pattern.MULTILINE);
+                    patterns.put(expression, pattern);
+                }
+                final Matcher m = pattern.matcher(text);
+                matched = m.find();
+            }
+            if (matched) {
+                if (DISCARD_UEI.equals(uei.getUei())) {
+                    throw new MessageDiscardedException();
+                }
+                return uei.getUei();
+            }
+        }
+        return "uei.example.org/syslog/default";
+    }
+
+    private static String getParm(final Event event, final String name) {
+        for (final Parm parm : event.getParmCollection()) {
+            if (name.equals(parm.getParmName())) {
+                return parm.getValue().getContent();
+            }
+        }
+        return null;
+    }
+}
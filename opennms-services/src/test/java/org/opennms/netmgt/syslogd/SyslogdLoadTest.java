@@ -29,6 +29,7 @@
 package org.opennms.netmgt.syslogd;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.opennms.core.utils.InetAddressUtils.addr;
 
 import java.io.IOException;
@@ -36,6 +37,7 @@ import java.io.InputStream;
 import java.lang.reflect.UndeclaredThrowableException;
 import java.net.BindException;
 import java.net.DatagramPacket;
+import java.net.DatagramSocket;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
@@ -224,6 +226,48 @@ public class SyslogdLoadTest implements InitializingBean {
         System.err.println(String.format("total time: %d, wait time: %d, events per second: %8.4f", total, (end - mid), eventsPerSecond));
     }
 
+    @Test
+    @Transactional
+    public void testNioReceiverAccountsForEveryMessage() throws Exception {
+        startSyslogdGracefully();
+
+        final int eventCount = 1000;
+        m_eventCounter.setAnticipated(eventCount);
+
+        final String testPduFormat = "2010-08-19 localhost foo%d: load test %d on tty1";
+        final SyslogClient sc = new SyslogClient(null, 10, SyslogClient.LOG_DEBUG);
+        final DatagramSocket socket = new DatagramSocket();
+        try {
+            for (int i = 0; i < eventCount; i++) {
+                final int foo = i % 100;
+                final DatagramPacket pkt = sc.getPacket(SyslogClient.LOG_DEBUG, String.format(testPduFormat, foo, i));
+                socket.send(pkt);
+            }
+        } finally {
+            socket.close();
+        }
+
+        // wait for every received message to be accounted for
+        final long deadline = System.currentTimeMillis() + 120000;
+        while (System.currentTimeMillis() < deadline && (m_syslogd.getQueueDepth() > 0 || m_syslogd.getMessagesReceived() > accountedFor())) {
+            Thread.sleep(50);
+        }
+        m_eventCounter.setAnticipated((int)m_syslogd.getMessagesProcessed());
+        m_eventCounter.waitForFinish(120000);
+
+        final long received = m_syslogd.getMessagesReceived();
+        assertTrue("no messages were received", received > 0);
+        assertEquals(received, accountedFor());
+        // the queue is larger than the number of messages sent, so nothing may be dropped after the socket
+        assertEquals(0, m_syslogd.getMessagesDropped());
+        assertEquals(0, m_syslogd.getMessagesParseFailed());
+        assertEquals(m_syslogd.getMessagesProcessed(), m_eventCounter.getCount());
+    }
+
+    private long accountedFor() {
+        return m_syslogd.getMessagesProcessed() + m_syslogd.getMessagesDropped() + m_syslogd.getMessagesParseFailed() + m_syslogd.getMessagesDiscarded();
+    }
+
     @Test
     @Transactional
     public void testRfcSyslog() throws Exception {
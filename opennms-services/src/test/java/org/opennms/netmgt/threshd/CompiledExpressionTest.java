@@ -0,0 +1,143 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.threshd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.netmgt.threshd.CompiledExpression.UndecidedException;
+
+public class CompiledExpressionTest {
+
+    private final Map<String, Double> m_values = new HashMap<String, Double>();
+
+    @Before
+    public void setUp() {
+        m_values.put("ifInOctets", 200000.0);
+        m_values.put("ifOutOctets", 100000.0);
+        m_values.put("ifSpeed", 10000000.0);
+        m_values.put("ifHighSpeed", 0.0);
+        m_values.put("ns-dskTotal", 100.0);
+        m_values.put("ns-dskUsed", 40.0);
+    }
+
+    @Test
+    public void testArithmetic() throws Exception {
+        assertEvaluates(16.0, "ifInOctets * 8 / ifSpeed * 100");
+        assertEvaluates(300000.0, "ifInOctets + ifOutOctets");
+        assertEvaluates(-100000.0, "ifOutOctets-ifInOctets");
+        assertEvaluates(0.0, "ifInOctets % 1000");
+        assertEvaluates(200000.0 * 0.1, "ifInOctets * 0.1");
+        assertEvaluates(20.0, "ifInOctets div 10000");
+        assertEvaluates(-200000.0, "-ifInOctets");
+        assertEvaluates(200000.0 * 8 / (1024 * 1024), "ifInOctets * 8 / (1024 * 1024)");
+        assertEvaluates(60.0, "datasources['ns-dskTotal'] - datasources[\"ns-dskUsed\"]");
+        assertEvaluates(300000.0, "datasources.ifInOctets + ifOutOctets");
+    }
+
+    @Test
+    public void testConditions() throws Exception {
+        final String formula = "ifSpeed > 0 and ifSpeed < 100000000 ? ((ifInOctets * 8 / ifSpeed) * 100) : (ifHighSpeed > 0 ? (((ifHCInOctets * 8) / (ifHighSpeed * 1000000)) * 100) : 0)";
+        assertEvaluates(16.0, formula);
+        m_values.put("ifSpeed", 0.0);
+        assertEvaluates(0.0, formula);
+
+        assertEvaluates(1.0, "ifHighSpeed == 0.0 || ifHighSpeed == 3.0 ? 1.0 : 0.0");
+        assertEvaluates(0.0, "!(ifHighSpeed eq 0) && ifSpeed ne 0 ? 1 : 0");
+        assertEvaluates(1.0, "not (ifInOctets lt ifOutOctets) ? 1 : 2");
+    }
+
+    @Test
+    public void testFunctions() throws Exception {
+        assertEvaluates(160000.0, "math.max((ifInOctets*8/ifSpeed), (ifOutOctets*8/ifSpeed)) * 1000000");
+        assertEvaluates(100.0, "math.max(ifHighSpeed, 100)");
+        assertEvaluates(100000.0, "math.abs(ifOutOctets - ifInOctets)");
+        assertEvaluates(10.0, "math.sqrt(datasources['ns-dskTotal'])");
+        assertEvaluates(5.0, "math.log10(ifInOctets / 2)");
+    }
+
+    @Test
+    public void testUndecided() throws Exception {
+        // left to JEXL: missing values, NaN in comparisons and division by zero
+        assertUndecided("ifHCInOctets * 8");
+        assertUndecided("ifInOctets / ifHighSpeed");
+        assertUndecided("ifInOctets % ifHighSpeed");
+        m_values.put("ifSpeed", Double.NaN);
+        assertUndecided("ifSpeed > 0 ? 1 : 0");
+        // but values that aren't needed may be missing
+        assertEvaluates(0.0, "ifHighSpeed > 0 ? ifHCInOctets : 0");
+    }
+
+    @Test
+    public void testUnsupported() {
+        assertNull(CompiledExpression.compile("ifInOctets =~ 'x'"));
+        assertNull(CompiledExpression.compile("ifInOctets > 0"));
+        assertNull(CompiledExpression.compile("ifInOctets ? 1 : 0"));
+        assertNull(CompiledExpression.compile("ifInOctets ?: 0"));
+        assertNull(CompiledExpression.compile("ifInOctets + 1 / 2"));
+        assertNull(CompiledExpression.compile("ifInOctets * 010"));
+        assertNull(CompiledExpression.compile("ifInOctets * 1e3"));
+        assertNull(CompiledExpression.compile("ifInOctets * 10L"));
+        assertNull(CompiledExpression.compile("ifInOctets & 1"));
+        assertNull(CompiledExpression.compile("ifInOctets.intValue()"));
+        assertNull(CompiledExpression.compile("size(ifInOctets)"));
+        assertNull(CompiledExpression.compile("math.round(ifInOctets)"));
+        assertNull(CompiledExpression.compile("math.max(ifInOctets, 0.5)"));
+        assertNull(CompiledExpression.compile("math.abs(-1)"));
+        assertNull(CompiledExpression.compile("x = ifInOctets; x"));
+        assertNull(CompiledExpression.compile("(ifInOctets"));
+        assertNull(CompiledExpression.compile("ifInOctets ifOutOctets"));
+        assertNull(CompiledExpression.compile("'ifInOctets'"));
+    }
+
+    private void assertEvaluates(final double expected, final String expression) throws UndecidedException {
+        final CompiledExpression compiled = CompiledExpression.compile(expression);
+        assertNotNull("could not compile " + expression, compiled);
+        assertEquals(expression, expected, compiled.evaluate(m_values), 0.0);
+    }
+
+    private void assertUndecided(final String expression) {
+        final CompiledExpression compiled = CompiledExpression.compile(expression);
+        assertNotNull("could not compile " + expression, compiled);
+        try {
+            compiled.evaluate(m_values);
+            fail("expected " + expression + " to be left to JEXL");
+        } catch (final UndecidedException e) {
+            // expected
+        }
+    }
+}
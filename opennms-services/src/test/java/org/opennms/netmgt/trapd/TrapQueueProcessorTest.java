@@ -0,0 +1,179 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.trapd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.netmgt.config.DefaultEventConfDao;
+import org.opennms.netmgt.dao.mock.MockEventIpcManager;
+import org.opennms.netmgt.snmp.SnmpObjId;
+import org.opennms.netmgt.snmp.SnmpUtils;
+import org.opennms.netmgt.snmp.TrapIdentity;
+import org.opennms.netmgt.snmp.TrapInformation;
+import org.opennms.netmgt.xml.event.Event;
+import org.springframework.core.io.ClassPathResource;
+
+public class TrapQueueProcessorTest {
+
+    private static final String ENTERPRISE_ID = ".1.3.6.1.4.1.5813.1";
+
+    private DefaultEventConfDao m_eventConfDao;
+    private MockEventIpcManager m_eventMgr;
+    private MockTrapdIpMgr m_trapdIpMgr;
+
+    /**
+     * A trap that counts how many of its varbinds have been decoded.
+     */
+    private static class TestTrapInformation extends TrapInformation {
+        private final int m_specific;
+        private final List<String> m_values;
+        private int m_decoded = 0;
+
+        TestTrapInformation(final EventCreator eventCreator, final int specific, final List<String> values) {
+            super(InetAddressUtils.addr("127.0.0.1"), "public", eventCreator);
+            m_specific = specific;
+            m_values = values;
+        }
+
+        @Override
+        protected InetAddress getTrapAddress() {
+            return getAgent();
+        }
+
+        @Override
+        protected String getVersion() {
+            return "v1";
+        }
+
+        @Override
+        protected int getPduLength() {
+            return m_values.size();
+        }
+
+        @Override
+        protected long getTimeStamp() {
+            return 0;
+        }
+
+        @Override
+        protected TrapIdentity getTrapIdentity() {
+            return new TrapIdentity(SnmpObjId.get(ENTERPRISE_ID), 6, m_specific);
+        }
+
+        @Override
+        protected void processVarBindAt(final int i) {
+            m_decoded++;
+            processVarBind(SnmpObjId.get(ENTERPRISE_ID + "." + (i + 1)), SnmpUtils.getValueFactory().getOctetString(m_values.get(i).getBytes()));
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        m_eventConfDao = new DefaultEventConfDao();
+        m_eventConfDao.setConfigResource(new ClassPathResource("/org/opennms/netmgt/trapd/varbindEventconf.xml"));
+        m_eventConfDao.afterPropertiesSet();
+
+        m_eventMgr = new MockEventIpcManager();
+        m_eventMgr.setSynchronous(true);
+
+        m_trapdIpMgr = new MockTrapdIpMgr();
+        m_trapdIpMgr.clearKnownIpsMap();
+        m_trapdIpMgr.setNodeId("127.0.0.1", 1);
+    }
+
+    private TestTrapInformation process(final int specific, final String... values) {
+        final List<String> varbinds = new ArrayList<String>();
+        for (final String value : values) {
+            varbinds.add(value);
+        }
+        final TestTrapInformation trap = new TestTrapInformation(new EventCreator(m_trapdIpMgr), specific, varbinds);
+
+        final TrapQueueProcessor processor = new TrapQueueProcessor();
+        processor.setEventConfDao(m_eventConfDao);
+        processor.setEventManager(m_eventMgr);
+        processor.setNewSuspect(false);
+        processor.setTrapNotification(trap);
+        processor.afterPropertiesSet();
+        processor.call();
+        return trap;
+    }
+
+    private Collection<Event> getSentEvents() {
+        return m_eventMgr.getEventAnticipator().unanticipatedEvents();
+    }
+
+    @Test
+    public void testDiscardedBeforeDecoding() throws Exception {
+        final long discarded = TrapQueueProcessor.getTrapsDiscardedBeforeDecoding();
+        final long decoded = TrapQueueProcessor.getTrapsDecoded();
+
+        // no definition of this trap matches on varbinds, so they are never decoded
+        final TestTrapInformation trap = process(1, "up", "down");
+        assertEquals(0, trap.m_decoded);
+        assertTrue(getSentEvents().isEmpty());
+        assertEquals(discarded + 1, TrapQueueProcessor.getTrapsDiscardedBeforeDecoding());
+        assertEquals(decoded, TrapQueueProcessor.getTrapsDecoded());
+    }
+
+    @Test
+    public void testDecodedWhenVarbindsMayMatch() throws Exception {
+        final long discarded = TrapQueueProcessor.getTrapsDiscardedBeforeDecoding();
+
+        // the varbinds decide between a definition that is sent and one that is discarded
+        TestTrapInformation trap = process(2, "up", "down");
+        assertEquals(2, trap.m_decoded);
+        assertEquals(1, getSentEvents().size());
+        assertEquals("uei.opennms.org/test/trapd/up", getSentEvents().iterator().next().getUei());
+
+        trap = process(2, "down", "up");
+        assertEquals(2, trap.m_decoded);
+        assertEquals(1, getSentEvents().size());
+        assertEquals(discarded, TrapQueueProcessor.getTrapsDiscardedBeforeDecoding());
+    }
+
+    @Test
+    public void testUnknownTrapIsSent() throws Exception {
+        final TestTrapInformation trap = process(3, "up");
+        assertEquals(1, trap.m_decoded);
+        assertEquals(1, getSentEvents().size());
+        final Event event = getSentEvents().iterator().next();
+        assertEquals("uei.opennms.org/default/trap", event.getUei());
+        assertEquals(1, event.getParmCollection().size());
+    }
+}
@@ -0,0 +1,223 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.opennms.core.utils.InetAddressUtils.addr;
+
+import java.net.InetAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class AddressNodeIndexTest {
+
+    @Test
+    public void testParseV4() {
+        assertEquals(0xC0A80001L, AddressNodeIndex.parseV4("192.168.0.1"));
+        assertEquals(0L, AddressNodeIndex.parseV4("0.0.0.0"));
+        assertEquals(0xFFFFFFFFL, AddressNodeIndex.parseV4("255.255.255.255"));
+        assertEquals(-1L, AddressNodeIndex.parseV4("256.0.0.1"));
+        assertEquals(-1L, AddressNodeIndex.parseV4("1.2.3"));
+        assertEquals(-1L, AddressNodeIndex.parseV4("1.2.3.4."));
+        assertEquals(-1L, AddressNodeIndex.parseV4("1.2.3.4.5"));
+        assertEquals(-1L, AddressNodeIndex.parseV4("1..3.4"));
+        assertEquals(-1L, AddressNodeIndex.parseV4("1.2.3.0004"));
+        assertEquals(-1L, AddressNodeIndex.parseV4("fe80::1"));
+        assertEquals(-1L, AddressNodeIndex.parseV4(""));
+    }
+
+    @Test
+    public void testLookup() {
+        final AddressNodeIndex index = new AddressNodeIndex();
+        assertEquals(-1, index.getNodeId("192.168.0.1"));
+        assertEquals(-1, index.getNodeId((String) null));
+
+        assertEquals(-1, index.setNodeId(addr("192.168.0.1"), 1));
+        assertEquals(-1, index.setNodeId(addr("2001:db8::1"), 2));
+        assertEquals(-1, index.setNodeId(addr("10.0.0.1"), 3));
+
+        assertEquals(1, index.getNodeId("192.168.0.1"));
+        assertEquals(1, index.getNodeId(addr("192.168.0.1")));
+        assertEquals(2, index.getNodeId("2001:db8::1"));
+        assertEquals(2, index.getNodeId("2001:0db8:0000:0000:0000:0000:0000:0001"));
+        assertEquals(3, index.getNodeId("10.0.0.1"));
+        assertEquals(-1, index.getNodeId("10.0.0.2"));
+        assertEquals(-1, index.getNodeId("2001:db8::2"));
+        assertEquals(3, index.size());
+
+        assertEquals(3, index.setNodeId(addr("10.0.0.1"), 4));
+        assertEquals(4, index.getNodeId("10.0.0.1"));
+
+        assertEquals(4, index.removeNodeId(addr("10.0.0.1")));
+        assertEquals(-1, index.getNodeId("10.0.0.1"));
+        assertEquals(-1, index.removeNodeId(addr("10.0.0.1")));
+        assertEquals(2, index.size());
+
+        index.clear();
+        assertEquals(-1, index.getNodeId("192.168.0.1"));
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void testSetAll() {
+        final Map<InetAddress, Integer> addresses = createAddresses(50000);
+        final AddressNodeIndex index = new AddressNodeIndex();
+        index.setAll(addresses);
+
+        assertEquals(addresses.size(), index.size());
+        for (final Map.Entry<InetAddress, Integer> entry : addresses.entrySet()) {
+            assertEquals(entry.getValue().longValue(), index.getNodeId(entry.getKey().getHostAddress()));
+        }
+        assertEquals(-1, index.getNodeId("11.0.0.1"));
+    }
+
+    /**
+     * Applies random changes one at a time, growing the tables and removing
+     * from the middle of probe sequences, and checks every address after
+     * each round against a plain map.
+     */
+    @Test
+    public void testUpdatesMatchAMap() throws Exception {
+        final Random random = new Random(42);
+        final InetAddress[] candidates = new InetAddress[2000];
+        for (int i = 0; i < candidates.length; i++) {
+            final byte[] bytes = new byte[i % 3 == 0 ? 16 : 4];
+            random.nextBytes(bytes);
+            candidates[i] = InetAddress.getByAddress(bytes);
+        }
+
+        final AddressNodeIndex index = new AddressNodeIndex();
+        final Map<InetAddress, Integer> expected = new HashMap<InetAddress, Integer>();
+        for (int round = 0; round < 20; round++) {
+            for (int change = 0; change < 500; change++) {
+                final InetAddress address = candidates[random.nextInt(candidates.length)];
+                final Integer previous;
+                if (random.nextInt(3) == 0) {
+                    previous = expected.remove(address);
+                    assertEquals(previous == null ? -1 : previous.longValue(), index.removeNodeId(address));
+                } else {
+                    final int nodeId = random.nextInt(100) + 1;
+                    previous = expected.put(address, Integer.valueOf(nodeId));
+                    assertEquals(previous == null ? -1 : previous.longValue(), index.setNodeId(address, nodeId));
+                }
+            }
+            assertEquals(expected.size(), index.size());
+            for (final InetAddress address : candidates) {
+                final Integer nodeId = expected.get(address);
+                assertEquals(nodeId == null ? -1 : nodeId.longValue(), index.getNodeId(address));
+            }
+        }
+    }
+
+    /**
+     * Looks addresses up from several threads, without locking, while
+     * another thread grows the tables and removes from them again; every
+     * lookup must find the node the address was set to.
+     */
+    @Test
+    public void testLookupsDuringUpdates() throws Exception {
+        final Map<InetAddress, Integer> addresses = createAddresses(10000);
+        final String[] lookups = new String[addresses.size()];
+        final long[] nodeIds = new long[addresses.size()];
+        int i = 0;
+        for (final Map.Entry<InetAddress, Integer> entry : addresses.entrySet()) {
+            lookups[i] = entry.getKey().getHostAddress();
+            nodeIds[i++] = entry.getValue().longValue();
+        }
+
+        final AddressNodeIndex index = new AddressNodeIndex();
+        index.setAll(addresses);
+
+        final int threads = 2;
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        final AtomicLong wrong = new AtomicLong();
+        final AtomicLong lookupCount = new AtomicLong();
+        final Thread[] readers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int offset = t * 7919;
+            readers[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        long count = 0;
+                        while (!isInterrupted()) {
+                            final int n = (int) ((offset + count++) % lookups.length);
+                            if (index.getNodeId(lookups[n]) != nodeIds[n]) {
+                                wrong.incrementAndGet();
+                            }
+                        }
+                        lookupCount.addAndGet(count);
+                    } catch (final InterruptedException e) {
+                        // stopped before starting
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            };
+            readers[t].start();
+        }
+
+        start.countDown();
+        for (int round = 0; round < 3; round++) {
+            for (int n = 0; n < 2000; n++) {
+                index.setNodeId(addr("172." + (16 + round) + "." + ((n >> 8) & 0xff) + "." + (n & 0xff)), 100000 + n);
+            }
+            for (int n = 0; n < 2000; n++) {
+                index.removeNodeId(addr("172." + (16 + round) + "." + ((n >> 8) & 0xff) + "." + (n & 0xff)));
+            }
+        }
+        for (final Thread reader : readers) {
+            reader.interrupt();
+        }
+        done.await();
+
+        assertTrue(lookupCount.get() > 0);
+        assertEquals("lookups that didn't find the address's node", 0, wrong.get());
+        assertEquals(addresses.size(), index.size());
+    }
+
+    private static Map<InetAddress, Integer> createAddresses(final int count) {
+        final Map<InetAddress, Integer> addresses = new HashMap<InetAddress, Integer>();
+        for (int i = 0; i < count; i++) {
+            addresses.put(addr("10." + ((i >> 16) & 0xff) + "." + ((i >> 8) & 0xff) + "." + (i & 0xff)), i + 1);
+            if (i % 10 == 0) {
+                addresses.put(addr("2001:db8::" + Integer.toHexString(i)), i + 1);
+            }
+        }
+        return addresses;
+    }
+}
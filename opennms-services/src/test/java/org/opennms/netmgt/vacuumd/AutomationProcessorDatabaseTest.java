@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.netmgt.vacuumd;
+
+import java.sql.ResultSet;
+
+import junit.framework.TestCase;
+
+import org.opennms.core.db.DataSourceFactory;
+import org.opennms.core.test.MockLogAppender;
+import org.opennms.core.test.db.MockDatabase;
+import org.opennms.netmgt.config.vacuumd.Statement;
+import org.opennms.netmgt.config.vacuumd.Trigger;
+import org.opennms.netmgt.model.events.EventBuilder;
+import org.opennms.netmgt.vacuumd.AutomationProcessor.TriggerProcessor;
+
+/**
+ * Runs an incremental trigger against the mock database, which unlike the
+ * fake data source of {@link AutomationProcessorTest} checks the types of
+ * the statements it is given.
+ */
+public class AutomationProcessorDatabaseTest extends TestCase {
+
+    private MockDatabase m_db;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        MockLogAppender.setupLogging();
+        m_db = new MockDatabase();
+        DataSourceFactory.setInstance("vacuumdDbTest", m_db);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        m_db.drop();
+        super.tearDown();
+    }
+
+    public void testIncrementalTrigger() throws Exception {
+        final Trigger config = new Trigger("testTrigger", "vacuumdDbTest", null, 0, new Statement("SELECT eventid FROM events WHERE ${eventid} IS NULL OR eventid > ${eventid}", false));
+        config.setHighWaterMark("eventid");
+        final TriggerProcessor trigger = new TriggerProcessor("testAutomation", config);
+
+        // the first run has no mark yet and selects every event
+        writeEvents(3);
+        assertEquals(3, runTrigger(trigger));
+        assertEquals(m_db.getJdbcTemplate().queryForInt("SELECT MAX(eventid) FROM events"), ((Number)trigger.getHighWaterMark()).intValue());
+
+        // the next runs only select the events written since
+        writeEvents(2);
+        assertEquals(2, runTrigger(trigger));
+        assertEquals(0, runTrigger(trigger));
+    }
+
+    private void writeEvents(final int count) {
+        for (int i = 0; i < count; i++) {
+            m_db.writeEvent(new EventBuilder("uei.opennms.org/test", "AutomationProcessorDatabaseTest").setSeverity("Normal").getEvent());
+        }
+    }
+
+    /**
+     * Runs the trigger in a transaction the way
+     * {@link AutomationProcessor#runAutomation()} does and returns the
+     * number of rows it selected.
+     */
+    private static int runTrigger(final TriggerProcessor trigger) throws Exception {
+        int rows = 0;
+        Transaction.begin();
+        try {
+            trigger.discardHighWaterMark();
+            final ResultSet rs = trigger.runTriggerQuery();
+            while (rs.next()) {
+                rows++;
+            }
+            trigger.findHighWaterMark(rs);
+        } finally {
+            Transaction.end();
+        }
+        trigger.advanceHighWaterMark();
+        return rows;
+    }
+}
@@ -0,0 +1,323 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.vacuumd;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import junit.framework.TestCase;
+
+import org.opennms.core.db.DataSourceFactory;
+import org.opennms.netmgt.config.vacuumd.Action;
+import org.opennms.netmgt.config.vacuumd.Statement;
+import org.opennms.netmgt.config.vacuumd.Trigger;
+import org.opennms.netmgt.vacuumd.AutomationProcessor.ActionProcessor;
+import org.opennms.netmgt.vacuumd.AutomationProcessor.TriggerProcessor;
+import org.opennms.netmgt.vacuumd.AutomationProcessor.TriggerResults;
+
+/**
+ * Tests the incremental triggers and the batched action updates of
+ * {@link AutomationProcessor} against a fake data source that records the
+ * statements it is given.
+ */
+public class AutomationProcessorTest extends TestCase {
+
+    private static final String BATCH_SIZE_PROPERTY = "org.opennms.vacuumd.actionBatchSize";
+
+    /** the rows returned by every query */
+    private List<Map<String, Object>> m_rows;
+    /** the SQL of every query that has been run */
+    private List<String> m_statements;
+    /** the parameters of every query that has been run */
+    private List<List<Object>> m_queries;
+    /** the parameters of every update that has been sent, in batches */
+    private List<List<List<Object>>> m_batches;
+    private int m_updates;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        m_rows = new ArrayList<Map<String, Object>>();
+        m_statements = new ArrayList<String>();
+        m_queries = new ArrayList<List<Object>>();
+        m_batches = new ArrayList<List<List<Object>>>();
+        m_updates = 0;
+        DataSourceFactory.setInstance("vacuumdTest", proxy(DataSource.class, new DataSourceHandler()));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        System.clearProperty(BATCH_SIZE_PROPERTY);
+        super.tearDown();
+    }
+
+    public void testIncrementalTrigger() throws Exception {
+        final TriggerProcessor trigger = new TriggerProcessor("testAutomation", createTrigger("SELECT eventid FROM events WHERE ${eventid} IS NULL OR eventid > ${eventid}", "eventid"));
+        assertTrue(trigger.isIncremental());
+        assertNull(trigger.getHighWaterMark());
+
+        // the first run selects everything and finds the largest id
+        addRows(3, 7, 5);
+        runTrigger(trigger, true);
+        assertEquals("SELECT eventid FROM events WHERE NULL IS NULL OR eventid > NULL", m_statements.get(0));
+        assertEquals(Collections.emptyList(), m_queries.get(0));
+        assertEquals(7, trigger.getHighWaterMark());
+
+        // the next run starts from there
+        m_rows.clear();
+        addRows(9);
+        runTrigger(trigger, true);
+        assertEquals("SELECT eventid FROM events WHERE ? IS NULL OR eventid > ?", m_statements.get(1));
+        assertEquals(Arrays.asList((Object)7, 7), m_queries.get(1));
+        assertEquals(9, trigger.getHighWaterMark());
+
+        // a run without new rows keeps the mark
+        m_rows.clear();
+        runTrigger(trigger, true);
+        assertEquals(9, trigger.getHighWaterMark());
+    }
+
+    public void testIncrementalTriggerRolledBack() throws Exception {
+        final TriggerProcessor trigger = new TriggerProcessor("testAutomation", createTrigger("SELECT eventid FROM events WHERE eventid > ${eventid}", "eventid"));
+        addRows(3);
+        runTrigger(trigger, true);
+        assertEquals(3, trigger.getHighWaterMark());
+
+        // the rows of a run that was rolled back are selected again
+        addRows(4);
+        runTrigger(trigger, false);
+        assertEquals(3, trigger.getHighWaterMark());
+        runTrigger(trigger, true);
+        assertEquals(Arrays.asList((Object)3), m_queries.get(2));
+        assertEquals(4, trigger.getHighWaterMark());
+    }
+
+    public void testIncrementalTriggerOnlyHighWaterMarkToken() throws Exception {
+        try {
+            new TriggerProcessor("testAutomation", createTrigger("SELECT eventid FROM events WHERE nodeid = ${nodeid}", "eventid"));
+            fail("expected an AutomationException");
+        } catch (final AutomationException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("${nodeid}"));
+        }
+    }
+
+    public void testTriggerWithoutHighWaterMark() throws Exception {
+        final TriggerProcessor trigger = new TriggerProcessor("testAutomation", createTrigger("SELECT eventid FROM events", null));
+        assertFalse(trigger.isIncremental());
+        addRows(3);
+        runTrigger(trigger, true);
+        assertEquals(Collections.emptyList(), m_queries.get(0));
+        assertNull(trigger.getHighWaterMark());
+    }
+
+    public void testActionBatches() throws Exception {
+        System.setProperty(BATCH_SIZE_PROPERTY, "2");
+        addRows(1, 2, 3, 4, 5);
+        runAction();
+
+        assertEquals(3, m_batches.size());
+        assertEquals(Arrays.asList(Arrays.<Object>asList(1), Arrays.<Object>asList(2)), m_batches.get(0));
+        assertEquals(Arrays.asList(Arrays.<Object>asList(3), Arrays.<Object>asList(4)), m_batches.get(1));
+        assertEquals(Arrays.asList(Arrays.<Object>asList(5)), m_batches.get(2));
+        assertEquals(0, m_updates);
+    }
+
+    public void testActionWithoutBatches() throws Exception {
+        System.setProperty(BATCH_SIZE_PROPERTY, "1");
+        addRows(1, 2, 3);
+        runAction();
+
+        assertEquals(0, m_batches.size());
+        assertEquals(3, m_updates);
+    }
+
+    private static Trigger createTrigger(final String sql, final String highWaterMark) {
+        final Trigger trigger = new Trigger("testTrigger", "vacuumdTest", null, 0, new Statement(sql, false));
+        trigger.setHighWaterMark(highWaterMark);
+        return trigger;
+    }
+
+    private void addRows(final int... eventIds) {
+        for (final int eventId : eventIds) {
+            final Map<String, Object> row = new HashMap<String, Object>();
+            row.put("eventid", eventId);
+            m_rows.add(row);
+        }
+    }
+
+    /**
+     * Runs the trigger in a transaction, the way
+     * {@link AutomationProcessor#runAutomation()} does.
+     */
+    private void runTrigger(final TriggerProcessor trigger, final boolean commit) throws Exception {
+        Transaction.begin();
+        try {
+            trigger.discardHighWaterMark();
+            trigger.findHighWaterMark(trigger.runTriggerQuery());
+            if (!commit) {
+                Transaction.rollbackOnly();
+            }
+        } finally {
+            Transaction.end();
+        }
+        if (commit) {
+            trigger.advanceHighWaterMark();
+        } else {
+            trigger.discardHighWaterMark();
+        }
+    }
+
+    private void runAction() throws Exception {
+        final TriggerProcessor trigger = new TriggerProcessor("testAutomation", createTrigger("SELECT eventid FROM events", null));
+        final ActionProcessor action = new ActionProcessor("testAutomation", new Action("testAction", "vacuumdTest", new Statement("UPDATE events SET eventack = 'Y' WHERE eventid = ${eventid}", false)));
+        Transaction.begin();
+        try {
+            final TriggerResults results = new TriggerResults(trigger, trigger.runTriggerQuery(), true, m_rows.size());
+            action.checkForRequiredColumns(results);
+            assertTrue(action.processAction(results));
+        } finally {
+            Transaction.end();
+        }
+    }
+
+    private static <T> T proxy(final Class<T> type, final InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(AutomationProcessorTest.class.getClassLoader(), new Class<?>[] { type }, handler));
+    }
+
+    /**
+     * Returns the default value of a method that is not faked.
+     */
+    private static Object defaultValue(final Method method) {
+        final Class<?> type = method.getReturnType();
+        if (type == boolean.class) {
+            return false;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        } else {
+            return null;
+        }
+    }
+
+    private class DataSourceHandler implements InvocationHandler {
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] args) {
+            if ("getConnection".equals(method.getName())) {
+                return proxy(Connection.class, new ConnectionHandler());
+            }
+            return defaultValue(method);
+        }
+    }
+
+    private class ConnectionHandler implements InvocationHandler {
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] args) {
+            if ("prepareStatement".equals(method.getName())) {
+                return proxy(PreparedStatement.class, new StatementHandler((String)args[0]));
+            }
+            return defaultValue(method);
+        }
+    }
+
+    private class StatementHandler implements InvocationHandler {
+        private final String m_sql;
+        private final List<Object> m_parameters = new ArrayList<Object>();
+        private List<List<Object>> m_batch = new ArrayList<List<Object>>();
+
+        StatementHandler(final String sql) {
+            assertFalse(sql, sql.contains("${"));
+            m_sql = sql;
+            final int count = sql.length() - sql.replace("?", "").length();
+            m_parameters.addAll(Collections.nCopies(count, null));
+        }
+
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] args) {
+            final String name = method.getName();
+            if ("setNull".equals(name)) {
+                m_parameters.set((Integer)args[0] - 1, null);
+            } else if ("setObject".equals(name)) {
+                m_parameters.set((Integer)args[0] - 1, args[1]);
+            } else if ("executeQuery".equals(name)) {
+                m_statements.add(m_sql);
+                m_queries.add(new ArrayList<Object>(m_parameters));
+                return proxy(ResultSet.class, new ResultSetHandler(new ArrayList<Map<String, Object>>(m_rows)));
+            } else if ("addBatch".equals(name)) {
+                m_batch.add(new ArrayList<Object>(m_parameters));
+            } else if ("executeBatch".equals(name)) {
+                m_batches.add(m_batch);
+                final int[] counts = new int[m_batch.size()];
+                m_batch = new ArrayList<List<Object>>();
+                return counts;
+            } else if ("executeUpdate".equals(name)) {
+                m_updates++;
+                return 1;
+            }
+            return defaultValue(method);
+        }
+    }
+
+    private static class ResultSetHandler implements InvocationHandler {
+        private final List<Map<String, Object>> m_results;
+        private int m_row = -1;
+
+        ResultSetHandler(final List<Map<String, Object>> results) {
+            m_results = results;
+        }
+
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] args) {
+            final String name = method.getName();
+            if ("next".equals(name)) {
+                return ++m_row < m_results.size();
+            } else if ("beforeFirst".equals(name)) {
+                m_row = -1;
+            } else if ("getObject".equals(name)) {
+                return m_results.get(m_row).get(args[0]);
+            } else if ("findColumn".equals(name)) {
+                return 1;
+            }
+            return defaultValue(method);
+        }
+    }
+}